@@ -0,0 +1,241 @@
+package org.judal.benchmark.java.bdbj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.judal.bdbj.DBEntityWrapper;
+import org.judal.benchmark.java.MediumRecordData;
+import org.judal.benchmark.java.jdbc.BenchmarkHelper;
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.TableDef;
+import org.judal.serialization.TableRowCodec;
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+import static com.knowgate.debug.DebugFile.trace;
+
+/**
+ * Rows per second written, read by key and scanned with a cursor in a Berkeley DB Java Edition database
+ * for rows of 71 columns stored with Java serialization of a DBEntityWrapper, as DBJEntityBinding did before,
+ * versus rows stored with TableRowCodec.
+ * The scanIndexColumn benchmarks read only column v0 of each row, which is what secondary key creators do
+ * each time that an index entry is maintained.
+ * Run with: java -jar target/judalbenchmarks.jar B04_RowCodec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class B04_RowCodec {
+
+	public static final int howMany = 10000;
+
+	private static final String INDEX_COLUMN = "v0";
+
+	boolean globalTrace;
+
+	File home;
+
+	Environment env;
+
+	Database serialized;
+
+	Database encoded;
+
+	TableRowCodec codec;
+
+	int indexPosition;
+
+	byte[][] keys;
+
+	Object[][] rows;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		globalTrace = trace;
+		trace = false;
+
+		ArrayList<ColumnDef> columns = new ArrayList<>(71);
+		int pos = 0;
+		columns.add(new ColumnDef("pk", Types.INTEGER, ++pos));
+		for (int i=0; i<=9; i++)
+			columns.add(new ColumnDef("i"+i, Types.INTEGER, ++pos));
+		for (int d=0; d<=9; d++)
+			columns.add(new ColumnDef("d"+d, Types.TIMESTAMP, ++pos));
+		for (int v=0; v<=49; v++)
+			columns.add(new ColumnDef("v"+v, Types.VARCHAR, ++pos));
+		TableDef tableDef = new TableDef(MediumRecordData.TABLE_NAME, columns);
+		codec = new TableRowCodec(tableDef);
+		indexPosition = tableDef.getColumnIndex(INDEX_COLUMN);
+
+		MediumRecordData[] data = BenchmarkHelper.generateMediumRecordData(howMany);
+		keys = new byte[howMany][];
+		rows = new Object[howMany][];
+		for (int r=0; r<howMany; r++) {
+			keys[r] = ByteBuffer.allocate(4).putInt(data[r].pk).array();
+			Object[] row = new Object[71];
+			int c = 0;
+			row[c++] = data[r].pk;
+			for (int i : data[r].ints)
+				row[c++] = i;
+			for (java.util.Date d : data[r].dates)
+				row[c++] = new java.sql.Timestamp(d.getTime());
+			for (String v : data[r].varchars)
+				row[c++] = v;
+			rows[r] = row;
+		}
+
+		home = Files.createTempDirectory("b04rowcodec").toFile();
+		EnvironmentConfig envConfig = new EnvironmentConfig();
+		envConfig.setAllowCreate(true);
+		envConfig.setTransactional(false);
+		env = new Environment(home, envConfig);
+		DatabaseConfig dbConfig = new DatabaseConfig();
+		dbConfig.setAllowCreate(true);
+		dbConfig.setTransactional(false);
+		serialized = env.openDatabase(null, "serialized", dbConfig);
+		encoded = env.openDatabase(null, "encoded", dbConfig);
+
+		putJavaSerialization();
+		putTableRowCodec();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		serialized.close();
+		encoded.close();
+		env.close();
+		File[] files = home.listFiles();
+		if (files!=null)
+			for (File f : files)
+				f.delete();
+		home.delete();
+		trace = globalTrace;
+	}
+
+	private static byte[] serialize(byte[] key, Object[] row) throws IOException {
+		ByteArrayOutputStream byOut = new ByteArrayOutputStream(4000);
+		ObjectOutputStream obOut = new ObjectOutputStream(byOut);
+		obOut.writeObject(new DBEntityWrapper(key, (Serializable) row));
+		obOut.close();
+		return byOut.toByteArray();
+	}
+
+	private static Object[] deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream obIn = new ObjectInputStream(new ByteArrayInputStream(data));
+		DBEntityWrapper wrapper = (DBEntityWrapper) obIn.readObject();
+		obIn.close();
+		return (Object[]) wrapper.getWrapped();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void putJavaSerialization() throws IOException {
+		for (int r=0; r<howMany; r++)
+			serialized.put(null, new DatabaseEntry(keys[r]), new DatabaseEntry(serialize(keys[r], rows[r])));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void putTableRowCodec() {
+		for (int r=0; r<howMany; r++)
+			encoded.put(null, new DatabaseEntry(keys[r]), new DatabaseEntry(codec.encode(rows[r])));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void getJavaSerialization(Blackhole bh) throws IOException, ClassNotFoundException {
+		DatabaseEntry data = new DatabaseEntry();
+		for (int r=0; r<howMany; r++)
+			if (OperationStatus.SUCCESS==serialized.get(null, new DatabaseEntry(keys[r]), data, LockMode.DEFAULT))
+				bh.consume(deserialize(data.getData()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void getTableRowCodec(Blackhole bh) throws IOException {
+		DatabaseEntry data = new DatabaseEntry();
+		for (int r=0; r<howMany; r++)
+			if (OperationStatus.SUCCESS==encoded.get(null, new DatabaseEntry(keys[r]), data, LockMode.DEFAULT))
+				bh.consume(codec.decode(data.getData()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void scanJavaSerialization(Blackhole bh) throws IOException, ClassNotFoundException {
+		DatabaseEntry key = new DatabaseEntry();
+		DatabaseEntry data = new DatabaseEntry();
+		try (Cursor cur = serialized.openCursor(null, null)) {
+			while (OperationStatus.SUCCESS==cur.getNext(key, data, LockMode.DEFAULT))
+				bh.consume(deserialize(data.getData()));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void scanTableRowCodec(Blackhole bh) throws IOException {
+		DatabaseEntry key = new DatabaseEntry();
+		DatabaseEntry data = new DatabaseEntry();
+		try (Cursor cur = encoded.openCursor(null, null)) {
+			while (OperationStatus.SUCCESS==cur.getNext(key, data, LockMode.DEFAULT))
+				bh.consume(codec.decode(data.getData()));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void scanIndexColumnJavaSerialization(Blackhole bh) throws IOException, ClassNotFoundException {
+		DatabaseEntry key = new DatabaseEntry();
+		DatabaseEntry data = new DatabaseEntry();
+		try (Cursor cur = serialized.openCursor(null, null)) {
+			while (OperationStatus.SUCCESS==cur.getNext(key, data, LockMode.DEFAULT))
+				bh.consume(deserialize(data.getData())[indexPosition - 1]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void scanIndexColumnTableRowCodec(Blackhole bh) throws IOException {
+		DatabaseEntry key = new DatabaseEntry();
+		DatabaseEntry data = new DatabaseEntry();
+		try (Cursor cur = encoded.openCursor(null, null)) {
+			while (OperationStatus.SUCCESS==cur.getNext(key, data, LockMode.DEFAULT))
+				bh.consume(codec.decodeColumn(data.getData(), indexPosition));
+		}
+	}
+
+}
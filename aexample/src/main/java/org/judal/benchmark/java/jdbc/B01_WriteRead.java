@@ -27,6 +27,11 @@ import org.judal.benchmark.java.model.MediumRecordArray;
 import org.judal.benchmark.java.model.MediumRecordMap;
 import org.judal.benchmark.java.model.MediumRecordPojo;
 import org.judal.jdbc.JDBCRelationalDataSource;
+import org.judal.jdbc.JDBCRelationalTable;
+import org.judal.jdbc.jdc.JDCDAO;
+import org.judal.jdbc.metadata.SQLBuilder;
+import org.judal.jdbc.metadata.SQLStatements;
+import org.judal.jdbc.metadata.SQLTableDef;
 import org.judal.storage.EngineFactory;
 import org.judal.storage.Param;
 import org.judal.storage.table.Record;
@@ -142,6 +147,28 @@ public class B01_WriteRead {
 		System.out.println("Insert " + howMany + " rows using JDBC one by one pojo took " + ch.elapsed() + " ms");
 
 		trunc(MediumRecordData.TABLE_NAME);
+
+		JDBCRelationalTable tbl = dts.openTable(new MediumRecordMap());
+		JDCDAO upsertDao = tbl.getDao();
+		SQLStatements fallbackStatements = new SQLBuilder(dts.getDatabaseProductId(), tbl.getTableDef(), SQLTableDef.DEFAULT_CREATION_TIMESTAMP_COLUMN_NAME).getSqlStatements();
+		fallbackStatements.setUpsert(null, null);
+		fallbackStatements.setUpsertReturningInserted(null);
+		JDCDAO fallbackDao = new JDCDAO(tbl.getTableDef(), fallbackStatements);
+
+		ch.start();
+		storeJUDALTwice(tbl, fallbackDao, data);
+		ch.stop();
+		System.out.println("Store  " + howMany + " rows twice using UPDATE then INSERT took " + ch.elapsed() + " ms");
+
+		trunc(MediumRecordData.TABLE_NAME);
+
+		ch.start();
+		storeJUDALTwice(tbl, upsertDao, data);
+		ch.stop();
+		System.out.println("Store  " + howMany + " rows twice using " + (upsertDao.getSqlStatements().getUpsert()==null ? "UPDATE then INSERT (no upsert available)" : upsertDao.getSqlStatements().getUpsertSyntax()) + " took " + ch.elapsed() + " ms");
+
+		tbl.close();
+		trunc(MediumRecordData.TABLE_NAME);
 		
 		Session hses = sfact.openSession();
 		ch.start();		
@@ -311,6 +338,23 @@ public class B01_WriteRead {
 		insertJUDALOne(dts, d, new MediumRecordPojo());
 	}
 
+	public void storeJUDALTwice(JDBCRelationalTable tbl, JDCDAO dao, MediumRecordData[] data) throws SQLException {
+		MediumRecordMap rec = new MediumRecordMap();
+		for (int r = 0; r < data.length; r++) {
+			MediumRecordData d = data[r];
+			rec.put("pk", new Integer(d.pk));
+			for (int c = 0; c < d.ints.length; c++)
+				rec.put("i" + c, new Integer(d.ints[c]));
+			for (int c = 0; c < d.dates.length; c++)
+				rec.put("d" + c, new Timestamp(d.dates[c].getTime()));
+			for (int c = 0; c < d.varchars.length; c++)
+				rec.put("v" + c, d.varchars[c]);
+			// First call inserts the row and second call updates it
+			dao.upsertRegister(tbl.getConnection(), rec);
+			dao.upsertRegister(tbl.getConnection(), rec);
+		}
+	}
+
 	@SuppressWarnings("unused")
 	public void readJUDALArray(TableDataSource dts) {
 		View viw = dts.openView(new MediumRecordMap());
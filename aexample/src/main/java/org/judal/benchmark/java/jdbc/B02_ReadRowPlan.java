@@ -0,0 +1,125 @@
+package org.judal.benchmark.java.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.JDOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.judal.benchmark.java.MediumRecordData;
+import org.judal.benchmark.java.model.MediumRecordArray;
+import org.judal.jdbc.JDBCRelationalDataSource;
+import org.judal.jdbc.jdc.JDCDAO;
+import org.judal.storage.EngineFactory;
+import org.judal.storage.query.sql.SQLRowPlan;
+import org.judal.storage.table.RecordSet;
+import org.judal.storage.table.View;
+
+import static com.knowgate.debug.DebugFile.trace;
+
+/**
+ * Rows per second read from a result set of 71 columns
+ * calling ResultSetMetaData and getObject() for each column of each row
+ * versus using a cached SQLRowPlan.
+ * Run with: java -jar target/judalbenchmarks.jar B02_ReadRowPlan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class B02_ReadRowPlan {
+
+	public static final int howMany = 10000;
+
+	private static final String SQL = "SELECT * FROM " + MediumRecordData.TABLE_NAME;
+
+	boolean globalTrace;
+
+	JDBCRelationalDataSource dts;
+
+	Connection conn;
+
+	@Setup(Level.Trial)
+	public void setUp() throws JDOException, ClassNotFoundException, IOException, SQLException {
+		globalTrace = trace;
+		trace = false;
+		dts = BenchmarkHelper.initialize();
+		BenchmarkHelper.createSchemaObjects();
+		new B01_WriteRead().insertJDBCMany(BenchmarkHelper.generateMediumRecordData(howMany));
+		conn = dts.getConnection();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		conn.close();
+		BenchmarkHelper.destroy();
+		trace = globalTrace;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void readWithMetaDataPerRow(Blackhole bh) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(SQL);
+		ResultSet rset = stmt.executeQuery();
+		ResultSetMetaData mdat = rset.getMetaData();
+		final int colCount = mdat.getColumnCount();
+		while (rset.next()) {
+			Object[] row = new Object[colCount];
+			for (int c = 1; c <= colCount; c++) {
+				Object value = rset.getObject(c);
+				row[c - 1] = rset.wasNull() ? null : JDCDAO.toJavaObject(value, mdat.getColumnName(c), mdat.getColumnType(c));
+			}
+			bh.consume(row);
+		}
+		rset.close();
+		stmt.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void readWithRowPlan(Blackhole bh) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(SQL);
+		ResultSet rset = stmt.executeQuery();
+		SQLRowPlan plan = dts.getRowPlanCache().get(SQL, rset);
+		final int colCount = plan.getColumnCount();
+		while (rset.next()) {
+			Object[] row = new Object[colCount];
+			for (int c = 1; c <= colCount; c++)
+				row[c - 1] = plan.getValue(rset, c);
+			bh.consume(row);
+		}
+		rset.close();
+		stmt.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(howMany)
+	public void readJUDALArray(Blackhole bh) {
+		View viw = dts.openView(new MediumRecordArray());
+		RecordSet<MediumRecordArray> rset = viw.fetch(null, null, null);
+		viw.close();
+		bh.consume(rset);
+	}
+
+}
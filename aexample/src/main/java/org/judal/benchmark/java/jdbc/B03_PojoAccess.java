@@ -0,0 +1,123 @@
+package org.judal.benchmark.java.jdbc;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.JDOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.judal.benchmark.java.model.MediumRecordPojo;
+
+import static com.knowgate.debug.DebugFile.trace;
+
+/**
+ * Columns per second read and written on a MediumRecordPojo of 71 columns
+ * scanning its declared fields and calling Field.get/set for each column
+ * versus using the PojoAccessor shared by PojoRecord instances.
+ * Run with: java -jar target/judalbenchmarks.jar B03_PojoAccess
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class B03_PojoAccess {
+
+	boolean globalTrace;
+
+	MediumRecordPojo pojo;
+
+	String[] columns;
+
+	Object[] values;
+
+	ArrayList<Field> persistentFields;
+
+	@Setup(Level.Trial)
+	public void setUp() throws JDOException, ClassNotFoundException, IOException, SQLException {
+		globalTrace = trace;
+		trace = false;
+		BenchmarkHelper.initialize();
+		BenchmarkHelper.createSchemaObjects();
+		pojo = new MediumRecordPojo(BenchmarkHelper.generateMediumRecordData(1)[0]);
+		columns = pojo.keySet().toArray(new String[pojo.size()]);
+		for (int c = 0; c < columns.length; c++)
+			columns[c] = columns[c].toUpperCase();
+		Field[] declaredFields = MediumRecordPojo.class.getDeclaredFields();
+		persistentFields = new ArrayList<>(declaredFields.length);
+		for (Field fld : declaredFields) {
+			final int mods = fld.getModifiers();
+			if (!Modifier.isFinal(mods) && !Modifier.isTransient(mods) && !Modifier.isStatic(mods)) {
+				fld.setAccessible(true);
+				persistentFields.add(fld);
+			}
+		}
+		values = new Object[columns.length];
+		for (int c = 0; c < columns.length; c++)
+			values[c] = pojo.get(columns[c]);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkHelper.destroy();
+		trace = globalTrace;
+	}
+
+	@Benchmark
+	public void getWithReflection(Blackhole bh) throws IllegalAccessException {
+		for (String column : columns)
+			bh.consume(persistentField(column).get(pojo));
+	}
+
+	@Benchmark
+	public void getWithAccessor(Blackhole bh) {
+		for (String column : columns)
+			bh.consume(pojo.get(column));
+	}
+
+	@Benchmark
+	public void putWithReflection() throws IllegalAccessException {
+		for (int c = 0; c < columns.length; c++)
+			persistentField(columns[c]).set(pojo, values[c]);
+	}
+
+	@Benchmark
+	public void putWithAccessor() {
+		for (int c = 0; c < columns.length; c++)
+			pojo.put(columns[c], values[c]);
+	}
+
+	@Benchmark
+	public void getIntWithAccessor(Blackhole bh) {
+		bh.consume(pojo.getInt("I9"));
+	}
+
+	/**
+	 * Linear lookup done by PojoRecord before it used PojoAccessor
+	 */
+	private Field persistentField(String column) {
+		for (Field fld : persistentFields)
+			if (fld.getName().equalsIgnoreCase(column))
+				return fld;
+		return null;
+	}
+
+}
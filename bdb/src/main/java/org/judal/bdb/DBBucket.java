@@ -14,6 +14,7 @@ package org.judal.bdb;
 
 import java.io.Serializable;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 
@@ -38,8 +39,10 @@ import org.judal.metadata.ColumnDef;
 import org.judal.metadata.PrimaryKeyDef;
 import org.judal.serialization.BytesConverter;
 import org.judal.storage.Param;
+import org.judal.storage.keyvalue.BatchException;
 import org.judal.storage.keyvalue.Bucket;
 import org.judal.storage.keyvalue.Stored;
+import org.judal.storage.table.PrimitiveRecord;
 
 public class DBBucket implements Bucket {
 
@@ -84,6 +87,13 @@ public class DBBucket implements Bucket {
 	public StoredClassCatalog getCatalog() {
 		return oCtg;
 	}
+
+	/**
+	 * @return DBEntityBinding used to read and write the records of this bucket
+	 */
+	protected DBEntityBinding getEntityBinding() {
+		return new DBEntityBinding(oCtg);
+	}
 	
 	public Database getDatabase() {
 		return oPdb;
@@ -189,15 +199,21 @@ public class DBBucket implements Bucket {
 		}
 
 		DBEntityWrapper oDbEnt = null;
+		boolean bFound = false;
 
 		try {
 			DatabaseEntry oDbKey = new DatabaseEntry(byKey);
 			DatabaseEntry oDbDat = new DatabaseEntry();
 			if (OperationStatus.SUCCESS==oPdb.get(getTransaction(), oDbKey, oDbDat, LockMode.DEFAULT)) {
-				DBEntityBinding oDbeb = new DBEntityBinding(oCtg);
-				oDbEnt = oDbeb.entryToObject(oDbKey,oDbDat);
-				oTarget.setKey(oDbEnt.getKey());
-				oTarget.setValue(oDbEnt.getWrapped());
+				DBEntityBinding oDbeb = getEntityBinding();
+				if (oTarget instanceof PrimitiveRecord && oDbeb.readInto(oDbKey, oDbDat, (PrimitiveRecord) oTarget)) {
+					bFound = true;
+				} else {
+					oDbEnt = oDbeb.entryToObject(oDbKey,oDbDat);
+					oTarget.setKey(oDbEnt.getKey());
+					oTarget.setValue(oDbEnt.getWrapped());
+					bFound = true;
+				}
 			}
 		} catch (DeadlockException dlxc) {
 			if (DebugFile.trace) DebugFile.decIdent();
@@ -209,10 +225,10 @@ public class DBBucket implements Bucket {
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
-			DebugFile.writeln("End DBBucket.load() : " + String.valueOf(oDbEnt!=null));
+			DebugFile.writeln("End DBBucket.load() : " + String.valueOf(bFound));
 		}
 
-		return oDbEnt!=null;
+		return bFound;
 	} // load
 
 	protected void closeIndexes() throws DatabaseException {
@@ -313,7 +329,7 @@ public class DBBucket implements Bucket {
 
 	@Override
 	public Iterator<Stored> iterator() {
-		DBIterator oIter = new DBIterator(name(), oPdb, oCtg);
+		DBIterator oIter = new DBIterator(name(), oPdb, getEntityBinding());
 		if (oItr==null)
 			oItr = new HashSet<DBIterator>();
 		oItr.add(oIter);
@@ -322,7 +338,128 @@ public class DBBucket implements Bucket {
 
 	@Override
 	public void store(Stored oRec) throws JDOException {
-		store(oRec, BytesConverter.toBytes(oRec.getKey(), ColumnDef.getSQLType(getPrimaryKey().getColumns()[0].getSQLType())));
+		store(oRec, keyToStore(oRec));
+	}
+
+	/**
+	 * <p>Get the raw key under which a record will be stored.</p>
+	 * Subclasses may override this method in order to validate the record before it is written.
+	 * @param oRec Stored
+	 * @return byte[]
+	 * @throws JDOException
+	 */
+	protected byte[] keyToStore(Stored oRec) throws JDOException {
+		return BytesConverter.toBytes(oRec.getKey(), ColumnDef.getSQLType(getPrimaryKey().getColumns()[0].getSQLType()));
+	}
+
+	/**
+	 * <p>Get the primary key value of a key given to deleteAll().</p>
+	 * @param oKey Object
+	 * @return Object Primary key value or <b>null</b> if the key does not refer to the primary key
+	 * and records for it must be deleted by calling delete(Object)
+	 */
+	protected Object primaryKeyValue(Object oKey) {
+		return oKey instanceof Param ? ((Param) oKey).getValue() : oKey;
+	}
+
+	/**
+	 * <p>Begin a transaction for a batch write if the caller is not already in a transaction.</p>
+	 * @return Transaction or <b>null</b> if the environment or the database are not transactional
+	 * @throws DatabaseException
+	 */
+	protected Transaction beginBatch() throws DatabaseException {
+		if (oRep.isTransactional() && oPdb.getConfig().getTransactional()) {
+			if (DebugFile.trace) DebugFile.writeln("Environment.beginTransaction(null, null)");
+			return oRep.getEnvironment().beginTransaction(null, null);
+		}
+		return null;
+	}
+
+	/**
+	 * <p>Write several records.</p>
+	 * If the caller is not in a transaction then all the records are written in a single local transaction,
+	 * so the log is flushed once per call instead of once per record.
+	 * Records that cannot be serialized or which do not pass validation are reported as failed without stopping the others.
+	 * If a local transaction is used and the database fails, the local transaction is aborted and no record is written.
+	 * @param sOperation String Name of the calling operation
+	 * @param oRecs Iterable&lt;? extends Stored&gt;
+	 * @param bNoOverwrite boolean If <b>true</b> records whose key already exists are reported as failed
+	 * @throws BatchException if one or more records could not be written
+	 * @throws JDOException
+	 */
+	protected void writeAll(String sOperation, Iterable<? extends Stored> oRecs, boolean bNoOverwrite) throws JDOException {
+
+		if (isReadOnly()) throw new JDOException("DBBucket."+sOperation+"() table "+name()+" is in read-only mode");
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin DBBucket."+sOperation+"("+name()+")");
+			DebugFile.incIdent();
+		}
+
+		BatchException.Failures oFailures = new BatchException.Failures();
+		DBEntityBinding oDbeb = getEntityBinding();
+		Transaction oLocal = null;
+		int iPos = 0;
+
+		try {
+			Transaction oTrn = getTransaction();
+			if (null==oTrn)
+				oTrn = oLocal = beginBatch();
+
+			for (Stored oRec : oRecs) {
+				try {
+					if (oRec==null) throw new NullPointerException("DBBucket."+sOperation+"() Record to be stored is null");
+					final byte[] byKey = keyToStore(oRec);
+					DatabaseEntry oDbKey = new DatabaseEntry(byKey);
+					DatabaseEntry oDbDat = new DatabaseEntry(oDbeb.objectToData(new DBEntityWrapper(byKey, (Serializable) oRec.getValue())));
+					if (!bNoOverwrite)
+						oPdb.put(oTrn, oDbKey, oDbDat);
+					else if (oPdb.putNoOverwrite(oTrn, oDbKey, oDbDat)==OperationStatus.KEYEXIST)
+						throw new JDOException("Another record with the same primary key already exists at "+name());
+				} catch (JDOException | NullPointerException | ClassCastException xcpt) {
+					oFailures.add(iPos, oRec, xcpt);
+				} catch (DatabaseException dbe) {
+					if (oLocal!=null) throw dbe;
+					oFailures.add(iPos, oRec, dbe);
+				}
+				iPos++;
+			}
+
+			if (oLocal!=null) {
+				oLocal.commit();
+				oLocal = null;
+			}
+
+		} catch (DatabaseException xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln(xcpt.getClass().getName()+" "+xcpt.getMessage());
+				DebugFile.decIdent();
+			}
+			throw new JDOException(xcpt.getMessage(), xcpt);
+		} finally {
+			if (oLocal!=null) {
+				try { oLocal.abort(); } catch (DatabaseException ignore) { }
+			}
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End DBBucket."+sOperation+"() : "+String.valueOf(iPos-oFailures.size())+" of "+String.valueOf(iPos));
+		}
+
+		oFailures.throwIfAny(sOperation, iPos);
+	} // writeAll
+
+	/**
+	 * <p>Store several records.</p>
+	 * If the caller is not in a transaction then all the records are written in a single local transaction.
+	 * @param oRecs Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more records could not be stored
+	 * @throws JDOException
+	 */
+	@Override
+	public void storeAll(Iterable<? extends Stored> oRecs) throws JDOException {
+		writeAll("storeAll", oRecs, false);
 	}
 
 	protected void store(Stored oRec, byte[] byKey) throws JDOException {
@@ -339,7 +476,7 @@ public class DBBucket implements Bucket {
 		try {
 		
 			DBEntityWrapper oEwrp = new DBEntityWrapper(byKey, (Serializable) oRec.getValue());
-			DBEntityBinding oDbeb = new DBEntityBinding(oCtg);
+			DBEntityBinding oDbeb = getEntityBinding();
 
 			if (DebugFile.trace) {
 				StringBuffer oStrKey = new StringBuffer(byKey.length*3);
@@ -400,6 +537,73 @@ public class DBBucket implements Bucket {
 		delete (oPkv, getTransaction());
 	} // delete
 
+	/**
+	 * <p>Delete several records.</p>
+	 * If the caller is not in a transaction then all the primary keys are deleted in a single local transaction.
+	 * Keys which do not refer to the primary key are deleted one by one after the local transaction is committed.
+	 * @param oKeys Iterable&lt;?&gt;
+	 * @throws BatchException if one or more records could not be deleted
+	 * @throws JDOException
+	 */
+	@Override
+	public void deleteAll(Iterable<?> oKeys) throws JDOException {
+
+		if (isReadOnly()) throw new JDOException("DBBucket.deleteAll() table "+name()+" is in read-only mode");
+
+		BatchException.Failures oFailures = new BatchException.Failures();
+		ArrayList<Object> aDeferred = new ArrayList<Object>();
+		ArrayList<Integer> aDeferredPos = new ArrayList<Integer>();
+		Transaction oLocal = null;
+		int iPos = 0;
+
+		try {
+			final int iKeyType = ColumnDef.getSQLType(getPrimaryKey().getColumns()[0].getSQLType());
+			Transaction oTrn = getTransaction();
+			if (null==oTrn)
+				oTrn = oLocal = beginBatch();
+
+			for (Object oKey : oKeys) {
+				final Object oPkv = primaryKeyValue(oKey);
+				if (null==oPkv) {
+					aDeferred.add(oKey);
+					aDeferredPos.add(iPos);
+				} else {
+					try {
+						oPdb.delete(oTrn, new DatabaseEntry(BytesConverter.toBytes(oPkv, iKeyType)));
+					} catch (DatabaseException dbe) {
+						if (oLocal!=null) throw dbe;
+						oFailures.add(iPos, oKey, dbe);
+					} catch (RuntimeException xcpt) {
+						oFailures.add(iPos, oKey, xcpt);
+					}
+				}
+				iPos++;
+			}
+
+			if (oLocal!=null) {
+				oLocal.commit();
+				oLocal = null;
+			}
+
+		} catch (DatabaseException xcpt) {
+			throw new JDOException(xcpt.getMessage(), xcpt);
+		} finally {
+			if (oLocal!=null) {
+				try { oLocal.abort(); } catch (DatabaseException ignore) { }
+			}
+		}
+
+		for (int d=0; d<aDeferred.size(); d++) {
+			try {
+				delete(aDeferred.get(d));
+			} catch (JDOException | NullPointerException xcpt) {
+				oFailures.add(aDeferredPos.get(d), aDeferred.get(d), xcpt);
+			}
+		}
+
+		oFailures.throwIfAny("deleteAll", iPos);
+	} // deleteAll
+
 	public void truncate(boolean useTransaction) throws JDOException {
 
 		if (isReadOnly()) throw new JDOException("DBBucket.truncate() database "+name()+" is in read-only mode");
@@ -33,6 +33,7 @@ import javax.transaction.SystemException;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 
+import org.judal.storage.BlockSequencePool;
 import org.judal.storage.DataSource;
 import org.judal.storage.Param;
 import org.judal.storage.table.Record;
@@ -66,6 +67,7 @@ public class DBDataSource implements DataSource {
 	private boolean bTransactional;
 	private boolean bReadOnly;
 	private boolean bResetLSNOnClose;
+	private boolean bOrderedKeys;
 	private String sPath;
 	private Environment oEnv;
 	private EnvironmentConfig oCfg;
@@ -78,12 +80,16 @@ public class DBDataSource implements DataSource {
 
 	private ConcurrentHashMap<String,DBBucket> oConnectionMap;
 
+	private final BlockSequencePool oSqp;
+
 	// --------------------------------------------------------------------------
 
 	public DBDataSource(Map<String,String> properties, TransactionManager transactManager, SchemaMetaData metaData) throws JDOException {
+		oSqp = BlockSequencePool.forProperties(properties);
 		oTmn = transactManager;
 		bTransactional = (oTmn!=null);
 		bResetLSNOnClose = bTransactional;
+		bOrderedKeys = !"legacy".equalsIgnoreCase(properties.getOrDefault(DataSource.KEY_FORMAT, DataSource.DEFAULT_KEY_FORMAT).trim());
 		if (DebugFile.trace) DebugFile.writeln("open("+properties.get(DataSource.DBENV)+", null, null, false)");
 		open (properties.get(DataSource.DBENV), null, null, false);
 	}
@@ -93,7 +99,18 @@ public class DBDataSource implements DataSource {
 	}
 	
 	public SecondaryKeyCreator getKeyCreator(Class<? extends Record> oRecCls, TableDef oTbl, String sColumnName, int iColumnType) {
-		return new DBSecondaryIndexCreator(new DBEntityBinding(oCtg), oRecCls, oTbl, sColumnName, iColumnType);
+		return new DBSecondaryIndexCreator(new DBEntityBinding(oCtg, oTbl), oRecCls, oTbl, sColumnName, iColumnType);
+	}
+
+	public SecondaryKeyCreator getKeyCreator(Class<? extends Record> oRecCls, TableDef oTbl, String sColumnName, int iColumnType, boolean bOrderedKeys) {
+		return new DBSecondaryIndexCreator(new DBEntityBinding(oCtg, oTbl), oRecCls, oTbl, sColumnName, iColumnType, bOrderedKeys);
+	}
+
+	/**
+	 * @return boolean <b>true</b> unless the KEY_FORMAT property is legacy
+	 */
+	public boolean hasOrderedIndexKeys() {
+		return bOrderedKeys;
 	}
 
 	/*
@@ -103,7 +120,7 @@ public class DBDataSource implements DataSource {
 	*/
 
 	public SecondaryMultiKeyCreator getMultiKeyCreator(Class<? extends Record> oRecCls, TableDef oTbl, String sIdx) {
-		return new DBSecondaryMultiIndexCreator(new DBEntityBinding(oCtg), oRecCls, oTbl, sIdx);
+		return new DBSecondaryMultiIndexCreator(new DBEntityBinding(oCtg, oTbl), oRecCls, oTbl, sIdx);
 	}
 
 	public Environment getEnvironment() {
@@ -444,6 +461,8 @@ public class DBDataSource implements DataSource {
 				if (inTransaction())
 					getTransaction().abort();
 
+				oSqp.close();
+
 				closeTables();
 
 				if (oCtg!=null) {
@@ -560,7 +579,7 @@ public class DBDataSource implements DataSource {
 
 	@Override
 	public Sequence getSequence(String name) throws JDOException {
-		return new DBSequenceGenerator(this,name);
+		return oSqp.get(new DBSequenceGenerator(this,name));
 	}
 
 	@Override
@@ -15,6 +15,11 @@ package org.judal.bdb;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.judal.metadata.TableDef;
+import org.judal.serialization.TableRowCodec;
+import org.judal.storage.table.PrimitiveRecord;
 
 import com.sleepycat.db.DatabaseEntry;
 import com.sleepycat.util.FastInputStream;
@@ -27,10 +32,20 @@ import com.sleepycat.bind.serial.SerialSerialBinding;
 import com.knowgate.debug.DebugFile;
 import com.knowgate.debug.StackTraceUtil;
 
+/**
+ * <p>Binding between Berkeley DB entries and DBEntityWrapper.</p>
+ * If the binding is created for a TableDef then rows are written with TableRowCodec
+ * so secondary key creators can read a single column without deserializing the whole record.
+ * Any other value, as well as data written before TableRowCodec was used, is read and written with Java serialization.
+ * @author Sergio Montoro Ten
+ *
+ */
 class DBEntityBinding extends SerialSerialBinding<byte[],byte[],DBEntityWrapper> {
 
 	private static final Class CKEY = new byte[0].getClass();
 	private static final Class CDATA = new byte[1].getClass();
+
+	private TableRowCodec oCdc;
 	
 	public DBEntityBinding(ClassCatalog oCtg, Class<byte[]> cKey, Class<byte[]> cDat) {
 		super(oCtg,cKey,cDat);
@@ -44,6 +59,30 @@ class DBEntityBinding extends SerialSerialBinding<byte[],byte[],DBEntityWrapper>
 		super((ClassCatalog) oCtg, CKEY, CDATA);
 	}
 
+	public DBEntityBinding(StoredClassCatalog oCtg, TableRowCodec oCodec) {
+		super((ClassCatalog) oCtg, CKEY, CDATA);
+		oCdc = oCodec;
+	}
+
+	public DBEntityBinding(StoredClassCatalog oCtg, TableDef oTblDef) {
+		this(oCtg, oTblDef==null ? null : new TableRowCodec(oTblDef));
+	}
+
+	/**
+	 * @return TableRowCodec or <b>null</b> if this binding was not created for a table
+	 */
+	public TableRowCodec getRowCodec() {
+		return oCdc;
+	}
+
+	/**
+	 * @param aBytes byte[]
+	 * @return boolean <b>true</b> if aBytes can be read one column at a time using getRowCodec()
+	 */
+	public boolean isColumnar(byte[] aBytes) {
+		return oCdc!=null && TableRowCodec.isEncoded(aBytes);
+	}
+
 	@Override
 	public DBEntityWrapper entryToObject(byte[] byKey, byte[] aBytes) {
   		if (DebugFile.trace) {
@@ -52,11 +91,15 @@ class DBEntityBinding extends SerialSerialBinding<byte[],byte[],DBEntityWrapper>
   		}
 		DBEntityWrapper oEnt = null;
 		try {
-			FastInputStream oByIn = new FastInputStream(aBytes);
-  			ObjectInputStream oObIn = new ObjectInputStream(oByIn);
-  			oEnt = (DBEntityWrapper) oObIn.readObject();
-  			oObIn.close();
-  			oByIn.close();
+			if (isColumnar(aBytes)) {
+				oEnt = new DBEntityWrapper(byKey, (Serializable) oCdc.decode(aBytes));
+			} else {
+				FastInputStream oByIn = new FastInputStream(aBytes);
+				ObjectInputStream oObIn = new ObjectInputStream(oByIn);
+				oEnt = (DBEntityWrapper) oObIn.readObject();
+				oObIn.close();
+				oByIn.close();
+			}
 		} catch (IOException xcpt) {
 			String s = "";
 			try { s = StackTraceUtil.getStackTrace(xcpt); } catch (Exception x) {}
@@ -78,6 +121,8 @@ class DBEntityBinding extends SerialSerialBinding<byte[],byte[],DBEntityWrapper>
 	@Override
 	public byte[] objectToData(DBEntityWrapper oEnt) {
 		byte[] aBytes = null;
+		if (oCdc!=null && oCdc.canEncode(oEnt.getWrapped()))
+			return oCdc.encode(oEnt.getWrapped());
 		try {
 			FastOutputStream oByOut = new FastOutputStream(4000);
   			ObjectOutputStream oObOut = new ObjectOutputStream(oByOut);
@@ -93,6 +138,24 @@ class DBEntityBinding extends SerialSerialBinding<byte[],byte[],DBEntityWrapper>
 		return aBytes;
   	}	
   	
+	/**
+	 * <p>Read a row written with TableRowCodec directly into a PrimitiveRecord.</p>
+	 * Numeric and date columns are copied into the primitive slots of the record without creating wrapper objects.
+	 * @param oKey DatabaseEntry
+	 * @param oDat DatabaseEntry
+	 * @param oRec PrimitiveRecord
+	 * @return boolean <b>true</b> if the row was read into oRec, <b>false</b> if the row is not columnar and must be read with entryToObject()
+	 * @throws IOException If a column value cannot be deserialized
+	 */
+	public boolean readInto(DatabaseEntry oKey, DatabaseEntry oDat, PrimitiveRecord oRec) throws IOException {
+		if (!isColumnar(oDat.getData()))
+			return false;
+		oRec.clear();
+		oCdc.decodeInto(oDat.getData(), oRec);
+		oRec.setKey(null==oKey ? null : oKey.getData());
+		return true;
+	}
+
   	public DBEntityWrapper entryToObject(DatabaseEntry oKey, DatabaseEntry oDat) {
   		if (DebugFile.trace) {
   			DebugFile.writeln("Begin DBEntityBinding.entryToObject(DatabaseEntry,DatabaseEntry)");
@@ -32,6 +32,7 @@ import com.knowgate.debug.DebugFile;
 public class DBIndex extends NonUniqueIndexDef {
   
 	private SecondaryDatabase oSdb;
+	private boolean bOrdered;
 
   private static Type getIndexTypeByName(String sRelationType) {
   	if (sRelationType.trim().equalsIgnoreCase("one-to-one"))
@@ -65,7 +66,24 @@ public class DBIndex extends NonUniqueIndexDef {
   }
     
   public void open(SecondaryDatabase oSecDb) {
+  	open(oSecDb, false);
+  }
+
+  /**
+   * @param oSecDb SecondaryDatabase
+   * @param bOrderedKeys boolean <b>true</b> if the keys of oSecDb are written with OrderedBytesConverter
+   */
+  public void open(SecondaryDatabase oSecDb, boolean bOrderedKeys) {
   	oSdb = oSecDb;
+  	bOrdered = bOrderedKeys;
+  }
+
+  /**
+   * @return boolean <b>true</b> if the keys of this index are written with OrderedBytesConverter,
+   * <b>false</b> if they are written with BytesConverter
+   */
+  public boolean isOrdered() {
+  	return bOrdered;
   }
   
   public void close() throws DatabaseException {
@@ -36,19 +36,21 @@ public class DBIterator implements AutoCloseable, Iterator<Stored> {
 
 	private String sTbl;
 	private Database oPdb;
-	private StoredClassCatalog oCtg;
 	private Cursor oCur = null;
 	private Queue<Stored> oNxt;
 	private DBEntityBinding oDbeb;
 	private boolean isFirst;
 
 	public DBIterator(String sTbl, Database oPdb, StoredClassCatalog oCtg) {
+		this(sTbl, oPdb, new DBEntityBinding(oCtg));
+	}
+
+	DBIterator(String sTbl, Database oPdb, DBEntityBinding oBind) {
 		this.sTbl = sTbl;
 		this.oPdb = oPdb;
-		this.oCtg = oCtg;
 		this.oCur = null;
 		this.oNxt = new LinkedList<Stored>();
-		oDbeb = new DBEntityBinding(oCtg);
+		oDbeb = oBind;
 		open();
 	}
 
@@ -12,17 +12,28 @@ package org.judal.bdb;
  * KIND, either express or implied.
  */
 
+import java.io.IOException;
+
 import org.judal.metadata.ColumnDef;
 import org.judal.metadata.TableDef;
 import org.judal.serialization.BytesConverter;
+import org.judal.serialization.OrderedBytesConverter;
 import org.judal.storage.StorageObjectFactory;
-        import org.judal.storage.table.Record;
+import org.judal.storage.table.Record;
 
 import com.knowgate.debug.DebugFile;
 import com.sleepycat.db.DatabaseEntry;
 import com.sleepycat.db.SecondaryDatabase;
 import com.sleepycat.db.SecondaryKeyCreator;
 
+/**
+ * <p>Extract the value of a column as secondary key.</p>
+ * For rows written with TableRowCodec only the indexed column is decoded,
+ * for rows written with Java serialization a Record of the given class is instantiated.
+ * Keys are written with OrderedBytesConverter if the index is ordered or with BytesConverter otherwise.
+ * @author Sergio Montoro Ten
+ *
+ */
 public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 
 	private DBEntityBinding oDbeb;
@@ -30,13 +41,26 @@ public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 	private Class<? extends Record> oRecCls;
 	private String sIndx;
 	private int iType;
+	private boolean bOrdered;
 
 	public DBSecondaryIndexCreator(DBEntityBinding oBind, Class<? extends Record> oRecClass, TableDef oTblDef, String sIndex, int iColumnType) {
+		this(oBind, oRecClass, oTblDef, sIndex, iColumnType, false);
+	}
+
+	public DBSecondaryIndexCreator(DBEntityBinding oBind, Class<? extends Record> oRecClass, TableDef oTblDef, String sIndex, int iColumnType, boolean bOrderedKeys) {
 		oDbeb = oBind;
 		sIndx = sIndex;
 		oTbl = oTblDef;
 		oRecCls = oRecClass;
 		iType = iColumnType;
+		bOrdered = bOrderedKeys;
+	}
+
+	private byte[] toKey(Object oVal) {
+		if (bOrdered)
+			return OrderedBytesConverter.toBytes(oVal, iType);
+		else
+			return null==oVal ? new byte[0] : BytesConverter.toBytes(oVal, iType);
 	}
 
 	@Override
@@ -45,6 +69,21 @@ public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 			DebugFile.writeln("Begin DBSecondaryIndexCreator.createSecondaryKey(SecondaryDatabase, DatabaseEntry, DatabaseEntry, DatabaseEntry)");
 			DebugFile.incIdent();
 		}
+		if (oDbeb.isColumnar(dataEntry.getData())) {
+			try {
+				Object oVal = oDbeb.getRowCodec().decodeColumn(dataEntry.getData(), sIndx);
+				resultEntry.setData(toKey(oVal));
+			} catch (IOException ioe) {
+				if (DebugFile.trace)
+					DebugFile.writeln("IOException " + ioe.getMessage());
+				throw new IllegalStateException("Could not read column " + sIndx + " of " + oTbl.getName() + " " + ioe.getMessage(), ioe);
+			}
+			if (DebugFile.trace) {
+				DebugFile.decIdent();
+				DebugFile.writeln("End DBSecondaryIndexCreator.createSecondaryKey(SecondaryDatabase, DatabaseEntry, DatabaseEntry, DatabaseEntry)");
+			}
+			return true;
+		}
 		DBEntityWrapper oEnt = oDbeb.entryToObject(keyEntry,dataEntry);
 		if (oRecCls==null) {
 			throw new UnsupportedOperationException("Cannot create secondary index without a record class");
@@ -53,7 +92,7 @@ public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 			try {
 				oRec = StorageObjectFactory.newRecord(oRecCls, oTbl);
 				oRec.setValue(oEnt.getWrapped());
-				byte [] data = oRec.isNull(sIndx) ? new byte[0] : BytesConverter.toBytes(oRec.apply(sIndx), iType);					
+				byte [] data = toKey(oRec.isNull(sIndx) ? null : oRec.apply(sIndx));					
 				if (DebugFile.trace) {
 					if (oRec.isNull(sIndx)) {
 						DebugFile.writeln("secondary key value is null");
@@ -12,6 +12,7 @@ package org.judal.bdb;
  * KIND, either express or implied.
  */
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Set;
 
@@ -41,6 +42,15 @@ public class DBSecondaryMultiIndexCreator implements SecondaryMultiKeyCreator {
 
 	@Override
 	public void createSecondaryKeys(SecondaryDatabase secondary, DatabaseEntry keyEntry,DatabaseEntry dataEntry,Set results) throws DatabaseException {
+		if (oDbeb.isColumnar(dataEntry.getData())) {
+			try {
+				Collection oFld = (Collection) oDbeb.getRowCodec().decodeColumn(dataEntry.getData(), sIndx);
+				if (null!=oFld) results.addAll(oFld);
+			} catch (IOException ioe) {
+				throw new IllegalStateException("Could not read column " + sIndx + " of " + oTbl.getName() + " " + ioe.getMessage(), ioe);
+			}
+			return;
+		}
 		DBEntityWrapper oEnt = oDbeb.entryToObject(keyEntry,dataEntry);
 		Record oRec;
 		try {
@@ -17,6 +17,7 @@ import java.io.FileNotFoundException;
 import javax.jdo.JDOException;
 
 import org.judal.serialization.BytesConverter;
+import org.judal.storage.BlockAllocator;
 
 import com.sleepycat.db.Database;
 import com.sleepycat.db.DatabaseConfig;
@@ -26,7 +27,7 @@ import com.sleepycat.db.DatabaseType;
 import com.sleepycat.db.Sequence;
 import com.sleepycat.db.SequenceConfig;
 
-public class DBSequenceGenerator implements javax.jdo.datastore.Sequence {
+public class DBSequenceGenerator implements javax.jdo.datastore.Sequence, BlockAllocator {
 
 	private DBDataSource oEnv;
 	private String sName;
@@ -44,6 +45,38 @@ public class DBSequenceGenerator implements javax.jdo.datastore.Sequence {
 
 	@Override
 	public long nextValue() throws JDOException {
+		lCurrent = reserve(1);
+		return lCurrent;
+	}
+
+	/**
+	 * <p>Reserve a range of consecutive values with a single update of the sequence record.</p>
+	 * @param size int [1..n]
+	 * @return long[] Values in ascending order
+	 * @throws JDOException
+	 */
+	@Override
+	public long[] allocateBlock(int size) throws JDOException {
+		if (size<1)
+			throw new IllegalArgumentException("DBSequenceGenerator block size must be at least 1");
+		final long lFirst = reserve(size);
+		long[] aBlock = new long[size];
+		for (int n=0; n<size; n++)
+			aBlock[n] = lFirst + n;
+		return aBlock;
+	}
+
+	/**
+	 * Berkeley DB sequences cannot be decremented
+	 * @return boolean <b>false</b>
+	 */
+	@Override
+	public boolean releaseBlock(long[] block, int used) {
+		return false;
+	}
+
+	private long reserve(int iDelta) throws JDOException {
+		long lFirst;
 		SequenceConfig oQqg = new SequenceConfig();
 		oQqg.setAutoCommitNoSync(true);
 		oQqg.setAllowCreate(true);
@@ -62,7 +95,7 @@ public class DBSequenceGenerator implements javax.jdo.datastore.Sequence {
 		try {
 			oQdb = new Database(oEnv.getPath()+"Sequence.db", getName(), oSqg);
 			oSqc = oQdb.openSequence(null, oKey, oQqg);
-			lCurrent = oSqc.get(null, 1);
+			lFirst = oSqc.get(null, iDelta);
 			oSqc.close();
 			oSqc=null;
 		} catch (FileNotFoundException fnf) {
@@ -75,8 +108,8 @@ public class DBSequenceGenerator implements javax.jdo.datastore.Sequence {
 			if (null!=oSqc) { try { oSqc.close(); } catch (DatabaseException ignore) { } }
 			if (null!=oQdb) { try { oQdb.close(); } catch (DatabaseException ignore) { } }
 		}
-		return lCurrent;
-	} // nextValue
+		return lFirst;
+	} // reserve
 
 	@Override
 	public void allocate(int arg0) {
@@ -15,9 +15,11 @@ import java.io.File;
  */
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
 import java.sql.Types;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,16 +36,21 @@ import org.judal.metadata.IndexDef.Using;
 import org.judal.metadata.IndexDef.Type;
 import org.judal.metadata.SchemaMetaData;
 import org.judal.metadata.TableDef;
-import org.judal.serialization.Bytes;
 import org.judal.serialization.BytesConverter;
+import org.judal.serialization.OrderedBytesConverter;
+import org.judal.serialization.TableRowCodec;
 import org.judal.storage.ConstraintsChecker;
 import org.judal.storage.Param;
 import org.judal.storage.StandardConstraintsChecker;
 import org.judal.storage.StorageObjectFactory;
+import org.judal.storage.keyvalue.BatchException;
 import org.judal.storage.keyvalue.ReadOnlyBucket;
 import org.judal.storage.keyvalue.Stored;
 import org.judal.storage.query.Operator;
+import org.judal.storage.query.SortDirection;
 import org.judal.storage.table.IndexableTable;
+import org.judal.storage.table.KeysetPage;
+import org.judal.storage.table.PrimitiveRecord;
 import org.judal.storage.table.Record;
 import org.judal.storage.table.RecordSet;
 
@@ -74,7 +81,10 @@ import com.sleepycat.bind.serial.StoredClassCatalog;
  */
 public class DBTable extends DBBucket implements IndexableTable {
 
+	private static final String ORDERED_INDEX_SUFFIX = "_ordered";
+
 	private TableDef oTbl;
+	private TableRowCodec oCdc;
 	private HashMap<String, DBIndex> oInd;
 	private ConstraintsChecker oChk;
 	private Class<? extends Record> cRecCls;
@@ -119,6 +129,98 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 	// --------------------------------------------------------------------------
 
+	/**
+	 * @return DBEntityBinding which writes rows using a TableRowCodec for this table
+	 */
+	@Override
+	protected DBEntityBinding getEntityBinding() {
+		if (null==oCdc)
+			oCdc = new TableRowCodec(oTbl);
+		return new DBEntityBinding(getCatalog(), oCdc);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Rewrite the rows of this table which are stored with Java serialization.</p>
+	 * Rows written before TableRowCodec was used are still readable, but they are deserialized as a whole
+	 * each time that they are loaded or that a secondary key is extracted from them.
+	 * This method rewrites each of those rows once using TableRowCodec. Secondary indexes are updated by Berkeley DB.
+	 * If the caller is not in a transaction then all the rows are rewritten in a single local transaction.
+	 * @return int Number of rows rewritten
+	 * @throws JDOException
+	 */
+	public int upgradeStorageFormat() throws JDOException {
+
+		if (isReadOnly()) throw new JDOException("DBTable.upgradeStorageFormat() table "+name()+" is in read-only mode");
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin DBTable.upgradeStorageFormat("+name()+")");
+			DebugFile.incIdent();
+		}
+
+		int iRewritten = 0;
+		Cursor oPur = null;
+		Transaction oLocal = null;
+
+		try {
+			Transaction oTrn = getTransaction();
+			if (null==oTrn)
+				oTrn = oLocal = beginBatch();
+
+			DBEntityBinding oDbeb = getEntityBinding();
+			DatabaseEntry oDbKey = new DatabaseEntry();
+			DatabaseEntry oDbDat = new DatabaseEntry();
+
+			oPur = getDatabase().openCursor(oTrn, null);
+
+			OperationStatus oOst = oPur.getFirst(oDbKey, oDbDat, LockMode.RMW);
+			while (oOst == OperationStatus.SUCCESS) {
+				if (!oDbeb.isColumnar(oDbDat.getData())) {
+					DBEntityWrapper oWrp = oDbeb.entryToObject(oDbKey, oDbDat);
+					if (oWrp!=null && oDbeb.getRowCodec().canEncode(oWrp.getWrapped())) {
+						oPur.putCurrent(new DatabaseEntry(oDbeb.objectToData(oWrp)));
+						iRewritten++;
+					}
+				}
+				oOst = oPur.getNext(oDbKey, oDbDat, LockMode.RMW);
+			} // wend
+
+			oPur.close();
+			oPur = null;
+
+			if (oLocal!=null) {
+				oLocal.commit();
+				oLocal = null;
+			}
+
+		} catch (DatabaseException xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln(xcpt.getClass().getName() + " " + xcpt.getMessage());
+				DebugFile.decIdent();
+			}
+			throw new JDOException(xcpt.getMessage(), xcpt);
+		} finally {
+			try {
+				if (oPur != null)
+					oPur.close();
+			} catch (Exception ignore) {
+			}
+			if (oLocal!=null) {
+				try { oLocal.abort(); } catch (DatabaseException ignore) { }
+			}
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End DBTable.upgradeStorageFormat() : " + String.valueOf(iRewritten));
+		}
+
+		return iRewritten;
+	}
+
+	// --------------------------------------------------------------------------
+
 	protected void closeIndexes() throws DatabaseException {
 		if (DebugFile.trace) {
 			DebugFile.writeln("Begin DBTable.closeIndexes()");
@@ -248,6 +350,8 @@ public class DBTable extends DBBucket implements IndexableTable {
 					oIdx = oInd.get(sColName);
 					if (oIdx.isClosed())
 						openIndex(sColName, getDataSource().isTransactional());
+					if (oIdx.isOrdered())
+						oDbKey = new DatabaseEntry(OrderedBytesConverter.toBytes(params[0].getValue(), getColumnByName(sColName).getType()));
 					oCur = oIdx.getCursor(getTransaction());
 					if (DebugFile.trace)
 						DebugFile.writeln("SecondaryCursor.getSearchKey(DatabaseEntry, DatabaseEntry, LockMode.DEFAULT)");
@@ -284,7 +388,7 @@ public class DBTable extends DBBucket implements IndexableTable {
 					if (aIdxs[sc].isClosed())
 						openIndex(params[sc].getName(), getDataSource().isTransactional());
 					aCurs[sc] = aIdxs[sc].getCursor(getTransaction());
-					aOst[sc] = aCurs[sc].getSearchKey(new DatabaseEntry(BytesConverter.toBytes(sValue, Types.VARCHAR)), new DatabaseEntry(), LockMode.DEFAULT);
+					aOst[sc] = aCurs[sc].getSearchKey(new DatabaseEntry(getJoinKey(aIdxs[sc], params[sc], sValue)), new DatabaseEntry(), LockMode.DEFAULT);
 				} // next
 
 				oJur = getDatabase().join(aCurs, JoinConfig.DEFAULT);
@@ -380,9 +484,12 @@ public class DBTable extends DBBucket implements IndexableTable {
 			String sSecIdxPath = null;
 
 			final Param oPar = ((Param) oKey);
-			final byte[] byIndexValue = BytesConverter.toBytes(oPar.getValue(), Types.VARCHAR);
 			final String sIndexName = oPar.getName();
 			final Type eType = oPar.getIndexType();
+			final ColumnDef oCol = getColumnByName(sIndexName);
+			final boolean bOrdered = (Type.ONE_TO_ONE.equals(eType) || Type.MANY_TO_ONE.equals(eType)) && oCol!=null &&
+					new File(getIndexPath(sIndexName, true)).exists();
+			final byte[] byIndexValue = bOrdered ? OrderedBytesConverter.toBytes(oPar.getValue(), oCol.getType()) : BytesConverter.toBytes(oPar.getValue(), Types.VARCHAR);
 
 			if (DebugFile.trace) {
 				DebugFile.writeln("index name is " + sIndexName);
@@ -409,7 +516,7 @@ public class DBTable extends DBBucket implements IndexableTable {
 					case ONE_TO_ONE:
 					case MANY_TO_ONE:
 						oSec.setKeyCreator(getDataSource().getKeyCreator(getResultClass(), oTbl, sIndexName,
-								((ColumnDef) getPrimaryKey().getColumns()[0]).getType()));
+								bOrdered ? oCol.getType() : ((ColumnDef) getPrimaryKey().getColumns()[0]).getType(), bOrdered));
 						break;
 					case ONE_TO_MANY:
 					case MANY_TO_MANY:
@@ -419,7 +526,7 @@ public class DBTable extends DBBucket implements IndexableTable {
 						throw new JDOException("Unrecognized index type " + eType);
 					}
 
-					sSecIdxPath = getDataSource().getPath() + getDatabase().getDatabaseName() + "." + sIndexName + ".db";
+					sSecIdxPath = getIndexPath(sIndexName, bOrdered);
 
 					if (DebugFile.trace) {
 						if (new File(sSecIdxPath).exists())
@@ -429,9 +536,9 @@ public class DBTable extends DBBucket implements IndexableTable {
 					}
 
 					oSdb = getDataSource().getEnvironment().openSecondaryDatabase(getTransaction(), sSecIdxPath,
-							getDatabase().getDatabaseName() + "_" + sIndexName, getDatabase(), oSec);
+							getIndexDatabaseName(sIndexName, bOrdered), getDatabase(), oSec);
 
-					DBEntityBinding oDbeb = new DBEntityBinding(getCatalog());
+					DBEntityBinding oDbeb = getEntityBinding();
 					DatabaseEntry oDbKey = new DatabaseEntry(byIndexValue);
 					DatabaseEntry oDbDat = new DatabaseEntry();
 					oCur = oSdb.openSecondaryCursor(getTransaction(), null);
@@ -517,9 +624,19 @@ public class DBTable extends DBBucket implements IndexableTable {
 		}
 		R oRec = null;
 		oRec = StorageObjectFactory.newRecord(recordClass, oTbl);
-		DBEntityWrapper oWrp = oDbeb.entryToObject(oDbKey, oDbDat);
-		oRec.setKey(oWrp.getKey());
-		oRec.setValue(oWrp.getWrapped());
+		boolean bRead = false;
+		if (oRec instanceof PrimitiveRecord) {
+			try {
+				bRead = oDbeb.readInto(oDbKey, oDbDat, (PrimitiveRecord) oRec);
+			} catch (IOException ioe) {
+				throw new JDOException("DBTable.makeRecord() " + ioe.getMessage(), ioe);
+			}
+		}
+		if (!bRead) {
+			DBEntityWrapper oWrp = oDbeb.entryToObject(oDbKey, oDbDat);
+			oRec.setKey(oWrp.getKey());
+			oRec.setValue(oWrp.getWrapped());
+		}
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
 			DebugFile.writeln("End DBTable.makeRecord() : "+oRec);
@@ -590,9 +707,9 @@ public class DBTable extends DBBucket implements IndexableTable {
 		try {
 
 			if (DebugFile.trace)
-				DebugFile.writeln("new DBEntityBinding(getCatalog())");
+				DebugFile.writeln("getEntityBinding()");
 
-			DBEntityBinding oDbeb = new DBEntityBinding(getCatalog());
+			DBEntityBinding oDbeb = getEntityBinding();
 			DatabaseEntry oDbDat = new DatabaseEntry();
 			DatabaseEntry oDbKey = new DatabaseEntry();
 
@@ -657,7 +774,10 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 				if (sIndexValue.endsWith("%")) {
 					sIndexValue = sIndexValue.substring(0, sIndexValue.length() - 1);
-					oDbKey = new DatabaseEntry(BytesConverter.toBytes(sIndexValue, oTbl.getColumnByName(indexColumnName).getType()));
+					if (!usingPk && oInd.get(indexColumnName).isOrdered())
+						oDbKey = new DatabaseEntry(OrderedBytesConverter.toBytes(sIndexValue, oTbl.getColumnByName(indexColumnName).getType()));
+					else
+						oDbKey = new DatabaseEntry(BytesConverter.toBytes(sIndexValue, oTbl.getColumnByName(indexColumnName).getType()));
 					if (usingPk)
 						oOst = oPur.getSearchKeyRange(oDbKey, oDbDat, LockMode.DEFAULT);
 					else
@@ -690,7 +810,11 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 					if (DebugFile.trace)
 						DebugFile.writeln("new DatabaseEntry(BytesConverter.toBytes(" + sIndexValue + ", " + ColumnDef.typeName(getColumnByName(indexColumnName).getType()) + "))");
-					byte[] byKey = BytesConverter.toBytes(sIndexValue, getColumnByName(indexColumnName).getType());
+					byte[] byKey;
+					if (!usingPk && oInd.get(indexColumnName).isOrdered())
+						byKey = OrderedBytesConverter.toBytes(indexValue, getColumnByName(indexColumnName).getType());
+					else
+						byKey = BytesConverter.toBytes(sIndexValue, getColumnByName(indexColumnName).getType());
 					if (DebugFile.trace) {
 						StringBuffer oStrKey = new StringBuffer(byKey.length*3);
 						for (int b=0; b<byKey.length; b++) oStrKey.append(" "+Integer.toHexString(byKey[b]));
@@ -848,11 +972,9 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 			Object oValue;
 			DBEntityWrapper oDbEnt;
-			DBEntityBinding oDbeb = new DBEntityBinding(getCatalog());
+			DBEntityBinding oDbeb = getEntityBinding();
 			DatabaseEntry oDbDat = new DatabaseEntry();
 			DatabaseEntry oDbKey = new DatabaseEntry();
-			;
-			boolean bMinExists;
 
 			DBIndex oIdx = oInd.get(sIndexColumn);
 			if (oIdx.isClosed())
@@ -863,72 +985,81 @@ public class DBTable extends DBBucket implements IndexableTable {
 			if (DebugFile.trace)
 				DebugFile.writeln("got SecondaryCursor for " + sIndexColumn);
 
-			oDbKey = new DatabaseEntry(byMin);
-			oOst = oCur.getSearchKey(oDbKey, oDbDat, LockMode.DEFAULT);
-			bMinExists = (oOst == OperationStatus.SUCCESS);
-			oCur.close();
-			oCur = null;
+			final int iType = getColumnByName(sIndexColumn).getType();
+			final byte[] byLower = OrderedBytesConverter.toBytes(BytesConverter.fromBytes(byMin, iType), iType);
+			final byte[] byUpper = OrderedBytesConverter.toBytes(BytesConverter.fromBytes(byMax, iType), iType);
 
-			if (DebugFile.trace)
-				DebugFile.writeln(sIndexColumn + " has" + (bMinExists ? "" : " not") + " a minimum value");
+			if (oIdx.isOrdered()) {
 
-			final int iType = getColumnByName(sIndexColumn).getType();
+				// The index keys were written by OrderedBytesConverter, so read them from byLower until the first one above byUpper
 
-			if (bMinExists) {
+				if (DebugFile.trace)
+					DebugFile.writeln("SecondaryCursor.getSearchKeyRange(" + sIndexColumn + ")");
 
-				oCur = oIdx.getCursor(getTransaction());
-				oDbKey = new DatabaseEntry(byMin);
-				oOst = oCur.getSearchKey(oDbKey, oDbDat, LockMode.DEFAULT);
+				oDbKey = new DatabaseEntry(byLower);
+				oOst = oCur.getSearchKeyRange(oDbKey, oDbDat, LockMode.DEFAULT);
 				while (oOst == OperationStatus.SUCCESS) {
+					if (OrderedBytesConverter.COMPARATOR.compare(oDbKey.getData(), oDbKey.getOffset(), oDbKey.getSize(), byUpper, 0, byUpper.length) > 0)
+						break;
 					R oRec = (R) StorageObjectFactory.newRecord(getResultClass(), oTbl);
 					oDbEnt = oDbeb.entryToObject(oDbKey, oDbDat);
 					oRec.setKey(oDbEnt.getKey());
 					oRec.setValue(oDbEnt.getWrapped());
-					oValue = oRec.apply(sIndexColumn);
-					if (oValue != null) {
-						if (Bytes.compareTo(BytesConverter.toBytes(oValue, iType), byMax) > 0)
-							break;						
-						oEst.add(oRec);
-					}
+					oEst.add(oRec);
 					oOst = oCur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
 				} // wend
 				oCur.close();
 				oCur = null;
 
-			} else {
+			} else if (isIndexKeyOrdered(iType)) {
 
-				oPur = getDatabase().openCursor(getTransaction(), null);
-				oOst = oPur.getFirst(oDbKey, oDbDat, LockMode.DEFAULT);
+				// The legacy index keys of character columns sort like the column values, so read them from byMin until the first one above byMax
 
+				if (DebugFile.trace)
+					DebugFile.writeln("SecondaryCursor.getSearchKeyRange(" + sIndexColumn + ")");
+
+				oDbKey = new DatabaseEntry(byMin);
+				oOst = oCur.getSearchKeyRange(oDbKey, oDbDat, LockMode.DEFAULT);
 				while (oOst == OperationStatus.SUCCESS) {
-					Record oRec = StorageObjectFactory.newRecord(getResultClass(), oTbl);
+					R oRec = (R) StorageObjectFactory.newRecord(getResultClass(), oTbl);
 					oDbEnt = oDbeb.entryToObject(oDbKey, oDbDat);
 					oRec.setKey(oDbEnt.getKey());
 					oRec.setValue(oDbEnt.getWrapped());
 					oValue = oRec.apply(sIndexColumn);
-					if (oValue != null)
-						if (Bytes.compareTo(BytesConverter.toBytes(oValue, iType), byMin) >= 0) {
-							if (Bytes.compareTo(BytesConverter.toBytes(oValue, iType), byMax) <= 0)
-								oEst.add((R) oRec);
+					if (oValue != null) {
+						if (OrderedBytesConverter.COMPARATOR.compare(OrderedBytesConverter.toBytes(oValue, iType), byUpper) > 0)
 							break;
-						}
-					oOst = oPur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
+						oEst.add(oRec);
+					}
+					oOst = oCur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
 				} // wend
+				oCur.close();
+				oCur = null;
 
-				oOst = oPur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
+			} else {
+
+				// Legacy index keys of numbers and dates do not sort like the values, so every record must be checked
+
+				oCur.close();
+				oCur = null;
+
+				if (DebugFile.trace)
+					DebugFile.writeln(sIndexColumn + " index keys are not ordered, scanning all records");
+
+				oPur = getDatabase().openCursor(getTransaction(), null);
+				oOst = oPur.getFirst(oDbKey, oDbDat, LockMode.DEFAULT);
 				while (oOst == OperationStatus.SUCCESS) {
-					Record oRec = StorageObjectFactory.newRecord(getResultClass(), oTbl);
+					R oRec = (R) StorageObjectFactory.newRecord(getResultClass(), oTbl);
 					oDbEnt = oDbeb.entryToObject(oDbKey, oDbDat);
 					oRec.setKey(oDbEnt.getKey());
 					oRec.setValue(oDbEnt.getWrapped());
 					oValue = oRec.apply(sIndexColumn);
 					if (oValue != null) {
-						if (Bytes.compareTo(BytesConverter.toBytes(oValue, iType), byMax) > 0)
-							break;
-						oEst.add((R) oRec);
+						final byte[] byValue = OrderedBytesConverter.toBytes(oValue, iType);
+						if (OrderedBytesConverter.COMPARATOR.compare(byValue, byLower) >= 0 && OrderedBytesConverter.COMPARATOR.compare(byValue, byUpper) <= 0)
+							oEst.add(oRec);
 					}
 					oOst = oPur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
-
 				} // wend
 				oPur.close();
 				oPur = null;
@@ -970,6 +1101,27 @@ public class DBTable extends DBBucket implements IndexableTable {
 		return (RecordSet<R>) oEst;
 	} // fetch
 
+	/**
+	 * @param iType int java.sql.Types
+	 * @return boolean <b>true</b> if the legacy secondary index keys written by BytesConverter for iType sort like the column values
+	 */
+	private static boolean isIndexKeyOrdered(int iType) {
+		switch (iType) {
+			case Types.CHAR:
+			case Types.NCHAR:
+			case Types.VARCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.LONGNVARCHAR:
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+				return true;
+			default:
+				return false;
+		}
+	}
+
 	// --------------------------------------------------------------------------
 
 	public <R extends Record> RecordSet<R> fetch(final String sIndexColumn, Date dtIndexValueMin, Date dtIndexValueMax) throws JDOException {
@@ -1049,7 +1201,7 @@ public class DBTable extends DBBucket implements IndexableTable {
 			if (maxrows <= 0)
 				throw new JDOException("Invalid value for max rows parameter " + String.valueOf(maxrows));
 
-			DBEntityBinding oDbeb = new DBEntityBinding(getCatalog());
+			DBEntityBinding oDbeb = getEntityBinding();
 			DatabaseEntry oDbDat = new DatabaseEntry();
 			DatabaseEntry oDbKey = new DatabaseEntry();
 			JoinCursor oJur = null;
@@ -1078,7 +1230,7 @@ public class DBTable extends DBBucket implements IndexableTable {
 					if (aIdxs[sc].isClosed())
 						openIndex(params[sc].getName(), getDataSource().isTransactional());
 					aCurs[sc] = aIdxs[sc].getCursor(getTransaction());
-					aOst[sc] = aCurs[sc].getSearchKey(new DatabaseEntry(BytesConverter.toBytes(sValue, Types.VARCHAR)),
+					aOst[sc] = aCurs[sc].getSearchKey(new DatabaseEntry(getJoinKey(aIdxs[sc], params[sc], sValue)),
 							new DatabaseEntry(), LockMode.DEFAULT);
 				} // next
 
@@ -1174,6 +1326,193 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 	// --------------------------------------------------------------------------
 
+	/**
+	 * <p>Fetch records sorted by a column up to a maximum number of records.</p>
+	 * When no filter column is given and the records are sorted by a character primary key
+	 * the primary cursor is read forwards or backwards and it stops after maxrows records.
+	 * Numeric keys are not stored in an order preserving format, so in any other case
+	 * matching records are fetched and then sorted in memory.
+	 * @param fetchGroup FetchGroup Ignored. All columns are always fetched
+	 * @param indexColumnName String Name of the column to filter or <b>null</b> to fetch all records
+	 * @param valueSearched Object
+	 * @param sortByColumn String Column used to sort the records
+	 * @param sortDirection String SortDirection.ASC or SortDirection.DESC. If <b>null</b> then records are sorted in ascending order
+	 * @param maxrows int Maximum number of records to return or -1 for all records
+	 * @return RecordSet&lt;R&gt;
+	 * @throws JDOException
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <R extends Record> RecordSet<R> fetchOrdered(FetchGroup fetchGroup, String indexColumnName, Object valueSearched, String sortByColumn, String sortDirection, int maxrows) throws JDOException {
+
+		final String pkColumn = getPrimaryKey().getColumn();
+
+		if (null!=indexColumnName || !pkColumn.equalsIgnoreCase(sortByColumn))
+			return IndexableTable.super.fetchOrdered(fetchGroup, indexColumnName, valueSearched, sortByColumn, sortDirection, maxrows);
+
+		final int pkType = getColumnByName(pkColumn).getType();
+		if (pkType!=Types.CHAR && pkType!=Types.VARCHAR && pkType!=Types.LONGVARCHAR && pkType!=Types.NCHAR && pkType!=Types.NVARCHAR)
+			return IndexableTable.super.fetchOrdered(fetchGroup, indexColumnName, valueSearched, sortByColumn, sortDirection, maxrows);
+
+		final boolean descending = sortDirection!=null && SortDirection.same(SortDirection.DESC, sortDirection.trim());
+		final int limit = maxrows>0 ? maxrows : Integer.MAX_VALUE;
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin DBTable.fetchOrdered(" + sortByColumn + (descending ? SortDirection.DESC : SortDirection.ASC) + "," + String.valueOf(maxrows) + ")");
+			DebugFile.incIdent();
+		}
+
+		RecordSet<R> oEst;
+		try {
+			oEst = StorageObjectFactory.newRecordSetOf((Class<R>) getResultClass(), maxrows>0 ? maxrows : 100);
+		} catch (NoSuchMethodException e) {
+			throw new JDOException(e.getMessage(), e);
+		}
+
+		Cursor oPur = null;
+		try {
+			DBEntityBinding oDbeb = getEntityBinding();
+			DatabaseEntry oDbDat = new DatabaseEntry();
+			DatabaseEntry oDbKey = new DatabaseEntry();
+			oPur = getDatabase().openCursor(getTransaction(), null);
+			OperationStatus oOst = descending ? oPur.getLast(oDbKey, oDbDat, LockMode.DEFAULT) : oPur.getFirst(oDbKey, oDbDat, LockMode.DEFAULT);
+			while (oOst == OperationStatus.SUCCESS && oEst.size()<limit) {
+				oEst.add((R) makeRecord(getResultClass(), oDbeb, oDbKey, oDbDat));
+				oOst = descending ? oPur.getPrev(oDbKey, oDbDat, LockMode.DEFAULT) : oPur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
+			}
+			oPur.close();
+			oPur = null;
+		} catch (Exception xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln(xcpt.getClass().getName() + " " + xcpt.getMessage());
+				DebugFile.decIdent();
+			}
+			throw new JDOException(xcpt.getMessage(), xcpt);
+		} finally {
+			try {
+				if (oPur != null)
+					oPur.close();
+			} catch (Exception ignore) {
+			}
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End DBTable.fetchOrdered() : " + String.valueOf(oEst.size()));
+		}
+
+		return oEst;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Fetch a page of records sorted by primary key starting after a given key.</p>
+	 * The cursor is positioned with getSearchKeyRange() at the first key after lastKey,
+	 * so fetching a deep page does not walk the records of the previous pages.
+	 * Keys are sorted in the byte order of their stored representation.
+	 * Params, if any, are checked against each record read from the cursor.
+	 * @param fetchGroup FetchGroup Ignored. All columns are always fetched
+	 * @param sortColumnName String Must be the name of the primary key column
+	 * @param lastKey Comparable&lt;?&gt; Continuation of the previous page or <b>null</b> to get the first page
+	 * @param maxrows int Page size
+	 * @param params Param&hellip; Column values that the fetched records must have
+	 * @return KeysetPage&lt;R&gt;
+	 * @throws JDOException
+	 * @throws JDOUnsupportedOptionException if sortColumnName is not the primary key
+	 * @throws JDOUserException if maxrows is zero or negative
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <R extends Record> KeysetPage<R> fetchPage(FetchGroup fetchGroup, String sortColumnName, Comparable<?> lastKey, int maxrows, Param... params) throws JDOException {
+
+		if (!getPrimaryKey().getColumn().equalsIgnoreCase(sortColumnName))
+			throw new JDOUnsupportedOptionException("DBTable.fetchPage() keyset pagination is only supported on primary key column " + getPrimaryKey().getColumn());
+
+		if (maxrows <= 0)
+			throw new JDOUserException("Page size must be greater than zero");
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin DBTable.fetchPage(" + sortColumnName + "," + lastKey + "," + String.valueOf(maxrows) + ")");
+			DebugFile.incIdent();
+		}
+
+		RecordSet<R> oEst;
+		try {
+			oEst = StorageObjectFactory.newRecordSetOf((Class<R>) getResultClass(), maxrows);
+		} catch (NoSuchMethodException e) {
+			throw new JDOException(e.getMessage(), e);
+		}
+
+		Cursor oPur = null;
+		OperationStatus oOst;
+		int fetched = 0;
+
+		try {
+			DBEntityBinding oDbeb = getEntityBinding();
+			DatabaseEntry oDbDat = new DatabaseEntry();
+			DatabaseEntry oDbKey;
+
+			oPur = getDatabase().openCursor(getTransaction(), null);
+
+			if (null==lastKey) {
+				oDbKey = new DatabaseEntry();
+				oOst = oPur.getFirst(oDbKey, oDbDat, LockMode.DEFAULT);
+			} else {
+				final byte[] byLastKey = BytesConverter.toBytes(lastKey, getColumnByName(sortColumnName).getType());
+				oDbKey = new DatabaseEntry(byLastKey);
+				oOst = oPur.getSearchKeyRange(oDbKey, oDbDat, LockMode.DEFAULT);
+				if (oOst == OperationStatus.SUCCESS && Arrays.equals(byLastKey, oDbKey.getData()))
+					oOst = oPur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
+			}
+
+			while (oOst == OperationStatus.SUCCESS && fetched<maxrows) {
+				R oRec = (R) makeRecord(getResultClass(), oDbeb, oDbKey, oDbDat);
+				if (matches(oRec, params)) {
+					oEst.add(oRec);
+					fetched++;
+				}
+				oOst = oPur.getNext(oDbKey, oDbDat, LockMode.DEFAULT);
+			} // wend
+
+			oPur.close();
+			oPur = null;
+
+		} catch (Exception xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln(xcpt.getClass().getName() + " " + xcpt.getMessage());
+				DebugFile.decIdent();
+			}
+			throw new JDOException(xcpt.getMessage(), xcpt);
+		} finally {
+			try {
+				if (oPur != null)
+					oPur.close();
+			} catch (Exception ignore) {
+			}
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End DBTable.fetchPage() : " + String.valueOf(fetched));
+		}
+
+		return new KeysetPage<R>(oEst, getPrimaryKey().getColumn(), maxrows);
+	}
+
+	// --------------------------------------------------------------------------
+
+	private static boolean matches(Record oRec, Param... params) {
+		if (params!=null) {
+			for (Param p : params)
+				if (!String.valueOf(oRec.apply(p.getName())).equals(String.valueOf(p.getValue())))
+					return false;
+		}
+		return true;
+	}
+
+	// --------------------------------------------------------------------------
+
 	@Override
 	public void createIndex(String indexName, boolean unique, Using indexUsing, String... columns) throws JDOException {
 		DBIndex oIdx = openIndex(columns[0], getDataSource().isTransactional());
@@ -1203,14 +1542,19 @@ public class DBTable extends DBBucket implements IndexableTable {
 		if (DebugFile.trace)
 			DebugFile.writeln("relation type is " + oIdx.getType());
 
+		final boolean bOrdered = isOrderedIndex(oIdx, sColumnName);
+
+		if (DebugFile.trace)
+			DebugFile.writeln("index keys are " + (bOrdered ? "ordered" : "legacy"));
+
 		if (!isReadOnly()) {
 			if (oIdx.getType().equals(Type.ONE_TO_ONE) || oIdx.getType().equals(Type.MANY_TO_ONE)) {
 				ColumnDef oCol = getColumnByName(sColumnName);
 				if (oCol == null)
 					throw new JDOException("Column " + sColumnName + " not found at table " + name());
 				if (DebugFile.trace)
-					DebugFile.writeln("SecondaryConfig.setKeyCreator(DBDataSource.getKeyCreator("+getResultClass().getName()+", "+oTbl.getName()+", "+sColumnName+", "+ColumnDef.typeName(oCol.getType())+")");
-				oSec.setKeyCreator(getDataSource().getKeyCreator(getResultClass(), oTbl, sColumnName, oCol.getType()));
+					DebugFile.writeln("SecondaryConfig.setKeyCreator(DBDataSource.getKeyCreator("+getResultClass().getName()+", "+oTbl.getName()+", "+sColumnName+", "+ColumnDef.typeName(oCol.getType())+", "+String.valueOf(bOrdered)+")");
+				oSec.setKeyCreator(getDataSource().getKeyCreator(getResultClass(), oTbl, sColumnName, oCol.getType(), bOrdered));
 			} else if (oIdx.getType().equals(Type.ONE_TO_MANY)
 					|| oIdx.getType().equals(Type.MANY_TO_MANY)) {
 				if (DebugFile.trace)
@@ -1225,8 +1569,8 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 		try {
 
-			final String sSecDbPath = getDataSource().getPath() + getDatabase().getDatabaseName() + "." + sColumnName + ".db";
-			final String sSecIdxName = getDatabase().getDatabaseName() + "_" + oIdx.getName();
+			final String sSecDbPath = getIndexPath(sColumnName, bOrdered);
+			final String sSecIdxName = getIndexDatabaseName(oIdx.getName(), bOrdered);
 			Transaction oTrn = useTransaction ? getTransaction() : null;
 			
 			if (DebugFile.trace)
@@ -1234,10 +1578,19 @@ public class DBTable extends DBBucket implements IndexableTable {
 						+ sSecIdxName + ", " + getDatabase() + ", " + oSec + ", " + String.valueOf(isReadOnly())
 						+ "))");
 			
-			oIdx.open(getDataSource().getEnvironment().openSecondaryDatabase(oTrn, sSecDbPath, sSecIdxName, getDatabase(), oSec));
+			oIdx.open(getDataSource().getEnvironment().openSecondaryDatabase(oTrn, sSecDbPath, sSecIdxName, getDatabase(), oSec), bOrdered);
 			if (DebugFile.trace)
 				DebugFile.writeln("opened index " + sSecIdxName);
 
+			// The ordered index has been populated from the primary database when it was created, so the legacy one is no longer needed
+			if (bOrdered && !isReadOnly() && new File(getIndexPath(sColumnName, false)).exists()) {
+				if (DebugFile.trace)
+					DebugFile.writeln("Environment.removeDatabase(" + getIndexPath(sColumnName, false) + ", " + getIndexDatabaseName(oIdx.getName(), false) + ")");
+				getDataSource().getEnvironment().removeDatabase(oTrn, getIndexPath(sColumnName, false), getIndexDatabaseName(oIdx.getName(), false));
+				File oDbf = new File(getIndexPath(sColumnName, false));
+				if (oDbf.exists()) oDbf.delete();
+			}
+
 		} catch (DeadlockException dle) {
 			if (DebugFile.trace)
 				DebugFile.writeln("DeadlockException " + String.valueOf(dle.getErrno())
@@ -1259,6 +1612,51 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 	// --------------------------------------------------------------------------
 
+	/**
+	 * <p>Get the path of the file of a secondary index.</p>
+	 * Ordered and legacy indexes are kept in different files, so an existing legacy index
+	 * is rebuilt with ordered keys the first time that it is opened for writing.
+	 * @param sIndexName String
+	 * @param bOrdered boolean
+	 * @return String
+	 */
+	private String getIndexPath(String sIndexName, boolean bOrdered) {
+		return getDataSource().getPath() + getDatabase().getDatabaseName() + "." + sIndexName + (bOrdered ? ORDERED_INDEX_SUFFIX : "") + ".db";
+	}
+
+	private String getIndexDatabaseName(String sIndexName, boolean bOrdered) {
+		return getDatabase().getDatabaseName() + "_" + sIndexName + (bOrdered ? ORDERED_INDEX_SUFFIX : "");
+	}
+
+	/**
+	 * Single key indexes on columns of a type with a natural order have ordered keys unless the KEY_FORMAT property is legacy.
+	 * A read-only table keeps using its legacy index until it is opened for writing.
+	 */
+	private boolean isOrderedIndex(DBIndex oIdx, String sColumnName) {
+		if (!getDataSource().hasOrderedIndexKeys())
+			return false;
+		if (!oIdx.getType().equals(Type.ONE_TO_ONE) && !oIdx.getType().equals(Type.MANY_TO_ONE))
+			return false;
+		final ColumnDef oCol = getColumnByName(sColumnName);
+		if (oCol == null || !OrderedBytesConverter.isOrderable(oCol.getType()))
+			return false;
+		if (isReadOnly())
+			return new File(getIndexPath(sColumnName, true)).exists() || !new File(getIndexPath(sColumnName, false)).exists();
+		return true;
+	}
+
+	/**
+	 * Legacy join keys are the value as a VARCHAR
+	 */
+	private byte[] getJoinKey(DBIndex oIdx, Param oPar, String sValue) {
+		if (oIdx.isOrdered())
+			return OrderedBytesConverter.toBytes(oPar.getValue(), getColumnByName(oPar.getName()).getType());
+		else
+			return BytesConverter.toBytes(sValue, Types.VARCHAR);
+	}
+
+	// --------------------------------------------------------------------------
+
 	public void dropIndex(final String sIndexColumn) throws JDOException {
 		if (DebugFile.trace) {
 			DebugFile.writeln("Begin DBTable.dropIndex("+sIndexColumn+")");
@@ -1270,13 +1668,15 @@ public class DBTable extends DBBucket implements IndexableTable {
 				DBIndex oIdx = oInd.get(sIndexColumn);
 				oIdx.close();
 				oInd.remove(sIndexColumn);
-				if (DebugFile.trace)
-					DebugFile.writeln("Database.remove("+
-						getDataSource().getPath() + getDatabase().getDatabaseName() + "." + oIdx.getName() + ".db, " + 
-						getDatabase().getDatabaseName() + "_" + oIdx.getName() +")");
-				getDataSource().getEnvironment().removeDatabase(getTransaction(), getDataSource().getPath() + getDatabase().getDatabaseName() + "." + oIdx.getName() + ".db", getDatabase().getDatabaseName() + "_" + oIdx.getName());
-				File oDbf = new File(getDataSource().getPath() + getDatabase().getDatabaseName() + "." + oIdx.getName() + ".db");
-				if (oDbf.exists()) oDbf.delete();
+				for (boolean bOrdered : new boolean[]{false, true}) {
+					File oDbf = new File(getIndexPath(oIdx.getName(), bOrdered));
+					if (oDbf.exists()) {
+						if (DebugFile.trace)
+							DebugFile.writeln("Database.remove("+ getIndexPath(oIdx.getName(), bOrdered) + ", " + getIndexDatabaseName(oIdx.getName(), bOrdered) +")");
+						getDataSource().getEnvironment().removeDatabase(getTransaction(), getIndexPath(oIdx.getName(), bOrdered), getIndexDatabaseName(oIdx.getName(), bOrdered));
+						if (oDbf.exists()) oDbf.delete();
+					}
+				}
 				// Database.remove(getDataSource().getPath() + getDatabase().getDatabaseName() + "." + oIdx.getName() + ".db", getDatabase().getDatabaseName() + "_" + oIdx.getName(), null);
 			} else {
 				throw new JDOException("Index not found " + sIndexColumn);
@@ -1345,22 +1745,63 @@ public class DBTable extends DBBucket implements IndexableTable {
 			DebugFile.incIdent();
 		}
 
+		store(oRec, keyToStore(oRec));
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End DBTable.store()");
+		}		
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Check constraints and get the raw key under which a record will be stored.</p>
+	 * @param oRec Stored
+	 * @return byte[]
+	 * @throws JDOException if the record does not pass constraints check
+	 */
+	@Override
+	protected byte[] keyToStore(Stored oRec) throws JDOException {
 		if (getDataSource() instanceof DBTableDataSource && oRec instanceof Record) {
 			DBTableDataSource tableDataSrc = (DBTableDataSource) getDataSource();
 			if (oChk == null)
-				oChk = new StandardConstraintsChecker(new DBSequenceGenerator(getDataSource(), name()), new DBForeignKeyChecker(tableDataSrc));
+				oChk = new StandardConstraintsChecker(getDataSource().getSequence(name()), new DBForeignKeyChecker(tableDataSrc));
 			oChk.check(tableDataSrc, (Record) oRec);
 		}
 
 		if (DebugFile.trace)
-			DebugFile.writeln("DBBucket.store(Stored, BytesConverter.toBytes("+oRec.getKey()+", "+ColumnDef.typeName(oTbl.getColumnByName(oTbl.getPrimaryKeyMetadata().getColumn()).getType())+")");
-		
-		store(oRec, BytesConverter.toBytes(oRec.getKey(), oTbl.getColumnByName(oTbl.getPrimaryKeyMetadata().getColumn()).getType()));
+			DebugFile.writeln("BytesConverter.toBytes("+oRec.getKey()+", "+ColumnDef.typeName(oTbl.getColumnByName(oTbl.getPrimaryKeyMetadata().getColumn()).getType())+")");
 
-		if (DebugFile.trace) {
-			DebugFile.decIdent();
-			DebugFile.writeln("End DBTable.store()");
-		}		
+		return BytesConverter.toBytes(oRec.getKey(), oTbl.getColumnByName(oTbl.getPrimaryKeyMetadata().getColumn()).getType());
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Insert several records.</p>
+	 * If the caller is not in a transaction then all the records are written in a single local transaction.
+	 * Records whose primary key already exists are reported as failed.
+	 * @param oRecs Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more records could not be inserted
+	 * @throws JDOException
+	 */
+	@Override
+	public void insertAll(Iterable<? extends Stored> oRecs) throws JDOException {
+		writeAll("insertAll", oRecs, true);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * @param oKey Object
+	 * @return Object <b>null</b> if oKey is a Param for a secondary index
+	 */
+	@Override
+	protected Object primaryKeyValue(Object oKey) {
+		if (oKey instanceof Param && !((Param) oKey).getName().equalsIgnoreCase(getPrimaryKey().getColumn()))
+			return null;
+		return super.primaryKeyValue(oKey);
 	}
 
 	// --------------------------------------------------------------------------
@@ -1412,9 +1853,9 @@ public class DBTable extends DBBucket implements IndexableTable {
 		try {
 
 			if (DebugFile.trace)
-				DebugFile.writeln("new DBEntityBinding(getCatalog())");
+				DebugFile.writeln("getEntityBinding()");
 
-			DBEntityBinding oDbeb = new DBEntityBinding(getCatalog());
+			DBEntityBinding oDbeb = getEntityBinding();
 			DatabaseEntry oDbDat = new DatabaseEntry();
 			DatabaseEntry oDbKey = new DatabaseEntry();
 
@@ -1467,7 +1908,10 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 				if (sIndexValue.endsWith("%")) {
 					sIndexValue = sIndexValue.substring(0, sIndexValue.length() - 1);
-					oDbKey = new DatabaseEntry(BytesConverter.toBytes(sIndexValue, oTbl.getColumnByName(indexColumnName).getType()));
+					if (!usingPk && oInd.get(indexColumnName).isOrdered())
+						oDbKey = new DatabaseEntry(OrderedBytesConverter.toBytes(sIndexValue, oTbl.getColumnByName(indexColumnName).getType()));
+					else
+						oDbKey = new DatabaseEntry(BytesConverter.toBytes(sIndexValue, oTbl.getColumnByName(indexColumnName).getType()));
 					if (usingPk)
 						oOst = oPur.getSearchKeyRange(oDbKey, oDbDat, LockMode.DEFAULT);
 					else
@@ -1495,7 +1939,11 @@ public class DBTable extends DBBucket implements IndexableTable {
 
 					if (DebugFile.trace)
 						DebugFile.writeln("new DatabaseEntry(BytesConverter.toBytes(" + sIndexValue + ", " + ColumnDef.typeName(getColumnByName(indexColumnName).getType()) + "))");
-					byte[] byKey = BytesConverter.toBytes(sIndexValue, getColumnByName(indexColumnName).getType());
+					byte[] byKey;
+					if (!usingPk && oInd.get(indexColumnName).isOrdered())
+						byKey = OrderedBytesConverter.toBytes(indexValue, getColumnByName(indexColumnName).getType());
+					else
+						byKey = BytesConverter.toBytes(sIndexValue, getColumnByName(indexColumnName).getType());
 					if (DebugFile.trace) {
 						StringBuffer oStrKey = new StringBuffer(byKey.length*3);
 						for (int b=0; b<byKey.length; b++) oStrKey.append(" "+Integer.toHexString(byKey[b]));
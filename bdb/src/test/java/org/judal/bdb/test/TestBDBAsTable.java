@@ -1,7 +1,12 @@
 package org.judal.bdb.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.jdo.JDOException;
@@ -16,15 +21,23 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import com.knowgate.io.FileUtils;
+import com.sleepycat.db.DatabaseEntry;
+import com.sleepycat.db.DatabaseException;
 
 import org.judal.storage.DataSource;
 import org.judal.storage.java.test.AbstractTableTest;
 import org.judal.storage.java.test.MapRecord1;
 import org.judal.storage.java.test.MapRecord2;
 import org.judal.metadata.SchemaMetaData;
+import org.judal.serialization.BytesConverter;
 import org.judal.transaction.DataSourceTransactionManager;
 
+import org.judal.bdb.DBEntityWrapper;
+import org.judal.bdb.DBTable;
 import org.judal.bdb.DBTableDataSource;
 
 public class TestBDBAsTable extends AbstractTableTest {
@@ -127,5 +140,46 @@ public class TestBDBAsTable extends AbstractTableTest {
 			dts=null;
 		}
 	}
+
+	@Test
+	public void test06StorageFormat() throws JDOException, IOException, InstantiationException, IllegalAccessException, DatabaseException {
+		File directory = new File(properties.get(DataSource.DBENV));
+		if (directory.exists())
+			FileUtils.deleteDirectory(directory);
+		FileUtils.forceMkdir(directory);
+		dts = new DBTableDataSource(properties, null, metaData);
+		MapRecord1.dataSource = dts;
+		createTable1(dts);
+		createRecords1(dts);
+		try (DBTable tbl = dts.openTable(new MapRecord1())) {
+			assertEquals(0, tbl.upgradeStorageFormat());
+			assertEquals(1l, tbl.count("name", "Peter Scott"));
+
+			HashMap<String,Object> legacy = new HashMap<>();
+			legacy.put("id", new Integer(100));
+			legacy.put("created", new Timestamp(System.currentTimeMillis()));
+			legacy.put("name", "Legacy Row");
+			final byte[] key = BytesConverter.toBytes(new Integer(100), Types.INTEGER);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeObject(new DBEntityWrapper(key, legacy));
+			}
+			tbl.getDatabase().put(null, new DatabaseEntry(key), new DatabaseEntry(bytes.toByteArray()));
+
+			MapRecord1 rec = new MapRecord1();
+			assertTrue(tbl.load(new Integer(100), rec));
+			assertEquals("Legacy Row", rec.getName());
+			assertEquals(1, tbl.upgradeStorageFormat());
+			assertEquals(0, tbl.upgradeStorageFormat());
+			rec = new MapRecord1();
+			assertTrue(tbl.load(new Integer(100), rec));
+			assertEquals("Legacy Row", rec.getName());
+			assertEquals(1l, tbl.count("name", "Legacy Row"));
+		} finally {
+			dts.dropTable(MapRecord1.tableName, false);
+			dts.close();
+			dts=null;
+		}
+	}
 	
 }
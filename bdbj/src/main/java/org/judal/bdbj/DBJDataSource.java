@@ -31,6 +31,7 @@ import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 
 import org.judal.metadata.ViewDef;
+import org.judal.storage.BlockSequencePool;
 import org.judal.storage.DataSource;
 import org.judal.storage.Param;
 import org.judal.storage.table.Record;
@@ -74,9 +75,12 @@ public class DBJDataSource implements DataSource {
 
 	private ConcurrentHashMap<String, DBJBucket> oConnectionMap;
 
+	private final BlockSequencePool oSqp;
+
 	// --------------------------------------------------------------------------
 
 	public DBJDataSource(Map<String,String> properties, TransactionManager transactManager, SchemaMetaData metaData) throws JDOException {
+		oSqp = BlockSequencePool.forProperties(properties);
 		oTmn = transactManager;
 		bTransactional = (oTmn!=null);
 		if (DebugFile.trace) DebugFile.writeln("open("+properties.get(DataSource.DBENV)+", null, null, false)");
@@ -91,6 +95,10 @@ public class DBJDataSource implements DataSource {
 		return new DBSecondaryIndexCreator(new DBJEntityBinding(oCtg), oRecCls, oTbl, sColumnName, iColumnType);
 	}
 
+	public SecondaryKeyCreator getKeyCreator(Class<? extends Record> oRecCls, TableDef oTbl, String sColumnName, int iColumnType, boolean bOrderedKeys) {
+		return new DBSecondaryIndexCreator(new DBJEntityBinding(oCtg), oRecCls, oTbl, sColumnName, iColumnType, bOrderedKeys);
+	}
+
 	public SecondaryMultiKeyCreator getMultiKeyCreator(Class<? extends Record> oRecCls, TableDef oTbl, String sIdx) {
 		return new DBSecondaryMultiIndexCreator(new DBJEntityBinding(oCtg), oRecCls, oTbl, sIdx);
 	}
@@ -317,6 +325,8 @@ public class DBJDataSource implements DataSource {
 				if (inTransaction())
 					getTransaction().abort();
 
+				oSqp.close();
+
 				closeTables();
 
 				if (oCtg!=null) {
@@ -430,7 +440,7 @@ public class DBJDataSource implements DataSource {
 
 	@Override
 	public Sequence getSequence(String name) throws JDOException {
-		return new DBJSequenceGenerator(this,name);
+		return oSqp.get(new DBJSequenceGenerator(this,name));
 	}
 
 	@Override
@@ -15,6 +15,7 @@ package org.judal.bdbj;
 import javax.jdo.JDOException;
 
 import org.judal.serialization.BytesConverter;
+import org.judal.storage.BlockAllocator;
 
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
@@ -23,7 +24,7 @@ import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Sequence;
 import com.sleepycat.je.SequenceConfig;
 
-public class DBJSequenceGenerator implements javax.jdo.datastore.Sequence {
+public class DBJSequenceGenerator implements javax.jdo.datastore.Sequence, BlockAllocator {
 
 	private DBJDataSource oEnv;
 	private String sName;
@@ -41,6 +42,38 @@ public class DBJSequenceGenerator implements javax.jdo.datastore.Sequence {
 
 	@Override
 	public long nextValue() throws JDOException {
+		lCurrent = reserve(1);
+		return lCurrent;
+	}
+
+	/**
+	 * <p>Reserve a range of consecutive values with a single update of the sequence record.</p>
+	 * @param size int [1..n]
+	 * @return long[] Values in ascending order
+	 * @throws JDOException
+	 */
+	@Override
+	public long[] allocateBlock(int size) throws JDOException {
+		if (size<1)
+			throw new IllegalArgumentException("DBJSequenceGenerator block size must be at least 1");
+		final long lFirst = reserve(size);
+		long[] aBlock = new long[size];
+		for (int n=0; n<size; n++)
+			aBlock[n] = lFirst + n;
+		return aBlock;
+	}
+
+	/**
+	 * Berkeley DB sequences cannot be decremented
+	 * @return boolean <b>false</b>
+	 */
+	@Override
+	public boolean releaseBlock(long[] block, int used) {
+		return false;
+	}
+
+	private long reserve(int iDelta) throws JDOException {
+		long lFirst;
 		SequenceConfig oQqg = new SequenceConfig();
 		oQqg.setAutoCommitNoSync(true);
 		oQqg.setAllowCreate(true);
@@ -58,7 +91,7 @@ public class DBJSequenceGenerator implements javax.jdo.datastore.Sequence {
 		try {
 			oQdb = oEnv.getEnvironment().openDatabase(null, oEnv.getPath()+"Sequence.db", oSqg);
 			oSqc = oQdb.openSequence(null, oKey, oQqg);
-			lCurrent = oSqc.get(null, 1);
+			lFirst = oSqc.get(null, iDelta);
 			oSqc.close();
 			oSqc=null;
 		} catch (IllegalArgumentException iae) {
@@ -69,8 +102,8 @@ public class DBJSequenceGenerator implements javax.jdo.datastore.Sequence {
 			if (null!=oSqc) { try { oSqc.close(); } catch (DatabaseException ignore) { } }
 			if (null!=oQdb) { try { oQdb.close(); } catch (DatabaseException ignore) { } }
 		}
-		return lCurrent;
-	} // nextValue
+		return lFirst;
+	} // reserve
 
 	@Override
 	public void allocate(int arg0) {
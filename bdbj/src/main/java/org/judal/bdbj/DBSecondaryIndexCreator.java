@@ -15,14 +15,22 @@ package org.judal.bdbj;
 import org.judal.metadata.ColumnDef;
 import org.judal.metadata.TableDef;
 import org.judal.serialization.BytesConverter;
+import org.judal.serialization.OrderedBytesConverter;
 import org.judal.storage.StorageObjectFactory;
-        import org.judal.storage.table.Record;
+import org.judal.storage.table.Record;
 
 import com.knowgate.debug.DebugFile;
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.SecondaryDatabase;
 import com.sleepycat.je.SecondaryKeyCreator;
 
+/**
+ * <p>Extract the value of a column as secondary key.</p>
+ * A Record of the given class is instantiated for each row.
+ * Keys are written with OrderedBytesConverter if the index is ordered or with BytesConverter otherwise.
+ * @author Sergio Montoro Ten
+ *
+ */
 public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 
 	private DBJEntityBinding oDbeb;
@@ -30,13 +38,26 @@ public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 	private Class<? extends Record> oRecCls;
 	private String sIndx;
 	private int iType;
+	private boolean bOrdered;
 
 	public DBSecondaryIndexCreator(DBJEntityBinding oBind, Class<? extends Record> oRecClass, TableDef oTblDef, String sIndex, int iColumnType) {
+		this(oBind, oRecClass, oTblDef, sIndex, iColumnType, false);
+	}
+
+	public DBSecondaryIndexCreator(DBJEntityBinding oBind, Class<? extends Record> oRecClass, TableDef oTblDef, String sIndex, int iColumnType, boolean bOrderedKeys) {
 		oDbeb = oBind;
 		sIndx = sIndex;
 		oTbl = oTblDef;
 		oRecCls = oRecClass;
 		iType = iColumnType;
+		bOrdered = bOrderedKeys;
+	}
+
+	private byte[] toKey(Object oVal) {
+		if (bOrdered)
+			return OrderedBytesConverter.toBytes(oVal, iType);
+		else
+			return null==oVal ? new byte[0] : BytesConverter.toBytes(oVal, iType);
 	}
 
 	@Override
@@ -53,7 +74,7 @@ public class DBSecondaryIndexCreator implements SecondaryKeyCreator {
 			try {
 				oRec = StorageObjectFactory.newRecord(oRecCls, oTbl);
 				oRec.setValue(oEnt.getWrapped());
-				byte [] data = oRec.isNull(sIndx) ? new byte[0] : BytesConverter.toBytes(oRec.apply(sIndx), iType);					
+				byte [] data = toKey(oRec.isNull(sIndx) ? null : oRec.apply(sIndx));					
 				if (DebugFile.trace) {
 					if (oRec.isNull(sIndx)) {
 						DebugFile.writeln("secondary key value is null");
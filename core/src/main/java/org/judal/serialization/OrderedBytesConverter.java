@@ -0,0 +1,440 @@
+package org.judal.serialization;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import java.nio.charset.StandardCharsets;
+
+import java.sql.Types;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.judal.storage.Param;
+
+/**
+ * <p>Convert keys to byte arrays which sort like the values they encode.</p>
+ * Unlike BytesConverter, comparing two arrays written by this class byte by byte as unsigned values
+ * gives the same result as comparing the original values, including negative numbers, decimals and dates.
+ * Each value is preceded by a marker byte so <b>null</b> sorts before any other value,
+ * and every value is self delimited so several columns can be concatenated into a composite key
+ * whose byte order is the order of its first column, then its second column and so on.
+ * Any prefix made of the first columns of a composite key is itself a valid key,
+ * so all the keys that start with some column values are between prefix and prefixUpperBound(prefix).
+ * <ul>
+ * <li>BIT, BOOLEAN: one byte</li>
+ * <li>TINYINT, SMALLINT, INTEGER, BIGINT: big endian two's complement with the sign bit flipped</li>
+ * <li>REAL, FLOAT, DOUBLE: IEEE 754 bits with the sign bit flipped for positive values and all bits flipped for negative ones</li>
+ * <li>DECIMAL, NUMERIC: sign, exponent and decimal digits, with all bytes flipped for negative values</li>
+ * <li>CHAR, VARCHAR, CLOB and the other character types: UTF-8 with 0x00 escaped and a two bytes terminator</li>
+ * <li>BINARY, VARBINARY, LONGVARBINARY, BLOB: same as characters but without UTF-8 encoding</li>
+ * <li>DATE, TIME, TIMESTAMP and their time zone variants: milliseconds since the epoch as BIGINT</li>
+ * </ul>
+ * ARRAY, STRUCT and JAVA_OBJECT have no natural order and cannot be converted.
+ * Characters are ordered by Unicode code point, which is the order of String.compareTo()
+ * except for characters outside the Basic Multilingual Plane.
+ * Arrays written by this class are compared with COMPARATOR.
+ *
+ * @author Sergio Montoro Ten
+ */
+public class OrderedBytesConverter {
+
+    /**
+     * Comparator for byte arrays written by this class.
+     * It is Bytes.BYTES_RAWCOMPARATOR, which compares bytes as unsigned values, the same as Berkeley DB default B-tree comparison.
+     */
+    public static final RawComparator<byte[]> COMPARATOR = Bytes.BYTES_RAWCOMPARATOR;
+
+    private static final byte NULL_MARKER = (byte) 0x00;
+    private static final byte VALUE_MARKER = (byte) 0x01;
+
+    private static final byte DECIMAL_NEGATIVE = (byte) 0x01;
+    private static final byte DECIMAL_ZERO = (byte) 0x02;
+    private static final byte DECIMAL_POSITIVE = (byte) 0x03;
+
+    private static final byte ESCAPE = (byte) 0x00;
+    private static final byte ESCAPED_ZERO = (byte) 0xFF;
+    private static final byte TERMINATOR = (byte) 0x01;
+
+    private OrderedBytesConverter() { }
+
+    /**
+     * <p>Convert a single value.</p>
+     * @param oObj Object Value, Param or <b>null</b>
+     * @param iType int java.sql.Types
+     * @return byte[]
+     * @throws IllegalArgumentException If iType has no natural order or oObj cannot be converted to iType
+     */
+    public static byte[] toBytes(Object oObj, int iType) throws IllegalArgumentException {
+        ByteArrayOutputStream oOut = new ByteArrayOutputStream(16);
+        write(oOut, oObj, iType);
+        return oOut.toByteArray();
+    }
+
+    /**
+     * <p>Convert a composite key.</p>
+     * aObjs may have fewer values than aTypes, in that case the result is a prefix of the full key.
+     * @param aObjs Object[] Values, Params or <b>null</b>
+     * @param aTypes int[] java.sql.Types of each value
+     * @return byte[]
+     * @throws IllegalArgumentException If there are more values than types, if a type has no natural order or a value cannot be converted to its type
+     */
+    public static byte[] toBytes(Object[] aObjs, int[] aTypes) throws IllegalArgumentException {
+        if (aObjs.length > aTypes.length)
+            throw new IllegalArgumentException("OrderedBytesConverter.toBytes() got " + aObjs.length + " values but only " + aTypes.length + " types");
+        ByteArrayOutputStream oOut = new ByteArrayOutputStream(16 * aObjs.length);
+        for (int v = 0; v < aObjs.length; v++)
+            write(oOut, aObjs[v], aTypes[v]);
+        return oOut.toByteArray();
+    }
+
+    /**
+     * <p>Convert a byte array written by toBytes(Object, int) back into a value.</p>
+     * @param aBytes byte[]
+     * @param iType int java.sql.Types
+     * @return Object
+     * @throws IOException If aBytes is not a valid key of the given type
+     */
+    public static Object fromBytes(byte[] aBytes, int iType) throws IOException {
+        return fromBytes(aBytes, new int[]{iType})[0];
+    }
+
+    /**
+     * <p>Convert a byte array written by toBytes(Object[], int[]) back into its values.</p>
+     * @param aBytes byte[]
+     * @param aTypes int[] java.sql.Types of each value
+     * @return Object[] If aBytes is a prefix then the values missing at the end will be <b>null</b>
+     * @throws IOException If aBytes is not a valid key of the given types
+     */
+    public static Object[] fromBytes(byte[] aBytes, int[] aTypes) throws IOException {
+        Object[] aObjs = new Object[aTypes.length];
+        int[] aPos = new int[]{0};
+        try {
+            for (int v = 0; v < aTypes.length && aPos[0] < aBytes.length; v++)
+                aObjs[v] = read(aBytes, aPos, aTypes[v]);
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException xcpt) {
+            throw new IOException("OrderedBytesConverter.fromBytes() truncated key at byte " + aPos[0], xcpt);
+        }
+        return aObjs;
+    }
+
+    /**
+     * <p>Get the smallest byte array greater than every key which starts with the given prefix.</p>
+     * @param aPrefix byte[]
+     * @return byte[] or <b>null</b> if there is no such array because all the bytes of aPrefix are 0xFF
+     */
+    public static byte[] prefixUpperBound(byte[] aPrefix) {
+        for (int b = aPrefix.length - 1; b >= 0; b--) {
+            if (aPrefix[b] != (byte) 0xFF) {
+                byte[] aBound = Arrays.copyOf(aPrefix, b + 1);
+                aBound[b]++;
+                return aBound;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param iType int java.sql.Types
+     * @return boolean <b>true</b> if values of iType can be converted by this class
+     */
+    public static boolean isOrderable(int iType) {
+        switch (iType) {
+            case Types.ARRAY:
+            case Types.STRUCT:
+            case Types.JAVA_OBJECT:
+            case Types.OTHER:
+            case Types.DISTINCT:
+            case Types.REF:
+            case Types.DATALINK:
+            case Types.ROWID:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static void write(ByteArrayOutputStream oOut, Object oObj, int iType) throws IllegalArgumentException {
+        if (oObj instanceof Param)
+            oObj = ((Param) oObj).getValue();
+        if (!isOrderable(iType))
+            throw new IllegalArgumentException("OrderedBytesConverter type " + iType + " has no natural order");
+        if (null == oObj) {
+            oOut.write(NULL_MARKER);
+            return;
+        }
+        oOut.write(VALUE_MARKER);
+        try {
+            switch (iType) {
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    oOut.write(toBoolean(oObj) ? 1 : 0);
+                    break;
+                case Types.TINYINT:
+                    writeLong(oOut, toNumber(oObj).byteValue(), 1);
+                    break;
+                case Types.SMALLINT:
+                    writeLong(oOut, toNumber(oObj).shortValue(), 2);
+                    break;
+                case Types.INTEGER:
+                    writeLong(oOut, toNumber(oObj).intValue(), 4);
+                    break;
+                case Types.BIGINT:
+                    writeLong(oOut, toNumber(oObj).longValue(), 8);
+                    break;
+                case Types.REAL:
+                case Types.FLOAT: {
+                    int iBits = Float.floatToIntBits(toNumber(oObj).floatValue());
+                    iBits = iBits < 0 ? ~iBits : iBits ^ Integer.MIN_VALUE;
+                    writeRaw(oOut, iBits, 4);
+                    break;
+                }
+                case Types.DOUBLE: {
+                    long lBits = Double.doubleToLongBits(toNumber(oObj).doubleValue());
+                    lBits = lBits < 0 ? ~lBits : lBits ^ Long.MIN_VALUE;
+                    writeRaw(oOut, lBits, 8);
+                    break;
+                }
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    writeDecimal(oOut, toDecimal(oObj));
+                    break;
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    writeEscaped(oOut, oObj instanceof byte[] ? (byte[]) oObj : oObj.toString().getBytes(StandardCharsets.UTF_8));
+                    break;
+                case Types.DATE:
+                case Types.TIME:
+                case Types.TIMESTAMP:
+                case Types.TIME_WITH_TIMEZONE:
+                case Types.TIMESTAMP_WITH_TIMEZONE:
+                    writeLong(oOut, toMillis(oObj), 8);
+                    break;
+                case Types.NULL:
+                    throw new IllegalArgumentException("OrderedBytesConverter cannot convert a value to type NULL");
+                default:
+                    writeEscaped(oOut, oObj.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (ClassCastException | NumberFormatException xcpt) {
+            throw new IllegalArgumentException("OrderedBytesConverter cannot convert " + oObj.getClass().getName() + " to type " + iType, xcpt);
+        }
+    }
+
+    private static Object read(byte[] aBytes, int[] aPos, int iType) throws IOException {
+        final byte bMarker = aBytes[aPos[0]++];
+        if (bMarker == NULL_MARKER)
+            return null;
+        else if (bMarker != VALUE_MARKER)
+            throw new IOException("OrderedBytesConverter.fromBytes() unexpected marker " + bMarker + " at byte " + (aPos[0] - 1));
+        switch (iType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return new Boolean(aBytes[aPos[0]++] != 0);
+            case Types.TINYINT:
+                return new Byte((byte) readLong(aBytes, aPos, 1));
+            case Types.SMALLINT:
+                return new Short((short) readLong(aBytes, aPos, 2));
+            case Types.INTEGER:
+                return new Integer((int) readLong(aBytes, aPos, 4));
+            case Types.BIGINT:
+                return new Long(readLong(aBytes, aPos, 8));
+            case Types.REAL:
+            case Types.FLOAT: {
+                int iBits = (int) readRaw(aBytes, aPos, 4);
+                iBits = iBits < 0 ? iBits ^ Integer.MIN_VALUE : ~iBits;
+                return new Float(Float.intBitsToFloat(iBits));
+            }
+            case Types.DOUBLE: {
+                long lBits = readRaw(aBytes, aPos, 8);
+                lBits = lBits < 0 ? lBits ^ Long.MIN_VALUE : ~lBits;
+                return new Double(Double.longBitsToDouble(lBits));
+            }
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return readDecimal(aBytes, aPos);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return readEscaped(aBytes, aPos);
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+            case Types.TIME_WITH_TIMEZONE:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return new Date(readLong(aBytes, aPos, 8));
+            default:
+                return new String(readEscaped(aBytes, aPos), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void writeLong(ByteArrayOutputStream oOut, long lValue, int iBytes) {
+        writeRaw(oOut, lValue ^ (1L << (iBytes * 8 - 1)), iBytes);
+    }
+
+    private static long readLong(byte[] aBytes, int[] aPos, int iBytes) {
+        final long lSignBit = 1L << (iBytes * 8 - 1);
+        long lValue = readRaw(aBytes, aPos, iBytes) ^ lSignBit;
+        if (iBytes < 8 && (lValue & lSignBit) != 0)
+            lValue |= -1L << (iBytes * 8);
+        return lValue;
+    }
+
+    private static void writeRaw(ByteArrayOutputStream oOut, long lValue, int iBytes) {
+        for (int b = iBytes - 1; b >= 0; b--)
+            oOut.write((int) (lValue >>> (b * 8)) & 0xFF);
+    }
+
+    private static long readRaw(byte[] aBytes, int[] aPos, int iBytes) {
+        long lValue = 0L;
+        for (int b = 0; b < iBytes; b++)
+            lValue = (lValue << 8) | (aBytes[aPos[0]++] & 0xFF);
+        return lValue;
+    }
+
+    /**
+     * A non zero decimal is written as its sign, the position of its most significant digit
+     * and its digits without trailing zeros followed by a zero byte.
+     * For negative values the bytes after the sign are flipped so larger magnitudes sort first.
+     */
+    private static void writeDecimal(ByteArrayOutputStream oOut, BigDecimal oDec) {
+        if (oDec.signum() == 0) {
+            oOut.write(DECIMAL_ZERO);
+            return;
+        }
+        final BigDecimal oAbs = oDec.abs().stripTrailingZeros();
+        final String sDigits = oAbs.unscaledValue().toString();
+        final int iExponent = sDigits.length() - oAbs.scale();
+        final byte[] aMagnitude = new byte[4 + sDigits.length() + 1];
+        final int iFlipped = iExponent ^ Integer.MIN_VALUE;
+        for (int b = 0; b < 4; b++)
+            aMagnitude[b] = (byte) (iFlipped >>> ((3 - b) * 8));
+        for (int d = 0; d < sDigits.length(); d++)
+            aMagnitude[4 + d] = (byte) sDigits.charAt(d);
+        aMagnitude[aMagnitude.length - 1] = 0;
+        if (oDec.signum() < 0) {
+            oOut.write(DECIMAL_NEGATIVE);
+            for (int b = 0; b < aMagnitude.length; b++)
+                aMagnitude[b] = (byte) ~aMagnitude[b];
+        } else {
+            oOut.write(DECIMAL_POSITIVE);
+        }
+        oOut.write(aMagnitude, 0, aMagnitude.length);
+    }
+
+    private static BigDecimal readDecimal(byte[] aBytes, int[] aPos) throws IOException {
+        final byte bSign = aBytes[aPos[0]++];
+        if (bSign == DECIMAL_ZERO)
+            return BigDecimal.ZERO;
+        else if (bSign != DECIMAL_NEGATIVE && bSign != DECIMAL_POSITIVE)
+            throw new IOException("OrderedBytesConverter.fromBytes() unexpected decimal sign " + bSign);
+        final int iMask = bSign == DECIMAL_NEGATIVE ? 0xFF : 0x00;
+        int iFlipped = 0;
+        for (int b = 0; b < 4; b++)
+            iFlipped = (iFlipped << 8) | ((aBytes[aPos[0]++] ^ iMask) & 0xFF);
+        final int iExponent = iFlipped ^ Integer.MIN_VALUE;
+        StringBuilder oDigits = new StringBuilder();
+        int iDigit;
+        while ((iDigit = (aBytes[aPos[0]++] ^ iMask) & 0xFF) != 0)
+            oDigits.append((char) iDigit);
+        BigDecimal oDec = new BigDecimal(new BigInteger(oDigits.toString()), oDigits.length() - iExponent);
+        return bSign == DECIMAL_NEGATIVE ? oDec.negate() : oDec;
+    }
+
+    /**
+     * Bytes are written as they are except 0x00 which is written as 0x00 0xFF.
+     * The value ends with 0x00 0x01 so a shorter value sorts before any longer value that starts with it.
+     */
+    private static void writeEscaped(ByteArrayOutputStream oOut, byte[] aValue) {
+        for (byte b : aValue) {
+            oOut.write(b);
+            if (b == ESCAPE)
+                oOut.write(ESCAPED_ZERO);
+        }
+        oOut.write(ESCAPE);
+        oOut.write(TERMINATOR);
+    }
+
+    private static byte[] readEscaped(byte[] aBytes, int[] aPos) throws IOException {
+        ByteArrayOutputStream oOut = new ByteArrayOutputStream();
+        while (true) {
+            final byte b = aBytes[aPos[0]++];
+            if (b != ESCAPE) {
+                oOut.write(b);
+            } else {
+                final byte bNext = aBytes[aPos[0]++];
+                if (bNext == TERMINATOR)
+                    return oOut.toByteArray();
+                else if (bNext == ESCAPED_ZERO)
+                    oOut.write(ESCAPE);
+                else
+                    throw new IOException("OrderedBytesConverter.fromBytes() unexpected escape sequence at byte " + (aPos[0] - 2));
+            }
+        }
+    }
+
+    private static boolean toBoolean(Object oObj) {
+        if (oObj instanceof Boolean)
+            return ((Boolean) oObj).booleanValue();
+        else if (oObj instanceof Number)
+            return ((Number) oObj).intValue() != 0;
+        else
+            return Boolean.parseBoolean(oObj.toString());
+    }
+
+    private static Number toNumber(Object oObj) throws NumberFormatException {
+        if (oObj instanceof Number)
+            return (Number) oObj;
+        else
+            return new BigDecimal(oObj.toString());
+    }
+
+    private static BigDecimal toDecimal(Object oObj) throws NumberFormatException {
+        if (oObj instanceof BigDecimal)
+            return (BigDecimal) oObj;
+        else if (oObj instanceof BigInteger)
+            return new BigDecimal((BigInteger) oObj);
+        else
+            return new BigDecimal(oObj.toString());
+    }
+
+    private static long toMillis(Object oObj) throws ClassCastException {
+        if (oObj instanceof Date)
+            return ((Date) oObj).getTime();
+        else if (oObj instanceof Calendar)
+            return ((Calendar) oObj).getTimeInMillis();
+        else if (oObj instanceof Number)
+            return ((Number) oObj).longValue();
+        else if (oObj instanceof LocalDateTime)
+            return ((LocalDateTime) oObj).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        else if (oObj instanceof LocalDate)
+            return ((LocalDate) oObj).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        else
+            throw new ClassCastException(oObj.getClass().getName() + " is not a date");
+    }
+
+}
@@ -0,0 +1,353 @@
+package org.judal.serialization;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.IOException;
+
+import java.math.BigDecimal;
+
+import java.nio.ByteBuffer;
+
+import java.sql.Types;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.TableDef;
+import org.judal.storage.table.PrimitiveRecord;
+
+/**
+ * <p>Binary row format driven by the columns of a TableDef.</p>
+ * A row is either an Object[] with the column values in TableDef order or a Map from column names to values.
+ * The encoded row starts with a five bytes header: magic number, format version, row shape and column count.
+ * The header is followed by a directory with the java.sql.Types code, offset and length of each column
+ * and then by the column values, each one converted with BytesConverter.
+ * Because the directory has a fixed size per column, a single column can be read without decoding the others.
+ * Values that are not of a basic type are written using Java serialization.
+ *
+ * @author Sergio Montoro Ten
+ */
+public class TableRowCodec {
+
+    /**
+     * First byte of every encoded row. Java serialization streams always start with 0xAC
+     */
+    public static final byte MAGIC = (byte) 0x54;
+
+    /**
+     * Current format version
+     */
+    public static final byte VERSION = (byte) 1;
+
+    private static final byte SHAPE_ARRAY = (byte) 0;
+    private static final byte SHAPE_MAP = (byte) 1;
+
+    private static final int HEADER_LENGTH = 5;
+    private static final int DIRECTORY_ENTRY_LENGTH = 10;
+
+    private static final int LENGTH_NULL = -1;
+    private static final int LENGTH_ABSENT = -2;
+
+    private final TableDef tableDef;
+
+    /**
+     * @param tableDef TableDef
+     */
+    public TableRowCodec(TableDef tableDef) {
+        this.tableDef = tableDef;
+    }
+
+    /**
+     * @return TableDef
+     */
+    public TableDef getTableDef() {
+        return tableDef;
+    }
+
+    /**
+     * @param encodedRow byte[]
+     * @return boolean <b>true</b> if encodedRow was written by encode()
+     */
+    public static boolean isEncoded(byte[] encodedRow) {
+        return encodedRow != null && encodedRow.length >= HEADER_LENGTH && encodedRow[0] == MAGIC && encodedRow[1] == VERSION;
+    }
+
+    /**
+     * <p>Check whether a value can be written in this format.</p>
+     * @param row Object
+     * @return boolean <b>true</b> if row is an Object[] with no more elements than columns at the TableDef
+     * or a Map whose keys are all column names of the TableDef
+     */
+    public boolean canEncode(Object row) {
+        final int ncols = tableDef.getNumberOfColumns();
+        if (row instanceof Object[]) {
+            return ((Object[]) row).length <= ncols;
+        } else if (row instanceof Map) {
+            for (Object columnName : ((Map<?, ?>) row).keySet())
+                if (null == columnName || tableDef.getColumnIndex(columnName.toString()) < 1)
+                    return false;
+            return ncols > 0;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @param row Object Object[] or Map&lt;String,Object&gt;
+     * @return byte[]
+     * @throws IllegalArgumentException If canEncode(row) is <b>false</b>
+     */
+    public byte[] encode(Object row) throws IllegalArgumentException {
+        if (!canEncode(row))
+            throw new IllegalArgumentException("TableRowCodec.encode() " + (row == null ? "null" : row.getClass().getName()) + " does not fit table " + tableDef.getName());
+
+        final byte shape;
+        final int ncols;
+        final int[] types;
+        final byte[][] columns;
+        final boolean[] present;
+
+        if (row instanceof Object[]) {
+            final Object[] values = (Object[]) row;
+            shape = SHAPE_ARRAY;
+            ncols = values.length;
+            types = new int[ncols];
+            columns = new byte[ncols][];
+            present = new boolean[ncols];
+            for (int c = 0; c < ncols; c++) {
+                present[c] = true;
+                types[c] = typeOf(values[c]);
+                columns[c] = values[c] == null ? null : BytesConverter.toBytes(values[c], types[c]);
+            }
+        } else {
+            final Map<?, ?> values = (Map<?, ?>) row;
+            final ColumnDef[] cols = tableDef.getColumns();
+            shape = SHAPE_MAP;
+            ncols = cols.length;
+            types = new int[ncols];
+            columns = new byte[ncols][];
+            present = new boolean[ncols];
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                final int c = tableDef.getColumnIndex(entry.getKey().toString()) - 1;
+                present[c] = true;
+                types[c] = typeOf(entry.getValue());
+                columns[c] = entry.getValue() == null ? null : BytesConverter.toBytes(entry.getValue(), types[c]);
+            }
+        }
+
+        int payloadLength = 0;
+        for (int c = 0; c < ncols; c++)
+            if (columns[c] != null)
+                payloadLength += columns[c].length;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + ncols * DIRECTORY_ENTRY_LENGTH + payloadLength);
+        buffer.put(MAGIC).put(VERSION).put(shape).putShort((short) ncols);
+        int offset = HEADER_LENGTH + ncols * DIRECTORY_ENTRY_LENGTH;
+        for (int c = 0; c < ncols; c++) {
+            if (columns[c] != null) {
+                buffer.putShort((short) types[c]).putInt(offset).putInt(columns[c].length);
+                offset += columns[c].length;
+            } else {
+                buffer.putShort((short) Types.NULL).putInt(offset).putInt(present[c] ? LENGTH_NULL : LENGTH_ABSENT);
+            }
+        }
+        for (int c = 0; c < ncols; c++)
+            if (columns[c] != null)
+                buffer.put(columns[c]);
+
+        return buffer.array();
+    }
+
+    /**
+     * @param encodedRow byte[]
+     * @return Object Object[] or HashMap&lt;String,Object&gt; depending on what was given to encode()
+     * @throws IOException If encodedRow is not in this format or a column value cannot be deserialized
+     */
+    public Object decode(byte[] encodedRow) throws IOException {
+        final int ncols = columnCount(encodedRow);
+        if (encodedRow[2] == SHAPE_ARRAY) {
+            final Object[] values = new Object[ncols];
+            for (int c = 0; c < ncols; c++)
+                values[c] = readColumn(encodedRow, c);
+            return values;
+        } else {
+            final ColumnDef[] cols = tableDef.getColumns();
+            final HashMap<String, Object> values = new HashMap<String, Object>(ncols * 2);
+            for (int c = 0; c < ncols && c < cols.length; c++)
+                if (columnLength(encodedRow, c) != LENGTH_ABSENT)
+                    values.put(cols[c].getName(), readColumn(encodedRow, c));
+            return values;
+        }
+    }
+
+    /**
+     * <p>Decode a row into a PrimitiveRecord.</p>
+     * Columns are matched by name. Integer, floating point and date values whose type matches
+     * the type of their column are copied into the primitive slots of the record without creating wrapper objects.
+     * Other values are decoded and set with PrimitiveRecord.put(int, Object).
+     * Columns of the row which are not found at the record are ignored.
+     * @param encodedRow byte[]
+     * @param rec PrimitiveRecord
+     * @throws IOException If encodedRow is not in this format or a column value cannot be deserialized
+     */
+    public void decodeInto(byte[] encodedRow, PrimitiveRecord rec) throws IOException {
+        final int ncols = columnCount(encodedRow);
+        final ColumnDef[] cols = tableDef.getColumns();
+        final ByteBuffer directory = ByteBuffer.wrap(encodedRow);
+        for (int c = 0; c < ncols && c < cols.length; c++) {
+            final int entry = HEADER_LENGTH + c * DIRECTORY_ENTRY_LENGTH;
+            final int type = directory.getShort(entry);
+            final int offset = directory.getInt(entry + 2);
+            final int length = directory.getInt(entry + 6);
+            if (LENGTH_ABSENT == length)
+                continue;
+            final int colpos = rec.getColumnPosition(cols[c].getName());
+            if (colpos < 1)
+                continue;
+            if (length < 0 || type == Types.NULL) {
+                rec.putNullAt(colpos);
+                continue;
+            }
+            final int slot = rec.getSlotType(colpos);
+            if (slot == PrimitiveRecord.SLOT_LONG && isPrimitiveOf(type, cols[c].getType(), length)) {
+                if (type == Types.SMALLINT)
+                    rec.putLongAt(colpos, Bytes.toShort(encodedRow, offset));
+                else if (type == Types.INTEGER)
+                    rec.putLongAt(colpos, Bytes.toInt(encodedRow, offset));
+                else
+                    rec.putLongAt(colpos, Bytes.toLong(encodedRow, offset));
+            } else if (slot == PrimitiveRecord.SLOT_DOUBLE && isPrimitiveOf(type, cols[c].getType(), length)) {
+                if (type == Types.FLOAT)
+                    rec.putDoubleAt(colpos, Bytes.toFloat(encodedRow, offset));
+                else
+                    rec.putDoubleAt(colpos, Bytes.toDouble(encodedRow, offset));
+            } else {
+                rec.put(colpos, readColumn(encodedRow, c));
+            }
+        }
+    }
+
+    /**
+     * @param valueType int java.sql.Types code of an encoded value
+     * @param columnType Integer java.sql.Types code of its column
+     * @param length int Length of the encoded value
+     * @return boolean <b>true</b> if the value is a primitive of the Java class that the column type maps to
+     */
+    private static boolean isPrimitiveOf(int valueType, Integer columnType, int length) {
+        if (null == columnType)
+            return false;
+        final int colType = columnType.intValue();
+        switch (valueType) {
+            case Types.SMALLINT:
+                return length == 2 && (colType == Types.SMALLINT || colType == Types.TINYINT);
+            case Types.INTEGER:
+                return length == 4 && colType == Types.INTEGER;
+            case Types.BIGINT:
+                return length == 8 && colType == Types.BIGINT;
+            case Types.FLOAT:
+                return length == 4 && colType == Types.REAL;
+            case Types.DOUBLE:
+                return length == 8 && (colType == Types.DOUBLE || colType == Types.FLOAT);
+            case Types.TIMESTAMP:
+                return length == 8 && (colType == Types.TIMESTAMP || colType == Types.DATE);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * <p>Decode the value of a single column.</p>
+     * @param encodedRow byte[]
+     * @param columnName String
+     * @return Object Column value or <b>null</b> if the column is null or it is not present at the row
+     * @throws IOException If encodedRow is not in this format or the value cannot be deserialized
+     * @throws ArrayIndexOutOfBoundsException If there is no column with the given name at the TableDef
+     */
+    public Object decodeColumn(byte[] encodedRow, String columnName) throws IOException, ArrayIndexOutOfBoundsException {
+        final int position = tableDef.getColumnIndex(columnName);
+        if (position < 1)
+            throw new ArrayIndexOutOfBoundsException("Column " + columnName + " not found at " + tableDef.getName());
+        return decodeColumn(encodedRow, position);
+    }
+
+    /**
+     * <p>Decode the value of a single column.</p>
+     * @param encodedRow byte[]
+     * @param position int Column position [1..columnCount]
+     * @return Object Column value or <b>null</b> if the column is null or it is not present at the row
+     * @throws IOException If encodedRow is not in this format or the value cannot be deserialized
+     */
+    public Object decodeColumn(byte[] encodedRow, int position) throws IOException {
+        final int ncols = columnCount(encodedRow);
+        if (position < 1 || position > ncols)
+            return null;
+        return readColumn(encodedRow, position - 1);
+    }
+
+    private static int columnCount(byte[] encodedRow) throws IOException {
+        if (!isEncoded(encodedRow))
+            throw new IOException("TableRowCodec row is not in format version " + String.valueOf(VERSION));
+        return ByteBuffer.wrap(encodedRow, 3, 2).getShort() & 0xFFFF;
+    }
+
+    private static int columnLength(byte[] encodedRow, int c) {
+        return ByteBuffer.wrap(encodedRow).getInt(HEADER_LENGTH + c * DIRECTORY_ENTRY_LENGTH + 6);
+    }
+
+    private static Object readColumn(byte[] encodedRow, int c) throws IOException {
+        final ByteBuffer directory = ByteBuffer.wrap(encodedRow);
+        final int entry = HEADER_LENGTH + c * DIRECTORY_ENTRY_LENGTH;
+        final int type = directory.getShort(entry);
+        final int offset = directory.getInt(entry + 2);
+        final int length = directory.getInt(entry + 6);
+        if (length < 0 || type == Types.NULL)
+            return null;
+        final byte[] value = new byte[length];
+        System.arraycopy(encodedRow, offset, value, 0, length);
+        return BytesConverter.fromBytes(value, type);
+    }
+
+    /**
+     * @param obj Object
+     * @return int java.sql.Types code used to encode obj
+     */
+    private static int typeOf(Object obj) {
+        if (null == obj)
+            return Types.NULL;
+        else if (obj instanceof byte[])
+            return Types.LONGVARBINARY;
+        else if (obj instanceof String)
+            return Types.VARCHAR;
+        else if (obj instanceof Boolean)
+            return Types.BOOLEAN;
+        else if (obj instanceof Short)
+            return Types.SMALLINT;
+        else if (obj instanceof Integer)
+            return Types.INTEGER;
+        else if (obj instanceof Long)
+            return Types.BIGINT;
+        else if (obj instanceof Float)
+            return Types.FLOAT;
+        else if (obj instanceof Double)
+            return Types.DOUBLE;
+        else if (obj instanceof BigDecimal)
+            return Types.DECIMAL;
+        else if (obj.getClass().equals(Date.class))
+            return Types.TIMESTAMP;
+        else
+            return Types.JAVA_OBJECT;
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.judal.storage;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import javax.jdo.JDOException;
+
+/**
+ * <p>Interface for sequences which can reserve several values in a single data store round trip.</p>
+ * Used by BlockSequence to hand out values from memory.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public interface BlockAllocator {
+
+	/**
+	 * <p>Reserve a block of sequence values.</p>
+	 * Values reserved will not be returned by any other call to this sequence,
+	 * either from this process or from any other client of the data store.
+	 * @param size int [1..n] Count of values to reserve
+	 * @return long[] Reserved values in ascending order
+	 * @throws JDOException
+	 */
+	long[] allocateBlock(int size) throws JDOException;
+
+	/**
+	 * <p>Try to give back the values of a block that were not used.</p>
+	 * Values can only be given back if no other block has been reserved after the given one.
+	 * Data stores which cannot do that atomically must return <b>false</b> and leave a gap in the sequence.
+	 * @param block long[] Block previously returned by allocateBlock()
+	 * @param used int Count of values of the block that were used
+	 * @return boolean <b>true</b> if values block[used..block.length-1] will be returned again by the sequence
+	 * @throws JDOException
+	 */
+	boolean releaseBlock(long[] block, int used) throws JDOException;
+
+}
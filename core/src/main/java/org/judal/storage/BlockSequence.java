@@ -0,0 +1,183 @@
+package org.judal.storage;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jdo.JDOException;
+import javax.jdo.datastore.Sequence;
+
+/**
+ * <p>Sequence wrapper which reserves blocks of values at the data store and hands them out from memory.</p>
+ * If the wrapped Sequence implements BlockAllocator, each round trip to the data store reserves blockSize values.
+ * Otherwise values are taken one by one from the wrapped Sequence.
+ * Taking a value from the current block does not lock, only the thread that finds the block exhausted
+ * reserves a new one while other threads wait for it.
+ * When the sequence is closed, the values of the current block which were not used are given back to the data store
+ * if it supports it. Else they are left as a gap in the sequence.
+ * Values are unique but, with several processes sharing the same data store sequence, they are not handed out in ascending order.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class BlockSequence implements Sequence, AutoCloseable {
+
+	private static final class Block {
+		final long[] values;
+		final AtomicInteger next;
+
+		Block(long[] values) {
+			this.values = values;
+			this.next = new AtomicInteger(0);
+		}
+	}
+
+	private static final Block CLOSED = new Block(new long[0]);
+
+	private final Sequence sequence;
+	private final BlockAllocator allocator;
+	private final int blockSize;
+	private final AtomicReference<Block> block;
+	private final AtomicInteger additional;
+	private final Object refillLock = new Object();
+	private volatile long current;
+
+	/**
+	 * @param sequence Sequence Data store sequence. Should implement BlockAllocator.
+	 * @param blockSize int [1..n] Count of values reserved by each round trip to the data store
+	 * @throws IllegalArgumentException If blockSize is less than one
+	 */
+	public BlockSequence(Sequence sequence, int blockSize) throws IllegalArgumentException {
+		if (blockSize<1)
+			throw new IllegalArgumentException("BlockSequence block size must be at least 1");
+		this.sequence = sequence;
+		this.allocator = sequence instanceof BlockAllocator ? (BlockAllocator) sequence : null;
+		this.blockSize = blockSize;
+		this.block = new AtomicReference<Block>();
+		this.additional = new AtomicInteger(0);
+	}
+
+	/**
+	 * @return Sequence Wrapped data store sequence
+	 */
+	public Sequence getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return int Count of values reserved by each round trip to the data store
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public String getName() {
+		return sequence.getName();
+	}
+
+	/**
+	 * @return long
+	 * @throws IllegalStateException If this sequence has been closed
+	 * @throws JDOException If a new block could not be reserved
+	 */
+	@Override
+	public long nextValue() throws IllegalStateException, JDOException {
+		for (;;) {
+			final Block current = block.get();
+			if (current!=null && current!=CLOSED) {
+				final int index = current.next.getAndIncrement();
+				if (index<current.values.length) {
+					final long value = current.values[index];
+					this.current = value;
+					return value;
+				}
+			}
+			synchronized (refillLock) {
+				final Block latest = block.get();
+				if (CLOSED==latest)
+					throw new IllegalStateException("BlockSequence "+getName()+" has been closed");
+				if (latest==current)
+					block.set(reserve());
+			}
+		}
+	}
+
+	private Block reserve() throws JDOException {
+		final int size = Math.max(blockSize, additional.getAndSet(0));
+		if (allocator!=null)
+			return new Block(allocator.allocateBlock(size));
+		else
+			return new Block(new long[]{sequence.nextValue()});
+	}
+
+	/**
+	 * @return Long
+	 */
+	@Override
+	public Object next() throws IllegalStateException, JDOException {
+		return new Long(nextValue());
+	}
+
+	/**
+	 * <p>Make the next block to be reserved at least as large as the given count of values.</p>
+	 * @param additional int
+	 */
+	@Override
+	public void allocate(int additional) {
+		if (additional>0)
+			this.additional.set(additional);
+	}
+
+	/**
+	 * @return Long Last value returned by this sequence
+	 */
+	@Override
+	public Object current() {
+		return new Long(current);
+	}
+
+	/**
+	 * @return long Last value returned by this sequence
+	 */
+	@Override
+	public long currentValue() {
+		return current;
+	}
+
+	/**
+	 * @return int Count of values reserved and not yet returned
+	 */
+	public int remaining() {
+		final Block current = block.get();
+		return null==current ? 0 : Math.max(0, current.values.length - current.next.get());
+	}
+
+	/**
+	 * <p>Stop handing out values and try to give back to the data store the values of the current block which were not used.</p>
+	 * @throws JDOException
+	 */
+	@Override
+	public void close() throws JDOException {
+		synchronized (refillLock) {
+			final Block last = block.getAndSet(CLOSED);
+			if (last!=null && last!=CLOSED) {
+				// Stop other threads taking values from the last block and count how many were taken
+				final int used = Math.min(last.next.getAndSet(Integer.MAX_VALUE / 2), last.values.length);
+				if (used<last.values.length && allocator!=null)
+					allocator.releaseBlock(last.values, used);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.judal.storage;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jdo.JDOException;
+import javax.jdo.datastore.Sequence;
+
+/**
+ * <p>BlockSequence instances shared by all the callers of a DataSource.</p>
+ * Keeps one BlockSequence per sequence name so that every call to DataSource.getSequence()
+ * takes values from the same reserved block instead of reserving a new one.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class BlockSequencePool implements AutoCloseable {
+
+	private final int blockSize;
+	private final ConcurrentHashMap<String, BlockSequence> sequences;
+
+	/**
+	 * @param blockSize int Count of values reserved by each round trip to the data store.
+	 * If it is one then sequences are not wrapped.
+	 * @throws IllegalArgumentException If blockSize is less than one
+	 */
+	public BlockSequencePool(int blockSize) throws IllegalArgumentException {
+		if (blockSize<1)
+			throw new IllegalArgumentException("BlockSequencePool block size must be at least 1");
+		this.blockSize = blockSize;
+		this.sequences = new ConcurrentHashMap<String, BlockSequence>();
+	}
+
+	/**
+	 * @param properties Map&lt;String,String&gt; DataSource properties
+	 * @return BlockSequencePool With the block size given by DataSource.SEQUENCE_BLOCK_SIZE property
+	 * @throws NumberFormatException If the property value is not an integer
+	 * @throws IllegalArgumentException If the property value is less than one
+	 */
+	public static BlockSequencePool forProperties(Map<String,String> properties) throws NumberFormatException, IllegalArgumentException {
+		String blockSize = properties.get(DataSource.SEQUENCE_BLOCK_SIZE);
+		if (null==blockSize || blockSize.trim().length()==0)
+			blockSize = DataSource.DEFAULT_SEQUENCE_BLOCK_SIZE;
+		return new BlockSequencePool(Integer.parseInt(blockSize.trim()));
+	}
+
+	/**
+	 * @return int Count of values reserved by each round trip to the data store
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * <p>Get the shared BlockSequence for a data store sequence.</p>
+	 * @param sequence Sequence Data store sequence
+	 * @return Sequence The given sequence if block size is one or else the BlockSequence that wraps the first sequence with the same name
+	 */
+	public Sequence get(Sequence sequence) {
+		if (1==blockSize)
+			return sequence;
+		final String name = sequence.getName().toLowerCase();
+		BlockSequence retval = sequences.get(name);
+		if (null==retval) {
+			final BlockSequence created = new BlockSequence(sequence, blockSize);
+			retval = sequences.putIfAbsent(name, created);
+			if (null==retval)
+				retval = created;
+		}
+		return retval;
+	}
+
+	/**
+	 * <p>Close all the sequences of this pool releasing their unused values.</p>
+	 * @throws JDOException If any sequence failed to close. The others are closed anyway.
+	 */
+	@Override
+	public void close() throws JDOException {
+		JDOException failure = null;
+		for (BlockSequence sequence : sequences.values()) {
+			try {
+				sequence.close();
+			} catch (JDOException xcpt) {
+				failure = xcpt;
+			}
+		}
+		sequences.clear();
+		if (failure!=null)
+			throw failure;
+	}
+
+}
@@ -148,6 +148,28 @@ public interface DataSource extends AutoCloseable {
 	 * Configuration property. Name of file describing schema metadata. Default "metadata.xml"
 	 */
 	public static final String METADATA = "metadata";
+	/**
+	 * Configuration property used by JDBC. How table definitions are read from the database when useDatabaseMetadata is true.
+	 * "eager" reads all of them at startup using one connection, "parallel" reads all of them at startup
+	 * using metadatathreads pooled connections and "lazy" reads each table definition the first time that it is used.
+	 * Default "eager".
+	 */
+	public static final String METADATA_LOADING = "metadataloading";
+	/**
+	 * Configuration property used by JDBC. int [1..n] Count of connections used to read table definitions
+	 * when metadataloading is "parallel". Default 4.
+	 */
+	public static final String METADATA_THREADS = "metadatathreads";
+	/**
+	 * Configuration property used by JDBC. Path of a file where table definitions read from the database are saved
+	 * and from which they are read at later startups while the schema version does not change.
+	 */
+	public static final String METADATA_SNAPSHOT = "metadatasnapshot";
+	/**
+	 * Configuration property used by JDBC. SQL query returning the schema version used to validate the metadata snapshot,
+	 * for example the last entry of a migrations table. If not set, the version is a hash of the columns of all the tables.
+	 */
+	public static final String METADATA_VERSION_QUERY = "metadataversionquery";
 	/**
 	 * Configuration property. Path of package containing metadata like "com/acme/app/model"
 	 */
@@ -196,6 +218,37 @@ public interface DataSource extends AutoCloseable {
 	 * Configuration property. int [MAXPOOLSIZE..n] Maximum number of allowed JDBC connections.
 	 */
 	public static final String MAXCONNECTIONS = "maxconnections";
+	/**
+	 * Configuration property used by JDBC. String. Connection pool implementation.
+	 * "synchronized" for the classic monitor based pool or "concurrent" for the lock-free pool. Default "synchronized".
+	 */
+	public static final String POOLMODE = "poolmode";
+	/**
+	 * Configuration property used by JDBC. int [0..n] Milliseconds that a caller will wait for a connection
+	 * when the concurrent pool is exhausted before failing with SQLState 08004. Default 30000.
+	 */
+	public static final String POOLWAITTIMEOUT = "poolwaittimeout";
+	/**
+	 * Configuration property used by JDBC. int [0..n] Maximum number of prepared statements
+	 * kept open at each pooled connection for reuse. Zero disables the statement cache. Default 0.
+	 */
+	public static final String STATEMENTCACHESIZE = "statementcachesize";
+	/**
+	 * Configuration property. int [1..n] Maximum number of rows sent to the database at once
+	 * by storeAll(), insertAll() and deleteAll() operations. Default 500.
+	 */
+	public static final String BATCHSIZE = "batchsize";
+	/**
+	 * Configuration property. int [1..n] Count of sequence values reserved at the data store by each round trip.
+	 * Values greater than one make getSequence() return a BlockSequence. Default 1.
+	 */
+	public static final String SEQUENCE_BLOCK_SIZE = "sequenceblocksize";
+	/**
+	 * Configuration property. String (ordered/legacy) Format of the secondary index keys (for Berkeley DB) and of the keys (for HaloDB).
+	 * ordered keys are written with OrderedBytesConverter and sort like the values that they encode,
+	 * legacy keys are written with BytesConverter as in previous versions. Default ordered.
+	 */
+	public static final String KEY_FORMAT = "keyformat";
 	/**
 	 * Configuration property. Boolean (true/false) Default true
 	 */
@@ -284,11 +337,19 @@ public interface DataSource extends AutoCloseable {
 	public static String DEFAULT_MAXCONNECTIONS = "100";
 	public static String DEFAULT_LOGINTIMEOUT = "20";
 	public static String DEFAULT_CONNECTIONTIMEOUT = "60000";
+	public static String DEFAULT_POOLMODE = "synchronized";
+	public static String DEFAULT_POOLWAITTIMEOUT = "30000";
+	public static String DEFAULT_STATEMENTCACHESIZE = "0";
+	public static String DEFAULT_BATCHSIZE = "500";
+	public static String DEFAULT_SEQUENCE_BLOCK_SIZE = "1";
+	public static String DEFAULT_KEY_FORMAT = "ordered";
 	public static String DEFAULT_REGION = "eu-west-1";
 	public static String DEFAULT_TRANSACTIONAL = "true";
 	public static String DEFAULT_USE_DATABASE_METADATA = "true";
 	public static String DEFAULT_AUTOCOMMIT = "false";
 	public static String DEFAULT_METADATA = "metadata.xml";
+	public static String DEFAULT_METADATA_LOADING = "eager";
+	public static String DEFAULT_METADATA_THREADS = "4";
 
 	public static final String DEFAULT_MAIL_STORE_PROTOCOL = "pop3";
 	public static final String DEFAULT_MAIL_TRANSPORT_PROTOCOL = "smtp";
@@ -302,7 +363,8 @@ public interface DataSource extends AutoCloseable {
 	public static final String[] PropertyNames = new String[]{
 		ACCESSKEY,ANALYZER,SECRETKEY,AUTOCOMMIT,CATALOG,CONFIG,DRIVER,DBENV,BUCKET,URI,SCHEMA,METADATA,PACKAGE,
 		USER,PASSWORD,PROJECTID,REGION,HASHALGORITHM,SALT,STORED,EXTURL,LOGINTIMEOUT,CONNECTIONTIMEOUT,POOLSIZE,
-		USEPOOL,MAXPOOLSIZE,MAXCONNECTIONS,TRANSACTIONAL,USE_DATABASE_METADATA,LDAPCONNECT,LDAPUSER,LDAPPASSWORD,
+		USEPOOL,MAXPOOLSIZE,MAXCONNECTIONS,POOLMODE,POOLWAITTIMEOUT,STATEMENTCACHESIZE,BATCHSIZE,SEQUENCE_BLOCK_SIZE,KEY_FORMAT,TRANSACTIONAL,USE_DATABASE_METADATA,
+		METADATA_LOADING,METADATA_THREADS,METADATA_SNAPSHOT,METADATA_VERSION_QUERY,LDAPCONNECT,LDAPUSER,LDAPPASSWORD,
 		DIRECTORY,LUCENEINDEX,MAX_FILE_SIZE,MAX_TOMBSTONE_FILE_SIZE,INDEX_THREADS,FLUSH_SIZE_BYTES,COMPACTION_THRESHOLD,
 		NUMBER_OF_RECORDS,CLEANUP_TOMBSTONE,CLEANUP_MEMORY,
 		MAIL_STORE_PROTOCOL,MAIL_TRANSPORT_PROTOCOL,MAIL_INCOMING,MAIL_OUTGOING,MAIL_ACCOUNT,MAIL_PASSWORD,MAIL_USER,
@@ -319,6 +381,14 @@ public interface DataSource extends AutoCloseable {
 		new String[]{MAXCONNECTIONS,DEFAULT_MAXCONNECTIONS},
 		new String[]{MAXPOOLSIZE,DEFAULT_MAXPOOLSIZE},
 		new String[]{POOLSIZE,DEFAULT_POOLSIZE},
+		new String[]{POOLMODE,DEFAULT_POOLMODE},
+		new String[]{POOLWAITTIMEOUT,DEFAULT_POOLWAITTIMEOUT},
+		new String[]{STATEMENTCACHESIZE,DEFAULT_STATEMENTCACHESIZE},
+		new String[]{BATCHSIZE,DEFAULT_BATCHSIZE},
+		new String[]{SEQUENCE_BLOCK_SIZE,DEFAULT_SEQUENCE_BLOCK_SIZE},
+		new String[]{KEY_FORMAT,DEFAULT_KEY_FORMAT},
+		new String[]{METADATA_LOADING,DEFAULT_METADATA_LOADING},
+		new String[]{METADATA_THREADS,DEFAULT_METADATA_THREADS},
 		new String[]{REGION,DEFAULT_REGION},
 		new String[]{ANALYZER,DEFAULT_ANALYZER}
 	};
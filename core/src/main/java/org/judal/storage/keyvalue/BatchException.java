@@ -0,0 +1,119 @@
+package org.judal.storage.keyvalue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.ArrayList;
+
+import javax.jdo.JDOException;
+
+/**
+ * <p>Exception thrown by storeAll(), insertAll() and deleteAll() when one or more items could not be written.</p>
+ * Each failure is available as a nested JDOException whose failed object is the item that could not be written.
+ * The position of each failed item in the input sequence is returned by getFailedPositions().
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class BatchException extends JDOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int[] positions;
+	private final int total;
+
+	/**
+	 * <p>Constructor</p>
+	 * @param operation String Name of the operation that failed
+	 * @param failures Failures
+	 * @param total int Count of items processed by the operation
+	 */
+	public BatchException(String operation, Failures failures, int total) {
+		super(operation + " failed for " + String.valueOf(failures.size()) + " of " + String.valueOf(total) + " items",
+			  failures.errors.toArray(new Throwable[failures.size()]));
+		this.total = total;
+		this.positions = new int[failures.size()];
+		for (int f=0; f<positions.length; f++)
+			positions[f] = failures.positions.get(f);
+	}
+
+	/**
+	 * @return int Count of items processed by the operation
+	 */
+	public int getTotalCount() {
+		return total;
+	}
+
+	/**
+	 * @return int Count of items that could not be written
+	 */
+	public int getFailedCount() {
+		return positions.length;
+	}
+
+	/**
+	 * @return int[] Zero based position of each item that could not be written in the input sequence
+	 */
+	public int[] getFailedPositions() {
+		return positions;
+	}
+
+	/**
+	 * @return Object[] Items that could not be written, in the same order as getFailedPositions()
+	 */
+	public Object[] getFailedObjects() {
+		Throwable[] nested = getNestedExceptions();
+		Object[] failed = new Object[nested.length];
+		for (int f=0; f<nested.length; f++)
+			failed[f] = ((JDOException) nested[f]).getFailedObject();
+		return failed;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * <p>Accumulator of failures for a batch operation.</p>
+	 */
+	public static class Failures {
+
+		private final ArrayList<Integer> positions = new ArrayList<Integer>();
+		private final ArrayList<JDOException> errors = new ArrayList<JDOException>();
+
+		/**
+		 * <p>Record a failed item</p>
+		 * @param position int Zero based position of the item in the input sequence
+		 * @param failed Object Item that could not be written
+		 * @param cause Throwable
+		 */
+		public void add(int position, Object failed, Throwable cause) {
+			positions.add(position);
+			errors.add(new JDOException(cause.getMessage(), cause, failed));
+		}
+
+		/**
+		 * @return int Count of failed items recorded so far
+		 */
+		public int size() {
+			return errors.size();
+		}
+
+		/**
+		 * @param operation String Name of the operation
+		 * @param total int Count of items processed by the operation
+		 * @throws BatchException if any failure has been recorded
+		 */
+		public void throwIfAny(String operation, int total) throws BatchException {
+			if (errors.size()>0)
+				throw new BatchException(operation, this, total);
+		}
+	}
+
+}
@@ -35,4 +35,50 @@ public interface Bucket extends ReadOnlyBucket {
 	 */
 	void delete(Object key) throws JDOException;
 
+	/**
+	 * <p>Store several key-value pairs.</p>
+	 * A failure storing one value does not prevent the others from being stored.
+	 * All failures are reported at the end by a single BatchException.
+	 * Implementations may override this method to write the values in batches.
+	 * @param targets Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more values could not be stored
+	 * @throws JDOException
+	 */
+	default void storeAll(Iterable<? extends Stored> targets) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		int position = 0;
+		for (Stored target : targets) {
+			try {
+				store(target);
+			} catch (JDOException xcpt) {
+				failures.add(position, target, xcpt);
+			}
+			position++;
+		}
+		failures.throwIfAny("storeAll", position);
+	}
+
+	/**
+	 * <p>Delete several key-value pairs given their keys.</p>
+	 * A failure deleting one value does not prevent the others from being deleted.
+	 * All failures are reported at the end by a single BatchException.
+	 * Implementations may override this method to delete the values in batches.
+	 * @param keys Iterable&lt;?&gt;
+	 * @throws BatchException if one or more values could not be deleted
+	 * @throws JDOException
+	 */
+	default void deleteAll(Iterable<?> keys) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		int position = 0;
+		for (Object key : keys) {
+			try {
+				delete(key);
+			} catch (JDOException xcpt) {
+				failures.add(position, key, xcpt);
+			}
+			position++;
+		}
+		failures.throwIfAny("deleteAll", position);
+	}
+
 }
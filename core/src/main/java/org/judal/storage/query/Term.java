@@ -502,6 +502,7 @@ public abstract class Term implements Part,Serializable {
 	  			oRpl.append("'"+aValues[v]+"'");
 	  		else
 	  			oRpl.append(aValues[v].toString());
+	  		v++;
 	  	} else {
 	  		oRpl.append(c);
 	  	}
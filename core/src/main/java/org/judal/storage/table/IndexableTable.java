@@ -16,6 +16,7 @@ import javax.jdo.JDOException;
 
 import org.judal.metadata.IndexDef.Using;
 import org.judal.storage.Param;
+import org.judal.storage.keyvalue.BatchException;
 
 /**
  * <p>Interface for indexable tables.</p>
@@ -33,6 +34,34 @@ public interface IndexableTable extends Table, IndexableView {
 	 */
 	int update(Param[] values, Param[] where) throws JDOException;
 
+	/**
+	 * <p>Perform several updates.</p>
+	 * An update that fails is reported as failed and does not prevent the others from being performed.
+	 * All failures are reported at the end by a single BatchException.
+	 * Implementations may override this method to send the updates in batches.
+	 * @param values Param[][] Values to be updated by each update
+	 * @param where Param[][] Values for the filter clause of each update
+	 * @return int[] Count of updated records by each update
+	 * @throws IllegalArgumentException If values and where have different lengths
+	 * @throws BatchException if one or more updates failed
+	 * @throws JDOException
+	 */
+	default int[] updateAll(Param[][] values, Param[][] where) throws IllegalArgumentException, JDOException {
+		if (values.length!=where.length)
+			throw new IllegalArgumentException("updateAll() got " + values.length + " sets of values but " + where.length + " filters");
+		final int[] counts = new int[values.length];
+		BatchException.Failures failures = new BatchException.Failures();
+		for (int u=0; u<values.length; u++) {
+			try {
+				counts[u] = update(values[u], where[u]);
+			} catch (JDOException xcpt) {
+				failures.add(u, values[u], xcpt);
+			}
+		}
+		failures.throwIfAny("updateAll", values.length);
+		return counts;
+	}
+
 	/**
 	 * <p>Delete records.</p>
 	 * @param where Param[] Values for the filter clause
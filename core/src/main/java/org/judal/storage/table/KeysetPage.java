@@ -0,0 +1,84 @@
+package org.judal.storage.table;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import javax.jdo.JDOUserException;
+
+/**
+ * <p>Page of records returned by SchemalessView.fetchPage().</p>
+ * The continuation is the sort key of the last record of the page.
+ * It must be passed as the last seen key to fetchPage() in order to get the next page.
+ * When the page is not full the continuation is <b>null</b> because there are no more records.
+ * If the last page is exactly full then the next page will be empty.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ * @param <R> Record
+ */
+public class KeysetPage<R extends Record> {
+
+	private final RecordSet<R> records;
+	private final String sortColumnName;
+	private final Comparable<?> continuation;
+
+	/**
+	 * <p>Constructor</p>
+	 * @param records RecordSet&lt;R&gt; Records of the page sorted by the sort column
+	 * @param sortColumnName String Name of the column used as sort key
+	 * @param maxrows int Page size that was requested
+	 * @throws JDOUserException if the sort column was not fetched or its value is not Comparable
+	 */
+	public KeysetPage(RecordSet<R> records, String sortColumnName, int maxrows) throws JDOUserException {
+		this.records = records;
+		this.sortColumnName = sortColumnName;
+		if (records.size()<maxrows || records.size()==0) {
+			continuation = null;
+		} else {
+			final R last = records.get(records.size()-1);
+			final Object key = last.apply(sortColumnName);
+			if (null==key)
+				throw new JDOUserException("Keyset page sort column " + sortColumnName + " was not fetched or is null");
+			if (!(key instanceof Comparable))
+				throw new JDOUserException("Keyset page sort column " + sortColumnName + " value is not Comparable");
+			continuation = (Comparable<?>) key;
+		}
+	}
+
+	/**
+	 * @return RecordSet&lt;R&gt; Records of this page
+	 */
+	public RecordSet<R> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return String Name of the column used as sort key
+	 */
+	public String getSortColumnName() {
+		return sortColumnName;
+	}
+
+	/**
+	 * @return Comparable&lt;?&gt; Sort key of the last record of this page or <b>null</b> if there are no more records
+	 */
+	public Comparable<?> getContinuation() {
+		return continuation;
+	}
+
+	/**
+	 * @return boolean <b>true</b> if there may be more records after this page
+	 */
+	public boolean hasMore() {
+		return continuation!=null;
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.judal.storage.table;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Record that keeps numeric and temporal column values in primitive slots.</p>
+ * The slot type of each column is chosen from ColumnDef.getType().
+ * Integer, date and time columns are kept in long slots. Dates and times are kept as milliseconds since the epoch.
+ * Floating point columns are kept in double slots. Any other column is kept as an Object.
+ * Data sources can fill instances of this interface by column position without boxing values.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public interface PrimitiveRecord extends Record {
+
+	/**
+	 * Column value is kept as an Object
+	 */
+	int SLOT_OBJECT = 0;
+
+	/**
+	 * Column value is kept as a long
+	 */
+	int SLOT_LONG = 1;
+
+	/**
+	 * Column value is kept as a double
+	 */
+	int SLOT_DOUBLE = 2;
+
+	/**
+	 * @param colpos int [1..columnCount()]
+	 * @return int SLOT_OBJECT, SLOT_LONG or SLOT_DOUBLE
+	 */
+	int getSlotType(int colpos);
+
+	/**
+	 * @param colname String
+	 * @return int Column position [1..columnCount()] or -1 if there is no column with the given name
+	 */
+	int getColumnPosition(String colname);
+
+	/**
+	 * @param colpos int [1..columnCount()]
+	 * @return boolean
+	 */
+	boolean isNullAt(int colpos);
+
+	/**
+	 * @param colpos int [1..columnCount()]
+	 */
+	void putNullAt(int colpos);
+
+	/**
+	 * @param colpos int [1..columnCount()] of a SLOT_LONG column
+	 * @param value long Integer value or milliseconds since the epoch for date and time columns
+	 * @throws ClassCastException If the column is not of SLOT_LONG type
+	 */
+	void putLongAt(int colpos, long value) throws ClassCastException;
+
+	/**
+	 * @param colpos int [1..columnCount()] of a SLOT_DOUBLE column
+	 * @param value double
+	 * @throws ClassCastException If the column is not of SLOT_DOUBLE type
+	 */
+	void putDoubleAt(int colpos, double value) throws ClassCastException;
+
+	/**
+	 * @param colpos int [1..columnCount()] of a SLOT_LONG column
+	 * @return long
+	 * @throws ClassCastException If the column is not of SLOT_LONG type or its value is not kept in the long slot
+	 * @throws NullPointerException If the column is null
+	 */
+	long getLongAt(int colpos) throws ClassCastException, NullPointerException;
+
+	/**
+	 * @param colpos int [1..columnCount()] of a SLOT_DOUBLE column
+	 * @return double
+	 * @throws ClassCastException If the column is not of SLOT_DOUBLE type or its value is not kept in the double slot
+	 * @throws NullPointerException If the column is null
+	 */
+	double getDoubleAt(int colpos) throws ClassCastException, NullPointerException;
+
+}
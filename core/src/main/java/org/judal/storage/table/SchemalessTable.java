@@ -16,7 +16,9 @@ import javax.jdo.JDOException;
 import javax.jdo.metadata.PrimaryKeyMetadata;
 
 import org.judal.storage.Param;
+import org.judal.storage.keyvalue.BatchException;
 import org.judal.storage.keyvalue.Bucket;
+import org.judal.storage.keyvalue.Stored;
 
 /**
  * <p>Interface for tables without schema.</p>
@@ -36,4 +38,50 @@ public interface SchemalessTable extends Bucket, SchemalessView {
 	 * @throws JDOException If another Record with the same primary key already exists
 	 */
 	void insert(Param... params) throws JDOException;
+
+	/**
+	 * <p>Insert several new Records.</p>
+	 * A Record whose key already exists is reported as failed and does not prevent the others from being inserted.
+	 * All failures are reported at the end by a single BatchException.
+	 * Implementations may override this method to insert the Records in batches.
+	 * @param targets Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more Records could not be inserted
+	 * @throws JDOException
+	 */
+	default void insertAll(Iterable<? extends Stored> targets) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		int position = 0;
+		for (Stored target : targets) {
+			try {
+				if (exists(target.getKey()))
+					throw new JDOException("Another record with the same primary key already exists at " + name());
+				store(target);
+			} catch (JDOException xcpt) {
+				failures.add(position, target, xcpt);
+			}
+			position++;
+		}
+		failures.throwIfAny("insertAll", position);
+	}
+
+	/**
+	 * <p>Insert several new rows.</p>
+	 * A row that cannot be inserted is reported as failed and does not prevent the others from being inserted.
+	 * All failures are reported at the end by a single BatchException.
+	 * Implementations may override this method to insert the rows in batches.
+	 * @param rows Param[][] Values of each row to be inserted
+	 * @throws BatchException if one or more rows could not be inserted
+	 * @throws JDOException
+	 */
+	default void insertAll(Param[][] rows) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		for (int r=0; r<rows.length; r++) {
+			try {
+				insert(rows[r]);
+			} catch (JDOException xcpt) {
+				failures.add(r, rows[r], xcpt);
+			}
+		}
+		failures.throwIfAny("insertAll", rows.length);
+	}
 }
@@ -13,10 +13,14 @@ package org.judal.storage.table;
  */
 
 
+import java.util.Iterator;
+
 import javax.jdo.FetchGroup;
 import javax.jdo.JDOException;
+import javax.jdo.JDOUnsupportedOptionException;
 
 import org.judal.storage.Param;
+import org.judal.storage.query.SortDirection;
 import org.judal.storage.keyvalue.ReadOnlyBucket;
 
 /**
@@ -91,6 +95,56 @@ public interface SchemalessView extends ReadOnlyBucket {
 	 */	
 	<R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, String indexColumnName, Comparable<?> valueFrom, Comparable<?> valueTo, int maxrows, int offset) throws JDOException, IllegalArgumentException;
 
+	/**
+	 * <p>Fetch records with a given value at the specified column sorted by another column and up to a maximum number of records.</p>
+	 * Implementations should push the sort and the limit down to the datastore so that only the requested records are read.
+	 * This default implementation fetches all the matching records, sorts them in memory and then discards those beyond maxrows.
+	 * @param fetchGroup FetchGroup Determines the columns that will be fetched. Must include sortByColumn
+	 * @param indexColumnName String
+	 * @param valueSearched Object
+	 * @param sortByColumn String Column used to sort the records
+	 * @param sortDirection String SortDirection.ASC or SortDirection.DESC. If <b>null</b> then records are sorted in ascending order
+	 * @param maxrows Positive integer or -1 to return all the matching records
+	 * @return RecordSet&lt;R extends Record&gt;
+	 * @throws JDOException
+	 */
+	default <R extends Record> RecordSet<R> fetchOrdered(FetchGroup fetchGroup, String indexColumnName, Object valueSearched, String sortByColumn, String sortDirection, int maxrows) throws JDOException {
+		RecordSet<R> retval = fetch(fetchGroup, indexColumnName, valueSearched);
+		if (sortDirection!=null && SortDirection.same(SortDirection.DESC, sortDirection.trim()))
+			retval.sortDesc(sortByColumn);
+		else
+			retval.sort(sortByColumn);
+		if (maxrows>0 && retval.size()>maxrows) {
+			Iterator<R> iter = retval.iterator();
+			for (int r=0; r<maxrows; r++)
+				iter.next();
+			while (iter.hasNext()) {
+				iter.next();
+				iter.remove();
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * <p>Fetch a page of records sorted by a column starting after a given key.</p>
+	 * Keyset pagination seeks the first record after lastKey using an index on the sort column
+	 * instead of skipping offset records, so fetching a deep page costs the same as fetching the first one.
+	 * The sort column must be unique, usually the primary key, and it must be included in the fetch group.
+	 * Implementations that cannot seek by key throw JDOUnsupportedOptionException.
+	 * @param fetchGroup FetchGroup Determines the columns that will be fetched
+	 * @param sortColumnName String Name of the column used as sort key
+	 * @param lastKey Comparable&lt;?&gt; Continuation of the previous page or <b>null</b> to get the first page
+	 * @param maxrows Positive integer Page size
+	 * @param params Param&hellip; Optional column values that the fetched records must have
+	 * @return KeysetPage&lt;R extends Record&gt;
+	 * @throws JDOException
+	 * @throws JDOUnsupportedOptionException if this view does not support keyset pagination
+	 */
+	default <R extends Record> KeysetPage<R> fetchPage(FetchGroup fetchGroup, String sortColumnName, Comparable<?> lastKey, int maxrows, Param... params) throws JDOException, JDOUnsupportedOptionException {
+		throw new JDOUnsupportedOptionException(getClass().getName() + " does not support keyset pagination");
+	}
+
 	/**
 	 * Class used by the fetch methods to return results
 	 * @return Class&lt;R extends Record&gt;
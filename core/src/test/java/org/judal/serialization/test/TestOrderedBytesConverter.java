@@ -0,0 +1,129 @@
+package org.judal.serialization.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Date;
+
+import org.judal.serialization.OrderedBytesConverter;
+import org.junit.Test;
+
+public class TestOrderedBytesConverter {
+
+	/**
+	 * Check that each value round trips and that the byte order of each pair of values is the order of the values.
+	 * @param values Object[] Sorted in ascending order, <b>null</b> first
+	 */
+	private static void assertOrdered(int sqlType, Object[] values) throws IOException {
+		byte[][] encoded = new byte[values.length][];
+		for (int v=0; v<values.length; v++) {
+			encoded[v] = OrderedBytesConverter.toBytes(values[v], sqlType);
+			Object decoded = OrderedBytesConverter.fromBytes(encoded[v], sqlType);
+			if (values[v] instanceof BigDecimal)
+				assertEquals(0, ((BigDecimal) values[v]).compareTo((BigDecimal) decoded));
+			else
+				assertEquals(values[v], decoded);
+		}
+		for (int v=0; v<values.length; v++)
+			for (int w=0; w<values.length; w++)
+				assertEquals("comparing " + values[v] + " to " + values[w],
+					Integer.signum(Integer.compare(v, w)),
+					Integer.signum(OrderedBytesConverter.COMPARATOR.compare(encoded[v], encoded[w])));
+	}
+
+	@Test
+	public void test01Integers() throws IOException {
+		assertOrdered(Types.INTEGER, new Object[]{null, Integer.MIN_VALUE, -65536, -256, -1, 0, 1, 255, 256, 65536, Integer.MAX_VALUE});
+		assertOrdered(Types.SMALLINT, new Object[]{null, Short.MIN_VALUE, (short) -1, (short) 0, (short) 1, Short.MAX_VALUE});
+	}
+
+	@Test
+	public void test02Longs() throws IOException {
+		assertOrdered(Types.BIGINT, new Object[]{null, Long.MIN_VALUE, -4294967296l, -2147483649l, -1l, 0l, 1l, 2147483648l, Long.MAX_VALUE});
+	}
+
+	@Test
+	public void test03Decimals() throws IOException {
+		assertOrdered(Types.DECIMAL, new Object[]{null,
+			new BigDecimal("-1E+20"), new BigDecimal("-100"), new BigDecimal("-10.5"), new BigDecimal("-10"),
+			new BigDecimal("-1.5"), new BigDecimal("-1"), new BigDecimal("-0.001"), BigDecimal.ZERO,
+			new BigDecimal("0.00099"), new BigDecimal("0.001"), new BigDecimal("0.1"), BigDecimal.ONE,
+			new BigDecimal("1.05"), new BigDecimal("1.5"), BigDecimal.TEN, new BigDecimal("10.25"),
+			new BigDecimal("99.999"), new BigDecimal("100"), new BigDecimal("1E+20")});
+		// Same value with different scales gives the same key
+		assertArrayEquals(OrderedBytesConverter.toBytes(new BigDecimal("1.50"), Types.DECIMAL),
+			OrderedBytesConverter.toBytes(new BigDecimal("1.5"), Types.DECIMAL));
+	}
+
+	@Test
+	public void test04Doubles() throws IOException {
+		assertOrdered(Types.DOUBLE, new Object[]{null, Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1e10d, -1.5d, -Double.MIN_VALUE,
+			-0.0d, 0.0d, Double.MIN_VALUE, 1.5d, 1e10d, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN});
+		assertTrue(Double.isNaN((Double) OrderedBytesConverter.fromBytes(OrderedBytesConverter.toBytes(Double.NaN, Types.DOUBLE), Types.DOUBLE)));
+		assertOrdered(Types.FLOAT, new Object[]{null, Float.NEGATIVE_INFINITY, -1.5f, -0.0f, 0.0f, 1.5f, Float.POSITIVE_INFINITY, Float.NaN});
+	}
+
+	@Test
+	public void test05Dates() throws IOException {
+		assertOrdered(Types.TIMESTAMP, new Object[]{null, new Date(-86400000l * 365 * 100), new Date(-1l), new Date(0l), new Date(1l),
+			new Date(1500000000000l), new Date(1500000000001l)});
+		assertOrdered(Types.DATE, new Object[]{null, new Date(-86400000l), new Date(0l), new Date(86400000l)});
+	}
+
+	@Test
+	public void test06Strings() throws IOException {
+		assertOrdered(Types.VARCHAR, new Object[]{null, "", "\u0000", "\u0000\u0000", "a", "a\u0000", "ab", "abc", "b", "ñ"});
+	}
+
+	@Test
+	public void test07Nulls() throws IOException {
+		final int[] types = new int[]{Types.INTEGER, Types.BIGINT, Types.DECIMAL, Types.DOUBLE, Types.TIMESTAMP, Types.VARCHAR, Types.VARBINARY};
+		final Object[] lowest = new Object[]{Integer.MIN_VALUE, Long.MIN_VALUE, new BigDecimal("-1E+100"), Double.NEGATIVE_INFINITY, new Date(Long.MIN_VALUE), "", new byte[0]};
+		for (int t=0; t<types.length; t++) {
+			byte[] encodedNull = OrderedBytesConverter.toBytes(null, types[t]);
+			assertNull(OrderedBytesConverter.fromBytes(encodedNull, types[t]));
+			assertTrue(OrderedBytesConverter.COMPARATOR.compare(encodedNull, OrderedBytesConverter.toBytes(lowest[t], types[t])) < 0);
+		}
+	}
+
+	@Test
+	public void test08CompositeKeys() throws IOException {
+		final int[] types = new int[]{Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP};
+		final Object[][] keys = new Object[][]{
+			new Object[]{null, "z", new Date(0l)},
+			new Object[]{-2, null, new Date(0l)},
+			new Object[]{-2, "", null},
+			new Object[]{-2, "", new Date(-1l)},
+			new Object[]{-2, "a", new Date(5l)},
+			new Object[]{-2, "ab", new Date(0l)},
+			new Object[]{-1, "a", new Date(0l)},
+			new Object[]{0, "a", new Date(0l)},
+			new Object[]{1, "a", new Date(0l)}};
+		byte[][] encoded = new byte[keys.length][];
+		for (int k=0; k<keys.length; k++) {
+			encoded[k] = OrderedBytesConverter.toBytes(keys[k], types);
+			assertArrayEquals(keys[k], OrderedBytesConverter.fromBytes(encoded[k], types));
+		}
+		for (int k=1; k<keys.length; k++)
+			assertTrue(OrderedBytesConverter.COMPARATOR.compare(encoded[k-1], encoded[k]) < 0);
+
+		// All the keys starting with -2 and only them are between the prefix and its upper bound
+		final byte[] prefix = OrderedBytesConverter.toBytes(-2, Types.INTEGER);
+		final byte[] upperBound = OrderedBytesConverter.prefixUpperBound(prefix);
+		for (int k=0; k<keys.length; k++) {
+			final boolean inRange = OrderedBytesConverter.COMPARATOR.compare(encoded[k], prefix) >= 0 && OrderedBytesConverter.COMPARATOR.compare(encoded[k], upperBound) < 0;
+			assertEquals(Integer.valueOf(-2).equals(keys[k][0]), inRange);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test09NotOrderable() {
+		OrderedBytesConverter.toBytes(new Object(), Types.JAVA_OBJECT);
+	}
+
+}
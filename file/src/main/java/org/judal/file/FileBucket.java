@@ -2,9 +2,23 @@ package org.judal.file;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 import javax.jdo.FetchPlan;
 import javax.jdo.JDOException;
@@ -14,22 +28,44 @@ import org.judal.storage.Param;
 import org.judal.storage.keyvalue.Bucket;
 import org.judal.storage.keyvalue.Stored;
 
-import com.knowgate.io.FileUtils;
 import com.knowgate.io.MimeUtils;
 
 import static org.judal.storage.DataSource.URI;
 
+/**
+ * <p>Bucket whose values are files in a directory.</p>
+ * If the shardlevels property of the data source is greater than zero, files are spread across
+ * that many levels of subdirectories named after the hash of the file name, each level having up to 256 subdirectories.
+ * Writes go to a temporary file in the target directory which is then atomically renamed over the previous version,
+ * so readers never see a missing or partially written file.
+ * Besides load(), file contents can be read as a memory mapped ByteBuffer, as an InputStream
+ * or transferred to a channel without copying them into the Java heap.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
 public class FileBucket implements Bucket {
 
+	private static final String TEMP_PREFIX = ".~";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	final private File dir;
 	final private String path;
-	
+	final private Path root;
+	final private int shardLevels;
+	final private boolean syncWrites;
+	final private Set<FileIterator> iterators;
+
 	public FileBucket(Map<String, String> properties, String name, boolean create) throws JDOException {
 		String uri = properties.get(URI);
 		if (!uri.endsWith(File.separator))
 			uri += File.separator;
 		path = uri + name + File.separator;
 		dir = new File(uri + name);
+		root = dir.toPath();
+		shardLevels = FileDataSource.getShardLevels(properties);
+		syncWrites = Boolean.parseBoolean(properties.get(FileDataSource.SYNC_WRITES));
+		iterators = Collections.newSetFromMap(new IdentityHashMap<FileIterator,Boolean>());
 		if (!dir.exists())
 			if (create)
 				dir.mkdirs();
@@ -48,13 +84,33 @@ public class FileBucket implements Bucket {
 		return dir.getName();
 	}
 
-	private String getFilePath(final Object key) throws NullPointerException {
+	private String getFileName(final Object key) throws NullPointerException {
 		if (null==key)
 			throw new NullPointerException("FileBucket file name cannot be null");
 		if (key instanceof Param)
-			return path + ((Param) key).getValue();
+			return String.valueOf(((Param) key).getValue());
 		else
-			return path + key;
+			return key.toString();
+	}
+
+	/**
+	 * <p>Get the path of the file that holds the value for a key.</p>
+	 * Each shard level is named with two hexadecimal digits of the CRC32 of the file name.
+	 * @param key Object Param or String
+	 * @return Path
+	 * @throws NullPointerException If key is <b>null</b>
+	 */
+	public Path getFilePath(final Object key) throws NullPointerException {
+		final String fileName = getFileName(key);
+		if (0==shardLevels)
+			return root.resolve(fileName);
+		CRC32 crc = new CRC32();
+		crc.update(fileName.getBytes(UTF8));
+		final long hash = crc.getValue();
+		Path shard = root;
+		for (int level=0; level<shardLevels; level++)
+			shard = shard.resolve(String.format("%02x", (hash >>> (24 - 8 * level)) & 0xff));
+		return shard.resolve(fileName);
 	}
 
 	private String getFileExtension(final String fileName) throws NullPointerException {
@@ -62,30 +118,101 @@ public class FileBucket implements Bucket {
 		return lastDot>=0 ? fileName.substring(lastDot) : "";
 	}
 
+	static boolean isTemporary(Path file) {
+		final String fileName = file.getFileName().toString();
+		return fileName.startsWith(TEMP_PREFIX) && fileName.endsWith(TEMP_SUFFIX);
+	}
+
 	@Override
 	public boolean exists(Object key) throws JDOException {
-		return new File(getFilePath(key)).exists();
+		return Files.isRegularFile(getFilePath(key));
 	}
 
 	@Override
 	public boolean load(Object key, Stored target) throws JDOException {
-		final File source = new File(getFilePath(key));
-		final boolean retval = source.exists();
-		if (!source.isFile())
-			throw new JDOException("FileBucket.load() " + source.getAbsolutePath() + " is not a file");
-		try {
-			if (retval)
-				target.setContent(FileUtils.readFileToByteArray(source), MimeUtils.getFileExtensionForMimeType(getFileExtension(source.getName())));
-			else
-				target.setContent(null, null);
+		final Path source = getFilePath(key);
+		boolean retval;
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size>Integer.MAX_VALUE)
+				throw new JDOException("FileBucket.load() " + source + " is too large to be loaded into memory");
+			final ByteBuffer content = ByteBuffer.allocate((int) size);
+			while (content.hasRemaining())
+				if (channel.read(content)<0)
+					throw new JDOException("FileBucket.load() " + source + " was truncated while being read");
+			target.setContent(content.array(), MimeUtils.getFileExtensionForMimeType(getFileExtension(source.getFileName().toString())));
+			retval = true;
+		} catch (NoSuchFileException nosuchfile) {
+			target.setContent(null, null);
+			retval = false;
 		} catch (IOException ioe) {
 			throw new JDOException(ioe.getMessage(), ioe);
 		}
 		return retval;
 	}
 
+	/**
+	 * <p>Map the content of a file into memory.</p>
+	 * The content is not copied into the Java heap. It stays valid after the file is replaced or deleted.
+	 * @param key Object Param or String
+	 * @return ByteBuffer Read only or <b>null</b> if there is no file for the given key
+	 * @throws JDOException If the file is larger than 2GB or cannot be read
+	 */
+	public ByteBuffer getBuffer(Object key) throws JDOException {
+		final Path source = getFilePath(key);
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			if (channel.size()>Integer.MAX_VALUE)
+				throw new JDOException("FileBucket.getBuffer() " + source + " is too large to be mapped into a single buffer");
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (NoSuchFileException nosuchfile) {
+			return null;
+		} catch (IOException ioe) {
+			throw new JDOException(ioe.getMessage(), ioe);
+		}
+	}
+
+	/**
+	 * <p>Open a stream for reading the content of a file.</p>
+	 * The caller must close the stream.
+	 * @param key Object Param or String
+	 * @return InputStream or <b>null</b> if there is no file for the given key
+	 * @throws JDOException
+	 */
+	public InputStream getInputStream(Object key) throws JDOException {
+		try {
+			return Files.newInputStream(getFilePath(key), StandardOpenOption.READ);
+		} catch (NoSuchFileException nosuchfile) {
+			return null;
+		} catch (IOException ioe) {
+			throw new JDOException(ioe.getMessage(), ioe);
+		}
+	}
+
+	/**
+	 * <p>Write the content of a file to a channel.</p>
+	 * FileChannel.transferTo() is used so the operating system may send the file to a socket or another file without copying it to user space.
+	 * @param key Object Param or String
+	 * @param target WritableByteChannel
+	 * @return long Count of bytes transferred or -1 if there is no file for the given key
+	 * @throws JDOException
+	 */
+	public long transferTo(Object key, WritableByteChannel target) throws JDOException {
+		try (FileChannel channel = FileChannel.open(getFilePath(key), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			long position = 0l;
+			while (position<size)
+				position += channel.transferTo(position, size - position, target);
+			return position;
+		} catch (NoSuchFileException nosuchfile) {
+			return -1l;
+		} catch (IOException ioe) {
+			throw new JDOException(ioe.getMessage(), ioe);
+		}
+	}
+
 	@Override
 	public void close() throws JDOException {
+		closeAll();
 	}
 
 	@Override
@@ -93,11 +220,22 @@ public class FileBucket implements Bucket {
 	}
 
 	@Override
-	public void close(Iterator<Stored> arg0) {
+	public void close(Iterator<Stored> iterator) {
+		if (iterator instanceof FileIterator) {
+			((FileIterator) iterator).close();
+			synchronized (iterators) {
+				iterators.remove(iterator);
+			}
+		}
 	}
 
 	@Override
 	public void closeAll() {
+		synchronized (iterators) {
+			for (FileIterator iterator : iterators)
+				iterator.close();
+			iterators.clear();
+		}
 	}
 
 	@Override
@@ -120,34 +258,65 @@ public class FileBucket implements Bucket {
 		return false;
 	}
 
+	/**
+	 * @return FileIterator Over FileStore instances with no content loaded
+	 */
 	@Override
 	public Iterator<Stored> iterator() {
-		String[] files = dir.list();
-		Stored[] stores = new FileStore[files.length];
-		for (int f=0; f<files.length; f++)
-			stores[f] = new FileStore(this, files[f]);
-		return Arrays.asList(stores).iterator();
+		FileIterator iterator = new FileIterator(this, root, shardLevels);
+		synchronized (iterators) {
+			iterators.add(iterator);
+		}
+		return iterator;
 	}
 
+	/**
+	 * <p>Write the value of a Stored to a file.</p>
+	 * The value is written to a temporary file at the target directory which is then renamed over the target file.
+	 * If the value is <b>null</b> then the file is deleted.
+	 * @param source Stored
+	 * @throws JDOException
+	 */
 	@Override
 	public void store(Stored source) throws JDOException {
 		byte[] content = (byte[]) source.getValue();
-		File file = new File(path+source.getKey());
-		if (file.exists())
-			file.delete();
+		final Path file = getFilePath(source.getKey());
+		if (null==content) {
+			delete(source.getKey());
+			return;
+		}
+		Path temp = null;
 		try {
-			if (content!=null)
-				FileUtils.writeByteArrayToFile(file, content);
+			Files.createDirectories(file.getParent());
+			temp = Files.createTempFile(file.getParent(), TEMP_PREFIX, TEMP_SUFFIX);
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				final ByteBuffer buffer = ByteBuffer.wrap(content);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				if (syncWrites)
+					channel.force(true);
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException notsupported) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
 		} catch (IOException ioe) {
 			throw new JDOException(ioe.getMessage(), ioe);
+		} finally {
+			if (temp!=null)
+				try { Files.deleteIfExists(temp); } catch (IOException ignore) { }
 		}
 	}
 
 	@Override
 	public void delete(Object key) throws JDOException {
-		File file = new File(path+key);
-		if (file.exists())
-			file.delete();
+		try {
+			Files.deleteIfExists(getFilePath(key));
+		} catch (IOException ioe) {
+			throw new JDOException(ioe.getMessage(), ioe);
+		}
 	}
 
 	public String getPath() {
@@ -1,6 +1,12 @@
 package org.judal.file;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -18,6 +24,17 @@ import org.judal.storage.Param;
 
 public class FileDataSource implements BucketDataSource {
 
+	/**
+	 * Configuration property. Count of hash named subdirectory levels [0..4] used to spread the files of each bucket.
+	 * Zero, the default, keeps all the files of a bucket in a single directory.
+	 */
+	public static final String SHARD_LEVELS = "shardlevels";
+
+	/**
+	 * Configuration property. If "true" each write is forced to the storage device before the file is replaced.
+	 */
+	public static final String SYNC_WRITES = "syncwrites";
+
 	private ConcurrentHashMap<String, ConcurrentHashMap<String,FileBucket>> buckets;
 	private ConcurrentHashMap<String, Sequence> sequences;
 
@@ -29,6 +46,25 @@ public class FileDataSource implements BucketDataSource {
 		this.properties = properties;
 	}
 
+	/**
+	 * @param properties Map&lt;String, String&gt;
+	 * @return int Value of shardlevels property or zero if not set
+	 * @throws JDOException If the value is not an integer between 0 and 4
+	 */
+	public static int getShardLevels(Map<String, String> properties) throws JDOException {
+		final String levels = properties.get(SHARD_LEVELS);
+		if (null==levels || levels.trim().length()==0)
+			return 0;
+		try {
+			final int retval = Integer.parseInt(levels.trim());
+			if (retval<0 || retval>4)
+				throw new JDOException(SHARD_LEVELS + " must be between 0 and 4 but it is " + levels);
+			return retval;
+		} catch (NumberFormatException nfe) {
+			throw new JDOException(SHARD_LEVELS + " is not a valid integer " + levels, nfe);
+		}
+	}
+
 	@Override
 	public boolean exists(String objectName, String objectType) throws JDOException {
 		if ("U".equals(objectType)) {
@@ -127,9 +163,28 @@ public class FileDataSource implements BucketDataSource {
 		File dir = new File(path+bucketName);
 		if (dir.exists()) {
 			if (dir.isDirectory()) {
-				for (File f : dir.listFiles())
-					if (f.isFile())
-						f.delete();
+				final Path root = dir.toPath();
+				try {
+					// Delete files and shard subdirectories without listing the whole tree in memory
+					Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+							if (attrs.isRegularFile())
+								Files.deleteIfExists(file);
+							return FileVisitResult.CONTINUE;
+						}
+						@Override
+						public FileVisitResult postVisitDirectory(Path subdir, IOException xcpt) throws IOException {
+							if (xcpt!=null)
+								throw xcpt;
+							if (!subdir.equals(root))
+								Files.deleteIfExists(subdir);
+							return FileVisitResult.CONTINUE;
+						}
+					});
+				} catch (IOException ioe) {
+					throw new JDOException(ioe.getMessage(), ioe);
+				}
 			} else {
 				throw new JDOException(path + bucketName + " is not a directory");
 			}
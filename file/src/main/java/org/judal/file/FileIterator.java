@@ -0,0 +1,108 @@
+package org.judal.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.jdo.JDOException;
+
+import org.judal.storage.keyvalue.Stored;
+
+/**
+ * <p>Lazy iterator over the files of a FileBucket.</p>
+ * Directories are read with a DirectoryStream as the iteration advances, so the names of all the files
+ * are never held in memory at the same time. Shard subdirectories are traversed depth first keeping
+ * at most one open stream per level. Temporary files of writes in progress are skipped.
+ * The values returned are FileStore instances with their key set and no content loaded.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class FileIterator implements Iterator<Stored>, Closeable {
+
+	private final FileBucket bucket;
+	private final int levels;
+	private final Deque<DirectoryStream<Path>> streams;
+	private final Deque<Iterator<Path>> iterators;
+	private Path nextFile;
+
+	/**
+	 * @param bucket FileBucket
+	 * @param root Path Bucket directory
+	 * @param levels int Count of shard subdirectory levels below root
+	 * @throws JDOException If root cannot be read
+	 */
+	public FileIterator(FileBucket bucket, Path root, int levels) throws JDOException {
+		this.bucket = bucket;
+		this.levels = levels;
+		this.streams = new ArrayDeque<DirectoryStream<Path>>(levels + 1);
+		this.iterators = new ArrayDeque<Iterator<Path>>(levels + 1);
+		open(root);
+	}
+
+	private void open(Path dir) throws JDOException {
+		try {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+			streams.push(stream);
+			iterators.push(stream.iterator());
+		} catch (IOException ioe) {
+			throw new JDOException(ioe.getMessage(), ioe);
+		}
+	}
+
+	private void closeTop() {
+		iterators.pop();
+		try {
+			streams.pop().close();
+		} catch (IOException ignore) { }
+	}
+
+	@Override
+	public boolean hasNext() throws JDOException {
+		while (null==nextFile && !iterators.isEmpty()) {
+			Iterator<Path> current = iterators.peek();
+			if (current.hasNext()) {
+				Path entry = current.next();
+				if (iterators.size()<=levels) {
+					if (Files.isDirectory(entry))
+						open(entry);
+				} else if (Files.isRegularFile(entry) && !FileBucket.isTemporary(entry)) {
+					nextFile = entry;
+				}
+			} else {
+				closeTop();
+			}
+		}
+		return nextFile!=null;
+	}
+
+	@Override
+	public Stored next() throws NoSuchElementException, JDOException {
+		if (!hasNext())
+			throw new NoSuchElementException("FileIterator has no more files");
+		Stored retval = new FileStore(bucket, nextFile.getFileName().toString());
+		nextFile = null;
+		return retval;
+	}
+
+	@Override
+	public void remove() throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("FileIterator does not support remove()");
+	}
+
+	/**
+	 * Close the directory streams still open
+	 */
+	@Override
+	public void close() {
+		while (!iterators.isEmpty())
+			closeTop();
+		nextFile = null;
+	}
+
+}
@@ -0,0 +1,233 @@
+package org.judal.file.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.jdo.JDOException;
+
+import org.judal.file.FileBucket;
+import org.judal.file.FileDataSource;
+import org.judal.file.FileStore;
+import org.judal.storage.DataSource;
+import org.judal.storage.Param;
+import org.judal.storage.keyvalue.Stored;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Store, read and iterate files at FileBucket instances with every allowed count of shard levels.
+ */
+public class TestFileBucket {
+
+	private static final String BUCKET = "testbucket";
+
+	private File oDir;
+
+	@Before
+	public void createDirectory() throws IOException {
+		oDir = Files.createTempDirectory("filebuckettest").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		delete(oDir);
+	}
+
+	private static void delete(File oFile) {
+		File[] aFiles = oFile.listFiles();
+		if (aFiles != null)
+			for (File oChild : aFiles)
+				delete(oChild);
+		oFile.delete();
+	}
+
+	private FileBucket openBucket(int shardLevels) {
+		Map<String,String> props = new HashMap<String,String>();
+		props.put(DataSource.URI, oDir.getAbsolutePath());
+		props.put(FileDataSource.SHARD_LEVELS, String.valueOf(shardLevels));
+		return new FileBucket(props, BUCKET + shardLevels, true);
+	}
+
+	private static byte[] content(String fileName) {
+		return ("content of " + fileName).getBytes();
+	}
+
+	private static Stored store(FileBucket bucket, String fileName, byte[] content) {
+		FileStore oFst = new FileStore(bucket, fileName);
+		oFst.setContent(content, null);
+		bucket.store(oFst);
+		return oFst;
+	}
+
+	@Test
+	public void test01ShardPathLayout() {
+		final String fileName = "file1.txt";
+		CRC32 crc = new CRC32();
+		crc.update(fileName.getBytes());
+		final String hex = String.format("%08x", crc.getValue());
+
+		for (int levels=0; levels<=4; levels++) {
+			FileBucket bucket = openBucket(levels);
+			Path root = new File(oDir, BUCKET + levels).toPath();
+			Path file = bucket.getFilePath(fileName);
+			Path relative = root.relativize(file);
+
+			// One subdirectory per level named after the next byte of the CRC32 of the file name, from the most significant one
+			assertEquals(levels + 1, relative.getNameCount());
+			for (int level=0; level<levels; level++)
+				assertEquals(hex.substring(2 * level, 2 * level + 2), relative.getName(level).toString());
+			assertEquals(fileName, relative.getFileName().toString());
+			assertEquals(file, bucket.getFilePath(new Param("key", 1, fileName)));
+
+			store(bucket, fileName, content(fileName));
+			assertTrue(Files.isRegularFile(file));
+			bucket.close();
+		}
+
+		Map<String,String> props = new HashMap<String,String>();
+		props.put(FileDataSource.SHARD_LEVELS, "5");
+		try {
+			FileDataSource.getShardLevels(props);
+			fail("JDOException expected");
+		} catch (JDOException expected) { }
+	}
+
+	@Test
+	public void test02StoreLoadDelete() {
+		for (int levels=0; levels<=2; levels++) {
+			FileBucket bucket = openBucket(levels);
+			store(bucket, "file1.txt", content("file1.txt"));
+			store(bucket, "file2.txt", content("file2.txt"));
+			assertTrue(bucket.exists("file1.txt"));
+			assertTrue(bucket.exists(new Param("key", 1, "file2.txt")));
+
+			FileStore oFst = new FileStore(bucket, "file1.txt");
+			assertTrue(bucket.load("file1.txt", oFst));
+			assertArrayEquals(content("file1.txt"), oFst.getValue());
+
+			// A new version replaces the previous one
+			store(bucket, "file1.txt", new byte[]{1, 2, 3});
+			assertTrue(bucket.load("file1.txt", oFst));
+			assertArrayEquals(new byte[]{1, 2, 3}, oFst.getValue());
+
+			bucket.delete("file1.txt");
+			assertFalse(bucket.exists("file1.txt"));
+			bucket.delete("file1.txt");
+
+			// Storing a null value deletes the file
+			store(bucket, "file2.txt", null);
+			assertFalse(bucket.exists("file2.txt"));
+			bucket.close();
+		}
+	}
+
+	@Test
+	public void test03LoadMissingKey() {
+		for (int levels=0; levels<=2; levels++) {
+			FileBucket bucket = openBucket(levels);
+			FileStore oFst = new FileStore(bucket, "missing.txt");
+			oFst.setContent(new byte[]{1}, null);
+			assertFalse(bucket.exists("missing.txt"));
+			assertFalse(bucket.load("missing.txt", oFst));
+			assertNull(oFst.getValue());
+			bucket.close();
+		}
+	}
+
+	@Test
+	public void test04ZeroCopyReads() throws IOException {
+		for (int levels=0; levels<=2; levels++) {
+			FileBucket bucket = openBucket(levels);
+			final byte[] expected = content("file1.txt");
+			store(bucket, "file1.txt", expected);
+
+			ByteBuffer buffer = bucket.getBuffer("file1.txt");
+			assertTrue(buffer.isReadOnly());
+			byte[] mapped = new byte[buffer.remaining()];
+			buffer.get(mapped);
+			assertArrayEquals(expected, mapped);
+
+			ByteArrayOutputStream read = new ByteArrayOutputStream();
+			try (InputStream in = bucket.getInputStream("file1.txt")) {
+				int b;
+				while ((b = in.read()) >= 0)
+					read.write(b);
+			}
+			assertArrayEquals(expected, read.toByteArray());
+
+			ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+			assertEquals(expected.length, bucket.transferTo("file1.txt", Channels.newChannel(transferred)));
+			assertArrayEquals(expected, transferred.toByteArray());
+
+			assertNull(bucket.getBuffer("missing.txt"));
+			assertNull(bucket.getInputStream("missing.txt"));
+			assertEquals(-1l, bucket.transferTo("missing.txt", Channels.newChannel(new ByteArrayOutputStream())));
+			bucket.close();
+		}
+	}
+
+	@Test
+	public void test05LazyIterator() throws IOException {
+		final int fileCount = 300;
+		for (int levels=0; levels<=2; levels++) {
+			FileBucket bucket = openBucket(levels);
+			Set<String> expected = new HashSet<String>();
+			for (int f=0; f<fileCount; f++) {
+				final String fileName = "file" + String.valueOf(f) + ".txt";
+				store(bucket, fileName, content(fileName));
+				expected.add(fileName);
+			}
+
+			// Temporary files of writes in progress are not visited
+			Path shard = bucket.getFilePath("file0.txt").getParent();
+			Files.createTempFile(shard, ".~", ".tmp");
+
+			Set<String> visited = new HashSet<String>();
+			Iterator<Stored> iter = bucket.iterator();
+			while (iter.hasNext()) {
+				Stored oFst = iter.next();
+				assertNull(oFst.getValue());
+				assertTrue(visited.add((String) oFst.getKey()));
+			}
+			assertEquals(expected, visited);
+			bucket.close(iter);
+
+			// close(Iterator) and closeAll() release the directory streams and end the iteration
+			iter = bucket.iterator();
+			assertTrue(iter.hasNext());
+			iter.next();
+			bucket.close(iter);
+			assertFalse(iter.hasNext());
+
+			Iterator<Stored> iter1 = bucket.iterator();
+			Iterator<Stored> iter2 = bucket.iterator();
+			assertTrue(iter1.hasNext());
+			assertTrue(iter2.hasNext());
+			bucket.closeAll();
+			assertFalse(iter1.hasNext());
+			assertFalse(iter2.hasNext());
+			bucket.close();
+		}
+	}
+
+}
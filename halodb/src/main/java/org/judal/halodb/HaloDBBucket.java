@@ -12,10 +12,9 @@ package org.judal.halodb;
  * KIND, either express or implied.
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 
 import java.util.Iterator;
 
@@ -23,26 +22,32 @@ import javax.jdo.FetchPlan;
 import javax.jdo.JDOException;
 import javax.jdo.PersistenceManager;
 
+import com.oath.halodb.HaloDB;
 import com.oath.halodb.HaloDBException;
 
+import org.judal.storage.keyvalue.BatchException;
 import org.judal.storage.keyvalue.Bucket;
 import org.judal.storage.keyvalue.Stored;
 
-import static org.judal.serialization.BytesConverter.toBytes;
+import static org.judal.halodb.HaloDBCodec.encodeKey;
+import static org.judal.halodb.HaloDBCodec.encodeValue;
 
 /**
- * In-Memory implementation of Bucket interface
+ * HaloDB implementation of Bucket interface.
+ * All buckets share the same HaloDB instance and each key is prefixed with its bucket name.
  * @author Sergio Montoro Ten
  * @version 1.0
  */
 public class HaloDBBucket implements Bucket {
 
 	private final String bucketName;
+	private final byte[] keyPrefix;
 	private final HaloDBDataSource dts;
 	private Class<? extends Stored> candidateClass;
 
 	public HaloDBBucket(HaloDBDataSource dts, String bucketName) {
 		this.bucketName = bucketName;
+		this.keyPrefix = HaloDBCodec.bucketPrefix(bucketName);
 		this.dts = dts;
 	}
 
@@ -60,28 +65,18 @@ public class HaloDBBucket implements Bucket {
 	/**
 	 * Check whether an object with the given key is at this Bucket
 	 * @param key Param or String value
-	 * @return boolean <b>true</b>if an object with the given key exists and is instance of Stored and its bucket name matches
+	 * @return boolean <b>true</b>if an object with the given key exists at this bucket
 	 * @throws NullPointerException if key is <b>null</b>
-	 * @throws JDOException wrapper around ClassNotFoundException | IOException | HaloDBException
+	 * @throws JDOException wrapper around HaloDBException
 	 */
 	@Override
 	public boolean exists(Object key) throws NullPointerException, JDOException {
-		boolean found = false;
 		if (null==key) throw new NullPointerException("HaloDBBucket.exists() key value cannot be null");
 		try {
-			final byte[] value = dts.getDatabase().get(toBytes(key));
-			if (null!=value) {
-				try (ByteArrayInputStream bin = new ByteArrayInputStream(value)) {
-					try (ObjectInputStream oin = new ObjectInputStream(bin)) {
-						final Object obj = oin.readObject();
-						found = obj instanceof Stored && bucketName.equalsIgnoreCase(((Stored) obj).getBucketName());
-					}
-				}
-			}
-		}  catch (ClassNotFoundException | IOException | HaloDBException e) {
+			return dts.getDatabase().get(encodeKey(keyPrefix, key, dts.hasOrderedKeys()))!=null;
+		}  catch (HaloDBException e) {
 			throw new JDOException(e.getMessage(), e);
 		}
-		return found;
 	}
 
 	/**
@@ -90,33 +85,22 @@ public class HaloDBBucket implements Bucket {
 	 * @param target Stored
 	 * @return boolean <b>true</b>if an object with the given key was loaded <b>false</b> otherwise
 	 * @throws NullPointerException if key is <b>null</b>
-	 * @throws JDOException wrapper around ClassNotFoundException | IOException | HaloDBException
+	 * @throws JDOException wrapper around HaloDBException or if the value cannot be decoded
 	 */
 	@Override
 	public boolean load(Object key, Stored target) throws NullPointerException, JDOException {
-		boolean loaded = false;
 		if (null==key) throw new NullPointerException("HaloDBBucket.load() key value cannot be null");
+		final byte[] value;
 		try {
-			final byte[] value = dts.getDatabase().get(toBytes(key));
-			if (null!=value) {
-				try (ByteArrayInputStream bin = new ByteArrayInputStream(value)) {
-					try (ObjectInputStream oin = new ObjectInputStream(bin)) {
-						final Object obj = oin.readObject();
-						if (obj instanceof Stored) {
-							final Stored strd = (Stored) obj;
-							if (bucketName.equalsIgnoreCase(strd.getBucketName())) {
-								target.setKey(strd.getKey());
-								target.setValue((Serializable) strd.getValue());
-								loaded = true;
-							}
-						}
-					}
-				}
-			}
-		}  catch (ClassNotFoundException | IOException | HaloDBException e) {
+			value = dts.getDatabase().get(encodeKey(keyPrefix, key, dts.hasOrderedKeys()));
+		}  catch (HaloDBException e) {
 			throw new JDOException(e.getMessage(), e);
 		}
-		return loaded;
+		if (null==value)
+			return false;
+		target.setKey(HaloDBCodec.decodeKey(value));
+		target.setValue((Serializable) HaloDBCodec.decodeValue(value));
+		return true;
 	}
 
 	/**
@@ -127,8 +111,7 @@ public class HaloDBBucket implements Bucket {
 	public void store(Stored record) throws NullPointerException, JDOException {
 		if (null==record) throw new NullPointerException("HaloDBBucket.store() record value cannot be null");
 		try {
-			dts.getDatabase().put(toBytes(record.getKey()), toBytes(record));
-			assert (dts.getDatabase().get(toBytes(record.getKey()))!=null);
+			dts.getDatabase().put(encodeKey(keyPrefix, record.getKey(), dts.hasOrderedKeys()), encodeValue(record.getKey(), record.getValue(), dts.hasOrderedKeys()));
 		} catch (HaloDBException e) {
 			throw new JDOException(e.getMessage(), e);
 		}
@@ -143,12 +126,56 @@ public class HaloDBBucket implements Bucket {
 	public void delete(Object key) throws NullPointerException, JDOException {
 		if (null==key) throw new NullPointerException("HaloDBBucket.delete() key value cannot be null");
 		try {
-			dts.getDatabase().delete(toBytes(key));
+			dts.getDatabase().delete(encodeKey(keyPrefix, key, dts.hasOrderedKeys()));
 		} catch (HaloDBException e) {
 			throw new JDOException(e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * <p>Store several records.</p>
+	 * HaloDB has no multi-key write so records are put one by one.
+	 * @param records Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more records could not be stored
+	 */
+	@Override
+	public void storeAll(Iterable<? extends Stored> records) throws JDOException {
+		final HaloDB hdb = dts.getDatabase();
+		BatchException.Failures failures = new BatchException.Failures();
+		int position = 0;
+		for (Stored record : records) {
+			try {
+				hdb.put(encodeKey(keyPrefix, record.getKey(), dts.hasOrderedKeys()), encodeValue(record.getKey(), record.getValue(), dts.hasOrderedKeys()));
+			} catch (HaloDBException | NullPointerException e) {
+				failures.add(position, record, e);
+			}
+			position++;
+		}
+		failures.throwIfAny("storeAll", position);
+	}
+
+	/**
+	 * <p>Delete several records.</p>
+	 * @param keys Iterable&lt;?&gt; Param or String values
+	 * @throws BatchException if one or more records could not be deleted
+	 */
+	@Override
+	public void deleteAll(Iterable<?> keys) throws JDOException {
+		final HaloDB hdb = dts.getDatabase();
+		BatchException.Failures failures = new BatchException.Failures();
+		int position = 0;
+		for (Object key : keys) {
+			try {
+				if (null==key) throw new NullPointerException("HaloDBBucket.deleteAll() key value cannot be null");
+				hdb.delete(encodeKey(keyPrefix, key, dts.hasOrderedKeys()));
+			} catch (HaloDBException | NullPointerException e) {
+				failures.add(position, key, e);
+			}
+			position++;
+		}
+		failures.throwIfAny("deleteAll", position);
+	}
+
 	/**
 	 * @param candidateClass Class&lt;Stored&gt;
 	 */
@@ -207,4 +234,41 @@ public class HaloDBBucket implements Bucket {
 	public HaloDBDataSource getDataSource() {
 		return dts;
 	}
+
+	/**
+	 * @return byte[] Prefix of the keys of this bucket
+	 */
+	byte[] getKeyPrefix() {
+		return keyPrefix;
+	}
+
+	/**
+	 * <p>Create a Stored object from an encoded value read from this bucket.</p>
+	 * If no candidate class has been set then a HaloDBStored which decodes its value on demand is returned.
+	 * Otherwise a new instance of the candidate class is created using its constructor
+	 * taking the bucket name as parameter or its default constructor.
+	 * @param encodedValue byte[]
+	 * @return Stored
+	 * @throws JDOException
+	 */
+	Stored newStored(byte[] encodedValue) throws JDOException {
+		if (null==candidateClass)
+			return new HaloDBStored(bucketName, encodedValue);
+		Stored stored;
+		try {
+			Constructor<? extends Stored> constructor;
+			try {
+				constructor = candidateClass.getConstructor(String.class);
+				stored = constructor.newInstance(bucketName);
+			} catch (NoSuchMethodException nsme) {
+				constructor = candidateClass.getConstructor();
+				stored = constructor.newInstance();
+			}
+		} catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new JDOException(e.getClass().getName() + " " + e.getMessage(), e);
+		}
+		stored.setKey(HaloDBCodec.decodeKey(encodedValue));
+		stored.setValue((Serializable) HaloDBCodec.decodeValue(encodedValue));
+		return stored;
+	}
 }
@@ -0,0 +1,271 @@
+package org.judal.halodb;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUserException;
+
+import org.judal.serialization.BytesConverter;
+import org.judal.serialization.OrderedBytesConverter;
+import org.judal.storage.Param;
+
+/**
+ * <p>Binary layout of HaloDB keys and values.</p>
+ * All buckets share a single HaloDB instance, so each key is prefixed with its bucket name:
+ * one byte with the length of the lowercased UTF-8 bucket name, the bucket name and the key bytes.
+ * Key bytes are written with OrderedBytesConverter, or with BytesConverter for legacy keys
+ * and for keys of types without a natural order.
+ * Values start with a two bytes header (magic number and format version) followed by
+ * the key as it was given to store() and the value, each one preceded by its java.sql.Types code.
+ * The format version tells whether the record is stored under an ordered or a legacy key.
+ * Values of basic types are converted with BytesConverter,
+ * other Serializable values are written using Java serialization.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public final class HaloDBCodec {
+
+	/**
+	 * First byte of every encoded value
+	 */
+	public static final byte MAGIC = (byte) 0x4A;
+
+	/**
+	 * Current format version, for records stored under keys written by OrderedBytesConverter
+	 */
+	public static final byte VERSION = (byte) 2;
+
+	/**
+	 * Format version of records stored under keys written by BytesConverter
+	 */
+	public static final byte VERSION_LEGACY_KEY = (byte) 1;
+
+	private static final int HEADER_LENGTH = 2;
+
+	private HaloDBCodec() { }
+
+	/**
+	 * @param bucketName String
+	 * @return byte[] Prefix for the keys of the given bucket
+	 * @throws JDOUserException If the bucket name is longer than 255 bytes in UTF-8
+	 */
+	public static byte[] bucketPrefix(String bucketName) throws JDOUserException {
+		final byte[] name = bucketName.toLowerCase().getBytes(StandardCharsets.UTF_8);
+		if (name.length>255)
+			throw new JDOUserException("HaloDB bucket name " + bucketName + " is too long");
+		final byte[] prefix = new byte[name.length+1];
+		prefix[0] = (byte) name.length;
+		System.arraycopy(name, 0, prefix, 1, name.length);
+		return prefix;
+	}
+
+	/**
+	 * @param prefix byte[] As returned by bucketPrefix()
+	 * @param key Object Param or key value
+	 * @return byte[] Bucket prefix followed by the ordered key bytes
+	 * @throws NullPointerException If key is <b>null</b>
+	 */
+	public static byte[] encodeKey(byte[] prefix, Object key) throws NullPointerException {
+		return encodeKey(prefix, key, true);
+	}
+
+	/**
+	 * @param prefix byte[] As returned by bucketPrefix()
+	 * @param key Object Param or key value
+	 * @param ordered boolean Whether to write the key with OrderedBytesConverter or with BytesConverter
+	 * @return byte[] Bucket prefix followed by the key bytes
+	 * @throws NullPointerException If key is <b>null</b>
+	 */
+	public static byte[] encodeKey(byte[] prefix, Object key, boolean ordered) throws NullPointerException {
+		key = unwrap(key);
+		final int keyType = typeOf(key);
+		final byte[] keyBytes = ordered && OrderedBytesConverter.isOrderable(keyType) ? OrderedBytesConverter.toBytes(key, keyType) : BytesConverter.toBytes(key, keyType);
+		final byte[] encoded = Arrays.copyOf(prefix, prefix.length + keyBytes.length);
+		System.arraycopy(keyBytes, 0, encoded, prefix.length, keyBytes.length);
+		return encoded;
+	}
+
+	/**
+	 * @param encodedKey byte[]
+	 * @param prefix byte[]
+	 * @return boolean <b>true</b> if encodedKey belongs to the bucket with the given prefix
+	 */
+	public static boolean hasPrefix(byte[] encodedKey, byte[] prefix) {
+		if (encodedKey.length<prefix.length)
+			return false;
+		for (int b=0; b<prefix.length; b++)
+			if (encodedKey[b]!=prefix[b])
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param encodedKey byte[] As returned by encodeKey()
+	 * @return byte[] Bucket prefix of encodedKey
+	 */
+	public static byte[] prefixOf(byte[] encodedKey) {
+		return Arrays.copyOf(encodedKey, (encodedKey[0] & 0xFF) + 1);
+	}
+
+	/**
+	 * @param key Object Param or key value
+	 * @param value Object May be <b>null</b>
+	 * @return byte[] Value of a record stored under an ordered key
+	 */
+	public static byte[] encodeValue(Object key, Object value) {
+		return encodeValue(key, value, true);
+	}
+
+	/**
+	 * @param key Object Param or key value
+	 * @param value Object May be <b>null</b>
+	 * @param ordered boolean Whether the record is stored under an ordered key
+	 * @return byte[]
+	 */
+	public static byte[] encodeValue(Object key, Object value, boolean ordered) {
+		key = unwrap(key);
+		final int keyType = typeOf(key);
+		final byte[] keyBytes = BytesConverter.toBytes(key, keyType);
+		final int valueType = typeOf(value);
+		final byte[] valueBytes = value==null ? new byte[0] : BytesConverter.toBytes(value, valueType);
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + 2 + 4 + keyBytes.length + 2 + valueBytes.length);
+		buffer.put(MAGIC).put(ordered ? VERSION : VERSION_LEGACY_KEY);
+		buffer.putShort((short) keyType).putInt(keyBytes.length).put(keyBytes);
+		buffer.putShort((short) valueType).put(valueBytes);
+		return buffer.array();
+	}
+
+	/**
+	 * @param encodedValue byte[]
+	 * @return boolean <b>true</b> if encodedValue was written by encodeValue()
+	 */
+	public static boolean isEncoded(byte[] encodedValue) {
+		return encodedValue!=null && encodedValue.length>=HEADER_LENGTH && encodedValue[0]==MAGIC && (encodedValue[1]==VERSION || encodedValue[1]==VERSION_LEGACY_KEY);
+	}
+
+	/**
+	 * @param encodedValue byte[] As returned by encodeValue()
+	 * @return boolean <b>true</b> if the record is stored under an ordered key
+	 */
+	public static boolean hasOrderedKey(byte[] encodedValue) {
+		return encodedValue[1]==VERSION;
+	}
+
+	/**
+	 * @param encodedValue byte[] As returned by encodeValue()
+	 * @param ordered boolean Whether the record will be stored under an ordered key
+	 * @return byte[] Copy of encodedValue with the format version for the given key format
+	 */
+	public static byte[] withKeyFormat(byte[] encodedValue, boolean ordered) {
+		final byte[] copy = Arrays.copyOf(encodedValue, encodedValue.length);
+		copy[1] = ordered ? VERSION : VERSION_LEGACY_KEY;
+		return copy;
+	}
+
+	/**
+	 * <p>Decode only the key of an encoded value.</p>
+	 * @param encodedValue byte[]
+	 * @return Object
+	 * @throws JDOException If encodedValue is not in a known format
+	 */
+	public static Object decodeKey(byte[] encodedValue) throws JDOException {
+		final ByteBuffer buffer = header(encodedValue);
+		final int keyType = buffer.getShort();
+		final byte[] keyBytes = new byte[buffer.getInt()];
+		buffer.get(keyBytes);
+		return fromBytes(keyBytes, keyType);
+	}
+
+	/**
+	 * <p>Decode the value of an encoded value.</p>
+	 * @param encodedValue byte[]
+	 * @return Object
+	 * @throws JDOException If encodedValue is not in a known format or the value cannot be deserialized
+	 */
+	public static Object decodeValue(byte[] encodedValue) throws JDOException {
+		final ByteBuffer buffer = header(encodedValue);
+		buffer.getShort();
+		final int keyLength = buffer.getInt();
+		buffer.position(buffer.position() + keyLength);
+		final int valueType = buffer.getShort();
+		if (Types.NULL==valueType)
+			return null;
+		final byte[] valueBytes = new byte[buffer.remaining()];
+		buffer.get(valueBytes);
+		return fromBytes(valueBytes, valueType);
+	}
+
+	private static ByteBuffer header(byte[] encodedValue) throws JDOException {
+		if (!isEncoded(encodedValue))
+			throw new JDOException("HaloDB value is not in format version " + String.valueOf(VERSION) + " nor " + String.valueOf(VERSION_LEGACY_KEY));
+		final ByteBuffer buffer = ByteBuffer.wrap(encodedValue);
+		buffer.position(HEADER_LENGTH);
+		return buffer;
+	}
+
+	private static Object unwrap(Object key) throws NullPointerException {
+		if (key instanceof Param)
+			key = ((Param) key).getValue();
+		if (null==key)
+			throw new NullPointerException("HaloDB key value cannot be null");
+		return key;
+	}
+
+	private static Object fromBytes(byte[] bytes, int sqlType) throws JDOException {
+		try {
+			return BytesConverter.fromBytes(bytes, sqlType);
+		} catch (IOException ioe) {
+			throw new JDOException(ioe.getMessage(), ioe);
+		}
+	}
+
+	/**
+	 * @param obj Object
+	 * @return int java.sql.Types code used to encode obj
+	 */
+	private static int typeOf(Object obj) {
+		if (null==obj)
+			return Types.NULL;
+		else if (obj instanceof byte[])
+			return Types.LONGVARBINARY;
+		else if (obj instanceof String)
+			return Types.VARCHAR;
+		else if (obj instanceof Boolean)
+			return Types.BOOLEAN;
+		else if (obj instanceof Short)
+			return Types.SMALLINT;
+		else if (obj instanceof Integer)
+			return Types.INTEGER;
+		else if (obj instanceof Long)
+			return Types.BIGINT;
+		else if (obj instanceof Float)
+			return Types.FLOAT;
+		else if (obj instanceof Double)
+			return Types.DOUBLE;
+		else if (obj instanceof BigDecimal)
+			return Types.DECIMAL;
+		else if (obj.getClass().equals(Date.class))
+			return Types.TIMESTAMP;
+		else
+			return Types.JAVA_OBJECT;
+	}
+
+}
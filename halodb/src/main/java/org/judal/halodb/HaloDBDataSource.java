@@ -12,6 +12,9 @@ package org.judal.halodb;
  * KIND, either express or implied.
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.*;
 
 import javax.transaction.TransactionManager;
@@ -24,7 +27,6 @@ import com.oath.halodb.HaloDB;
 import com.oath.halodb.HaloDBException;
 import com.oath.halodb.HaloDBOptions;
 
-import org.judal.serialization.BytesConverter;
 import org.judal.storage.Param;
 import org.judal.storage.keyvalue.BucketDataSource;
 import org.judal.storage.keyvalue.Stored;
@@ -38,6 +40,7 @@ public class HaloDBDataSource implements BucketDataSource {
 
 	private final Map<String,String> props;
 	private HaloDB hdb;
+	private final boolean orderedKeys;
 
 	/**
 	 * 
@@ -152,6 +155,15 @@ public class HaloDBDataSource implements BucketDataSource {
 
 		props = new HashMap<>();
 		props.putAll(properties);
+
+		orderedKeys = !"legacy".equalsIgnoreCase(properties.getOrDefault(KEY_FORMAT, DEFAULT_KEY_FORMAT).trim());
+	}
+
+	/**
+	 * @return boolean <b>true</b> unless the KEY_FORMAT property is legacy
+	 */
+	public boolean hasOrderedKeys() {
+		return orderedKeys;
 	}
 
 	/**
@@ -239,16 +251,21 @@ public class HaloDBDataSource implements BucketDataSource {
 	}
 
 	/**
-	 * Delete all objects in a given Bucket.
+	 * <p>Delete all the records of a bucket.</p>
+	 * Records are selected by their key prefix without reading their values.
 	 * @param bucketName String
-	 * @throws JDOException Wrapper for HaloDBException
+	 * @throws JDOException
 	 */
 	@Override
 	public void truncateBucket(String bucketName) throws JDOException {
+		final byte[] keyPrefix = HaloDBCodec.bucketPrefix(bucketName);
 		final List<byte[]> keys = new ArrayList<>(1000);
 		try {
-			for (Stored stored : new HaloDBBucket(this, bucketName)) {
-				keys.add(BytesConverter.toBytes(stored.getKey()));
+			final com.oath.halodb.HaloDBIterator iterator = hdb.newIterator();
+			while (iterator.hasNext()) {
+				final byte[] key = iterator.next().getKey();
+				if (HaloDBCodec.hasPrefix(key, keyPrefix))
+					keys.add(key);
 			}
 			for (byte[] key : keys) {
 				hdb.delete(key);
@@ -258,6 +275,63 @@ public class HaloDBDataSource implements BucketDataSource {
 		}
 	}
 
+	/**
+	 * <p>Rewrite records stored by previous versions of HaloDBBucket.</p>
+	 * Previous versions stored Java serialized Stored objects under unprefixed keys.
+	 * Each such record is decoded once, stored again using HaloDBCodec under its bucket prefixed key,
+	 * and its old key is deleted. Records stored under a key in a format other than the one given
+	 * by the KEY_FORMAT property are moved to a key in that format.
+	 * Records already in the current format are left untouched.
+	 * @return int Number of records rewritten
+	 * @throws JDOException
+	 */
+	public int migrateLegacyRecords() throws JDOException {
+		final List<byte[]> legacyKeys = new ArrayList<>();
+		final List<byte[]> otherFormatKeys = new ArrayList<>();
+		int migrated = 0;
+		try {
+			final com.oath.halodb.HaloDBIterator iterator = hdb.newIterator();
+			while (iterator.hasNext()) {
+				final com.oath.halodb.Record record = iterator.next();
+				final byte[] value = record.getValue();
+				if (value.length>1 && value[0]==(byte) 0xAC && value[1]==(byte) 0xED)
+					legacyKeys.add(record.getKey());
+				else if (HaloDBCodec.isEncoded(value) && HaloDBCodec.hasOrderedKey(value)!=orderedKeys)
+					otherFormatKeys.add(record.getKey());
+			}
+			for (byte[] legacyKey : legacyKeys) {
+				final byte[] value = hdb.get(legacyKey);
+				if (null!=value) {
+					final Object obj;
+					try (ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(value))) {
+						obj = oin.readObject();
+					} catch (ClassNotFoundException | IOException e) {
+						throw new JDOException("Could not deserialize legacy HaloDB record " + e.getMessage(), e);
+					}
+					if (obj instanceof Stored) {
+						final Stored stored = (Stored) obj;
+						hdb.put(HaloDBCodec.encodeKey(HaloDBCodec.bucketPrefix(stored.getBucketName()), stored.getKey(), orderedKeys), HaloDBCodec.encodeValue(stored.getKey(), stored.getValue(), orderedKeys));
+						hdb.delete(legacyKey);
+						migrated++;
+					}
+				}
+			}
+			for (byte[] oldKey : otherFormatKeys) {
+				final byte[] value = hdb.get(oldKey);
+				if (null!=value) {
+					final byte[] newKey = HaloDBCodec.encodeKey(HaloDBCodec.prefixOf(oldKey), HaloDBCodec.decodeKey(value), orderedKeys);
+					hdb.put(newKey, HaloDBCodec.withKeyFormat(value, orderedKeys));
+					if (!Arrays.equals(newKey, oldKey))
+						hdb.delete(oldKey);
+					migrated++;
+				}
+			}
+		} catch (HaloDBException e) {
+			throw new JDOException(e.getMessage(), e);
+		}
+		return migrated;
+	}
+
 	/**
 	 * This method will always raise JDOUnsupportedOptionException
 	 * @throws JDOUnsupportedOptionException HaloDBDataSource does not use connections
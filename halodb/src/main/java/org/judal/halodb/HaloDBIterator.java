@@ -12,10 +12,10 @@ package org.judal.halodb;
  * KIND, either express or implied.
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.jdo.JDOException;
 
 import com.oath.halodb.HaloDBException;
 import com.oath.halodb.Record;
@@ -23,6 +23,8 @@ import org.judal.storage.keyvalue.Stored;
 
 /**
  * Iterator records of an HaloDB database belonging to the same bucket
+ * HaloDB keys are not sorted so every key in the database is visited,
+ * but only the key prefix is compared and only the values of the bucket are decoded.
  * This class is not thread safe
  * @author Sergio Montoro Ten
  * @version 1.0
@@ -30,11 +32,13 @@ import org.judal.storage.keyvalue.Stored;
 public class HaloDBIterator implements Iterator<Stored> {
 
 	private final HaloDBBucket bucket;
+	private final byte[] keyPrefix;
 	private final com.oath.halodb.HaloDBIterator iterator;
 	private Stored nextOne;
 
 	public HaloDBIterator(HaloDBBucket bucket) {
 		this.bucket = bucket;
+		this.keyPrefix = bucket.getKeyPrefix();
 		this.nextOne = null;
 		try {
 			iterator = bucket.getDataSource().getDatabase().newIterator();
@@ -49,31 +53,27 @@ public class HaloDBIterator implements Iterator<Stored> {
 		return nextOne!=null;
 	}
 
+	/**
+	 * @return Stored
+	 * @throws NoSuchElementException If there are no more records at the bucket
+	 * @throws JDOException If the next record cannot be decoded
+	 */
 	@Override
-	public Stored next() {
+	public Stored next() throws NoSuchElementException, JDOException {
 		Stored theNext = nextOne;
-		if (theNext!=null)
-			seekNextInBucket();
+		if (null==theNext)
+			throw new NoSuchElementException("HaloDBIterator.next() no more records at bucket " + bucket.name());
+		seekNextInBucket();
 		return theNext;
 	}
 
-	private void seekNextInBucket() {
+	private void seekNextInBucket() throws JDOException {
 		nextOne = null;
 		while (iterator.hasNext()) {
 			Record nextRecord = iterator.next();
-			try (ByteArrayInputStream bin = new ByteArrayInputStream(nextRecord.getValue())) {
-				try (ObjectInputStream oin = new ObjectInputStream(bin)) {
-					final Object obj = oin.readObject();
-					if (obj instanceof Stored) {
-						final Stored strd = (Stored) obj;
-						if (bucket.name().equalsIgnoreCase(strd.getBucketName())) {
-							nextOne = strd;
-							break;
-						}
-					}
-				}
-			} catch (ClassNotFoundException | IOException e) {
-				nextOne = null;
+			if (HaloDBCodec.hasPrefix(nextRecord.getKey(), keyPrefix) && HaloDBCodec.isEncoded(nextRecord.getValue())) {
+				nextOne = bucket.newStored(nextRecord.getValue());
+				break;
 			}
 		}
 	}
@@ -0,0 +1,125 @@
+package org.judal.halodb;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.Serializable;
+
+import javax.jdo.JDOException;
+
+import org.judal.storage.DataSource;
+import org.judal.storage.EngineFactory;
+import org.judal.storage.keyvalue.Stored;
+
+/**
+ * <p>Stored object read from a HaloDB bucket.</p>
+ * The value is kept in its encoded form and it is only decoded the first time that getValue() is called.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class HaloDBStored implements Stored {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String bucketName;
+	private Object key;
+	private Object value;
+	private byte[] encodedValue;
+
+	/**
+	 * @param bucketName String
+	 */
+	public HaloDBStored(String bucketName) {
+		this.bucketName = bucketName;
+	}
+
+	/**
+	 * @param bucketName String
+	 * @param encodedValue byte[] As written by HaloDBCodec.encodeValue()
+	 * @throws JDOException If encodedValue is not in a known format
+	 */
+	HaloDBStored(String bucketName, byte[] encodedValue) throws JDOException {
+		this.bucketName = bucketName;
+		this.key = HaloDBCodec.decodeKey(encodedValue);
+		this.encodedValue = encodedValue;
+	}
+
+	@Override
+	public void setKey(Object key) throws JDOException {
+		this.key = key;
+	}
+
+	@Override
+	public Object getKey() throws JDOException {
+		return key;
+	}
+
+	@Override
+	public void setValue(Serializable value) throws JDOException {
+		this.value = value;
+		this.encodedValue = null;
+	}
+
+	@Override
+	public void setContent(byte[] bytes, String contentType) throws JDOException {
+		setValue(bytes);
+	}
+
+	/**
+	 * @return Object Decoded value
+	 * @throws JDOException If the value cannot be decoded
+	 */
+	@Override
+	public Object getValue() throws JDOException {
+		if (encodedValue!=null) {
+			value = HaloDBCodec.decodeValue(encodedValue);
+			encodedValue = null;
+		}
+		return value;
+	}
+
+	@Override
+	public String getBucketName() {
+		return bucketName;
+	}
+
+	@Override
+	public boolean load(Object key) throws JDOException {
+		return load(EngineFactory.getDefaultBucketDataSource(), key);
+	}
+
+	@Override
+	public boolean load(DataSource dataSource, Object key) throws JDOException {
+		return ((HaloDBDataSource) dataSource).openBucket(getBucketName()).load(key, this);
+	}
+
+	@Override
+	public void store() throws JDOException {
+		store(EngineFactory.getDefaultBucketDataSource());
+	}
+
+	@Override
+	public void store(DataSource dataSource) throws JDOException {
+		((HaloDBDataSource) dataSource).openBucket(getBucketName()).store(this);
+	}
+
+	@Override
+	public void delete() throws JDOException {
+		delete(EngineFactory.getDefaultBucketDataSource());
+	}
+
+	@Override
+	public void delete(DataSource dataSource) throws JDOException {
+		((HaloDBDataSource) dataSource).openBucket(getBucketName()).delete(getKey());
+	}
+
+}
@@ -91,6 +91,47 @@ public class TestHaloDBAsBucket {
 		}
 	}
 
+	@Test
+	public void test02BucketIsolation() throws JDOException {
+		final String otherBucketName = "unittest_other_bucket";
+		try (Bucket bckt = getBucketDataSource().openBucket(bucketName);
+			 Bucket othr = getBucketDataSource().openBucket(otherBucketName)) {
+			bckt.store(getByteStored1());
+			bckt.store(getByteStored2());
+			Stored other1 = new TestStoredHaloDB(otherBucketName);
+			other1.setKey("1");
+			other1.setValue("other value");
+			othr.store(other1);
+			assertTrue(othr.exists("1"));
+			assertFalse(othr.exists("2"));
+			Stored retrieved1 = newStored();
+			bckt.load("1", retrieved1);
+			assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9}, (byte[]) retrieved1.getValue());
+			Stored retrievedOther = new TestStoredHaloDB(otherBucketName);
+			othr.load("1", retrievedOther);
+			assertEquals("other value", retrievedOther.getValue());
+			assertEquals(2, count(bckt));
+			assertEquals(1, count(othr));
+			getBucketDataSource().truncateBucket(bucketName);
+			assertEquals(0, count(bckt));
+			assertFalse(bckt.exists("1"));
+			assertTrue(othr.exists("1"));
+			assertEquals(1, count(othr));
+			othr.delete("1");
+			assertEquals(0, count(othr));
+		}
+	}
+
+	private int count(Bucket bckt) {
+		int recordCount = 0;
+		Iterator<Stored> iter = bckt.iterator();
+		while (iter.hasNext()) {
+			++recordCount;
+			iter.next();
+		}
+		return recordCount;
+	}
+
 	public HaloDBDataSource getBucketDataSource() throws JDOException {
 		return dts;
 	}
@@ -0,0 +1,52 @@
+package org.judal.halodb.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.judal.halodb.HaloDBCodec;
+import org.judal.serialization.OrderedBytesConverter;
+import org.junit.Test;
+
+public class TestHaloDBCodec {
+
+	@Test
+	public void test01OrderedKeys() {
+		final byte[] prefix = HaloDBCodec.bucketPrefix("Bucket1");
+		final Object[][] keys = new Object[][]{
+			new Object[]{-100, -1, 0, 1, 100},
+			new Object[]{Long.MIN_VALUE, -1l, 0l, Long.MAX_VALUE},
+			new Object[]{new Date(-1l), new Date(0l), new Date(1l)},
+			new Object[]{"", "a", "ab", "b"}};
+		for (Object[] sorted : keys) {
+			for (int k=1; k<sorted.length; k++) {
+				final byte[] lower = HaloDBCodec.encodeKey(prefix, sorted[k-1]);
+				final byte[] upper = HaloDBCodec.encodeKey(prefix, sorted[k]);
+				assertTrue(HaloDBCodec.hasPrefix(upper, prefix));
+				assertArrayEquals(prefix, HaloDBCodec.prefixOf(upper));
+				assertTrue(OrderedBytesConverter.COMPARATOR.compare(lower, upper) < 0);
+			}
+		}
+	}
+
+	@Test
+	public void test02KeyFormatVersion() {
+		final byte[] ordered = HaloDBCodec.encodeValue(-1, "value1");
+		final byte[] legacy = HaloDBCodec.encodeValue(-1, "value1", false);
+		assertTrue(HaloDBCodec.isEncoded(ordered));
+		assertTrue(HaloDBCodec.isEncoded(legacy));
+		assertTrue(HaloDBCodec.hasOrderedKey(ordered));
+		assertFalse(HaloDBCodec.hasOrderedKey(legacy));
+		assertArrayEquals(ordered, HaloDBCodec.withKeyFormat(legacy, true));
+		assertArrayEquals(legacy, HaloDBCodec.withKeyFormat(ordered, false));
+		assertEquals(-1, HaloDBCodec.decodeKey(legacy));
+		assertEquals("value1", HaloDBCodec.decodeValue(legacy));
+
+		final byte[] prefix = HaloDBCodec.bucketPrefix("Bucket1");
+		assertFalse(java.util.Arrays.equals(HaloDBCodec.encodeKey(prefix, -1, true), HaloDBCodec.encodeKey(prefix, -1, false)));
+	}
+
+}
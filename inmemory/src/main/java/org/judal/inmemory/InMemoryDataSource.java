@@ -55,6 +55,7 @@ public class InMemoryDataSource implements BucketDataSource {
 		props = new HashMap<String,String>(17);
 		props.putAll(properties);
 		dataStore = new HashMap<String,InMemoryBucket>();
+		sequences  = new HashMap<String,InMemorySequence>();
 	}
 
 	/**
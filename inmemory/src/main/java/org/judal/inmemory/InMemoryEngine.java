@@ -48,28 +48,28 @@ public class InMemoryEngine implements Engine<InMemoryDataSource> {
 			String metadataFilePath = Env.getString(properties, DataSource.METADATA, "");
 			String metadataPackage = Env.getString(properties, DataSource.PACKAGE, "");
 			if (metadataFilePath.length()==0 && metadataPackage.length()==0) {
-				return new InMemoryDataSource(properties);
+				return new InMemoryTableDataSource(properties);
 			}
 			else if (metadataPackage.length()==0) {
 				FileInputStream fin = new FileInputStream(new File(metadataFilePath));
 				JdoXmlMetadata xmlMeta = new JdoXmlMetadata(null);
 				metadata = xmlMeta.readMetadata(fin);
 				fin.close();
-				return new InMemoryDataSource(properties, metadata);
+				return new InMemoryTableDataSource(properties, metadata);
 			} else if (metadataPackage.length()>0) {
-				InMemoryDataSource retval = new InMemoryDataSource(properties);
+				InMemoryTableDataSource retval = new InMemoryTableDataSource(properties);
 				JdoPackageMetadata packMeta = new JdoPackageMetadata(retval, metadataPackage, metadataFilePath);
 				InputStream instrm = packMeta.openStream();
 				if (instrm!=null) {
 					metadata = packMeta.readMetadata(instrm);
-					retval = new InMemoryDataSource(properties, metadata);
+					retval = new InMemoryTableDataSource(properties, metadata);
 					instrm.close();
 					return retval;
 				} else {
-					return new InMemoryDataSource(properties);
+					return new InMemoryTableDataSource(properties);
 				}
 			} else {
-				return new InMemoryDataSource(properties);
+				return new InMemoryTableDataSource(properties);
 			}
 		} catch (Exception xcpt) {
 			throw new JDOException(xcpt.getMessage(), xcpt);
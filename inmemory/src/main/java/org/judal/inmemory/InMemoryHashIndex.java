@@ -0,0 +1,77 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Hash index for equality lookups on a column of an in-memory table.</p>
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+class InMemoryHashIndex extends InMemoryIndex {
+
+	private final ConcurrentHashMap<Object,Set<Object>> entries;
+
+	InMemoryHashIndex(String indexName, String columnName, boolean unique) {
+		super(indexName, columnName, unique);
+		entries = new ConcurrentHashMap<Object,Set<Object>>();
+	}
+
+	@Override
+	public boolean isSorted() {
+		return false;
+	}
+
+	/**
+	 * <p>Numbers are hashed by their numeric value regardless of their class or scale.</p>
+	 * @param value Object
+	 * @return Object
+	 */
+	private static Object hashKey(Object value) {
+		if (value instanceof Number && !(value instanceof Long)) {
+			final BigDecimal decimal = toBigDecimal((Number) value).stripTrailingZeros();
+			return decimal.scale()<=0 && decimal.compareTo(BigDecimal.valueOf(Long.MIN_VALUE))>=0 && decimal.compareTo(BigDecimal.valueOf(Long.MAX_VALUE))<=0 ? (Object) Long.valueOf(decimal.longValue()) : decimal;
+		}
+		return value;
+	}
+
+	@Override
+	protected Set<Object> keysFor(Object value) {
+		return entries.get(hashKey(value));
+	}
+
+	@Override
+	protected Set<Object> keysForUpdate(Object value) {
+		final Object key = hashKey(value);
+		Set<Object> keys = entries.get(key);
+		if (null==keys) {
+			keys = newKeySet();
+			entries.put(key, keys);
+		}
+		return keys;
+	}
+
+	@Override
+	protected void removeValue(Object value) {
+		entries.remove(hashKey(value));
+	}
+
+	@Override
+	public void clear() {
+		entries.clear();
+	}
+
+}
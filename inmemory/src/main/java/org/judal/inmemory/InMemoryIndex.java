@@ -0,0 +1,258 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUnsupportedOptionException;
+import javax.jdo.JDOUserException;
+
+/**
+ * <p>Base class for secondary indexes of in-memory tables.</p>
+ * An index maps the values of a single column to the primary keys of the rows having that value.
+ * Null values are not indexed.
+ * Indexes are only modified by InMemoryTableData while holding its write lock,
+ * but they can be read concurrently without locking.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+abstract class InMemoryIndex {
+
+	/**
+	 * Comparator for column values and primary keys.
+	 * Numbers of different classes are compared by their numeric value
+	 * and lists (composite primary keys) are compared element by element.
+	 */
+	static final Comparator<Object> VALUE_ORDER = new Comparator<Object>() {
+		@Override
+		public int compare(Object o1, Object o2) {
+			return compareValues(o1, o2);
+		}
+	};
+
+	private final String indexName;
+	private final String columnName;
+	private final boolean unique;
+
+	protected InMemoryIndex(String indexName, String columnName, boolean unique) {
+		this.indexName = indexName;
+		this.columnName = columnName.toLowerCase();
+		this.unique = unique;
+	}
+
+	/**
+	 * @return String
+	 */
+	public String getName() {
+		return indexName;
+	}
+
+	/**
+	 * @return String Name of the indexed column in lowercase
+	 */
+	public String getColumnName() {
+		return columnName;
+	}
+
+	/**
+	 * @return boolean
+	 */
+	public boolean isUnique() {
+		return unique;
+	}
+
+	/**
+	 * @return boolean <b>true</b> if this index supports range lookups
+	 */
+	public abstract boolean isSorted();
+
+	/**
+	 * @param value Object Column value
+	 * @return Set&lt;Object&gt; Primary keys of the rows having the given value or <b>null</b> if there are none
+	 */
+	protected abstract Set<Object> keysFor(Object value);
+
+	/**
+	 * @param value Object Column value
+	 * @return Set&lt;Object&gt; Primary keys for value creating the set if it does not exist
+	 */
+	protected abstract Set<Object> keysForUpdate(Object value);
+
+	/**
+	 * @param value Object Column value whose primary key set became empty
+	 */
+	protected abstract void removeValue(Object value);
+
+	/**
+	 * Remove all entries from this index
+	 */
+	public abstract void clear();
+
+	/**
+	 * <p>Get primary keys of rows whose indexed column value is within an interval.</p>
+	 * @param valueFrom Comparable&lt;?&gt; Lower bound or <b>null</b> for no lower bound
+	 * @param fromInclusive boolean
+	 * @param valueTo Comparable&lt;?&gt; Upper bound or <b>null</b> for no upper bound
+	 * @param toInclusive boolean
+	 * @param keys Collection&lt;Object&gt; Where the primary keys are added sorted by column value
+	 * @throws JDOUnsupportedOptionException If this index is not sorted
+	 */
+	public void range(Comparable<?> valueFrom, boolean fromInclusive, Comparable<?> valueTo, boolean toInclusive, Collection<Object> keys) throws JDOUnsupportedOptionException {
+		throw new JDOUnsupportedOptionException("Index " + getName() + " does not support range lookups");
+	}
+
+	/**
+	 * <p>Check that adding a row with the given value would not violate this index uniqueness.</p>
+	 * @param value Object Column value
+	 * @param primaryKey Object Primary key of the row to be stored
+	 * @throws JDOUserException If the index is unique and another row already has the given value
+	 */
+	public void checkUnique(Object value, Object primaryKey) throws JDOUserException {
+		if (unique && value!=null) {
+			final Set<Object> keys = keysFor(normalize(value));
+			if (keys!=null)
+				for (Object key : keys)
+					if (compareValues(key, primaryKey)!=0)
+						throw new JDOUserException("Duplicated value " + value + " for unique index " + getName() + " on column " + getColumnName());
+		}
+	}
+
+	/**
+	 * @param value Object Column value. If <b>null</b> nothing is done.
+	 * @param primaryKey Object
+	 */
+	public void add(Object value, Object primaryKey) {
+		if (value!=null)
+			keysForUpdate(normalize(value)).add(primaryKey);
+	}
+
+	/**
+	 * @param value Object Column value. If <b>null</b> nothing is done.
+	 * @param primaryKey Object
+	 */
+	public void remove(Object value, Object primaryKey) {
+		if (value!=null) {
+			final Object normalized = normalize(value);
+			final Set<Object> keys = keysFor(normalized);
+			if (keys!=null) {
+				keys.remove(primaryKey);
+				if (keys.isEmpty())
+					removeValue(normalized);
+			}
+		}
+	}
+
+	/**
+	 * @param value Object Column value
+	 * @param keys Collection&lt;Object&gt; Where the primary keys of the rows having the given value are added
+	 */
+	public void get(Object value, Collection<Object> keys) {
+		final Set<Object> found = keysFor(normalize(value));
+		if (found!=null)
+			keys.addAll(found);
+	}
+
+	/**
+	 * @param value Object Column value
+	 * @return long Count of rows having the given value
+	 */
+	public long count(Object value) {
+		final Set<Object> found = keysFor(normalize(value));
+		return found==null ? 0l : found.size();
+	}
+
+	/**
+	 * @return Set&lt;Object&gt; New concurrent set of primary keys sorted by VALUE_ORDER
+	 */
+	protected static Set<Object> newKeySet() {
+		return new ConcurrentSkipListSet<Object>(VALUE_ORDER);
+	}
+
+	/**
+	 * <p>Convert integral numbers to Long so that equal values of different classes have the same hash code.</p>
+	 * @param value Object
+	 * @return Object
+	 */
+	static Object normalize(Object value) {
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return Long.valueOf(((Number) value).longValue());
+		else
+			return value;
+	}
+
+	/**
+	 * @param value1 Object
+	 * @param value2 Object
+	 * @return boolean <b>true</b> if both values are <b>null</b> or if they compare as equal
+	 */
+	static boolean sameValue(Object value1, Object value2) {
+		if (value1==null || value2==null)
+			return value1==value2;
+		try {
+			return compareValues(value1, value2)==0;
+		} catch (ClassCastException cce) {
+			return value1.equals(value2);
+		}
+	}
+
+	/**
+	 * @param value1 Object Not null
+	 * @param value2 Object Not null
+	 * @return int
+	 * @throws ClassCastException If the values cannot be compared
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compareValues(Object value1, Object value2) throws ClassCastException {
+		if (value1 instanceof Number && value2 instanceof Number && !value1.getClass().equals(value2.getClass()))
+			return toBigDecimal((Number) value1).compareTo(toBigDecimal((Number) value2));
+		if (value1 instanceof List && value2 instanceof List) {
+			final List<Object> list1 = (List<Object>) value1;
+			final List<Object> list2 = (List<Object>) value2;
+			final int size = Math.min(list1.size(), list2.size());
+			for (int n=0; n<size; n++) {
+				final int c = compareValues(list1.get(n), list2.get(n));
+				if (c!=0) return c;
+			}
+			return list1.size() - list2.size();
+		}
+		return ((Comparable) value1).compareTo(value2);
+	}
+
+	static BigDecimal toBigDecimal(Number value) {
+		if (value instanceof BigDecimal)
+			return (BigDecimal) value;
+		else if (value instanceof BigInteger)
+			return new BigDecimal((BigInteger) value);
+		else if (value instanceof Double || value instanceof Float)
+			return new BigDecimal(value.doubleValue());
+		else
+			return BigDecimal.valueOf(value.longValue());
+	}
+
+	/**
+	 * <p>Wrap a ClassCastException raised while comparing values of an index.</p>
+	 * @param columnName String
+	 * @param cce ClassCastException
+	 * @return JDOException
+	 */
+	static JDOException incomparable(String columnName, ClassCastException cce) {
+		return new JDOUserException("Values of column " + columnName + " are not comparable " + cce.getMessage(), cce);
+	}
+}
@@ -0,0 +1,38 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import org.judal.storage.query.Connective;
+
+/**
+ * <p>In-memory predicate whose parts are joined by OR.</p>
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class InMemoryOrPredicate extends InMemoryPredicate {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public Connective connective() {
+		return Connective.OR;
+	}
+
+	@Override
+	public InMemoryOrPredicate clone() {
+		InMemoryOrPredicate theClone = new InMemoryOrPredicate();
+		theClone.clone(this);
+		return theClone;
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.jdo.JDOUnsupportedOptionException;
+
+import org.judal.storage.query.Connective;
+import org.judal.storage.query.Expression;
+import org.judal.storage.query.Part;
+import org.judal.storage.query.Predicate;
+import org.judal.storage.query.Term;
+
+import static org.judal.storage.query.Operator.*;
+
+/**
+ * <p>Predicate evaluated against the rows of an in-memory table.</p>
+ * Use InMemoryAndPredicate or InMemoryOrPredicate to build predicates with more than one part.
+ * Supported operators are =, &lt;&gt;, &lt;, &gt;, &lt;=, &gt;=, IS, IS NOT, IS NULL, IS NOT NULL,
+ * IN, NOT IN, BETWEEN, NOT BETWEEN, LIKE, NOT LIKE and ILIKE.
+ * Sub-queries and expressions are not supported.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class InMemoryPredicate extends Predicate {
+
+	private static final long serialVersionUID = 1L;
+
+	public InMemoryPredicate() {
+	}
+
+	/**
+	 * <p>Create an InMemoryTerm and add it to this predicate.</p>
+	 * @param constructorParameters Object... Either {columnName, operator} or {columnName, operator, value}
+	 * @return InMemoryPredicate <b>this</b>
+	 * @throws NoSuchMethodException If the parameters do not match any InMemoryTerm constructor
+	 */
+	@Override
+	public InMemoryPredicate add(Object... constructorParameters) throws NoSuchMethodException, IllegalArgumentException {
+		if (constructorParameters.length==2 && constructorParameters[0] instanceof String && constructorParameters[1] instanceof String)
+			addPart(new InMemoryTerm((String) constructorParameters[0], (String) constructorParameters[1]));
+		else if (constructorParameters.length==3 && constructorParameters[0] instanceof String && constructorParameters[1] instanceof String)
+			addPart(new InMemoryTerm((String) constructorParameters[0], (String) constructorParameters[1], constructorParameters[2]));
+		else
+			throw new NoSuchMethodException("Could not find suitable constructor for InMemoryTerm with " + String.valueOf(constructorParameters.length) + " parameters");
+		return this;
+	}
+
+	@Override
+	public InMemoryPredicate clone() {
+		InMemoryPredicate theClone = new InMemoryPredicate();
+		theClone.clone(this);
+		return theClone;
+	}
+
+	@Override
+	public String getText() {
+		StringBuilder text = new StringBuilder();
+		for (Part part : parts())
+			text.append(text.length()==0 ? "(" : " " + connective().name() + " ").append(part.getText());
+		return text.length()==0 ? "" : text.append(")").toString();
+	}
+
+	@Override
+	public String getTextParametrized() {
+		StringBuilder text = new StringBuilder();
+		for (Part part : parts())
+			text.append(text.length()==0 ? "(" : " " + connective().name() + " ").append(part.getTextParametrized());
+		return text.length()==0 ? "" : text.append(")").toString();
+	}
+
+	/**
+	 * <p>Evaluate this predicate against a row.</p>
+	 * @param row Map&lt;String,Object&gt; Column values keyed by lowercase column name
+	 * @return boolean
+	 * @throws JDOUnsupportedOptionException If the predicate contains an unsupported operator, expression or sub-query
+	 */
+	public boolean test(Map<String,Object> row) throws JDOUnsupportedOptionException {
+		return matches(this, row);
+	}
+
+	/**
+	 * <p>Evaluate any Predicate or Term against a row.</p>
+	 * @param part Part
+	 * @param row Map&lt;String,Object&gt; Column values keyed by lowercase column name
+	 * @return boolean
+	 * @throws JDOUnsupportedOptionException
+	 */
+	static boolean matches(Part part, Map<String,Object> row) throws JDOUnsupportedOptionException {
+		if (part instanceof Predicate) {
+			final Predicate predicate = (Predicate) part;
+			final boolean any = Connective.OR.equals(predicate.connective());
+			for (Part subpart : predicate.parts()) {
+				final boolean match = matches(subpart, row);
+				if (any && match) return true;
+				if (!any && !match) return false;
+			}
+			return !any || predicate.size()==0;
+		} else if (part instanceof Term) {
+			return matches((Term) part, row);
+		} else {
+			throw new JDOUnsupportedOptionException("Unsupported predicate part " + part.getClass().getName());
+		}
+	}
+
+	private static boolean matches(Term term, Map<String,Object> row) throws JDOUnsupportedOptionException {
+		final String operator = term.getOperator().trim().toUpperCase();
+		final Object value = row.get(term.getColumnName().toLowerCase());
+		for (int v=0; v<term.getValueCount(); v++)
+			if (term.getValue(v) instanceof Part || term.getValue(v) instanceof Expression)
+				throw new JDOUnsupportedOptionException("In-memory predicates do not support sub-queries or expressions");
+		switch (operator) {
+			case ISNULL:
+				return value==null;
+			case ISNOTNULL:
+				return value!=null;
+			case IS:
+			case EQ:
+				return term.getValue()==null ? value==null : value!=null && InMemoryIndex.sameValue(value, term.getValue());
+			case ISNOT:
+			case NEQ:
+				return term.getValue()==null ? value!=null : value!=null && !InMemoryIndex.sameValue(value, term.getValue());
+			case LT:
+				return value!=null && term.getValue()!=null && InMemoryIndex.compareValues(value, term.getValue())<0;
+			case GT:
+				return value!=null && term.getValue()!=null && InMemoryIndex.compareValues(value, term.getValue())>0;
+			case LTE:
+				return value!=null && term.getValue()!=null && InMemoryIndex.compareValues(value, term.getValue())<=0;
+			case GTE:
+				return value!=null && term.getValue()!=null && InMemoryIndex.compareValues(value, term.getValue())>=0;
+			case BETWEEN:
+				return value!=null && between(value, term);
+			case NOTBETWEEN:
+				return value!=null && !between(value, term);
+			case IN:
+				return value!=null && in(value, term);
+			case NOTIN:
+				return value!=null && !in(value, term);
+			case LIKE:
+				return value!=null && like(value, term.getValue(), false);
+			case NOTLIKE:
+				return value!=null && !like(value, term.getValue(), false);
+			case ILIKE:
+				return value!=null && like(value, term.getValue(), true);
+			default:
+				throw new JDOUnsupportedOptionException("Operator " + term.getOperator() + " is not supported by in-memory predicates");
+		}
+	}
+
+	private static boolean between(Object value, Term term) {
+		return InMemoryIndex.compareValues(value, term.getValue(0))>=0 && InMemoryIndex.compareValues(value, term.getValue(1))<=0;
+	}
+
+	private static boolean in(Object value, Term term) {
+		for (int v=0; v<term.getValueCount(); v++)
+			if (InMemoryIndex.sameValue(value, term.getValue(v)))
+				return true;
+		return false;
+	}
+
+	private static boolean like(Object value, Object pattern, boolean ignoreCase) {
+		if (null==pattern)
+			return false;
+		final String sqlPattern = pattern.toString();
+		StringBuilder regex = new StringBuilder(sqlPattern.length()+8);
+		for (int c=0; c<sqlPattern.length(); c++) {
+			final char ch = sqlPattern.charAt(c);
+			if (ch=='%')
+				regex.append(".*");
+			else if (ch=='_')
+				regex.append('.');
+			else
+				regex.append(Pattern.quote(String.valueOf(ch)));
+		}
+		return Pattern.compile(regex.toString(), ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL : Pattern.DOTALL).matcher(value.toString()).matches();
+	}
+
+}
@@ -4,7 +4,9 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jdo.datastore.Sequence;
 
-public class InMemorySequence implements Sequence {
+import org.judal.storage.BlockAllocator;
+
+public class InMemorySequence implements Sequence, BlockAllocator {
 
 	private AtomicLong value;
 
@@ -44,4 +46,20 @@ public class InMemorySequence implements Sequence {
 		return value.get();
 	}
 
+	@Override
+	public long[] allocateBlock(int size) {
+		if (size<1)
+			throw new IllegalArgumentException("InMemorySequence block size must be at least 1");
+		final long last = value.addAndGet(size);
+		long[] block = new long[size];
+		for (int n=0; n<size; n++)
+			block[n] = last - size + 1 + n;
+		return block;
+	}
+
+	@Override
+	public boolean releaseBlock(long[] block, int used) {
+		return used>=block.length || value.compareAndSet(block[block.length-1], block[used] - 1l);
+	}
+
 }
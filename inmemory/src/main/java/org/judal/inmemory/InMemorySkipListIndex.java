@@ -0,0 +1,81 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>Sorted index for equality and range lookups on a column of an in-memory table.</p>
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+class InMemorySkipListIndex extends InMemoryIndex {
+
+	private final ConcurrentSkipListMap<Object,Set<Object>> entries;
+
+	InMemorySkipListIndex(String indexName, String columnName, boolean unique) {
+		super(indexName, columnName, unique);
+		entries = new ConcurrentSkipListMap<Object,Set<Object>>(VALUE_ORDER);
+	}
+
+	@Override
+	public boolean isSorted() {
+		return true;
+	}
+
+	@Override
+	protected Set<Object> keysFor(Object value) {
+		return entries.get(value);
+	}
+
+	@Override
+	protected Set<Object> keysForUpdate(Object value) {
+		Set<Object> keys = entries.get(value);
+		if (null==keys) {
+			keys = newKeySet();
+			entries.put(value, keys);
+		}
+		return keys;
+	}
+
+	@Override
+	protected void removeValue(Object value) {
+		entries.remove(value);
+	}
+
+	@Override
+	public void clear() {
+		entries.clear();
+	}
+
+	@Override
+	public void range(Comparable<?> valueFrom, boolean fromInclusive, Comparable<?> valueTo, boolean toInclusive, Collection<Object> keys) {
+		final NavigableMap<Object,Set<Object>> interval;
+		if (valueFrom==null && valueTo==null)
+			interval = entries;
+		else if (valueFrom==null)
+			interval = entries.headMap(normalize(valueTo), toInclusive);
+		else if (valueTo==null)
+			interval = entries.tailMap(normalize(valueFrom), fromInclusive);
+		else if (compareValues(valueFrom, valueTo)>0)
+			return;
+		else
+			interval = entries.subMap(normalize(valueFrom), fromInclusive, normalize(valueTo), toInclusive);
+		for (Set<Object> found : interval.values())
+			keys.addAll(found);
+	}
+
+}
@@ -0,0 +1,512 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.jdo.FetchGroup;
+import javax.jdo.FetchPlan;
+import javax.jdo.JDOException;
+import javax.jdo.JDOUnsupportedOptionException;
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.metadata.PrimaryKeyMetadata;
+
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.IndexDef.Using;
+import org.judal.metadata.TableDef;
+import org.judal.storage.Param;
+import org.judal.storage.StorageObjectFactory;
+import org.judal.storage.keyvalue.Stored;
+import org.judal.storage.query.Predicate;
+import org.judal.storage.table.IndexableTable;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.RecordSet;
+
+/**
+ * <p>In-memory implementation of IndexableTable.</p>
+ * Equality lookups use hash or skip list indexes, range lookups use skip list indexes
+ * and both fall back to a full scan for columns which are not indexed.
+ * Indexes are updated on each store, insert, update and delete.
+ * Besides the IndexableTable methods, rows can be fetched and counted using an InMemoryPredicate.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class InMemoryTable implements IndexableTable {
+
+	private final InMemoryTableDataSource dts;
+	private final InMemoryTableData data;
+	private Class<? extends Record> resultClass;
+	private String timestampColumnName;
+
+	/**
+	 * @param dataSource InMemoryTableDataSource
+	 * @param tableData InMemoryTableData
+	 * @param recordInstance Record Instance of the class of the records returned by fetch methods
+	 */
+	InMemoryTable(InMemoryTableDataSource dataSource, InMemoryTableData tableData, Record recordInstance) {
+		dts = dataSource;
+		data = tableData;
+		resultClass = recordInstance==null ? null : recordInstance.getClass();
+		timestampColumnName = null;
+	}
+
+	/**
+	 * @return InMemoryTableDataSource
+	 */
+	public InMemoryTableDataSource getDataSource() {
+		return dts;
+	}
+
+	private TableDef tableDef() {
+		return data.getTableDef();
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * @return String Table Name
+	 */
+	@Override
+	public String name() {
+		return tableDef().getName();
+	}
+
+	@Override
+	public void close() throws JDOException { }
+
+	@Override
+	public ColumnDef[] columns() {
+		return tableDef().getColumns();
+	}
+
+	@Override
+	public int columnsCount() {
+		return tableDef().getNumberOfColumns();
+	}
+
+	@Override
+	public ColumnDef getColumnByName(String columnName) {
+		return tableDef().getColumnByName(columnName);
+	}
+
+	@Override
+	public int getColumnIndex(String columnName) {
+		return tableDef().getColumnIndex(columnName);
+	}
+
+	@Override
+	public PrimaryKeyMetadata getPrimaryKey() {
+		return tableDef().getPrimaryKeyMetadata();
+	}
+
+	@Override
+	public String getTimestampColumnName() {
+		return timestampColumnName;
+	}
+
+	@Override
+	public void setTimestampColumnName(String columnName) throws IllegalArgumentException {
+		if (columnName!=null && getColumnByName(columnName)==null)
+			throw new IllegalArgumentException("Column " + columnName + " not found at table " + name());
+		timestampColumnName = columnName;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Check whether a row with the given primary key exists
+	 * @param key Object Primary key value, Param or Object[] for multiple column primary keys
+	 * @return boolean
+	 * @throws NullPointerException if key is <b>null</b>
+	 */
+	@Override
+	public boolean exists(Object key) throws NullPointerException, JDOException {
+		if (null==key) throw new NullPointerException("InMemoryTable.exists() key value cannot be null");
+		return data.get(key)!=null;
+	}
+
+	/**
+	 * Check whether a row with the given column values exists
+	 * @param keys Param...
+	 * @return boolean
+	 */
+	@Override
+	public boolean exists(Param... keys) throws JDOException {
+		return data.select(InMemoryTableData.toPredicate(keys), 1, 0).size()>0;
+	}
+
+	/**
+	 * <p>Load a row into a Record.</p>
+	 * @param key Object Primary key value, Param or Object[] for multiple column primary keys
+	 * @param target Record
+	 * @return boolean <b>true</b> if a row with the given key was loaded <b>false</b> otherwise
+	 * @throws NullPointerException if key is <b>null</b>
+	 */
+	@Override
+	public boolean load(Object key, Stored target) throws NullPointerException, JDOException {
+		if (null==key) throw new NullPointerException("InMemoryTable.load() key value cannot be null");
+		final Map<String,Object> row = data.get(key);
+		if (null==row)
+			return false;
+		final Record rec = (Record) target;
+		rec.clear();
+		for (ColumnDef cdef : columns()) {
+			final Object value = row.get(cdef.getName().toLowerCase());
+			if (value!=null)
+				rec.put(cdef.getName(), value);
+		}
+		return true;
+	}
+
+	/**
+	 * <p>Insert or update a row.</p>
+	 * @param target Record
+	 * @throws JDOUserException If the primary key is <b>null</b> or if a unique index is violated
+	 */
+	@Override
+	public void store(Stored target) throws JDOException {
+		final Record rec = (Record) target;
+		final Map<String,Object> values = new HashMap<String,Object>(columnsCount()*2);
+		for (ColumnDef cdef : columns())
+			values.put(cdef.getName(), rec.apply(cdef.getName()));
+		if (timestampColumnName!=null)
+			values.put(getColumnByName(timestampColumnName).getName(), new java.sql.Timestamp(System.currentTimeMillis()));
+		data.put(data.newRow(values), false);
+	}
+
+	/**
+	 * <p>Insert a new row.</p>
+	 * @param params Param... Column values
+	 * @throws JDOUserException If a row with the same primary key already exists or if a unique index is violated
+	 */
+	@Override
+	public void insert(Param... params) throws JDOException {
+		final Map<String,Object> values = new HashMap<String,Object>(params.length*2);
+		for (Param param : params) {
+			final ColumnDef cdef = getColumnByName(param.getName());
+			if (null==cdef)
+				throw new JDOUserException("Column " + param.getName() + " not found at table " + name());
+			values.put(cdef.getName(), param.getValue());
+		}
+		data.put(data.newRow(values), true);
+	}
+
+	/**
+	 * @param key Object Primary key value, Param or Object[] for multiple column primary keys
+	 */
+	@Override
+	public void delete(Object key) throws JDOException {
+		data.remove(key);
+	}
+
+	/**
+	 * @param where Param[] Column values of the rows to be deleted
+	 * @return int Count of deleted rows
+	 */
+	@Override
+	public int delete(Param[] where) throws JDOException {
+		int deleted = 0;
+		for (Map<String,Object> row : data.select(InMemoryTableData.toPredicate(where), 0, 0))
+			if (data.remove(primaryKeyValues(row)))
+				deleted++;
+		return deleted;
+	}
+
+	/**
+	 * @param values Param[] New column values. Primary key columns cannot be updated.
+	 * @param where Param[] Column values of the rows to be updated
+	 * @return int Count of updated rows
+	 * @throws JDOUserException If values contains a primary key column or if a unique index is violated
+	 */
+	@Override
+	public int update(Param[] values, Param[] where) throws JDOException {
+		for (Param value : values)
+			if (getColumnByName(value.getName())==null)
+				throw new JDOUserException("Column " + value.getName() + " not found at table " + name());
+			else if (getColumnByName(value.getName()).isPrimaryKey())
+				throw new JDOUserException("Primary key column " + value.getName() + " cannot be updated");
+		int updated = 0;
+		for (Map<String,Object> row : data.select(InMemoryTableData.toPredicate(where), 0, 0)) {
+			final Map<String,Object> newRow = new HashMap<String,Object>(row);
+			for (Param value : values)
+				if (value.getValue()==null)
+					newRow.remove(value.getName().toLowerCase());
+				else
+					newRow.put(value.getName().toLowerCase(), value.getValue());
+			data.put(newRow, false);
+			updated++;
+		}
+		return updated;
+	}
+
+	private Object primaryKeyValues(Map<String,Object> row) {
+		final ColumnDef[] pkCols = tableDef().getPrimaryKeyMetadata().getColumns();
+		final Object[] values = new Object[pkCols.length];
+		for (int c=0; c<pkCols.length; c++)
+			values[c] = row.get(pkCols[c].getName().toLowerCase());
+		return values;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Create an index on a single column.</p>
+	 * The index is populated with the rows already stored at the table.
+	 * @param indexName String
+	 * @param unique boolean
+	 * @param indexUsing Using HASH for a hash index, any other value for a skip list index supporting range lookups
+	 * @param columns String Column name
+	 * @throws JDOUnsupportedOptionException If more than one column is given
+	 * @throws JDOUserException If the column is already indexed or if the existing rows violate the index uniqueness
+	 */
+	@Override
+	public void createIndex(String indexName, boolean unique, Using indexUsing, String... columns) throws JDOException {
+		if (columns==null || columns.length!=1)
+			throw new JDOUnsupportedOptionException("In-memory tables only support indexes on a single column");
+		if (getColumnByName(columns[0])==null)
+			throw new JDOUserException("Column " + columns[0] + " not found at table " + name());
+		if (Using.HASH.equals(indexUsing))
+			data.addIndex(new InMemoryHashIndex(indexName, columns[0], unique));
+		else
+			data.addIndex(new InMemorySkipListIndex(indexName, columns[0], unique));
+	}
+
+	/**
+	 * @param indexName String
+	 * @throws JDOUserException If no index with the given name exists
+	 */
+	@Override
+	public void dropIndex(String indexName) throws JDOException {
+		data.dropIndex(indexName);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Count rows having a given value at a column.</p>
+	 * @param indexColumnName String If <b>null</b> then all rows are counted
+	 * @param valueSearched Object
+	 * @return long
+	 */
+	@Override
+	public long count(String indexColumnName, Object valueSearched) throws JDOException {
+		if (null==indexColumnName)
+			return data.size();
+		return data.count(InMemoryTableData.toPredicate(indexColumnName, valueSearched));
+	}
+
+	/**
+	 * <p>Count rows matching a predicate.</p>
+	 * @param filter Predicate
+	 * @return long
+	 * @throws JDOUnsupportedOptionException If the predicate contains an unsupported operator, expression or sub-query
+	 */
+	public long count(Predicate filter) throws JDOException {
+		return data.count(filter);
+	}
+
+	@Override
+	public <R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, String indexColumnName, Object valueSearched) throws JDOException {
+		return fetch(fetchGroup, indexColumnName, valueSearched, MAX_ROWS, 0);
+	}
+
+	/**
+	 * <p>Fetch rows having a given value at a column.</p>
+	 * @param fetchGroup FetchGroup Columns to be fetched. If <b>null</b> all columns are fetched.
+	 * @param indexColumnName String If <b>null</b> then all rows are fetched
+	 * @param valueSearched Object If <b>null</b> then rows where the column is null are fetched
+	 * @param maxrows int
+	 * @param offset int
+	 * @return RecordSet&lt;R&gt;
+	 */
+	@Override
+	public <R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, String indexColumnName, Object valueSearched, int maxrows, int offset) throws JDOException {
+		return toRecordSet(fetchGroup, data.select(indexColumnName, valueSearched, maxrows, offset), maxrows);
+	}
+
+	@Override
+	public <R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, String indexColumnName, Comparable<?> valueFrom, Comparable<?> valueTo) throws JDOException, IllegalArgumentException {
+		return fetch(fetchGroup, indexColumnName, valueFrom, valueTo, MAX_ROWS, 0);
+	}
+
+	/**
+	 * <p>Fetch rows whose column value is between two values, both inclusive.</p>
+	 * @param fetchGroup FetchGroup Columns to be fetched. If <b>null</b> all columns are fetched.
+	 * @param indexColumnName String
+	 * @param valueFrom Comparable&lt;?&gt; Lower bound or <b>null</b>
+	 * @param valueTo Comparable&lt;?&gt; Upper bound or <b>null</b>
+	 * @param maxrows int
+	 * @param offset int
+	 * @return RecordSet&lt;R&gt;
+	 * @throws IllegalArgumentException If indexColumnName is <b>null</b>
+	 */
+	@Override
+	public <R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, String indexColumnName, Comparable<?> valueFrom, Comparable<?> valueTo, int maxrows, int offset) throws JDOException, IllegalArgumentException {
+		if (null==indexColumnName)
+			throw new IllegalArgumentException("InMemoryTable.fetch() column name cannot be null");
+		return toRecordSet(fetchGroup, data.range(indexColumnName, valueFrom, valueTo, maxrows, offset), maxrows);
+	}
+
+	/**
+	 * <p>Fetch rows matching all the given column values.</p>
+	 * @param fetchGroup FetchGroup Columns to be fetched. If <b>null</b> all columns are fetched.
+	 * @param maxrows int
+	 * @param offset int
+	 * @param params Param...
+	 * @return RecordSet&lt;R&gt;
+	 */
+	@Override
+	public <R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, int maxrows, int offset, Param... params) throws JDOException {
+		return toRecordSet(fetchGroup, data.select(InMemoryTableData.toPredicate(params), maxrows, offset), maxrows);
+	}
+
+	/**
+	 * <p>Fetch rows matching a predicate.</p>
+	 * @param fetchGroup FetchGroup Columns to be fetched. If <b>null</b> all columns are fetched.
+	 * @param filter Predicate
+	 * @param maxrows int
+	 * @param offset int
+	 * @return RecordSet&lt;R&gt;
+	 * @throws JDOUnsupportedOptionException If the predicate contains an unsupported operator, expression or sub-query
+	 */
+	public <R extends Record> RecordSet<R> fetch(FetchGroup fetchGroup, Predicate filter, int maxrows, int offset) throws JDOException {
+		return toRecordSet(fetchGroup, data.select(filter, maxrows, offset), maxrows);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <R extends Record> RecordSet<R> toRecordSet(FetchGroup fetchGroup, List<Map<String,Object>> rows, int maxrows) throws JDOException {
+		RecordSet<R> retval;
+		try {
+			retval = StorageObjectFactory.newRecordSetOf((Class<R>) getResultClass(), maxrows>0 && maxrows<MAX_ROWS ? maxrows : rows.size());
+		} catch (NoSuchMethodException nsme) {
+			throw new JDOException(nsme.getMessage(), nsme);
+		}
+		final ColumnDef[] fetchCols = fetchColumns(fetchGroup);
+		for (Map<String,Object> row : rows)
+			retval.add((R) toRecord(fetchCols, row));
+		return retval;
+	}
+
+	private ColumnDef[] fetchColumns(FetchGroup fetchGroup) throws JDOUserException {
+		if (null==fetchGroup || fetchGroup.getMembers().size()==0)
+			return columns();
+		final ColumnDef[] fetchCols = new ColumnDef[fetchGroup.getMembers().size()];
+		int c = 0;
+		for (Object member : fetchGroup.getMembers()) {
+			fetchCols[c] = getColumnByName((String) member);
+			if (null==fetchCols[c])
+				throw new JDOUserException("Column " + member + " not found at table " + name());
+			c++;
+		}
+		return fetchCols;
+	}
+
+	private Record toRecord(ColumnDef[] fetchCols, Map<String,Object> row) throws JDOException {
+		Record rec;
+		try {
+			rec = StorageObjectFactory.newRecord(getResultClass(), tableDef());
+		} catch (NoSuchMethodException nsme) {
+			throw new JDOException(nsme.getMessage(), nsme);
+		}
+		for (ColumnDef cdef : fetchCols) {
+			final Object value = row.get(cdef.getName().toLowerCase());
+			if (value!=null)
+				rec.put(cdef.getName(), value);
+		}
+		return rec;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * @return Class&lt;? extends Record&gt; Class of the records returned by fetch methods
+	 */
+	@Override
+	public Class<? extends Record> getResultClass() {
+		return resultClass;
+	}
+
+	/**
+	 * @param candidateClass Class&lt;? extends Record&gt;
+	 * @throws ClassCastException If candidateClass does not implement Record
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void setClass(Class<? extends Stored> candidateClass) {
+		resultClass = (Class<? extends Record>) candidateClass.asSubclass(Record.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Class<Stored> getCandidateClass() {
+		return (Class<Stored>) (Class<?>) resultClass;
+	}
+
+	/**
+	 * @return This method always returns <b>null</b>
+	 */
+	@Override
+	public FetchPlan getFetchPlan() {
+		return null;
+	}
+
+	/**
+	 * @return This method always returns <b>null</b>
+	 */
+	@Override
+	public PersistenceManager getPersistenceManager() {
+		return null;
+	}
+
+	/**
+	 * @return This method always returns <b>false</b>
+	 */
+	@Override
+	public boolean hasSubclasses() {
+		return false;
+	}
+
+	/**
+	 * @return Iterator&lt;Stored&gt; Over a snapshot of all the rows sorted by primary key
+	 */
+	@Override
+	public Iterator<Stored> iterator() {
+		final ColumnDef[] fetchCols = columns();
+		final Iterator<Map<String,Object>> rows = data.select((Predicate) null, 0, 0).iterator();
+		return new Iterator<Stored>() {
+			@Override
+			public boolean hasNext() {
+				return rows.hasNext();
+			}
+			@Override
+			public Stored next() {
+				return toRecord(fetchCols, rows.next());
+			}
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("InMemoryTable iterator does not support remove()");
+			}
+		};
+	}
+
+	@Override
+	public void close(Iterator<Stored> iterator) { }
+
+	@Override
+	public void closeAll() { }
+
+}
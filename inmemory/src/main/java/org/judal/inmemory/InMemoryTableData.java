@@ -0,0 +1,478 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUserException;
+import javax.jdo.metadata.ColumnMetadata;
+
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.IndexDef;
+import org.judal.metadata.NonUniqueIndexDef;
+import org.judal.metadata.PrimaryKeyDef;
+import org.judal.metadata.TableDef;
+import org.judal.storage.Param;
+import org.judal.storage.query.Connective;
+import org.judal.storage.query.Part;
+import org.judal.storage.query.Predicate;
+import org.judal.storage.query.Term;
+
+import static org.judal.storage.query.Operator.*;
+
+/**
+ * <p>Rows and indexes of an in-memory table.</p>
+ * Rows are kept in a concurrent skip list sorted by primary key,
+ * so full scans and primary key ranges are returned in primary key order.
+ * Secondary indexes are maintained incrementally on each write.
+ * Writes are serialized by a lock on this object while reads do not lock.
+ * Because a reader may see an index entry before or after the row it points to has changed,
+ * rows found thru an index are always checked again against the search criteria.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+class InMemoryTableData {
+
+	private final TableDef tableDef;
+	private final String[] primaryKeyColumns;
+	private final ConcurrentSkipListMap<Object,Map<String,Object>> rows;
+	private final ConcurrentHashMap<String,InMemoryIndex> indexesByColumn;
+
+	/**
+	 * <p>Create the storage for a table and an index for each indexed column of its definition.</p>
+	 * Columns that are indexed thru a NonUniqueIndexDef or UniqueIndexDef using HASH get a hash index,
+	 * any other indexed column gets a skip list index. Multiple column indexes are ignored.
+	 * @param tableDef TableDef
+	 * @throws JDOUserException If the table has no primary key
+	 */
+	InMemoryTableData(TableDef tableDef) throws JDOUserException {
+		this.tableDef = tableDef;
+		final PrimaryKeyDef pk = tableDef.getPrimaryKeyMetadata();
+		if (null==pk || pk.getNumberOfColumns()==0)
+			throw new JDOUserException("In-memory table " + tableDef.getName() + " must have a primary key");
+		primaryKeyColumns = new String[pk.getNumberOfColumns()];
+		for (int c=0; c<primaryKeyColumns.length; c++)
+			primaryKeyColumns[c] = pk.getColumns()[c].getName().toLowerCase();
+		rows = new ConcurrentSkipListMap<Object,Map<String,Object>>(InMemoryIndex.VALUE_ORDER);
+		indexesByColumn = new ConcurrentHashMap<String,InMemoryIndex>();
+		for (IndexDef idef : tableDef.getIndices())
+			addIndexDef(idef);
+		for (IndexDef idef : tableDef.getUniques())
+			addIndexDef(idef);
+		for (ColumnDef cdef : tableDef.getColumns())
+			if (cdef.isIndexed() && !isPrimaryKey(cdef.getName()) && !indexesByColumn.containsKey(cdef.getName().toLowerCase()))
+				addIndex(new InMemorySkipListIndex(tableDef.getName() + "_" + cdef.getName(), cdef.getName(), NonUniqueIndexDef.Type.ONE_TO_ONE.equals(cdef.getIndexType())));
+	}
+
+	private void addIndexDef(IndexDef idef) {
+		final ColumnMetadata[] columns = idef.getColumns();
+		if (columns.length==1 && !isPrimaryKey(columns[0].getName())) {
+			if (IndexDef.Using.HASH.equals(idef.getUsing()))
+				addIndex(new InMemoryHashIndex(idef.getName(), columns[0].getName(), idef.getUnique()));
+			else
+				addIndex(new InMemorySkipListIndex(idef.getName(), columns[0].getName(), idef.getUnique()));
+		}
+	}
+
+	/**
+	 * @return TableDef
+	 */
+	TableDef getTableDef() {
+		return tableDef;
+	}
+
+	/**
+	 * @param columnName String
+	 * @return boolean <b>true</b> if columnName is the only column of the primary key
+	 */
+	boolean isPrimaryKey(String columnName) {
+		return primaryKeyColumns.length==1 && primaryKeyColumns[0].equalsIgnoreCase(columnName);
+	}
+
+	/**
+	 * @param columnName String
+	 * @return InMemoryIndex or <b>null</b> if there is no index on the given column
+	 */
+	InMemoryIndex getIndex(String columnName) {
+		return indexesByColumn.get(columnName.toLowerCase());
+	}
+
+	/**
+	 * <p>Convert a key given by the caller into the key used at the rows map.</p>
+	 * @param key Object Primary key value, Param or Object[] for multiple column primary keys
+	 * @return Object
+	 */
+	static Object primaryKeyOf(Object key) {
+		if (key instanceof Param)
+			key = ((Param) key).getValue();
+		if (key instanceof Object[]) {
+			final Object[] values = (Object[]) key;
+			if (values.length==1)
+				return InMemoryIndex.normalize(values[0]);
+			final Object[] normalized = new Object[values.length];
+			for (int v=0; v<values.length; v++)
+				normalized[v] = InMemoryIndex.normalize(values[v]);
+			return Collections.unmodifiableList(Arrays.asList(normalized));
+		}
+		return InMemoryIndex.normalize(key);
+	}
+
+	private Object primaryKeyOf(Map<String,Object> row) throws JDOUserException {
+		if (primaryKeyColumns.length==1) {
+			final Object value = row.get(primaryKeyColumns[0]);
+			if (null==value)
+				throw new JDOUserException("Primary key " + primaryKeyColumns[0] + " of table " + tableDef.getName() + " cannot be null");
+			return InMemoryIndex.normalize(value);
+		} else {
+			final Object[] values = new Object[primaryKeyColumns.length];
+			for (int c=0; c<values.length; c++) {
+				values[c] = row.get(primaryKeyColumns[c]);
+				if (null==values[c])
+					throw new JDOUserException("Primary key column " + primaryKeyColumns[c] + " of table " + tableDef.getName() + " cannot be null");
+			}
+			return primaryKeyOf(values);
+		}
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * @param key Object Primary key
+	 * @return Map&lt;String,Object&gt; Row or <b>null</b> if no row with the given key exists
+	 */
+	Map<String,Object> get(Object key) {
+		return rows.get(primaryKeyOf(key));
+	}
+
+	/**
+	 * @return long Number of rows
+	 */
+	long size() {
+		return rows.size();
+	}
+
+	/**
+	 * <p>Insert or replace a row.</p>
+	 * @param row Map&lt;String,Object&gt; Column values keyed by lowercase column name. The map must not be modified after it is stored.
+	 * @param insertOnly boolean If <b>true</b> then a row with the same primary key must not already exist
+	 * @throws JDOUserException If the primary key is null, if insertOnly is <b>true</b> and the row exists or if a unique index is violated
+	 */
+	synchronized void put(Map<String,Object> row, boolean insertOnly) throws JDOUserException {
+		final Object pk = primaryKeyOf(row);
+		final Map<String,Object> former = rows.get(pk);
+		if (insertOnly && former!=null)
+			throw new JDOUserException("Duplicated primary key " + pk + " at table " + tableDef.getName());
+		try {
+			for (InMemoryIndex index : indexesByColumn.values())
+				index.checkUnique(row.get(index.getColumnName()), pk);
+			rows.put(pk, row);
+			for (InMemoryIndex index : indexesByColumn.values()) {
+				final Object formerValue = former==null ? null : former.get(index.getColumnName());
+				final Object newValue = row.get(index.getColumnName());
+				if (!InMemoryIndex.sameValue(formerValue, newValue)) {
+					index.remove(formerValue, pk);
+					index.add(newValue, pk);
+				}
+			}
+		} catch (ClassCastException cce) {
+			throw InMemoryIndex.incomparable(tableDef.getName(), cce);
+		}
+	}
+
+	/**
+	 * @param key Object Primary key
+	 * @return boolean <b>true</b> if a row was removed
+	 */
+	synchronized boolean remove(Object key) {
+		final Object pk = primaryKeyOf(key);
+		final Map<String,Object> former = rows.remove(pk);
+		if (former!=null)
+			for (InMemoryIndex index : indexesByColumn.values())
+				index.remove(former.get(index.getColumnName()), pk);
+		return former!=null;
+	}
+
+	/**
+	 * Remove all rows
+	 */
+	synchronized void truncate() {
+		rows.clear();
+		for (InMemoryIndex index : indexesByColumn.values())
+			index.clear();
+	}
+
+	/**
+	 * <p>Add an index and populate it with the existing rows.</p>
+	 * @param index InMemoryIndex
+	 * @throws JDOUserException If there is already an index on the same column or if the existing rows violate the index uniqueness
+	 */
+	synchronized void addIndex(InMemoryIndex index) throws JDOUserException {
+		if (indexesByColumn.containsKey(index.getColumnName()))
+			throw new JDOUserException("Column " + index.getColumnName() + " of table " + tableDef.getName() + " is already indexed");
+		for (Map.Entry<Object,Map<String,Object>> row : rows.entrySet()) {
+			final Object value = row.getValue().get(index.getColumnName());
+			index.checkUnique(value, row.getKey());
+			index.add(value, row.getKey());
+		}
+		indexesByColumn.put(index.getColumnName(), index);
+	}
+
+	/**
+	 * @param indexName String
+	 * @throws JDOUserException If no index with the given name exists
+	 */
+	synchronized void dropIndex(String indexName) throws JDOUserException {
+		for (InMemoryIndex index : indexesByColumn.values()) {
+			if (index.getName().equalsIgnoreCase(indexName)) {
+				indexesByColumn.remove(index.getColumnName());
+				return;
+			}
+		}
+		throw new JDOUserException("Index " + indexName + " not found at table " + tableDef.getName());
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * <p>Get rows whose column has a given value.</p>
+	 * @param columnName String If <b>null</b> all rows are returned
+	 * @param value Object If <b>null</b> rows where the column is null are returned
+	 * @param maxrows int Maximum number of rows to return. Zero or less means no limit.
+	 * @param offset int Number of matching rows to skip
+	 * @return List&lt;Map&lt;String,Object&gt;&gt;
+	 * @throws JDOException
+	 */
+	List<Map<String,Object>> select(String columnName, Object value, int maxrows, int offset) throws JDOException {
+		if (null==columnName)
+			return limit(rows.values(), null, maxrows, offset);
+		return select(toPredicate(columnName, value), maxrows, offset);
+	}
+
+	/**
+	 * <p>Get rows whose column value is between two values, both inclusive.</p>
+	 * @param columnName String
+	 * @param valueFrom Comparable&lt;?&gt; Lower bound or <b>null</b>
+	 * @param valueTo Comparable&lt;?&gt; Upper bound or <b>null</b>
+	 * @param maxrows int Maximum number of rows to return. Zero or less means no limit.
+	 * @param offset int Number of matching rows to skip
+	 * @return List&lt;Map&lt;String,Object&gt;&gt; Sorted by the column value if it is indexed by a skip list index
+	 * @throws JDOException
+	 */
+	List<Map<String,Object>> range(String columnName, Comparable<?> valueFrom, Comparable<?> valueTo, int maxrows, int offset) throws JDOException {
+		final InMemoryPredicate filter = new InMemoryAndPredicate();
+		if (valueFrom!=null && valueTo!=null)
+			filter.addPart(new InMemoryTerm(columnName, BETWEEN, new Object[]{valueFrom, valueTo}));
+		else if (valueFrom!=null)
+			filter.addPart(new InMemoryTerm(columnName, GTE, valueFrom));
+		else if (valueTo!=null)
+			filter.addPart(new InMemoryTerm(columnName, LTE, valueTo));
+		else
+			filter.addPart(new InMemoryTerm(columnName, ISNOTNULL));
+		return select(filter, maxrows, offset);
+	}
+
+	/**
+	 * <p>Create a predicate matching rows having a given column value.</p>
+	 * @param columnName String
+	 * @param value Object If <b>null</b> the predicate will match rows where the column is null
+	 * @return Predicate
+	 */
+	static Predicate toPredicate(String columnName, Object value) {
+		final InMemoryPredicate filter = new InMemoryAndPredicate();
+		filter.addPart(value==null ? new InMemoryTerm(columnName, ISNULL) : new InMemoryTerm(columnName, EQ, value));
+		return filter;
+	}
+
+	/**
+	 * <p>Create a predicate matching rows having all the given column values.</p>
+	 * @param params Param...
+	 * @return Predicate
+	 */
+	static Predicate toPredicate(Param... params) {
+		final InMemoryPredicate filter = new InMemoryAndPredicate();
+		if (params!=null)
+			for (Param param : params)
+				filter.addPart(param.getValue()==null ? new InMemoryTerm(param.getName(), ISNULL) : new InMemoryTerm(param.getName(), EQ, param.getValue()));
+		return filter;
+	}
+
+	/**
+	 * <p>Get rows matching a predicate.</p>
+	 * If the predicate is a conjunction and one of its terms is an equality or range condition on the primary key
+	 * or on an indexed column then only the rows found thru that index are evaluated, otherwise all rows are scanned.
+	 * @param filter Predicate May be <b>null</b>
+	 * @param maxrows int Maximum number of rows to return. Zero or less means no limit.
+	 * @param offset int Number of matching rows to skip
+	 * @return List&lt;Map&lt;String,Object&gt;&gt;
+	 * @throws JDOException
+	 */
+	List<Map<String,Object>> select(Predicate filter, int maxrows, int offset) throws JDOException {
+		if (null==filter || filter.size()==0)
+			return limit(rows.values(), null, maxrows, offset);
+		try {
+			final Collection<Object> keys = candidates(filter);
+			if (null==keys) {
+				return limit(rows.values(), filter, maxrows, offset);
+			} else {
+				final List<Map<String,Object>> found = new ArrayList<Map<String,Object>>(keys.size());
+				for (Object key : keys) {
+					final Map<String,Object> row = rows.get(key);
+					if (row!=null)
+						found.add(row);
+				}
+				return limit(found, filter, maxrows, offset);
+			}
+		} catch (ClassCastException cce) {
+			throw InMemoryIndex.incomparable(tableDef.getName(), cce);
+		}
+	}
+
+	/**
+	 * <p>Count rows matching a predicate.</p>
+	 * A single equality term on an indexed column is counted directly from the index.
+	 * @param filter Predicate May be <b>null</b>
+	 * @return long
+	 * @throws JDOException
+	 */
+	long count(Predicate filter) throws JDOException {
+		if (null==filter || filter.size()==0)
+			return rows.size();
+		if (filter.size()==1 && filter.parts().get(0) instanceof Term) {
+			final Term term = (Term) filter.parts().get(0);
+			final InMemoryIndex index = getIndex(term.getColumnName());
+			if (index!=null && EQ.equals(term.getOperator().trim()) && term.getValue()!=null)
+				return index.count(term.getValue());
+			if (isPrimaryKey(term.getColumnName()) && EQ.equals(term.getOperator().trim()) && term.getValue()!=null)
+				return rows.containsKey(primaryKeyOf(term.getValue())) ? 1l : 0l;
+		}
+		return select(filter, 0, 0).size();
+	}
+
+	private Collection<Object> candidates(Predicate filter) {
+		if (Connective.OR.equals(filter.connective()) && filter.size()>1)
+			return null;
+		Collection<Object> rangeKeys = null;
+		for (Part part : filter.parts()) {
+			if (part instanceof Term) {
+				final Term term = (Term) part;
+				final String operator = term.getOperator().trim().toUpperCase();
+				final Object value = term.getValueCount()>0 ? term.getValue() : null;
+				if (value instanceof Part)
+					continue;
+				if (EQ.equals(operator) && value!=null) {
+					final Collection<Object> keys = new LinkedHashSet<Object>();
+					if (isPrimaryKey(term.getColumnName())) {
+						keys.add(primaryKeyOf(value));
+						return keys;
+					}
+					final InMemoryIndex index = getIndex(term.getColumnName());
+					if (index!=null) {
+						index.get(value, keys);
+						return keys;
+					}
+				} else if (null==rangeKeys && value instanceof Comparable) {
+					rangeKeys = rangeCandidates(term, operator);
+				}
+			}
+		}
+		return rangeKeys;
+	}
+
+	private Collection<Object> rangeCandidates(Term term, String operator) {
+		Comparable<?> from = null, to = null;
+		boolean fromInclusive = true, toInclusive = true;
+		switch (operator) {
+			case BETWEEN:
+				if (!(term.getValue(1) instanceof Comparable)) return null;
+				from = (Comparable<?>) term.getValue(0);
+				to = (Comparable<?>) term.getValue(1);
+				break;
+			case GT:
+				fromInclusive = false;
+			case GTE:
+				from = (Comparable<?>) term.getValue();
+				break;
+			case LT:
+				toInclusive = false;
+			case LTE:
+				to = (Comparable<?>) term.getValue();
+				break;
+			default:
+				return null;
+		}
+		final Collection<Object> keys = new ArrayList<Object>();
+		if (isPrimaryKey(term.getColumnName())) {
+			final Map<Object,Map<String,Object>> interval;
+			if (null==from)
+				interval = rows.headMap(InMemoryIndex.normalize(to), toInclusive);
+			else if (null==to)
+				interval = rows.tailMap(InMemoryIndex.normalize(from), fromInclusive);
+			else if (InMemoryIndex.compareValues(from, to)>0)
+				return keys;
+			else
+				interval = rows.subMap(InMemoryIndex.normalize(from), fromInclusive, InMemoryIndex.normalize(to), toInclusive);
+			keys.addAll(interval.keySet());
+			return keys;
+		}
+		final InMemoryIndex index = getIndex(term.getColumnName());
+		if (index!=null && index.isSorted()) {
+			index.range(from, fromInclusive, to, toInclusive, keys);
+			return keys;
+		}
+		return null;
+	}
+
+	private static List<Map<String,Object>> limit(Collection<Map<String,Object>> candidates, Predicate filter, int maxrows, int offset) throws JDOException {
+		final List<Map<String,Object>> found = new ArrayList<Map<String,Object>>(maxrows>0 && maxrows<candidates.size() ? maxrows : candidates.size());
+		int skipped = 0;
+		for (Map<String,Object> row : candidates) {
+			if (null==filter || InMemoryPredicate.matches(filter, row)) {
+				if (skipped<offset) {
+					skipped++;
+				} else {
+					found.add(row);
+					if (maxrows>0 && found.size()>=maxrows)
+						break;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * <p>Create a new row map from values keyed by column name.</p>
+	 * Only the columns of the table definition are copied.
+	 * @param values Map&lt;String,Object&gt;
+	 * @return Map&lt;String,Object&gt; Column values keyed by lowercase column name
+	 */
+	Map<String,Object> newRow(Map<String,Object> values) {
+		final Map<String,Object> row = new HashMap<String,Object>(tableDef.getNumberOfColumns()*2);
+		for (ColumnDef cdef : tableDef.getColumns()) {
+			final Object value = values.get(cdef.getName());
+			if (value!=null)
+				row.put(cdef.getName().toLowerCase(), value);
+		}
+		return row;
+	}
+
+}
@@ -0,0 +1,290 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUnsupportedOptionException;
+import javax.jdo.JDOUserException;
+import javax.jdo.metadata.ColumnMetadata;
+
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.IndexDef;
+import org.judal.metadata.JoinType;
+import org.judal.metadata.NameAlias;
+import org.judal.metadata.NonUniqueIndexDef;
+import org.judal.metadata.SchemaMetaData;
+import org.judal.metadata.TableDef;
+import org.judal.metadata.UniqueIndexDef;
+import org.judal.metadata.ViewDef;
+import org.judal.storage.FieldHelper;
+import org.judal.storage.Pair;
+import org.judal.storage.table.IndexableView;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.TableDataSource;
+
+/**
+ * <p>In-memory implementation of TableDataSource.</p>
+ * Tables are created from the TableDef given to createTable() or, for tables
+ * declared at the schema metadata, the first time that they are opened.
+ * Each column indexed at the TableDef gets a hash or skip list index.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class InMemoryTableDataSource extends InMemoryDataSource implements TableDataSource {
+
+	private final Map<String,InMemoryTableData> tables;
+
+	/**
+	 * @param properties Map&lt;String,String&gt;
+	 */
+	public InMemoryTableDataSource(Map<String,String> properties) {
+		super(properties);
+		tables = new ConcurrentHashMap<String,InMemoryTableData>();
+	}
+
+	/**
+	 * @param properties Map&lt;String,String&gt;
+	 * @param metaData SchemaMetaData
+	 * @throws JDOException
+	 */
+	public InMemoryTableDataSource(Map<String, String> properties, SchemaMetaData metaData) throws JDOException {
+		super(properties, metaData);
+		tables = new ConcurrentHashMap<String,InMemoryTableData>();
+	}
+
+	/**
+	 * Check whether a Bucket or Table with the given name exists
+	 * @param objectName String Bucket or Table Name
+	 * @param objectType String Must have value "U"
+	 * @return boolean
+	 */
+	@Override
+	public boolean exists(String objectName, String objectType) throws JDOException {
+		if (objectType.equals("U") && tables.containsKey(objectName.toLowerCase()))
+			return true;
+		else
+			return super.exists(objectName, objectType);
+	}
+
+	/**
+	 * In Memory does not support transactions. This method will always return <b>false</b>
+	 * @return boolean
+	 */
+	@Override
+	public boolean inTransaction() throws JDOException {
+		return false;
+	}
+
+	// --------------------------------------------------------------------------
+
+	@Override
+	public TableDef getTableDef(String tableName) throws JDOException {
+		return getMetaData().getTable(tableName);
+	}
+
+	/**
+	 * In Memory does not support views. This method will always raise JDOUnsupportedOptionException
+	 * @throws JDOUnsupportedOptionException
+	 */
+	@Override
+	public ViewDef getViewDef(String viewName) throws JDOException {
+		throw new JDOUnsupportedOptionException("InMemoryTableDataSource does not support views");
+	}
+
+	@Override
+	public TableDef getTableOrViewDef(String objectName) throws JDOException {
+		return getTableDef(objectName);
+	}
+
+	@Override
+	public ColumnDef createColumnDef(String columnName, int position, short colType, Map<String,Object> options) throws JDOException {
+		if (options==null) {
+			return new ColumnDef(columnName, position, colType);
+		} else {
+			int colLen = options.containsKey(ColumnDef.OPTION_LENGTH) ? Integer.parseInt(options.get(ColumnDef.OPTION_LENGTH).toString()) : ColumnDef.getDefaultPrecision(colType);
+			boolean nullable = options.containsKey(ColumnDef.OPTION_NULLABLE) ? Boolean.parseBoolean(options.get(ColumnDef.OPTION_NULLABLE).toString()) : true;
+			boolean isPk = options.containsKey(ColumnDef.OPTION_PRIMARYKEY) ? Boolean.parseBoolean(options.get(ColumnDef.OPTION_PRIMARYKEY).toString()) : false;
+			return new ColumnDef(position, "", columnName, colType, colLen, nullable, null, null, null, options.get(ColumnDef.OPTION_DEFAULT_VALUE), isPk);
+		}
+	}
+
+	/**
+	 * <p>Create a new TableDef.</p>
+	 * The TableDef is not added to the schema metadata until createTable() is called.
+	 * @param tableName String
+	 * @param options Map&lt;String,Object&gt; Unused
+	 * @return InMemoryTableDef
+	 */
+	@Override
+	public TableDef createTableDef(String tableName, Map<String,Object> options) throws JDOException {
+		return new InMemoryTableDef(tableName);
+	}
+
+	/**
+	 * @param indexName String
+	 * @param tableName String
+	 * @param columns Iterable&lt;String&gt; Column names
+	 * @param indexType IndexDef.Type ONE_TO_ONE for a unique index
+	 * @param using IndexDef.Using HASH for a hash index, any other value for a skip list index
+	 * @return IndexDef
+	 * @throws JDOUserException If the table or any of the columns does not exist
+	 */
+	@Override
+	public IndexDef createIndexDef(String indexName, String tableName, Iterable<String> columns, IndexDef.Type indexType, IndexDef.Using using) throws JDOException {
+		final TableDef tableDef = getTableDef(tableName);
+		if (null==tableDef)
+			throw new JDOUserException("Table " + tableName + " not found");
+		List<ColumnMetadata> indexColumns = new ArrayList<ColumnMetadata>();
+		for (String columnName : columns) {
+			ColumnDef cdef = tableDef.getColumnByName(columnName);
+			if (null==cdef)
+				throw new JDOUserException("Column " + columnName + " not found at table " + tableName);
+			indexColumns.add(cdef);
+		}
+		if (indexColumns.isEmpty())
+			throw new JDOUserException("No columns specified for index " + indexName + " on table " + tableName);
+		final ColumnMetadata[] indexColumnsArray = indexColumns.toArray(new ColumnMetadata[indexColumns.size()]);
+		if (IndexDef.Type.ONE_TO_ONE.equals(indexType))
+			return new UniqueIndexDef(tableName, indexName, indexColumnsArray, indexType, using);
+		else
+			return new NonUniqueIndexDef(tableName, indexName, indexColumnsArray, indexType, using);
+	}
+
+	/**
+	 * <p>Create a table and add its TableDef to the schema metadata.</p>
+	 * @param tableDef TableDef
+	 * @param options Map&lt;String,Object&gt; Unused
+	 * @throws JDOUserException If the table already exists or if it has no primary key
+	 */
+	@Override
+	public void createTable(TableDef tableDef, Map<String,Object> options) throws JDOException {
+		final String tableName = tableDef.getName().toLowerCase();
+		synchronized (tables) {
+			if (tables.containsKey(tableName))
+				throw new JDOUserException("Table " + tableDef.getName() + " already exists");
+			InMemoryTableData tableData = new InMemoryTableData(tableDef);
+			if (!getMetaData().containsTable(tableDef.getName()))
+				getMetaData().addTable(tableDef, null);
+			tables.put(tableName, tableData);
+		}
+	}
+
+	/**
+	 * <p>Drop a table and remove its TableDef from the schema metadata.</p>
+	 * If the table does not exist then nothing is done.
+	 * @param tableName String
+	 * @param cascade boolean Unused
+	 */
+	@Override
+	public void dropTable(String tableName, boolean cascade) throws JDOException {
+		synchronized (tables) {
+			tables.remove(tableName.toLowerCase());
+			if (getMetaData().containsTable(tableName))
+				getMetaData().removeTable(tableName, null);
+		}
+	}
+
+	/**
+	 * Delete all rows of a table.
+	 * @param tableName String
+	 * @param cascade boolean Unused
+	 * @throws JDOException If the table does not exist
+	 */
+	@Override
+	public void truncateTable(String tableName, boolean cascade) throws JDOException {
+		getTableData(tableName).truncate();
+	}
+
+	private InMemoryTableData getTableData(String tableName) throws JDOException {
+		InMemoryTableData tableData = tables.get(tableName.toLowerCase());
+		if (null==tableData) {
+			synchronized (tables) {
+				tableData = tables.get(tableName.toLowerCase());
+				if (null==tableData) {
+					final TableDef tableDef = getMetaData().getTable(tableName);
+					if (null==tableDef)
+						throw new JDOException("Table " + tableName + " does not exist");
+					tableData = new InMemoryTableData(tableDef);
+					tables.put(tableName.toLowerCase(), tableData);
+				}
+			}
+		}
+		return tableData;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * @param recordInstance Record
+	 * @return InMemoryTable
+	 * @throws JDOException If the table does not exist
+	 */
+	@Override
+	public InMemoryTable openTable(Record recordInstance) throws JDOException {
+		return new InMemoryTable(this, getTableData(recordInstance.getTableName()), recordInstance);
+	}
+
+	/**
+	 * @param recordInstance Record
+	 * @return InMemoryTable
+	 * @throws JDOException If the table does not exist
+	 */
+	@Override
+	public InMemoryTable openIndexedTable(Record recordInstance) throws JDOException {
+		return openTable(recordInstance);
+	}
+
+	/**
+	 * @param recordInstance Record
+	 * @return InMemoryTable
+	 * @throws JDOException If the table does not exist
+	 */
+	@Override
+	public InMemoryTable openView(Record recordInstance) throws JDOException {
+		return openTable(recordInstance);
+	}
+
+	/**
+	 * @param recordInstance Record
+	 * @return InMemoryTable
+	 * @throws JDOException If the table does not exist
+	 */
+	@Override
+	public InMemoryTable openIndexedView(Record recordInstance) throws JDOException {
+		return openTable(recordInstance);
+	}
+
+	/**
+	 * Joins are not supported by In Memory. This method will always raise JDOUnsupportedOptionException
+	 * @throws JDOUnsupportedOptionException
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public IndexableView openJoinView(JoinType joinType, Record result, NameAlias baseTable, NameAlias joinedTable, Pair<String,String>... onColumns) throws JDOException {
+		throw new JDOUnsupportedOptionException("InMemoryTableDataSource does not support join views");
+	}
+
+	/**
+	 * @return This method always returns <b>null</b>
+	 */
+	@Override
+	public FieldHelper getFieldHelper() throws JDOException {
+		return null;
+	}
+
+}
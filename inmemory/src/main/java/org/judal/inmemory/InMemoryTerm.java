@@ -0,0 +1,90 @@
+package org.judal.inmemory;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Collection;
+
+import org.judal.storage.query.Term;
+
+/**
+ * <p>Term of a predicate evaluated against the rows of an in-memory table.</p>
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class InMemoryTerm extends Term {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param columnName String
+	 * @param operator String Operator.ISNULL or Operator.ISNOTNULL
+	 */
+	public InMemoryTerm(String columnName, String operator) {
+		super(columnName, operator);
+	}
+
+	/**
+	 * @param columnName String
+	 * @param operator String One of org.judal.storage.query.Operator constants
+	 * @param columnValue Object Value or array of values for IN, NOT IN, BETWEEN and NOT BETWEEN
+	 */
+	public InMemoryTerm(String columnName, String operator, Object columnValue) {
+		super(columnName, operator, columnValue);
+	}
+
+	/**
+	 * @param columnName String
+	 * @param operator String Operator.IN, Operator.NOTIN, Operator.BETWEEN or Operator.NOTBETWEEN
+	 * @param columnValues Collection&lt;Object&gt;
+	 */
+	public InMemoryTerm(String columnName, String operator, Collection<Object> columnValues) {
+		super(columnName, operator, columnValues);
+	}
+
+	private InMemoryTerm() {
+	}
+
+	/**
+	 * @return This method always returns <b>null</b>
+	 */
+	@Override
+	public String getTableName() {
+		return null;
+	}
+
+	@Override
+	public InMemoryTerm clone() {
+		InMemoryTerm theClone = new InMemoryTerm();
+		theClone.clone(this);
+		return theClone;
+	}
+
+	@Override
+	public String getText() {
+		return replaceParamaters(getTextParametrized());
+	}
+
+	@Override
+	public String getTextParametrized() {
+		StringBuilder text = new StringBuilder();
+		text.append(getColumnName()).append(" ").append(getOperator());
+		if (getValueCount()>0) {
+			text.append(" (");
+			for (int v=0; v<getValueCount(); v++)
+				text.append(v==0 ? "?" : ",?");
+			text.append(")");
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.judal.inmemory.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Map;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUserException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import org.judal.inmemory.InMemoryEngine;
+import org.judal.inmemory.InMemoryAndPredicate;
+import org.judal.inmemory.InMemoryOrPredicate;
+import org.judal.inmemory.InMemoryTable;
+import org.judal.inmemory.InMemoryTableDataSource;
+import org.judal.metadata.IndexDef.Using;
+import org.judal.storage.EngineFactory;
+import org.judal.storage.Param;
+import org.judal.storage.java.test.AbstractTableTest;
+import org.judal.storage.java.test.ArrayRecord1;
+import org.judal.storage.java.test.ArrayRecord2;
+import org.judal.storage.table.ColumnGroup;
+import org.judal.storage.table.RecordSet;
+import org.judal.storage.table.TableDataSource;
+
+import static org.judal.storage.query.Operator.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestInMemoryAsTable extends AbstractTableTest {
+
+	public TestInMemoryAsTable() {
+		super(ArrayRecord1.class, ArrayRecord2.class);
+	}
+
+	private static Map<String,String> properties;
+	private static InMemoryTableDataSource dts;
+
+	@BeforeClass
+	public static void init() throws ClassNotFoundException, JDOException, IOException {
+		properties = new TestInMemory().getTestProperties();
+		InMemoryEngine ime = new InMemoryEngine();
+		EngineFactory.registerEngine(EngineFactory.NAME_INMEMORY, ime.getClass().getName());
+		dts = (InMemoryTableDataSource) ime.getDataSource(properties);
+	}
+
+	@AfterClass
+	public static void cleanup() throws JDOException {
+		if (dts!=null) dts.close();
+	}
+
+	@Override
+	public TableDataSource getTableDataSource() throws JDOException {
+		return dts;
+	}
+
+	@Test
+	public void test01IndexedFetch() throws JDOException, InstantiationException, IllegalAccessException {
+		ArrayRecord1.dataSource = dts;
+		createTable1(dts);
+		createRecords1(dts);
+		assertTrue(dts.exists(ArrayRecord1.tableName, "U"));
+
+		try (InMemoryTable tbl = dts.openIndexedTable(new ArrayRecord1())) {
+			assertEquals(5l, tbl.count(null, null));
+
+			RecordSet<ArrayRecord1> found = tbl.fetch(null, "name", "Peter Scott");
+			assertEquals(1, found.size());
+			assertEquals(Integer.valueOf(3), found.get(0).getId());
+
+			assertEquals(3l, tbl.count("amount", new BigDecimal("0.00")));
+			assertEquals(3l, tbl.count("amount", Integer.valueOf(0)));
+			assertEquals(0l, tbl.count("amount", new BigDecimal("1")));
+
+			found = tbl.fetch(new ColumnGroup("id","name"), "id", Integer.valueOf(2), Integer.valueOf(4));
+			assertEquals(3, found.size());
+			for (int r=0; r<3; r++)
+				assertEquals(Integer.valueOf(r+2), found.get(r).getId());
+			assertTrue(found.get(0).isNull("amount"));
+
+			found = tbl.fetch(null, "amount", null, BigDecimal.ZERO);
+			assertEquals(4, found.size());
+			assertEquals(new BigDecimal("-101"), found.get(0).getDecimal("amount"));
+
+			found = tbl.fetch(null, "amount", new BigDecimal("1"), new BigDecimal("-1"));
+			assertEquals(0, found.size());
+
+			found = tbl.fetch(null, 2, 1, new Param("amount", Types.NUMERIC, 1, BigDecimal.ZERO));
+			assertEquals(2, found.size());
+		}
+	}
+
+	@Test
+	public void test02Predicate() throws Exception {
+		ArrayRecord1.dataSource = dts;
+		try (InMemoryTable tbl = dts.openIndexedTable(new ArrayRecord1())) {
+			InMemoryAndPredicate startsWithP = new InMemoryAndPredicate();
+			startsWithP.add("name", LIKE, "P%");
+			assertEquals(2l, tbl.count(startsWithP));
+			startsWithP.add("amount", GTE, BigDecimal.ZERO);
+			assertEquals(2, tbl.fetch(null, startsWithP, 0, 0).size());
+
+			InMemoryOrPredicate firstOrLast = new InMemoryOrPredicate();
+			firstOrLast.add("id", EQ, Integer.valueOf(1));
+			firstOrLast.add("id", IN, new Object[]{Integer.valueOf(5), Integer.valueOf(6)});
+			RecordSet<ArrayRecord1> found = tbl.fetch(null, firstOrLast, 0, 0);
+			assertEquals(2, found.size());
+			assertEquals(Integer.valueOf(1), found.get(0).getId());
+			assertEquals(Integer.valueOf(5), found.get(1).getId());
+
+			InMemoryAndPredicate noLocation = new InMemoryAndPredicate();
+			noLocation.add("description", ISNULL);
+			assertEquals(5l, tbl.count(noLocation));
+		}
+	}
+
+	@Test
+	public void test03IndexMaintenance() throws JDOException {
+		ArrayRecord1.dataSource = dts;
+		try (InMemoryTable tbl = dts.openIndexedTable(new ArrayRecord1())) {
+			ArrayRecord1 rec = new ArrayRecord1();
+			assertTrue(tbl.load(Integer.valueOf(3), rec));
+			rec.setName("Peter Scott Jr.");
+			rec.put("amount", new BigDecimal("12.50"));
+			tbl.store(rec);
+			assertEquals(0l, tbl.count("name", "Peter Scott"));
+			assertEquals(1l, tbl.count("name", "Peter Scott Jr."));
+			assertEquals(2l, tbl.count("amount", BigDecimal.ZERO));
+
+			tbl.delete(Integer.valueOf(2));
+			assertFalse(tbl.exists(Integer.valueOf(2)));
+			assertEquals(0l, tbl.count("name", "Paul Browm"));
+			assertEquals(1l, tbl.count("amount", BigDecimal.ZERO));
+
+			assertEquals(1, tbl.update(new Param[]{new Param("location", 1, "Here")}, new Param[]{new Param("name", 1, "Adam Nichols")}));
+			assertEquals(2l, tbl.count("location", "Here"));
+
+			try {
+				tbl.createIndex("ix_location", true, Using.HASH, "location");
+				fail("Expected JDOUserException because location is not unique");
+			} catch (JDOUserException expected) { }
+		}
+
+		try (InMemoryTable tbl = dts.openIndexedTable(new ArrayRecord1())) {
+			assertEquals(1, tbl.delete(new Param[]{new Param("name", 1, "Adam Nichols")}));
+			tbl.createIndex("ix_location", true, Using.HASH, "location");
+			assertEquals(1l, tbl.count("location", "Here"));
+			try {
+				tbl.insert(new Param("id", 1, Integer.valueOf(6)), new Param("name", 2, "Jane Doe"), new Param("location", 3, "Here"));
+				fail("Expected JDOUserException because of duplicated location");
+			} catch (JDOUserException expected) { }
+			assertFalse(tbl.exists(Integer.valueOf(6)));
+			tbl.dropIndex("ix_location");
+			tbl.insert(new Param("id", 1, Integer.valueOf(6)), new Param("name", 2, "Jane Doe"), new Param("location", 3, "Here"));
+			assertEquals(2l, tbl.count("location", "Here"));
+		}
+
+		dts.truncateTable(ArrayRecord1.tableName, false);
+		try (InMemoryTable tbl = dts.openIndexedTable(new ArrayRecord1())) {
+			assertEquals(0l, tbl.count(null, null));
+			assertEquals(0l, tbl.count("name", "Jane Doe"));
+		}
+
+		dts.dropTable(ArrayRecord1.tableName, false);
+		assertFalse(dts.exists(ArrayRecord1.tableName, "U"));
+	}
+
+}
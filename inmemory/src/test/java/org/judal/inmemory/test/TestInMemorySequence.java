@@ -0,0 +1,201 @@
+package org.judal.inmemory.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.jdo.datastore.Sequence;
+
+import org.judal.inmemory.InMemorySequence;
+import org.judal.storage.BlockSequence;
+import org.judal.storage.BlockSequencePool;
+import org.judal.storage.DataSource;
+import org.junit.Test;
+
+/**
+ * Take values from BlockSequence instances that wrap an InMemorySequence.
+ */
+public class TestInMemorySequence {
+
+	/**
+	 * InMemorySequence which writes down the blocks given back to it
+	 */
+	private static class ReleaseRecordingSequence extends InMemorySequence {
+
+		final List<long[]> released = new ArrayList<long[]>();
+		final List<Integer> used = new ArrayList<Integer>();
+
+		ReleaseRecordingSequence(String name) {
+			super(name, 0l);
+		}
+
+		@Override
+		public boolean releaseBlock(long[] block, int usedCount) {
+			released.add(block);
+			used.add(usedCount);
+			return super.releaseBlock(block, usedCount);
+		}
+	}
+
+	@Test
+	public void test01UniqueUnderConcurrency() throws InterruptedException {
+		final int threadCount = 8;
+		final int valuesPerThread = 20000;
+		final InMemorySequence seq = new InMemorySequence("seq01", 0l);
+		final BlockSequence blocks = new BlockSequence(seq, 100);
+		final Set<Long> values = Collections.newSetFromMap(new ConcurrentHashMap<Long,Boolean>());
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		Thread[] threads = new Thread[threadCount];
+		for (int t=0; t<threadCount; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int v=0; v<valuesPerThread; v++)
+							if (!values.add(blocks.nextValue()))
+								throw new AssertionError("Duplicated value");
+					} catch (Throwable xcpt) {
+						failures.add(xcpt);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join(60000l);
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(threadCount * valuesPerThread, values.size());
+
+		// Every value was used so closing gives nothing back and the values handed out have no gaps
+		blocks.close();
+		assertEquals(threadCount * valuesPerThread, seq.currentValue());
+		assertEquals(Long.valueOf(1l), Collections.min(values));
+		assertEquals(Long.valueOf(threadCount * valuesPerThread), Collections.max(values));
+	}
+
+	@Test
+	public void test02AllocateEnlargesNextBlock() {
+		final InMemorySequence seq = new InMemorySequence("seq02", 0l);
+		final BlockSequence blocks = new BlockSequence(seq, 10);
+		assertEquals(1l, blocks.nextValue());
+		assertEquals(10l, seq.currentValue());
+		assertEquals(9, blocks.remaining());
+
+		// The current block is not changed, the next one has the requested size and the one after that the default size again
+		blocks.allocate(50);
+		for (long v=2l; v<=10l; v++)
+			assertEquals(v, blocks.nextValue());
+		assertEquals(0, blocks.remaining());
+		assertEquals(11l, blocks.nextValue());
+		assertEquals(60l, seq.currentValue());
+		assertEquals(49, blocks.remaining());
+		for (long v=12l; v<=60l; v++)
+			assertEquals(v, blocks.nextValue());
+		assertEquals(61l, blocks.nextValue());
+		assertEquals(70l, seq.currentValue());
+
+		// Smaller requests than the block size do not shrink blocks
+		blocks.allocate(5);
+		for (long v=62l; v<=71l; v++)
+			assertEquals(v, blocks.nextValue());
+		assertEquals(80l, seq.currentValue());
+		assertEquals(71l, blocks.currentValue());
+		blocks.close();
+	}
+
+	@Test
+	public void test03CloseReleasesTail() {
+		final ReleaseRecordingSequence seq = new ReleaseRecordingSequence("seq03");
+		final BlockSequence blocks = new BlockSequence(seq, 10);
+		assertEquals(1l, blocks.nextValue());
+		assertEquals(2l, blocks.nextValue());
+		assertEquals(3l, blocks.nextValue());
+		blocks.close();
+
+		// The seven values not used are given back and the data store sequence goes on from the last one used
+		assertEquals(1, seq.released.size());
+		assertArrayEquals(new long[]{1l, 2l, 3l, 4l, 5l, 6l, 7l, 8l, 9l, 10l}, seq.released.get(0));
+		assertEquals(Integer.valueOf(3), seq.used.get(0));
+		assertEquals(3l, seq.currentValue());
+		assertEquals(4l, seq.nextValue());
+		assertEquals(0, blocks.remaining());
+		try {
+			blocks.nextValue();
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException expected) { }
+
+		// Closing twice does nothing
+		blocks.close();
+		assertEquals(1, seq.released.size());
+
+		// If the data store sequence moved on since the block was reserved the tail is left as a gap
+		final BlockSequence other = new BlockSequence(seq, 10);
+		assertEquals(5l, other.nextValue());
+		assertEquals(15l, seq.nextValue());
+		other.close();
+		assertEquals(2, seq.released.size());
+		assertEquals(15l, seq.currentValue());
+		try {
+			other.nextValue();
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException expected) { }
+	}
+
+	@Test
+	public void test04Pool() {
+		Map<String,String> props = new HashMap<String,String>();
+		props.put(DataSource.SEQUENCE_BLOCK_SIZE, "20");
+		BlockSequencePool pool = BlockSequencePool.forProperties(props);
+		assertEquals(20, pool.getBlockSize());
+
+		// The first sequence given for a name is wrapped and shared whatever the case of the name
+		final InMemorySequence seq = new InMemorySequence("Seq04", 0l);
+		Sequence shared = pool.get(seq);
+		assertTrue(shared instanceof BlockSequence);
+		assertSame(seq, ((BlockSequence) shared).getSequence());
+		assertEquals(20, ((BlockSequence) shared).getBlockSize());
+		assertSame(shared, pool.get(seq));
+		assertSame(shared, pool.get(new InMemorySequence("SEQ04", 0l)));
+		assertSame(shared, pool.get(new InMemorySequence("seq04", 0l)));
+		assertNotSame(shared, pool.get(new InMemorySequence("seq04b", 0l)));
+
+		assertEquals(1l, shared.nextValue());
+		assertEquals(20l, seq.currentValue());
+		pool.close();
+		assertEquals(1l, seq.currentValue());
+		try {
+			shared.nextValue();
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException expected) { }
+
+		// With a block size of one sequences are not wrapped
+		props.remove(DataSource.SEQUENCE_BLOCK_SIZE);
+		BlockSequencePool bare = BlockSequencePool.forProperties(props);
+		assertEquals(1, bare.getBlockSize());
+		assertSame(seq, bare.get(seq));
+		bare.close();
+
+		try {
+			new BlockSequencePool(0);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) { }
+	}
+
+}
@@ -14,9 +14,6 @@ package org.judal.storage.java;
 
 import java.io.Serializable;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,16 +28,24 @@ import javax.jdo.JDOUnsupportedOptionException;
 import org.judal.metadata.ViewDef;
 import org.judal.storage.ConstraintsChecker;
 import org.judal.storage.FieldHelper;
+import org.judal.storage.java.internal.PojoAccessor;
 import org.judal.storage.table.TableDataSource;
 import org.judal.storage.table.impl.AbstractRecord;
 
 import com.knowgate.dateutils.DateHelper;
 
+/**
+ * <p>Record whose columns are the persistent fields of a subclass.</p>
+ * Persistent fields are the non static, non final and non transient fields declared by the subclass.
+ * Fields are read and written through a PojoAccessor shared by all the instances of the same class.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
 public class PojoRecord extends AbstractRecord implements JavaRecord {
 
 	private static final long serialVersionUID = 10000L;
 
-	private ArrayList<Field> persistentFields;
+	private transient PojoAccessor accessor;
 	
 	public PojoRecord(ViewDef tableDefinition) {
 		this(tableDefinition, null, null);
@@ -56,7 +61,7 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 	
 	public PojoRecord(ViewDef tableDefinition, FieldHelper fieldHelper, ConstraintsChecker constraintsChecker) {
 		super(tableDefinition, fieldHelper, constraintsChecker);
-		persistentFields =  null;
+		accessor =  null;
 	}
 	
 	public PojoRecord(TableDataSource dataSource, String tableName) throws JDOException {
@@ -73,15 +78,16 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 
 	public PojoRecord(TableDataSource dataSource, String tableName, FieldHelper fieldHelper, ConstraintsChecker constraintsChecker) throws JDOException {
 		super(dataSource, tableName, fieldHelper, constraintsChecker);
-		persistentFields =  null;
+		accessor =  null;
 	}
 
 	@Override
 	public Map<String, Object> asMap() {
-		ArrayList<Field> fields = getPersistentFields();
-		HashMap<String,Object> retval = new HashMap<>(fields.size()*2);
-		for (Field fld : fields)
-			retval.put(fld.getName(), get(fld.getName()));
+		final PojoAccessor fields = getAccessor();
+		final int count = fields.size();
+		HashMap<String,Object> retval = new HashMap<>(count*2);
+		for (int f=0; f<count; f++)
+			retval.put(fields.name(f), fields.get(this, f));
 		return retval;
 	}
 
@@ -93,21 +99,13 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 	@Override
 	@SuppressWarnings("unchecked")
 	public java.util.Map.Entry<String, Object>[] asEntries() {
-		return entrySet().toArray(new java.util.Map.Entry[getPersistentFields().size()]);
+		return entrySet().toArray(new java.util.Map.Entry[getAccessor().size()]);
 	}
 	
-	private ArrayList<Field> getPersistentFields() {
-		if (null==persistentFields) {
-			Field[] declaredFields = getClass().getDeclaredFields();
-			persistentFields = new ArrayList<>(declaredFields.length);
-			for (Field fld : declaredFields) {
-				final int mods = fld.getModifiers();
-				if (!Modifier.isFinal(mods) && !Modifier.isTransient(mods) && !Modifier.isStatic(mods)) {
-					persistentFields.add(fld);					
-				}
-			}
-		}
-		return persistentFields;
+	private PojoAccessor getAccessor() {
+		if (null==accessor)
+			accessor = PojoAccessor.forClass(getClass());
+		return accessor;
 	}
 
 	/**
@@ -119,30 +117,29 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 	 */	
 	@Override
 	public Object put(int colpos, Object obj) throws IllegalArgumentException {
-		Field fld = getPersistentFields().get(colpos-1);
-		Object formerValue = null;
+		final PojoAccessor fields = getAccessor();
+		if (colpos<1 || colpos>fields.size())
+			throw new ArrayIndexOutOfBoundsException("PojoRecord.put() column position " + colpos + " out of bounds");
+		Object formerValue = fields.get(this, colpos-1);
 		try {
-			final boolean accesible = fld.isAccessible();
-			fld.setAccessible(true);
-			formerValue = fld.get(this);
-			castAndSet(fld, obj);
-			fld.setAccessible(accesible);
-		} catch (IllegalAccessException neverthrown) { }
+			castAndSet(colpos-1, obj);
+		} catch (ClassCastException | NullPointerException e) {
+			throw new IllegalArgumentException("PojoRecord.put("+colpos+","+obj+") " + e.getClass().getName() + " " + e.getMessage(), e);
+		}
 		return formerValue;
 	}
 
 	@Override
 	public Object put(String colname, byte[] bytearray) throws IllegalArgumentException {
 		Object formerValue = null;
-		for (Field fld : getPersistentFields()) {
-			if (fld.getName().equalsIgnoreCase(colname)) {
-				try {
-					final boolean accesible = fld.isAccessible();
-					fld.setAccessible(true);
-					formerValue = fld.get(this);
-					fld.set(this, bytearray);
-					fld.setAccessible(accesible);
-				} catch (IllegalAccessException neverthrown) { }
+		final PojoAccessor fields = getAccessor();
+		final int slot = fields.slot(colname);
+		if (slot>=0) {
+			formerValue = fields.get(this, slot);
+			try {
+				fields.set(this, slot, bytearray);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("PojoRecord.put("+colname+",byte[]) " + e.getMessage(), e);
 			}
 		}
 		return formerValue;
@@ -150,7 +147,7 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 
 	@Override
 	public int size() {
-		return getPersistentFields().size();
+		return getAccessor().size();
 	}
 
 	@Override
@@ -169,75 +166,71 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 
 	@Override
 	public boolean containsKey(Object colname) {
-		String columnName = (String) colname;
-		for (Field fld : getPersistentFields())
-			if (fld.getName().equalsIgnoreCase(columnName))
-				return true;
-		return false;
+		return getAccessor().slot((String) colname)>=0;
 	}
 
 	@Override
 	public boolean containsValue(Object obj) {
-		if (obj==null) {
-			for (Field fld : getPersistentFields())
-				if (get(fld.getName())==null)
-					return true;
-			return false;
-		} else {
-			for (Field fld : getPersistentFields())
-				if (obj.equals(get(fld.getName())))
-					return true;
-			return false;
+		final PojoAccessor fields = getAccessor();
+		final int count = fields.size();
+		for (int f=0; f<count; f++) {
+			Object value = fields.get(this, f);
+			if (obj==null ? value==null : obj.equals(value))
+				return true;
 		}
+		return false;
 	}
 
 	@Override
 	public Object get(Object colname) throws JDOUserException {
-		Object retval = null;
-		String columnName = (String) colname;
-		Field col = null;
-		
-		for (Field fld : getPersistentFields()) {
-			if (fld.getName().equalsIgnoreCase(columnName)) {
-				col = fld;
-				break;
-			}
-		}
-		if (null!=col) {
-			final boolean accesible = col.isAccessible();
-			col.setAccessible(true);
-			Class<?> ctype = col.getType();
-			try {				
-				if (ctype==null) {
-					throw new JDOUserException("PojoRecord.get() cannot determine type of column "+ columnName);
-				}
-				if (ctype.equals(String.class))
-					retval = col.get(this);
-				else if (ctype.equals(boolean.class))
-					retval = col.getBoolean(this);
-				else if (ctype.equals(short.class))
-					retval = col.getShort(this);		
-				else if (ctype.equals(int.class))
-					retval = col.getInt(this);		
-				else if (ctype.equals(long.class))
-					retval = col.getLong(this);		
-				else if (ctype.equals(float.class))
-					retval = col.getFloat(this);		
-				else if (ctype.equals(double.class))
-					retval = col.getDouble(this);
-				else if (ctype.equals(byte.class))
-					retval = col.getByte(this);
-				else if (ctype.equals(char.class))
-					retval = col.getByte(this);
-				else
-					retval = col.get(this);
-			} catch (IllegalArgumentException | IllegalAccessException e) {
-				try { col.setAccessible(accesible); } catch (Exception ignore) { }
-				throw new JDOUserException("PojoRecord.get("+colname+")");
-			}
-		} else {
-		}
-		return retval;
+		final PojoAccessor fields = getAccessor();
+		final int slot = fields.slot((String) colname);
+		return slot<0 ? null : fields.get(this, slot);
+	}
+
+	/**
+	 * <p>Get value of column as int.</p>
+	 * int fields are read without boxing. Other fields are converted as in AbstractRecordBase.
+	 * @param sColName String Column Name
+	 * @return int
+	 */
+	@Override
+	public int getInt(String sColName) throws NullPointerException,ClassCastException,NumberFormatException {
+		final PojoAccessor fields = getAccessor();
+		final int slot = fields.slot(sColName);
+		if (slot>=0 && int.class.equals(fields.type(slot)))
+			return fields.getInt(this, slot);
+		return super.getInt(sColName);
+	}
+
+	/**
+	 * <p>Get value of column as long.</p>
+	 * long fields are read without boxing. Other fields are converted as in AbstractRecordBase.
+	 * @param sColName String Column Name
+	 * @return long
+	 */
+	@Override
+	public long getLong(String sColName) throws NullPointerException,NumberFormatException {
+		final PojoAccessor fields = getAccessor();
+		final int slot = fields.slot(sColName);
+		if (slot>=0 && long.class.equals(fields.type(slot)))
+			return fields.getLong(this, slot);
+		return super.getLong(sColName);
+	}
+
+	/**
+	 * <p>Get value of column as double.</p>
+	 * double fields are read without boxing. Other fields are converted as in AbstractRecordBase.
+	 * @param sColName String Column Name
+	 * @return double
+	 */
+	@Override
+	public double getDouble(String sColName) throws NullPointerException,NumberFormatException,ClassCastException {
+		final PojoAccessor fields = getAccessor();
+		final int slot = fields.slot(sColName);
+		if (slot>=0 && double.class.equals(fields.type(slot)))
+			return fields.getDouble(this, slot);
+		return super.getDouble(sColName);
 	}
 
 	@Override
@@ -252,10 +245,7 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 
 	@Override
 	public Set<String> keySet() {
-		TreeSet<String> keys = new TreeSet<>();
-		for (Field fld : getPersistentFields())
-			keys.add(fld.getName());
-		return keys;
+		return new TreeSet<>(getAccessor().names());
 	}
 
 	@Override
@@ -266,10 +256,11 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 
 	@Override
 	public Collection<Object> values() {
-		ArrayList<Field> fields = getPersistentFields();
-		ArrayList<Object> vals = new ArrayList<Object>(fields.size());
-		for (Field fld : fields)
-			vals.add(get(fld.getName()));
+		final PojoAccessor fields = getAccessor();
+		final int count = fields.size();
+		ArrayList<Object> vals = new ArrayList<Object>(count);
+		for (int f=0; f<count; f++)
+			vals.add(fields.get(this, f));
 		return vals;
 	}
 
@@ -281,26 +272,22 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 	@Override
 	public Object put(String colname, Object value) {
 		Object retval = null;
-		String columnName = (String) colname;
-		for (Field fld : getPersistentFields()) {
-			if (fld.getName().equalsIgnoreCase(columnName)) {
-				retval = get(colname);
-				try {
-					final boolean accesible = fld.isAccessible();
-					fld.setAccessible(true);
-					castAndSet(fld, value);
-					fld.setAccessible(accesible);
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new JDOUserException("PojoRecord.put("+colname+","+value+") " + e.getClass().getName() + " " + e.getMessage());
-				}
-				break;
+		final PojoAccessor fields = getAccessor();
+		final int slot = fields.slot(colname);
+		if (slot>=0) {
+			retval = fields.get(this, slot);
+			try {
+				castAndSet(slot, value);
+			} catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+				throw new JDOUserException("PojoRecord.put("+colname+","+value+") " + e.getClass().getName() + " " + e.getMessage());
 			}
 		}
 		return retval;
 	}
 
-	private void castAndSet(Field fld, Object value) throws IllegalArgumentException, IllegalAccessException, ClassCastException {
-		Class<?> cls = fld.getType();
+	private void castAndSet(int slot, Object value) throws IllegalArgumentException, ClassCastException, NullPointerException {
+		final PojoAccessor fields = getAccessor();
+		Class<?> cls = fields.type(slot);
 		Object castedValue = value;
 		if (java.util.Date.class.equals(cls))
 			castedValue = DateHelper.toDate(value);
@@ -310,7 +297,7 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 			castedValue = DateHelper.toTimestamp(value);
 		else if (java.sql.Date.class.equals(cls))
 			castedValue = DateHelper.toSQLDate(value);
-		fld.set(this, castedValue);
+		fields.set(this, slot, castedValue);
 	}
 	
 
@@ -326,34 +313,10 @@ public class PojoRecord extends AbstractRecord implements JavaRecord {
 	
 	@Override
 	public void clear() {
-		for (Field fld : getPersistentFields()) {
-			final boolean accesible = fld.isAccessible();
-			fld.setAccessible(true);
-			Class<?> ctype = fld.getType();
-			try {
-				if (ctype.equals(boolean.class))
-					fld.setBoolean(this, false);
-				else if (ctype.equals(short.class))
-					fld.setShort(this, (short) 0);
-				else if (ctype.equals(int.class))
-					fld.setInt(this, 0);
-				else if (ctype.equals(long.class))
-					fld.setLong(this, 0l);
-				else if (ctype.equals(float.class))
-					fld.setFloat(this, 0f);
-				else if (ctype.equals(double.class))
-					fld.setDouble(this, 0d);
-				else if (ctype.equals(byte.class))
-					fld.setByte(this, (byte) 0);
-				else if (ctype.equals(char.class))
-					fld.setChar(this, (char) 0);
-				else
-					fld.set(this, null);
-			} catch (IllegalArgumentException | IllegalAccessException e) {
-				throw new JDOUserException("PojoRecord.clear() " + e.getClass().getName() + " " + e.getMessage());
-			}
-			fld.setAccessible(accesible);
-		}
+		final PojoAccessor fields = getAccessor();
+		final int count = fields.size();
+		for (int f=0; f<count; f++)
+			fields.reset(this, f);
 	}
 
 }
@@ -0,0 +1,756 @@
+package org.judal.storage.java;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.Serializable;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUserException;
+
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.SelectableDef;
+import org.judal.metadata.ViewDef;
+import org.judal.serialization.BytesConverter;
+import org.judal.storage.ConstraintsChecker;
+import org.judal.storage.FieldHelper;
+import org.judal.storage.table.PrimitiveRecord;
+import org.judal.storage.table.TableDataSource;
+import org.judal.storage.table.impl.AbstractRecord;
+
+import com.knowgate.typeutils.TypeResolver;
+
+/**
+ * <p>Implementation of Record interface using primitive arrays to hold numeric and temporal column values.</p>
+ * TINYINT, SMALLINT, INTEGER, BIGINT, DATE, TIME and TIMESTAMP columns are kept in a long[],
+ * REAL, FLOAT and DOUBLE columns are kept in a double[] and any other column in an Object[].
+ * Null values are tracked with a bitmap. The wrapper class of each value is remembered,
+ * so get() returns a value of the same class that was put, but a new instance of it.
+ * Dates are returned as new objects, so modifying a returned Date does not change the record.
+ * Timestamps with sub-millisecond nanoseconds and values of any other class are kept as Objects.
+ * Instances of this class are filled without boxing by SQL queries and by Berkeley DB tables.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class PrimitiveArrayRecord extends AbstractRecord implements JavaRecord, PrimitiveRecord {
+
+	private static final long serialVersionUID = 10000l;
+
+	private static final byte KIND_OBJECT = 0;
+	private static final byte KIND_BYTE = 1;
+	private static final byte KIND_SHORT = 2;
+	private static final byte KIND_INT = 3;
+	private static final byte KIND_LONG = 4;
+	private static final byte KIND_FLOAT = 5;
+	private static final byte KIND_DOUBLE = 6;
+	private static final byte KIND_DATE = 7;
+	private static final byte KIND_SQLDATE = 8;
+	private static final byte KIND_TIME = 9;
+	private static final byte KIND_TIMESTAMP = 10;
+
+	/**
+	 * Column names, positions and slot types of a ViewDef, shared by all the records of the same table
+	 */
+	private static final class Layout {
+		final String[] names;
+		final HashMap<String, Integer> positions;
+		final byte[] slotTypes;
+		final byte[] defaultKinds;
+		final boolean hasLongs;
+		final boolean hasDoubles;
+
+		Layout(ColumnDef[] columns) {
+			final int ncols = columns.length;
+			names = new String[ncols];
+			positions = new HashMap<String, Integer>(ncols * 4);
+			slotTypes = new byte[ncols];
+			defaultKinds = new byte[ncols];
+			boolean longs = false, doubles = false;
+			for (int c = 0; c < ncols; c++) {
+				names[c] = columns[c].getName();
+				positions.put(names[c], c + 1);
+				if (!positions.containsKey(names[c].toLowerCase()))
+					positions.put(names[c].toLowerCase(), c + 1);
+				defaultKinds[c] = defaultKind(columns[c].getType());
+				slotTypes[c] = (byte) slotType(defaultKinds[c]);
+				longs |= slotTypes[c] == SLOT_LONG;
+				doubles |= slotTypes[c] == SLOT_DOUBLE;
+			}
+			hasLongs = longs;
+			hasDoubles = doubles;
+		}
+	}
+
+	private static final Map<SelectableDef, Layout> layouts = Collections.synchronizedMap(new WeakHashMap<SelectableDef, Layout>());
+
+	private transient Layout layout;
+	private byte[] kinds;
+	private long[] nulls;
+	private long[] longs;
+	private double[] doubles;
+	private Object[] objects;
+
+	/**
+	 * Constructor
+	 */
+	public PrimitiveArrayRecord(ViewDef tableDefinition) {
+		this(tableDefinition, null, null);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public PrimitiveArrayRecord(ViewDef tableDefinition, FieldHelper fieldHelper) {
+		this(tableDefinition, fieldHelper, null);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public PrimitiveArrayRecord(ViewDef tableDefinition, ConstraintsChecker constraintsChecker) {
+		this(tableDefinition, null, constraintsChecker);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public PrimitiveArrayRecord(ViewDef tableDefinition, FieldHelper fieldHelper, ConstraintsChecker constraintsChecker) {
+		super(tableDefinition, fieldHelper, constraintsChecker);
+		allocate();
+	}
+
+	/**
+	 * Constructor
+	 * @throws JDOException
+	 */
+	public PrimitiveArrayRecord(TableDataSource dataSource, String tableName) throws JDOException {
+		this(dataSource, tableName, null, null);
+	}
+
+	/**
+	 * Constructor
+	 * @throws JDOException
+	 */
+	public PrimitiveArrayRecord(TableDataSource dataSource, String tableName, FieldHelper fieldHelper) throws JDOException {
+		this(dataSource, tableName, fieldHelper, null);
+	}
+
+	/**
+	 * Constructor
+	 * @throws JDOException
+	 */
+	public PrimitiveArrayRecord(TableDataSource dataSource, String tableName, ConstraintsChecker constraintsChecker) throws JDOException {
+		this(dataSource, tableName, null, constraintsChecker);
+	}
+
+	/**
+	 * Constructor
+	 * @throws JDOException
+	 */
+	public PrimitiveArrayRecord(TableDataSource dataSource, String tableName, FieldHelper fieldHelper, ConstraintsChecker constraintsChecker) throws JDOException {
+		super(dataSource, tableName, fieldHelper, constraintsChecker);
+		allocate();
+	}
+
+	private void allocate() {
+		final Layout lay = getLayout();
+		final int ncols = lay.names.length;
+		kinds = Arrays.copyOf(lay.defaultKinds, ncols);
+		nulls = new long[(ncols + 63) >>> 6];
+		Arrays.fill(nulls, -1l);
+		longs = lay.hasLongs ? new long[ncols] : null;
+		doubles = lay.hasDoubles ? new double[ncols] : null;
+		objects = null;
+	}
+
+	private Layout getLayout() {
+		if (null == layout) {
+			final SelectableDef tdef = getTableDef();
+			Layout lay = layouts.get(tdef);
+			if (null == lay || lay.names.length != tdef.getNumberOfColumns()) {
+				lay = new Layout(tdef.getColumns());
+				layouts.put(tdef, lay);
+			}
+			layout = lay;
+		}
+		return layout;
+	}
+
+	private static byte defaultKind(Integer sqlType) {
+		if (null == sqlType)
+			return KIND_OBJECT;
+		switch (sqlType.intValue()) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+			return KIND_SHORT;
+		case Types.INTEGER:
+			return KIND_INT;
+		case Types.BIGINT:
+			return KIND_LONG;
+		case Types.REAL:
+			return KIND_FLOAT;
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return KIND_DOUBLE;
+		case Types.DATE:
+		case Types.TIMESTAMP:
+			return KIND_DATE;
+		case Types.TIME:
+			return KIND_TIME;
+		default:
+			return KIND_OBJECT;
+		}
+	}
+
+	private static int slotType(byte kind) {
+		switch (kind) {
+		case KIND_OBJECT:
+			return SLOT_OBJECT;
+		case KIND_FLOAT:
+		case KIND_DOUBLE:
+			return SLOT_DOUBLE;
+		default:
+			return SLOT_LONG;
+		}
+	}
+
+	// --------------------------------------------------------------------------
+	// Slot access by zero based index
+
+	private boolean isNullSlot(int c) {
+		return (nulls[c >>> 6] & (1l << c)) != 0l;
+	}
+
+	private void setNullSlot(int c) {
+		nulls[c >>> 6] |= (1l << c);
+		kinds[c] = getLayout().defaultKinds[c];
+		if (objects != null)
+			objects[c] = null;
+	}
+
+	private void setLongSlot(int c, long value, byte kind) {
+		longs[c] = value;
+		kinds[c] = kind;
+		nulls[c >>> 6] &= ~(1l << c);
+		if (objects != null)
+			objects[c] = null;
+	}
+
+	private void setDoubleSlot(int c, double value, byte kind) {
+		doubles[c] = value;
+		kinds[c] = kind;
+		nulls[c >>> 6] &= ~(1l << c);
+		if (objects != null)
+			objects[c] = null;
+	}
+
+	private void setObjectSlot(int c, Object value) {
+		if (null == objects)
+			objects = new Object[kinds.length];
+		objects[c] = value;
+		kinds[c] = KIND_OBJECT;
+		nulls[c >>> 6] &= ~(1l << c);
+	}
+
+	private Object getSlot(int c) {
+		if (isNullSlot(c))
+			return null;
+		switch (kinds[c]) {
+		case KIND_BYTE:
+			return Byte.valueOf((byte) longs[c]);
+		case KIND_SHORT:
+			return Short.valueOf((short) longs[c]);
+		case KIND_INT:
+			return Integer.valueOf((int) longs[c]);
+		case KIND_LONG:
+			return Long.valueOf(longs[c]);
+		case KIND_FLOAT:
+			return Float.valueOf((float) doubles[c]);
+		case KIND_DOUBLE:
+			return Double.valueOf(doubles[c]);
+		case KIND_DATE:
+			return new Date(longs[c]);
+		case KIND_SQLDATE:
+			return new java.sql.Date(longs[c]);
+		case KIND_TIME:
+			return new Time(longs[c]);
+		case KIND_TIMESTAMP:
+			return new Timestamp(longs[c]);
+		default:
+			return objects[c];
+		}
+	}
+
+	/**
+	 * Keep value in a primitive slot if its class can be restored from it, else keep it as an Object
+	 */
+	private void setSlot(int c, Object value) {
+		if (null == value) {
+			setNullSlot(c);
+			return;
+		}
+		final byte slot = getLayout().slotTypes[c];
+		final Class<?> cls = value.getClass();
+		if (SLOT_LONG == slot) {
+			if (Integer.class == cls)
+				setLongSlot(c, ((Integer) value).longValue(), KIND_INT);
+			else if (Long.class == cls)
+				setLongSlot(c, ((Long) value).longValue(), KIND_LONG);
+			else if (Short.class == cls)
+				setLongSlot(c, ((Short) value).longValue(), KIND_SHORT);
+			else if (Byte.class == cls)
+				setLongSlot(c, ((Byte) value).longValue(), KIND_BYTE);
+			else if (Date.class == cls)
+				setLongSlot(c, ((Date) value).getTime(), KIND_DATE);
+			else if (Timestamp.class == cls && ((Timestamp) value).getNanos() % 1000000 == 0)
+				setLongSlot(c, ((Timestamp) value).getTime(), KIND_TIMESTAMP);
+			else if (java.sql.Date.class == cls)
+				setLongSlot(c, ((java.sql.Date) value).getTime(), KIND_SQLDATE);
+			else if (Time.class == cls)
+				setLongSlot(c, ((Time) value).getTime(), KIND_TIME);
+			else
+				setObjectSlot(c, value);
+		} else if (SLOT_DOUBLE == slot) {
+			if (Double.class == cls)
+				setDoubleSlot(c, ((Double) value).doubleValue(), KIND_DOUBLE);
+			else if (Float.class == cls)
+				setDoubleSlot(c, ((Float) value).doubleValue(), KIND_FLOAT);
+			else
+				setObjectSlot(c, value);
+		} else {
+			setObjectSlot(c, value);
+		}
+	}
+
+	private int getColumnIndex(String columnName) {
+		if (columnName==null || columnName.length()==0)
+			throw new JDOUserException("PrimitiveArrayRecord.getColumnIndex() column name cannot be "+(columnName==null ? "null" : "empty"));
+		final HashMap<String, Integer> positions = getLayout().positions;
+		Integer position = positions.get(columnName);
+		if (null == position)
+			position = positions.get(columnName.toLowerCase());
+		return null == position ? -1 : position.intValue();
+	}
+
+	private int checkedIndex(String columnName) throws IllegalArgumentException {
+		final int position = getColumnIndex(columnName);
+		if (position < 1)
+			throw new IllegalArgumentException("Column "+columnName+" not found at table "+getTableDef().getName());
+		return position - 1;
+	}
+
+	// --------------------------------------------------------------------------
+	// PrimitiveRecord
+
+	@Override
+	public int getSlotType(int colpos) {
+		return getLayout().slotTypes[colpos-1];
+	}
+
+	@Override
+	public int getColumnPosition(String colname) {
+		return getColumnIndex(colname);
+	}
+
+	@Override
+	public boolean isNullAt(int colpos) {
+		return isNullSlot(colpos-1);
+	}
+
+	@Override
+	public void putNullAt(int colpos) {
+		setNullSlot(colpos-1);
+	}
+
+	@Override
+	public void putLongAt(int colpos, long value) throws ClassCastException {
+		final int c = colpos - 1;
+		if (getLayout().slotTypes[c] != SLOT_LONG)
+			throw new ClassCastException("Column "+getLayout().names[c]+" is not kept in a long slot");
+		byte kind = getLayout().defaultKinds[c];
+		if (KIND_SHORT == kind && (value < Short.MIN_VALUE || value > Short.MAX_VALUE))
+			kind = KIND_INT;
+		if (KIND_INT == kind && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE))
+			kind = KIND_LONG;
+		setLongSlot(c, value, kind);
+	}
+
+	@Override
+	public void putDoubleAt(int colpos, double value) throws ClassCastException {
+		final int c = colpos - 1;
+		if (getLayout().slotTypes[c] != SLOT_DOUBLE)
+			throw new ClassCastException("Column "+getLayout().names[c]+" is not kept in a double slot");
+		setDoubleSlot(c, value, getLayout().defaultKinds[c]);
+	}
+
+	@Override
+	public long getLongAt(int colpos) throws ClassCastException, NullPointerException {
+		final int c = colpos - 1;
+		if (isNullSlot(c))
+			throw new NullPointerException("Column "+getLayout().names[c]+" is null");
+		if (getLayout().slotTypes[c] != SLOT_LONG || KIND_OBJECT == kinds[c])
+			throw new ClassCastException("Column "+getLayout().names[c]+" is not kept in a long slot");
+		return longs[c];
+	}
+
+	@Override
+	public double getDoubleAt(int colpos) throws ClassCastException, NullPointerException {
+		final int c = colpos - 1;
+		if (isNullSlot(c))
+			throw new NullPointerException("Column "+getLayout().names[c]+" is null");
+		if (getLayout().slotTypes[c] != SLOT_DOUBLE || KIND_OBJECT == kinds[c])
+			throw new ClassCastException("Column "+getLayout().names[c]+" is not kept in a double slot");
+		return doubles[c];
+	}
+
+	// --------------------------------------------------------------------------
+	// Typed getters and setters that do not box values kept in primitive slots
+
+	private boolean isInteger(int c) {
+		final byte kind = kinds[c];
+		return !isNullSlot(c) && (KIND_BYTE == kind || KIND_SHORT == kind || KIND_INT == kind || KIND_LONG == kind);
+	}
+
+	private boolean isFloating(int c) {
+		final byte kind = kinds[c];
+		return !isNullSlot(c) && (KIND_FLOAT == kind || KIND_DOUBLE == kind);
+	}
+
+	@Override
+	public boolean isNull(String colname) {
+		final int position = getColumnIndex(colname);
+		return position < 1 || isNullSlot(position - 1);
+	}
+
+	@Override
+	public int getInt(String sColName) throws NullPointerException,ClassCastException,NumberFormatException {
+		final int position = getColumnIndex(sColName);
+		if (position > 0 && isInteger(position - 1) && KIND_LONG != kinds[position - 1])
+			return (int) longs[position - 1];
+		return super.getInt(sColName);
+	}
+
+	@Override
+	public long getLong(String sColName) throws NullPointerException,NumberFormatException {
+		final int position = getColumnIndex(sColName);
+		if (position > 0 && isInteger(position - 1))
+			return longs[position - 1];
+		return super.getLong(sColName);
+	}
+
+	/**
+	 * Integer values are widened to double without going through a String or a float
+	 */
+	@Override
+	public double getDouble(String sColName) throws NullPointerException,NumberFormatException,ClassCastException {
+		final int position = getColumnIndex(sColName);
+		if (position > 0 && isFloating(position - 1))
+			return doubles[position - 1];
+		if (position > 0 && isInteger(position - 1))
+			return (double) longs[position - 1];
+		return super.getDouble(sColName);
+	}
+
+	/**
+	 * Previous values are converted with Number methods so a value of another numeric class
+	 * or out of range does not make the put fail after it has been done
+	 */
+	@Override
+	public Short put(String sColName, short sVal) {
+		final int c = checkedIndex(sColName);
+		final Object prev = getSlot(c);
+		if (getLayout().slotTypes[c] == SLOT_LONG)
+			setLongSlot(c, sVal, KIND_SHORT);
+		else
+			setSlot(c, Short.valueOf(sVal));
+		return isNullOrNone(prev) ? null : prev instanceof Number ? Short.valueOf(((Number) prev).shortValue()) : new Short(prev.toString());
+	}
+
+	@Override
+	public Integer put(String sColName, int iVal) {
+		final int c = checkedIndex(sColName);
+		final Object prev = getSlot(c);
+		if (getLayout().slotTypes[c] == SLOT_LONG)
+			setLongSlot(c, iVal, KIND_INT);
+		else
+			setSlot(c, Integer.valueOf(iVal));
+		return isNullOrNone(prev) ? null : prev instanceof Number ? Integer.valueOf(((Number) prev).intValue()) : new Integer(prev.toString());
+	}
+
+	@Override
+	public Long put(String sColName, long lVal) {
+		final int c = checkedIndex(sColName);
+		final Object prev = getSlot(c);
+		if (getLayout().slotTypes[c] == SLOT_LONG)
+			setLongSlot(c, lVal, KIND_LONG);
+		else
+			setSlot(c, Long.valueOf(lVal));
+		return isNullOrNone(prev) ? null : prev instanceof Number ? Long.valueOf(((Number) prev).longValue()) : new Long(prev.toString());
+	}
+
+	@Override
+	public Float put(String sColName, float fVal) {
+		final int c = checkedIndex(sColName);
+		final Object prev = getSlot(c);
+		if (getLayout().slotTypes[c] == SLOT_DOUBLE)
+			setDoubleSlot(c, fVal, KIND_FLOAT);
+		else
+			setSlot(c, Float.valueOf(fVal));
+		return isNullOrNone(prev) ? null : prev instanceof Number ? Float.valueOf(((Number) prev).floatValue()) : new Float(prev.toString());
+	}
+
+	@Override
+	public Double put(String sColName, double dVal) {
+		final int c = checkedIndex(sColName);
+		final Object prev = getSlot(c);
+		if (getLayout().slotTypes[c] == SLOT_DOUBLE)
+			setDoubleSlot(c, dVal, KIND_DOUBLE);
+		else
+			setSlot(c, Double.valueOf(dVal));
+		return isNullOrNone(prev) ? null : prev instanceof Number ? Double.valueOf(((Number) prev).doubleValue()) : new Double(prev.toString());
+	}
+
+	// --------------------------------------------------------------------------
+	// Record and Map
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Entry<String,Object>[] asEntries() {
+		final String[] names = getLayout().names;
+		SimpleImmutableEntry<String,Object>[] entries = new SimpleImmutableEntry[names.length];
+		for (int c=0; c<names.length; c++)
+			entries[c] = new SimpleImmutableEntry<>(names[c], getSlot(c));
+		return entries;
+	}
+
+	@Override
+	public Map<String,Object> asMap() {
+		final String[] names = getLayout().names;
+		HashMap<String,Object> retval = new HashMap<>(names.length*2+1);
+		for (int c=0; c<names.length; c++)
+			retval.put(names[c], getSlot(c));
+		return retval;
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<String, Object>> entrySet() {
+		return asMap().entrySet();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		TreeSet<String> keys = new TreeSet<String>();
+		Collections.addAll(keys, getLayout().names);
+		return keys;
+	}
+
+	@Override
+	public Collection<Object> values() {
+		final int ncols = kinds.length;
+		ArrayList<Object> vals = new ArrayList<Object>(ncols);
+		for (int c=0; c<ncols; c++)
+			vals.add(getSlot(c));
+		return vals;
+	}
+
+	/**
+	 * Get value for column
+	 * @param sColName String Column Name
+	 * @return Object Column value or <b>null</b> if this record contains no column with such name
+	 */
+	@Override
+	public Object apply(String sColName) {
+		final int position = getColumnIndex(sColName);
+		return position < 1 ? null : getSlot(position - 1);
+	}
+
+	/**
+	 * Get value for column
+	 * @param sColName String Column Name
+	 * @return Object Column value or <b>null</b> if this record contains no column with such name
+	 */
+	@Override
+	public Object get(Object sColName) {
+		return apply((String) sColName);
+	}
+
+	@Override
+	public Map<String,String> getMap(String sKey) throws ClassCastException, InstantiationException, IllegalAccessException, IllegalArgumentException, NoSuchMethodException, SecurityException, ClassNotFoundException {
+		return (Map<String,String>) super.getMap(sKey);
+	} // getMap
+
+	/**
+	 * @return Object[] Boxed values of all columns in TableDef order
+	 */
+	@Override
+	public Object getValue() throws JDOException {
+		final int ncols = kinds.length;
+		Object[] values = new Object[ncols];
+		for (int c=0; c<ncols; c++)
+			values[c] = getSlot(c);
+		return values;
+	}
+
+	/**
+	 * @param newvalue Serializable Object[] with values in TableDef order or <b>null</b> to clear all values
+	 */
+	@Override
+	public void setValue(Serializable newvalue) throws JDOException {
+		if (newvalue==null) {
+			clear();
+		} else if (newvalue instanceof Object[]) {
+			Object[] newvalues = (Object[]) newvalue;
+			if (kinds.length<newvalues.length)
+				throw new JDOException("Supplied more values ("+String.valueOf(newvalues.length)+") than columns at table "+getTableDef().getName()+"("+String.valueOf(kinds.length)+")");
+			clear();
+			for (int c=0; c<newvalues.length; c++)
+				setSlot(c, newvalues[c]);
+		} else {
+			throw new JDOException("Type mismatch. Object[] expected but got "+newvalue.getClass().getName());
+		}
+	}
+
+	@Override
+	public int size() {
+		return kinds.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (int c=0; c<kinds.length; c++)
+			if (!isNullSlot(c))
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean containsKey(Object colname) {
+		return getColumnIndex((String) colname)!=-1;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (value==null)
+			return false;
+		for (int c=0; c<kinds.length; c++)
+			if (value.equals(getSlot(c)))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Remove value for column
+	 * @param colname String Column Name
+	 */
+	@Override
+	public Object remove(String colname) {
+		Object retval = null;
+		final int position = getColumnIndex(colname);
+		if (position!=-1) {
+			retval = getSlot(position-1);
+			setNullSlot(position-1);
+		}
+		return retval;
+	}
+
+	/**
+	 * Remove value for column
+	 * @param colname String Column Name
+	 */
+	@Override
+	public Object remove(Object colname) {
+		return remove((String) colname);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(nulls, -1l);
+		System.arraycopy(getLayout().defaultKinds, 0, kinds, 0, kinds.length);
+		objects = null;
+	}
+
+	/**
+	 *
+	 * @param colpos int [1..columnCount()]
+	 * @param obj Object
+	 * @return Former value of field
+	 * @throws ArrayIndexOutOfBoundsException
+	 */
+	@Override
+	public Object put(int colpos, Object obj) {
+		Object retval = getSlot(colpos-1);
+		setSlot(colpos-1, obj);
+		return retval;
+	}
+
+	@Override
+	public Object put(String colname, byte[] bytes) {
+		final int c = checkedIndex(colname);
+		final Object former = getSlot(c);
+		byte[] retval;
+		if (null==former)
+			retval = null;
+		else if (former instanceof byte[])
+			retval = Arrays.copyOf((byte[]) former, ((byte[]) former).length);
+		else
+			retval = BytesConverter.toBytes(former, Types.JAVA_OBJECT);
+		setSlot(c, bytes);
+		return retval;
+	}
+
+	/**
+	 * <p>Set value at internal collection</p>
+	 * @param sKey Column Name
+	 * @param oObj Field Value
+	 * @throws NullPointerException If sKey is <b>null</b>
+	 */
+	@Override
+	public Object put(String sKey, Object oObj) {
+
+		if (sKey==null || sKey.length()==0)
+			throw new NullPointerException("PrimitiveArrayRecord.put(String,Object) field name cannot be " + (sKey==null ? "null" : "empty"));
+
+		final int c = checkedIndex(sKey);
+		final Object retval = getSlot(c);
+
+		if (null==oObj || TypeResolver.isOfStandardType(oObj)) {
+			setSlot(c, oObj);
+		} else {
+			ColumnDef oCol = getTableDef().getColumnByName(getLayout().names[c]);
+			setSlot(c, oCol.isOfBinaryType() ? getBinaryData(sKey, oObj) : oObj);
+		}
+		return retval;
+	}
+
+	@Override
+	public void putAll(Map<? extends String,? extends Object> mValues) {
+		for (Entry<? extends String,? extends Object> entry : mValues.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+}
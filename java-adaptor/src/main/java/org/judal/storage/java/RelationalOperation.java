@@ -45,38 +45,28 @@ public class RelationalOperation<R extends Record> extends AbstractRelationalOpe
 	@Override
 	public RecordSet<R> fetchAsc(FetchGroup fetchGroup, String columnName, Object valueSearched, String sortByColumn)
 			throws JDOException {
-		RecordSet<R> retval = getTable().fetch(fetchGroup, columnName, valueSearched);
-		retval.sort(sortByColumn);
-		return retval;
+		return getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortByColumn, ASC, -1);
 	}
 
 	@Override
 	public RecordSet<R> fetchDesc(FetchGroup fetchGroup, String columnName, Object valueSearched, String sortByColumn)
 			throws JDOException {
-		RecordSet<R> retval = getTable().fetch(fetchGroup, columnName, valueSearched);
-		retval.sort(sortByColumn);
-		return retval;
+		return getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortByColumn, DESC, -1);
 	}
 
 	@Override
 	public R fetchFirst(FetchGroup fetchGroup, String columnName, Object valueSearched, String... sortBy)
 			throws JDOException {
-		R retval = null;
 		RecordSet<R> rst;
 		if (sortBy==null || sortBy.length==0)
-			rst = fetch(fetchGroup, columnName, valueSearched);
-		else if (sortBy.length==1)
-			rst = fetchAsc(fetchGroup, columnName, valueSearched, sortBy[0]);
+			rst = getTable().fetch(fetchGroup, columnName, valueSearched, 1, 0);
+		else if (sortBy.length==1 || same(ASC,sortBy[1]))
+			rst = getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortBy[0], ASC, 1);
+		else if (same(DESC,sortBy[1]))
+			rst = getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortBy[0], DESC, 1);
 		else
-			if (same(ASC,sortBy[1]))
-				rst = fetchAsc(fetchGroup, columnName, valueSearched, sortBy[0]);
-			else if (same(DESC,sortBy[1]))
-				rst = fetchDesc(fetchGroup, columnName, valueSearched, sortBy[0]);
-			else
-				throw new JDOUserException("Unrecognized sort direction " + sortBy[1]);
-		if (rst.size()>0)
-			retval = rst.get(0);
-		return retval;
+			throw new JDOUserException("Unrecognized sort direction " + sortBy[1]);
+		return rst.size()>0 ? rst.get(0) : null;
 	}
 	
 }
@@ -35,15 +35,11 @@ public class TableOperation<R extends Record> extends AbstractTableOperation<R>
 	}
 
 	public RecordSet<R> fetchAsc(FetchGroup fetchGroup, String columnName, Object valueSearched, String sortByColumn) throws JDOException {
-		RecordSet<R> retval = getTable().fetch(fetchGroup, columnName, valueSearched);
-		retval.sort(sortByColumn);
-		return retval;
+		return getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortByColumn, ASC, -1);
 	}
 
 	public RecordSet<R> fetchDesc(FetchGroup fetchGroup, String columnName, Object valueSearched, String sortByColumn) throws JDOException {
-		RecordSet<R> retval = getTable().fetch(fetchGroup, columnName, valueSearched);
-		retval.sortDesc(sortByColumn);
-		return retval;
+		return getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortByColumn, DESC, -1);
 	}
 
 	@Override
@@ -51,16 +47,13 @@ public class TableOperation<R extends Record> extends AbstractTableOperation<R>
 		throws JDOException {
 		RecordSet<R> rst;
 		if (sortBy==null || sortBy.length==0)
-			rst = fetch(fetchGroup, columnName, valueSearched);
-		else if (sortBy.length==1)
-			rst = fetchAsc(fetchGroup, columnName, valueSearched, sortBy[0]);
+			rst = getTable().fetch(fetchGroup, columnName, valueSearched, 1, 0);
+		else if (sortBy.length==1 || same(ASC,sortBy[1]))
+			rst = getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortBy[0], ASC, 1);
+		else if (same(DESC,sortBy[1]))
+			rst = getTable().fetchOrdered(fetchGroup, columnName, valueSearched, sortBy[0], DESC, 1);
 		else
-			if (same(ASC,sortBy[1]))
-				rst = fetchAsc(fetchGroup, columnName, valueSearched, sortBy[0]);
-			else if (same(DESC,sortBy[1]))
-				rst = fetchDesc(fetchGroup, columnName, valueSearched, sortBy[0]);
-			else
-				throw new JDOUserException("Unrecognized sort direction " + sortBy[1]);
+			throw new JDOUserException("Unrecognized sort direction " + sortBy[1]);
 		setRecord(rst.size()>0 ? rst.get(0) : null);
 		return getRecord();
 	}
@@ -0,0 +1,314 @@
+package org.judal.storage.java.internal;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <p>Table of accessors for the persistent fields of a POJO class.</p>
+ * Persistent fields are the non static, non final and non transient fields declared by the class.
+ * The table is built once per class and shared by all its instances.
+ * Each field is given a slot number [0..size()-1] in declaration order and
+ * a MethodHandle getter and setter adapted to Object, so no Field.get/set nor type switch is done on each access.
+ * Primitive fields have also handles of their exact type that do not box values.
+ * Column name lookups are case insensitive and take constant time.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public final class PojoAccessor {
+
+	private static final ClassValue<PojoAccessor> accessors = new ClassValue<PojoAccessor>() {
+		@Override
+		protected PojoAccessor computeValue(Class<?> pojoClass) {
+			return new PojoAccessor(pojoClass);
+		}
+	};
+
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final String[] names;
+	private final Class<?>[] types;
+	private final MethodHandle[] getters;
+	private final MethodHandle[] setters;
+	private final MethodHandle[] primitiveGetters;
+	private final MethodHandle[] primitiveSetters;
+	private final HashMap<String, Integer> slots;
+	private final List<String> fieldNames;
+
+	private PojoAccessor(Class<?> pojoClass) {
+		ArrayList<Field> fields = new ArrayList<Field>();
+		for (Field fld : pojoClass.getDeclaredFields()) {
+			final int mods = fld.getModifiers();
+			if (!Modifier.isFinal(mods) && !Modifier.isTransient(mods) && !Modifier.isStatic(mods))
+				fields.add(fld);
+		}
+		final int count = fields.size();
+		names = new String[count];
+		types = new Class<?>[count];
+		getters = new MethodHandle[count];
+		setters = new MethodHandle[count];
+		primitiveGetters = new MethodHandle[count];
+		primitiveSetters = new MethodHandle[count];
+		slots = new HashMap<String, Integer>(count * 2);
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (int f = 0; f < count; f++) {
+			Field fld = fields.get(f);
+			fld.setAccessible(true);
+			names[f] = fld.getName();
+			types[f] = fld.getType();
+			try {
+				MethodHandle getter = lookup.unreflectGetter(fld);
+				MethodHandle setter = lookup.unreflectSetter(fld);
+				getters[f] = getter.asType(GETTER);
+				setters[f] = setter.asType(SETTER);
+				if (types[f].isPrimitive()) {
+					primitiveGetters[f] = getter.asType(MethodType.methodType(types[f], Object.class));
+					primitiveSetters[f] = setter.asType(MethodType.methodType(void.class, Object.class, types[f]));
+				}
+			} catch (IllegalAccessException xcpt) {
+				throw new IllegalStateException("PojoAccessor cannot access field " + pojoClass.getName() + "." + fld.getName(), xcpt);
+			}
+			final String key = names[f].toLowerCase();
+			if (!slots.containsKey(key))
+				slots.put(key, f);
+		}
+		ArrayList<String> fieldNamesList = new ArrayList<String>(count);
+		Collections.addAll(fieldNamesList, names);
+		fieldNames = Collections.unmodifiableList(fieldNamesList);
+	}
+
+	/**
+	 * <p>Get the accessor table of a class.</p>
+	 * The table is built on the first call for each class and reused after that.
+	 * @param pojoClass Class&lt;?&gt;
+	 * @return PojoAccessor
+	 */
+	public static PojoAccessor forClass(Class<?> pojoClass) {
+		return accessors.get(pojoClass);
+	}
+
+	/**
+	 * @return int Count of persistent fields
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * @param colname String Case insensitive column name
+	 * @return int Slot of the field [0..size()-1] or -1 if there is no persistent field with the given name
+	 */
+	public int slot(String colname) {
+		Integer slot = slots.get(colname.toLowerCase());
+		return null == slot ? -1 : slot.intValue();
+	}
+
+	/**
+	 * @return List&lt;String&gt; Names of the persistent fields in slot order
+	 */
+	public List<String> names() {
+		return fieldNames;
+	}
+
+	/**
+	 * @param slot int [0..size()-1]
+	 * @return String Field name
+	 */
+	public String name(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * @param slot int [0..size()-1]
+	 * @return Class&lt;?&gt; Field type
+	 */
+	public Class<?> type(int slot) {
+		return types[slot];
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1]
+	 * @return Object Field value, boxed if the field is primitive
+	 */
+	public Object get(Object pojo, int slot) {
+		try {
+			return getters[slot].invokeExact(pojo);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1]
+	 * @param value Object Value assignable to the field type or a wrapper of a primitive field type
+	 * @throws ClassCastException If value cannot be converted to the field type
+	 * @throws NullPointerException If value is <b>null</b> and the field is primitive
+	 */
+	public void set(Object pojo, int slot, Object value) throws ClassCastException, NullPointerException {
+		try {
+			setters[slot].invokeExact(pojo, value);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * <p>Set a field to its default value, <b>null</b>, zero or <b>false</b>.</p>
+	 * @param pojo Object
+	 * @param slot int [0..size()-1]
+	 */
+	public void reset(Object pojo, int slot) {
+		final Class<?> type = types[slot];
+		if (!type.isPrimitive())
+			set(pojo, slot, null);
+		else if (boolean.class.equals(type))
+			set(pojo, slot, Boolean.FALSE);
+		else if (char.class.equals(type))
+			set(pojo, slot, Character.valueOf((char) 0));
+		else if (byte.class.equals(type))
+			set(pojo, slot, Byte.valueOf((byte) 0));
+		else if (short.class.equals(type))
+			set(pojo, slot, Short.valueOf((short) 0));
+		else if (int.class.equals(type))
+			setInt(pojo, slot, 0);
+		else if (long.class.equals(type))
+			setLong(pojo, slot, 0l);
+		else if (float.class.equals(type))
+			set(pojo, slot, Float.valueOf(0f));
+		else
+			setDouble(pojo, slot, 0d);
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1] of an int field
+	 * @return int
+	 * @throws ClassCastException If the field is not of type int
+	 */
+	public int getInt(Object pojo, int slot) throws ClassCastException {
+		checkType(slot, int.class);
+		try {
+			return (int) primitiveGetters[slot].invokeExact(pojo);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1] of an int field
+	 * @param value int
+	 * @throws ClassCastException If the field is not of type int
+	 */
+	public void setInt(Object pojo, int slot, int value) throws ClassCastException {
+		checkType(slot, int.class);
+		try {
+			primitiveSetters[slot].invokeExact(pojo, value);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1] of a long field
+	 * @return long
+	 * @throws ClassCastException If the field is not of type long
+	 */
+	public long getLong(Object pojo, int slot) throws ClassCastException {
+		checkType(slot, long.class);
+		try {
+			return (long) primitiveGetters[slot].invokeExact(pojo);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1] of a long field
+	 * @param value long
+	 * @throws ClassCastException If the field is not of type long
+	 */
+	public void setLong(Object pojo, int slot, long value) throws ClassCastException {
+		checkType(slot, long.class);
+		try {
+			primitiveSetters[slot].invokeExact(pojo, value);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1] of a double field
+	 * @return double
+	 * @throws ClassCastException If the field is not of type double
+	 */
+	public double getDouble(Object pojo, int slot) throws ClassCastException {
+		checkType(slot, double.class);
+		try {
+			return (double) primitiveGetters[slot].invokeExact(pojo);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	/**
+	 * @param pojo Object
+	 * @param slot int [0..size()-1] of a double field
+	 * @param value double
+	 * @throws ClassCastException If the field is not of type double
+	 */
+	public void setDouble(Object pojo, int slot, double value) throws ClassCastException {
+		checkType(slot, double.class);
+		try {
+			primitiveSetters[slot].invokeExact(pojo, value);
+		} catch (RuntimeException | Error xcpt) {
+			throw xcpt;
+		} catch (Throwable neverthrown) {
+			throw new IllegalStateException(neverthrown);
+		}
+	}
+
+	private void checkType(int slot, Class<?> type) throws ClassCastException {
+		if (!type.equals(types[slot]))
+			throw new ClassCastException("Field " + names[slot] + " is of type " + types[slot].getName() + " not " + type.getName());
+	}
+
+}
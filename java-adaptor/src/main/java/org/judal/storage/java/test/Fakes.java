@@ -0,0 +1,123 @@
+package org.judal.storage.java.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.TransactionManager;
+
+import org.judal.storage.table.IndexableTable;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.TableDataSource;
+
+/**
+ * <p>Dynamic proxies which stand in for storage interfaces in unit tests that do not need a database.</p>
+ * equals() and hashCode() of a fake are those of its identity and any method
+ * for which the given handler returns <b>null</b> returns <b>null</b>, <b>false</b> or zero.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class Fakes {
+
+	/**
+	 * <p>Handler of the method calls made to the tables of a fake TableDataSource.</p>
+	 */
+	public interface TableHandler {
+
+		/**
+		 * @param tableName String Name of the table of the Record given to openTable() or openIndexedTable()
+		 * @param method Method
+		 * @param args Object[]
+		 * @return Object
+		 * @throws Throwable
+		 */
+		Object invoke(String tableName, Method method, Object[] args) throws Throwable;
+	}
+
+	/**
+	 * @param iface Class&lt;T&gt; Interface to be implemented
+	 * @param handler InvocationHandler Called for every method but equals() and hashCode(). May be <b>null</b>.
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T proxy(Class<T> iface, final InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("equals") && method.getParameterTypes().length==1)
+					return proxy==args[0];
+				else if (method.getName().equals("hashCode") && method.getParameterTypes().length==0)
+					return System.identityHashCode(proxy);
+				final Object retval = null==handler ? null : handler.invoke(proxy, method, args);
+				return null==retval ? defaultValue(method.getReturnType()) : retval;
+			}
+		});
+	}
+
+	/**
+	 * <p>Fake TableDataSource.</p>
+	 * inTransaction() is <b>true</b> when the status of the TransactionManager is Status.STATUS_ACTIVE.
+	 * @param transactionManager TransactionManager Returned by getTransactionManager(). May be <b>null</b>.
+	 * @param tables TableHandler Handler of the IndexableTable returned by openTable() and openIndexedTable(). May be <b>null</b>.
+	 * @return TableDataSource
+	 */
+	public static TableDataSource dataSource(final TransactionManager transactionManager, final TableHandler tables) {
+		return proxy(TableDataSource.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws SystemException {
+				final String name = method.getName();
+				if (name.equals("getTransactionManager"))
+					return transactionManager;
+				else if (name.equals("inTransaction"))
+					return null!=transactionManager && transactionManager.getStatus()==Status.STATUS_ACTIVE;
+				else if (name.equals("openTable") || name.equals("openIndexedTable"))
+					return table(((Record) args[0]).getTableName(), tables);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @param tableName String
+	 * @param tables TableHandler May be <b>null</b>
+	 * @return IndexableTable whose name() returns tableName
+	 */
+	public static IndexableTable table(final String tableName, final TableHandler tables) {
+		return proxy(IndexableTable.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				final Object retval = null==tables ? null : tables.invoke(tableName, method, args);
+				if (null==retval && method.getName().equals("name"))
+					return tableName;
+				return retval;
+			}
+		});
+	}
+
+	/**
+	 * @param type Class&lt;?&gt;
+	 * @return Object <b>false</b> or zero for primitive types and <b>null</b> for the others
+	 */
+	public static Object defaultValue(Class<?> type) {
+		if (type==boolean.class)
+			return Boolean.FALSE;
+		else if (type==int.class)
+			return 0;
+		else if (type==long.class)
+			return 0l;
+		else if (type==short.class)
+			return (short) 0;
+		else if (type==byte.class)
+			return (byte) 0;
+		else if (type==char.class)
+			return (char) 0;
+		else if (type==float.class)
+			return 0f;
+		else if (type==double.class)
+			return 0d;
+		return null;
+	}
+
+}
@@ -269,7 +269,7 @@ public class JDBCBucket extends JDBCBase implements Bucket {
 			}
 		} else {
 			try {
-				getDao().storeRegister(jdcConn, (AbstractRecord) target);
+				getDao().upsertRegister(jdcConn, (AbstractRecord) target);
 			} catch (SQLException sqle) {
 				throw new JDOException(sqle.getMessage(), sqle);
 			}
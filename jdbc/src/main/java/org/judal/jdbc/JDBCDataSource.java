@@ -25,9 +25,16 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.jdo.JDOException;
@@ -47,6 +54,7 @@ import org.judal.jdbc.jdc.JDCConnectionPool;
 import org.judal.jdbc.jdc.JDCDAO;
 import org.judal.jdbc.metadata.SQLBuilder;
 import org.judal.jdbc.metadata.SQLFunctions;
+import org.judal.jdbc.metadata.SQLMetadataSnapshot;
 import org.judal.jdbc.metadata.SQLTableDef;
 import org.judal.jdbc.metadata.SQLViewDef;
 import org.judal.jdbc.oracle.OrclSequenceGenerator;
@@ -57,8 +65,10 @@ import org.judal.metadata.TableDef;
 import org.judal.metadata.ViewDef;
 import org.judal.metadata.bind.JdoPackageMetadata;
 import org.judal.metadata.bind.JdoXmlMetadata;
+import org.judal.storage.BlockSequencePool;
 import org.judal.storage.Env;
 import org.judal.storage.Param;
+import org.judal.storage.query.sql.SQLRowPlan;
 import org.judal.transaction.DataSourceTransactionManager;
 import org.judal.transaction.TransactionalResource;
 import org.judal.storage.DataSource;
@@ -85,7 +95,11 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 	protected String databaseProductName;
 	protected RDBMS databaseProductId;
 	protected final SchemaMetaData metaData;
-	protected final HashMap<String,JDCDAO> daos;
+	protected final ConcurrentHashMap<String,JDCDAO> daos;
+	protected final ConcurrentHashMap<String,Object> pendingTables;
+	private final SQLRowPlan.Cache rowPlans;
+	private final BlockSequencePool sequences;
+	private String metadataVersion;
 	protected final boolean useDatabaseMetadata;
 	protected boolean autocommit;
 
@@ -93,6 +107,8 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 
 	private static final String VERSION = "1.0.0";
 
+	private static final String METADATA_CALLER = "JDBCDataSource.metadata";
+
 	/**
 	 * 
 	 * @param properties Map&lt;String,String&gt; Valid property names are listed at DataSource.PropertyNames
@@ -123,7 +139,10 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 		useDatabaseMetadata = metaDataFromDb.equalsIgnoreCase("true") || metaDataFromDb.equalsIgnoreCase("yes") || metaDataFromDb.equalsIgnoreCase("1") || metaDataFromDb.equalsIgnoreCase("");
 		transactMan = transactManager;
 		metaData = new SchemaMetaData();
-		daos = new HashMap<String,JDCDAO>(349);
+		daos = new ConcurrentHashMap<String,JDCDAO>(349);
+		pendingTables = new ConcurrentHashMap<String,Object>();
+		rowPlans = new SQLRowPlan.Cache(SQLRowPlan.Cache.DEFAULT_CAPACITY);
+		sequences = BlockSequencePool.forProperties(properties);
 		closed = true;
 		initialize(properties);
 	}
@@ -243,6 +262,28 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 		return props;
 	}
 
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get the cache of result set reading plans used by the SQL queries of this DataSource.</p>
+	 * @return SQLRowPlan.Cache
+	 */
+	public SQLRowPlan.Cache getRowPlanCache() {
+		return rowPlans;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Close the cached prepared statements of all connections and discard the cached result set reading plans.
+	 * Must be called after altering the database schema.
+	 */
+	@Override
+	public void clearStatementCaches() {
+		super.clearStatementCaches();
+		rowPlans.clear();
+	}
+
 	// ----------------------------------------------------------
 	
 	/**
@@ -329,8 +370,14 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 
 		connectXcpt = null;
 
+		releaseSequences();
+
 		daos.clear();
 
+		pendingTables.clear();
+
+		rowPlans.clear();
+
 		metaData.clear();
 
 		super.close();
@@ -370,8 +417,14 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 
 		connectXcpt = null;
 
+		releaseSequences();
+
 		daos.clear();
 
+		pendingTables.clear();
+
+		rowPlans.clear();
+
 		metaData.clear();
 
 		try {
@@ -422,10 +475,12 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 		}
 
 		if (!Str.in(tableName, Functions.systemTables())) {
-			metaData.removeTable(tableName, null);
-			metaData.addTable(tableDef, null);
-			if (useDatabaseMetadata)
-				metaData.getPackage("default").addClass(tableDef);
+			synchronized (metaData) {
+				metaData.removeTable(tableName, null);
+				metaData.addTable(tableDef, null);
+				if (useDatabaseMetadata)
+					metaData.getPackage("default").addClass(tableDef);
+			}
 			if (DebugFile.trace) DebugFile.writeln("Table " + tableDef.getName()+ " added to cache");
 			retval = true;
 		} else {
@@ -633,24 +688,46 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 
 		if (DebugFile.trace && metaData.getTablesCount()==0) DebugFile.writeln("No tables found");
 
-		oTableIterator = metaData.tables().iterator();
+		final String sLoading = getProperty(METADATA_LOADING, DEFAULT_METADATA_LOADING);
 
-		// For each table, read its column structure and keep it in memory
 		int nWarnings = 0;
 		LinkedList<String> oUnreadableTables = new LinkedList<String>();
 
-		while (oTableIterator.hasNext()) {
-			oTable = oTableIterator.next();
-			boolean success = addColumnsToCache((SQLTableDef) oTable, oConn, oMData);
-			if (!success) {
-				nWarnings++;
-				oUnreadableTables.add(oTable.getName());
+		if (sLoading.equalsIgnoreCase("lazy")) {
+
+			// Columns of each table will be read by loadPendingTable() the first time that the table is used
+			for (TableDef oPending : metaData.tables())
+				pendingTables.put(oPending.getName().toLowerCase(), new Object());
+
+		} else if (sLoading.equalsIgnoreCase("parallel") || sLoading.equalsIgnoreCase("eager")) {
+
+			// DebugFile indentation is shared by all threads, so tables are read one by one while tracing
+			if (sLoading.equalsIgnoreCase("parallel") && metaData.getTablesCount()>1 && !DebugFile.trace) {
+				readColumnsInParallel(metaData.tables(), oUnreadableTables);
+			} else {
+				oTableIterator = metaData.tables().iterator();
+
+				// For each table, read its column structure and keep it in memory
+				while (oTableIterator.hasNext()) {
+					oTable = oTableIterator.next();
+					boolean success = addColumnsToCache((SQLTableDef) oTable, oConn, oMData);
+					if (!success)
+						oUnreadableTables.add(oTable.getName());
+				} // wend
+			}
+
+			nWarnings = oUnreadableTables.size();
+
+			for (TableDef oRead : metaData.tables()) {
+				cacheDaoForTable(oRead);
+				oRead.setUnmodifiable();
 			}
-			cacheDaoForTable(oTable);
-			oTable.setUnmodifiable();
-		} // wend
 
-		for (String t : oUnreadableTables) metaData.removeTable(t, null);
+			for (String t : oUnreadableTables) metaData.removeTable(t, null);
+
+		} else {
+			throw new JDOUserException("Invalid value " + sLoading + " for property " + METADATA_LOADING + " it must be one of {eager, parallel, lazy}");
+		}
 
 		if (DebugFile.trace) {
 			if (nWarnings==0)
@@ -771,6 +848,204 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 
 	// ----------------------------------------------------------
 
+	private JDCConnection getMetadataConnection() throws SQLException {
+		JDCConnection oConn = super.getConnection(METADATA_CALLER);
+		oConn.setAutoCommit(true);
+		return oConn;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Read the columns and indexes of several tables at the same time.</p>
+	 * Each thread takes tables from a shared queue and reads them using its own pooled connection.
+	 * Must not be called while DebugFile.trace is on because the threads would interleave the indentation of the trace.
+	 * @param tables Collection&lt;TableDef&gt;
+	 * @param unreadable List&lt;String&gt; Names of the tables whose columns could not be read will be added here
+	 * @throws SQLException
+	 */
+	private void readColumnsInParallel(Collection<TableDef> tables, List<String> unreadable) throws SQLException {
+		final int nThreads = Math.min(Math.max(1, Integer.parseInt(getProperty(METADATA_THREADS, DEFAULT_METADATA_THREADS))), tables.size());
+		final ConcurrentLinkedQueue<TableDef> queue = new ConcurrentLinkedQueue<TableDef>(tables);
+		final ConcurrentLinkedQueue<String> failed = new ConcurrentLinkedQueue<String>();
+
+		if (DebugFile.trace)
+			DebugFile.writeln("Reading " + tables.size() + " tables using " + nThreads + " threads");
+
+		final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<Void>> readers = new ArrayList<Future<Void>>(nThreads);
+			for (int t=0; t<nThreads; t++)
+				readers.add(executor.submit(() -> {
+					JDCConnection oConn = getMetadataConnection();
+					try {
+						DatabaseMetaData oMData = oConn.getMetaData();
+						TableDef oTable;
+						while ((oTable = queue.poll())!=null)
+							if (!addColumnsToCache((SQLTableDef) oTable, oConn, oMData))
+								failed.add(oTable.getName());
+					} finally {
+						oConn.close(METADATA_CALLER);
+					}
+					return null;
+				}));
+			for (Future<Void> reader : readers)
+				reader.get();
+		} catch (InterruptedException interrupted) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while reading table metadata", interrupted);
+		} catch (ExecutionException xcpt) {
+			if (xcpt.getCause() instanceof SQLException)
+				throw (SQLException) xcpt.getCause();
+			throw new SQLException(xcpt.getCause().getMessage(), xcpt.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		unreadable.addAll(failed);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Read the columns and indexes of a table if they were not read at startup.</p>
+	 * Only does something when metadataloading property is "lazy".
+	 * Concurrent calls for the same table wait until the first one has read it.
+	 * @param tableName String Table name in lower case
+	 * @throws JDOException If the table metadata could not be queried
+	 */
+	protected void loadPendingTable(String tableName) throws JDOException {
+		final Object lock = pendingTables.get(tableName);
+		if (null==lock)
+			return;
+		synchronized (lock) {
+			if (!pendingTables.containsKey(tableName))
+				return;
+			if (DebugFile.trace) {
+				DebugFile.writeln("Begin JDBCDataSource.loadPendingTable(" + tableName + ")");
+				DebugFile.incIdent();
+			}
+			final SQLTableDef oTable;
+			synchronized (metaData) {
+				oTable = (SQLTableDef) metaData.getTable(tableName);
+			}
+			if (oTable!=null) {
+				JDCConnection oConn = null;
+				try {
+					oConn = getMetadataConnection();
+					if (addColumnsToCache(oTable, oConn, oConn.getMetaData())) {
+						cacheDaoForTable(oTable);
+						oTable.setUnmodifiable();
+					} else {
+						// Same as at eager loading, tables whose columns cannot be read are discarded.
+						// SchemaMetaData is not thread safe so removal is synchronized with the lookups of other threads.
+						synchronized (metaData) {
+							metaData.removeTable(tableName, null);
+						}
+					}
+					oConn.close(METADATA_CALLER);
+					oConn = null;
+				} catch (SQLException sqle) {
+					if (DebugFile.trace) {
+						DebugFile.writeln("SQLException " + sqle.getMessage());
+						DebugFile.decIdent();
+					}
+					throw new JDOException(sqle.getMessage(), sqle);
+				} finally {
+					try { if (oConn!=null) oConn.close(METADATA_CALLER); } catch (SQLException ignore) { }
+				}
+			}
+			pendingTables.remove(tableName);
+			if (DebugFile.trace) {
+				DebugFile.decIdent();
+				DebugFile.writeln("End JDBCDataSource.loadPendingTable()");
+			}
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Read the definitions of all the tables not yet read when metadataloading property is "lazy".</p>
+	 * After all of them have been read, the metadata snapshot file is written if metadatasnapshot property is set.
+	 * @throws JDOException
+	 */
+	public void loadPendingMetadata() throws JDOException {
+		if (!pendingTables.isEmpty()) {
+			for (String tableName : pendingTables.keySet())
+				loadPendingTable(tableName);
+			writeMetadataSnapshot();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return int Count of tables whose columns have not been read yet when metadataloading property is "lazy"
+	 */
+	public int getPendingTablesCount() {
+		return pendingTables.size();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Read schema metadata from the snapshot file set at metadatasnapshot property.</p>
+	 * The snapshot is only read if it was written for the current schema version.
+	 * @param oConn Connection
+	 * @param oMData DatabaseMetaData
+	 * @return boolean <b>true</b> if metadata was read from the snapshot file
+	 */
+	protected boolean loadMetadataSnapshot(Connection oConn, DatabaseMetaData oMData) {
+		final String sSnapshot = getProperty(METADATA_SNAPSHOT, "");
+		if (sSnapshot.length()==0)
+			return false;
+		boolean success = false;
+		final String sSchema = getProperty(SCHEMA, "");
+		try {
+			metadataVersion = SQLMetadataSnapshot.getSchemaVersion(oConn, oMData, oConn.getCatalog(), sSchema.length()==0 ? null : sSchema, getProperty(METADATA_VERSION_QUERY));
+			try (InputStream snapshot = SQLMetadataSnapshot.open(Paths.get(sSnapshot), metadataVersion)) {
+				if (snapshot!=null) {
+					readMetadataFromInputStream(snapshot);
+					success = true;
+				}
+			}
+		} catch (Exception xcpt) {
+			if (DebugFile.trace)
+				DebugFile.writeln("JDBCDataSource.loadMetadataSnapshot() " + xcpt.getClass().getName()+" "+xcpt.getMessage());
+			metaData.clear();
+			metaData.addPackage("default");
+			daos.clear();
+		}
+		return success;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Write schema metadata to the snapshot file set at metadatasnapshot property.</p>
+	 * @return boolean <b>true</b> if the snapshot was written
+	 */
+	protected boolean writeMetadataSnapshot() {
+		final String sSnapshot = getProperty(METADATA_SNAPSHOT, "");
+		if (sSnapshot.length()==0 || null==metadataVersion || !pendingTables.isEmpty())
+			return false;
+		boolean success = false;
+		try {
+			JdoXmlMetadata xmlMeta = new JdoXmlMetadata(this);
+			ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+			xmlMeta.writeMetadata(metaData, bytesOut);
+			SQLMetadataSnapshot.write(Paths.get(sSnapshot), metadataVersion, bytesOut.toByteArray());
+			success = true;
+		} catch (Exception xcpt) {
+			if (DebugFile.trace)
+				DebugFile.writeln("JDBCDataSource.writeMetadataSnapshot() " + xcpt.getClass().getName()+" "+xcpt.getMessage());
+		}
+		return success;
+	}
+
+	// ----------------------------------------------------------
+
 	protected void cacheDaoForTable(TableDef tableDef) throws SQLException {
 		final SQLBuilder sqlBuilder = new SQLBuilder(getDatabaseProductId(), tableDef, SQLTableDef.DEFAULT_CREATION_TIMESTAMP_COLUMN_NAME);
 		daos.put(tableDef.getName(), new JDCDAO(tableDef, sqlBuilder.getSqlStatements()));		
@@ -795,6 +1070,8 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 		}
 
 		metaData.clear();
+		pendingTables.clear();
+		metadataVersion = null;
 		if (useDatabaseMetadata) {
 			metaData.addPackage("default");
 		}
@@ -866,9 +1143,12 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 			Functions = SQLFunctions.DB.get(databaseProductId);
 
 			if (useDatabaseMetadata) {
-				if (!loadCachedMetadataFromDatabase(oConn)) {
+				if (!loadMetadataSnapshot(oConn, oMData) && !loadCachedMetadataFromDatabase(oConn)) {
 					readMetadataFromDatabase(oConn, oMData);
-					writeCachedMetadataToDatabase(oConn);
+					if (pendingTables.isEmpty()) {
+						writeMetadataSnapshot();
+						writeCachedMetadataToDatabase(oConn);
+					}
 				}
 			} else {
 				readMetadataFromFile(properties);
@@ -1097,7 +1377,9 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 		if (isClosed())
 			throw new JDOUserException("JDBCDataSource has been closed");
 
-		return (SQLViewDef) metaData.getView(sView.toLowerCase());
+		synchronized (metaData) {
+			return (SQLViewDef) metaData.getView(sView.toLowerCase());
+		}
 	} 
 
 	// ----------------------------------------------------------
@@ -1120,7 +1402,12 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 		if (isClosed())
 			throw new JDOUserException("JDBCDataSource has been closed");
 
-		return (SQLTableDef) metaData.getTable(sTable.toLowerCase());
+		if (!pendingTables.isEmpty())
+			loadPendingTable(sTable.toLowerCase());
+
+		synchronized (metaData) {
+			return (SQLTableDef) metaData.getTable(sTable.toLowerCase());
+		}
 	} 
 
 	// ----------------------------------------------------------
@@ -1145,10 +1432,15 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 
 		ViewDef retobj = null;
 
-		if (metaData.containsTable(sObjectName))
-			retobj = metaData.getTable(sObjectName);
-		else if (metaData.containsView(sObjectName))
-			retobj = metaData.getView(sObjectName);
+		if (!pendingTables.isEmpty())
+			loadPendingTable(sObjectName.toLowerCase());
+
+		synchronized (metaData) {
+			if (metaData.containsTable(sObjectName))
+				retobj = metaData.getTable(sObjectName);
+			else if (metaData.containsView(sObjectName))
+				retobj = metaData.getView(sObjectName);
+		}
 
 		return retobj;
 	} 
@@ -1343,23 +1635,36 @@ public abstract class JDBCDataSource extends JDCConnectionPool implements DataSo
 	// ----------------------------------------------------------
 
 	/**
-	 * Get a sequence generator provided by the underlying RDBMS
+	 * Get a sequence generator provided by the underlying RDBMS.
+	 * If the sequenceblocksize property is greater than one, the returned Sequence is a BlockSequence
+	 * shared by all the callers which reserves that many values at each round trip to the database.
 	 * @return Sequence
 	 */
 	@Override
 	public Sequence getSequence(String name) throws JDOException {
 		if (databaseProductId.equals(RDBMS.ORACLE))
-			return new OrclSequenceGenerator(this, name);
+			return sequences.get(new OrclSequenceGenerator(this, name));
 		else if (databaseProductId.equals(RDBMS.POSTGRESQL))
-			return new PgSequenceGenerator(this, name);
+			return sequences.get(new PgSequenceGenerator(this, name));
 		else if (databaseProductId.equals(RDBMS.HSQLDB))
-			return new HsqlSequenceGenerator(this, name);
+			return sequences.get(new HsqlSequenceGenerator(this, name));
 		else
 			throw new JDOUnsupportedOptionException(databaseProductId+" does not support sequence generation");
 	}
 
 	// ----------------------------------------------------------
 
+	private void releaseSequences() {
+		try {
+			sequences.close();
+		} catch (JDOException xcpt) {
+			if (DebugFile.trace)
+				DebugFile.writeln("JDBCDataSource could not release unused sequence values " + xcpt.getMessage());
+		}
+	}
+
+	// ----------------------------------------------------------
+
 	@Override
 	public boolean isWrapperFor(Class<?> wrapped) throws SQLException {
 		return getClass().isInstance(wrapped);
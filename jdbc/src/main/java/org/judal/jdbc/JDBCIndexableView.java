@@ -42,9 +42,11 @@ import org.judal.storage.query.Connective;
 import org.judal.storage.query.Expression;
 import org.judal.storage.query.Operator;
 import org.judal.storage.query.Predicate;
+import org.judal.storage.query.SortDirection;
 import org.judal.storage.query.sql.SQLAndPredicate;
 import org.judal.storage.query.sql.SQLQuery;
 import org.judal.storage.table.IndexableView;
+import org.judal.storage.table.KeysetPage;
 import org.judal.storage.table.Record;
 import org.judal.storage.table.RecordSet;
 import org.judal.storage.table.impl.AbstractRecord;
@@ -55,6 +57,7 @@ import org.judal.jdbc.metadata.SQLViewDef;
 
 import static org.judal.storage.query.Operator.BETWEEN;
 import static org.judal.storage.query.Operator.EQ;
+import static org.judal.storage.query.Operator.GT;
 import static org.judal.storage.query.Operator.GTE;
 import static org.judal.storage.query.Operator.LTE;
 
@@ -267,20 +270,20 @@ public class JDBCIndexableView extends JDBCBase implements IndexableView {
 		PreparedStatement stmt = null;
 		try {
 			if (null==indexColumnName || indexColumnName.length()==0) {
-				stmt = getConnection().prepareStatement("SELECT COUNT(*) AS NUM_ROWS FROM "+name());
+				stmt = getConnection().prepareCachedStatement("SELECT COUNT(*) AS NUM_ROWS FROM "+name());
 			} else {
-				stmt = getConnection().prepareStatement("SELECT COUNT("+indexColumnName+") AS " + NUM_ROWS + " FROM " + getViewDef().getTables() +" WHERE "+indexColumnName+"=?");
 				ColumnDef cdef = getViewDef().getColumnByName(indexColumnName);
 				if (null==valueSearched) {
 					if (null==cdef)
 						throw new JDOException("Type could not be infered for null value");
 					else
-						stmt = getConnection().prepareStatement("SELECT COUNT("+indexColumnName+") AS " + NUM_ROWS + " FROM " + getViewDef().getTables() + " WHERE "+indexColumnName+" IS NULL");
+						stmt = getConnection().prepareCachedStatement("SELECT COUNT("+indexColumnName+") AS " + NUM_ROWS + " FROM " + getViewDef().getTables() + " WHERE "+indexColumnName+" IS NULL");
 				} else {
 					if (valueSearched instanceof Expression) {
+						// Expressions are inlined in the SQL text so they are not worth caching
 						stmt = getConnection().prepareStatement("SELECT COUNT("+indexColumnName+") AS " + NUM_ROWS + " FROM " + getViewDef().getTables() + " WHERE "+indexColumnName+"="+valueSearched.toString());
 					} else {
-						stmt = getConnection().prepareStatement("SELECT COUNT("+indexColumnName+") AS " + NUM_ROWS + " FROM " + getViewDef().getTables() + " WHERE "+indexColumnName+"=?");
+						stmt = getConnection().prepareCachedStatement("SELECT COUNT("+indexColumnName+") AS " + NUM_ROWS + " FROM " + getViewDef().getTables() + " WHERE "+indexColumnName+"=?");
 						if (null==cdef)
 							stmt.setObject(1, valueSearched);
 						else
@@ -296,11 +299,11 @@ public class JDBCIndexableView extends JDBCBase implements IndexableView {
 			}
 			rset.close();
 			rset = null;
-			stmt.close();
+			getConnection().releaseStatement(stmt);
 			stmt = null;
 		} catch (SQLException sqle) {
 			try { if (rset!=null) rset.close(); } catch (Exception ignore) { }
-			try { if (stmt!=null) stmt.close(); } catch (Exception ignore) { }
+			try { if (stmt!=null) getConnection().discardStatement(stmt); } catch (Exception ignore) { }
 			if (DebugFile.trace) DebugFile.decIdent();
 			throw new JDOException(sqle.getMessage(), sqle);
 		}
@@ -338,7 +341,7 @@ public class JDBCIndexableView extends JDBCBase implements IndexableView {
 
 
 		try {
-			stmt = getConnection().prepareStatement("SELECT NULL AS void FROM " + getViewDef().getTables() +" WHERE "+where);
+			stmt = getConnection().prepareCachedStatement("SELECT NULL AS void FROM " + getViewDef().getTables() +" WHERE "+where);
 			int pos = 0;
 			for (Param key : keys)
 				if (key!=null)
@@ -347,11 +350,11 @@ public class JDBCIndexableView extends JDBCBase implements IndexableView {
 			retval = rset.next();
 			rset.close();
 			rset = null;
-			stmt.close();
+			getConnection().releaseStatement(stmt);
 			stmt=null;
 		} catch (SQLException sqle) {
 			try { if (rset!=null) rset.close(); } catch (Exception ignore) { }
-			try { if (stmt!=null) stmt.close(); } catch (Exception ignore) { }
+			try { if (stmt!=null) getConnection().discardStatement(stmt); } catch (Exception ignore) { }
 			if (DebugFile.trace) DebugFile.decIdent();
 			throw new JDOException(sqle.getMessage(), sqle);
 		}
@@ -424,6 +427,45 @@ public class JDBCIndexableView extends JDBCBase implements IndexableView {
 		return fetchQuery(qry);		
 	}
 	
+	/**
+	 * <p>Fetch RecordSet filtering by a column value sorted by another column.</p>
+	 * Sorting and limit are done by the database with ORDER BY and LIMIT or its equivalent.
+	 * @param fetchGroup FetchGroup Columns to fetch
+	 * @param indexColumnName String Index column Name
+	 * @param valueSearched Object value that the the fetched records must have
+	 * @param sortByColumn String Column used to sort the records
+	 * @param sortDirection String SortDirection.ASC or SortDirection.DESC. If <b>null</b> then records are sorted in ascending order
+	 * @param maxrows int Maximum numbers of records to return or -1 for all records
+	 * @return RecordSet&lt;? extends Record&gt;
+	 * @throws JDOException
+	 */
+	@Override
+	public <R extends Record> RecordSet<R> fetchOrdered(FetchGroup fetchGroup, String indexColumnName, Object valueSearched, String sortByColumn, String sortDirection, int maxrows)
+		throws JDOException {
+		SQLQuery qry = new SQLQuery(this);
+		if (null==fetchGroup)
+			qry.setResult("*");
+		else
+			qry.setResult(fetchGroup.getMembers());
+		qry.setRange(0, getRangeUpperBound(maxrows, 0));
+		if (null==indexColumnName) {
+			qry.setFilter((String) null);
+		} else {
+			Predicate predicate = new SQLAndPredicate();
+			try {
+				predicate.add(indexColumnName, EQ, valueSearched);
+			} catch (IllegalArgumentException | IllegalAccessException | UnsupportedOperationException | NoSuchMethodException | SecurityException | InstantiationException xcpt) {
+				throw new JDOException(xcpt.getMessage(), xcpt);
+			}
+			qry.setFilter(predicate);
+		}
+		if (sortDirection!=null && SortDirection.same(SortDirection.DESC, sortDirection.trim()))
+			qry.setOrdering(sortByColumn + SortDirection.DESC);
+		else
+			qry.setOrdering(sortByColumn);
+		return fetchQuery(qry);
+	}
+
 	/**
 	 * <p>Fetch RecordSet filtering by a column value range.</p>
 	 * @param fetchGroup FetchGroup Columns to fetch
@@ -499,6 +541,50 @@ public class JDBCIndexableView extends JDBCBase implements IndexableView {
 		return fetchQuery(qry);
 	}
 	
+	/**
+	 * <p>Fetch a page of records sorted by a column starting after a given key.</p>
+	 * The page is read with WHERE sortColumnName &gt; lastKey ORDER BY sortColumnName
+	 * and a row limit, so the database can seek the first row using an index on the sort column.
+	 * @param fetchGroup FetchGroup Columns to fetch. Must include the sort column
+	 * @param sortColumnName String Name of a unique column used as sort key
+	 * @param lastKey Comparable&lt;?&gt; Continuation of the previous page or <b>null</b> to get the first page
+	 * @param maxrows int Page size
+	 * @param params Param&hellip; Each Param name must match a column name in the table
+	 * @return KeysetPage&lt;? extends Record&gt;
+	 * @throws JDOException
+	 * @throws JDOUserException if maxrows is zero or negative
+	 */
+	@Override
+	public <R extends Record> KeysetPage<R> fetchPage(FetchGroup fetchGroup, String sortColumnName, Comparable<?> lastKey, int maxrows, Param... params)
+			throws JDOException {
+		if (maxrows<=0)
+			throw new JDOUserException("Page size must be greater than zero");
+		SQLQuery qry = new SQLQuery(this);
+		qry.setRange(0, maxrows);
+		if (null==fetchGroup)
+			qry.setResult("*");
+		else
+			qry.setResult(fetchGroup.getMembers());
+		if (null==lastKey && (params==null || params.length==0)) {
+			qry.setFilter((String) null);
+		} else {
+			Predicate where = qry.newPredicate(Connective.AND);
+			try {
+				if (params!=null)
+					for (Param p : params)
+						where.add(p.getName(), Operator.EQ, p.getValue());
+				if (null!=lastKey)
+					where.add(sortColumnName, GT, lastKey);
+			} catch (UnsupportedOperationException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException xcpt) {
+				throw new JDOException(xcpt.getClass().getName()+" "+xcpt.getMessage(), xcpt);
+			}
+			qry.setFilter(where);
+		}
+		qry.setOrdering(sortColumnName);
+		RecordSet<R> page = fetchQuery(qry);
+		return new KeysetPage<R>(page, sortColumnName, maxrows);
+	}
+
 	/**
 	 * <p>Fetch RecordSet filtering records with a query.</p>
 	 * @param qry AbstractQuery
@@ -14,17 +14,23 @@ package org.judal.jdbc;
 
 import java.io.IOException;
 
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.judal.jdbc.jdc.JDCDAO;
 import org.judal.jdbc.metadata.SQLBuilder;
 import org.judal.jdbc.metadata.SQLIndex;
 import org.judal.jdbc.metadata.SQLTableDef;
 import org.judal.metadata.IndexDef.Using;
+import org.judal.storage.DataSource;
+import org.judal.storage.Env;
 import org.judal.storage.Param;
+import org.judal.storage.keyvalue.BatchException;
 import org.judal.storage.keyvalue.Stored;
 import org.judal.storage.query.AbstractQuery;
 import org.judal.storage.query.Connective;
@@ -53,6 +59,7 @@ import com.knowgate.gis.LatLong;
 public class JDBCRelationalTable extends JDBCRelationalView implements RelationalTable {
 
 	private SQLTableDef tableDef;
+	private int batchSize;
 	
 	/**
 	 * <p>Constructor.</p>
@@ -64,6 +71,7 @@ public class JDBCRelationalTable extends JDBCRelationalView implements Relationa
 	public JDBCRelationalTable(JDBCTableDataSource dataSource, Record recordInstance) throws JDOException {
 		super(dataSource, recordInstance);
 		tableDef = dataSource.getTableDef(recordInstance.getTableName());
+		batchSize = defaultBatchSize(dataSource);
 	}
 
 	/**
@@ -76,8 +84,30 @@ public class JDBCRelationalTable extends JDBCRelationalView implements Relationa
 	public JDBCRelationalTable(JDBCTableDataSource dataSource, SQLTableDef tableDef, Class<? extends Record> recClass) throws JDOException {
 		super(dataSource, tableDef.asView(), recClass);
 		this.tableDef = tableDef;
+		batchSize = defaultBatchSize(dataSource);
 	}	
 
+	private static int defaultBatchSize(JDBCTableDataSource dataSource) {
+		return Math.max(1, Env.getPositiveInteger(dataSource.getProperties(), DataSource.BATCHSIZE, Integer.parseInt(DataSource.DEFAULT_BATCHSIZE)));
+	}
+
+	/**
+	 * @return int Maximum number of rows sent to the database at once by storeAll(), insertAll() and deleteAll()
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize int Maximum number of rows sent to the database at once by storeAll(), insertAll() and deleteAll()
+	 * @throws IllegalArgumentException if batchSize is less than 1
+	 */
+	public void setBatchSize(int batchSize) throws IllegalArgumentException {
+		if (batchSize<1)
+			throw new IllegalArgumentException("Batch size must be greater than zero");
+		this.batchSize = batchSize;
+	}
+
 	/**
 	 * <p>Get data access object for this view.</p>
 	 * The DAO may be provided by the DataSource or created once on the fly for each view.
@@ -472,7 +502,7 @@ public class JDBCRelationalTable extends JDBCRelationalView implements Relationa
 			}
 		} else {
 			try {
-				getDao().storeRegister(jdcConn, (AbstractRecord) target);
+				getDao().upsertRegister(jdcConn, (AbstractRecord) target);
 			} catch (SQLException sqle) {
 				throw new JDOException(sqle.getMessage(), sqle);
 			}
@@ -487,6 +517,248 @@ public class JDBCRelationalTable extends JDBCRelationalView implements Relationa
 	 */
 	@Override
 	public void delete(Object key) throws JDOException, ClassCastException {
+		try {
+			getDao().deleteRegister(jdcConn, toKeyMap(key));
+		} catch (SQLException sqle) {
+			throw new JDOException(sqle.getMessage(), sqle);
+		}
+	}
+
+	/**
+	 * <p>Store several Records sending them to the database in batches of getBatchSize() rows.</p>
+	 * Records with long data are stored one by one.
+	 * @param targets Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more Records could not be stored
+	 * @throws JDOException
+	 */
+	@Override
+	public void storeAll(Iterable<? extends Stored> targets) throws JDOException {
+		writeAll("storeAll", targets);
+	}
+
+	/**
+	 * <p>Insert several Records sending them to the database in batches of getBatchSize() rows.</p>
+	 * Records with long data are inserted one by one.
+	 * @param targets Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more Records could not be inserted
+	 * @throws JDOException
+	 */
+	@Override
+	public void insertAll(Iterable<? extends Stored> targets) throws JDOException {
+		writeAll("insertAll", targets);
+	}
+
+	/**
+	 * <p>Insert several rows sending them to the database in batches of getBatchSize() rows.</p>
+	 * Consecutive rows with the same columns share a PreparedStatement.
+	 * Rows with <b>null</b>, LatLong or Expression values are inserted one by one.
+	 * @param rows Param[][]
+	 * @throws BatchException if one or more rows could not be inserted
+	 * @throws JDOException
+	 */
+	@Override
+	public void insertAll(Param[][] rows) throws JDOException {
+		writeAll("insertAll", rows, null);
+	}
+
+	/**
+	 * <p>Perform several updates sending them to the database in batches of getBatchSize() updates.</p>
+	 * Consecutive updates with the same columns and filter share a PreparedStatement.
+	 * Updates with <b>null</b>, LatLong or Expression values are performed one by one.
+	 * @param values Param[][]
+	 * @param where Param[][]
+	 * @return int[] Count of updated rows by each update
+	 * @throws IllegalArgumentException If values and where have different lengths
+	 * @throws BatchException if one or more updates failed
+	 * @throws JDOException
+	 */
+	@Override
+	public int[] updateAll(Param[][] values, Param[][] where) throws IllegalArgumentException, JDOException {
+		if (values.length!=where.length)
+			throw new IllegalArgumentException("JDBCRelationalTable.updateAll() got " + values.length + " sets of values but " + where.length + " filters");
+		return writeAll("updateAll", values, where);
+	}
+
+	private int[] writeAll(String operation, Param[][] values, Param[][] where) throws JDOException {
+		final int[] counts = new int[values.length];
+		BatchException.Failures failures = new BatchException.Failures();
+		int r = 0;
+		while (r<values.length) {
+			final String sql = batchStatement(values[r], null==where ? null : where[r], null==where);
+			if (null==sql) {
+				try {
+					if (null==where) {
+						insert(values[r]);
+						counts[r] = 1;
+					} else {
+						counts[r] = update(values[r], where[r]);
+					}
+				} catch (JDOException xcpt) {
+					failures.add(r, values[r], xcpt);
+				}
+				r++;
+			} else {
+				int s = r + 1;
+				while (s<values.length && s-r<batchSize && sql.equals(batchStatement(values[s], null==where ? null : where[s], null==where)))
+					s++;
+				executeBatch(sql, values, where, r, s, counts, failures);
+				r = s;
+			}
+		}
+		failures.throwIfAny(operation, values.length);
+		return counts;
+	}
+
+	/**
+	 * @return String INSERT or UPDATE statement for the given columns or <b>null</b> if a value cannot be sent in a batch
+	 */
+	private String batchStatement(Param[] values, Param[] where, boolean insert) {
+		if (!insert && (null==where || where.length==0))
+			return null;
+		for (Param[] params : new Param[][]{values, where})
+			if (params!=null)
+				for (Param p : params)
+					if (null==p.getValue() || p.getValue() instanceof LatLong || p.getValue() instanceof Expression)
+						return null;
+		StringBuilder sql = new StringBuilder();
+		if (insert) {
+			sql.append("INSERT INTO ").append(getTableDef().getName()).append(" (");
+			for (int p=0; p<values.length; p++)
+				sql.append(p==0 ? "" : ",").append(values[p].getName());
+			sql.append(") VALUES (");
+			for (int p=0; p<values.length; p++)
+				sql.append(p==0 ? "?" : ",?");
+			sql.append(")");
+		} else {
+			sql.append("UPDATE ").append(getTableDef().getName()).append(" SET ");
+			for (int p=0; p<values.length; p++)
+				sql.append(p==0 ? "" : ",").append(values[p].getName()).append("=?");
+			sql.append(" WHERE ");
+			for (int p=0; p<where.length; p++)
+				sql.append(p==0 ? "" : " AND ").append(where[p].getName()).append("=?");
+		}
+		return sql.toString();
+	}
+
+	private void executeBatch(String sql, Param[][] values, Param[][] where, int from, int to, int[] counts, BatchException.Failures failures) throws JDOException {
+		if (DebugFile.trace)
+			DebugFile.writeln("Connection.prepareStatement(" + sql + ") for " + String.valueOf(to-from) + " rows");
+		try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+			for (int r=from; r<to; r++) {
+				int p = 0;
+				for (Param v : values[r])
+					stmt.setObject(++p, v.getValue(), v.getType());
+				if (where!=null)
+					for (Param w : where[r])
+						stmt.setObject(++p, w.getValue(), w.getType());
+				stmt.addBatch();
+			}
+			try {
+				final int[] results = stmt.executeBatch();
+				for (int r=from; r<to; r++)
+					counts[r] = r-from<results.length ? results[r-from] : Statement.SUCCESS_NO_INFO;
+			} catch (BatchUpdateException bue) {
+				if (DebugFile.trace) DebugFile.writeln("BatchUpdateException " + bue.getMessage() + ", SQLState=" + bue.getSQLState());
+				final int[] results = null==bue.getUpdateCounts() ? new int[0] : bue.getUpdateCounts();
+				for (int r=from; r<to; r++) {
+					if (r-from<results.length && results[r-from]!=Statement.EXECUTE_FAILED)
+						counts[r] = results[r-from];
+					else if (r-from<=results.length)
+						failures.add(r, values[r], bue);
+					else
+						failures.add(r, values[r], new SQLException("Not executed because a previous row of the batch failed", bue.getSQLState(), bue.getErrorCode()));
+				}
+			}
+		} catch (SQLException sqle) {
+			throw new JDOException(sqle.getMessage(), sqle);
+		}
+	}
+
+	private void writeAll(String operation, Iterable<? extends Stored> targets) throws JDOException {
+		final boolean insert = operation.equals("insertAll");
+		BatchException.Failures failures = new BatchException.Failures();
+		ArrayList<Record> batch = new ArrayList<Record>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		int position = 0;
+
+		if (null==tableDef)
+			throw new NullPointerException("JDBCRelationalTable." + operation + "() Target TableDef may not be null");
+
+		for (Stored target : targets) {
+			if (target instanceof AbstractRecord && ((AbstractRecord) target).hasLongData()) {
+				try {
+					if (insert && exists(target.getKey()))
+						throw new JDOException("Another record with the same primary key already exists at " + name());
+					store(target);
+				} catch (JDOException xcpt) {
+					failures.add(position, target, xcpt);
+				}
+			} else if (target instanceof Record) {
+				batch.add((Record) target);
+				positions.add(position);
+			} else {
+				failures.add(position, target, new ClassCastException("Cannot cast " + (null==target ? "null" : target.getClass().getName()) + " to " + Record.class.getName()));
+			}
+			position++;
+		}
+
+		if (batch.size()>0) {
+			Map<Integer,SQLException> errors;
+			try {
+				if (insert)
+					errors = getDao().insertRegisters(jdcConn, batch, batchSize);
+				else
+					errors = getDao().storeRegisters(jdcConn, batch, batchSize);
+			} catch (SQLException sqle) {
+				throw new JDOException(sqle.getMessage(), sqle);
+			}
+			for (Map.Entry<Integer,SQLException> error : errors.entrySet())
+				failures.add(positions.get(error.getKey()), batch.get(error.getKey()), error.getValue());
+		}
+
+		failures.throwIfAny(operation, position);
+	}
+
+	/**
+	 * <p>Delete several rows sending them to the database in batches of getBatchSize() rows.</p>
+	 * @param keys Iterable&lt;?&gt; Each key may be a single value, an array of values or Param[] for tables with a composite primary key
+	 * @throws BatchException if one or more rows could not be deleted
+	 * @throws JDOException
+	 */
+	@Override
+	public void deleteAll(Iterable<?> keys) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		ArrayList<Map<String,Object>> batch = new ArrayList<Map<String,Object>>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		ArrayList<Object> batchKeys = new ArrayList<Object>();
+		int position = 0;
+
+		for (Object key : keys) {
+			try {
+				batch.add(toKeyMap(key));
+				batchKeys.add(key);
+				positions.add(position);
+			} catch (JDOException | ClassCastException xcpt) {
+				failures.add(position, key, xcpt);
+			}
+			position++;
+		}
+
+		if (batch.size()>0) {
+			Map<Integer,SQLException> errors;
+			try {
+				errors = getDao().deleteRegisters(jdcConn, batch, batchSize);
+			} catch (SQLException sqle) {
+				throw new JDOException(sqle.getMessage(), sqle);
+			}
+			for (Map.Entry<Integer,SQLException> error : errors.entrySet())
+				failures.add(positions.get(error.getKey()), batchKeys.get(error.getKey()), error.getValue());
+		}
+
+		failures.throwIfAny("deleteAll", position);
+	}
+
+	private HashMap<String,Object> toKeyMap(Object key) throws JDOException, ClassCastException {
 		PrimaryKeyMetadata pk = tableDef.getPrimaryKeyMetadata();
 		if (pk.getNumberOfColumns()==0)
 			throw new JDOException("Cannot delete a single record because table "+name()+" has no primary key");
@@ -516,11 +788,7 @@ public class JDBCRelationalTable extends JDBCRelationalView implements Relationa
 			for (ColumnMetadata colDef: pk.getColumns())			
 				keymap.put(colDef.getName(), keyvals[k++]);
 		}
-		try {
-			getDao().deleteRegister(jdcConn, keymap);
-		} catch (SQLException sqle) {
-			throw new JDOException(sqle.getMessage(), sqle);
-		}
+		return keymap;
 	}
 
 	private String insertSignture = null;
@@ -261,9 +261,11 @@ public class JDBCTableDataSource extends JDBCBucketDataSource implements TableDa
 
 	/**
 	 * {@inheritDoc}
+	 * If metadataloading property is "lazy" then the definitions of the tables not yet used are read before returning.
 	 */
 	@Override
 	public SchemaMetaData getMetaData() {
+		loadPendingMetadata();
 		return metaData;
 	}
 
@@ -275,6 +277,7 @@ public class JDBCTableDataSource extends JDBCBucketDataSource implements TableDa
 		if (null==smd)
 			throw new NullPointerException("JDBCTableDataSource.setMetaData() SchemaMetaData cannot be null");
 		metaData.clear();
+		pendingTables.clear();
 		metaData.addMetadata(smd);
 	}
 
@@ -343,7 +346,9 @@ public class JDBCTableDataSource extends JDBCBucketDataSource implements TableDa
 			}
 			String ddl = ((SQLTableDef) tableDef).getSource();
 			execute(ddl);
-			if (!getMetaData().containsTable(tableDef.getName())) {
+			clearStatementCaches();
+			pendingTables.remove(tableDef.getName().toLowerCase());
+			if (!metaData.containsTable(tableDef.getName())) {
 				cacheTableMetadata((SQLTableDef) tableDef);
 				conn = getConnection("JDBCTableDataSource");
 				addColumnsToCache((SQLTableDef) tableDef, conn, conn.getMetaData());
@@ -370,8 +375,12 @@ public class JDBCTableDataSource extends JDBCBucketDataSource implements TableDa
 	public void dropTable(String tableName, boolean cascade) throws JDOException {
 		assertNotClosed();
 		execute("DROP TABLE "+tableName+(cascade ? " CASCADE" : ""));
-		if (getMetaData().containsTable(tableName))
-			getMetaData().removeTable(tableName, null);
+		clearStatementCaches();
+		pendingTables.remove(tableName.toLowerCase());
+		synchronized (metaData) {
+			if (metaData.containsTable(tableName))
+				metaData.removeTable(tableName, null);
+		}
 	}
 
 	/**
@@ -0,0 +1,294 @@
+package org.judal.jdbc.jdc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.jdo.JDOException;
+import javax.jdo.metadata.ColumnMetadata;
+
+import org.judal.jdbc.JDBCRelationalTable;
+import org.judal.jdbc.RDBMS;
+import org.judal.metadata.ColumnList;
+import org.judal.storage.table.Table;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Text to table loader which sends rows to the database in batches.</p>
+ * Each call to store() copies the current values to a buffer. When the buffer reaches getBatchSize() rows,
+ * or when close() or flush() are called, the whole buffer is sent to the database with JDBC batch statements.
+ * In MODE_APPENDUPDATE all the rows of a batch are first updated in a single batch and then the rows
+ * that did not update anything are inserted in a second batch. If several rows of the same batch have
+ * the same primary key, the last one wins, the same as if they had been stored one by one.
+ * A ProgressListener can be set to be notified after each batch.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class JDCBatchTableLoader extends JDCTableLoader {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Receives notifications of the progress of a bulk load
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * Called after each batch has been sent to the database
+		 * @param tableName String
+		 * @param batchRows int Count of rows of the last batch
+		 * @param totalRows long Count of rows loaded since the first call to store()
+		 * @param elapsedMillis long Milliseconds since the first call to store()
+		 */
+		void batchLoaded(String tableName, int batchRows, long totalRows, long elapsedMillis);
+	}
+
+	private int iBatchSize;
+	private int iBatchFlags;
+	private ArrayList<Object[]> oBatch;
+	private long lTotalRows;
+	private long lStartTime;
+	private long lElapsed;
+	private boolean bUpdateCountsUnknown;
+	private ProgressListener oListener;
+
+	// ---------------------------------------------------------------------------
+
+	public JDCBatchTableLoader(RDBMS eDBMS, String sTableName) throws SQLException {
+		super(eDBMS, sTableName);
+		iBatchSize = 0;
+		oBatch = new ArrayList<Object[]>();
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return int Count of rows sent to the database at once.
+	 * Unless set by setBatchSize() it is the batch size of the table passed to prepare().
+	 */
+	public int getBatchSize() {
+		return iBatchSize;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @param iRows int [1..n] Count of rows sent to the database at once
+	 * @throws IllegalArgumentException If iRows is less than one
+	 */
+	public void setBatchSize(int iRows) throws IllegalArgumentException {
+		if (iRows<1)
+			throw new IllegalArgumentException("JDCBatchTableLoader batch size must be at least 1");
+		iBatchSize = iRows;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @param oProgressListener ProgressListener or <b>null</b>
+	 */
+	public void setProgressListener(ProgressListener oProgressListener) {
+		oListener = oProgressListener;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return long Count of rows sent to the database since the first call to store()
+	 */
+	public long getRowCount() {
+		return lTotalRows;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return long Milliseconds since the first call to store() until the last batch was sent
+	 */
+	public long getElapsedMillis() {
+		return lElapsed;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return double Load rate in rows per second
+	 */
+	public double getRowsPerSecond() {
+		return lElapsed==0l ? 0d : (lTotalRows * 1000d) / lElapsed;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	@Override
+	public void prepare(Table oTbl, ColumnList oColList) throws JDOException {
+		super.prepare(oTbl, oColList);
+		if (0==iBatchSize)
+			iBatchSize = ((JDBCRelationalTable) oTbl).getBatchSize();
+		oBatch = new ArrayList<Object[]>(iBatchSize);
+		lTotalRows = lStartTime = lElapsed = 0l;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Add the current values to the batch.</p>
+	 * The batch is sent to the database when it is full or when the flags are different from the ones of the previous call.
+	 * @param oTbl Table Unused, rows are written using the table passed to prepare()
+	 * @param sWorkArea String Unused
+	 * @param iFlags int MODE_APPEND, MODE_UPDATE or MODE_APPENDUPDATE
+	 */
+	@Override
+	public void store(Table oTbl, String sWorkArea, int iFlags) throws JDOException, IllegalArgumentException, NullPointerException {
+
+		if (getInsertStatement()==null)
+			throw new JDOException("Invalid command sequece. Must call prepare() before JDCBatchTableLoader.store()");
+
+		if (!test(iFlags,MODE_APPEND) && !test(iFlags,MODE_UPDATE))
+			throw new IllegalArgumentException("JDCBatchTableLoader.store() Flags bitmask must contain either MODE_APPEND, MODE_UPDATE or both");
+
+		if (test(iFlags,MODE_UPDATE) && getUpdateStatement()==null)
+			throw new IllegalArgumentException("JDCBatchTableLoader.store() Flags bitmask cannot contain MODE_UPDATE because table has not primary key");
+
+		if (!oBatch.isEmpty() && (iFlags & MODE_APPENDUPDATE)!=iBatchFlags)
+			flush();
+
+		if (0l==lStartTime)
+			lStartTime = System.currentTimeMillis();
+
+		iBatchFlags = iFlags & MODE_APPENDUPDATE;
+		oBatch.add(copyValues());
+
+		if (oBatch.size()>=iBatchSize)
+			flush();
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Send the rows buffered so far to the database.</p>
+	 * @throws JDOException
+	 */
+	public void flush() throws JDOException {
+		if (oBatch.isEmpty())
+			return;
+
+		final int nRows = oBatch.size();
+		try {
+			loadBatch(oBatch, iBatchFlags);
+		} catch (SQLException sqle) {
+			if (DebugFile.trace)
+				DebugFile.writeln("SQLException at JDCBatchTableLoader.flush() "+sqle.getMessage());
+			throw new JDOException("SQLException "+sqle.getMessage(), sqle.getNextException()==null ? sqle : sqle.getNextException());
+		} finally {
+			oBatch.clear();
+		}
+
+		lTotalRows += nRows;
+		lElapsed = System.currentTimeMillis() - lStartTime;
+
+		if (DebugFile.trace)
+			DebugFile.writeln("Loaded batch of "+nRows+" rows into "+getName()+" total "+lTotalRows+" rows at "+String.format("%.1f", getRowsPerSecond())+" rows/s");
+
+		if (oListener!=null)
+			oListener.batchLoaded(getName(), nRows, lTotalRows, lElapsed);
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Write a batch of rows to the database.</p>
+	 * Subclasses can override this method to use a faster bulk load mechanism of a particular database.
+	 * @param aBatch List&lt;Object[]&gt; Rows with their values in the same order as the table columns
+	 * @param iFlags int MODE_APPEND, MODE_UPDATE or MODE_APPENDUPDATE
+	 * @throws SQLException
+	 */
+	protected void loadBatch(List<Object[]> aBatch, int iFlags) throws SQLException {
+		if (test(iFlags,MODE_UPDATE)) {
+			final int[] aUpdated = updateBatch(aBatch);
+			if (test(iFlags,MODE_APPEND)) {
+				LinkedHashMap<List<Object>,Object[]> oMissing = new LinkedHashMap<List<Object>,Object[]>();
+				for (int r=0; r<aUpdated.length; r++)
+					if (0==aUpdated[r])
+						oMissing.put(primaryKey(aBatch.get(r)), aBatch.get(r));
+				if (!oMissing.isEmpty())
+					insertBatch(oMissing.values());
+			}
+		} else {
+			insertBatch(aBatch);
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private void insertBatch(Iterable<Object[]> aRows) throws SQLException {
+		final PreparedStatement oInsr = getInsertStatement();
+		for (Object[] aRow : aRows) {
+			bindInsert(aRow);
+			oInsr.addBatch();
+		}
+		oInsr.executeBatch();
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * Some drivers do not return the count of rows affected by each statement of a batch.
+	 * For them the statements whose count is unknown are run again one by one. Repeating an update is harmless.
+	 */
+	private int[] updateBatch(List<Object[]> aRows) throws SQLException {
+		final PreparedStatement oUpdt = getUpdateStatement();
+		final int nRows = aRows.size();
+		int[] aUpdated;
+		if (bUpdateCountsUnknown) {
+			aUpdated = new int[nRows];
+			Arrays.fill(aUpdated, Statement.SUCCESS_NO_INFO);
+		} else {
+			for (Object[] aRow : aRows) {
+				bindUpdate(aRow);
+				oUpdt.addBatch();
+			}
+			aUpdated = oUpdt.executeBatch();
+			if (aUpdated.length<nRows)
+				aUpdated = Arrays.copyOf(aUpdated, nRows);
+		}
+		for (int r=0; r<nRows; r++) {
+			if (Statement.SUCCESS_NO_INFO==aUpdated[r]) {
+				bUpdateCountsUnknown = true;
+				bindUpdate(aRows.get(r));
+				aUpdated[r] = oUpdt.executeUpdate();
+			}
+		}
+		return aUpdated;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private List<Object> primaryKey(Object[] aRow) {
+		ArrayList<Object> aKey = new ArrayList<Object>(getPrimaryKeyMetadata().getNumberOfColumns());
+		for (ColumnMetadata oPk : getPrimaryKeyMetadata().getColumns())
+			aKey.add(aRow[getColumnIndex(oPk.getName())-1]);
+		return aKey;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Send the rows still buffered to the database and close the statements.</p>
+	 * @throws JDOException
+	 */
+	@Override
+	public void close() throws JDOException {
+		try {
+			flush();
+		} finally {
+			super.close();
+		}
+	}
+
+}
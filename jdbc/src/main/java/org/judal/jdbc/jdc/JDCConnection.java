@@ -18,6 +18,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
@@ -67,12 +68,13 @@ public class JDCConnection extends TransactionalResource implements Connection,
 	private int dbms;
 	private String schema;
 	private String name;
-	private long thid;
+	private volatile long thid;
 
 	private Connection conn;	
 	private JDCConnectionPool pool;
-	private boolean inuse;
-	private boolean started;
+	private final AtomicBoolean inuse;
+	private volatile boolean started;
+	private final JDCStatementCache stmtcache;
 
 	private static final String DBMSNAME_MSSQL = RDBMS.MSSQL.toString();
 	private static final String DBMSNAME_POSTGRESQL = RDBMS.POSTGRESQL.toString();
@@ -93,12 +95,13 @@ public class JDCConnection extends TransactionalResource implements Connection,
 		this.dbms = RDBMS.UNKNOWN.intValue();
 		this.conn=conn;
 		this.pool=pool;
-		this.inuse=false;
+		this.inuse=new AtomicBoolean(false);
 		this.started=false;
 		this.timestamp=0;
 		this.name = null;
 		this.schema=schemaname;
 		this.thid = -1l;
+		this.stmtcache = pool==null ? null : pool.newStatementCache();
 		listeners = new LinkedList<ConnectionEventListener>();
 	}
 
@@ -111,12 +114,13 @@ public class JDCConnection extends TransactionalResource implements Connection,
 		this.dbms = RDBMS.UNKNOWN.intValue();
 		this.conn=conn;
 		this.pool=pool;
-		this.inuse=false;
+		this.inuse=new AtomicBoolean(false);
 		this.started=false;
 		this.timestamp=0;
 		this.name = null;
 		this.schema=null;
 		this.thid = -1l;
+		this.stmtcache = pool==null ? null : pool.newStatementCache();
 		listeners = new LinkedList<ConnectionEventListener>();
 	}
 
@@ -256,6 +260,8 @@ public class JDCConnection extends TransactionalResource implements Connection,
 		}		
 		started = false;
 		thid = -1l;
+		if (pool!=null && !inuse.get())
+			pool.releaseResource(this);
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
 			DebugFile.writeln("End JDCConnection.endResource() : " + getId().toString());
@@ -282,7 +288,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 	 * @return boolean
 	 */
 	public boolean inUse() {
-		return inuse;
+		return inuse.get();
 	}	
 
 	/**
@@ -338,13 +344,14 @@ public class JDCConnection extends TransactionalResource implements Connection,
 	 * @throws IllegalStateException If the connection was already leased by another thread and it is still participating in a transaction
 	 */
 	public boolean lease(String sConnectionName) {
-		if (inuse) {
+		if (inuse.get()) {
 			return false;
 		} else {
 			final long cthid = Thread.currentThread().getId();
 			if (thid!=-1l && thid!=cthid)
 				throw new IllegalStateException("JDCConnection " + getId() + " was already leased by another thread " + thid + " and it is participating in a transaction");
-			inuse = true;
+			if (!inuse.compareAndSet(false, true))
+				return false;
 			thid = cthid;
 			name = sConnectionName;
 			timestamp = System.currentTimeMillis();
@@ -488,7 +495,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 				conn.close();
 			} catch (SQLException e) { }
 			notifyClose();
-			inuse = false;
+			inuse.set(false);
 			name = null;
 		}
 		else {
@@ -502,7 +509,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 		}
 
 		if (DebugFile.trace) {
-			DebugFile.writeln("JDCConnection " + getId() + " " + (started ? "is" : "is not") + " started and " + (inuse ? "in use" : "not in use"));
+			DebugFile.writeln("JDCConnection " + getId() + " " + (started ? "is" : "is not") + " started and " + (inuse.get() ? "in use" : "not in use"));
 			DebugFile.decIdent();
 			DebugFile.writeln("End JDCConnection.close() : " + (getId()!=null ? getId().toString() : "no cid"));
 		}
@@ -525,7 +532,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 			DebugFile.writeln((getId()==null ? "No cid" : "cid=" + getId()) + " " + (started ? "started" : "non started") + " " + (pool!=null ? "pooled" : "non pooled") + " JDCConnection");
 		}
 		if (pool==null) {
-			inuse = false;
+			inuse.set(false);
 			name = null;
 			conn.close();
 			notifyClose();
@@ -547,7 +554,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 		}
 
 		if (DebugFile.trace) {
-			DebugFile.writeln("JDCConnection " + getId() + " " + (started ? "is" : "is not") + " started and " + (inuse ? "in use" : "not in use"));
+			DebugFile.writeln("JDCConnection " + getId() + " " + (started ? "is" : "is not") + " started and " + (inuse.get() ? "in use" : "not in use"));
 			DebugFile.decIdent();
 			DebugFile.writeln("End JDCConnection.close("+sCaller+") : " + (getId()!=null ? getId().toString() : "no cid"));
 		}
@@ -560,6 +567,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 	 */
 	public void dispose() {
 		try { if (!getAutoCommit()) rollback(); } catch (SQLException ignore) { }		
+		clearStatementCache();
 		thid = -1l;
 		started = false;
 		if (pool!=null) {
@@ -575,16 +583,94 @@ public class JDCConnection extends TransactionalResource implements Connection,
 	 */
 	public void dispose(String sCaller) {
 		try { if (!getAutoCommit()) rollback(); } catch (SQLException ignore) { }
+		clearStatementCache();
 		if (pool!=null) {
 			pool.returnConnection(this, sCaller);
 			pool.disposeConnection(this);
 		}
 	}
 
+	/**
+	 * <p>Get a prepared statement from this connection statement cache.</p>
+	 * Result sets created using the returned PreparedStatement will be type TYPE_FORWARD_ONLY and have a concurrency level of CONCUR_READ_ONLY.
+	 * The statement must be given back by calling releaseStatement() instead of closing it.
+	 * If the statement cache is disabled then this method is equivalent to prepareStatement(sql).
+	 * @param sql String an SQL statement that may contain one or more '?' IN parameter placeholders
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareCachedStatement(String sql) throws SQLException {
+		return prepareCachedStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	/**
+	 * <p>Get a prepared statement from this connection statement cache.</p>
+	 * The statement must be given back by calling releaseStatement() instead of closing it.
+	 * If the statement cache is disabled then this method is equivalent to prepareStatement(sql, resultSetType, resultSetConcurrency).
+	 * @param sql String an SQL statement that may contain one or more '?' IN parameter placeholders
+	 * @param resultSetType int one of ResultSet.TYPE_FORWARD_ONLY, ResultSet.TYPE_SCROLL_INSENSITIVE, or ResultSet.TYPE_SCROLL_SENSITIVE
+	 * @param resultSetConcurrency int one of ResultSet.CONCUR_READ_ONLY or ResultSet.CONCUR_UPDATABLE
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareCachedStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		if (DebugFile.trace) {
+			if (getThreadId()!=-1l && getThreadId()!=Thread.currentThread().getId())
+				throw new SQLException("JDCConnection.prepareCachedStatement() JDCConnection " + getId() + " is already in use by thread " + getThreadId());
+		}
+		if (null==stmtcache)
+			return conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		else
+			return stmtcache.take(conn, sql, resultSetType, resultSetConcurrency);
+	}
+
+	/**
+	 * <p>Give back a statement obtained from prepareCachedStatement().</p>
+	 * Parameters of the statement are cleared and it is kept open for reuse.
+	 * If the statement cache is disabled then the statement is closed.
+	 * @param stmt PreparedStatement
+	 * @throws SQLException
+	 */
+	public void releaseStatement(PreparedStatement stmt) throws SQLException {
+		if (null==stmtcache)
+			stmt.close();
+		else
+			stmtcache.release(stmt);
+	}
+
+	/**
+	 * <p>Close a statement obtained from prepareCachedStatement() without giving it back to the cache.</p>
+	 * This method should be used instead of releaseStatement() after a statement failed.
+	 * @param stmt PreparedStatement
+	 * @throws SQLException
+	 */
+	public void discardStatement(PreparedStatement stmt) throws SQLException {
+		if (null==stmtcache)
+			stmt.close();
+		else
+			stmtcache.discard(stmt);
+	}
+
+	/**
+	 * <p>Close all the statements kept at this connection statement cache.</p>
+	 * Must be called after executing DDL statements which may invalidate the cached statements.
+	 */
+	public void clearStatementCache() {
+		if (null!=stmtcache)
+			stmtcache.clear();
+	}
+
+	/**
+	 * @return JDCStatementCache or <b>null</b> if the statement cache is disabled
+	 */
+	public JDCStatementCache getStatementCache() {
+		return stmtcache;
+	}
+
 	protected void expireLease() {
 		if (!isStarted())
 			thid = -1l;
-		inuse = false;
+		inuse.set(false);
 		name = null ;
 	}
 
@@ -1692,7 +1778,7 @@ public class JDCConnection extends TransactionalResource implements Connection,
 		if (pool!=null) {
 			pool.disposeConnection(this);
 		}
-		inuse = false;
+		inuse.set(false);
 		name = null;
 	}
 
@@ -0,0 +1,304 @@
+package org.judal.jdbc.jdc;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Lock-free holder of the connections of a JDCConnectionPool.</p>
+ * Idle connections are kept at a concurrent deque so leasing and returning a connection
+ * are O(1) operations which do not acquire the pool monitor.
+ * Connections returned while they are still participating in a transaction are kept
+ * at a thread local list and they are only handed back to the thread that started them.
+ * When the maximum number of connections is reached callers wait for a returned
+ * connection up to a given timeout instead of failing immediately.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class JDCConnectionBag {
+
+	/**
+	 * Maximum time that a waiting caller sleeps before checking again whether a new connection can be opened
+	 */
+	private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100l);
+
+	private final JDCConnectionPool pool;
+	private final LinkedBlockingDeque<JDCConnection> idle;
+	private final ThreadLocal<ArrayList<JDCConnection>> bound;
+	private final AtomicInteger total;
+	private final AtomicInteger waiters;
+	private final AtomicLong leases;
+	private final AtomicLong affinityHits;
+	private final AtomicLong waits;
+	private final AtomicLong timeouts;
+	private volatile long waittimeout;
+
+	/**
+	 * <p>Constructor</p>
+	 * @param forpool JDCConnectionPool
+	 * @param waitTimeoutMs long Milliseconds that a caller will wait for a connection when the pool is exhausted
+	 */
+	JDCConnectionBag(JDCConnectionPool forpool, long waitTimeoutMs) {
+		pool = forpool;
+		idle = new LinkedBlockingDeque<JDCConnection>();
+		bound = ThreadLocal.withInitial(() -> new ArrayList<JDCConnection>(2));
+		total = new AtomicInteger(0);
+		waiters = new AtomicInteger(0);
+		leases = new AtomicLong(0l);
+		affinityHits = new AtomicLong(0l);
+		waits = new AtomicLong(0l);
+		timeouts = new AtomicLong(0l);
+		waittimeout = waitTimeoutMs;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return long Milliseconds that a caller will wait for a connection when the pool is exhausted
+	 */
+	public long getWaitTimeout() {
+		return waittimeout;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @param waitTimeoutMs long Milliseconds that a caller will wait for a connection when the pool is exhausted.
+	 * Zero means that getConnection() will fail immediately as the synchronized pool does.
+	 * @throws IllegalArgumentException if waitTimeoutMs is negative
+	 */
+	public void setWaitTimeout(long waitTimeoutMs) throws IllegalArgumentException {
+		if (waitTimeoutMs<0l)
+			throw new IllegalArgumentException("Pool wait timeout cannot be negative");
+		waittimeout = waitTimeoutMs;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return int Count of open connections, either idle or in use
+	 */
+	public int size() {
+		return total.get();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return int Count of connections ready to be leased
+	 */
+	public int idleCount() {
+		return idle.size();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return int Count of callers currently waiting for a connection
+	 */
+	public int waitingCount() {
+		return waiters.get();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Lease a connection for the current thread.
+	 * Lookup order is: connections started by the current thread in a transaction,
+	 * idle connections, a new connection if the hard limit has not been reached
+	 * and at last wait for another thread to return a connection.
+	 * @param sCaller String Connection name
+	 * @param hardlimit int Maximum number of open connections
+	 * @return JDCConnection
+	 * @throws SQLException SQLState 08004 if no connection became available before the wait timeout
+	 */
+	JDCConnection lease(String sCaller, int hardlimit) throws SQLException {
+		JDCConnection j;
+
+		leases.incrementAndGet();
+
+		j = leaseBound(sCaller);
+		if (null!=j) {
+			affinityHits.incrementAndGet();
+			return j;
+		}
+
+		while ((j=idle.pollFirst())!=null) {
+			if (j.lease(sCaller))
+				return j;
+		}
+
+		if (reserve(hardlimit))
+			return open(sCaller);
+
+		if (waittimeout==0l)
+			throw new SQLException ("Maximum number of " + String.valueOf(hardlimit) + " concurrent connections exceeded","08004");
+
+		if (DebugFile.trace) DebugFile.writeln("JDCConnectionBag waiting up to " + String.valueOf(waittimeout) + " ms for a connection for " + sCaller);
+
+		waits.incrementAndGet();
+		waiters.incrementAndGet();
+		try {
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waittimeout);
+			long remaining;
+			while ((remaining = deadline - System.nanoTime()) > 0l) {
+				j = idle.pollFirst(Math.min(remaining, WAIT_SLICE_NANOS), TimeUnit.NANOSECONDS);
+				if (null!=j) {
+					if (j.lease(sCaller))
+						return j;
+				} else if (reserve(hardlimit)) {
+					return open(sCaller);
+				}
+			}
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+			throw new SQLException ("Interrupted while waiting for a pooled connection","08004");
+		} finally {
+			waiters.decrementAndGet();
+		}
+
+		timeouts.incrementAndGet();
+		throw new SQLException ("Maximum number of " + String.valueOf(hardlimit) + " concurrent connections exceeded after waiting " + String.valueOf(waittimeout) + " ms","08004");
+	}
+
+	// ---------------------------------------------------------
+
+	private JDCConnection leaseBound(String sCaller) {
+		final ArrayList<JDCConnection> mine = bound.get();
+		if (!mine.isEmpty()) {
+			final long tid = Thread.currentThread().getId();
+			for (int c=mine.size()-1; c>=0; c--) {
+				JDCConnection j = mine.get(c);
+				if (!j.isStarted() || j.getThreadId()!=tid)
+					mine.remove(c);
+				else if (j.lease(sCaller))
+					return j;
+			}
+		}
+		return null;
+	}
+
+	// ---------------------------------------------------------
+
+	private boolean reserve(int hardlimit) {
+		int current;
+		do {
+			current = total.get();
+			if (current>=hardlimit)
+				return false;
+		} while (!total.compareAndSet(current, current+1));
+		return true;
+	}
+
+	// ---------------------------------------------------------
+
+	private JDCConnection open(String sCaller) throws SQLException {
+		JDCConnection j = null;
+		try {
+			j = pool.openConnection(sCaller);
+		} finally {
+			if (null==j) total.decrementAndGet();
+		}
+		return j;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Put a connection back in the bag after its lease has expired.
+	 * @param j JDCConnection
+	 * @param poolsize int Preferred number of pooled connections
+	 */
+	void giveBack(JDCConnection j, int poolsize) {
+		boolean closed;
+		try {
+			closed = j.isClosed();
+		} catch (SQLException sqle) {
+			closed = true;
+		}
+		if (closed) {
+			pool.disposeConnection(j);
+		} else if (j.isStarted()) {
+			final ArrayList<JDCConnection> mine = bound.get();
+			if (j.getThreadId()==Thread.currentThread().getId() && !mine.contains(j))
+				mine.add(j);
+		} else if (total.get()>poolsize && waiters.get()==0) {
+			if (DebugFile.trace) DebugFile.writeln("JDCConnectionBag closing connection beyond pool size " + String.valueOf(poolsize));
+			pool.disposeConnection(j);
+		} else {
+			idle.offerFirst(j);
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Take an idle connection out of the bag so that it can be disposed.
+	 * @param j JDCConnection
+	 * @return boolean <b>true</b> if the connection was idle and no other thread can lease it anymore
+	 */
+	boolean claim(JDCConnection j) {
+		try {
+			if (!j.isStarted() && j.lease("JDCConnectionBag.claim")) {
+				idle.removeFirstOccurrence(j);
+				return true;
+			}
+		} catch (IllegalStateException leasedByAnotherThread) { }
+		return false;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Account for a connection which has been closed and removed from the pool
+	 * @param j JDCConnection
+	 */
+	void discard(JDCConnection j) {
+		idle.removeFirstOccurrence(j);
+		total.decrementAndGet();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Forget all connections. Called after the pool has closed all of them.
+	 */
+	void clear() {
+		idle.clear();
+		total.set(0);
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return Human readable usage statistics
+	 */
+	String dumpStatistics() {
+		return "Pool Mode=concurrent\n" +
+			"Pool Wait Timeout=" + String.valueOf(waittimeout) + " ms\n" +
+			"Idle Connections=" + String.valueOf(idleCount()) + "\n" +
+			"Waiting Callers=" + String.valueOf(waitingCount()) + "\n" +
+			"Leases=" + String.valueOf(leases.get()) + "\n" +
+			"Thread Affinity Hits=" + String.valueOf(affinityHits.get()) + "\n" +
+			"Waits=" + String.valueOf(waits.get()) + "\n" +
+			"Wait Timeouts=" + String.valueOf(timeouts.get()) + "\n";
+	}
+
+}
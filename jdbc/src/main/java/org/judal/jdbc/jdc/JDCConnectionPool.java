@@ -58,6 +58,21 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 	private JDCConnectionReaper reaper;
 	private ConcurrentLinkedQueue<String> errorlog;
 	private int maxerrors = 100;
+
+	/**
+	 * Lock-free connection holder used when the pool mode is "concurrent", <b>null</b> for the synchronized pool
+	 */
+	private JDCConnectionBag bag;
+
+	/**
+	 * Maximum number of prepared statements cached at each connection, zero if statement caching is disabled
+	 */
+	private int stmtcachesize;
+
+	/**
+	 * Statement cache counters shared by all connections of this pool
+	 */
+	private final JDCStatementCache.Counters stmtcounters = new JDCStatementCache.Counters();
 	
 	/**
 	 * Staled connection threshold (10 minutes)
@@ -79,6 +94,9 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 	/**
 	 * <p>Constructor</p>
+	 * If property DataSource.POOLMODE is "concurrent" then connections will be leased and returned
+	 * without acquiring the pool monitor and callers will wait up to DataSource.POOLWAITTIMEOUT milliseconds
+	 * for a connection when the maximum number of connections has been reached.
 	 * @throws IllegalArgumentException
 	 * @throws NumberFormatException
 	 */
@@ -98,9 +116,18 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 		this.poolsize = Env.getPositiveInteger(properties, TableDataSource.MAXPOOLSIZE, Integer.parseInt(TableDataSource.DEFAULT_MAXPOOLSIZE));
 		this.hardlimit = Env.getPositiveInteger(properties, TableDataSource.MAXCONNECTIONS, Integer.parseInt(TableDataSource.DEFAULT_MAXCONNECTIONS));
 		this.timeout = Env.getPositiveInteger(properties, TableDataSource.CONNECTIONTIMEOUT, Integer.parseInt(TableDataSource.DEFAULT_CONNECTIONTIMEOUT));
+		this.stmtcachesize = Env.getPositiveInteger(properties, TableDataSource.STATEMENTCACHESIZE, Integer.parseInt(TableDataSource.DEFAULT_STATEMENTCACHESIZE));
 
 		DriverManager.setLoginTimeout(Env.getPositiveInteger(properties, TableDataSource.LOGINTIMEOUT, Integer.parseInt(TableDataSource.DEFAULT_LOGINTIMEOUT)));
 
+		final String poolmode = Env.getString(properties, TableDataSource.POOLMODE, TableDataSource.DEFAULT_POOLMODE);
+		if (poolmode.equalsIgnoreCase("concurrent"))
+			bag = new JDCConnectionBag(this, Env.getPositiveInteger(properties, TableDataSource.POOLWAITTIMEOUT, Integer.parseInt(TableDataSource.DEFAULT_POOLWAITTIMEOUT)));
+		else if (poolmode.equalsIgnoreCase("synchronized") || poolmode.length()==0)
+			bag = null;
+		else
+			throw new IllegalArgumentException("JDCConnectionPool : unrecognized pool mode " + poolmode);
+
 		connections = new Vector<JDCConnection>(this.poolsize<=hardlimit ? this.poolsize : hardlimit);
 		reaper = new JDCConnectionReaper(this);
 		reaper.start();
@@ -304,6 +331,40 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 		timeout = miliseconds;
 	}
 
+	/**
+	 * @return String "concurrent" if this pool is using a lock-free connection bag or "synchronized" otherwise
+	 */
+	public String getPoolMode() {
+		return bag==null ? "synchronized" : "concurrent";
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * <p>Get the time that a caller will wait for a connection when the concurrent pool is exhausted</p>
+	 * The synchronized pool never waits and always returns zero.
+	 * @return long Milliseconds
+	 */
+	public long getWaitTimeout() {
+		return bag==null ? 0l : bag.getWaitTimeout();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * <p>Set the time that a caller will wait for a connection when the concurrent pool is exhausted</p>
+	 * @param miliseconds long
+	 * @throws IllegalArgumentException If miliseconds is negative
+	 * @throws IllegalStateException If this pool is not in concurrent mode
+	 */
+	public void setWaitTimeout(long miliseconds) throws IllegalArgumentException, IllegalStateException {
+		if (bag==null)
+			throw new IllegalStateException("Wait timeout can only be set when the pool mode is concurrent");
+		bag.setWaitTimeout(miliseconds);
+	}
+
+	// ---------------------------------------------------------
+
 	/**
 	 * Delay between connection reaper executions
 	 * @return long Number of milliseconds
@@ -344,6 +405,7 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 		try {
 
 			sCaller = conn.getName();
+			conn.clearStatementCache();
 			if (!conn.isClosed()) {         	
 				conn.getConnection().close();
 				conn.notifyClose();
@@ -363,14 +425,62 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 		}
 
 		if (bClosed) {
-			if (DebugFile.trace) DebugFile.writeln("connections.removeElement(" + String.valueOf(openconns) + ")");
-			connections.removeElement(conn);
-			openconns--;
+			if (DebugFile.trace) DebugFile.writeln("connections.removeElement(" + String.valueOf(size()) + ")");
+			if (bag==null) {
+				connections.removeElement(conn);
+				openconns--;
+			} else if (connections.removeElement(conn)) {
+				bag.discard(conn);
+			}
 		}
 	} // disposeConnection()
 
 	// ---------------------------------------------------------
 
+	/**
+	 * @return int Maximum number of prepared statements cached at each connection, zero if statement caching is disabled
+	 */
+	public int getStatementCacheSize() {
+		return stmtcachesize;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Create a statement cache for a new connection of this pool
+	 * @return JDCStatementCache or <b>null</b> if statement caching is disabled
+	 */
+	JDCStatementCache newStatementCache() {
+		return stmtcachesize==0 ? null : new JDCStatementCache(stmtcachesize, stmtcounters);
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Close the cached prepared statements of all connections of this pool.
+	 * Must be called after altering the database schema.
+	 */
+	public void clearStatementCaches() {
+		if (stmtcachesize>0) {
+			Enumeration<JDCConnection> connlist = connections.elements();
+			while (connlist.hasMoreElements())
+				connlist.nextElement().clearStatementCache();
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Called by a connection when it ends its participation in a transaction after having been returned to the pool
+	 * @param conn JDCConnection
+	 */
+	void releaseResource(JDCConnection conn) {
+		if (bag!=null && !conn.inUse())
+			bag.giveBack(conn, poolsize);
+	}
+
+	// ---------------------------------------------------------
+
 	/**
 	 * Called from the connection reaper daemon thread every n-minutes for maintaining the pool clean
 	 */
@@ -390,9 +500,10 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 			// Remove each connection that is not in use and not participating in a transaction
 			// or is stalled for more than maximum usage timeout (default 10 mins)
-			if (!conn.inUse() && !conn.isStarted())
-				disposeConnection(conn);
-			else if (stale>conn.getLastUse()) {
+			if (!conn.inUse() && !conn.isStarted()) {
+				if (bag==null || bag.claim(conn))
+					disposeConnection(conn);
+			} else if (stale>conn.getLastUse()) {
 				if (DebugFile.trace) DebugFile.writeln("Connection "+conn.getName()+" was staled since "+new Date(conn.getLastUse()).toString());
 				if (errorlog.size()>maxerrors) errorlog.poll();
 				errorlog.add(new Date().toString()+" Connection "+conn.getName()+" was staled since "+new Date(conn.getLastUse()).toString());
@@ -434,10 +545,11 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
-			DebugFile.writeln("End JDCConnectionPool.closeConnections() : " + String.valueOf(openconns));
+			DebugFile.writeln("End JDCConnectionPool.closeConnections() : " + String.valueOf(size()));
 		}
 
 		openconns = 0;
+		if (bag!=null) bag.clear();
 	} // closeConnections()
 
 	// ---------------------------------------------------------
@@ -539,13 +651,31 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 	private JDCConnection leaseNewConnection(String sCaller) throws SQLException {
 		JDCConnection j;
-		Connection c;
 
 		if (openconns==hardlimit) {
 			if (DebugFile.trace) DebugFile.decIdent();
 			throw new SQLException ("Maximum number of " + String.valueOf(hardlimit) + " concurrent connections exceeded","08004");
 		}
 
+		j = openConnection(sCaller);
+
+		if (null!=j) openconns++;
+		
+		return j;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Open a new physical connection, lease it for the caller and add it to the pool
+	 * @param sCaller String
+	 * @return JDCConnection or <b>null</b> if DriverManager returned no connection
+	 * @throws SQLException
+	 */
+	JDCConnection openConnection(String sCaller) throws SQLException {
+		JDCConnection j;
+		Connection c;
+
 		if (DebugFile.trace) DebugFile.writeln("  DriverManager.getConnection(" + url + ", ...)");
 
 		if (user==null && password==null)
@@ -574,8 +704,6 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 		}
 
-		if (null!=j) openconns++;
-		
 		return j;
 	}
 
@@ -587,12 +715,14 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 	 * mismatch tracking and other benchmarking and statistical purposes.
 	 * @return Opened JDCConnection
 	 * @throws SQLException If getMaxPoolSize() opened connections is reached an
-	 * SQLException with SQLState="08004" will be raised upon calling getConnection().<br>
+	 * SQLException with SQLState="08004" will be raised upon calling getConnection().
+	 * In concurrent mode the exception is raised only after waiting getWaitTimeout() milliseconds
+	 * for another thread to return a connection.<br>
 	 * <b>Microsoft SQL Server</b>: Connection reuse requires that SelectMethod=cursor was
 	 * specified at connection string.
 	 */
 
-	public synchronized JDCConnection getConnection(String sCaller) throws SQLException {
+	public JDCConnection getConnection(String sCaller) throws SQLException {
 
 		JDCConnection j;
 		Connection c;
@@ -617,10 +747,20 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 		} else {
 
-			j = leaseExistingConnection(sCaller);
-
-			if (null==j)
-				j = leaseNewConnection(sCaller);
+			if (null==bag) {
+				synchronized (this) {
+					j = leaseExistingConnection(sCaller);
+					if (null==j)
+						j = leaseNewConnection(sCaller);
+				}
+			} else {
+				try {
+					j = bag.lease(sCaller, hardlimit);
+				} catch (SQLException sqle) {
+					if (DebugFile.trace) DebugFile.decIdent();
+					throw sqle;
+				}
+			}
 
 			if (DebugFile.trace ) {
 				if (sCaller!=null) modifyMap(sCaller, 1);
@@ -647,7 +787,7 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 	 * specified at connection string.
 	 */
 
-	public synchronized PooledConnection getPooledConnection() throws SQLException {
+	public PooledConnection getPooledConnection() throws SQLException {
 		return (PooledConnection) getConnection(null);
 	}
 
@@ -711,20 +851,22 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 	 * @param conn JDCConnection returned to the pool
 	 */
 
-	public synchronized void returnConnection(JDCConnection conn) {
+	public void returnConnection(JDCConnection conn) {
 		if (DebugFile.trace) {
 			DebugFile.writeln("JDCConnectionPool.returnConnection(["+conn.getId()+"])");
 			if (!connections.contains(conn))
 				DebugFile.writeln("Warning: JDCConnection "+conn.getId()+" "+(conn.getName()==null ? "" : conn.getName())+" is not pooled");
 			DebugFile.writeln("JDCConnection.expireLease() on connection " + conn.getId() + (conn.getThreadId()==-1l ? "" : " for thread " + conn.getThreadId()));
 		}
-		
-		conn.expireLease();
+
+		final String sCaller = conn.getName();
+
+		expireLease(conn);
 
 		if (DebugFile.trace) {
-			if (null!=conn.getName())
-				if (conn.getName().length()>0)
-				  modifyMap(conn.getName(), -1);
+			if (null!=sCaller)
+				if (sCaller.length()>0)
+				  modifyMap(sCaller, -1);
 		}
 	} // returnConnection()
 
@@ -736,7 +878,7 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 	 * @param sCaller Must be the same String passed as parameter at getConnection()
 	 */
 
-	public synchronized void returnConnection(JDCConnection conn, String sCaller) {
+	public void returnConnection(JDCConnection conn, String sCaller) {
 
 		if (DebugFile.trace) {
 			DebugFile.writeln("JDCConnectionPool.returnConnection(["+conn.getId()+"], "+sCaller+")");
@@ -744,8 +886,8 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 				DebugFile.writeln("Warning: JDCConnection "+conn.getId()+" "+sCaller+" is not pooled");
 			DebugFile.writeln("JDCConnection.expireLease()  on connection " + conn.getId() + (conn.getThreadId()==-1l ? "" : " for thread " + conn.getThreadId()));
 		}
-		
-		conn.expireLease();
+
+		expireLease(conn);
 
 		if (DebugFile.trace) {
 			if (null!=sCaller) modifyMap(sCaller, -1);
@@ -754,12 +896,25 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 
 	// ---------------------------------------------------------
 
+	private void expireLease(JDCConnection conn) {
+		if (null==bag) {
+			synchronized (this) {
+				conn.expireLease();
+			}
+		} else {
+			conn.expireLease();
+			bag.giveBack(conn, poolsize);
+		}
+	}
+
+	// ---------------------------------------------------------
+
 	/**
 	 * @return Actual connection pool size
 	 */
 
 	public int size() {
-		return openconns;
+		return bag==null ? openconns : bag.size();
 	}
 
 	// ---------------------------------------------------------
@@ -875,6 +1030,8 @@ public class JDCConnectionPool implements ConnectionPoolDataSource {
 		sDump += "Maximum Connections=" + String.valueOf(hardlimit) + "\n";
 		sDump += "Connection Timeout=" + String.valueOf(timeout) + " ms\n";
 		sDump += "Reaper Daemon Delay=" + String.valueOf(getReaperDaemonDelay()) + " ms\n";
+		if (bag!=null) sDump += bag.dumpStatistics();
+		if (stmtcachesize>0) sDump += stmtcounters.dumpStatistics(stmtcachesize);
 		sDump += "\n";
 
 		iStaled = iConnOrdinal = 0;
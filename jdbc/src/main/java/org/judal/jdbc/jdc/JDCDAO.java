@@ -24,14 +24,18 @@ import java.io.StringBufferInputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 import javax.jdo.metadata.ColumnMetadata;
 
@@ -40,6 +44,7 @@ import org.judal.jdbc.RDBMS;
 import org.judal.jdbc.jdc.JDCConnection;
 import org.judal.jdbc.metadata.SQLColumn;
 import org.judal.jdbc.metadata.SQLStatements;
+import org.judal.jdbc.metadata.SQLStatements.UpsertSyntax;
 import org.judal.metadata.ColumnDef;
 import org.judal.metadata.TypeDef;
 import org.judal.storage.table.Record;
@@ -56,6 +61,11 @@ import com.knowgate.gis.LatLong;
 @SuppressWarnings("deprecation")
 public class JDCDAO {
 
+	private static final int BATCH_UPSERT = 0;
+	private static final int BATCH_UPDATE = 1;
+	private static final int BATCH_INSERT = 2;
+	private static final int BATCH_DELETE = 3;
+
 	private SQLStatements sqlStatements;
 	private TypeDef tdef;
 	
@@ -66,6 +76,15 @@ public class JDCDAO {
 		this.sqlStatements = sqlStatements;
 	}
 
+	// ----------------------------------------------------------
+
+	/**
+	 * @return SQLStatements Precomputed statements used by this DAO
+	 */
+	public SQLStatements getSqlStatements() {
+		return sqlStatements;
+	}
+
 	// ---------------------------------------------------------------------------
 
 	public static Object toJavaObject(Object oObj, String sColName, int iColType) {
@@ -149,7 +168,7 @@ public class JDCDAO {
 			if (DebugFile.trace) DebugFile.writeln("  Connection.prepareStatement(" + sqlStatements.getSelect() + ")");
 
 			// Prepare SELECT sentence for reading
-			oStmt = oConn.prepareStatement(sqlStatements.getSelect());
+			oStmt = oConn.prepareCachedStatement(sqlStatements.getSelect());
 
 			// Bind primary key values
 			for (int p=0; p<tdef.getPrimaryKeyMetadata().getNumberOfColumns(); p++) {
@@ -184,9 +203,9 @@ public class JDCDAO {
 			oRSet.close();
 			oRSet = null;
 
-			if (DebugFile.trace) DebugFile.writeln("PreparedStatement.close()");
+			if (DebugFile.trace) DebugFile.writeln("JDCConnection.releaseStatement()");
 
-			oStmt.close();
+			oConn.releaseStatement(oStmt);
 			oStmt = null;
 		}
 		catch (SQLException sqle) {
@@ -196,7 +215,7 @@ public class JDCDAO {
 			}
 			try {
 				if (null!=oRSet) oRSet.close();
-				if (null!=oStmt) oStmt.close();
+				if (null!=oStmt) oConn.discardStatement(oStmt);
 			}
 			catch (Exception ignore) { }
 			throw new SQLException(sqle.getMessage(), sqle.getSQLState(), sqle.getErrorCode());
@@ -221,6 +240,9 @@ public class JDCDAO {
 	 * Columns with auto increment serial are not written by this storeRegister().
 	 * Columns named "dt_created" are also invisible for storeRegister() method so that
 	 * register creation timestamp is not altered by afterwards updates.
+	 * On PostgreSQL the register is written with a single INSERT ... ON CONFLICT ... RETURNING statement,
+	 * for other databases an UPDATE is tried first and an INSERT is executed if no row was updated.
+	 * Callers which do not need to know whether the register was inserted should use upsertRegister().
 	 * @param oConn Database Connection
 	 * @param Record Values to assign to fields.
 	 * @return <b>true</b> if register was inserted for first time, <false> if it was updated.
@@ -238,6 +260,9 @@ public class JDCDAO {
 		if (null==oConn)
 			throw new NullPointerException("JDCDAO.storeRegister() Connection is null");
 
+		if (null!=sqlStatements.getUpsertReturningInserted())
+			return executeUpsert(oConn, AllValues, sqlStatements.getUpsertReturningInserted(), true);
+
 		if (DebugFile.trace)
 		{
 			DebugFile.writeln("Begin JDCDAO.storeRegister(" + oConn +", {" + AllValues.toString() + "})" );
@@ -251,7 +276,7 @@ public class JDCDAO {
 
 				sSQL = sqlStatements.getUpdate();
 
-				oStmt = oConn.prepareStatement(sSQL);
+				oStmt = oConn.prepareCachedStatement(sSQL);
 
 				c = 1;
 
@@ -306,14 +331,14 @@ public class JDCDAO {
 						DebugFile.writeln("SQLException "+sqle.getMessage());
 						DebugFile.decIdent();
 					}
-					oStmt.close();
+					oConn.discardStatement(oStmt);
 					oStmt = null;
 					throw new SQLException(sqle.getMessage(), sqle.getSQLState(), sqle.getErrorCode());
 				}
 
 				if (DebugFile.trace) DebugFile.writeln(String.valueOf(iAffected) +  " affected rows");
 
-				oStmt.close();
+				oConn.releaseStatement(oStmt);
 				oStmt = null;
 			} // fi (sUpdate!=null)
 
@@ -324,7 +349,7 @@ public class JDCDAO {
 
 				if (DebugFile.trace) DebugFile.writeln("Connection.prepareStatement(" + sqlStatements.getInsert() + ")");
 
-				oStmt = oConn.prepareStatement(sqlStatements.getInsert());
+				oStmt = oConn.prepareCachedStatement(sqlStatements.getInsert());
 
 				c = 1;
 
@@ -350,7 +375,7 @@ public class JDCDAO {
 
 				if (DebugFile.trace) DebugFile.writeln(String.valueOf(iAffected) +  " affected rows");
 
-				oStmt.close();
+				oConn.releaseStatement(oStmt);
 				oStmt = null;
 			}
 			else
@@ -362,7 +387,7 @@ public class JDCDAO {
 				DebugFile.decIdent();
 			}
 
-			try { if (null!=oStmt) oStmt.close(); } catch (Exception ignore) { }
+			try { if (null!=oStmt) oConn.discardStatement(oStmt); } catch (Exception ignore) { }
 
 			throw new SQLException (sqle.getMessage() + " " + sSQL, sqle.getSQLState(), sqle.getErrorCode());
 		}
@@ -377,6 +402,134 @@ public class JDCDAO {
 
 	// ---------------------------------------------------------------------------
 
+	/**
+	 * <p>Insert or update a single register without telling which of both was done.</p>
+	 * If the database supports it the register is written with a single INSERT ... ON CONFLICT,
+	 * INSERT ... ON DUPLICATE KEY UPDATE or MERGE statement, else storeRegister() is called.
+	 * Columns with auto increment serial and the creation timestamp column are not updated.
+	 * @param oConn Database Connection
+	 * @param Record Values to assign to fields.
+	 * @throws SQLException
+	 * @throws NullPointerException If oConn is null.
+	 */
+	public void upsertRegister(JDCConnection oConn, Record AllValues) throws SQLException {
+		if (null==oConn)
+			throw new NullPointerException("JDCDAO.upsertRegister() Connection is null");
+
+		if (null!=sqlStatements.getUpsert())
+			executeUpsert(oConn, AllValues, sqlStatements.getUpsert(), false);
+		else
+			storeRegister(oConn, AllValues);
+	} // upsertRegister
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @param sSQL String Upsert statement
+	 * @param bReturnsInserted boolean Whether sSQL returns a row telling if the register was inserted
+	 * @return boolean <b>true</b> if bReturnsInserted and the register was inserted
+	 */
+	private boolean executeUpsert(JDCConnection oConn, Record AllValues, String sSQL, boolean bReturnsInserted) throws SQLException {
+		boolean bNewRow = false;
+		PreparedStatement oStmt = null;
+		ResultSet oRSet = null;
+
+		if (DebugFile.trace)
+		{
+			DebugFile.writeln("Begin JDCDAO.executeUpsert(" + oConn +", {" + AllValues.toString() + "})" );
+			DebugFile.incIdent();
+			DebugFile.writeln("Connection.prepareStatement(" + sSQL + ")");
+		}
+
+		try {
+			oStmt = oConn.prepareCachedStatement(sSQL);
+
+			bindUpsertParameters(oConn, oStmt, AllValues);
+
+			if (bReturnsInserted) {
+				if (DebugFile.trace) DebugFile.writeln("PreparedStatement.executeQuery()");
+				oRSet = oStmt.executeQuery();
+				bNewRow = oRSet.next() && oRSet.getBoolean(1);
+				oRSet.close();
+				oRSet = null;
+			} else {
+				if (DebugFile.trace) DebugFile.writeln("PreparedStatement.executeUpdate()");
+				final int iAffected = oStmt.executeUpdate();
+				if (DebugFile.trace) DebugFile.writeln(String.valueOf(iAffected) +  " affected rows");
+			}
+
+			oConn.releaseStatement(oStmt);
+			oStmt = null;
+		}
+		catch (ClassCastException cce) {
+			try { if (null!=oRSet) oRSet.close(); } catch (Exception ignore) { }
+			try { if (null!=oStmt) oConn.discardStatement(oStmt); } catch (Exception ignore) { }
+			if (DebugFile.trace) DebugFile.decIdent();
+			throw new SQLException("ClassCastException " + cce.getMessage() + " " + sSQL, "07006");
+		}
+		catch (SQLException sqle) {
+			if (DebugFile.trace) {
+				DebugFile.writeln(sqle.getClass().getName() + " " + sqle.getMessage() + ", SQLState=" + sqle.getSQLState() +", ErrorCode=" + sqle.getErrorCode() + ", Connection Name=" + oConn.getName() + ", SQL=" + sSQL);
+				DebugFile.decIdent();
+			}
+			try { if (null!=oRSet) oRSet.close(); } catch (Exception ignore) { }
+			try { if (null!=oStmt) oConn.discardStatement(oStmt); } catch (Exception ignore) { }
+			throw new SQLException (sqle.getMessage() + " " + sSQL, sqle.getSQLState(), sqle.getErrorCode());
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End JDCDAO.executeUpsert() : " + String.valueOf(bNewRow));
+		}
+
+		return bNewRow;
+	} // executeUpsert
+
+	// ---------------------------------------------------------------------------
+
+	private int bindPrimaryKeyParameters(JDCConnection oConn, PreparedStatement oStmt, int c, Record AllValues) throws SQLException {
+		for (ColumnMetadata cmd : tdef.getPrimaryKeyMetadata().getColumns()) {
+			ColumnDef oCol = tdef.getColumnByName(cmd.getName());
+			c += oConn.bindParameter (oStmt, c, AllValues.apply(oCol.getName()), oCol.getType());
+		}
+		return c;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private int bindUpdateParameters(JDCConnection oConn, PreparedStatement oStmt, int c, Record AllValues) throws SQLException {
+		for (ColumnDef oCol : tdef.getColumns()) {
+			final String sCol = oCol.getName().toLowerCase();
+			if (!oCol.isPrimaryKey() && !sCol.equalsIgnoreCase(sqlStatements.getTimestampColumn()) && !oCol.getAutoIncrement())
+				c += oConn.bindParameter (oStmt, c, AllValues.apply(sCol), oCol.getType().shortValue());
+		}
+		return c;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private int bindInsertParameters(JDCConnection oConn, PreparedStatement oStmt, int c, Record AllValues) throws SQLException {
+		for (ColumnDef oCol : tdef.getColumns()) {
+			if (!oCol.getAutoIncrement())
+				c += oConn.bindParameter (oStmt, c, AllValues.apply(oCol.getName()), oCol.getType());
+		}
+		return c;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private void bindUpsertParameters(JDCConnection oConn, PreparedStatement oStmt, Record AllValues) throws SQLException {
+		int c = 1;
+		if (sqlStatements.getUpsertSyntax()==UpsertSyntax.MERGE) {
+			// MERGE ... ON (pk=?) WHEN MATCHED THEN UPDATE SET col=? WHEN NOT MATCHED THEN INSERT (...) VALUES (?)
+			c = bindPrimaryKeyParameters(oConn, oStmt, c, AllValues);
+			c = bindUpdateParameters(oConn, oStmt, c, AllValues);
+		}
+		bindInsertParameters(oConn, oStmt, c, AllValues);
+	}
+
+	// ---------------------------------------------------------------------------
+
 	/**
 	 * <p>Store a single register at the database representing a Java Object</p>
 	 * for register NOT containing LONGVARBINARY, IMAGE, BYTEA or BLOB fields use
@@ -663,20 +816,28 @@ public class JDCDAO {
 
 		if (DebugFile.trace) DebugFile.writeln("Connection.prepareStatement(" + sqlStatements.getDelete() + ")");
 
-		oStmt = oConn.prepareStatement(sqlStatements.getDelete());
+		oStmt = oConn.prepareCachedStatement(sqlStatements.getDelete());
 
-		c = 1;
+		try {
+			c = 1;
 
-		while (c<=tdef.getPrimaryKeyMetadata().getNumberOfColumns()) {
-			oPK = tdef.getPrimaryKeyMetadata().getColumns()[c-1];
-			oCol = tdef.getColumnByName(oPK.getName());
-			if (DebugFile.trace) DebugFile.writeln("PreparedStatement.setObject(" + String.valueOf(c) + "," + AllValues.get(oPK.getName()) + ")");
-			oStmt.setObject (c++, AllValues.get(oPK.getName()), oCol.getType());
-		} // wend
+			while (c<=tdef.getPrimaryKeyMetadata().getNumberOfColumns()) {
+				oPK = tdef.getPrimaryKeyMetadata().getColumns()[c-1];
+				oCol = tdef.getColumnByName(oPK.getName());
+				if (DebugFile.trace) DebugFile.writeln("PreparedStatement.setObject(" + String.valueOf(c) + "," + AllValues.get(oPK.getName()) + ")");
+				oStmt.setObject (c++, AllValues.get(oPK.getName()), oCol.getType());
+			} // wend
+
+			if (DebugFile.trace) DebugFile.writeln("PreparedStatement.executeUpdate()");
 
-		if (DebugFile.trace) DebugFile.writeln("PreparedStatement.executeUpdate()");
+			bDeleted = (oStmt.executeUpdate()>0);
+		} catch (SQLException sqle) {
+			if (DebugFile.trace) DebugFile.decIdent();
+			try { oConn.discardStatement(oStmt); } catch (Exception ignore) { }
+			throw sqle;
+		}
 
-		bDeleted = (oStmt.executeUpdate()>0);
+		oConn.releaseStatement(oStmt);
 
 		if (DebugFile.trace)
 		{
@@ -689,6 +850,255 @@ public class JDCDAO {
 
 	// ---------------------------------------------------------------------------
 
+	/**
+	 * <p>Insert or update a list of registers sending them to the database in batches.</p>
+	 * If the table has a native upsert statement then every register is written with it.
+	 * Else the registers are first updated and those not found are then inserted in a second pass.
+	 * A failure writing one register does not stop the others from being written.
+	 * @param oConn Database connection
+	 * @param AllValues List&lt;Record&gt; Registers to be written
+	 * @param iBatchSize int Maximum number of registers sent to the database at once
+	 * @return Map&lt;Integer,SQLException&gt; Zero based position at AllValues and cause of each register that could not be written. Empty if all registers were written.
+	 * @throws SQLException If the statement could not be prepared or the connection failed
+	 * @throws NullPointerException If oConn is null.
+	 * @throws IllegalArgumentException If iBatchSize is less than 1
+	 */
+	public Map<Integer,SQLException> storeRegisters(JDCConnection oConn, List<? extends Record> AllValues, int iBatchSize) throws SQLException {
+		final TreeMap<Integer,SQLException> oFailures = new TreeMap<Integer,SQLException>();
+
+		checkBatchArguments("storeRegisters", oConn, iBatchSize);
+
+		if (DebugFile.trace)
+		{
+			DebugFile.writeln("Begin JDCDAO.storeRegisters(" + oConn +", " + String.valueOf(AllValues.size()) + " registers, " + String.valueOf(iBatchSize) + ")" );
+			DebugFile.incIdent();
+		}
+
+		final int[] aCounts = new int[AllValues.size()];
+
+		if (null!=sqlStatements.getUpsert()) {
+			executeBatches(oConn, sqlStatements.getUpsert(), BATCH_UPSERT, AllValues, null, iBatchSize, aCounts, oFailures);
+		} else if (null==sqlStatements.getUpdate()) {
+			executeBatches(oConn, sqlStatements.getInsert(), BATCH_INSERT, AllValues, null, iBatchSize, aCounts, oFailures);
+		} else {
+			executeBatches(oConn, sqlStatements.getUpdate(), BATCH_UPDATE, AllValues, null, iBatchSize, aCounts, oFailures);
+			ArrayList<Integer> oNotFound = new ArrayList<Integer>();
+			for (int r=0; r<aCounts.length; r++) {
+				if (!oFailures.containsKey(r)) {
+					if (aCounts[r]==0) {
+						oNotFound.add(r);
+					} else if (aCounts[r]==Statement.SUCCESS_NO_INFO) {
+						// The driver did not tell whether the register existed, so fall back to a single row store
+						try {
+							storeRegister(oConn, AllValues.get(r));
+						} catch (SQLException sqle) {
+							oFailures.put(r, sqle);
+						}
+					}
+				}
+			}
+			if (oNotFound.size()>0)
+				executeBatches(oConn, sqlStatements.getInsert(), BATCH_INSERT, AllValues, oNotFound, iBatchSize, aCounts, oFailures);
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End JDCDAO.storeRegisters() : " + String.valueOf(oFailures.size()) + " failures");
+		}
+
+		return oFailures;
+	} // storeRegisters
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Insert a list of registers sending them to the database in batches.</p>
+	 * A failure inserting one register does not stop the others from being inserted
+	 * unless the database driver stops processing the batch at the first error.
+	 * @param oConn Database connection
+	 * @param AllValues List&lt;Record&gt; Registers to be inserted
+	 * @param iBatchSize int Maximum number of registers sent to the database at once
+	 * @return Map&lt;Integer,SQLException&gt; Zero based position at AllValues and cause of each register that could not be inserted. Empty if all registers were inserted.
+	 * @throws SQLException If the statement could not be prepared or the connection failed
+	 * @throws NullPointerException If oConn is null.
+	 * @throws IllegalArgumentException If iBatchSize is less than 1
+	 */
+	public Map<Integer,SQLException> insertRegisters(JDCConnection oConn, List<? extends Record> AllValues, int iBatchSize) throws SQLException {
+		final TreeMap<Integer,SQLException> oFailures = new TreeMap<Integer,SQLException>();
+
+		checkBatchArguments("insertRegisters", oConn, iBatchSize);
+
+		if (DebugFile.trace)
+		{
+			DebugFile.writeln("Begin JDCDAO.insertRegisters(" + oConn +", " + String.valueOf(AllValues.size()) + " registers, " + String.valueOf(iBatchSize) + ")" );
+			DebugFile.incIdent();
+		}
+
+		executeBatches(oConn, sqlStatements.getInsert(), BATCH_INSERT, AllValues, null, iBatchSize, new int[AllValues.size()], oFailures);
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End JDCDAO.insertRegisters() : " + String.valueOf(oFailures.size()) + " failures");
+		}
+
+		return oFailures;
+	} // insertRegisters
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Delete a list of registers sending them to the database in batches.</p>
+	 * Registers not found are not considered failures.
+	 * @param oConn Database connection
+	 * @param AllValues List&lt;Map&lt;String,Object&gt;&gt; Primary key values of each register to be deleted
+	 * @param iBatchSize int Maximum number of registers sent to the database at once
+	 * @return Map&lt;Integer,SQLException&gt; Zero based position at AllValues and cause of each register that could not be deleted. Empty if there were no errors.
+	 * @throws SQLException SQLState 42S12 if the table has no primary key
+	 * @throws NullPointerException If oConn is null.
+	 * @throws IllegalArgumentException If iBatchSize is less than 1
+	 */
+	public Map<Integer,SQLException> deleteRegisters(JDCConnection oConn, List<? extends Map<String,Object>> AllValues, int iBatchSize) throws SQLException {
+		final TreeMap<Integer,SQLException> oFailures = new TreeMap<Integer,SQLException>();
+
+		checkBatchArguments("deleteRegisters", oConn, iBatchSize);
+
+		if (sqlStatements.getDelete()==null)
+			throw new SQLException("JDCDAO.deleteRegisters() Primary key not found", "42S12");
+
+		if (DebugFile.trace)
+		{
+			DebugFile.writeln("Begin JDCDAO.deleteRegisters(" + oConn +", " + String.valueOf(AllValues.size()) + " registers, " + String.valueOf(iBatchSize) + ")" );
+			DebugFile.incIdent();
+		}
+
+		executeBatches(oConn, sqlStatements.getDelete(), BATCH_DELETE, AllValues, null, iBatchSize, new int[AllValues.size()], oFailures);
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End JDCDAO.deleteRegisters() : " + String.valueOf(oFailures.size()) + " failures");
+		}
+
+		return oFailures;
+	} // deleteRegisters
+
+	// ---------------------------------------------------------------------------
+
+	private static void checkBatchArguments(String sMethod, JDCConnection oConn, int iBatchSize) {
+		if (null==oConn)
+			throw new NullPointerException("JDCDAO." + sMethod + "() Connection is null");
+		if (iBatchSize<1)
+			throw new IllegalArgumentException("JDCDAO." + sMethod + "() Batch size must be greater than zero");
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * Bind and execute the given items in batches of at most iBatchSize rows.
+	 * @param oIndexes List&lt;Integer&gt; Positions at oItems of the items to be processed or <b>null</b> for processing all of them
+	 * @param aCounts int[] Update count of each processed item will be set at its position at oItems
+	 * @param oFailures Map&lt;Integer,SQLException&gt; Cause of the failure of each item will be put at its position at oItems
+	 */
+	@SuppressWarnings("unchecked")
+	private void executeBatches(JDCConnection oConn, String sSQL, int iMode, List<?> oItems, List<Integer> oIndexes, int iBatchSize, int[] aCounts, Map<Integer,SQLException> oFailures) throws SQLException {
+		final int nItems = oIndexes==null ? oItems.size() : oIndexes.size();
+
+		if (nItems==0) return;
+
+		final int[] aPending = new int[Math.min(iBatchSize, nItems)];
+		int nPending = 0;
+
+		if (DebugFile.trace) DebugFile.writeln("Connection.prepareStatement(" + sSQL + ")");
+
+		PreparedStatement oStmt = oConn.prepareCachedStatement(sSQL);
+
+		try {
+			for (int n=0; n<nItems; n++) {
+				final int i = oIndexes==null ? n : oIndexes.get(n).intValue();
+				final Object oItem = oItems.get(i);
+				try {
+					switch (iMode) {
+						case BATCH_UPSERT:
+							bindUpsertParameters(oConn, oStmt, (Record) oItem);
+							break;
+						case BATCH_UPDATE:
+							bindPrimaryKeyParameters(oConn, oStmt, bindUpdateParameters(oConn, oStmt, 1, (Record) oItem), (Record) oItem);
+							break;
+						case BATCH_INSERT:
+							bindInsertParameters(oConn, oStmt, 1, (Record) oItem);
+							break;
+						case BATCH_DELETE:
+							bindDeleteParameters(oStmt, (Map<String,Object>) oItem);
+							break;
+					}
+					oStmt.addBatch();
+					aPending[nPending++] = i;
+				} catch (ClassCastException cce) {
+					oStmt.clearParameters();
+					oFailures.put(i, new SQLException("ClassCastException " + cce.getMessage(), "07006"));
+				} catch (SQLException sqle) {
+					oStmt.clearParameters();
+					oFailures.put(i, sqle);
+				}
+				if (nPending==aPending.length || (n==nItems-1 && nPending>0)) {
+					if (DebugFile.trace) DebugFile.writeln("PreparedStatement.executeBatch() " + String.valueOf(nPending) + " rows");
+					executeBatch(oStmt, aPending, nPending, aCounts, oFailures);
+					nPending = 0;
+				}
+			}
+		} catch (SQLException sqle) {
+			if (DebugFile.trace) DebugFile.writeln(sqle.getClass().getName() + " " + sqle.getMessage() + ", SQLState=" + sqle.getSQLState() + ", SQL=" + sSQL);
+			try { oConn.discardStatement(oStmt); } catch (Exception ignore) { }
+			throw sqle;
+		}
+
+		oConn.releaseStatement(oStmt);
+	} // executeBatches
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * Execute the rows added to a statement batch and map the result of each row back to its item position.
+	 * Drivers that stop at the first failed row return fewer update counts than rows in the batch,
+	 * the row right after the last update count is the one that failed and the following ones were not executed.
+	 */
+	private static void executeBatch(PreparedStatement oStmt, int[] aPending, int nPending, int[] aCounts, Map<Integer,SQLException> oFailures) throws SQLException {
+		int[] aResults;
+		try {
+			aResults = oStmt.executeBatch();
+			for (int p=0; p<nPending; p++)
+				aCounts[aPending[p]] = p<aResults.length ? aResults[p] : Statement.SUCCESS_NO_INFO;
+		} catch (BatchUpdateException bue) {
+			if (DebugFile.trace) DebugFile.writeln("BatchUpdateException " + bue.getMessage() + ", SQLState=" + bue.getSQLState());
+			aResults = bue.getUpdateCounts();
+			if (null==aResults) aResults = new int[0];
+			for (int p=0; p<nPending; p++) {
+				if (p<aResults.length) {
+					if (aResults[p]==Statement.EXECUTE_FAILED)
+						oFailures.put(aPending[p], bue);
+					else
+						aCounts[aPending[p]] = aResults[p];
+				} else if (p==aResults.length) {
+					oFailures.put(aPending[p], bue);
+				} else {
+					oFailures.put(aPending[p], new SQLException("Not executed because a previous row of the batch failed", bue.getSQLState(), bue.getErrorCode()));
+				}
+			}
+			oStmt.clearBatch();
+		}
+	} // executeBatch
+
+	// ---------------------------------------------------------------------------
+
+	private void bindDeleteParameters(PreparedStatement oStmt, Map<String,Object> AllValues) throws SQLException {
+		int c = 1;
+		for (ColumnMetadata oPK : tdef.getPrimaryKeyMetadata().getColumns()) {
+			ColumnDef oCol = tdef.getColumnByName(oPK.getName());
+			oStmt.setObject (c++, AllValues.get(oPK.getName()), oCol.getType());
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
 	/**
 	 * <p>Checks if register exists at this table</p>
 	 * @param oConn Database Connection
@@ -790,7 +1200,7 @@ public class JDCDAO {
 		}
 
 		try {
-			oStmt = oConn.prepareStatement(sqlStatements.getExists(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			oStmt = oConn.prepareCachedStatement(sqlStatements.getExists(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 			c = 1;
 			while (c<=tdef.getPrimaryKeyMetadata().getNumberOfColumns()) {
@@ -804,12 +1214,12 @@ public class JDCDAO {
 
 			oRSet.close();
 			oRSet = null;
-			oStmt.close();
+			oConn.releaseStatement(oStmt);
 			oStmt = null;
 
 		} finally {
 			if (oRSet!=null) oRSet.close();
-			if (oStmt!=null) oStmt.close();
+			if (oStmt!=null) oConn.discardStatement(oStmt);
 		}
 
 		if (DebugFile.trace)
@@ -0,0 +1,225 @@
+package org.judal.jdbc.jdc;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Bounded LRU cache of the prepared statements of a single JDCConnection.</p>
+ * A statement taken from the cache is removed from it until it is released,
+ * so the same SQL can be prepared twice by nested calls without sharing a statement.
+ * When the cache is full the least recently released statement is closed.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class JDCStatementCache {
+
+	/**
+	 * Cache key made of SQL text, result set type and result set concurrency
+	 */
+	static final class Key {
+		private final String sql;
+		private final int type;
+		private final int concurrency;
+		private final int hash;
+
+		Key(String sql, int type, int concurrency) {
+			this.sql = sql;
+			this.type = type;
+			this.concurrency = concurrency;
+			this.hash = (sql.hashCode()*31 + type)*31 + concurrency;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this==other)
+				return true;
+			if (!(other instanceof Key))
+				return false;
+			Key key = (Key) other;
+			return type==key.type && concurrency==key.concurrency && sql.equals(key.sql);
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Hit, miss and eviction counters shared by the statement caches of all the connections of a pool
+	 */
+	static final class Counters {
+		final AtomicLong hits = new AtomicLong(0l);
+		final AtomicLong misses = new AtomicLong(0l);
+		final AtomicLong evictions = new AtomicLong(0l);
+
+		/**
+		 * @return Human readable usage statistics
+		 */
+		String dumpStatistics(int capacity) {
+			final long h = hits.get();
+			final long m = misses.get();
+			return "Statement Cache Size=" + String.valueOf(capacity) + "\n" +
+				"Statement Cache Hits=" + String.valueOf(h) + "\n" +
+				"Statement Cache Misses=" + String.valueOf(m) + "\n" +
+				"Statement Cache Evictions=" + String.valueOf(evictions.get()) + "\n" +
+				"Statement Cache Hit Ratio=" + (h+m==0l ? "0" : String.valueOf((h*100l)/(h+m))) + "%\n";
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	private final int capacity;
+	private final Counters counters;
+	private final LinkedHashMap<Key,PreparedStatement> ready;
+	private final IdentityHashMap<PreparedStatement,Key> taken;
+
+	/**
+	 * <p>Constructor</p>
+	 * @param capacity int Maximum number of statements kept open at the cache
+	 * @param counters Counters
+	 */
+	@SuppressWarnings("serial")
+	JDCStatementCache(final int capacity, Counters counters) {
+		this.capacity = capacity;
+		this.counters = counters;
+		this.taken = new IdentityHashMap<PreparedStatement,Key>();
+		this.ready = new LinkedHashMap<Key,PreparedStatement>(capacity+1, 1f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,PreparedStatement> eldest) {
+				if (size()>capacity) {
+					counters.evictions.incrementAndGet();
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return int Maximum number of statements kept open at the cache
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * @return int Number of statements ready to be reused
+	 */
+	public synchronized int size() {
+		return ready.size();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Take a statement from the cache or prepare a new one if there is no cached statement for the given SQL.
+	 * @param conn Connection Physical connection used to prepare the statement on a cache miss
+	 * @param sql String
+	 * @param resultSetType int
+	 * @param resultSetConcurrency int
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	synchronized PreparedStatement take(Connection conn, String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		final Key key = new Key(sql, resultSetType, resultSetConcurrency);
+		PreparedStatement stmt = ready.remove(key);
+		if (null==stmt) {
+			counters.misses.incrementAndGet();
+			stmt = conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		} else {
+			counters.hits.incrementAndGet();
+		}
+		taken.put(stmt, key);
+		return stmt;
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Put back in the cache a statement previously taken from it.
+	 * Statements which do not belong to the cache or that were taken before the cache was cleared are closed.
+	 * @param stmt PreparedStatement
+	 * @throws SQLException
+	 */
+	synchronized void release(PreparedStatement stmt) throws SQLException {
+		final Key key = taken.remove(stmt);
+		if (null==key || ready.containsKey(key)) {
+			stmt.close();
+		} else if (!stmt.isClosed()) {
+			try {
+				stmt.clearParameters();
+			} catch (SQLException sqle) {
+				closeQuietly(stmt);
+				throw sqle;
+			}
+			ready.put(key, stmt);
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Close a statement previously taken from the cache without putting it back
+	 * @param stmt PreparedStatement
+	 * @throws SQLException
+	 */
+	synchronized void discard(PreparedStatement stmt) throws SQLException {
+		taken.remove(stmt);
+		stmt.close();
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * Close all cached statements.
+	 * Statements currently taken will be closed when they are released.
+	 */
+	synchronized void clear() {
+		if (DebugFile.trace && ready.size()>0)
+			DebugFile.writeln("JDCStatementCache.clear() closing " + String.valueOf(ready.size()) + " statements");
+		Iterator<PreparedStatement> iter = ready.values().iterator();
+		while (iter.hasNext())
+			closeQuietly(iter.next());
+		ready.clear();
+		taken.clear();
+	}
+
+	// ---------------------------------------------------------
+
+	private static void closeQuietly(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException sqle) {
+			if (DebugFile.trace) DebugFile.writeln("SQLException closing cached statement " + sqle.getMessage());
+		}
+	}
+
+}
@@ -43,6 +43,8 @@ public class JDCTableLoader extends SQLTableDef implements ImportLoader {
 	private HashMap<String,Integer> oUpdtColPos;
 	private PreparedStatement oInsr;
 	private PreparedStatement oUpdt;
+	private JDCConnection oTblConn;
+	private ColumnList oLoadCols;
 
 	// ---------------------------------------------------------------------------
 
@@ -148,6 +150,8 @@ public class JDCTableLoader extends SQLTableDef implements ImportLoader {
 		}
 
 		jConn = new JDCConnection(oConn, null);
+		oTblConn = oConn;
+		oLoadCols = oColList;
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
@@ -236,7 +240,7 @@ public class JDCTableLoader extends SQLTableDef implements ImportLoader {
 		}
 
 		try { if (oUpdt!=null) oUpdt.close(); } catch (Exception ignore) {}
-		try { if (oInsr!=null) oUpdt.close(); } catch (Exception ignore) {}
+		try { if (oInsr!=null) oInsr.close(); } catch (Exception ignore) {}
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
@@ -246,12 +250,87 @@ public class JDCTableLoader extends SQLTableDef implements ImportLoader {
 
 	// ---------------------------------------------------------------------------
 
-	private static boolean test(int iInputValue, int iBitMask) {
+	protected static boolean test(int iInputValue, int iBitMask) {
 		return (iInputValue&iBitMask)!=0;
 	} // test
 
 	// ---------------------------------------------------------------------------
 
+	/**
+	 * Bind a row of values to the parameters of the insert statement
+	 * @param aRow Object[] Values in the same order as the table columns
+	 * @throws SQLException
+	 */
+	protected void bindInsert(Object[] aRow) throws SQLException {
+		for (ColumnDef oCol : getColumns()) {
+			Integer iInsrPos = (Integer) oInsrColPos.get(oCol.getName());
+			if (null!=iInsrPos)
+				jConn.bindParameter(oInsr, iInsrPos.intValue(), aRow[getColumnIndex(oCol.getName())-1], oCol.getType().shortValue());
+		} // next
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * Bind a row of values to the parameters of the update statement
+	 * @param aRow Object[] Values in the same order as the table columns
+	 * @throws SQLException
+	 */
+	protected void bindUpdate(Object[] aRow) throws SQLException {
+		for (ColumnDef oCol : getColumns()) {
+			Integer iUpdtPos = (Integer) oUpdtColPos.get(oCol.getName());
+			if (null!=iUpdtPos)
+				jConn.bindParameter(oUpdt, iUpdtPos.intValue(), aRow[getColumnIndex(oCol.getName())-1], oCol.getType().shortValue());
+		} // next
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return Object[] Copy of the current values
+	 */
+	protected Object[] copyValues() {
+		return aValues.clone();
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return PreparedStatement Insert statement created by prepare()
+	 */
+	protected PreparedStatement getInsertStatement() {
+		return oInsr;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return PreparedStatement Update statement created by prepare() or <b>null</b> if the table has no primary key
+	 */
+	protected PreparedStatement getUpdateStatement() {
+		return oUpdt;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return JDCConnection Connection of the table passed to prepare()
+	 */
+	protected JDCConnection getLoaderConnection() {
+		return oTblConn;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return ColumnList Columns passed to prepare()
+	 */
+	protected ColumnList getLoadColumns() {
+		return oLoadCols;
+	}
+
+	// ---------------------------------------------------------------------------
+
 	public void store(Table oTbl, String sWorkArea, int iFlags)
 			throws JDOException,IllegalArgumentException,NullPointerException {
 
@@ -273,17 +352,8 @@ public class JDCTableLoader extends SQLTableDef implements ImportLoader {
 
 		if (test(iFlags,MODE_UPDATE)) {
 			if (DebugFile.trace) DebugFile.writeln("trying to update record...");
-			for (ColumnDef oCol : getColumns()) {
-				Integer iUpdtPos = (Integer) oUpdtColPos.get(oCol.getName());
-				if (null!=iUpdtPos) {
-					try {
-						jConn.bindParameter(oUpdt, iUpdtPos.intValue(), get(oCol.getName()), oCol.getType().shortValue());
-					} catch (SQLException sqle) {
-						throw new JDOException("SQLException "+sqle.getMessage(), sqle);
-					}
-				} // fi
-			} // wend
 			try {
+				bindUpdate(aValues);
 				iAffected = oUpdt.executeUpdate();
 			} catch (SQLException sqle) {
 				throw new JDOException("SQLException "+sqle.getMessage(), sqle);
@@ -292,17 +362,8 @@ public class JDCTableLoader extends SQLTableDef implements ImportLoader {
 
 		if (0==iAffected && test(iFlags,MODE_APPEND)) {
 			if (DebugFile.trace) DebugFile.writeln("trying to insert record...");
-			for (ColumnDef oCol : getColumns()) {
-				Integer iInsrPos = (Integer) oInsrColPos.get(oCol.getName());
-				if (null!=iInsrPos) {
-					try {
-						jConn.bindParameter(oInsr, iInsrPos.intValue(), get(oCol.getName()), oCol.getType().shortValue());
-					} catch (SQLException sqle) {
-						throw new JDOException("SQLException "+sqle.getMessage(), sqle);
-					}
-				} // fi
-			} // wend
 			try {
+				bindInsert(aValues);
 				iAffected = oInsr.executeUpdate();
 			} catch (SQLException sqle) {
 				throw new JDOException("SQLException "+sqle.getMessage(), sqle);
@@ -13,8 +13,11 @@ package org.judal.jdbc.metadata;
  */
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.judal.jdbc.RDBMS;
+import org.judal.jdbc.metadata.SQLStatements.UpsertSyntax;
 import org.judal.metadata.ColumnDef;
 import org.judal.metadata.TypeDef;
 
@@ -75,6 +78,9 @@ public class SQLBuilder {
 		String setAllCols = "";
 		String setPkCols = "";
 		String setNoPkCols = "";
+		String pkColNames = "";
+		boolean autoIncrementPk = false;
+		List<String> noPkColNames = new ArrayList<String>(tdef.getColumns().length);
 
 		if (DebugFile.trace)
 		{
@@ -90,8 +96,10 @@ public class SQLBuilder {
 			if (DebugFile.trace)
 				DebugFile.writeln("reading column "+columnName+" of type "+((SQLColumn) column).getSqlTypeName());
 
-			if (column.isPrimaryKey())
+			if (column.isPrimaryKey()) {
 				setPkCols += column.getName() + "=? AND ";
+				pkColNames += column.getName() + ",";
+			}
 
 			if (dbms==RDBMS.POSTGRESQL.intValue()) {
 				if (((SQLColumn) column).getSqlTypeName().equalsIgnoreCase("geography")) {
@@ -99,30 +107,39 @@ public class SQLBuilder {
 					getAllCols  += "ST_X("+columnName+"::geometry)||' '||ST_Y("+columnName+"::geometry) AS "+columnName+",";        	  
 					setAllCols  += "ST_SetSRID(ST_MakePoint(?,?),4326),";
 					setNoPkCols += columnName + "=ST_SetSRID(ST_MakePoint(?,?),4326),";
+					noPkColNames.add(columnName);
 				} else if (((SQLColumn) column).getSqlTypeName().equalsIgnoreCase("serial")) {
 					getAllCols += columnName + ",";
+					autoIncrementPk |= column.isPrimaryKey();
 				} else {
 					insertAllCols += columnName + ",";        	 
 					getAllCols += columnName + ",";
 					setAllCols += "?,";
-					if (!column.isPrimaryKey() && !columnName.equalsIgnoreCase(sqlStatements.getTimestampColumn()))
+					if (!column.isPrimaryKey() && !columnName.equalsIgnoreCase(sqlStatements.getTimestampColumn())) {
 						setNoPkCols += columnName + "=?,";
+						noPkColNames.add(columnName);
+					}
 				}  
 			} else {
 				if (column.getAutoIncrement()) {
 					getAllCols += columnName + ",";        		
+					autoIncrementPk |= column.isPrimaryKey();
 				} else {
 					insertAllCols += columnName + ",";        	 
 					getAllCols += columnName + ",";
 					setAllCols += "?,";
-					if (!column.isPrimaryKey() && !columnName.equalsIgnoreCase(sqlStatements.getTimestampColumn()))
+					if (!column.isPrimaryKey() && !columnName.equalsIgnoreCase(sqlStatements.getTimestampColumn())) {
 						setNoPkCols += columnName + "=?,";        		
+						noPkColNames.add(columnName);
+					}
 				}
 			}
 		} // wend
 
-		if (setPkCols.length()>0)
+		if (setPkCols.length()>0) {
 			setPkCols = setPkCols.substring(0, setPkCols.length()-5);
+			pkColNames = pkColNames.substring(0, pkColNames.length()-1);
+		}
 
 		if (DebugFile.trace) DebugFile.writeln("get all cols " + getAllCols );
 
@@ -155,11 +172,18 @@ public class SQLBuilder {
 				sqlStatements.setUpdate(null);
 			sqlStatements.setDelete("DELETE FROM " + tdef.getName() + " WHERE " + setPkCols);
 			sqlStatements.setExists("SELECT NULL FROM " + tdef.getName() + " WHERE " + setPkCols);
+			if (setNoPkCols.length()>0 && !autoIncrementPk)
+				precomputeUpsert(dbms, insertAllCols, setAllCols, setNoPkCols, setPkCols, pkColNames, noPkColNames);
+			else {
+				sqlStatements.setUpsert(null, null);
+				sqlStatements.setUpsertReturningInserted(null);
+			}
 			if (DebugFile.trace) {
 				DebugFile.writeln("Generated SQL statements for "+tdef.getName());
 				DebugFile.writeln("Generated "+sqlStatements.getSelect());
 				DebugFile.writeln("Generated "+sqlStatements.getInsert());
 				DebugFile.writeln("Generated "+sqlStatements.getUpdate());
+				DebugFile.writeln("Generated "+sqlStatements.getUpsert());
 				DebugFile.writeln("Generated "+sqlStatements.getDelete());
 			}
 		} 
@@ -167,6 +191,8 @@ public class SQLBuilder {
 			sqlStatements.setSelect(null);
 			sqlStatements.setInsert("INSERT INTO " + tdef.getName() + "(" + insertAllCols + ") VALUES (" + setAllCols + ")");
 			sqlStatements.setUpdate(null);
+			sqlStatements.setUpsert(null, null);
+			sqlStatements.setUpsertReturningInserted(null);
 			sqlStatements.setDelete(null);
 			sqlStatements.setExists(null);
 			if (DebugFile.trace) {
@@ -184,5 +210,67 @@ public class SQLBuilder {
 		}
 
 	} // precomputeSqlStatements
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Compose a single statement insert or update for the dialects which support it.</p>
+	 * Tables whose primary key is auto incremental do not get an upsert statement because the
+	 * key value is not known before inserting. Unknown dialects keep UPDATE followed by INSERT.
+	 */
+	private void precomputeUpsert(int dbms, String insertAllCols, String setAllCols, String setNoPkCols, String setPkCols, String pkColNames, List<String> noPkColNames) {
+		StringBuilder upsert = new StringBuilder(insertAllCols.length()*3 + 100);
+		UpsertSyntax syntax;
+
+		switch (RDBMS.valueOf(dbms)) {
+			case POSTGRESQL:
+				syntax = UpsertSyntax.ON_CONFLICT;
+				upsert.append("INSERT INTO ").append(tdef.getName()).append(" (").append(insertAllCols).append(") VALUES (").append(setAllCols).append(") ");
+				upsert.append("ON CONFLICT (").append(pkColNames).append(") DO UPDATE SET ");
+				for (String columnName : noPkColNames)
+					upsert.append(columnName).append("=EXCLUDED.").append(columnName).append(",");
+				upsert.setLength(upsert.length()-1);
+				break;
+			case MYSQL:
+				syntax = UpsertSyntax.ON_DUPLICATE_KEY;
+				upsert.append("INSERT INTO ").append(tdef.getName()).append(" (").append(insertAllCols).append(") VALUES (").append(setAllCols).append(") ");
+				upsert.append("ON DUPLICATE KEY UPDATE ");
+				for (String columnName : noPkColNames)
+					upsert.append(columnName).append("=VALUES(").append(columnName).append("),");
+				upsert.setLength(upsert.length()-1);
+				break;
+			case ORACLE:
+				syntax = UpsertSyntax.MERGE;
+				upsert.append("MERGE INTO ").append(tdef.getName()).append(" USING DUAL ");
+				appendMergeClauses(upsert, insertAllCols, setAllCols, setNoPkCols, setPkCols);
+				break;
+			case MSSQL:
+				syntax = UpsertSyntax.MERGE;
+				upsert.append("MERGE INTO ").append(tdef.getName()).append(" WITH (HOLDLOCK) USING (SELECT 1 AS merge_one) AS merge_src ");
+				appendMergeClauses(upsert, insertAllCols, setAllCols, setNoPkCols, setPkCols);
+				upsert.append(";");
+				break;
+			case HSQLDB:
+				syntax = UpsertSyntax.MERGE;
+				upsert.append("MERGE INTO ").append(tdef.getName()).append(" USING (VALUES(1)) AS merge_src(merge_one) ");
+				appendMergeClauses(upsert, insertAllCols, setAllCols, setNoPkCols, setPkCols);
+				break;
+			default:
+				syntax = null;
+		}
+
+		sqlStatements.setUpsert(syntax==null ? null : upsert.toString(), syntax);
+
+		// xmax is zero only for a row inserted by the statement, the row written by DO UPDATE carries the id of the locking transaction
+		sqlStatements.setUpsertReturningInserted(syntax==UpsertSyntax.ON_CONFLICT ? upsert.toString() + " RETURNING (xmax = 0)" : null);
+	} // precomputeUpsert
+
+	// ----------------------------------------------------------
+
+	private void appendMergeClauses(StringBuilder upsert, String insertAllCols, String setAllCols, String setNoPkCols, String setPkCols) {
+		upsert.append("ON (").append(setPkCols).append(") ");
+		upsert.append("WHEN MATCHED THEN UPDATE SET ").append(setNoPkCols).append(" ");
+		upsert.append("WHEN NOT MATCHED THEN INSERT (").append(insertAllCols).append(") VALUES (").append(setAllCols).append(")");
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package org.judal.jdbc.metadata;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Schema metadata snapshot file.</p>
+ * A snapshot is the JDO XML metadata of a schema preceded by a one line header holding the schema version
+ * from which it was generated. A snapshot is only used if its version matches the current version of the schema.
+ * The version is either the result of a query supplied by the application, for example the last migration number
+ * of a schema version table, or else a hash of the columns of all the tables of the schema, which is read
+ * with a single call to DatabaseMetaData.getColumns() instead of one call per table.
+ * Changes to primary keys or indexes that do not alter any column are only detected by a version query.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class SQLMetadataSnapshot {
+
+	private static final String HEADER = "judal-metadata-snapshot 1 ";
+	private static final int MAX_HEADER_LENGTH = 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SQLMetadataSnapshot() { }
+
+	/**
+	 * <p>Get the current version of a schema.</p>
+	 * @param conn Connection
+	 * @param mdata DatabaseMetaData
+	 * @param catalog String Catalog name or <b>null</b>
+	 * @param schema String Schema name or <b>null</b> for all schemas
+	 * @param versionQuery String SQL query whose first column of the first row is the schema version
+	 * or <b>null</b> to compute a hash of all the columns of the schema
+	 * @return String
+	 * @throws SQLException
+	 */
+	public static String getSchemaVersion(Connection conn, DatabaseMetaData mdata, String catalog, String schema, String versionQuery) throws SQLException {
+		String version;
+		if (versionQuery!=null && versionQuery.trim().length()>0) {
+			if (DebugFile.trace)
+				DebugFile.writeln("Statement.executeQuery(" + versionQuery + ")");
+			try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				 ResultSet rset = stmt.executeQuery(versionQuery)) {
+				version = "query:" + (rset.next() ? rset.getString(1) : "");
+			}
+		} else {
+			final MessageDigest digest = sha1();
+			update(digest, mdata.getDatabaseProductName());
+			update(digest, mdata.getDatabaseProductVersion());
+			update(digest, catalog);
+			update(digest, schema);
+			if (DebugFile.trace)
+				DebugFile.writeln("DatabaseMetaData.getColumns(" + catalog + ", " + schema + ", %, %)");
+			try (ResultSet rset = mdata.getColumns(catalog, schema, "%", "%")) {
+				while (rset.next()) {
+					update(digest, rset.getString(2)); // TABLE_SCHEM
+					update(digest, rset.getString(3)); // TABLE_NAME
+					update(digest, rset.getString(4)); // COLUMN_NAME
+					update(digest, rset.getString(5)); // DATA_TYPE
+					update(digest, rset.getString(6)); // TYPE_NAME
+					update(digest, rset.getString(7)); // COLUMN_SIZE
+					update(digest, rset.getString(9)); // DECIMAL_DIGITS
+					update(digest, rset.getString(11)); // NULLABLE
+					update(digest, rset.getString(13)); // COLUMN_DEF
+					update(digest, rset.getString(17)); // ORDINAL_POSITION
+				}
+			}
+			version = "columns:" + toHex(digest.digest());
+		}
+		if (DebugFile.trace)
+			DebugFile.writeln("SQLMetadataSnapshot.getSchemaVersion() : " + version);
+		return version;
+	}
+
+	/**
+	 * <p>Open a snapshot file if it was generated from the given schema version.</p>
+	 * @param snapshot Path
+	 * @param version String Current schema version
+	 * @return InputStream Positioned at the start of the XML metadata or <b>null</b>
+	 * if the file does not exist or its version does not match. The caller must close the stream.
+	 * @throws IOException
+	 */
+	public static InputStream open(Path snapshot, String version) throws IOException {
+		final InputStream in;
+		try {
+			in = new BufferedInputStream(Files.newInputStream(snapshot));
+		} catch (NoSuchFileException nosuchfile) {
+			if (DebugFile.trace)
+				DebugFile.writeln("Metadata snapshot " + snapshot + " not found");
+			return null;
+		}
+		final ByteArrayOutputStream header = new ByteArrayOutputStream(128);
+		int b;
+		while ((b = in.read())!=-1 && b!='\n' && header.size()<MAX_HEADER_LENGTH)
+			header.write(b);
+		if (b=='\n' && new String(header.toByteArray(), UTF8).equals(HEADER + version)) {
+			return in;
+		} else {
+			if (DebugFile.trace)
+				DebugFile.writeln("Metadata snapshot " + snapshot + " is stale");
+			in.close();
+			return null;
+		}
+	}
+
+	/**
+	 * <p>Write a snapshot file.</p>
+	 * The snapshot is written to a temporary file which is then renamed over the previous one,
+	 * so concurrent readers never see a partially written snapshot.
+	 * @param snapshot Path
+	 * @param version String Schema version from which the metadata was read
+	 * @param xmlMetadata byte[] JDO XML metadata
+	 * @throws IOException
+	 */
+	public static void write(Path snapshot, String version, byte[] xmlMetadata) throws IOException {
+		final Path dir = snapshot.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, snapshot.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				out.write((HEADER + version + "\n").getBytes(UTF8));
+				out.write(xmlMetadata);
+			}
+			try {
+				Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException notsupported) {
+				Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		} finally {
+			if (temp!=null)
+				Files.deleteIfExists(temp);
+		}
+		if (DebugFile.trace)
+			DebugFile.writeln("Metadata snapshot " + snapshot + " written with version " + version);
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException neverthrown) {
+			throw new IllegalStateException("SHA-1 MessageDigest not available", neverthrown);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		if (value!=null)
+			digest.update(value.getBytes(UTF8));
+		digest.update((byte) 0);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length*2);
+		for (byte b : bytes)
+			hex.append(String.format("%02x", b & 0xff));
+		return hex.toString();
+	}
+
+}
@@ -2,9 +2,33 @@ package org.judal.jdbc.metadata;
 
 public class SQLStatements {
 
+	/**
+	 * Syntax of the single statement insert or update
+	 */
+	public enum UpsertSyntax {
+		/**
+		 * INSERT ... ON CONFLICT (pk) DO UPDATE SET ... (PostgreSQL)
+		 * Parameters are bound in the same order as for the INSERT statement.
+		 */
+		ON_CONFLICT,
+		/**
+		 * INSERT ... ON DUPLICATE KEY UPDATE ... (MySQL)
+		 * Parameters are bound in the same order as for the INSERT statement.
+		 */
+		ON_DUPLICATE_KEY,
+		/**
+		 * MERGE INTO ... ON (pk=?) WHEN MATCHED THEN UPDATE ... WHEN NOT MATCHED THEN INSERT ... (Oracle, SQL Server, HSQLDB)
+		 * Primary key parameters are bound first, then the parameters of the UPDATE SET clause and at last the parameters of the INSERT.
+		 */
+		MERGE
+	}
+
 	private String sqlSelect;
 	private String sqlInsert;
 	private String sqlUpdate;
+	private String sqlUpsert;
+	private UpsertSyntax upsertSyntax;
+	private String sqlUpsertReturningInserted;
 	private String sqlDelete;
 	private String sqlExists;
 	private String timestampColumn;
@@ -33,6 +57,46 @@ public class SQLStatements {
 		this.sqlUpdate = sqlUpdate;
 	}
 
+	/**
+	 * @return String Single statement that inserts a row or updates it if it already exists,
+	 * or <b>null</b> if the database does not support it and UPDATE followed by INSERT must be used instead.
+	 */
+	public String getUpsert() {
+		return sqlUpsert;
+	}
+
+	/**
+	 * @return UpsertSyntax or <b>null</b> if there is no upsert statement
+	 */
+	public UpsertSyntax getUpsertSyntax() {
+		return upsertSyntax;
+	}
+
+	/**
+	 * @param sqlUpsert String Insert or update statement or <b>null</b>
+	 * @param upsertSyntax UpsertSyntax Syntax used by sqlUpsert which determines how its parameters are bound
+	 */
+	public void setUpsert(final String sqlUpsert, final UpsertSyntax upsertSyntax) {
+		this.sqlUpsert = sqlUpsert;
+		this.upsertSyntax = sqlUpsert==null ? null : upsertSyntax;
+	}
+
+	/**
+	 * @return String Single statement insert or update which returns one row with a boolean column
+	 * that is <b>true</b> if the row was inserted and <b>false</b> if it was updated,
+	 * or <b>null</b> if the database cannot tell inserts from updates in a single statement.
+	 */
+	public String getUpsertReturningInserted() {
+		return sqlUpsertReturningInserted;
+	}
+
+	/**
+	 * @param sqlUpsertReturningInserted String Insert or update statement returning whether the row was inserted or <b>null</b>
+	 */
+	public void setUpsertReturningInserted(final String sqlUpsertReturningInserted) {
+		this.sqlUpsertReturningInserted = sqlUpsertReturningInserted;
+	}
+
 	public String getDelete() {
 		return sqlDelete;
 	}
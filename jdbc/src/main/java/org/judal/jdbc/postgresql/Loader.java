@@ -1,5 +1,313 @@
 package org.judal.jdbc.postgresql;
 
-public class Loader {
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jdo.JDOException;
+import javax.jdo.metadata.ColumnMetadata;
+
+import org.judal.jdbc.RDBMS;
+import org.judal.jdbc.jdc.JDCBatchTableLoader;
+import org.judal.jdbc.jdc.JDCConnection;
+import org.judal.metadata.ColumnList;
+import org.judal.storage.table.Table;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>PostgreSQL bulk loader.</p>
+ * Each batch is streamed to the server with COPY FROM STDIN in CSV format using the CopyManager of the PostgreSQL driver.
+ * In MODE_APPEND rows are copied straight into the table.
+ * In MODE_UPDATE and MODE_APPENDUPDATE rows are copied into a temporary staging table with the same columns
+ * and then merged into the table with one UPDATE and one INSERT of the rows not already present.
+ * If several rows of the same batch have the same primary key, the last one wins.
+ * If the driver does not provide a CopyManager, batches are loaded with JDBC batch statements.
+ * Timestamps are written with the offset of the JVM default time zone at each instant,
+ * so TIMESTAMP WITH TIME ZONE columns get the same instant that setTimestamp() would give them
+ * and TIMESTAMP columns get the local date and time. TIME values are written without offset.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class Loader extends JDCBatchTableLoader {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int CHUNK_SIZE = 65536;
+	private static final String SEQ_COLUMN = "judal_load_seq";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Object oCopyManager;
+	private Method oCopyIn;
+	private Method oWriteToCopy;
+	private Method oEndCopy;
+	private Method oCancelCopy;
+	private String sStaging;
+	private String sCopyCols;
+	private SimpleDateFormat oDtFmt = new SimpleDateFormat("yyyy-MM-dd");
+	private SimpleDateFormat oTsFmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+	private SimpleDateFormat oSecFmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	private SimpleDateFormat oZoneFmt = new SimpleDateFormat("Z");
+
+	// ---------------------------------------------------------------------------
+
+	public Loader(String sTableName) throws SQLException {
+		super(RDBMS.POSTGRESQL, sTableName);
+	}
+
+	// ---------------------------------------------------------------------------
+
+	@Override
+	public void prepare(Table oTbl, ColumnList oColList) throws JDOException {
+		super.prepare(oTbl, oColList);
+		sStaging = null;
+		sCopyCols = oColList.toString(",");
+		try {
+			Class<?> cPgConn = Class.forName("org.postgresql.PGConnection");
+			Connection oRaw = getLoaderConnection();
+			while (oRaw instanceof JDCConnection)
+				oRaw = ((JDCConnection) oRaw).getConnection();
+			if (!cPgConn.isInstance(oRaw))
+				oRaw = (Connection) oRaw.unwrap(cPgConn);
+			oCopyManager = cPgConn.getMethod("getCopyAPI").invoke(oRaw);
+			oCopyIn = oCopyManager.getClass().getMethod("copyIn", String.class);
+			Class<?> cCopyIn = Class.forName("org.postgresql.copy.CopyIn");
+			oWriteToCopy = cCopyIn.getMethod("writeToCopy", byte[].class, int.class, int.class);
+			oEndCopy = cCopyIn.getMethod("endCopy");
+			oCancelCopy = Class.forName("org.postgresql.copy.CopyOperation").getMethod("cancelCopy");
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | SQLException | ClassCastException nocopy) {
+			if (DebugFile.trace)
+				DebugFile.writeln("PostgreSQL CopyManager not available, using JDBC batches instead "+nocopy.getClass().getName()+" "+nocopy.getMessage());
+			oCopyManager = null;
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * @return boolean <b>true</b> if batches are streamed with COPY or <b>false</b> if JDBC batch statements are used
+	 */
+	public boolean isCopySupported() {
+		return oCopyManager!=null;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	@Override
+	protected void loadBatch(List<Object[]> aBatch, int iFlags) throws SQLException {
+		if (null==oCopyManager) {
+			super.loadBatch(aBatch, iFlags);
+		} else if (!test(iFlags,MODE_UPDATE)) {
+			copy(getName(), aBatch);
+		} else {
+			if (null==sStaging)
+				createStaging();
+			copy(sStaging, aBatch);
+			merge(test(iFlags,MODE_APPEND));
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private void createStaging() throws SQLException {
+		for (ColumnMetadata oPk : getPrimaryKeyMetadata().getColumns())
+			if (!isLoaded(oPk.getName()))
+				throw new SQLException("Primary key column "+oPk.getName()+" must be loaded in order to update table "+getName());
+		String sName = "judal_load_" + getName().replaceAll("\\W", "_") + "_" + Integer.toHexString(System.identityHashCode(this));
+		if (sName.length()>63)
+			sName = sName.substring(sName.length()-63);
+		execute("CREATE TEMPORARY TABLE "+sName+" AS SELECT "+sCopyCols+" FROM "+getName()+" WITH NO DATA");
+		execute("ALTER TABLE "+sName+" ADD COLUMN "+SEQ_COLUMN+" BIGSERIAL");
+		sStaging = sName;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private void merge(boolean bAppend) throws SQLException {
+		StringBuilder oPkJoin = new StringBuilder();
+		for (ColumnMetadata oPk : getPrimaryKeyMetadata().getColumns()) {
+			if (oPkJoin.length()>0) oPkJoin.append(" AND ");
+			oPkJoin.append("t.").append(oPk.getName()).append("=s.").append(oPk.getName());
+		}
+		final String sPkJoin = oPkJoin.toString();
+
+		StringBuilder oSet = new StringBuilder();
+		StringBuilder oSel = new StringBuilder();
+		final ColumnList oCols = getLoadColumns();
+		for (int c=0; c<oCols.size(); c++) {
+			final String sCol = oCols.getColumnName(c);
+			if (c>0) oSel.append(",");
+			oSel.append("s.").append(sCol);
+			if (!isPrimaryKey(sCol)) {
+				if (oSet.length()>0) oSet.append(",");
+				oSet.append(sCol).append("=s.").append(sCol);
+			}
+		}
+
+		execute("DELETE FROM "+sStaging+" s USING "+sStaging+" t WHERE "+sPkJoin+" AND s."+SEQ_COLUMN+"<t."+SEQ_COLUMN);
+		if (oSet.length()>0)
+			execute("UPDATE "+getName()+" t SET "+oSet+" FROM "+sStaging+" s WHERE "+sPkJoin);
+		if (bAppend)
+			execute("INSERT INTO "+getName()+" ("+sCopyCols+") SELECT "+oSel+" FROM "+sStaging+" s WHERE NOT EXISTS (SELECT 1 FROM "+getName()+" t WHERE "+sPkJoin+")");
+		execute("TRUNCATE TABLE "+sStaging);
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private void copy(String sTable, List<Object[]> aBatch) throws SQLException {
+		final String sSQL = "COPY "+sTable+" ("+sCopyCols+") FROM STDIN WITH CSV";
+		if (DebugFile.trace)
+			DebugFile.writeln("CopyManager.copyIn("+sSQL+")");
+
+		final ColumnList oCols = getLoadColumns();
+		final int nCols = oCols.size();
+		final int[] aIndexes = new int[nCols];
+		final int[] aTypes = new int[nCols];
+		for (int c=0; c<nCols; c++) {
+			aIndexes[c] = getColumnIndex(oCols.getColumnName(c))-1;
+			aTypes[c] = getColumnByName(oCols.getColumnName(c)).getType();
+		}
+
+		final Object oCopy = invoke(oCopyIn, oCopyManager, sSQL);
+		boolean bDone = false;
+		try {
+			ByteArrayOutputStream oBuff = new ByteArrayOutputStream(CHUNK_SIZE+4096);
+			StringBuilder oLine = new StringBuilder(256);
+			for (Object[] aRow : aBatch) {
+				oLine.setLength(0);
+				for (int c=0; c<nCols; c++) {
+					if (c>0) oLine.append(',');
+					appendCsv(oLine, aRow[aIndexes[c]], aTypes[c]);
+				}
+				oLine.append('\n');
+				byte[] aLine = oLine.toString().getBytes(UTF8);
+				oBuff.write(aLine, 0, aLine.length);
+				if (oBuff.size()>=CHUNK_SIZE) {
+					invoke(oWriteToCopy, oCopy, oBuff.toByteArray(), 0, oBuff.size());
+					oBuff.reset();
+				}
+			}
+			if (oBuff.size()>0)
+				invoke(oWriteToCopy, oCopy, oBuff.toByteArray(), 0, oBuff.size());
+			invoke(oEndCopy, oCopy);
+			bDone = true;
+		} finally {
+			if (!bDone) {
+				try { invoke(oCancelCopy, oCopy); } catch (Exception ignore) { }
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Append a value to a line in the CSV format read by COPY.</p>
+	 * NULL is written as nothing and any other value is quoted, so that an empty string is not read as NULL.
+	 * byte[] is written in bytea hex format and timestamps with microseconds and UTC offset.
+	 * @param oLine StringBuilder
+	 * @param oValue Object Value or <b>null</b>
+	 * @param iType int Column type from java.sql.Types
+	 */
+	protected void appendCsv(StringBuilder oLine, Object oValue, int iType) {
+		if (null==oValue)
+			return;
+		String sValue;
+		if (oValue instanceof byte[]) {
+			byte[] aBytes = (byte[]) oValue;
+			StringBuilder oHex = new StringBuilder(2+aBytes.length*2).append("\\x");
+			for (byte b : aBytes)
+				oHex.append(HEX[(b>>4)&0x0f]).append(HEX[b&0x0f]);
+			sValue = oHex.toString();
+		} else if (oValue instanceof BigDecimal) {
+			sValue = ((BigDecimal) oValue).toPlainString();
+		} else if (oValue instanceof java.sql.Timestamp) {
+			java.sql.Timestamp oTs = (java.sql.Timestamp) oValue;
+			sValue = oSecFmt.format(oTs) + "." + String.valueOf(1000000+oTs.getNanos()/1000).substring(1) + oZoneFmt.format(oTs);
+		} else if (oValue instanceof java.sql.Date || oValue instanceof java.sql.Time) {
+			sValue = oValue.toString();
+		} else if (oValue instanceof java.util.Date) {
+			sValue = (Types.DATE==iType ? oDtFmt : oTsFmt).format((java.util.Date) oValue);
+		} else {
+			sValue = oValue.toString();
+		}
+		oLine.append('"').append(sValue.replace("\"", "\"\"")).append('"');
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private boolean isLoaded(String sColumnName) {
+		final ColumnList oCols = getLoadColumns();
+		for (int c=0; c<oCols.size(); c++)
+			if (oCols.getColumnName(c).equalsIgnoreCase(sColumnName))
+				return true;
+		return false;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private boolean isPrimaryKey(String sColumnName) {
+		for (ColumnMetadata oPk : getPrimaryKeyMetadata().getColumns())
+			if (oPk.getName().equalsIgnoreCase(sColumnName))
+				return true;
+		return false;
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private void execute(String sSQL) throws SQLException {
+		if (DebugFile.trace)
+			DebugFile.writeln("Statement.execute("+sSQL+")");
+		try (Statement oStmt = getLoaderConnection().createStatement()) {
+			oStmt.execute(sSQL);
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
+	private static Object invoke(Method oMethod, Object oTarget, Object... aArgs) throws SQLException {
+		try {
+			return oMethod.invoke(oTarget, aArgs);
+		} catch (InvocationTargetException ite) {
+			Throwable oCause = ite.getCause();
+			if (oCause instanceof SQLException)
+				throw (SQLException) oCause;
+			throw new SQLException(oCause.getClass().getName()+" "+oCause.getMessage(), oCause);
+		} catch (IllegalAccessException iae) {
+			throw new SQLException("IllegalAccessException "+oMethod.getName()+" "+iae.getMessage(), iae);
+		}
+	}
+
+	// ---------------------------------------------------------------------------
+
+	/**
+	 * <p>Load the rows still buffered, close the statements and drop the staging table.</p>
+	 * @throws JDOException
+	 */
+	@Override
+	public void close() throws JDOException {
+		try {
+			super.close();
+		} finally {
+			if (sStaging!=null) {
+				try {
+					execute("DROP TABLE IF EXISTS "+sStaging);
+				} catch (SQLException sqle) {
+					if (DebugFile.trace)
+						DebugFile.writeln("Could not drop staging table "+sStaging+" "+sqle.getMessage());
+				}
+				sStaging = null;
+			}
+		}
+	}
 
 }
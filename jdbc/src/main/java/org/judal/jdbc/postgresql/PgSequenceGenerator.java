@@ -15,16 +15,18 @@ package org.judal.jdbc.postgresql;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 
 import javax.jdo.JDOException;
 import javax.jdo.datastore.Sequence;
 
+import org.judal.storage.BlockAllocator;
 import org.judal.jdbc.JDBCDataSource;
 import org.judal.jdbc.jdc.JDCConnection;
 
 import com.knowgate.debug.DebugFile;
 
-public class PgSequenceGenerator implements Sequence {
+public class PgSequenceGenerator implements Sequence, BlockAllocator {
 
 	private JDBCDataSource dataSource;
 	private String sequenceName;
@@ -42,21 +44,69 @@ public class PgSequenceGenerator implements Sequence {
 
 	@Override
 	public long nextValue() throws JDOException {
-		JDCConnection conn = null;
-		Statement stmt = null;
-		ResultSet rset = null;
 		if (DebugFile.trace) {
 			DebugFile.writeln("Begin PgSequenceGenerator.nextValue()");
 			DebugFile.incIdent();
 		}
+		current = fetch(1)[0];
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End PgSequenceGenerator.nextValue() : " + current);
+		}
+		return current;
+	}
+
+	/**
+	 * <p>Reserve several values of the sequence in a single round trip.</p>
+	 * nextval() is called once per row of generate_series() so values reserved by concurrent sessions never overlap,
+	 * although they may not be consecutive.
+	 * @param size int [1..n]
+	 * @return long[] Values in ascending order
+	 * @throws JDOException
+	 */
+	@Override
+	public long[] allocateBlock(int size) throws JDOException {
+		if (size<1)
+			throw new IllegalArgumentException("PgSequenceGenerator block size must be at least 1");
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin PgSequenceGenerator.allocateBlock(" + String.valueOf(size) + ")");
+			DebugFile.incIdent();
+		}
+		final long[] block = fetch(size);
+		Arrays.sort(block);
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End PgSequenceGenerator.allocateBlock() : " + block[0] + ".." + block[block.length-1]);
+		}
+		return block;
+	}
+
+	/**
+	 * PostgreSQL cannot give back sequence values without the risk of handing them out twice
+	 * @return boolean <b>false</b>
+	 */
+	@Override
+	public boolean releaseBlock(long[] block, int used) {
+		return false;
+	}
+
+	private long[] fetch(int size) throws JDOException {
+		JDCConnection conn = null;
+		Statement stmt = null;
+		ResultSet rset = null;
+		final String sql = size==1 ? "SELECT nextval('" + getName() + "')" : "SELECT nextval('" + getName() + "') FROM generate_series(1," + String.valueOf(size) + ")";
+		final long[] values = new long[size];
 		try {
 			conn = dataSource.getConnection(sequenceName);
 			stmt = conn.createStatement();
 			if (DebugFile.trace)
-				DebugFile.writeln("Statement.executeQuery(SELECT nextval('" + getName() + "'))");
-			rset = stmt.executeQuery("SELECT nextval('" + getName() + "')");
-			rset.next();
-			current = rset.getInt(1);
+				DebugFile.writeln("Statement.executeQuery(" + sql + ")");
+			rset = stmt.executeQuery(sql);
+			int count = 0;
+			while (count<size && rset.next())
+				values[count++] = rset.getLong(1);
+			if (count<size)
+				throw new JDOException("PgSequenceGenerator expected " + size + " values from sequence " + getName() + " but got " + count);
 			rset.close();
 			rset = null;
 			stmt.close();
@@ -87,11 +137,7 @@ public class PgSequenceGenerator implements Sequence {
 			} catch (SQLException ignore) {
 			}
 		}
-		if (DebugFile.trace) {
-			DebugFile.decIdent();
-			DebugFile.writeln("End PgSequenceGenerator.nextValue() : " + current);
-		}
-		return current;
+		return values;
 	}
 
 	@Override
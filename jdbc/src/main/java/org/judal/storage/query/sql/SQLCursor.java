@@ -0,0 +1,178 @@
+package org.judal.storage.query.sql;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.jdo.JDOException;
+
+import org.judal.jdbc.jdc.JDCConnection;
+import org.judal.storage.table.Record;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Forward-only cursor over the results of a SQLQuery.</p>
+ * Records are read from an open ResultSet as the cursor advances instead of being loaded into a RecordSet.
+ * The cursor is closed automatically after its last row is read, but it must be closed explicitly
+ * if it is abandoned before reaching the end, in order to release the statement and to restore
+ * the auto commit mode and transaction isolation level of the connection.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ * @param <R> Record
+ */
+public class SQLCursor<R extends Record> implements AutoCloseable, Iterator<R> {
+
+	private final SQLQuery.RowReader reader;
+	private final JDCConnection conn;
+	private final long maxRows;
+	private final boolean restoreAutoCommit;
+	private final int formerIsolationLevel;
+	private Statement stmt;
+	private ResultSet rset;
+	private R nextRow;
+	private long rowCount;
+	private boolean closed;
+
+	/**
+	 * <p>Constructor.</p>
+	 * @param query SQLQuery Query whose results are read
+	 * @param sql String SQL text of the query
+	 * @param conn JDCConnection
+	 * @param stmt Statement
+	 * @param rset ResultSet positioned before the first row to be read
+	 * @param maxRows int Maximum number of rows to be read
+	 * @param restoreAutoCommit boolean Whether auto commit must be set back to <b>true</b> when the cursor is closed
+	 * @param formerIsolationLevel int Transaction isolation level to be restored when the cursor is closed or -1
+	 * @throws SQLException
+	 */
+	SQLCursor(SQLQuery query, String sql, JDCConnection conn, Statement stmt, ResultSet rset, int maxRows, boolean restoreAutoCommit, int formerIsolationLevel) throws SQLException {
+		this.reader = query.new RowReader(rset, sql);
+		this.conn = conn;
+		this.stmt = stmt;
+		this.rset = rset;
+		this.maxRows = maxRows;
+		this.restoreAutoCommit = restoreAutoCommit;
+		this.formerIsolationLevel = formerIsolationLevel;
+		this.nextRow = null;
+		this.rowCount = 0l;
+		this.closed = false;
+	}
+
+	/**
+	 * @return boolean
+	 * @throws JDOException if the next row could not be read
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean hasNext() throws JDOException {
+		if (nextRow!=null)
+			return true;
+		if (closed)
+			return false;
+		try {
+			if (rowCount<maxRows && rset.next()) {
+				nextRow = (R) reader.read(rset);
+				return true;
+			}
+		} catch (SQLException sqle) {
+			if (DebugFile.trace) DebugFile.writeln("SQLCursor.hasNext() SQLException " + sqle.getMessage());
+			close();
+			throw new JDOException(sqle.getSQLState() + " " + sqle.getMessage(), sqle);
+		}
+		close();
+		return false;
+	}
+
+	/**
+	 * @return R
+	 * @throws NoSuchElementException if there are no more rows
+	 * @throws JDOException if the next row could not be read
+	 */
+	@Override
+	public R next() throws NoSuchElementException, JDOException {
+		if (!hasNext())
+			throw new NoSuchElementException("Attempt to move cursor beyond last record");
+		final R retval = nextRow;
+		nextRow = null;
+		rowCount++;
+		return retval;
+	}
+
+	/**
+	 * @return long Count of rows returned by next() so far
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return boolean
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * <p>Get a sequential Stream over the remaining rows of this cursor.</p>
+	 * Closing the Stream closes this cursor.
+	 * @return Stream&lt;R&gt;
+	 */
+	public Stream<R> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+	}
+
+	/**
+	 * <p>Close the ResultSet and the Statement and restore the connection settings changed when the cursor was opened.</p>
+	 * Calling this method on an already closed cursor has no effect.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			nextRow = null;
+			closeQuietly(conn, stmt, rset, restoreAutoCommit, formerIsolationLevel);
+			rset = null;
+			stmt = null;
+		}
+	}
+
+	static void closeQuietly(JDCConnection conn, Statement stmt, ResultSet rset, boolean restoreAutoCommit, int formerIsolationLevel) {
+		try { if (null!=rset) rset.close();
+		} catch (Exception logit) { if (DebugFile.trace) DebugFile.writeln(logit.getClass().getName()+" "+logit.getMessage()); }
+		try { if (null!=stmt) stmt.close();
+		} catch (Exception logit) { if (DebugFile.trace) DebugFile.writeln(logit.getClass().getName()+" "+logit.getMessage()); }
+		if (restoreAutoCommit) {
+			try {
+				if (DebugFile.trace) DebugFile.writeln("Connection.setAutoCommit(true)");
+				conn.commit();
+				conn.setAutoCommit(true);
+			} catch (Exception logit) { if (DebugFile.trace) DebugFile.writeln(logit.getClass().getName()+" "+logit.getMessage()); }
+		}
+		if (formerIsolationLevel!=-1) {
+			try {
+				conn.setTransactionIsolation(formerIsolationLevel);
+			} catch (Exception logit) { if (DebugFile.trace) DebugFile.writeln(logit.getClass().getName()+" "+logit.getMessage()); }
+		}
+	}
+
+}
@@ -17,12 +17,12 @@ import java.lang.reflect.Constructor;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Types;
 
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 import javax.jdo.FetchPlan;
 import javax.jdo.JDOException;
@@ -31,11 +31,12 @@ import org.judal.storage.StorageObjectFactory;
 import org.judal.storage.query.AbstractQuery;
 import org.judal.storage.query.Connective;
 import org.judal.storage.query.Expression;
+import org.judal.storage.table.PrimitiveRecord;
 import org.judal.storage.table.Record;
 import org.judal.storage.table.RecordSet;
 import org.judal.storage.table.SingleColumnRecord;
 import org.judal.jdbc.RDBMS;
-import org.judal.jdbc.jdc.JDCDAO;
+import org.judal.jdbc.jdc.JDCConnection;
 import org.judal.jdbc.JDBCIndexableView;
 
 import com.knowgate.debug.DebugFile;
@@ -59,8 +60,19 @@ public class SQLQuery extends AbstractQuery {
 		} catch (ClassNotFoundException ignore) { }
 	}
 
+	/**
+	 * Number of rows fetched at a time by cursors when no fetch size has been set
+	 */
+	public static final int DEFAULT_CURSOR_FETCH_SIZE = 1000;
+
+	private static final int ROWS_AS_ARRAYS = 1;
+	private static final int ROWS_AS_MAPS = 2;
+	private static final int ROWS_AS_SINGLE_COLUMN = 3;
+	private static final int ROWS_AS_PRIMITIVES = 4;
+
 	private Constructor<? extends Record> recordConstructor;
 	private Object[] constructorParameters;
+	private int fetchSize;
 
 	public SQLQuery(JDBCIndexableView view) throws JDOException {
 		if (view.getResultClass()==null)
@@ -68,6 +80,7 @@ public class SQLQuery extends AbstractQuery {
 		setCandidates(view);
 		setRange(0, Integer.MAX_VALUE);
 		recordConstructor = null;
+		fetchSize = 0;
 		setResultClass(view.getResultClass(), view.getDataSource().getClass(), view.getClass());
 	}
 
@@ -76,6 +89,7 @@ public class SQLQuery extends AbstractQuery {
 		SQLQuery theClone = new SQLQuery(getView());
 		super.clone(this);
 		theClone.recordConstructor = this.recordConstructor;
+		theClone.fetchSize = this.fetchSize;
 		if (constructorParameters==null)
 			theClone.constructorParameters = null;
 		else
@@ -100,6 +114,25 @@ public class SQLQuery extends AbstractQuery {
 		super.setSerializeRead(serialize);
 	}
 	
+	/**
+	 * @return int Number of rows that cursors returned by openCursor() read from the database at a time.
+	 * Zero means that DEFAULT_CURSOR_FETCH_SIZE will be used.
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * <p>Set the number of rows that cursors returned by openCursor() read from the database at a time.</p>
+	 * @param rows int [0..n] Zero means that DEFAULT_CURSOR_FETCH_SIZE will be used.
+	 * @throws IllegalArgumentException if rows is negative
+	 */
+	public void setFetchSize(int rows) throws IllegalArgumentException {
+		if (rows<0)
+			throw new IllegalArgumentException("Fetch size must be equal to or greater than zero");
+		fetchSize = rows;
+	}
+
 	@Override
 	public String getResult() {
 		final String retval = super.getResult();
@@ -204,7 +237,9 @@ public class SQLQuery extends AbstractQuery {
 				getView().getConnection().setTransactionIsolation(java.sql.Connection.TRANSACTION_SERIALIZABLE);
 			}
 
-			stmt = prepareSelect();
+			final String sql = source();
+
+			stmt = prepareSelect(sql);
 
 			setParameters(stmt);
 
@@ -227,7 +262,7 @@ public class SQLQuery extends AbstractQuery {
 			setFetchSize(rset);
 
 			try {
-				retval = fetchResultSet(rset);
+				retval = fetchResultSet(rset, sql);
 			} catch (NoSuchMethodException e) {
 				throw new JDOException(e.getMessage(), e);
 			}
@@ -291,7 +326,103 @@ public class SQLQuery extends AbstractQuery {
 
 		return retval;
 	} // execute
-	
+
+	/**
+	 * <p>Execute the query and get a forward-only cursor over its results.</p>
+	 * Rows are read from the database getFetchSize() rows at a time as the cursor advances
+	 * and they are mapped to Records the same way as execute() does,
+	 * so the memory used does not depend on the number of rows returned by the query.
+	 * On PostgreSQL autocommit is switched off while the cursor is open, because the driver
+	 * only uses a server side cursor inside a transaction. On MySQL rows are streamed one by one
+	 * unless an explicit fetch size has been set.
+	 * The cursor holds an open statement and it must be closed after use.
+	 * @return SQLCursor&lt;R&gt;
+	 * @throws JDOException
+	 */
+	public <R extends Record> SQLCursor<R> openCursor() throws JDOException {
+		PreparedStatement stmt = null;
+		ResultSet rset = null;
+		SQLCursor<R> retval;
+		boolean restoreAutoCommit = false;
+		int formerIsolationLevel = -1;
+		final JDCConnection conn = getView().getConnection();
+
+		if (getRangeFromIncl()<0l)
+			throw new IllegalArgumentException("row offset must be equal to or greater than zero");
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin SQLQuery.openCursor(" + getRangeFromIncl() + "," + getRangeToExcl() + ")");
+			DebugFile.incIdent();
+		}
+
+		try {
+			if (getSerializeRead()) {
+				formerIsolationLevel = conn.getTransactionIsolation();
+				conn.setTransactionIsolation(java.sql.Connection.TRANSACTION_SERIALIZABLE);
+			}
+
+			int fetch = fetchSize>0 ? fetchSize : DEFAULT_CURSOR_FETCH_SIZE;
+			final int dbms = conn.getDataBaseProduct();
+			if (dbms==RDBMS.POSTGRESQL.intValue() && conn.getAutoCommit()) {
+				if (DebugFile.trace) DebugFile.writeln("Connection.setAutoCommit(false)");
+				conn.setAutoCommit(false);
+				restoreAutoCommit = true;
+			} else if (dbms==RDBMS.MYSQL.intValue() && 0==fetchSize) {
+				fetch = Integer.MIN_VALUE;
+			}
+
+			final String sql = source();
+			if (DebugFile.trace) DebugFile.writeln("Connection.prepareStatement(" + sql + ", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)");
+			stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			if (DebugFile.trace) DebugFile.writeln("PreparedStatement.setFetchSize(" + String.valueOf(fetch) + ")");
+			stmt.setFetchSize(fetch);
+
+			setParameters(stmt);
+
+			if (getDatastoreReadTimeoutMillis()!=null && getDatastoreReadTimeoutMillis()>0)
+				stmt.setQueryTimeout(getDatastoreReadTimeoutMillis()*1000);
+
+			if (DebugFile.trace) DebugFile.writeln("PreparedStatement.executeQuery()");
+			rset = stmt.executeQuery();
+
+			// Forward-only result sets cannot be positioned with relative() so skip the offset if it was not added to the SQL
+			if (!supportLimitOffset()) {
+				long skip = getRangeFromIncl();
+				while (skip>0l && rset.next())
+					skip--;
+			}
+
+			retval = new SQLCursor<R>(this, sql, conn, stmt, rset, getMaxRows(), restoreAutoCommit, formerIsolationLevel);
+
+		} catch (SQLException sqle) {
+			if (DebugFile.trace) {
+				DebugFile.writeln("SQLException "+sqle.getMessage());
+				DebugFile.decIdent();
+			}
+			SQLCursor.closeQuietly(conn, stmt, rset, restoreAutoCommit, formerIsolationLevel);
+			throw new JDOException(sqle.getSQLState()+" "+sqle.getMessage(), sqle);
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End SQLQuery.openCursor()");
+		}
+
+		return retval;
+	} // openCursor
+
+	/**
+	 * <p>Execute the query and get a sequential Stream over its results.</p>
+	 * The Stream is backed by the cursor returned by openCursor() and it must be closed after use,
+	 * preferably with a try-with-resources block.
+	 * @return Stream&lt;R&gt;
+	 * @throws JDOException
+	 */
+	public <R extends Record> Stream<R> stream() throws JDOException {
+		return this.<R>openCursor().stream();
+	}
+
 	@Override
 	public String source() throws JDOException {
 		int dbms;
@@ -349,119 +480,134 @@ public class SQLQuery extends AbstractQuery {
 	}
 
 	public PreparedStatement prepareSelect() throws SQLException {
+		return prepareSelect(source());
+	}
+
+	private PreparedStatement prepareSelect(String sql) throws SQLException {
 		int ctype = (getRangeFromIncl()==0L ? ResultSet.TYPE_FORWARD_ONLY : ResultSet.TYPE_SCROLL_INSENSITIVE);
-		String sql = source();
 		if (DebugFile.trace) DebugFile.writeln("Connection.prepareStatement(" + sql + ")");
 		return getView().getConnection().prepareStatement(sql, ctype, ResultSet.CONCUR_READ_ONLY);
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <R extends Record> int fetchRowsAsArrays(ResultSet oRSet, RecordSet<R> recordSet, int iMaxRow) throws SQLException {
-		int iRetVal = 0;
-		boolean bHasNext = true;
-
-		if (DebugFile.trace) {
-			DebugFile.writeln("Begin SQLQuery.fetchRowsAsArrays([ResultSet], RecordSet<R>, " + String.valueOf(iMaxRow) + ")");
-			DebugFile.incIdent();
+	/**
+	 * <p>Maps the current row of a ResultSet to a new Record.</p>
+	 * Values are read by position into ArrayRecord instances, into the primitive slots of PrimitiveRecord instances,
+	 * by column name into other Record implementations and as the key of SingleColumnRecord instances.
+	 * The same reader is used by execute() and by the cursors returned by openCursor().
+ * Column names, types and getters are taken from the SQLRowPlan cached for the SQL text of the query,
+ * so no ResultSetMetaData method is called per row.
+	 */
+	final class RowReader {
+
+		private final int format;
+		private final SQLRowPlan oPlan;
+		private final int iColCount;
+		private final String[] aColNames;
+		private final int[] aColPositions;
+		private final String sViewName;
+		private final Constructor<? extends Record> oSingleColumnConstructor;
+
+		/**
+		 * @param oRSet ResultSet
+		 * @param sSQL String SQL text of the query that returned the ResultSet. Used as the row plan cache key.
+		 * @throws SQLException
+		 */
+		@SuppressWarnings("unchecked")
+		RowReader(ResultSet oRSet, String sSQL) throws SQLException {
+			oPlan = getView().getDataSource().getRowPlanCache().get(sSQL, oRSet);
+			if (PrimitiveRecord.class.isAssignableFrom(getResultClass())) {
+				format = ROWS_AS_PRIMITIVES;
+				iColCount = oPlan.getColumnCount();
+				aColNames = oPlan.getColumnNames();
+			} else if ((ArrayRecordJava!=null && ArrayRecordJava.isAssignableFrom(getResultClass())) ||
+				(ArrayRecordScala!=null && ArrayRecordScala.isAssignableFrom(getResultClass()))) {
+				format = ROWS_AS_ARRAYS;
+				iColCount = Math.min(newRecord().columns().length, oPlan.getColumnCount());
+				aColNames = null;
+			} else if (SingleColumnRecord.class.isAssignableFrom(getResultClass())) {
+				format = ROWS_AS_SINGLE_COLUMN;
+				iColCount = 1;
+				aColNames = new String[]{oPlan.getColumnName(1)};
+			} else {
+				format = ROWS_AS_MAPS;
+				iColCount = oPlan.getColumnCount();
+				aColNames = oPlan.getColumnNames();
+			}
+			if (ROWS_AS_PRIMITIVES==format) {
+				// Result set columns are mapped to record positions once for all rows
+				PrimitiveRecord oRec = (PrimitiveRecord) newRecord();
+				aColPositions = new int[iColCount];
+				for (int iCol=1; iCol<=iColCount; iCol++)
+					aColPositions[iCol-1] = oRec.getColumnPosition(aColNames[iCol-1]);
+			} else {
+				aColPositions = null;
+			}
+			if (ROWS_AS_SINGLE_COLUMN==format) {
+				sViewName = getView().getAlias()==null ? getView().name() : getView().getAlias();
+				oSingleColumnConstructor = (Constructor<? extends Record>) StorageObjectFactory.getConstructor(getResultClass(), new Class<?>[]{String.class.asSubclass(String.class)});
+			} else {
+				sViewName = null;
+				oSingleColumnConstructor = null;
+			}
 		}
-		
-		R oRow = (R) newRecord();
-		ResultSetMetaData oMDat = oRSet.getMetaData();
-		final int iColCount = Math.min(oRow.columns().length, oMDat.getColumnCount());
-		if (DebugFile.trace) DebugFile.writeln("retval = "+String.valueOf(iRetVal)+" maxrows="+String.valueOf(iMaxRow));			
-		while (bHasNext && iRetVal<iMaxRow) {
-			iRetVal++;
-			for (int iCol=1; iCol<=iColCount; iCol++) {
-				Object oFieldValue = oRSet.getObject(iCol);
-				if (DebugFile.trace) DebugFile.writeln("ResultSet.getObject("+iCol+") = "+oFieldValue);				
-				oRow.put (iCol, oRSet.wasNull() ? null : JDCDAO.toJavaObject(oFieldValue, oMDat.getColumnName(iCol), oMDat.getColumnType(iCol)));
-			} // next
-
-			recordSet.add(oRow);
-
-			if (bHasNext = oRSet.next())
-				oRow = (R) newRecord();
-		} // wend			
 
-		if (DebugFile.trace) {
-			DebugFile.decIdent();
-			DebugFile.writeln("End SQLQuery.fetchRowsAsArrays() : " + iRetVal);
+		/**
+		 * @param oRSet ResultSet positioned at the row to be read
+		 * @return Record
+		 * @throws SQLException
+		 */
+		Record read(ResultSet oRSet) throws SQLException {
+			Record oRow;
+			if (ROWS_AS_SINGLE_COLUMN==format) {
+				oRow = StorageObjectFactory.newRecord(oSingleColumnConstructor, sViewName, aColNames[0]);
+				oRow.setKey(oPlan.getValue(oRSet, 1));
+			} else if (ROWS_AS_PRIMITIVES==format) {
+				oRow = newRecord();
+				for (int iCol=1; iCol<=iColCount; iCol++)
+					if (aColPositions[iCol-1]>0)
+						oPlan.copyValue(oRSet, iCol, (PrimitiveRecord) oRow, aColPositions[iCol-1]);
+					else
+						oRow.put (aColNames[iCol-1], oPlan.getValue(oRSet, iCol));
+			} else if (ROWS_AS_ARRAYS==format) {
+				oRow = newRecord();
+				for (int iCol=1; iCol<=iColCount; iCol++)
+					oRow.put (iCol, oPlan.getValue(oRSet, iCol));
+			} else {
+				oRow = newRecord();
+				for (int iCol=1; iCol<=iColCount; iCol++)
+					oRow.put (aColNames[iCol-1], oPlan.getValue(oRSet, iCol));
+			}
+			return oRow;
 		}
-
-		return iRetVal;
 	}
 
 	@SuppressWarnings("unchecked")
-	private <R extends Record> int fetchRowsAsMaps(ResultSet oRSet, RecordSet<R> recordSet, int iMaxRow) throws SQLException {
+	private <R extends Record> int fetchRows(ResultSet oRSet, String sSQL, RecordSet<R> recordSet, int iMaxRow) throws SQLException {
 		int iRetVal = 0;
 		boolean bHasNext = true;
 
 		if (DebugFile.trace) {
-			DebugFile.writeln("Begin SQLQuery.fetchRowsAsMaps([ResultSet], RecordSet<R>, " + String.valueOf(iMaxRow) + ")");
+			DebugFile.writeln("Begin SQLQuery.fetchRows([ResultSet], RecordSet<R>, " + String.valueOf(iMaxRow) + ")");
 			DebugFile.incIdent();
 		}
-		
-		ResultSetMetaData oMDat = oRSet.getMetaData();
-		final int iColCount = oMDat.getColumnCount();
-		String[] aColNames = new String[iColCount];
-		for (int c=1; c<=oMDat.getColumnCount(); c++) {
-			String sColName = oMDat.getColumnName(c);
-			aColNames[c-1] = sColName;
-		}
 
-		R oRow = (R) newRecord();
-		if (DebugFile.trace) DebugFile.writeln("retval = "+String.valueOf(iRetVal)+" maxrows="+String.valueOf(iMaxRow));			
+		RowReader oReader = new RowReader(oRSet, sSQL);
 		while (bHasNext && iRetVal<iMaxRow) {
 			iRetVal++;
-			for (int iCol=1; iCol<=iColCount; iCol++) {
-				Object oFieldValue = oRSet.getObject(iCol);
-				oRow.put (aColNames[iCol-1], oRSet.wasNull() ? null : JDCDAO.toJavaObject(oFieldValue, oMDat.getColumnName(iCol), oMDat.getColumnType(iCol)));
-			} // next
-
-			recordSet.add(oRow);
-
-			if (bHasNext = oRSet.next())
-				oRow = (R) newRecord();
+			recordSet.add((R) oReader.read(oRSet));
+			bHasNext = oRSet.next();
 		} // wend			
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
-			DebugFile.writeln("End SQLQuery.fetchRowsAsMaps() : " + iRetVal);
+			DebugFile.writeln("End SQLQuery.fetchRows() : " + iRetVal);
 		}
 
 		return iRetVal;
 	}
-	
-	@SuppressWarnings("unchecked")
-	private <R extends Record> int fetchRowsAsSingleColumn(ResultSet oRSet, RecordSet<R> recordSet, int iMaxRow) throws SQLException {
-		int iRetVal = 0;
-		boolean bHasNext = true;
-		String viewName = getView().getAlias();
-		if (null==viewName) viewName =  getView().name();
-		ResultSetMetaData oMDat = oRSet.getMetaData();
-		String colName = oMDat.getColumnName(1);
-		
-		recordConstructor = (Constructor<? extends Record>) StorageObjectFactory.getConstructor(getResultClass(), new Class<?>[]{String.class.asSubclass(String.class)});
-		R oRow = (R) StorageObjectFactory.newRecord(recordConstructor, viewName, colName);
-
-		while (bHasNext && iRetVal<iMaxRow) {
-			iRetVal++;
-			Object oFieldValue = oRSet.getObject(1);
-			if (oRSet.wasNull())
-				oRow.setKey(null);
-			else
-				oRow.setKey(JDCDAO.toJavaObject(oFieldValue, colName, oMDat.getColumnType(1)));
-
-			recordSet.add(oRow);
-
-			if (bHasNext = oRSet.next())
-				oRow = (R) (R) StorageObjectFactory.newRecord(recordConstructor, viewName, colName);
-		} // wend			
-		return iRetVal;
-	}
 
 	@SuppressWarnings("unchecked")
-	private <R extends Record> RecordSet<R> fetchResultSet (ResultSet oRSet)
+	private <R extends Record> RecordSet<R> fetchResultSet (ResultSet oRSet, String sSQL)
 			throws NullPointerException, SQLException, SQLFeatureNotSupportedException, ArrayIndexOutOfBoundsException, InstantiationException, IllegalAccessException, NoSuchMethodException
 	{
 		int iRetVal = 0;
@@ -495,13 +641,7 @@ public class SQLQuery extends AbstractQuery {
 		if (DebugFile.trace) DebugFile.writeln("has next " + String.valueOf(bHasNext));
 
 		if (bHasNext) {
-			if ((ArrayRecordJava!=null && ArrayRecordJava.isAssignableFrom(getResultClass())) ||
-				(ArrayRecordScala!=null && ArrayRecordScala.isAssignableFrom(getResultClass())))
-				iRetVal = fetchRowsAsArrays(oRSet, recordSet, iMaxRow);
-			else if (SingleColumnRecord.class.isAssignableFrom(getResultClass()))
-				iRetVal = fetchRowsAsSingleColumn(oRSet, recordSet, iMaxRow);				
-			else
-				iRetVal = fetchRowsAsMaps(oRSet, recordSet, iMaxRow);				
+			iRetVal = fetchRows(oRSet, sSQL, recordSet, iMaxRow);
 		} // fi
 
 		if (0==iRetVal || iRetVal<iMaxRow) {
@@ -0,0 +1,340 @@
+package org.judal.storage.query.sql;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.judal.jdbc.jdc.JDCDAO;
+import org.judal.storage.table.PrimitiveRecord;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Precomputed plan for reading the rows of a ResultSet.</p>
+ * The plan is compiled once from the ResultSetMetaData of a query.
+ * It holds the name and SQL type of each column and the ResultSet getter to be used for it,
+ * so reading a row does not call ResultSetMetaData and it avoids getObject() for the most common types.
+ * Plans are cached by SQL text at the SQLRowPlan.Cache of each JDBCDataSource.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public final class SQLRowPlan {
+
+	private static final byte GET_OBJECT = 0;
+	private static final byte GET_OTHER = 1;
+	private static final byte GET_INT = 2;
+	private static final byte GET_LONG = 3;
+	private static final byte GET_FLOAT = 4;
+	private static final byte GET_DOUBLE = 5;
+	private static final byte GET_BOOLEAN = 6;
+	private static final byte GET_STRING = 7;
+	private static final byte GET_BIGDECIMAL = 8;
+	private static final byte GET_DATE = 9;
+	private static final byte GET_TIME = 10;
+	private static final byte GET_TIMESTAMP = 11;
+	private static final byte GET_BYTES = 12;
+
+	private final int columnCount;
+	private final String[] columnNames;
+	private final int[] columnTypes;
+	private final byte[] getters;
+
+	private SQLRowPlan(ResultSetMetaData mdat) throws SQLException {
+		columnCount = mdat.getColumnCount();
+		columnNames = new String[columnCount];
+		columnTypes = new int[columnCount];
+		getters = new byte[columnCount];
+		for (int c=0; c<columnCount; c++) {
+			columnNames[c] = mdat.getColumnName(c+1);
+			columnTypes[c] = mdat.getColumnType(c+1);
+			getters[c] = getterFor(columnTypes[c], mdat, c+1);
+		}
+	}
+
+	/**
+	 * <p>Compile a new plan without caching it.</p>
+	 * @param mdat ResultSetMetaData
+	 * @return SQLRowPlan
+	 * @throws SQLException
+	 */
+	public static SQLRowPlan compile(ResultSetMetaData mdat) throws SQLException {
+		return new SQLRowPlan(mdat);
+	}
+
+	private static byte getterFor(int sqlType, ResultSetMetaData mdat, int col) throws SQLException {
+		switch (sqlType) {
+		case Types.INTEGER:
+			// Unsigned MySQL integers do not fit in an int and getObject() returns a Long for them
+			return mdat.isSigned(col) ? GET_INT : GET_LONG;
+		case Types.BIGINT:
+			// Unsigned MySQL big integers are returned as BigInteger by getObject()
+			return mdat.isSigned(col) ? GET_LONG : GET_OBJECT;
+		case Types.REAL:
+			return GET_FLOAT;
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return GET_DOUBLE;
+		case Types.BOOLEAN:
+			return GET_BOOLEAN;
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return GET_STRING;
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return GET_BIGDECIMAL;
+		case Types.DATE:
+			return GET_DATE;
+		case Types.TIME:
+			return GET_TIME;
+		case Types.TIMESTAMP:
+			return GET_TIMESTAMP;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+			return GET_BYTES;
+		case Types.OTHER:
+			return GET_OTHER;
+		default:
+			return GET_OBJECT;
+		}
+	}
+
+	/**
+	 * @return int Count of columns of the result set
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * @param col int [1..getColumnCount()]
+	 * @return String Column name as returned by ResultSetMetaData.getColumnName()
+	 */
+	public String getColumnName(int col) {
+		return columnNames[col-1];
+	}
+
+	/**
+	 * @return String[] Names of all the columns of the result set. The returned array must not be modified.
+	 */
+	String[] getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * @param col int [1..getColumnCount()]
+	 * @return int Column type from java.sql.Types
+	 */
+	public int getColumnType(int col) {
+		return columnTypes[col-1];
+	}
+
+	/**
+	 * <p>Read the value of a column from the current row of a ResultSet.</p>
+	 * @param rset ResultSet positioned at the row to be read
+	 * @param col int [1..getColumnCount()]
+	 * @return Object Value of the column or <b>null</b> if it is SQL NULL
+	 * @throws SQLException
+	 */
+	public Object getValue(ResultSet rset, int col) throws SQLException {
+		final Object value;
+		switch (getters[col-1]) {
+		case GET_INT:
+			final int i = rset.getInt(col);
+			return rset.wasNull() ? null : Integer.valueOf(i);
+		case GET_LONG:
+			final long l = rset.getLong(col);
+			return rset.wasNull() ? null : Long.valueOf(l);
+		case GET_FLOAT:
+			final float f = rset.getFloat(col);
+			return rset.wasNull() ? null : Float.valueOf(f);
+		case GET_DOUBLE:
+			final double d = rset.getDouble(col);
+			return rset.wasNull() ? null : Double.valueOf(d);
+		case GET_BOOLEAN:
+			final boolean b = rset.getBoolean(col);
+			return rset.wasNull() ? null : Boolean.valueOf(b);
+		case GET_STRING:
+			return rset.getString(col);
+		case GET_BIGDECIMAL:
+			return rset.getBigDecimal(col);
+		case GET_DATE:
+			return rset.getDate(col);
+		case GET_TIME:
+			return rset.getTime(col);
+		case GET_TIMESTAMP:
+			return rset.getTimestamp(col);
+		case GET_BYTES:
+			return rset.getBytes(col);
+		case GET_OTHER:
+			value = rset.getObject(col);
+			return rset.wasNull() ? null : JDCDAO.toJavaObject(value, columnNames[col-1], Types.OTHER);
+		default:
+			value = rset.getObject(col);
+			return rset.wasNull() ? null : value;
+		}
+	}
+
+	/**
+	 * <p>Copy the value of a column from the current row of a ResultSet into a PrimitiveRecord.</p>
+	 * Integer and floating point values are copied into the primitive slots of the record without boxing them.
+	 * Other values are copied with PrimitiveRecord.put(int, Object).
+	 * @param rset ResultSet positioned at the row to be read
+	 * @param col int [1..getColumnCount()]
+	 * @param rec PrimitiveRecord
+	 * @param colpos int Column position at the record [1..rec.columns().length]
+	 * @throws SQLException
+	 */
+	public void copyValue(ResultSet rset, int col, PrimitiveRecord rec, int colpos) throws SQLException {
+		switch (getters[col-1]) {
+		case GET_INT:
+		case GET_LONG:
+			if (rec.getSlotType(colpos)==PrimitiveRecord.SLOT_LONG) {
+				final long l = rset.getLong(col);
+				if (rset.wasNull())
+					rec.putNullAt(colpos);
+				else
+					rec.putLongAt(colpos, l);
+				return;
+			}
+			break;
+		case GET_FLOAT:
+		case GET_DOUBLE:
+			if (rec.getSlotType(colpos)==PrimitiveRecord.SLOT_DOUBLE) {
+				final double d = GET_FLOAT==getters[col-1] ? rset.getFloat(col) : rset.getDouble(col);
+				if (rset.wasNull())
+					rec.putNullAt(colpos);
+				else
+					rec.putDoubleAt(colpos, d);
+				return;
+			}
+			break;
+		default:
+			break;
+		}
+		rec.put(colpos, getValue(rset, col));
+	}
+
+	// ---------------------------------------------------------
+
+	/**
+	 * <p>Bounded LRU cache of row plans keyed by SQL text.</p>
+	 * A cached plan is only reused if the column count of the new result set matches it,
+	 * so the cache must be cleared after altering the database schema.
+	 */
+	public static final class Cache {
+
+		/**
+		 * Default maximum number of plans kept at a cache
+		 */
+		public static final int DEFAULT_CAPACITY = 256;
+
+		private final int capacity;
+		private final LinkedHashMap<String,SQLRowPlan> plans;
+		private final AtomicLong hits;
+		private final AtomicLong misses;
+
+		/**
+		 * <p>Constructor</p>
+		 * @param capacity int Maximum number of plans kept at the cache
+		 */
+		@SuppressWarnings("serial")
+		public Cache(final int capacity) {
+			this.capacity = capacity;
+			this.hits = new AtomicLong(0l);
+			this.misses = new AtomicLong(0l);
+			this.plans = new LinkedHashMap<String,SQLRowPlan>(capacity+1, 1f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String,SQLRowPlan> eldest) {
+					return size()>capacity;
+				}
+			};
+		}
+
+		/**
+		 * <p>Get the plan for a query compiling it if it is not cached.</p>
+		 * @param sql String SQL text of the query
+		 * @param rset ResultSet returned by the query
+		 * @return SQLRowPlan
+		 * @throws SQLException
+		 */
+		public SQLRowPlan get(String sql, ResultSet rset) throws SQLException {
+			final ResultSetMetaData mdat = rset.getMetaData();
+			SQLRowPlan plan;
+			synchronized (plans) {
+				plan = plans.get(sql);
+			}
+			if (plan!=null && plan.getColumnCount()==mdat.getColumnCount()) {
+				hits.incrementAndGet();
+			} else {
+				misses.incrementAndGet();
+				if (DebugFile.trace) DebugFile.writeln("SQLRowPlan.Cache compiling plan for " + sql);
+				plan = compile(mdat);
+				synchronized (plans) {
+					plans.put(sql, plan);
+				}
+			}
+			return plan;
+		}
+
+		/**
+		 * @return int Maximum number of plans kept at the cache
+		 */
+		public int capacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return int Number of cached plans
+		 */
+		public int size() {
+			synchronized (plans) {
+				return plans.size();
+			}
+		}
+
+		/**
+		 * @return long Number of times that a cached plan was reused
+		 */
+		public long getHits() {
+			return hits.get();
+		}
+
+		/**
+		 * @return long Number of times that a plan had to be compiled
+		 */
+		public long getMisses() {
+			return misses.get();
+		}
+
+		/**
+		 * Remove all cached plans
+		 */
+		public void clear() {
+			synchronized (plans) {
+				plans.clear();
+			}
+		}
+	}
+
+}
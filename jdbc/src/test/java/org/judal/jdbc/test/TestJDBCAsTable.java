@@ -2,7 +2,11 @@ package org.judal.jdbc.test;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -11,6 +15,7 @@ import javax.transaction.RollbackException;
 import javax.transaction.SystemException;
 
 import org.judal.jdbc.JDBCEngine;
+import org.judal.jdbc.JDBCRelationalTable;
 import org.judal.jdbc.JDBCTableDataSource;
 import org.judal.jdbc.metadata.SQLFunctions;
 
@@ -20,16 +25,29 @@ import org.judal.storage.java.test.AbstractTableTest;
 import org.judal.storage.java.test.ArrayRecord1;
 import org.judal.storage.java.test.ArrayRecord2;
 import org.judal.storage.java.test.MapRecord1;
+import org.judal.storage.java.test.TestRecord1;
+import org.judal.storage.keyvalue.BatchException;
+import org.judal.storage.query.SortDirection;
+import org.judal.storage.query.sql.SQLCursor;
+import org.judal.storage.query.sql.SQLQuery;
 import org.judal.storage.table.ColumnGroup;
 import org.judal.storage.table.Record;
+import org.judal.storage.table.KeysetPage;
 import org.judal.storage.table.RecordSet;
 import org.judal.storage.table.Table;
 import org.judal.storage.table.TableDataSource;
+import org.judal.storage.table.TableHandleCache;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.Ignore;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestJDBCAsTable extends AbstractTableTest {
 
@@ -96,5 +114,170 @@ public class TestJDBCAsTable extends AbstractTableTest {
 		tbl.close();
 		dts.dropTable(MapRecord1.tableName, false);
 	}
-	
+
+	@Test
+	public void test07BatchWrite() throws JDOException, InstantiationException, IllegalAccessException {
+		ArrayRecord1.dataSource = dts;
+		JDBCRelationalTable tbl = null;
+		createTable1(dts);
+		try {
+			ArrayList<TestRecord1> recs = new ArrayList<TestRecord1>();
+			for (int n=1; n<=5; n++) {
+				TestRecord1 rec = recordClass1.newInstance();
+				rec.setId(new Integer(n));
+				rec.setCreated(System.currentTimeMillis());
+				rec.setName("Name " + n);
+				rec.setLocation("Batch");
+				rec.setAmount(new BigDecimal(n));
+				recs.add(rec);
+			}
+			tbl = ((JDBCTableDataSource) dts).openTable(recordClass1.newInstance());
+			tbl.setBatchSize(2);
+			tbl.insertAll(recs);
+
+			for (TestRecord1 rec : recs)
+				rec.setName("Updated " + rec.getId());
+			TestRecord1 rec6 = recordClass1.newInstance();
+			rec6.setId(new Integer(6));
+			rec6.setCreated(System.currentTimeMillis());
+			rec6.setName("Name 6");
+			recs.add(rec6);
+			tbl.storeAll(recs);
+
+			TestRecord1 ret = recordClass1.newInstance();
+			assertTrue(tbl.load(new Integer(1), ret));
+			assertEquals("Updated 1", ret.getName());
+			assertTrue(tbl.load(new Integer(6), ret));
+			assertEquals("Name 6", ret.getName());
+
+			TestRecord1 rec7 = recordClass1.newInstance();
+			rec7.setId(new Integer(7));
+			rec7.setCreated(System.currentTimeMillis());
+			rec7.setName("Name 7");
+			try {
+				tbl.insertAll(Arrays.asList(rec7, recs.get(0)));
+				fail("Expected BatchException for duplicated primary key");
+			} catch (BatchException expected) {
+				assertEquals(2, expected.getTotalCount());
+				assertArrayEquals(new int[]{1}, expected.getFailedPositions());
+				assertSame(recs.get(0), expected.getFailedObjects()[0]);
+			}
+			assertTrue(tbl.exists(new Integer(7)));
+
+			tbl.deleteAll(Arrays.asList(new Integer(1), new Integer(2), new Integer(8)));
+			assertFalse(tbl.exists(new Integer(1)));
+			assertFalse(tbl.exists(new Integer(2)));
+			assertTrue(tbl.exists(new Integer(3)));
+		} finally {
+			if (tbl!=null) tbl.close();
+			dts.dropTable(ArrayRecord1.tableName, false);
+		}
+	}
+
+	@Test
+	public void test08Cursor() throws JDOException, InstantiationException, IllegalAccessException {
+		ArrayRecord1.dataSource = dts;
+		JDBCRelationalTable tbl = null;
+		createTable1(dts);
+		try {
+			createRecords1(dts);
+			tbl = ((JDBCTableDataSource) dts).openTable(recordClass1.newInstance());
+
+			SQLQuery qry = new SQLQuery(tbl);
+			qry.setOrdering("id");
+			qry.setFetchSize(2);
+			int count = 0;
+			try (SQLCursor<TestRecord1> cursor = qry.openCursor()) {
+				while (cursor.hasNext()) {
+					TestRecord1 rec = cursor.next();
+					assertEquals(new Integer(++count), rec.getId());
+				}
+				assertTrue(cursor.isClosed());
+				assertEquals(5l, cursor.getRowCount());
+			}
+			assertEquals(5, count);
+
+			qry.setRange(1, 3);
+			try (Stream<TestRecord1> recs = qry.stream()) {
+				assertEquals("Paul Browm,Peter Scott", recs.map(TestRecord1::getName).collect(Collectors.joining(",")));
+			}
+		} finally {
+			if (tbl!=null) tbl.close();
+			dts.dropTable(ArrayRecord1.tableName, false);
+		}
+	}
+
+	@Test
+	public void test09KeysetPage() throws JDOException, InstantiationException, IllegalAccessException {
+		ArrayRecord1.dataSource = dts;
+		JDBCRelationalTable tbl = null;
+		createTable1(dts);
+		try {
+			createRecords1(dts);
+			tbl = ((JDBCTableDataSource) dts).openTable(recordClass1.newInstance());
+			StringBuilder ids = new StringBuilder();
+			int pages = 0;
+			Comparable<?> lastKey = null;
+			do {
+				KeysetPage<TestRecord1> page = tbl.fetchPage(null, "id", lastKey, 2);
+				for (TestRecord1 rec : page.getRecords())
+					ids.append(ids.length()==0 ? "" : ",").append(rec.getId());
+				lastKey = page.getContinuation();
+				pages++;
+			} while (lastKey!=null);
+			assertEquals("1,2,3,4,5", ids.toString());
+			assertEquals(3, pages);
+		} finally {
+			if (tbl!=null) tbl.close();
+			dts.dropTable(ArrayRecord1.tableName, false);
+		}
+	}
+
+	@Test
+	public void test10FetchOrdered() throws JDOException, InstantiationException, IllegalAccessException {
+		ArrayRecord1.dataSource = dts;
+		JDBCRelationalTable tbl = null;
+		createTable1(dts);
+		try {
+			createRecords1(dts);
+			tbl = ((JDBCTableDataSource) dts).openTable(recordClass1.newInstance());
+			RecordSet<TestRecord1> top = tbl.fetchOrdered(null, null, null, "id", SortDirection.DESC, 2);
+			assertEquals(2, top.size());
+			assertEquals(Integer.valueOf(5), top.get(0).getId());
+			assertEquals(Integer.valueOf(4), top.get(1).getId());
+			RecordSet<TestRecord1> all = tbl.fetchOrdered(null, null, null, "id", SortDirection.ASC, -1);
+			assertEquals(5, all.size());
+			assertEquals(Integer.valueOf(1), all.get(0).getId());
+		} finally {
+			if (tbl!=null) tbl.close();
+			dts.dropTable(ArrayRecord1.tableName, false);
+		}
+	}
+
+	@Test
+	public void test11TableHandleCache() throws JDOException, InstantiationException, IllegalAccessException {
+		ArrayRecord1.dataSource = dts;
+		createTable1(dts);
+		try {
+			createRecords1(dts);
+			try (TableHandleCache scope = TableHandleCache.begin()) {
+				for (int id=1; id<=5; id++) {
+					TestRecord1 rec = recordClass1.newInstance();
+					assertTrue(rec.load(dts, new Integer(id)));
+					rec.setName("Cached " + id);
+					rec.store(dts);
+				}
+				assertEquals(1, scope.size());
+				assertEquals(1l, scope.getMisses());
+				assertEquals(9l, scope.getHits());
+			}
+			assertNull(TableHandleCache.current());
+			TestRecord1 rec = recordClass1.newInstance();
+			assertTrue(rec.load(dts, new Integer(3)));
+			assertEquals("Cached 3", rec.getName());
+		} finally {
+			dts.dropTable(ArrayRecord1.tableName, false);
+		}
+	}
+
 }
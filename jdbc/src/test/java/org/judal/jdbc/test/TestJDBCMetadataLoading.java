@@ -0,0 +1,169 @@
+package org.judal.jdbc.test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.jdo.JDOException;
+
+import org.judal.jdbc.JDBCEngine;
+import org.judal.jdbc.JDBCRelationalDataSource;
+import org.judal.jdbc.metadata.SQLTableDef;
+import org.judal.metadata.TableDef;
+import org.judal.storage.DataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare the table definitions read with each value of metadataloading property from an in memory database.
+ */
+public class TestJDBCMetadataLoading extends TestJDBC {
+
+	private static final String URI = "jdbc:hsqldb:mem:metadataloading";
+
+	private static final String[] TABLES = new String[]{"t_meta_a", "t_meta_b", "t_meta_c", "t_meta_d", "t_meta_e"};
+
+	private static Map<String,String> properties;
+
+	@BeforeClass
+	public static void init() throws ClassNotFoundException, IOException, SQLException {
+		properties = new HashMap<>(new TestJDBC().getTestProperties());
+		properties.put(DataSource.URI, URI);
+		properties.put(DataSource.SCHEMA, "PUBLIC");
+		properties.put(DataSource.USE_DATABASE_METADATA, "true");
+		Class.forName(properties.get(DataSource.DRIVER));
+		try (Connection conn = DriverManager.getConnection(URI, properties.get(DataSource.USER), properties.get(DataSource.PASSWORD));
+			 Statement stmt = conn.createStatement()) {
+			for (int t=0; t<TABLES.length; t++) {
+				stmt.execute("CREATE TABLE " + TABLES[t] + " (id INTEGER NOT NULL, nm VARCHAR(" + String.valueOf(50+t) + "), dt TIMESTAMP, am DECIMAL(10,2), CONSTRAINT pk_" + TABLES[t] + " PRIMARY KEY (id))");
+				stmt.execute("CREATE INDEX i1_" + TABLES[t] + " ON " + TABLES[t] + " (nm)");
+			}
+		}
+	}
+
+	@AfterClass
+	public static void cleanup() throws SQLException {
+		try (Connection conn = DriverManager.getConnection(URI, properties.get(DataSource.USER), properties.get(DataSource.PASSWORD));
+			 Statement stmt = conn.createStatement()) {
+			stmt.execute("SHUTDOWN");
+		}
+	}
+
+	private static JDBCRelationalDataSource open(String loading) throws JDOException {
+		Map<String,String> props = new HashMap<>(properties);
+		props.put(DataSource.METADATA_LOADING, loading);
+		props.put(DataSource.METADATA_THREADS, "3");
+		return new JDBCEngine().getDataSource(props);
+	}
+
+	private static void assertSameDefinitions(JDBCRelationalDataSource expected, JDBCRelationalDataSource actual) {
+		assertEquals(TABLES.length, expected.getMetaData().tables().size());
+		assertEquals(TABLES.length, actual.getMetaData().tables().size());
+		for (TableDef tdef : expected.getMetaData().tables()) {
+			SQLTableDef other = actual.getTableDef(tdef.getName());
+			assertNotNull(tdef.getName(), other);
+			assertEquals(4, other.getNumberOfColumns());
+			assertEquals(tdef.toJdoXml(), other.toJdoXml());
+		}
+	}
+
+	@Test
+	public void test01LazyLoadsOnFirstUse() throws JDOException {
+		JDBCRelationalDataSource eager = open("eager");
+		JDBCRelationalDataSource lazy = open("lazy");
+		try {
+			assertEquals(0, eager.getPendingTablesCount());
+			assertEquals(TABLES.length, lazy.getPendingTablesCount());
+
+			// Only the table asked for is read and it is read once
+			SQLTableDef tableA = lazy.getTableDef(TABLES[0]);
+			assertNotNull(tableA);
+			assertEquals(4, tableA.getNumberOfColumns());
+			assertEquals(TABLES.length - 1, lazy.getPendingTablesCount());
+			assertSame(tableA, lazy.getTableDef(TABLES[0].toUpperCase()));
+			assertEquals(TABLES.length - 1, lazy.getPendingTablesCount());
+			assertNotNull(lazy.getTableOrViewDef(TABLES[1]));
+			assertEquals(TABLES.length - 2, lazy.getPendingTablesCount());
+
+			// getMetaData() reads all the tables not read yet
+			assertSameDefinitions(eager, lazy);
+			assertEquals(0, lazy.getPendingTablesCount());
+		} finally {
+			eager.close();
+			lazy.close();
+		}
+	}
+
+	@Test
+	public void test02ParallelSameAsEager() throws JDOException {
+		JDBCRelationalDataSource eager = open("eager");
+		JDBCRelationalDataSource parallel = open("parallel");
+		try {
+			assertEquals(0, parallel.getPendingTablesCount());
+			assertSameDefinitions(eager, parallel);
+		} finally {
+			eager.close();
+			parallel.close();
+		}
+	}
+
+	@Test
+	public void test03ConcurrentLazyLookups() throws JDOException, InterruptedException {
+		final JDBCRelationalDataSource lazy = open("lazy");
+		final int threadCount = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Map<String,SQLTableDef>> found = Collections.synchronizedList(new ArrayList<Map<String,SQLTableDef>>());
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		try {
+			Thread[] threads = new Thread[threadCount];
+			for (int t=0; t<threadCount; t++) {
+				final int first = t;
+				threads[t] = new Thread(() -> {
+					try {
+						start.await();
+						Map<String,SQLTableDef> defs = new HashMap<>();
+						for (int n=0; n<TABLES.length; n++) {
+							final String tableName = TABLES[(first + n) % TABLES.length];
+							defs.put(tableName, lazy.getTableDef(tableName));
+						}
+						found.add(defs);
+					} catch (Throwable xcpt) {
+						failures.add(xcpt);
+					}
+				});
+				threads[t].start();
+			}
+			start.countDown();
+			for (Thread thread : threads)
+				thread.join(60000l);
+
+			// Every thread got the same complete definition of each table
+			assertTrue(failures.toString(), failures.isEmpty());
+			assertEquals(threadCount, found.size());
+			assertEquals(0, lazy.getPendingTablesCount());
+			for (String tableName : TABLES) {
+				SQLTableDef tdef = lazy.getTableDef(tableName);
+				assertEquals(4, tdef.getNumberOfColumns());
+				for (Map<String,SQLTableDef> defs : found)
+					assertSame(tdef, defs.get(tableName));
+			}
+		} finally {
+			lazy.close();
+		}
+	}
+
+}
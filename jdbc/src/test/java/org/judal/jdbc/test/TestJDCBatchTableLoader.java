@@ -0,0 +1,277 @@
+package org.judal.jdbc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.judal.jdbc.RDBMS;
+import org.judal.jdbc.jdc.JDCBatchTableLoader;
+import org.judal.jdbc.postgresql.Loader;
+import org.judal.metadata.ColumnDef;
+import org.judal.storage.ImportLoader;
+import org.judal.storage.java.test.Fakes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Encode values in the CSV format of the PostgreSQL Loader and load batches with a JDCBatchTableLoader
+ * whose statements are fakes that keep the rows of a table in a map by primary key.
+ */
+public class TestJDCBatchTableLoader {
+
+	private TimeZone oDefaultZone;
+
+	@Before
+	public void setTimeZone() {
+		oDefaultZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+	}
+
+	@After
+	public void restoreTimeZone() {
+		TimeZone.setDefault(oDefaultZone);
+	}
+
+	/**
+	 * Loader which gives access to its CSV encoding
+	 */
+	@SuppressWarnings("serial")
+	private static class CsvLoader extends Loader {
+
+		CsvLoader() throws SQLException {
+			super("csv_test");
+		}
+
+		String csv(Object oValue, int iType) {
+			StringBuilder oLine = new StringBuilder();
+			appendCsv(oLine, oValue, iType);
+			return oLine.toString();
+		}
+	}
+
+	/**
+	 * JDCBatchTableLoader of a table with columns id (primary key) and nm whose statements write to the rows map.
+	 * Rows are bound by reference and the fake statements read the values from the last row bound.
+	 */
+	@SuppressWarnings("serial")
+	private static class FakeTableLoader extends JDCBatchTableLoader {
+
+		final Map<Object,Object> rows = new HashMap<Object,Object>();
+		final List<Object[]> inserted = new ArrayList<Object[]>();
+		int updateBatches = 0;
+		int updateSingles = 0;
+		boolean countsUnknown = false;
+
+		private Object[] oBoundInsert;
+		private Object[] oBoundUpdate;
+		private final List<Object[]> oInsertBatch = new ArrayList<Object[]>();
+		private final List<Object[]> oUpdateBatch = new ArrayList<Object[]>();
+		private final PreparedStatement oInsr;
+		private final PreparedStatement oUpdt;
+
+		FakeTableLoader() throws SQLException {
+			super(RDBMS.GENERIC, "batch_test");
+			ColumnDef oId = new ColumnDef("id", Types.INTEGER, 1);
+			oId.setPrimaryKey(true);
+			addColumnMetadata(oId);
+			addColumnMetadata(new ColumnDef("nm", Types.VARCHAR, 2));
+			oInsr = Fakes.proxy(PreparedStatement.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("addBatch")) {
+						oInsertBatch.add(oBoundInsert);
+					} else if (method.getName().equals("executeBatch")) {
+						int[] aCounts = new int[oInsertBatch.size()];
+						for (int r=0; r<aCounts.length; r++) {
+							Object[] aRow = oInsertBatch.get(r);
+							assertFalse("Duplicated key " + aRow[0], rows.containsKey(aRow[0]));
+							rows.put(aRow[0], aRow[1]);
+							inserted.add(aRow);
+							aCounts[r] = 1;
+						}
+						oInsertBatch.clear();
+						return aCounts;
+					}
+					return null;
+				}
+			});
+			oUpdt = Fakes.proxy(PreparedStatement.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("addBatch")) {
+						oUpdateBatch.add(oBoundUpdate);
+					} else if (method.getName().equals("executeBatch")) {
+						updateBatches++;
+						int[] aCounts = new int[oUpdateBatch.size()];
+						for (int r=0; r<aCounts.length; r++)
+							aCounts[r] = countsUnknown ? Statement.SUCCESS_NO_INFO : update(oUpdateBatch.get(r));
+						oUpdateBatch.clear();
+						return aCounts;
+					} else if (method.getName().equals("executeUpdate")) {
+						updateSingles++;
+						return update(oBoundUpdate);
+					}
+					return null;
+				}
+			});
+		}
+
+		private int update(Object[] aRow) {
+			if (!rows.containsKey(aRow[0]))
+				return 0;
+			rows.put(aRow[0], aRow[1]);
+			return 1;
+		}
+
+		@Override
+		protected PreparedStatement getInsertStatement() {
+			return oInsr;
+		}
+
+		@Override
+		protected PreparedStatement getUpdateStatement() {
+			return oUpdt;
+		}
+
+		@Override
+		protected void bindInsert(Object[] aRow) {
+			oBoundInsert = aRow;
+		}
+
+		@Override
+		protected void bindUpdate(Object[] aRow) {
+			oBoundUpdate = aRow;
+		}
+
+		void load(int iFlags, Object[]... aRows) throws SQLException {
+			loadBatch(Arrays.asList(aRows), iFlags);
+		}
+	}
+
+	private static Object[] row(int id, String nm) {
+		return new Object[]{id, nm};
+	}
+
+	@Test
+	public void test01CsvStrings() throws SQLException {
+		CsvLoader oLdr = new CsvLoader();
+
+		// NULL is written as nothing and the empty string is quoted so that COPY does not read it as NULL
+		assertEquals("", oLdr.csv(null, Types.VARCHAR));
+		assertEquals("\"\"", oLdr.csv("", Types.VARCHAR));
+		assertEquals("\"abc\"", oLdr.csv("abc", Types.VARCHAR));
+		assertEquals("\"say \"\"hi\"\"\"", oLdr.csv("say \"hi\"", Types.VARCHAR));
+		assertEquals("\"a,b\nc\\d\"", oLdr.csv("a,b\nc\\d", Types.VARCHAR));
+		assertEquals("\"\"\"\"", oLdr.csv("\"", Types.VARCHAR));
+
+		assertEquals("\"1000\"", oLdr.csv(new BigDecimal("1E+3"), Types.DECIMAL));
+		assertEquals("\"-7\"", oLdr.csv(Integer.valueOf(-7), Types.INTEGER));
+		assertEquals("\"true\"", oLdr.csv(Boolean.TRUE, Types.BOOLEAN));
+	}
+
+	@Test
+	public void test02CsvBytea() throws SQLException {
+		CsvLoader oLdr = new CsvLoader();
+		assertEquals("\"\\x\"", oLdr.csv(new byte[0], Types.VARBINARY));
+		assertEquals("\"\\x007f80ff10\"", oLdr.csv(new byte[]{0, 0x7f, (byte) 0x80, (byte) 0xff, 0x10}, Types.VARBINARY));
+	}
+
+	@Test
+	public void test03CsvDates() throws Exception {
+		CsvLoader oLdr = new CsvLoader();
+
+		assertEquals("\"2020-02-29\"", oLdr.csv(java.sql.Date.valueOf("2020-02-29"), Types.DATE));
+		assertEquals("\"23:59:58\"", oLdr.csv(java.sql.Time.valueOf("23:59:58"), Types.TIME));
+
+		// Timestamps keep the microseconds and carry the offset that applies at that instant
+		assertEquals("\"2020-07-01 10:20:30.123456-0400\"", oLdr.csv(Timestamp.valueOf("2020-07-01 10:20:30.123456789"), Types.TIMESTAMP));
+		assertEquals("\"2020-01-15 00:00:00.000000-0500\"", oLdr.csv(Timestamp.valueOf("2020-01-15 00:00:00"), Types.TIMESTAMP));
+		assertEquals("\"2020-01-15 00:00:00.000007-0500\"", oLdr.csv(Timestamp.valueOf("2020-01-15 00:00:00.000007"), Types.TIMESTAMP));
+
+		SimpleDateFormat oFmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSXXX");
+		java.util.Date dt = oFmt.parse("2020-07-01 14:20:30.250Z");
+		assertEquals("\"2020-07-01\"", oLdr.csv(dt, Types.DATE));
+		assertEquals("\"2020-07-01 10:20:30.250-0400\"", oLdr.csv(dt, Types.TIMESTAMP));
+		assertEquals("\"2020-07-01 10:20:30.250-0400\"", oLdr.csv(dt, Types.TIMESTAMP_WITH_TIMEZONE));
+
+		// The text written denotes the same instant whatever the time zone of the server
+		SimpleDateFormat oPgFmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+		oPgFmt.setTimeZone(TimeZone.getTimeZone("Asia/Tokyo"));
+		String sCsv = oLdr.csv(dt, Types.TIMESTAMP_WITH_TIMEZONE);
+		assertEquals(dt, oPgFmt.parse(sCsv.substring(1, sCsv.length()-1)));
+	}
+
+	@Test
+	public void test04AppendOnly() throws SQLException {
+		FakeTableLoader oLdr = new FakeTableLoader();
+		oLdr.load(ImportLoader.MODE_APPEND, row(1, "a"), row(2, "b"));
+		assertEquals(2, oLdr.inserted.size());
+		assertEquals("a", oLdr.rows.get(1));
+		assertEquals("b", oLdr.rows.get(2));
+		assertEquals(0, oLdr.updateBatches);
+	}
+
+	@Test
+	public void test05AppendUpdateLastRowWins() throws SQLException {
+		FakeTableLoader oLdr = new FakeTableLoader();
+		oLdr.rows.put(1, "old");
+
+		// Rows with the same key are inserted once with the values of the last one
+		oLdr.load(ImportLoader.MODE_APPENDUPDATE, row(1, "a"), row(2, "b"), row(3, "c"), row(2, "d"), row(1, "e"));
+		assertEquals(1, oLdr.updateBatches);
+		assertEquals(0, oLdr.updateSingles);
+		assertEquals(2, oLdr.inserted.size());
+		assertEquals(Integer.valueOf(2), oLdr.inserted.get(0)[0]);
+		assertEquals(Integer.valueOf(3), oLdr.inserted.get(1)[0]);
+		assertEquals("e", oLdr.rows.get(1));
+		assertEquals("d", oLdr.rows.get(2));
+		assertEquals("c", oLdr.rows.get(3));
+
+		// Update only does not insert
+		oLdr.load(ImportLoader.MODE_UPDATE, row(3, "f"), row(4, "g"));
+		assertEquals("f", oLdr.rows.get(3));
+		assertFalse(oLdr.rows.containsKey(4));
+		assertEquals(2, oLdr.inserted.size());
+	}
+
+	@Test
+	public void test06SuccessNoInfoFallback() throws SQLException {
+		FakeTableLoader oLdr = new FakeTableLoader();
+		oLdr.countsUnknown = true;
+		oLdr.rows.put(1, "old");
+
+		// The rows whose update count is unknown are updated again one by one to find which ones are missing
+		oLdr.load(ImportLoader.MODE_APPENDUPDATE, row(1, "a"), row(2, "b"), row(2, "c"));
+		assertEquals(1, oLdr.updateBatches);
+		assertEquals(3, oLdr.updateSingles);
+		assertEquals(1, oLdr.inserted.size());
+		assertEquals("a", oLdr.rows.get(1));
+		assertEquals("c", oLdr.rows.get(2));
+
+		// After that the update batch is not tried again
+		oLdr.load(ImportLoader.MODE_APPENDUPDATE, row(2, "d"), row(3, "e"), row(3, "f"));
+		assertEquals(1, oLdr.updateBatches);
+		assertEquals(6, oLdr.updateSingles);
+		assertEquals(2, oLdr.inserted.size());
+		assertEquals("d", oLdr.rows.get(2));
+		assertEquals("f", oLdr.rows.get(3));
+		assertEquals(3, oLdr.rows.size());
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.judal.jdbc.test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.judal.jdbc.jdc.JDCConnection;
+import org.judal.jdbc.jdc.JDCConnectionPool;
+import org.judal.storage.DataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestJDCConnectionBag extends TestJDBC {
+
+	private static JDCConnectionPool pool;
+
+	@BeforeClass
+	public static void init() throws ClassNotFoundException, IOException {
+		Map<String,String> properties = new HashMap<>(new TestJDBC().getTestProperties());
+		Class.forName(properties.get(DataSource.DRIVER));
+		properties.put(DataSource.POOLMODE, "concurrent");
+		properties.put(DataSource.POOLWAITTIMEOUT, "300");
+		properties.put(DataSource.MAXPOOLSIZE, "2");
+		properties.put(DataSource.MAXCONNECTIONS, "2");
+		pool = new JDCConnectionPool(properties);
+	}
+
+	@AfterClass
+	public static void cleanup() {
+		if (pool!=null) pool.close();
+	}
+
+	@Test
+	public void test01ReuseReturnedConnection() throws SQLException {
+		assertEquals("concurrent", pool.getPoolMode());
+		JDCConnection conn1 = pool.getConnection("test01");
+		conn1.close("test01");
+		JDCConnection conn2 = pool.getConnection("test01");
+		assertSame(conn1, conn2);
+		assertTrue(pool.size()<=2);
+		conn2.close("test01");
+	}
+
+	@Test
+	public void test02WaitTimeout() throws SQLException {
+		JDCConnection conn1 = pool.getConnection("test02.1");
+		JDCConnection conn2 = pool.getConnection("test02.2");
+		final long start = System.currentTimeMillis();
+		try {
+			pool.getConnection("test02.3");
+			fail("Expected SQLException 08004");
+		} catch (SQLException expected) {
+			assertEquals("08004", expected.getSQLState());
+			assertTrue(System.currentTimeMillis()-start>=250);
+		} finally {
+			conn1.close("test02.1");
+			conn2.close("test02.2");
+		}
+	}
+
+	@Test
+	public void test03WaitForReturnedConnection() throws SQLException, InterruptedException {
+		final JDCConnection conn1 = pool.getConnection("test03.1");
+		JDCConnection conn2 = pool.getConnection("test03.2");
+		Thread returner = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+				conn1.close("test03.1");
+			} catch (InterruptedException | SQLException ignore) { }
+		});
+		returner.start();
+		JDCConnection conn3 = pool.getConnection("test03.3");
+		assertSame(conn1, conn3);
+		returner.join();
+		conn2.close("test03.2");
+		conn3.close("test03.3");
+		assertEquals(2, pool.size());
+	}
+
+}
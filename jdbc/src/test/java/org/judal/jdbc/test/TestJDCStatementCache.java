@@ -0,0 +1,84 @@
+package org.judal.jdbc.test;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.judal.jdbc.jdc.JDCConnection;
+import org.judal.jdbc.jdc.JDCConnectionPool;
+import org.judal.storage.DataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestJDCStatementCache extends TestJDBC {
+
+	private static JDCConnectionPool pool;
+
+	private static final String SQL1 = "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME=?";
+	private static final String SQL2 = "SELECT 2 FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME=?";
+	private static final String SQL3 = "SELECT 3 FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME=?";
+
+	@BeforeClass
+	public static void init() throws ClassNotFoundException, IOException {
+		Map<String,String> properties = new HashMap<>(new TestJDBC().getTestProperties());
+		Class.forName(properties.get(DataSource.DRIVER));
+		properties.put(DataSource.STATEMENTCACHESIZE, "2");
+		pool = new JDCConnectionPool(properties);
+	}
+
+	@AfterClass
+	public static void cleanup() {
+		if (pool!=null) pool.close();
+	}
+
+	@Test
+	public void test01ReuseReleasedStatement() throws SQLException {
+		assertEquals(2, pool.getStatementCacheSize());
+		JDCConnection conn = pool.getConnection("test01");
+		try {
+			PreparedStatement stmt1 = conn.prepareCachedStatement(SQL1);
+			PreparedStatement stmt2 = conn.prepareCachedStatement(SQL1);
+			assertNotSame(stmt1, stmt2);
+			conn.releaseStatement(stmt2);
+			conn.releaseStatement(stmt1);
+			assertTrue(stmt1.isClosed());
+			assertSame(stmt2, conn.prepareCachedStatement(SQL1));
+			conn.releaseStatement(stmt2);
+			assertTrue(pool.dumpStatistics().contains("Statement Cache Hits=1"));
+		} finally {
+			conn.close("test01");
+		}
+	}
+
+	@Test
+	public void test02EvictAndClear() throws SQLException {
+		JDCConnection conn = pool.getConnection("test02");
+		try {
+			conn.clearStatementCache();
+			PreparedStatement stmt1 = conn.prepareCachedStatement(SQL1);
+			conn.releaseStatement(stmt1);
+			PreparedStatement stmt2 = conn.prepareCachedStatement(SQL2);
+			conn.releaseStatement(stmt2);
+			PreparedStatement stmt3 = conn.prepareCachedStatement(SQL3);
+			conn.releaseStatement(stmt3);
+			assertEquals(2, conn.getStatementCache().size());
+			assertTrue(stmt1.isClosed());
+			assertTrue(!stmt3.isClosed());
+			conn.clearStatementCache();
+			assertEquals(0, conn.getStatementCache().size());
+			assertTrue(stmt2.isClosed());
+			assertTrue(stmt3.isClosed());
+		} finally {
+			conn.close("test02");
+		}
+	}
+
+}
@@ -0,0 +1,393 @@
+package org.judal.jdbc.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.judal.metadata.ColumnDef;
+import org.judal.metadata.TableDef;
+import org.judal.serialization.TableRowCodec;
+import org.judal.storage.java.PrimitiveArrayRecord;
+import org.judal.storage.query.sql.SQLRowPlan;
+import org.judal.storage.table.PrimitiveRecord;
+import org.junit.Test;
+
+/**
+ * Fill PrimitiveArrayRecord instances from a fake ResultSet through SQLRowPlan.copyValue
+ * and from encoded rows through TableRowCodec.decodeInto and check the class and value of each column.
+ */
+public class TestPrimitiveArrayRecord {
+
+	private static final String[] NAMES = new String[]{"tiny", "small", "int", "big", "real", "dbl", "flt", "dt", "ts", "tm", "str", "dec", "bin"};
+
+	private static final int[] TYPES = new int[]{Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT, Types.REAL, Types.DOUBLE, Types.FLOAT,
+		Types.DATE, Types.TIMESTAMP, Types.TIME, Types.VARCHAR, Types.DECIMAL, Types.VARBINARY};
+
+	private static final long NOW = 1500000000123l;
+
+	private static TableDef tableDef() {
+		ColumnDef[] cols = new ColumnDef[NAMES.length];
+		for (int c=0; c<NAMES.length; c++)
+			cols[c] = new ColumnDef(NAMES[c], TYPES[c], c+1);
+		return new TableDef("primitive_record_test", cols);
+	}
+
+	private static final TableDef tdef = tableDef();
+
+	/**
+	 * @return Values of the same class that the JDBC driver would return for each column of the table
+	 */
+	private static Object[] jdbcRow() {
+		return new Object[]{Integer.valueOf(7), Integer.valueOf(-300), Integer.valueOf(Integer.MIN_VALUE), Long.valueOf(Long.MAX_VALUE),
+			Float.valueOf(1.5f), Double.valueOf(Math.PI), Double.valueOf(-2.25d),
+			new java.sql.Date(NOW), new Timestamp(NOW), new Time(NOW), "string1", new BigDecimal("12.50"), new byte[]{1, 2, 3}};
+	}
+
+	/**
+	 * Fake ResultSet with a single row whose getters read the given values
+	 */
+	private static ResultSet resultSet(final Object[] row) {
+		final boolean[] wasNull = new boolean[1];
+		final ResultSetMetaData mdat = (ResultSetMetaData) Proxy.newProxyInstance(TestPrimitiveArrayRecord.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				final String name = method.getName();
+				if (name.equals("getColumnCount"))
+					return NAMES.length;
+				else if (name.equals("getColumnName"))
+					return NAMES[(Integer) args[0] - 1].toUpperCase();
+				else if (name.equals("getColumnType"))
+					return TYPES[(Integer) args[0] - 1];
+				else if (name.equals("isSigned"))
+					return Boolean.TRUE;
+				return null;
+			}
+		});
+		return (ResultSet) Proxy.newProxyInstance(TestPrimitiveArrayRecord.class.getClassLoader(), new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				final String name = method.getName();
+				if (name.equals("getMetaData"))
+					return mdat;
+				else if (name.equals("wasNull"))
+					return wasNull[0];
+				final Object value = row[(Integer) args[0] - 1];
+				wasNull[0] = null==value;
+				if (name.equals("getLong"))
+					return null==value ? 0l : ((Number) value).longValue();
+				else if (name.equals("getInt"))
+					return null==value ? 0 : ((Number) value).intValue();
+				else if (name.equals("getDouble"))
+					return null==value ? 0d : ((Number) value).doubleValue();
+				else if (name.equals("getFloat"))
+					return null==value ? 0f : ((Number) value).floatValue();
+				return value;
+			}
+		});
+	}
+
+	private static PrimitiveArrayRecord copyFrom(Object[] row) throws SQLException {
+		ResultSet rset = resultSet(row);
+		SQLRowPlan plan = SQLRowPlan.compile(rset.getMetaData());
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+		for (int col=1; col<=plan.getColumnCount(); col++)
+			plan.copyValue(rset, col, rec, rec.getColumnPosition(plan.getColumnName(col)));
+		return rec;
+	}
+
+	private static void assertValue(Object expected, PrimitiveArrayRecord rec, String colname) {
+		final Object actual = rec.apply(colname);
+		if (expected instanceof byte[]) {
+			assertArrayEquals((byte[]) expected, (byte[]) actual);
+		} else {
+			assertEquals(colname, expected, actual);
+			assertSame(colname, expected.getClass(), actual.getClass());
+		}
+	}
+
+	@Test
+	public void test01SlotTypes() {
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+		final int[] slots = new int[]{PrimitiveRecord.SLOT_LONG, PrimitiveRecord.SLOT_LONG, PrimitiveRecord.SLOT_LONG, PrimitiveRecord.SLOT_LONG,
+			PrimitiveRecord.SLOT_DOUBLE, PrimitiveRecord.SLOT_DOUBLE, PrimitiveRecord.SLOT_DOUBLE,
+			PrimitiveRecord.SLOT_LONG, PrimitiveRecord.SLOT_LONG, PrimitiveRecord.SLOT_LONG,
+			PrimitiveRecord.SLOT_OBJECT, PrimitiveRecord.SLOT_OBJECT, PrimitiveRecord.SLOT_OBJECT};
+		for (int c=0; c<NAMES.length; c++) {
+			assertEquals(NAMES[c], slots[c], rec.getSlotType(c+1));
+			assertEquals(c+1, rec.getColumnPosition(NAMES[c]));
+			assertEquals(c+1, rec.getColumnPosition(NAMES[c].toUpperCase()));
+			assertTrue(rec.isNullAt(c+1));
+		}
+		assertEquals(-1, rec.getColumnPosition("nonexistent"));
+		assertTrue(rec.isEmpty());
+	}
+
+	@Test
+	public void test02CopyFromResultSet() throws SQLException {
+		final Object[] row = jdbcRow();
+		PrimitiveArrayRecord rec = copyFrom(row);
+
+		// Integers keep the class returned by the driver, floating point values are kept in double slots
+		assertValue(Integer.valueOf(7), rec, "tiny");
+		assertValue(Integer.valueOf(-300), rec, "small");
+		assertValue(Integer.valueOf(Integer.MIN_VALUE), rec, "int");
+		assertValue(Long.valueOf(Long.MAX_VALUE), rec, "big");
+		assertValue(Float.valueOf(1.5f), rec, "real");
+		assertValue(Double.valueOf(Math.PI), rec, "dbl");
+		assertValue(Double.valueOf(-2.25d), rec, "flt");
+		assertEquals(Long.MAX_VALUE, rec.getLongAt(4));
+		assertEquals(Math.PI, rec.getDoubleAt(6), 0d);
+
+		// Dates keep their class and are stored as milliseconds
+		for (int c=7; c<=9; c++) {
+			assertValue(row[c], rec, NAMES[c]);
+			assertEquals(NOW, rec.getLongAt(c+1));
+		}
+		assertValue("string1", rec, "str");
+		assertValue(new BigDecimal("12.50"), rec, "dec");
+		assertValue(row[12], rec, "bin");
+		assertFalse(rec.isEmpty());
+		assertEquals(row.length, ((Object[]) rec.getValue()).length);
+	}
+
+	@Test
+	public void test03CopyNullsFromResultSet() throws SQLException {
+		PrimitiveArrayRecord rec = copyFrom(jdbcRow());
+		PrimitiveArrayRecord nulls = copyFrom(new Object[NAMES.length]);
+		for (int c=0; c<NAMES.length; c++) {
+			assertTrue(NAMES[c], nulls.isNullAt(c+1));
+			assertTrue(NAMES[c], nulls.isNull(NAMES[c]));
+			assertNull(NAMES[c], nulls.apply(NAMES[c]));
+		}
+		assertTrue(nulls.isEmpty());
+
+		// A null read over a value clears it
+		ResultSet rset = resultSet(new Object[NAMES.length]);
+		SQLRowPlan plan = SQLRowPlan.compile(rset.getMetaData());
+		for (int col=1; col<=NAMES.length; col++)
+			plan.copyValue(rset, col, rec, col);
+		assertTrue(rec.isEmpty());
+
+		try {
+			nulls.getLongAt(3);
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) { }
+		try {
+			nulls.getDoubleAt(6);
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) { }
+		try {
+			nulls.getInt("int");
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) { }
+	}
+
+	@Test
+	public void test04DecodeInto() throws IOException, SQLException {
+		final Object[] row = new Object[]{Byte.valueOf((byte) 7), Short.valueOf((short) -300), Integer.valueOf(Integer.MIN_VALUE), Long.valueOf(Long.MAX_VALUE),
+			Float.valueOf(1.5f), Double.valueOf(Math.PI), Double.valueOf(-2.25d),
+			new java.sql.Date(NOW), new Date(NOW), new Time(NOW), "string1", new BigDecimal("12.50"), new byte[]{1, 2, 3}};
+		TableRowCodec codec = new TableRowCodec(tdef);
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+		codec.decodeInto(codec.encode(row), rec);
+
+		// Each value is returned with the same class with which it was encoded
+		for (int c=0; c<NAMES.length; c++)
+			assertValue(row[c], rec, NAMES[c]);
+		assertEquals(Long.MAX_VALUE, rec.getLongAt(4));
+		assertEquals(1.5d, rec.getDoubleAt(5), 0d);
+		assertEquals(NOW, rec.getLongAt(9));
+
+		// Decoding and copying from a ResultSet give equal records
+		PrimitiveArrayRecord copied = copyFrom(jdbcRow());
+		PrimitiveArrayRecord decoded = new PrimitiveArrayRecord(tdef);
+		codec.decodeInto(codec.encode(copied.getValue()), decoded);
+		for (int c=0; c<NAMES.length; c++)
+			assertValue(copied.apply(NAMES[c]), decoded, NAMES[c]);
+	}
+
+	@Test
+	public void test05DecodeNullsInto() throws IOException {
+		TableRowCodec codec = new TableRowCodec(tdef);
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+		rec.setValue((Object[]) codec.decode(codec.encode(new Object[]{(byte) 1, (short) 2, 3, 4l})));
+		assertEquals(Byte.valueOf((byte) 1), rec.apply("tiny"));
+
+		// Null columns clear the record and columns absent from a Map row are left untouched
+		Map<String,Object> map = new HashMap<String,Object>();
+		map.put("small", null);
+		map.put("dbl", null);
+		map.put("str", null);
+		codec.decodeInto(codec.encode(map), rec);
+		assertTrue(rec.isNullAt(2));
+		assertTrue(rec.isNullAt(6));
+		assertTrue(rec.isNullAt(11));
+		assertValue(Byte.valueOf((byte) 1), rec, "tiny");
+		assertValue(Integer.valueOf(3), rec, "int");
+		assertValue(Long.valueOf(4l), rec, "big");
+
+		codec.decodeInto(codec.encode(new Object[NAMES.length]), rec);
+		assertTrue(rec.isEmpty());
+	}
+
+	@Test
+	public void test06DecodeUnmatchedTypesInto() throws IOException {
+		TableRowCodec codec = new TableRowCodec(tdef);
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+
+		// Values whose class does not match their column keep their class
+		final Timestamp nanos = new Timestamp(NOW);
+		nanos.setNanos(123456789);
+		codec.decodeInto(codec.encode(new Object[]{null, null, Long.valueOf(5l), Integer.valueOf(6), Double.valueOf(0.5d), Float.valueOf(0.25f), null, null, nanos}), rec);
+		assertValue(Long.valueOf(5l), rec, "int");
+		assertValue(Integer.valueOf(6), rec, "big");
+		assertValue(Double.valueOf(0.5d), rec, "real");
+		assertValue(Float.valueOf(0.25f), rec, "dbl");
+		assertValue(nanos, rec, "ts");
+		assertEquals(6l, rec.getLongAt(4));
+		assertEquals(0.25d, rec.getDoubleAt(6), 0d);
+
+		// A timestamp with nanoseconds is kept as an Object
+		try {
+			rec.getLongAt(9);
+			fail("ClassCastException expected");
+		} catch (ClassCastException expected) { }
+	}
+
+	@Test
+	public void test07WideningAndNarrowing() {
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+
+		// putLongAt() keeps the class of the column unless the value does not fit in it
+		rec.putLongAt(2, 1000l);
+		assertValue(Short.valueOf((short) 1000), rec, "small");
+		rec.putLongAt(2, 100000l);
+		assertValue(Integer.valueOf(100000), rec, "small");
+		rec.putLongAt(2, 10000000000l);
+		assertValue(Long.valueOf(10000000000l), rec, "small");
+		rec.putLongAt(3, Integer.MAX_VALUE + 1l);
+		assertValue(Long.valueOf(Integer.MAX_VALUE + 1l), rec, "int");
+		rec.putLongAt(4, 5l);
+		assertValue(Long.valueOf(5l), rec, "big");
+		rec.putDoubleAt(5, 0.5d);
+		assertValue(Float.valueOf(0.5f), rec, "real");
+		rec.putLongAt(8, NOW);
+		assertValue(new Date(NOW), rec, "dt");
+		rec.putLongAt(10, NOW);
+		assertValue(new Time(NOW), rec, "tm");
+
+		// Typed setters keep the class of the value put
+		assertEquals(Integer.valueOf(5), rec.put("big", 7));
+		assertValue(Integer.valueOf(7), rec, "big");
+		assertEquals(Long.valueOf(7l), rec.put("big", 8l));
+		assertValue(Long.valueOf(8l), rec, "big");
+		assertNull(rec.put("dbl", 1.25d));
+		assertValue(Double.valueOf(1.25d), rec, "dbl");
+		rec.put("int", (short) 9);
+		assertValue(Short.valueOf((short) 9), rec, "int");
+		assertEquals(Float.valueOf(0.5f), rec.put("real", 2.5f));
+		assertValue(Float.valueOf(2.5f), rec, "real");
+		assertEquals(2.5f, rec.getDoubleAt(5), 0d);
+
+		// Getters widen integers and narrow them when the value fits
+		rec.put("big", 123456789012l);
+		assertEquals(123456789012l, rec.getLong("big"));
+		assertEquals(123456789012d, rec.getDouble("big"), 0d);
+		rec.put("big", 12l);
+		assertEquals(12, rec.getInt("big"));
+		assertEquals(9l, rec.getLong("int"));
+		assertEquals(9d, rec.getDouble("int"), 0d);
+		assertEquals(2.5d, rec.getDouble("real"), 0d);
+		assertEquals(10000000000l, rec.getLong("small"));
+		rec.put("big", 10000000000l);
+		try {
+			rec.getInt("big");
+			fail("NumberFormatException expected");
+		} catch (NumberFormatException expected) { }
+
+		// Values that are not integers nor floating point are kept as Objects at numeric columns
+		rec.put("int", 3.0d);
+		assertValue(Double.valueOf(3.0d), rec, "int");
+		assertEquals(3, rec.getInt("int"));
+		try {
+			rec.getLongAt(3);
+			fail("ClassCastException expected");
+		} catch (ClassCastException expected) { }
+		rec.put("dbl", 4);
+		assertValue(Integer.valueOf(4), rec, "dbl");
+		assertEquals(4d, rec.getDouble("dbl"), 0d);
+		try {
+			rec.getDoubleAt(6);
+			fail("ClassCastException expected");
+		} catch (ClassCastException expected) { }
+
+		// The previous value returned by typed setters is converted to their class
+		assertEquals(Integer.valueOf(3), rec.put("int", 5));
+		assertEquals(Long.valueOf(4l), rec.put("dbl", 6l));
+		assertEquals(Double.valueOf(6d), rec.put("dbl", 6.5d));
+		assertEquals(Long.valueOf(10000000000l), rec.put("small", 7l));
+
+		// Primitive accessors are only allowed on primitive slots
+		try {
+			rec.putLongAt(11, 1l);
+			fail("ClassCastException expected");
+		} catch (ClassCastException expected) { }
+		try {
+			rec.putDoubleAt(3, 1d);
+			fail("ClassCastException expected");
+		} catch (ClassCastException expected) { }
+	}
+
+	@Test
+	public void test08Nulls() {
+		PrimitiveArrayRecord rec = new PrimitiveArrayRecord(tdef);
+		rec.put("int", 1);
+		rec.put("dbl", 2d);
+		rec.put("str", "s");
+
+		// put of null, remove() and putNullAt() clear the value and its slot class
+		assertEquals(Integer.valueOf(1), rec.put("int", (Object) null));
+		assertTrue(rec.isNull("int"));
+		assertEquals(Double.valueOf(2d), rec.remove("dbl"));
+		assertTrue(rec.isNullAt(6));
+		rec.putNullAt(11);
+		assertNull(rec.apply("str"));
+		assertTrue(rec.isEmpty());
+		assertFalse(rec.containsValue(null));
+
+		rec.put("int", 3.0d);
+		rec.put("int", (Object) null);
+		rec.putLongAt(3, 4l);
+		assertValue(Integer.valueOf(4), rec, "int");
+		rec.clear();
+		assertTrue(rec.isEmpty());
+		try {
+			rec.getDouble("dbl");
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) { }
+		try {
+			rec.getLong("big");
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) { }
+	}
+
+}
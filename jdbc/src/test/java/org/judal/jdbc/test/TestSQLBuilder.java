@@ -0,0 +1,68 @@
+package org.judal.jdbc.test;
+
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.judal.jdbc.RDBMS;
+import org.judal.jdbc.metadata.SQLBuilder;
+import org.judal.jdbc.metadata.SQLColumn;
+import org.judal.jdbc.metadata.SQLStatements;
+import org.judal.jdbc.metadata.SQLStatements.UpsertSyntax;
+import org.judal.jdbc.metadata.SQLTableDef;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestSQLBuilder {
+
+	private static SQLTableDef createTableDef(RDBMS dbms, boolean autoIncrementPk) throws SQLException {
+		SQLTableDef tdef = new SQLTableDef(dbms, "t_upsert");
+		SQLColumn id = new SQLColumn("id", 1, (short) Types.INTEGER);
+		id.setPrimaryKey(true);
+		id.setAutoIncrement(autoIncrementPk);
+		tdef.addColumnMetadata(id);
+		tdef.addColumnMetadata(new SQLColumn("nm", 2, (short) Types.VARCHAR));
+		tdef.addColumnMetadata(new SQLColumn(SQLTableDef.DEFAULT_CREATION_TIMESTAMP_COLUMN_NAME, 3, (short) Types.TIMESTAMP));
+		return tdef;
+	}
+
+	private static SQLStatements build(RDBMS dbms, boolean autoIncrementPk) throws SQLException {
+		return new SQLBuilder(dbms, createTableDef(dbms, autoIncrementPk), SQLTableDef.DEFAULT_CREATION_TIMESTAMP_COLUMN_NAME).getSqlStatements();
+	}
+
+	@Test
+	public void test01PostgreSQLUpsert() throws SQLException {
+		SQLStatements stmts = build(RDBMS.POSTGRESQL, false);
+		assertEquals(UpsertSyntax.ON_CONFLICT, stmts.getUpsertSyntax());
+		assertEquals("INSERT INTO t_upsert (id,nm,dt_created) VALUES (?,?,?) ON CONFLICT (id) DO UPDATE SET nm=EXCLUDED.nm", stmts.getUpsert());
+		assertEquals(stmts.getUpsert() + " RETURNING (xmax = 0)", stmts.getUpsertReturningInserted());
+	}
+
+	@Test
+	public void test02MySQLUpsert() throws SQLException {
+		SQLStatements stmts = build(RDBMS.MYSQL, false);
+		assertEquals(UpsertSyntax.ON_DUPLICATE_KEY, stmts.getUpsertSyntax());
+		assertEquals("INSERT INTO t_upsert (id,nm,dt_created) VALUES (?,?,?) ON DUPLICATE KEY UPDATE nm=VALUES(nm)", stmts.getUpsert());
+		assertNull(stmts.getUpsertReturningInserted());
+	}
+
+	@Test
+	public void test03HSQLDBMerge() throws SQLException {
+		SQLStatements stmts = build(RDBMS.HSQLDB, false);
+		assertEquals(UpsertSyntax.MERGE, stmts.getUpsertSyntax());
+		assertEquals("MERGE INTO t_upsert USING (VALUES(1)) AS merge_src(merge_one) ON (id=?) WHEN MATCHED THEN UPDATE SET nm=? WHEN NOT MATCHED THEN INSERT (id,nm,dt_created) VALUES (?,?,?)", stmts.getUpsert());
+		assertNull(stmts.getUpsertReturningInserted());
+	}
+
+	@Test
+	public void test04Fallback() throws SQLException {
+		SQLStatements stmts = build(RDBMS.DB2, false);
+		assertNull(stmts.getUpsert());
+		assertNull(stmts.getUpsertSyntax());
+		assertNull(stmts.getUpsertReturningInserted());
+		assertEquals("UPDATE t_upsert SET nm=? WHERE id=?", stmts.getUpdate());
+		assertNull(build(RDBMS.HSQLDB, true).getUpsert());
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.judal.jdbc.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.judal.jdbc.metadata.SQLMetadataSnapshot;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestSQLMetadataSnapshot {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int n;
+		while ((n = in.read(buffer))>0)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void test01WriteAndOpen() throws IOException {
+		Path dir = Files.createTempDirectory("snapshot");
+		Path snapshot = dir.resolve("metadata.snapshot");
+		byte[] xml = "<?xml version=\"1.0\"?>\n<jdo></jdo>\n".getBytes(UTF8);
+		try {
+			assertNull(SQLMetadataSnapshot.open(snapshot, "columns:1"));
+			SQLMetadataSnapshot.write(snapshot, "columns:1", xml);
+			try (InputStream in = SQLMetadataSnapshot.open(snapshot, "columns:1")) {
+				assertNotNull(in);
+				assertArrayEquals(xml, readAll(in));
+			}
+			assertNull(SQLMetadataSnapshot.open(snapshot, "columns:2"));
+			SQLMetadataSnapshot.write(snapshot, "columns:2", xml);
+			assertNull(SQLMetadataSnapshot.open(snapshot, "columns:1"));
+			try (InputStream in = SQLMetadataSnapshot.open(snapshot, "columns:2")) {
+				assertNotNull(in);
+			}
+			assertEquals(1, dir.toFile().list().length);
+		} finally {
+			Files.deleteIfExists(snapshot);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	@Test
+	public void test02RejectFileWithoutHeader() throws IOException {
+		Path snapshot = Files.createTempFile("metadata", ".snapshot");
+		try {
+			Files.write(snapshot, "<?xml version=\"1.0\"?>".getBytes(UTF8));
+			assertNull(SQLMetadataSnapshot.open(snapshot, "columns:1"));
+		} finally {
+			Files.deleteIfExists(snapshot);
+		}
+	}
+
+}
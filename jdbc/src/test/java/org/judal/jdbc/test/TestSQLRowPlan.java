@@ -0,0 +1,80 @@
+package org.judal.jdbc.test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.judal.jdbc.jdc.JDCConnection;
+import org.judal.jdbc.jdc.JDCConnectionPool;
+import org.judal.storage.DataSource;
+import org.judal.storage.query.sql.SQLRowPlan;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestSQLRowPlan extends TestJDBC {
+
+	private static JDCConnectionPool pool;
+
+	private static final String SQL = "SELECT CAST(1 AS INTEGER) AS I, CAST(NULL AS INTEGER) AS N, CAST(2 AS BIGINT) AS L, CAST(3.5 AS DECIMAL(4,1)) AS D, 'x' AS S, CURRENT_TIMESTAMP AS T FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME=?";
+
+	@BeforeClass
+	public static void init() throws ClassNotFoundException, IOException {
+		Map<String,String> properties = new HashMap<>(new TestJDBC().getTestProperties());
+		Class.forName(properties.get(DataSource.DRIVER));
+		pool = new JDCConnectionPool(properties);
+	}
+
+	@AfterClass
+	public static void cleanup() {
+		if (pool!=null) pool.close();
+	}
+
+	@Test
+	public void test01TypedGettersAndCache() throws SQLException {
+		SQLRowPlan.Cache cache = new SQLRowPlan.Cache(2);
+		JDCConnection conn = pool.getConnection("test01");
+		try {
+			SQLRowPlan first = null;
+			for (int n=0; n<2; n++) {
+				PreparedStatement stmt = conn.prepareStatement(SQL);
+				stmt.setString(1, conn.getMetaData().getUserName());
+				ResultSet rset = stmt.executeQuery();
+				SQLRowPlan plan = cache.get(SQL, rset);
+				if (null==first)
+					first = plan;
+				else
+					assertSame(first, plan);
+				assertEquals(6, plan.getColumnCount());
+				assertEquals(Types.INTEGER, plan.getColumnType(1));
+				assertTrue(rset.next());
+				assertEquals(Integer.valueOf(1), plan.getValue(rset, 1));
+				assertNull(plan.getValue(rset, 2));
+				assertEquals(Long.valueOf(2l), plan.getValue(rset, 3));
+				assertEquals(0, new BigDecimal("3.5").compareTo((BigDecimal) plan.getValue(rset, 4)));
+				assertEquals("x", plan.getValue(rset, 5));
+				assertTrue(plan.getValue(rset, 6) instanceof Timestamp);
+				rset.close();
+				stmt.close();
+			}
+			assertEquals(1l, cache.getMisses());
+			assertEquals(1l, cache.getHits());
+			cache.clear();
+			assertEquals(0, cache.size());
+		} finally {
+			conn.close("test01");
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package org.judal.storage.table;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>In-process cache of Record instances used by RecordManager in front of an optional JCache.</p>
+ * Records are kept as live objects, already bound to their TableDef and FieldHelper,
+ * so a hit returns the cached instance without copying or rebinding it.
+ * Callers must not modify the instances returned unless they store them again.
+ * Entries expire after a time to live and the least recently used entry is evicted when the cache is full.
+ * Keys which were not found at the data source can be cached as missing for a shorter time to live.
+ * An index of keys by Record class allows evicting all the Records of a class without scanning the cache.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class NearCache {
+
+	/**
+	 * <p>Result of a cache lookup.</p>
+	 */
+	public static final class CachedRecord {
+		private final Record record;
+		private final long expires;
+
+		private CachedRecord(Record record, long expires) {
+			this.record = record;
+			this.expires = expires;
+		}
+
+		/**
+		 * @return Record or <b>null</b> if the key is cached as missing
+		 */
+		public Record getRecord() {
+			return record;
+		}
+
+		/**
+		 * @return boolean <b>true</b> if the key is known not to exist at the data source
+		 */
+		public boolean isMissing() {
+			return null == record;
+		}
+	}
+
+	private final int maxEntries;
+	private final long timeToLive;
+	private final long missingTimeToLive;
+	private final LinkedHashMap<Object, CachedRecord> entries;
+	private final HashMap<Class<?>, HashSet<Object>> keysByClass;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxEntries int Maximum count of entries. Must be greater than zero.
+	 * @param timeToLive long Milliseconds that a Record is kept. Zero or less means no expiration.
+	 * @param missingTimeToLive long Milliseconds that a missing key is remembered. Zero or less disables negative caching.
+	 * @throws IllegalArgumentException If maxEntries is less than one
+	 */
+	public NearCache(int maxEntries, long timeToLive, long missingTimeToLive) throws IllegalArgumentException {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("NearCache maximum entries must be at least 1");
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.missingTimeToLive = missingTimeToLive;
+		this.keysByClass = new HashMap<Class<?>, HashSet<Object>>();
+		this.entries = new LinkedHashMap<Object, CachedRecord>(Math.min(maxEntries, 1024) * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, CachedRecord> eldest) {
+				if (size() > NearCache.this.maxEntries) {
+					unindex(eldest.getKey(), eldest.getValue());
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		hits = misses = evictions = 0l;
+	}
+
+	/**
+	 * @return int Maximum count of entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @return long Milliseconds that a Record is kept
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * @return long Milliseconds that a missing key is remembered
+	 */
+	public long getMissingTimeToLive() {
+		return missingTimeToLive;
+	}
+
+	/**
+	 * @return int Current count of entries including expired ones not yet removed
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return long Count of lookups that found a Record or a missing key
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return long Count of lookups that found nothing
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return long Count of entries removed because the cache was full
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @param key Object
+	 * @return CachedRecord or <b>null</b> if the key is not cached or its entry has expired
+	 */
+	public synchronized CachedRecord lookup(Object key) {
+		CachedRecord cached = entries.get(key);
+		if (cached != null && cached.expires > 0l && cached.expires < System.currentTimeMillis()) {
+			entries.remove(key);
+			unindex(key, cached);
+			cached = null;
+		}
+		if (null == cached)
+			misses++;
+		else
+			hits++;
+		return cached;
+	}
+
+	/**
+	 * @param key Object
+	 * @param rec Record
+	 */
+	public synchronized void put(Object key, Record rec) {
+		final CachedRecord cached = new CachedRecord(rec, timeToLive > 0l ? System.currentTimeMillis() + timeToLive : 0l);
+		final CachedRecord former = entries.put(key, cached);
+		if (former != null)
+			unindex(key, former);
+		HashSet<Object> keys = keysByClass.get(rec.getClass());
+		if (null == keys) {
+			keys = new HashSet<Object>();
+			keysByClass.put(rec.getClass(), keys);
+		}
+		keys.add(key);
+	}
+
+	/**
+	 * <p>Remember that a key does not exist at the data source.</p>
+	 * Does nothing if negative caching is disabled.
+	 * @param key Object
+	 */
+	public synchronized void putMissing(Object key) {
+		if (missingTimeToLive > 0l) {
+			final CachedRecord former = entries.put(key, new CachedRecord(null, System.currentTimeMillis() + missingTimeToLive));
+			if (former != null)
+				unindex(key, former);
+		}
+	}
+
+	/**
+	 * @param key Object
+	 */
+	public synchronized void remove(Object key) {
+		final CachedRecord former = entries.remove(key);
+		if (former != null)
+			unindex(key, former);
+	}
+
+	/**
+	 * <p>Remove all entries.</p>
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		keysByClass.clear();
+	}
+
+	/**
+	 * <p>Remove all the Records of a class.</p>
+	 * @param recordClass Class
+	 * @param subclasses boolean Whether to remove also the Records of subclasses of recordClass
+	 * @return Collection&lt;Object&gt; Keys removed
+	 */
+	public synchronized Collection<Object> removeAll(Class<?> recordClass, boolean subclasses) {
+		ArrayList<Object> removed = new ArrayList<Object>();
+		Iterator<Map.Entry<Class<?>, HashSet<Object>>> classes = keysByClass.entrySet().iterator();
+		while (classes.hasNext()) {
+			Map.Entry<Class<?>, HashSet<Object>> keys = classes.next();
+			if (subclasses ? recordClass.isAssignableFrom(keys.getKey()) : recordClass.getName().equals(keys.getKey().getName())) {
+				for (Object key : keys.getValue())
+					entries.remove(key);
+				removed.addAll(keys.getValue());
+				classes.remove();
+			}
+		}
+		return removed;
+	}
+
+	private void unindex(Object key, CachedRecord cached) {
+		if (cached.record != null) {
+			HashSet<Object> keys = keysByClass.get(cached.record.getClass());
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty())
+					keysByClass.remove(cached.record.getClass());
+			}
+		}
+	}
+
+}
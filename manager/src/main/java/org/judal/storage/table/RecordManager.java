@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
@@ -42,17 +43,60 @@ import org.judal.storage.FieldHelper;
 import org.judal.storage.Param;
 import org.judal.storage.StorageObjectFactory;
 import org.judal.storage.queue.RecordQueueProducer;
+import org.judal.storage.table.impl.AbstractRecord;
 
 import com.knowgate.debug.DebugFile;
 
+/**
+ * <p>Read and write Records through a cache and a RecordQueueProducer.</p>
+ * Records can be cached in two tiers: a NearCache of live instances in this process and an optional JCache.
+ * The near cache is enabled by setting property NEAR_CACHE_SIZE to a value greater than zero.
+ * Writes go to the RecordQueueProducer. If property COALESCE_WINDOW is greater than zero,
+ * writes are held by a WriteCoalescer for that many milliseconds and repeated writes of the same Record
+ * are merged before being sent to the queue.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
 public class RecordManager implements AutoCloseable {
 
+	/**
+	 * Property name for the maximum count of Records in the near cache. Zero, the default, disables the near cache.
+	 */
+	public static final String NEAR_CACHE_SIZE = "nearcachesize";
+
+	/**
+	 * Property name for the milliseconds that a Record is kept in the near cache
+	 */
+	public static final String NEAR_CACHE_TTL = "nearcachettl";
+
+	/**
+	 * Property name for the milliseconds that a key not found at the data source is remembered by the near cache
+	 */
+	public static final String NEAR_CACHE_MISSING_TTL = "nearcachemissingttl";
+
+	/**
+	 * Property name for the milliseconds that writes are held to be coalesced. Zero, the default, sends each write at once.
+	 */
+	public static final String COALESCE_WINDOW = "coalescewindow";
+
+	/**
+	 * Property name for the count of held writes that causes them to be sent before the window expires
+	 */
+	public static final String COALESCE_MAX_PENDING = "coalescemaxpending";
+
+	public static final long DEFAULT_NEAR_CACHE_TTL = 60000l;
+	public static final int DEFAULT_COALESCE_MAX_PENDING = 1000;
+
+	private static final ConcurrentHashMap<Class<?>, Method[]> binders = new ConcurrentHashMap<Class<?>, Method[]>();
+
 	private final long MAX_WAIT_FOR_CACHE_STARTUP =  2;
 
 	private final Properties properties;
 	private final Future<Cache<Object, Record>> cache;
 	private final TableDataSource dataSource;
 	private final RecordQueueProducer storageQueue;
+	private NearCache nearCache;
+	private WriteCoalescer writeQueue;
 	private boolean closed;
 	private boolean usingCache;
 	private boolean enableCache;
@@ -66,12 +110,13 @@ public class RecordManager implements AutoCloseable {
 		this.dataSource = dataSource;
 		this.storageQueue = storageQueue;
 		this.cache = cache;
-		this.usingCache = (cache!=null);
-		this.enableCache = usingCache;
 		this.properties = new Properties();
 		if (propsMap!=null)
 			for (Map.Entry<String,String> e : propsMap.entrySet())
 				properties.put(e.getKey(), e.getValue());
+		configure();
+		this.usingCache = (cache!=null) || (nearCache!=null);
+		this.enableCache = usingCache;
 		closed = false;
 	}
 
@@ -83,8 +128,6 @@ public class RecordManager implements AutoCloseable {
 			throw new NullPointerException("RecordManager constructor storageQueue may not be null");
 		this.dataSource = dataSource;
 		this.storageQueue = storageQueue;
-		this.usingCache = (cache!=null);
-		this.enableCache = usingCache;
 		FutureTask<Cache<Object, Record>> dummyTask = new FutureTask<Cache<Object, Record>>(new Runnable() { public void run() {}; },cache);
 		dummyTask.run();
 		this.cache = dummyTask;
@@ -92,9 +135,28 @@ public class RecordManager implements AutoCloseable {
 		if (propsMap!=null)
 			for (Map.Entry<String,String> e : propsMap.entrySet())
 				properties.put(e.getKey(), e.getValue());
+		configure();
+		this.usingCache = (cache!=null) || (nearCache!=null);
+		this.enableCache = usingCache;
 		closed = false;
 	}
 
+	private void configure() throws JDOUserException {
+		try {
+			final int nearCacheSize = Integer.parseInt(properties.getProperty(NEAR_CACHE_SIZE, "0").trim());
+			if (nearCacheSize>0)
+				nearCache = new NearCache(nearCacheSize,
+										  Long.parseLong(properties.getProperty(NEAR_CACHE_TTL, String.valueOf(DEFAULT_NEAR_CACHE_TTL)).trim()),
+										  Long.parseLong(properties.getProperty(NEAR_CACHE_MISSING_TTL, "0").trim()));
+			final long coalesceWindow = Long.parseLong(properties.getProperty(COALESCE_WINDOW, "0").trim());
+			if (coalesceWindow>0l)
+				writeQueue = new WriteCoalescer(storageQueue, coalesceWindow,
+												Integer.parseInt(properties.getProperty(COALESCE_MAX_PENDING, String.valueOf(DEFAULT_COALESCE_MAX_PENDING)).trim()));
+		} catch (IllegalArgumentException xcpt) {
+			throw new JDOUserException("RecordManager " + xcpt.getMessage(), xcpt);
+		}
+	}
+
 	private Cache<Object, Record> getCache() throws IllegalStateException {
 		if (closed)
 			throw new IllegalStateException("RecordManager.getCache() RecordManager has been closed");
@@ -111,6 +173,10 @@ public class RecordManager implements AutoCloseable {
 
 	@Override
 	public void close() {
+		if (null!=writeQueue)
+			writeQueue.close();
+		if (null!=nearCache)
+			nearCache.clear();
 		if (null!=getCache())
 			getCache().close();
 		usingCache = enableCache = false;
@@ -119,6 +185,31 @@ public class RecordManager implements AutoCloseable {
 		closed = true;
 	}	
 
+	/**
+	 * @return NearCache or <b>null</b> if the near cache is not enabled
+	 */
+	public NearCache getNearCache() {
+		return nearCache;
+	}
+
+	/**
+	 * @return WriteCoalescer or <b>null</b> if writes are not coalesced
+	 */
+	public WriteCoalescer getWriteCoalescer() {
+		return writeQueue;
+	}
+
+	/**
+	 * <p>Send the writes held by the WriteCoalescer to the RecordQueueProducer.</p>
+	 * Does nothing if writes are not coalesced.
+	 */
+	public void flush() {
+		if (closed)
+			throw new IllegalStateException("RecordManager.flush() RecordManager has been closed");
+		if (null!=writeQueue)
+			writeQueue.flush();
+	}
+
 	/**
 	 * Get whether this RecordManager is capable of keeping records in cache 
 	 * @return boolean
@@ -144,8 +235,12 @@ public class RecordManager implements AutoCloseable {
 			throw new IllegalStateException("RecordManager.evictAll() RecordManager has been closed");
 		if (!usingCache && enable)
 			throw new IllegalStateException("RecordManager cannot enable cache because no caching provider was injected at constructoor");
-		if (!enable && (getCache()!=null))
-			getCache().clear();
+		if (!enable) {
+			if (nearCache!=null)
+				nearCache.clear();
+			if (getCache()!=null)
+				getCache().clear();
+		}
 		enableCache = enable;
 	}
 
@@ -154,7 +249,23 @@ public class RecordManager implements AutoCloseable {
 			throw new IllegalStateException("RecordManager.deletePersistent() RecordManager has been closed");
 		Record rec = (Record) obj;
 		evict(rec);
-		storageQueue.delete(rec, new String[]{rec.getKey().toString()}, properties);
+		if (getCacheEnabled() && nearCache!=null)
+			nearCache.putMissing(rec.getKey());
+		delete(rec, new String[]{rec.getKey().toString()});
+	}
+
+	private void delete(Record rec, String[] keys) {
+		if (null==writeQueue)
+			storageQueue.delete(rec, keys, properties);
+		else
+			writeQueue.delete(rec, keys, properties);
+	}
+
+	private void store(Record rec) {
+		if (null==writeQueue)
+			storageQueue.store(rec);
+		else
+			writeQueue.store(rec);
 	}
 
 	public void updatePersistent(Object obj, Param... params) {
@@ -170,7 +281,10 @@ public class RecordManager implements AutoCloseable {
 			Param[] values = new Param[pk.getNumberOfColumns()];
 			for (int p=0; p<pk.getNumberOfColumns(); p++)
 				values[p] = new Param(tdef.getColumnByName(pk.getColumns()[p].getName()), rec.apply(pk.getColumns()[p].getName()));
-			storageQueue.update(rec, params, values);
+			if (null==writeQueue)
+				storageQueue.update(rec, params, values);
+			else
+				writeQueue.update(rec, params, values);
 		}
 	}
 
@@ -183,7 +297,7 @@ public class RecordManager implements AutoCloseable {
 			keys[k] = (String) rec.getKey();			
 			evict(rec);
 		}
-		storageQueue.delete((Record) objs[0], keys, properties);
+		delete((Record) objs[0], keys);
 	}
 
 
@@ -196,10 +310,10 @@ public class RecordManager implements AutoCloseable {
 			Record rec = null;
 			for (Object obj : objs) {
 				rec = (Record) obj;
-				keys[k] = (String) rec.getKey();			
+				keys[k++] = (String) rec.getKey();			
 				evict(rec);
 			}
-			storageQueue.delete(rec, keys, properties);			
+			delete(rec, keys);			
 		}
 	}
 
@@ -210,15 +324,23 @@ public class RecordManager implements AutoCloseable {
 		Object key = ((Record) rec).getKey();
 		if (null==key)
 			throw new NullPointerException("RecordManager.evict() Object key may not be null");
-		if (getCacheEnabled())
-			getCache().remove(key);
+		if (getCacheEnabled()) {
+			if (nearCache!=null)
+				nearCache.remove(key);
+			if (getCache()!=null)
+				getCache().remove(key);
+		}
 	}
 
 	public void evictAll() {
 		if (closed)
 			throw new IllegalStateException("RecordManager.evictAll() RecordManager has been closed");
-		if (getCacheEnabled())
-			getCache().clear();
+		if (getCacheEnabled()) {
+			if (nearCache!=null)
+				nearCache.clear();
+			if (getCache()!=null)
+				getCache().clear();
+		}
 	}
 
 
@@ -233,23 +355,34 @@ public class RecordManager implements AutoCloseable {
 			evict(obj);
 	}
 
+	/**
+	 * <p>Evict all the Records of a class.</p>
+	 * Records are found at the near cache using its index of keys by class.
+	 * The JCache, if any, is scanned once using the values given by its iterator.
+	 * @param subclasses boolean Whether to evict also instances of subclasses of class1
+	 * @param class1 Class
+	 */
 	public void evictAll(boolean subclasses, @SuppressWarnings("rawtypes") Class class1) {
 		if (getCacheEnabled()) {
-			ArrayList<Object> evicted = new ArrayList<Object>(100);
-			for (Entry<Object,Record> keyvalue: getCache()) {
-				Object entry;
-				entry = getCache().get(keyvalue.getKey());
-				if (entry != null) {
-					if (subclasses) {
-						if (class1.isInstance(entry))
-							evicted.add(entry);
-					} else {
-						if (class1.getName().equals(entry.getClass().getName()))
-							evicted.add(entry);
+			if (nearCache!=null)
+				nearCache.removeAll(class1, subclasses);
+			if (getCache()!=null) {
+				ArrayList<Object> evicted = new ArrayList<Object>(100);
+				for (Entry<Object,Record> keyvalue: getCache()) {
+					Record entry = keyvalue.getValue();
+					if (entry != null) {
+						if (subclasses) {
+							if (class1.isInstance(entry))
+								evicted.add(keyvalue.getKey());
+						} else {
+							if (class1.getName().equals(entry.getClass().getName()))
+								evicted.add(keyvalue.getKey());
+						}
 					}
 				}
+				for (Object key : evicted)
+					getCache().remove(key);
 			}
-			evictAll(evicted);
 		}
 	}
 
@@ -266,7 +399,9 @@ public class RecordManager implements AutoCloseable {
 	}
 
 	/**
-	 * Get an object from local cache
+	 * Get an object from cache.
+	 * The near cache is looked up first and then the JCache.
+	 * Records found at the JCache are bound to their TableDef and FieldHelper and kept at the near cache.
 	 * @param id Object
 	 * @return Object
 	 * @throws IllegalStateException If this RecordManager has been closed or is not using cache
@@ -277,27 +412,130 @@ public class RecordManager implements AutoCloseable {
 			throw new IllegalStateException("RecordManager.getObjectById() RecordManager has been closed");
 		if (!getCacheEnabled())
 			throw new IllegalStateException("RecordManager.getObjectById() RecordManager is not using caching");
-		Object obj = getCache().get(id);
+		Record obj = getCached(id);
 		if (null==obj)
 			throw new JDOUserException("Object "+id+" not found in cache");
-		else if (obj instanceof Record) {
-			try {
-				Method setTableDef = obj.getClass().getMethod("setTableDef", SelectableDef.class);
-				SelectableDef tdef = dataSource.getTableOrViewDef(((Record) obj).getTableName());
-				if (null!=tdef)
-					setTableDef.invoke(obj, tdef);
-			} catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | JDOException e) { }			
-			if (dataSource.getFieldHelper()!=null) {
-				try {
-					Method setFieldHelper = obj.getClass().getMethod("getFieldHelper", FieldHelper.class);
-					setFieldHelper.invoke(obj, dataSource.getFieldHelper());
-				} catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | JDOException e) { }				
+		return obj;
+	}
+
+	/**
+	 * Get an object from cache or else load it from the data source.
+	 * Records loaded are kept at the caches. Keys not found are remembered as missing
+	 * by the near cache if property NEAR_CACHE_MISSING_TTL is greater than zero.
+	 * @param recordClass Class&lt;R&gt;
+	 * @param id Object
+	 * @return R
+	 * @throws IllegalStateException If this RecordManager has been closed
+	 * @throws JDOUserException if no object with the given id exists
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends Record> R getObjectById(Class<R> recordClass, Object id) throws IllegalStateException, JDOUserException {
+		if (closed)
+			throw new IllegalStateException("RecordManager.getObjectById() RecordManager has been closed");
+		if (getCacheEnabled()) {
+			if (nearCache!=null) {
+				NearCache.CachedRecord cached = nearCache.lookup(id);
+				if (cached!=null) {
+					if (cached.isMissing())
+						throw new JDOUserException("Object "+id+" not found");
+					if (recordClass.isInstance(cached.getRecord()))
+						return (R) cached.getRecord();
+				}
 			}
+			Record obj = getCached(id);
+			if (recordClass.isInstance(obj))
+				return (R) obj;
 		}
 
+		R rec;
+		try {
+			rec = StorageObjectFactory.newRecord(recordClass, dataSource);
+		} catch (NoSuchMethodException nsme) {
+			throw new JDOUserException("RecordManager.getObjectById() " + nsme.getMessage(), nsme);
+		}
+		rec.setKey(id);
+		// Writes held by the coalescer must reach the queue before reading the data source
+		if (writeQueue!=null && writeQueue.isPending(rec))
+			writeQueue.flush();
+		boolean found;
+		try (Table tbl = dataSource.openTable(rec)) {
+			found = tbl.load(id, rec);
+		}
+		if (!found) {
+			if (getCacheEnabled() && nearCache!=null)
+				nearCache.putMissing(id);
+			throw new JDOUserException("Object "+id+" not found");
+		}
+		cache(id, rec);
+		return rec;
+	}
+
+	private Record getCached(Object id) {
+		if (nearCache!=null) {
+			NearCache.CachedRecord cached = nearCache.lookup(id);
+			if (cached!=null)
+				return cached.getRecord();
+		}
+		Record obj = getCache()==null ? null : getCache().get(id);
+		if (obj!=null) {
+			bind(obj);
+			if (nearCache!=null)
+				nearCache.put(id, obj);
+		}
 		return obj;
 	}
 
+	private void cache(Object key, Record rec) {
+		if (getCacheEnabled()) {
+			if (nearCache!=null)
+				nearCache.put(key, rec);
+			if (getCache()!=null) {
+				try {
+					getCache().put(key, rec);
+				} catch (IllegalStateException | IllegalArgumentException | JDOException xcpt) {
+					if (DebugFile.trace)
+						DebugFile.writeln("RecordManager.cache("+key+") " + xcpt.getClass().getName() + " " + xcpt.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Set the TableDef and FieldHelper of a Record taken from the JCache.
+	 * AbstractRecord subclasses are bound directly, other classes through their setTableDef() and setFieldHelper() methods if they have them.
+	 */
+	private void bind(Record obj) {
+		SelectableDef tdef = null;
+		try {
+			tdef = dataSource.getTableOrViewDef(obj.getTableName());
+		} catch (JDOException ignore) { }
+		FieldHelper helper = dataSource.getFieldHelper();
+		if (obj instanceof AbstractRecord) {
+			if (null!=tdef)
+				((AbstractRecord) obj).setTableDef(tdef);
+			if (null!=helper)
+				((AbstractRecord) obj).setFieldHelper(helper);
+		} else {
+			Method[] setters = binders.get(obj.getClass());
+			if (null==setters) {
+				setters = new Method[2];
+				try {
+					setters[0] = obj.getClass().getMethod("setTableDef", SelectableDef.class);
+				} catch (NoSuchMethodException | SecurityException e) { }
+				try {
+					setters[1] = obj.getClass().getMethod("setFieldHelper", FieldHelper.class);
+				} catch (NoSuchMethodException | SecurityException e) { }
+				binders.putIfAbsent(obj.getClass(), setters);
+			}
+			try {
+				if (null!=setters[0] && null!=tdef)
+					setters[0].invoke(obj, tdef);
+				if (null!=setters[1] && null!=helper)
+					setters[1].invoke(obj, helper);
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) { }
+		}
+	}
+
 	public Map<String, Object> getProperties() {
 		HashMap<String, Object> props  = new HashMap<String, Object>();
 		for (Object key : properties.keySet())
@@ -319,9 +557,12 @@ public class RecordManager implements AutoCloseable {
 	public <T> T makePersistent(T obj) {
 		if (closed)
 			throw new IllegalStateException("RecordManager.makePersistent() RecordManager has been closed");
-		if (((Record) obj).getKey()!=null)
+		if (((Record) obj).getKey()!=null) {
 			evict(obj);
-		storageQueue.store((Record) obj);
+			if (getCacheEnabled() && nearCache!=null)
+				nearCache.put(((Record) obj).getKey(), (Record) obj);
+		}
+		store((Record) obj);
 		return obj; 
 	}
 
@@ -347,7 +588,11 @@ public class RecordManager implements AutoCloseable {
 			if (rec.getKey()!=null)
 				evict(obj);
 		}
-		storageQueue.store(recs);
+		if (null==writeQueue)
+			storageQueue.store(recs);
+		else
+			for (Record rec : recs)
+				writeQueue.store(rec);
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
@@ -375,7 +620,11 @@ public class RecordManager implements AutoCloseable {
 			if (rec.getKey()!=null)
 				evict(obj);
 		}
-		storageQueue.store(recs);
+		if (null==writeQueue)
+			storageQueue.store(recs);
+		else
+			for (Record rec : recs)
+				writeQueue.store(rec);
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
@@ -397,12 +646,7 @@ public class RecordManager implements AutoCloseable {
 			try {
 				tbl = dataSource.openTable(former);
 				if (tbl.load(former.getKey(), former))
-					try {
-						getCache().put(former.getKey(), former);
-					} catch (IllegalStateException | IllegalArgumentException | JDOException xcpt) {
-						if (DebugFile.trace)
-							DebugFile.writeln("TableManager.retrieve("+former.getKey()+") " + xcpt.getClass().getName() + " " + xcpt.getMessage());
-					}
+					cache(former.getKey(), former);
 			} finally {
 				tbl.close();
 			}
@@ -414,20 +658,17 @@ public class RecordManager implements AutoCloseable {
 		if (rec.getKey()==null)
 			throw new JDOUserException("The supplied object has no value for its primary key");
 		if (getCacheEnabled()) {
-			try {
-				Record cached = (Record) getObjectById(rec.getKey());
+			Record cached = getCached(rec.getKey());
+			if (cached!=null) {
 				if (!cached.getTableName().equals(rec.getTableName()))
 					throw new JDOUserException("Another object with the same id "+rec.getKey()+" but on a different table "+cached.getTableName()+" is already cached");
 				rec.setValue((Serializable) cached.getValue()); 
-			} catch (JDOUserException notfound) {
+			} else {
+				if (writeQueue!=null && writeQueue.isPending(rec))
+					writeQueue.flush();
 				try (Table tbl = dataSource.openTable((Record) obj)) {
 					if (tbl.load(rec.getKey(), rec))
-						try {
-							getCache().put(rec.getKey(), rec);
-						} catch (IllegalStateException | IllegalArgumentException | JDOException xcpt) {
-							if (DebugFile.trace)
-								DebugFile.writeln("TableManager.retrieve("+rec.getKey()+") " + xcpt.getClass().getName() + " " + xcpt.getMessage());
-						}
+						cache(rec.getKey(), rec);
 					else
 						rec.setKey(null);
 				}
@@ -0,0 +1,302 @@
+package org.judal.storage.table;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.JDOException;
+
+import org.judal.storage.Param;
+import org.judal.storage.queue.RecordQueueProducer;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Buffer of pending writes in front of a RecordQueueProducer.</p>
+ * Writes are held for a short time window. During the window, a store of a Record replaces
+ * the previous pending store of the same table and key, and the values of an update are merged
+ * into the pending update of the same table and key, so only the last state of each Record reaches the queue.
+ * Pending stores are sent in a single RecordQueueProducer.store(Record[]) call.
+ * A store after a pending update of the same Record, or an update after a pending store, flushes the pending writes first.
+ * A delete discards the pending writes of the deleted keys and is sent at once.
+ * Pending writes are matched by table name and by the String form of the key,
+ * because deletes receive the keys as Strings whatever the type of the primary key.
+ * Pending writes are sent when the window expires, when there are more than the maximum count of them,
+ * when flush() is called and when the coalescer is closed.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class WriteCoalescer implements AutoCloseable {
+
+	private static final class PendingWrite {
+		final Record record;
+		final LinkedHashMap<String, Param> values;
+		final Param[] where;
+
+		PendingWrite(Record record) {
+			this.record = record;
+			this.values = null;
+			this.where = null;
+		}
+
+		PendingWrite(Record record, Param[] values, Param[] where) {
+			this.record = record;
+			this.values = new LinkedHashMap<String, Param>();
+			this.where = where;
+			merge(values);
+		}
+
+		boolean isStore() {
+			return null == values;
+		}
+
+		void merge(Param[] newValues) {
+			for (Param value : newValues)
+				values.put(value.getName().toLowerCase(), value);
+		}
+	}
+
+	private final RecordQueueProducer queue;
+	private final long window;
+	private final int maxPending;
+	private final Object flushLock = new Object();
+	private LinkedHashMap<Object, PendingWrite> pending;
+	private ScheduledExecutorService flusher;
+	private long received;
+	private long sent;
+
+	/**
+	 * @param queue RecordQueueProducer
+	 * @param window long Maximum milliseconds that a write is held
+	 * @param maxPending int Count of pending writes that causes an immediate flush
+	 * @throws IllegalArgumentException If window or maxPending are less than one
+	 */
+	public WriteCoalescer(RecordQueueProducer queue, long window, int maxPending) throws IllegalArgumentException {
+		if (window < 1l)
+			throw new IllegalArgumentException("WriteCoalescer window must be at least 1 millisecond");
+		if (maxPending < 1)
+			throw new IllegalArgumentException("WriteCoalescer maximum pending writes must be at least 1");
+		this.queue = queue;
+		this.window = window;
+		this.maxPending = maxPending;
+		this.pending = new LinkedHashMap<Object, PendingWrite>();
+		this.received = this.sent = 0l;
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "WriteCoalescer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException xcpt) {
+					if (DebugFile.trace)
+						DebugFile.writeln("WriteCoalescer.flush() " + xcpt.getClass().getName() + " " + xcpt.getMessage());
+				}
+			}
+		}, window, window, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return long Maximum milliseconds that a write is held
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return long Count of writes received
+	 */
+	public synchronized long getReceivedCount() {
+		return received;
+	}
+
+	/**
+	 * @return long Count of writes sent to the queue
+	 */
+	public synchronized long getSentCount() {
+		return sent;
+	}
+
+	/**
+	 * @return int Count of writes waiting to be sent
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @param rec Record
+	 * @return boolean <b>true</b> if there is a pending write for the table and key of rec
+	 */
+	public synchronized boolean isPending(Record rec) {
+		return pending.containsKey(pendingKey(rec.getTableName(), rec.getKey()));
+	}
+
+	/**
+	 * @param rec Record
+	 * @throws IllegalStateException If the coalescer is closed
+	 * @throws JDOException If a flush failed
+	 */
+	public void store(Record rec) throws IllegalStateException, JDOException {
+		final Object key = pendingKey(rec.getTableName(), rec.getKey());
+		boolean flushNow;
+		synchronized (this) {
+			checkOpen();
+			received++;
+			PendingWrite former = pending.get(key);
+			flushNow = former != null && !former.isStore();
+			if (!flushNow)
+				pending.put(key, new PendingWrite(rec));
+		}
+		if (flushNow) {
+			flush();
+			synchronized (this) {
+				pending.put(key, new PendingWrite(rec));
+			}
+		}
+		flushIfFull();
+	}
+
+	/**
+	 * @param rec Record
+	 * @param values Param[] Values to be updated
+	 * @param where Param[] Primary key of the Record to be updated
+	 * @throws IllegalStateException If the coalescer is closed
+	 * @throws JDOException If a flush failed
+	 */
+	public void update(Record rec, Param[] values, Param[] where) throws IllegalStateException, JDOException {
+		final Object key = pendingKey(rec.getTableName(), rec.getKey());
+		boolean flushNow;
+		synchronized (this) {
+			checkOpen();
+			received++;
+			PendingWrite former = pending.get(key);
+			flushNow = former != null && former.isStore();
+			if (former != null && !flushNow)
+				former.merge(values);
+			else if (null == former)
+				pending.put(key, new PendingWrite(rec, values, where));
+		}
+		if (flushNow) {
+			flush();
+			synchronized (this) {
+				pending.put(key, new PendingWrite(rec, values, where));
+			}
+		}
+		flushIfFull();
+	}
+
+	/**
+	 * <p>Discard the pending writes of the given keys and send the delete to the queue.</p>
+	 * @param rec Record
+	 * @param keys String[]
+	 * @param props Properties
+	 * @throws IllegalStateException If the coalescer is closed
+	 * @throws JDOException
+	 */
+	public void delete(Record rec, String[] keys, Properties props) throws IllegalStateException, JDOException {
+		synchronized (flushLock) {
+			synchronized (this) {
+				checkOpen();
+				for (String key : keys)
+					pending.remove(pendingKey(rec.getTableName(), key));
+			}
+			queue.delete(rec, keys, props);
+		}
+	}
+
+	/**
+	 * <p>Send all pending writes to the queue.</p>
+	 * @throws JDOException
+	 */
+	public void flush() throws JDOException {
+		synchronized (flushLock) {
+			final LinkedHashMap<Object, PendingWrite> writes;
+			synchronized (this) {
+				if (pending.isEmpty())
+					return;
+				writes = pending;
+				pending = new LinkedHashMap<Object, PendingWrite>();
+			}
+
+			if (DebugFile.trace)
+				DebugFile.writeln("WriteCoalescer.flush() " + String.valueOf(writes.size()) + " writes");
+
+			ArrayList<Record> stores = new ArrayList<Record>(writes.size());
+			for (PendingWrite write : writes.values())
+				if (write.isStore())
+					stores.add(write.record);
+			if (stores.size() == 1)
+				queue.store(stores.get(0));
+			else if (stores.size() > 1)
+				queue.store(stores.toArray(new Record[stores.size()]));
+
+			for (PendingWrite write : writes.values())
+				if (!write.isStore())
+					queue.update(write.record, write.values.values().toArray(new Param[write.values.size()]), write.where);
+
+			synchronized (this) {
+				sent += writes.size();
+			}
+		}
+	}
+
+	/**
+	 * <p>Send pending writes and stop the timer.</p>
+	 * @throws JDOException
+	 */
+	@Override
+	public void close() throws JDOException {
+		final ScheduledExecutorService timer;
+		synchronized (this) {
+			timer = flusher;
+			flusher = null;
+		}
+		if (timer != null) {
+			timer.shutdown();
+			flush();
+		}
+	}
+
+	private void flushIfFull() throws JDOException {
+		boolean full;
+		synchronized (this) {
+			full = pending.size() >= maxPending;
+		}
+		if (full)
+			flush();
+	}
+
+	private void checkOpen() throws IllegalStateException {
+		if (null == flusher)
+			throw new IllegalStateException("WriteCoalescer is closed");
+	}
+
+	private static Object pendingKey(String tableName, Object key) {
+		return new SimpleImmutableEntry<String, String>(tableName, null == key ? null : key.toString());
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.judal.storage.table.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.cache.Cache;
+
+import org.junit.Test;
+
+import org.judal.storage.Param;
+import org.judal.storage.java.test.ArrayRecord1;
+import org.judal.storage.java.test.Fakes;
+import org.judal.storage.queue.RecordQueueProducer;
+import org.judal.storage.table.NearCache;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.RecordManager;
+import org.judal.storage.table.TableDataSource;
+import org.judal.storage.table.WriteCoalescer;
+
+public class TestNearCache {
+
+	private static Record record(int id) {
+		ArrayRecord1 rec = new ArrayRecord1();
+		rec.setId(id);
+		return rec;
+	}
+
+	private static RecordQueueProducer queue(final List<String> calls) {
+		return Fakes.proxy(RecordQueueProducer.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (args != null && args[0] instanceof Record[])
+					calls.add(method.getName() + "[" + ((Record[]) args[0]).length + "]");
+				else if (args != null && method.getName().equals("update"))
+					calls.add(method.getName() + " " + ((Record) args[0]).getKey() + " " + ((Param[]) args[1]).length);
+				else if (args != null)
+					calls.add(method.getName() + " " + ((Record) args[0]).getKey());
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void test01LruAndClassEviction() {
+		NearCache cache = new NearCache(2, 0l, 60000l);
+		Record r1 = record(1);
+		Record r2 = record(2);
+		cache.put("1", r1);
+		cache.put("2", r2);
+		assertSame(r1, cache.lookup("1").getRecord());
+		cache.put("3", record(3));
+		assertNull(cache.lookup("2"));
+		assertEquals(1l, cache.getEvictionCount());
+
+		cache.putMissing("4");
+		assertTrue(cache.lookup("4").isMissing());
+
+		assertEquals(1, cache.removeAll(Record.class, true).size());
+		assertNull(cache.lookup("3"));
+		assertTrue(cache.lookup("4").isMissing());
+	}
+
+	@Test
+	public void test02TimeToLive() throws InterruptedException {
+		NearCache cache = new NearCache(10, 20l, 0l);
+		cache.put("1", record(1));
+		cache.putMissing("2");
+		assertNull(cache.lookup("2"));
+		Thread.sleep(50l);
+		assertNull(cache.lookup("1"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void test03CoalesceWrites() {
+		List<String> calls = new ArrayList<String>();
+		try (WriteCoalescer writes = new WriteCoalescer(queue(calls), 60000l, 100)) {
+			Record r1 = record(1);
+			Record r2 = record(2);
+			writes.store(r1);
+			writes.store(r1);
+			writes.store(r2);
+			assertEquals(2, writes.getPendingCount());
+			writes.flush();
+			assertEquals(1, calls.size());
+			assertEquals("store[2]", calls.get(0));
+
+			Param[] where = new Param[]{new Param("id", 1, "1")};
+			writes.update(r1, new Param[]{new Param("a", 1, 1)}, where);
+			writes.update(r1, new Param[]{new Param("b", 2, 2)}, where);
+			writes.update(r1, new Param[]{new Param("A", 1, 3)}, where);
+			writes.store(r2);
+			writes.delete(r2, new String[]{"2"}, null);
+			assertEquals("delete 2", calls.get(1));
+			assertTrue(writes.isPending(r1));
+			writes.flush();
+			assertEquals("update 1 2", calls.get(2));
+			assertEquals(3, calls.size());
+		}
+	}
+
+	@Test
+	public void test04DeleteNonStringKey() {
+		List<String> calls = new ArrayList<String>();
+		TableDataSource dts = Fakes.dataSource(null, null);
+		Map<String,String> props = new HashMap<String,String>();
+		props.put(RecordManager.COALESCE_WINDOW, "60000");
+
+		RecordManager man = new RecordManager(dts, queue(calls), (Cache<Object, Record>) null, props);
+		Record r1 = record(1);
+		man.makePersistent(r1);
+		assertTrue(man.getWriteCoalescer().isPending(r1));
+
+		// RecordManager sends the key of the delete as a String, it must still discard the pending store of the Integer key
+		man.deletePersistent(r1);
+		assertEquals(0, man.getWriteCoalescer().getPendingCount());
+		man.flush();
+		assertEquals(1, calls.size());
+		assertEquals("delete 1", calls.get(0));
+		man.close();
+		assertEquals(1, calls.size());
+	}
+
+}
@@ -14,8 +14,10 @@ import java.io.Serializable;
  * KIND, either express or implied.
  */
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,19 +31,26 @@ import org.bson.codecs.DocumentCodec;
 import org.bson.conversions.Bson;
 
 import org.judal.metadata.TableDef;
+import org.judal.storage.keyvalue.BatchException;
 import org.judal.storage.keyvalue.Bucket;
 import org.judal.storage.keyvalue.Stored;
 import org.judal.storage.table.Record;
 
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoException;
 import com.mongodb.MongoNamespace;
 import com.mongodb.ReadConcern;
 import com.mongodb.ReadPreference;
 import com.mongodb.binding.ClusterBinding;
 import com.mongodb.binding.ReadWriteBinding;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.connection.Cluster;
 import com.mongodb.operation.BatchCursor;
 import com.mongodb.operation.FindOperation;
@@ -49,6 +58,7 @@ import com.mongodb.operation.FindOperation;
 public class MongoBucket implements Bucket {
 
 	private static final UpdateOptions upsert = new UpdateOptions().upsert(true);
+	private static final BulkWriteOptions unordered = new BulkWriteOptions().ordered(false);
 
 	private final Set<MongoIterator> iterators;
 	private final Cluster cluster;
@@ -167,6 +177,18 @@ public class MongoBucket implements Bucket {
 	@Override
 	public void store(Stored source) throws JDOException {
 		Bson filter = Filters.eq("_id", source.getKey());
+		try {
+			getCollection().updateOne(filter, toUpdate(source), upsert);
+		} catch (MongoException e) {
+			throw new JDOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @param source Stored
+	 * @return Document Update that stores the given source
+	 */
+	protected Document toUpdate(Stored source) {
 		Document update = null;
 		if (source instanceof MongoDocument) {
 			update = new Document("$set", ((MongoDocument) source).getDocument());
@@ -180,11 +202,33 @@ public class MongoBucket implements Bucket {
 			update.put("value", source.getValue());
 			}
 		}
-		try {
-			getCollection().updateOne(filter, update, upsert);
-		} catch (MongoException e) {
-			throw new JDOException(e.getMessage(), e);
+		return update;
+	}
+
+	/**
+	 * <p>Store several values with a single unordered bulk write.</p>
+	 * @param sources Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more values could not be stored
+	 * @throws JDOException
+	 */
+	@Override
+	public void storeAll(Iterable<? extends Stored> sources) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		ArrayList<WriteModel<Document>> models = new ArrayList<WriteModel<Document>>();
+		ArrayList<Object> items = new ArrayList<Object>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		int position = 0;
+		for (Stored source : sources) {
+			if (null==source) {
+				failures.add(position, source, new NullPointerException("MongoBucket.storeAll() source cannot be null"));
+			} else {
+				models.add(new UpdateOneModel<Document>(Filters.eq("_id", source.getKey()), toUpdate(source), upsert));
+				items.add(source);
+				positions.add(position);
+			}
+			position++;
 		}
+		bulkWrite("storeAll", models, items, positions, failures, position);
 	}
 
 	@Override
@@ -197,6 +241,54 @@ public class MongoBucket implements Bucket {
 		}
 	}
 
+	/**
+	 * <p>Delete several values with a single unordered bulk write.</p>
+	 * @param keys Iterable&lt;?&gt;
+	 * @throws BatchException if one or more values could not be deleted
+	 * @throws JDOException
+	 */
+	@Override
+	public void deleteAll(Iterable<?> keys) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		ArrayList<WriteModel<Document>> models = new ArrayList<WriteModel<Document>>();
+		ArrayList<Object> items = new ArrayList<Object>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		int position = 0;
+		for (Object key : keys) {
+			models.add(new DeleteOneModel<Document>(Filters.eq("_id", key)));
+			items.add(key);
+			positions.add(position++);
+		}
+		bulkWrite("deleteAll", models, items, positions, failures, position);
+	}
+
+	/**
+	 * <p>Execute an unordered bulk write and report the models that failed.</p>
+	 * @param operation String Name of the calling operation
+	 * @param models List&lt;WriteModel&lt;Document&gt;&gt;
+	 * @param items List&lt;Object&gt; Item from which each model was created
+	 * @param positions List&lt;Integer&gt; Position at the input sequence of the item from which each model was created
+	 * @param failures BatchException.Failures Failures found before the bulk write
+	 * @param total int Count of items processed by the operation
+	 * @throws BatchException if failures is not empty or any model failed
+	 * @throws JDOException if the bulk write failed as a whole
+	 */
+	protected void bulkWrite(String operation, List<WriteModel<Document>> models, List<Object> items, List<Integer> positions, BatchException.Failures failures, int total) throws JDOException {
+		if (models.size()>0) {
+			try {
+				getCollection().bulkWrite(models, unordered);
+			} catch (MongoBulkWriteException e) {
+				for (BulkWriteError error : e.getWriteErrors())
+					failures.add(positions.get(error.getIndex()), items.get(error.getIndex()), new MongoException(error.getCode(), error.getMessage()));
+				if (e.getWriteConcernError()!=null)
+					throw new JDOException(e.getMessage(), e);
+			} catch (MongoException e) {
+				throw new JDOException(e.getMessage(), e);
+			}
+		}
+		failures.throwIfAny(operation, total);
+	}
+
 	public Cluster getCluster() {
 		return cluster;
 	}
@@ -12,14 +12,26 @@ package org.judal.mongodb;
  * KIND, either express or implied.
  */
 
+import javax.jdo.JDOException;
 import javax.jdo.datastore.Sequence;
 
 import org.bson.Document;
+import org.judal.storage.BlockAllocator;
 
+import com.mongodb.MongoException;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
 
-public class MongoSequence implements Sequence {
+/**
+ * <p>Sequence stored as a document with a seq counter.</p>
+ * Values are reserved with an atomic $inc which returns the updated counter,
+ * so concurrent clients never get the same value.
+ */
+public class MongoSequence implements Sequence, BlockAllocator {
 
 	private String sequenceName;
 	private MongoCollection<Document> collection;
@@ -50,15 +62,60 @@ public class MongoSequence implements Sequence {
 
 	@Override
 	public Long next() {
-	    Document inc = new Document();
-	    inc.put("$inc", new Document("seq", 1));
-		collection.findOneAndUpdate(Filters.eq("_id", sequenceName), inc);
-		return current();
+		return new Long(nextValue());
+	}
+
+	@Override
+	public long nextValue() throws JDOException {
+		return allocateBlock(1)[0];
+	}
+
+	/**
+	 * <p>Increment the counter by size and return the values skipped over.</p>
+	 * @param size int [1..n]
+	 * @return long[] Consecutive values in ascending order
+	 * @throws JDOException If the sequence does not exist
+	 */
+	@Override
+	public long[] allocateBlock(int size) throws JDOException {
+		if (size<1)
+			throw new IllegalArgumentException("MongoSequence block size must be at least 1");
+		final Document updated;
+		try {
+			updated = collection.findOneAndUpdate(Filters.eq("_id", sequenceName), Updates.inc("seq", new Long(size)),
+												  new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+		} catch (MongoException e) {
+			throw new JDOException(e.getMessage(), e);
+		}
+		if (null==updated)
+			throw new JDOException("Sequence " + sequenceName + " not found");
+		final long last = updated.getLong("seq");
+		final long[] block = new long[size];
+		for (int n=0; n<size; n++)
+			block[n] = last - size + 1 + n;
+		return block;
 	}
 
+	/**
+	 * <p>Move the counter back to the first unused value of the block.</p>
+	 * Only succeeds if no other client has incremented the counter after the block was reserved.
+	 * @param block long[]
+	 * @param used int
+	 * @return boolean
+	 * @throws JDOException
+	 */
 	@Override
-	public long nextValue() {
-		return next();
+	public boolean releaseBlock(long[] block, int used) throws JDOException {
+		if (used>=block.length)
+			return true;
+		final UpdateResult result;
+		try {
+			result = collection.updateOne(Filters.and(Filters.eq("_id", sequenceName), Filters.eq("seq", block[block.length-1])),
+										  Updates.set("seq", block[used] - 1l));
+		} catch (MongoException e) {
+			throw new JDOException(e.getMessage(), e);
+		}
+		return result.getModifiedCount()>0;
 	}
 
 }
@@ -11,6 +11,8 @@ package org.judal.mongodb;
  * KIND, either express or implied.
  */
 
+import java.util.ArrayList;
+
 import javax.jdo.JDOException;
 import javax.jdo.Query;
 import javax.jdo.metadata.PrimaryKeyMetadata;
@@ -20,6 +22,8 @@ import org.bson.conversions.Bson;
 import org.judal.metadata.IndexDef.Using;
 import org.judal.metadata.TableDef;
 import org.judal.storage.Param;
+import org.judal.storage.keyvalue.BatchException;
+import org.judal.storage.keyvalue.Stored;
 import org.judal.storage.query.bson.BSONQuery;
 import org.judal.storage.relational.RelationalTable;
 import org.judal.storage.table.Record;
@@ -29,7 +33,9 @@ import com.mongodb.MongoException;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.mongodb.connection.Cluster;
@@ -76,6 +82,41 @@ public class MongoTable extends MongoView implements RelationalTable, Schemaless
 	}
 
 
+	/**
+	 * <p>Insert several records with a single unordered bulk write.</p>
+	 * Records whose key already exists are reported as failed without stopping the others.
+	 * @param sources Iterable&lt;? extends Stored&gt;
+	 * @throws BatchException if one or more records could not be inserted
+	 * @throws JDOException
+	 */
+	@Override
+	public void insertAll(Iterable<? extends Stored> sources) throws JDOException {
+		BatchException.Failures failures = new BatchException.Failures();
+		ArrayList<WriteModel<Document>> models = new ArrayList<WriteModel<Document>>();
+		ArrayList<Object> items = new ArrayList<Object>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		int position = 0;
+		for (Stored source : sources) {
+			if (null==source) {
+				failures.add(position, source, new NullPointerException("MongoTable.insertAll() source cannot be null"));
+			} else {
+				Document doc;
+				if (source instanceof MongoDocument) {
+					doc = new Document(((MongoDocument) source).getDocument());
+				} else {
+					doc = new Document(toUpdate(source));
+				}
+				if (null!=source.getKey())
+					doc.put("_id", source.getKey());
+				models.add(new InsertOneModel<Document>(doc));
+				items.add(source);
+				positions.add(position);
+			}
+			position++;
+		}
+		bulkWrite("insertAll", models, items, positions, failures, position);
+	}
+
 	@Override
 	public int update(Param[] values, Param[] where) throws JDOException {
 		Document filter = new Document();
@@ -13,12 +13,14 @@ package org.judal.mongodb;
  */
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 import javax.jdo.FetchGroup;
 import javax.jdo.JDOException;
+import javax.jdo.JDOUserException;
 import javax.jdo.Query;
 
 import org.bson.BsonArray;
@@ -38,11 +40,13 @@ import org.judal.storage.StorageObjectFactory;
 import org.judal.storage.keyvalue.Stored;
 import org.judal.storage.query.AbstractQuery;
 import org.judal.storage.query.Predicate;
+import org.judal.storage.query.SortDirection;
 import org.judal.storage.query.bson.BSONConverter;
 import org.judal.storage.query.bson.BSONPredicate;
 import org.judal.storage.query.bson.BSONQuery;
 import org.judal.storage.relational.RelationalView;
 import org.judal.storage.table.ColumnGroup;
+import org.judal.storage.table.KeysetPage;
 import org.judal.storage.table.Record;
 import org.judal.storage.table.RecordSet;
 import org.judal.storage.table.SchemalessIndexableView;
@@ -58,6 +62,7 @@ import com.mongodb.binding.ReadWriteBinding;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.connection.Cluster;
 import com.mongodb.operation.AggregateOperation;
 import com.mongodb.operation.BatchCursor;
@@ -252,6 +257,37 @@ public class MongoView extends MongoBucket implements RelationalView, Schemaless
 		return Arrays.asList(match, pipeline.get(0), pipeline.get(1), skip, limit, project);
 	}
 
+	private List<BsonDocument> orderedPipeline(FetchGroup fetchGroup, String fieldName, Object fieldValue, String sortByColumn, boolean descending, int maxrows) {
+		List<BsonDocument> stages = new ArrayList<>(6);
+		if (fieldName!=null)
+			stages.add(new BsonDocument("$match", new BsonDocument(fieldName, BSONConverter.convert(fieldValue))));
+		stages.add(pipeline.get(0));
+		stages.add(pipeline.get(1));
+		stages.add(projectFields(fetchGroup));
+		stages.add(new BsonDocument("$sort", new BsonDocument(sortByColumn, new BsonInt32(descending ? -1 : 1))));
+		if (maxrows>0)
+			stages.add(new BsonDocument("$limit", new BsonInt32(maxrows)));
+		return stages;
+	}
+
+	private List<BsonDocument> pagePipeline(FetchGroup fetchGroup, String sortColumnName, Comparable<?> lastKey, int maxrows, Param[] params) {
+		BsonArray conditions = new BsonArray();
+		if (params!=null)
+			for (Param p : params)
+				conditions.add(new BsonDocument(p.getName(), BSONConverter.convert(p.getValue())));
+		if (lastKey!=null)
+			conditions.add(new BsonDocument(sortColumnName, new BsonDocument("$gt", BSONConverter.convert(lastKey))));
+		List<BsonDocument> stages = new ArrayList<>(7);
+		stages.add(pipeline.get(0));
+		stages.add(pipeline.get(1));
+		stages.add(projectFields(null==fetchGroup ? new ColumnGroup(tableDef.getColumnsStr().split(",")) : fetchGroup));
+		if (conditions.size()>0)
+			stages.add(new BsonDocument("$match", new BsonDocument("$and", conditions)));
+		stages.add(new BsonDocument("$sort", new BsonDocument(sortColumnName, new BsonInt32(1))));
+		stages.add(new BsonDocument("$limit", new BsonInt32(maxrows)));
+		return stages;
+	}
+
 	private Document fetchFields(FetchGroup fetchGroup) {
 		Document fields = new Document();
 		for (Object fieldName : fetchGroup.getMembers())
@@ -456,6 +492,76 @@ public class MongoView extends MongoBucket implements RelationalView, Schemaless
 		}
 	}
 
+	/**
+	 * <p>Fetch documents with a given field value sorted by another field.</p>
+	 * Sorting and limit are done by MongoDB with sort() and limit() or with $sort and $limit pipeline stages.
+	 * @param fetchGroup FetchGroup Fields to fetch
+	 * @param indexColumnName String Name of the field to filter or <b>null</b> to fetch all documents
+	 * @param valueSearched Object
+	 * @param sortByColumn String Field used to sort the documents
+	 * @param sortDirection String SortDirection.ASC or SortDirection.DESC. If <b>null</b> then documents are sorted in ascending order
+	 * @param maxrows int Maximum number of documents to return or -1 for all documents
+	 * @return RecordSet&lt;R&gt;
+	 * @throws JDOException
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends Record> RecordSet<R> fetchOrdered(FetchGroup fetchGroup, String indexColumnName, Object valueSearched, String sortByColumn, String sortDirection, int maxrows) throws JDOException {
+		final boolean descending = sortDirection!=null && SortDirection.same(SortDirection.DESC, sortDirection.trim());
+		Bson filter = null==indexColumnName ? new Document() : Filters.eq(indexColumnName, valueSearched);
+		try {
+			final RecordSet<R> recordSet = (RecordSet<R>) StorageObjectFactory.newRecordSetOf(recordClass, maxrows>0 && maxrows<DEFAULT_INITIAL_RECORDSET_SIZE ? maxrows : DEFAULT_INITIAL_RECORDSET_SIZE);
+			if (null==pipeline)
+				getCollection().find(filter).sort(descending ? Sorts.descending(sortByColumn) : Sorts.ascending(sortByColumn)).limit(maxrows>0 ? maxrows : 0).projection(null==fetchGroup ? null : fetchFields(fetchGroup)).forEach((Block<Document>) doc -> recordSet.add((R) newRecord(doc)));
+			else
+				getCollection().aggregate(orderedPipeline(null==fetchGroup ? new ColumnGroup(tableDef.getColumnsStr().split(",")) : fetchGroup, indexColumnName, valueSearched, sortByColumn, descending, maxrows)).forEach((Block<Document>) doc -> recordSet.add((R) newRecord(doc)));
+			return recordSet;
+		} catch (MongoException e) {
+			throw new JDOException(e.getClass().getName()+" " + e.getMessage(), e);
+		} catch (NoSuchMethodException e) {
+			throw new JDOException("NoSuchMethodException " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * <p>Fetch a page of documents sorted by a field starting after a given key.</p>
+	 * The page is read with a $gt filter on the sort field, an ascending sort and a limit,
+	 * so MongoDB can seek the first document using an index on the sort field instead of calling skip().
+	 * @param fetchGroup FetchGroup Fields to fetch. Must include the sort field
+	 * @param sortColumnName String Name of a unique field used as sort key
+	 * @param lastKey Comparable&lt;?&gt; Continuation of the previous page or <b>null</b> to get the first page
+	 * @param maxrows int Page size
+	 * @param params Param&hellip; Field values that the fetched documents must have
+	 * @return KeysetPage&lt;R&gt;
+	 * @throws JDOException
+	 * @throws JDOUserException if maxrows is zero or negative
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends Record> KeysetPage<R> fetchPage(FetchGroup fetchGroup, String sortColumnName, Comparable<?> lastKey, int maxrows, Param... params) throws JDOException {
+		if (maxrows<=0)
+			throw new JDOUserException("Page size must be greater than zero");
+		List<Bson> filters = new ArrayList<>(params==null ? 1 : params.length+1);
+		if (params!=null)
+			for (Param p : params)
+				filters.add(Filters.eq(p.getName(), p.getValue()));
+		if (lastKey!=null)
+			filters.add(Filters.gt(sortColumnName, lastKey));
+		Bson filter = filters.isEmpty() ? new Document() : Filters.and(filters);
+		try {
+			final RecordSet<R> recordSet = (RecordSet<R>) StorageObjectFactory.newRecordSetOf(recordClass, maxrows);
+			if (null==pipeline)
+				getCollection().find(filter).sort(Sorts.ascending(sortColumnName)).limit(maxrows).projection(null==fetchGroup ? null : fetchFields(fetchGroup)).forEach((Block<Document>) doc -> recordSet.add((R) newRecord(doc)));
+			else
+				getCollection().aggregate(pagePipeline(fetchGroup, sortColumnName, lastKey, maxrows, params)).forEach((Block<Document>) doc -> recordSet.add((R) newRecord(doc)));
+			return new KeysetPage<R>(recordSet, sortColumnName, maxrows);
+		} catch (MongoException e) {
+			throw new JDOException(e.getClass().getName()+" " + e.getMessage(), e);
+		} catch (NoSuchMethodException e) {
+			throw new JDOException("NoSuchMethodException " + e.getMessage(), e);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public Record newRecord(Document bsonDoc) {
 		Object[] constructorParameters;
@@ -12,6 +12,7 @@ package org.judal.jms;
  * KIND, either express or implied.
  */
 
+import javax.jdo.JDOException;
 import javax.jms.ObjectMessage;
 import javax.transaction.TransactionManager;
 
@@ -71,6 +72,13 @@ public class ObjectMessageImpl implements ObjectMessage, Runnable {
 		replyTo = null;
 	}
 
+	/**
+	 * @return TableDataSource where the operation of this message will be performed
+	 */
+	public TableDataSource getDataSource() {
+		return oDts;
+	}
+
 	/**
 	 * @param parm1 Serializable Instance of Record, Record[], com.knowgate.tuples.Pair&lt;Record,Param[]&gt; or com.knowgate.tuples.Triplet&lt;Record,Param[],Param[]&gt;
 	 * @throws JMSException
@@ -469,7 +477,51 @@ public class ObjectMessageImpl implements ObjectMessage, Runnable {
 	}
 
 	/**
-	 * <p>Run operation on this object.</p>
+	 * <p>Run operation on this object in its own transaction.</p>
+	 * If the TableDataSource has a TransactionManager then a transaction is begun,
+	 * process() is called and the transaction is committed or rolled back if process() failed.
+	 */
+	@Override
+	public void run() {
+		execute();
+	}
+
+	/**
+	 * <p>Run operation on this object in its own transaction and tell whether it was performed.</p>
+	 * Same as run() but returning the outcome to callers which must not lose a failed message.
+	 * @return boolean <b>true</b> if the operation was performed and committed,
+	 * <b>false</b> if it failed and was rolled back
+	 */
+	public boolean execute() {
+		TransactionManager oTrnMan = oDts.getTransactionManager();
+		boolean bPerformed = false;
+
+		try {
+			if (oTrnMan!=null)
+				oTrnMan.begin();
+
+			process();
+
+			if (oTrnMan!=null)
+				oTrnMan.commit();
+
+			bPerformed = true;
+		} catch (Exception xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln("ObjectMessageImpl.run() " + xcpt.getClass().getName() + " " + xcpt.getMessage());
+				DebugFile.writeStackTrace(xcpt);
+			}
+			rollback(oDts);
+		} finally {
+			reset(oTrnMan);
+		}
+		if (DebugFile.trace)
+			DebugFile.writeln("End ObjectMessageImpl.run() " + (bPerformed ? "performed" : "failed"));
+		return bPerformed;
+	}
+
+	/**
+	 * <p>Perform the operation of this object at the current transaction, if any.</p>
 	 * This method will perform the following actions:<br/>
 	 * <ol>
 	 * <li>Cast getObject() into the appropriate number of Record and Param[] instances</li>
@@ -479,181 +531,178 @@ public class ObjectMessageImpl implements ObjectMessage, Runnable {
 	 * <li>Else If command is COMMAND_INSERT_RECORD Then call Table.insert(Param[]).</li>
 	 * <li>Else If command is COMMAND_UPDATE_RECORD Then call IndexableTable.update(Param[],Param[]).</li>
 	 * </ol>
+	 * @throws JMSException If the "command" property is not set
+	 * @throws JDOException If the operation failed
 	 */
-	@Override
 	@SuppressWarnings("unchecked")
-	public void run() {
-		TransactionManager oTrnMan = oDts.getTransactionManager();
+	public void process() throws JMSException, JDOException {
+		final int iCmd = getIntProperty("command");
+		Object oObj = getObject();
+		int nRecs = 0;
+		int nParams = 0;
+		Record oRec = null;
+		Record[] aRecs = null;
+		Param[] aParms = null;
+		Param[] aWhere = null;
+
+		if (oObj instanceof Record[]) {
+			aRecs = (Record[]) oObj;
+			nRecs = aRecs.length;
+		} else if (oObj instanceof Record) {
+			aRecs = new Record[] { (Record) oObj };
+			nRecs = aRecs.length;
+		} else if (oObj instanceof Pair<?, ?>) {
+			oRec = ((Pair<Record,Param[]>) oObj).$1();
+			aParms = ((Pair<Record,Param[]>) oObj).$2();
+			nParams = aParms.length;
+		} else if (oObj instanceof Triplet<?, ?, ?>) {
+			oRec = ((Triplet<Record,Param[],Param[]>) oObj).$1();
+			aParms = ((Triplet<Record,Param[],Param[]>) oObj).$2();
+			nParams = aParms.length;
+			aWhere = ((Triplet<Record,Param[],Param[]>) oObj).$3();
+		}
 
-		try {
-			final int iCmd = getIntProperty("command");
-			Object oObj = getObject();
-			int nRecs = 0;
-			int nParams = 0;
-			Record oRec = null;
-			Record[] aRecs = null;
-			Param[] aParms = null;
-			Param[] aWhere = null;
-
-			if (oObj instanceof Record[]) {
-				aRecs = (Record[]) oObj;
-				nRecs = aRecs.length;
-			} else if (oObj instanceof Record) {
-				aRecs = new Record[] { (Record) oObj };
-				nRecs = aRecs.length;
-			} else if (oObj instanceof Pair<?, ?>) {
-				oRec = ((Pair<Record,Param[]>) oObj).$1();
-				aParms = ((Pair<Record,Param[]>) oObj).$2();
-				nParams = aParms.length;
-			} else if (oObj instanceof Triplet<?, ?, ?>) {
-				oRec = ((Triplet<Record,Param[],Param[]>) oObj).$1();
-				aParms = ((Triplet<Record,Param[],Param[]>) oObj).$2();
-				nParams = aParms.length;
-				aWhere = ((Triplet<Record,Param[],Param[]>) oObj).$3();
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin ObjectMessageImpl.run(" + getJMSMessageID() + "," + this + ","
+					+ new Date(this.getJMSTimestamp()).toString() + ")");
+			String sCmd, sRtp;
+			switch (iCmd) {
+			case COMMAND_STORE_RECORD:
+				sCmd = "STORE RECORD COMMAND";
+				break;
+			case COMMAND_DELETE_RECORDS:
+				sCmd = "DELETE RECORDS COMMAND";
+				break;
+			case COMMAND_INSERT_RECORD:
+				sCmd = "INSERT RECORD COMMAND";
+				break;
+			case COMMAND_UPDATE_RECORD:
+				sCmd = "UPDATE RECORD COMMAND";
+				break;
+			default:
+				sCmd = "UNKNOWN COMMAND";
+				break;
 			}
+			if (nRecs > 0)
+				sRtp = aRecs[0].getClass().getName();
+			else if (oRec != null)
+				sRtp = oRec.getClass().getName();
+			else
+				sRtp = "null";
+			DebugFile.writeln("Perform " + sCmd + " on " + String.valueOf(nRecs) + " record"
+					+ (nRecs > 1 ? "s" : "") + " of class " + sRtp);
+		}
+
+		for (int r = 0; r < nRecs; r++) {
+			oRec = aRecs[r];
+
+			if (oRec == null) {
 
-			if (DebugFile.trace) {
-				DebugFile.writeln("Begin ObjectMessageImpl.run(" + getJMSMessageID() + "," + this + ","
-						+ new Date(this.getJMSTimestamp()).toString() + ")");
-				String sCmd, sRtp;
 				switch (iCmd) {
 				case COMMAND_STORE_RECORD:
-					sCmd = "STORE RECORD COMMAND";
+					if (DebugFile.trace)
+						DebugFile.writeln("COMMAND_STORE_RECORD NullPointerException Record is null");
 					break;
 				case COMMAND_DELETE_RECORDS:
-					sCmd = "DELETE RECORDS COMMAND";
-					break;
-				case COMMAND_INSERT_RECORD:
-					sCmd = "INSERT RECORD COMMAND";
-					break;
-				case COMMAND_UPDATE_RECORD:
-					sCmd = "UPDATE RECORD COMMAND";
-					break;
-				default:
-					sCmd = "UNKNOWN COMMAND";
+					if (DebugFile.trace)
+						DebugFile.writeln("COMMAND_DELETE_RECORDS NullPointerException Record is null");
 					break;
-				}
-				if (nRecs > 0)
-					sRtp = aRecs[0].getClass().getName();
-				else if (oRec != null)
-					sRtp = oRec.getClass().getName();
-				else
-					sRtp = "null";
-				DebugFile.writeln("Perform " + sCmd + " on " + String.valueOf(nRecs) + " record"
-						+ (nRecs > 1 ? "s" : "") + " of class " + sRtp);
-			}
-			
-			if (oTrnMan!=null)
-				oTrnMan.begin();
-
-			for (int r = 0; r < nRecs; r++) {
-				oRec = aRecs[r];
-
-				if (oRec == null) {
-
-					switch (iCmd) {
-					case COMMAND_STORE_RECORD:
-						if (DebugFile.trace)
-							DebugFile.writeln("COMMAND_STORE_RECORD NullPointerException Record is null");
-						break;
-					case COMMAND_DELETE_RECORDS:
-						if (DebugFile.trace)
-							DebugFile.writeln("COMMAND_DELETE_RECORDS NullPointerException Record is null");
-						break;
-					} // end switch
+				} // end switch
 
-				} else {
+			} else {
 
-					if (DebugFile.trace)
-						DebugFile.writeln("executing command " + String.valueOf(iCmd) + " for record " + oRec.getKey());
-
-					if (DebugFile.trace)
-						DebugFile.writeln("table " + oRec.getTableName() + " opened");
-
-					switch (iCmd) {
-					case COMMAND_STORE_RECORD:
-						if (DebugFile.trace)
-							DebugFile.writeln("COMMAND_STORE_RECORD " + oRec.getTableName() + "(" + oRec.getKey() + ")");
-						oRec.store(oDts);
-						break;
-
-					case COMMAND_DELETE_RECORDS:
-						if (DebugFile.trace)
-							DebugFile.writeln("COMMAND_DELETE_RECORDS { " + getStringProperty("keys") + "} from " + oRec.getTableName());
-						String[] aKeys = getStringProperty("keys").split("`");
-						for (int k = aKeys.length-1; k >= 0; k--) {
-							if (aKeys[k]!=null & aKeys[k].trim().length()>0) {
-								if (DebugFile.trace) {
-									DebugFile.writeln("Deleting record " + aKeys[k] + " on "+ oRec.getTableName());
-								}
-								oRec.setKey(aKeys[k]);
-								oRec.delete(oDts);
-								if (DebugFile.trace) {
-									try (Table oTbd = oDts.openTable(oRec)) {
-										if (oTbd.exists(aKeys[k])) {
-											DebugFile.writeln("Error deleting " + oRec.getClass().getName() + " with key " + aKeys[k] + " on table " + oRec.getTableName());
-										}
-									}
-								}								
-							}
-						}
-						break;
-					} // end switch
+				if (DebugFile.trace)
+					DebugFile.writeln("executing command " + String.valueOf(iCmd) + " for record " + oRec.getKey());
 
-				}
-			} // next
+				if (DebugFile.trace)
+					DebugFile.writeln("table " + oRec.getTableName() + " opened");
 
-			if (nParams > 0) {
 				switch (iCmd) {
-				case COMMAND_UPDATE_RECORD:
-					if (DebugFile.trace)
-						DebugFile.writeln("COMMAND_UPDATE_RECORD FROM " + oRec.getTableName());
+				case COMMAND_STORE_RECORD:
 					if (DebugFile.trace)
-						DebugFile.writeln("opening table " + oRec.getTableName() + " from DataSource " + oDts + " for update");
-					try (IndexableTable oITbl = oDts.openIndexedTable(oRec)) {
-						oITbl.update(aParms, aWhere);
-					}
+						DebugFile.writeln("COMMAND_STORE_RECORD " + oRec.getTableName() + "(" + oRec.getKey() + ")");
+					oRec.store(oDts);
 					break;
 
-				case COMMAND_INSERT_RECORD:
-					if (DebugFile.trace)
-						DebugFile.writeln("COMMAND_INSERT_RECORD INTO " + oRec.getTableName());
+				case COMMAND_DELETE_RECORDS:
 					if (DebugFile.trace)
-						DebugFile.writeln("opening table " + oRec.getTableName() + " from DataSource " + oDts + " for insert");
-					try (Table oTbl = oDts.openTable(oRec)) {
-						oTbl.insert(aParms);						
+						DebugFile.writeln("COMMAND_DELETE_RECORDS { " + getStringProperty("keys") + "} from " + oRec.getTableName());
+					String[] aKeys = getStringProperty("keys").split("`");
+					for (int k = aKeys.length-1; k >= 0; k--) {
+						if (aKeys[k]!=null & aKeys[k].trim().length()>0) {
+							if (DebugFile.trace) {
+								DebugFile.writeln("Deleting record " + aKeys[k] + " on "+ oRec.getTableName());
+							}
+							oRec.setKey(aKeys[k]);
+							oRec.delete(oDts);
+							if (DebugFile.trace) {
+								try (Table oTbd = oDts.openTable(oRec)) {
+									if (oTbd.exists(aKeys[k])) {
+										DebugFile.writeln("Error deleting " + oRec.getClass().getName() + " with key " + aKeys[k] + " on table " + oRec.getTableName());
+									}
+								}
+							}								
+						}
 					}
 					break;
 				} // end switch
+
 			}
+		} // next
 
+		if (nParams > 0) {
+			switch (iCmd) {
+			case COMMAND_UPDATE_RECORD:
+				if (DebugFile.trace)
+					DebugFile.writeln("COMMAND_UPDATE_RECORD FROM " + oRec.getTableName());
+				if (DebugFile.trace)
+					DebugFile.writeln("opening table " + oRec.getTableName() + " from DataSource " + oDts + " for update");
+				try (IndexableTable oITbl = oDts.openIndexedTable(oRec)) {
+					oITbl.update(aParms, aWhere);
+				}
+				break;
+
+			case COMMAND_INSERT_RECORD:
+				if (DebugFile.trace)
+					DebugFile.writeln("COMMAND_INSERT_RECORD INTO " + oRec.getTableName());
+				if (DebugFile.trace)
+					DebugFile.writeln("opening table " + oRec.getTableName() + " from DataSource " + oDts + " for insert");
+				try (Table oTbl = oDts.openTable(oRec)) {
+					oTbl.insert(aParms);						
+				}
+				break;
+			} // end switch
+		}
+	}
+
+	/**
+	 * <p>Roll back the transaction of a TableDataSource if there is one in progress.</p>
+	 * @param oDts TableDataSource
+	 */
+	public static void rollback(TableDataSource oDts) {
+		TransactionManager oTrnMan = oDts.getTransactionManager();
+		try {
 			if (oTrnMan!=null)
-				oTrnMan.commit();
-			
-		} catch (Exception xcpt) {
-			if (DebugFile.trace) {
-				DebugFile.writeln("ObjectMessageImpl.run() " + xcpt.getClass().getName() + " " + xcpt.getMessage());
-				DebugFile.writeStackTrace(xcpt);
-			}
+				if (oDts.inTransaction()) oTrnMan.rollback();
+		} catch (Exception rbx) {
+			if (DebugFile.trace)
+				DebugFile.writeln(rbx.getClass().getName()+" at TransactionManager.rollback() "+rbx.getMessage());
+		}
+	}
+
+	/**
+	 * <p>Call reset() on TransactionManager implementations which have such method.</p>
+	 * @param oTrnMan TransactionManager May be <b>null</b>
+	 */
+	public static void reset(TransactionManager oTrnMan) {
+		if (oTrnMan!=null) {
 			try {
-				if (oTrnMan!=null)
-					if (oDts.inTransaction()) oTrnMan.rollback();
-			} catch (Exception rbx) {
-				if (DebugFile.trace)
-					DebugFile.writeln(rbx.getClass().getName()+" at TransactionManager.rollback() "+rbx.getMessage());
-			}			
-		} finally {
-			if (oTrnMan!=null) {
-				try {
-					Method reset = oTrnMan.getClass().getMethod("reset");
-					if (reset!=null)
-						reset.invoke(oTrnMan);
-				} catch (NoSuchMethodException | SecurityException | IllegalAccessException |
-						 IllegalArgumentException | InvocationTargetException ignore) { }
-			}			
+				Method reset = oTrnMan.getClass().getMethod("reset");
+				if (reset!=null)
+					reset.invoke(oTrnMan);
+			} catch (NoSuchMethodException | SecurityException | IllegalAccessException |
+					 IllegalArgumentException | InvocationTargetException ignore) { }
 		}
-		if (DebugFile.trace)
-			DebugFile.writeln("End ObjectMessageImpl.run()");
 	}
 
 	public final static int COMMAND_STOP = 0;
@@ -22,9 +22,8 @@ import javax.jms.JMSException;
 import javax.jms.TextMessage;
 import javax.jms.ObjectMessage;
 import javax.jms.QueueReceiver;
-import javax.jms.QueueRequestor;
 import javax.jms.TemporaryQueue;
-import javax.jms.QueueConnection;
+import javax.jms.QueueSession;
 import javax.jms.MessageProducer;
 
 import com.sun.messaging.ConnectionFactory;
@@ -54,6 +53,16 @@ import com.knowgate.debug.StackTraceUtil;
 import com.knowgate.tuples.Pair;
 import com.knowgate.tuples.Triplet;
 
+/**
+ * <p>RecordQueueProducer implementation.</p>
+ * Messages are sent through a JMSSessionPool of long-lived connections, sessions and producers.
+ * The size of the pool and whether its sessions are transacted are set by the properties
+ * JMSSessionPool.POOL_SIZE, JMSSessionPool.TRANSACTED, JMSSessionPool.COMMIT_SIZE and JMSSessionPool.COMMIT_DELAY.
+ * With transacted sessions several sends are committed at once, and the last messages sent
+ * reach the queue after the commit delay, or sooner if commit() or close() are called.
+ * If no queue is given, messages are passed directly to a JMSQueueListener in the same process.
+ * @author Sergio Montoro Ten
+ */
 public class JMSQueueProducer implements RecordQueueProducer {
 
   private String sLoginId;
@@ -63,6 +72,7 @@ public class JMSQueueProducer implements RecordQueueProducer {
   private ConnectionFactory oCnf;
   private Queue oQue;
   private JMSQueueListener oRql;
+  private JMSSessionPool oPool;
   private Properties oDefaultProps = new Properties();
   
   public JMSQueueProducer(String engineName, Map<String,String> properties) throws JDOException, InstantiationException {
@@ -70,12 +80,58 @@ public class JMSQueueProducer implements RecordQueueProducer {
     oCtx = null;
     oCnf = null;
     oQue = null;
+    oPool = null;
     oRql = new JMSQueueListener(engineName, properties, null, null);
   }
   
   public JMSQueueProducer(String engineName, String connectionFactoryName, String queueName,
   							 String directoryPath, String userId, String passwd)
   	throws NamingException,JDOException,InstantiationException {
+  	this(engineName, connectionFactoryName, queueName, directoryPath, userId, passwd,
+  		 JMSSessionPool.DEFAULT_POOL_SIZE, false, JMSSessionPool.DEFAULT_COMMIT_SIZE);
+  }
+
+  /**
+   * @param engineName String
+   * @param connectionFactoryName String
+   * @param queueName String
+   * @param directoryPath String Disk path to provider URL
+   * @param userId String
+   * @param passwd String
+   * @param poolSize int Maximum count of pooled JMS connections
+   * @param transacted boolean Whether to send messages using transacted sessions
+   * @param commitSize int Count of messages sent in each transaction
+   * @throws NamingException
+   * @throws JDOException
+   * @throws InstantiationException
+   */
+  public JMSQueueProducer(String engineName, String connectionFactoryName, String queueName,
+  							 String directoryPath, String userId, String passwd,
+  							 int poolSize, boolean transacted, int commitSize)
+  	throws NamingException,JDOException,InstantiationException {
+  	this(engineName, connectionFactoryName, queueName, directoryPath, userId, passwd,
+  		 poolSize, transacted, commitSize, JMSSessionPool.DEFAULT_COMMIT_DELAY);
+  }
+
+  /**
+   * @param engineName String
+   * @param connectionFactoryName String
+   * @param queueName String
+   * @param directoryPath String Disk path to provider URL
+   * @param userId String
+   * @param passwd String
+   * @param poolSize int Maximum count of pooled JMS connections
+   * @param transacted boolean Whether to send messages using transacted sessions
+   * @param commitSize int Count of messages sent in each transaction
+   * @param commitDelay long Maximum milliseconds that a sent message may wait to be committed. Zero for no limit.
+   * @throws NamingException
+   * @throws JDOException
+   * @throws InstantiationException
+   */
+  public JMSQueueProducer(String engineName, String connectionFactoryName, String queueName,
+  							 String directoryPath, String userId, String passwd,
+  							 int poolSize, boolean transacted, int commitSize, long commitDelay)
+  	throws NamingException,JDOException,InstantiationException {
   	sLoginId = userId;
   	sAuthStr = passwd;
     oEnv = new Hashtable<String,String>();
@@ -85,8 +141,10 @@ public class JMSQueueProducer implements RecordQueueProducer {
       oCtx = new InitialContext(oEnv);
       oCnf = (ConnectionFactory) oCtx.lookup(connectionFactoryName);	
       oQue = (Queue) oCtx.lookup(queueName);
+      oPool = new JMSSessionPool(oCnf, oQue, sLoginId, sAuthStr, poolSize, transacted, commitSize, commitDelay, JMSSessionPool.DEFAULT_BORROW_TIMEOUT);
       oRql = null;
     } else {
+      oPool = null;
       oRql = new JMSQueueListener(engineName, new HashMap<String,String>(), null, null);
     }
   }
@@ -98,7 +156,18 @@ public class JMSQueueProducer implements RecordQueueProducer {
   		 props.getProperty("jmsqueue"),
   		 props.getProperty("jmsprovider"),
   		 props.getProperty("jmsuser"),
-  		 props.getProperty("jmspassword"));
+  		 props.getProperty("jmspassword"),
+  		 Integer.parseInt(props.getProperty(JMSSessionPool.POOL_SIZE, String.valueOf(JMSSessionPool.DEFAULT_POOL_SIZE))),
+  		 Boolean.parseBoolean(props.getProperty(JMSSessionPool.TRANSACTED, "false")),
+  		 Integer.parseInt(props.getProperty(JMSSessionPool.COMMIT_SIZE, String.valueOf(JMSSessionPool.DEFAULT_COMMIT_SIZE))),
+  		 Long.parseLong(props.getProperty(JMSSessionPool.COMMIT_DELAY, String.valueOf(JMSSessionPool.DEFAULT_COMMIT_DELAY))));
+  }
+
+  /**
+   * @return JMSSessionPool or <b>null</b> if messages are not sent to a JMS queue
+   */
+  public JMSSessionPool getSessionPool() {
+    return oPool;
   }
 
   protected void finalize() {
@@ -106,9 +175,25 @@ public class JMSQueueProducer implements RecordQueueProducer {
   }  
 
   public void close() throws JDOException {
+    if (null!=oPool) oPool.close();
     if (null!=oRql) oRql.close();	
   }
 
+  /**
+   * <p>Commit the messages sent through transacted sessions which are not in use by other threads.</p>
+   * Does nothing if the sessions are not transacted.
+   * @throws JDOException
+   */
+  public void commit() throws JDOException {
+    if (null!=oPool) {
+      try {
+        oPool.commit();
+      } catch (JMSException jmse) {
+        throw new JDOException(jmse.getMessage(), jmse);
+      }
+    }
+  }
+
   private void setProperties(ObjectMessage oMsg, Properties oProps) throws JMSException {
   	
   	if (DebugFile.trace) {
@@ -149,11 +234,11 @@ public class JMSQueueProducer implements RecordQueueProducer {
   
   private void sendMessage(Serializable oObj,int iCommand,Properties oProps) throws JDOException {
 
-	QueueConnection oQcn = null;
-	Session oSes = null;
+	JMSSessionPool.PooledSession oPss = null;
+	QueueSession oSes = null;
 	MessageProducer oMpr = null;
     QueueReceiver oQrr = null;
-    QueueRequestor oQrq = null;
+    TemporaryQueue oTqe = null;
 
   	if (DebugFile.trace) {
   	  DebugFile.writeln("Begin RecordQueueProducer.sendMessage([Serializable],"+String.valueOf(iCommand)+",[Properties])");
@@ -175,16 +260,17 @@ public class JMSQueueProducer implements RecordQueueProducer {
 	} else {
 
 	  try {
-	    oQcn = oCnf.createQueueConnection(sLoginId,sAuthStr);
-	    oSes = oQcn.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
-	    ObjectMessage oMsg = oSes.createObjectMessage(oObj);
+	    oPss = oPool.borrow();
+	    ObjectMessage oMsg = oPss.getSession().createObjectMessage(oObj);
 	    oMsg.setJMSDeliveryMode(DeliveryMode.PERSISTENT);
 	    oMsg.setIntProperty("command", iCommand);
 	    setProperties(oMsg,oProps);
 
 		if (oMsg.getBooleanProperty("synchronous")) {
-	      oQcn.start();
-		  TemporaryQueue oTqe = oSes.createTemporaryQueue();
+		  // Commit previous messages of this session so that they are processed before this one
+		  oPss.commit();
+		  oSes = oPss.getConnection().createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+		  oTqe = oSes.createTemporaryQueue();
 	      oMsg.setJMSPriority(PRIORITY_EXPEDITED);
 	  	  oMsg.setJMSReplyTo(oTqe);
 
@@ -201,7 +287,8 @@ public class JMSQueueProducer implements RecordQueueProducer {
 	      oMpr = null;
 		  oTqe.delete();      
   	  	  oTqe=null;
-	      oQcn.stop();
+	      oSes.close();
+	      oSes = null;
 
 		  if (oRpl==null) {
 
@@ -223,28 +310,24 @@ public class JMSQueueProducer implements RecordQueueProducer {
 
 		} else {
 
-	      oMsg.setJMSPriority(PRIORITY_NORMAL);
-	      oMpr = oSes.createProducer(oQue);
-	      oMpr.send(oMsg);
+	      oPss.send(oMsg, PRIORITY_NORMAL);
 		  if (DebugFile.trace)
   	  	    DebugFile.writeln("Sent message "+oMsg.getJMSMessageID());
-	      oMpr.close();
-	      oMpr = null;
 
 		}
 
-	    oSes.close();
-	    oSes = null;
-	    oQcn.close();
-	    oQcn = null;
 	  } catch (JMSException jmse) {
+	    if (null!=oPss) {
+	      oPool.invalidate(oPss);
+	      oPss = null;
+	    }
 		throw new JDOException(jmse.getMessage(), jmse);
 	  } finally {
-	    if (null!=oQrq) { try {oQrq.close(); } catch (Exception ignore) {} }
 	    if (null!=oQrr) { try {oQrr.close(); } catch (Exception ignore) {} }
 	    if (null!=oMpr) { try {oMpr.close(); } catch (Exception ignore) {} }
+	    if (null!=oTqe) { try {oTqe.delete();} catch (Exception ignore) {} }
 	    if (null!=oSes) { try {oSes.close(); } catch (Exception ignore) {} }
-	    if (null!=oQcn) { try {oQcn.close(); } catch (Exception ignore) {} }
+	    if (null!=oPss) oPool.release(oPss);
 	  }
 	} // fi
 
@@ -333,6 +416,8 @@ public class JMSQueueProducer implements RecordQueueProducer {
 	
 	if (oQue!=null) {
 	  try {
+	    // Messages still pending in transacted sessions must reach the queue before the stop message
+	    oPool.commit();
 	    oQcn = oCnf.createConnection(sLoginId,sAuthStr);
 	    oSes = (Session) oQcn.createSession(false, Session.AUTO_ACKNOWLEDGE);
 	    TextMessage oMsg = oSes.createTextMessage("Stop");
@@ -0,0 +1,558 @@
+package org.judal.jmsqueue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+
+import com.sun.messaging.ConnectionFactory;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Pool of long-lived JMS connections, sessions and message producers for a queue.</p>
+ * Each pooled entry has its own QueueConnection with one QueueSession and one MessageProducer,
+ * so a pooled entry is used by only one thread at a time.
+ * Entries are created on demand up to the pool size and borrow() waits when all of them are in use.
+ * If the pool is transacted, sent messages are not committed until getCommitSize() messages
+ * have been sent through the same entry, commit() is called or the first of them has waited getCommitDelay() milliseconds.
+ * Entries in use are committed by the next send after the delay expires and idle entries are committed by a background thread.
+ * When sending or committing fails, the connection is reopened and the messages
+ * of the transaction that had not been committed yet are sent again.
+ * Because a failed commit may have reached the broker, messages can be delivered more than once after a reconnection.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class JMSSessionPool {
+
+	/**
+	 * Property name for the maximum count of pooled connections
+	 */
+	public static final String POOL_SIZE = "jmspoolsize";
+
+	/**
+	 * Property name for using transacted sessions. Default is "false"
+	 */
+	public static final String TRANSACTED = "jmstransacted";
+
+	/**
+	 * Property name for the count of messages sent in each transaction by a transacted pool
+	 */
+	public static final String COMMIT_SIZE = "jmscommitsize";
+
+	/**
+	 * Property name for the maximum milliseconds that a message sent by a transacted pool may wait to be committed
+	 */
+	public static final String COMMIT_DELAY = "jmscommitdelay";
+
+	/**
+	 * Property name for the maximum milliseconds that borrow() will wait for a free connection
+	 */
+	public static final String BORROW_TIMEOUT = "jmsborrowtimeout";
+
+	public static final int DEFAULT_POOL_SIZE = 4;
+	public static final int DEFAULT_COMMIT_SIZE = 10;
+	public static final long DEFAULT_COMMIT_DELAY = 1000l;
+	public static final long DEFAULT_BORROW_TIMEOUT = 30000l;
+
+	private final ConnectionFactory oCnf;
+	private final Queue oQue;
+	private final String sLoginId;
+	private final String sAuthStr;
+	private final int iPoolSize;
+	private final boolean bTransacted;
+	private final int iCommitSize;
+	private final long lCommitDelay;
+	private final long lBorrowTimeout;
+	private final ScheduledExecutorService oCommitter;
+	private final Semaphore oPermits;
+	private final ConcurrentLinkedQueue<PooledSession> oIdle;
+	private final AtomicLong lConnections;
+	private final AtomicLong lReconnections;
+	private final AtomicLong lCommits;
+	private volatile boolean bClosed;
+
+	/**
+	 * <p>One connection, session and producer of the pool.</p>
+	 */
+	public class PooledSession implements ExceptionListener {
+
+		private QueueConnection oQcn;
+		private QueueSession oSes;
+		private MessageProducer oMpr;
+		private final ArrayList<ObjectMessage> aUncommitted;
+		private long lFirstUncommitted;
+		private volatile boolean bBroken;
+
+		private PooledSession() throws JMSException {
+			aUncommitted = new ArrayList<ObjectMessage>(bTransacted ? iCommitSize : 0);
+			open();
+		}
+
+		private void open() throws JMSException {
+			bBroken = false;
+			oQcn = oCnf.createQueueConnection(sLoginId, sAuthStr);
+			try {
+				oQcn.setExceptionListener(this);
+				oSes = oQcn.createQueueSession(bTransacted, bTransacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+				oMpr = oSes.createProducer(oQue);
+				oQcn.start();
+			} catch (JMSException jmse) {
+				closeQuietly();
+				throw jmse;
+			}
+			lConnections.incrementAndGet();
+		}
+
+		/**
+		 * @return QueueConnection
+		 */
+		public QueueConnection getConnection() {
+			return oQcn;
+		}
+
+		/**
+		 * @return QueueSession
+		 */
+		public QueueSession getSession() {
+			return oSes;
+		}
+
+		/**
+		 * @return MessageProducer
+		 */
+		public MessageProducer getProducer() {
+			return oMpr;
+		}
+
+		/**
+		 * @return int Count of messages sent and not yet committed
+		 */
+		public int getUncommittedCount() {
+			return aUncommitted.size();
+		}
+
+		/**
+		 * @return boolean <b>true</b> if the first message not yet committed was sent getCommitDelay() milliseconds ago or more
+		 */
+		public boolean isCommitDue() {
+			return lCommitDelay > 0l && aUncommitted.size() > 0 &&
+				System.nanoTime() - lFirstUncommitted >= TimeUnit.MILLISECONDS.toNanos(lCommitDelay);
+		}
+
+		/**
+		 * @return boolean <b>true</b> if the JMS provider notified a connection failure
+		 */
+		public boolean isBroken() {
+			return bBroken;
+		}
+
+		/**
+		 * <p>Send a message created by this session.</p>
+		 * If the pool is transacted the transaction is committed when it reaches getCommitSize() messages
+		 * or when its first message was sent getCommitDelay() milliseconds ago.
+		 * If sending fails the connection is reopened and the message is sent again once.
+		 * @param oMsg ObjectMessage
+		 * @param iPriority int Message priority
+		 * @throws JMSException If the message could not be sent after reconnecting
+		 */
+		public void send(ObjectMessage oMsg, int iPriority) throws JMSException {
+			try {
+				sendOnce(oMsg, iPriority);
+			} catch (JMSException jmse) {
+				if (DebugFile.trace)
+					DebugFile.writeln("JMSSessionPool.send() " + jmse.getMessage());
+				boolean bResentByReconnect = false;
+				for (ObjectMessage oUnc : aUncommitted)
+					bResentByReconnect |= (oUnc == oMsg);
+				reconnect();
+				if (!bResentByReconnect)
+					sendOnce(copy(oMsg), iPriority);
+			}
+		}
+
+		private void sendOnce(ObjectMessage oMsg, int iPriority) throws JMSException {
+			oMpr.send(oMsg, oMsg.getJMSDeliveryMode(), iPriority, oMpr.getTimeToLive());
+			if (bTransacted) {
+				aUncommitted.add(oMsg);
+				if (aUncommitted.size() == 1)
+					lFirstUncommitted = System.nanoTime();
+				if (aUncommitted.size() >= iCommitSize || isCommitDue())
+					commitOnce();
+			}
+		}
+
+		/**
+		 * <p>Commit the messages sent by this session.</p>
+		 * Does nothing if the pool is not transacted.
+		 * If the commit fails the connection is reopened, the uncommitted messages are sent again and committed.
+		 * @throws JMSException If the commit failed again after reconnecting
+		 */
+		public void commit() throws JMSException {
+			try {
+				commitOnce();
+			} catch (JMSException jmse) {
+				if (DebugFile.trace)
+					DebugFile.writeln("JMSSessionPool.commit() " + jmse.getMessage());
+				reconnect();
+				commitOnce();
+			}
+		}
+
+		private void commitOnce() throws JMSException {
+			if (bTransacted && aUncommitted.size() > 0) {
+				oSes.commit();
+				aUncommitted.clear();
+				lCommits.incrementAndGet();
+			}
+		}
+
+		/**
+		 * <p>Close the connection and open a new one.</p>
+		 * Messages sent in the transaction that had not been committed are sent again through the new session.
+		 * @throws JMSException
+		 */
+		public void reconnect() throws JMSException {
+			if (DebugFile.trace)
+				DebugFile.writeln("JMSSessionPool.reconnect() " + String.valueOf(aUncommitted.size()) + " uncommitted messages");
+			closeQuietly();
+			open();
+			lReconnections.incrementAndGet();
+			if (aUncommitted.size() > 0) {
+				ArrayList<ObjectMessage> aResend = new ArrayList<ObjectMessage>(aUncommitted);
+				final long lFirstSent = lFirstUncommitted;
+				aUncommitted.clear();
+				try {
+					for (ObjectMessage oOld : aResend) {
+						sendOnce(copy(oOld), oOld.getJMSPriority());
+						if (aUncommitted.size() == 1)
+							lFirstUncommitted = lFirstSent;
+					}
+				} catch (JMSException jmse) {
+					aUncommitted.clear();
+					aUncommitted.addAll(aResend);
+					lFirstUncommitted = lFirstSent;
+					throw jmse;
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private ObjectMessage copy(ObjectMessage oOld) throws JMSException {
+			ObjectMessage oNew = oSes.createObjectMessage((Serializable) oOld.getObject());
+			oNew.setJMSDeliveryMode(oOld.getJMSDeliveryMode());
+			oNew.setJMSPriority(oOld.getJMSPriority());
+			Enumeration<String> oNames = oOld.getPropertyNames();
+			while (oNames.hasMoreElements()) {
+				String sName = oNames.nextElement();
+				oNew.setObjectProperty(sName, oOld.getObjectProperty(sName));
+			}
+			return oNew;
+		}
+
+		/**
+		 * Called by the JMS provider when the connection fails
+		 * @param jmse JMSException
+		 */
+		@Override
+		public void onException(JMSException jmse) {
+			if (DebugFile.trace)
+				DebugFile.writeln("JMSSessionPool connection failure " + jmse.getMessage());
+			bBroken = true;
+		}
+
+		private void closeQuietly() {
+			if (null != oMpr) { try { oMpr.close(); } catch (Exception ignore) {} }
+			if (null != oSes) { try { oSes.close(); } catch (Exception ignore) {} }
+			if (null != oQcn) { try { oQcn.close(); } catch (Exception ignore) {} }
+			oMpr = null;
+			oSes = null;
+			oQcn = null;
+		}
+	}
+
+	/**
+	 * <p>Create a pool whose transactions are committed DEFAULT_COMMIT_DELAY milliseconds after their first message at the latest.</p>
+	 * @param oCnf ConnectionFactory
+	 * @param oQue Queue
+	 * @param sLoginId String User Id
+	 * @param sAuthStr String Password
+	 * @param iPoolSize int Maximum count of pooled connections
+	 * @param bTransacted boolean Whether to use transacted sessions
+	 * @param iCommitSize int Count of messages sent in each transaction. Ignored if bTransacted is <b>false</b>
+	 * @param lBorrowTimeout long Maximum milliseconds that borrow() will wait for a free connection
+	 * @throws IllegalArgumentException If iPoolSize or iCommitSize are less than one
+	 */
+	public JMSSessionPool(ConnectionFactory oCnf, Queue oQue, String sLoginId, String sAuthStr,
+	                      int iPoolSize, boolean bTransacted, int iCommitSize, long lBorrowTimeout) throws IllegalArgumentException {
+		this(oCnf, oQue, sLoginId, sAuthStr, iPoolSize, bTransacted, iCommitSize, DEFAULT_COMMIT_DELAY, lBorrowTimeout);
+	}
+
+	/**
+	 * @param oCnf ConnectionFactory
+	 * @param oQue Queue
+	 * @param sLoginId String User Id
+	 * @param sAuthStr String Password
+	 * @param iPoolSize int Maximum count of pooled connections
+	 * @param bTransacted boolean Whether to use transacted sessions
+	 * @param iCommitSize int Count of messages sent in each transaction. Ignored if bTransacted is <b>false</b>
+	 * @param lCommitDelay long Maximum milliseconds that a sent message may wait to be committed. Zero for no limit.
+	 * Ignored if bTransacted is <b>false</b>
+	 * @param lBorrowTimeout long Maximum milliseconds that borrow() will wait for a free connection
+	 * @throws IllegalArgumentException If iPoolSize or iCommitSize are less than one or lCommitDelay is negative
+	 */
+	public JMSSessionPool(ConnectionFactory oCnf, Queue oQue, String sLoginId, String sAuthStr,
+	                      int iPoolSize, boolean bTransacted, int iCommitSize, long lCommitDelay, long lBorrowTimeout) throws IllegalArgumentException {
+		if (iPoolSize < 1)
+			throw new IllegalArgumentException("JMSSessionPool size must be at least 1");
+		if (iCommitSize < 1)
+			throw new IllegalArgumentException("JMSSessionPool commit size must be at least 1");
+		if (lCommitDelay < 0l)
+			throw new IllegalArgumentException("JMSSessionPool commit delay may not be negative");
+		this.oCnf = oCnf;
+		this.oQue = oQue;
+		this.sLoginId = sLoginId;
+		this.sAuthStr = sAuthStr;
+		this.iPoolSize = iPoolSize;
+		this.bTransacted = bTransacted;
+		this.iCommitSize = iCommitSize;
+		this.lCommitDelay = lCommitDelay;
+		this.lBorrowTimeout = lBorrowTimeout;
+		oPermits = new Semaphore(iPoolSize, true);
+		oIdle = new ConcurrentLinkedQueue<PooledSession>();
+		lConnections = new AtomicLong(0l);
+		lReconnections = new AtomicLong(0l);
+		lCommits = new AtomicLong(0l);
+		bClosed = false;
+
+		if (bTransacted && lCommitDelay > 0l) {
+			oCommitter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable oRun) {
+					Thread oThr = new Thread(oRun, "JMSSessionPool commit");
+					oThr.setDaemon(true);
+					return oThr;
+				}
+			});
+			oCommitter.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						commitIdle(true);
+					} catch (JMSException jmse) {
+						if (DebugFile.trace)
+							DebugFile.writeln("JMSSessionPool delayed commit failed " + jmse.getMessage());
+					}
+				}
+			}, lCommitDelay, lCommitDelay, TimeUnit.MILLISECONDS);
+		} else {
+			oCommitter = null;
+		}
+	}
+
+	/**
+	 * @return int Maximum count of pooled connections
+	 */
+	public int getPoolSize() {
+		return iPoolSize;
+	}
+
+	/**
+	 * @return boolean
+	 */
+	public boolean isTransacted() {
+		return bTransacted;
+	}
+
+	/**
+	 * @return int Count of messages sent in each transaction
+	 */
+	public int getCommitSize() {
+		return iCommitSize;
+	}
+
+	/**
+	 * @return long Maximum milliseconds that a sent message may wait to be committed. Zero if there is no limit.
+	 */
+	public long getCommitDelay() {
+		return lCommitDelay;
+	}
+
+	/**
+	 * @return int Count of pooled connections not in use
+	 */
+	public int getIdleCount() {
+		return oIdle.size();
+	}
+
+	/**
+	 * @return long Count of connections opened by this pool including reconnections
+	 */
+	public long getConnectionCount() {
+		return lConnections.get();
+	}
+
+	/**
+	 * @return long Count of connections reopened after a failure
+	 */
+	public long getReconnectionCount() {
+		return lReconnections.get();
+	}
+
+	/**
+	 * @return long Count of transactions committed
+	 */
+	public long getCommitCount() {
+		return lCommits.get();
+	}
+
+	/**
+	 * <p>Take a connection from the pool.</p>
+	 * A new connection is opened if there is no idle one and the pool is not full.
+	 * Idle connections whose provider notified a failure are reopened before being returned.
+	 * The caller must give the PooledSession back by calling release() or invalidate().
+	 * @return PooledSession
+	 * @throws JMSException If the pool is closed, no connection became free before the borrow timeout or the connection could not be opened
+	 */
+	public PooledSession borrow() throws JMSException {
+		if (bClosed)
+			throw new JMSException("JMSSessionPool is closed");
+		try {
+			if (!oPermits.tryAcquire(lBorrowTimeout, TimeUnit.MILLISECONDS))
+				throw new JMSException("Timed out after " + String.valueOf(lBorrowTimeout) + " ms waiting for a free JMS connection");
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+			throw new JMSException("Interrupted while waiting for a free JMS connection");
+		}
+		try {
+			PooledSession oPss = oIdle.poll();
+			if (null == oPss)
+				oPss = new PooledSession();
+			else if (oPss.isBroken())
+				oPss.reconnect();
+			return oPss;
+		} catch (JMSException | RuntimeException xcpt) {
+			oPermits.release();
+			throw xcpt;
+		}
+	}
+
+	/**
+	 * <p>Give back a connection to the pool.</p>
+	 * @param oPss PooledSession
+	 */
+	public void release(PooledSession oPss) {
+		if (bClosed) {
+			try {
+				oPss.commit();
+			} catch (JMSException jmse) {
+				if (DebugFile.trace)
+					DebugFile.writeln("JMSSessionPool.release() commit failed " + jmse.getMessage());
+			}
+			oPss.closeQuietly();
+		} else {
+			oIdle.offer(oPss);
+		}
+		oPermits.release();
+	}
+
+	/**
+	 * <p>Close a connection which could not be reopened and remove it from the pool.</p>
+	 * Its uncommitted messages are discarded.
+	 * @param oPss PooledSession
+	 */
+	public void invalidate(PooledSession oPss) {
+		oPss.aUncommitted.clear();
+		oPss.closeQuietly();
+		oPermits.release();
+	}
+
+	/**
+	 * <p>Commit the messages sent by all the connections which are not in use.</p>
+	 * Connections in use will be committed when they reach the commit size or at the next call to commit().
+	 * @throws JMSException
+	 */
+	public void commit() throws JMSException {
+		commitIdle(false);
+	}
+
+	/**
+	 * @param bOnlyDue boolean Commit only the connections whose first uncommitted message has waited the commit delay
+	 */
+	private void commitIdle(boolean bOnlyDue) throws JMSException {
+		if (!bTransacted)
+			return;
+		final int nIdle = oIdle.size();
+		JMSException oFirst = null;
+		for (int i = 0; i < nIdle; i++) {
+			if (!oPermits.tryAcquire())
+				break;
+			PooledSession oPss = oIdle.poll();
+			if (null == oPss) {
+				oPermits.release();
+				break;
+			}
+			try {
+				if (!bOnlyDue || oPss.isCommitDue())
+					oPss.commit();
+				oIdle.offer(oPss);
+				oPermits.release();
+			} catch (JMSException jmse) {
+				if (null == oFirst)
+					oFirst = jmse;
+				invalidate(oPss);
+			}
+		}
+		if (null != oFirst)
+			throw oFirst;
+	}
+
+	/**
+	 * <p>Commit pending messages and close all idle connections.</p>
+	 * Connections in use are committed and closed when they are released.
+	 */
+	public void close() {
+		if (bClosed)
+			return;
+		if (oCommitter != null)
+			oCommitter.shutdown();
+		try {
+			commit();
+		} catch (JMSException jmse) {
+			if (DebugFile.trace)
+				DebugFile.writeln("JMSSessionPool.close() commit failed " + jmse.getMessage());
+		}
+		bClosed = true;
+		PooledSession oPss;
+		while ((oPss = oIdle.poll()) != null)
+			oPss.closeQuietly();
+	}
+
+}
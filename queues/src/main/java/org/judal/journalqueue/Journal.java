@@ -0,0 +1,491 @@
+package org.judal.journalqueue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Append only log of frames kept in memory-mapped segment files.</p>
+ * Each frame is written as its payload length, the CRC32 of the payload and the payload itself.
+ * A length of -1 marks the end of a segment, a length of zero is space not written yet.
+ * When a frame does not fit in the current segment, a new segment is created.
+ * A position in the journal is a long with the segment number in the upper 32 bits
+ * and the offset inside the segment in the lower 32 bits, so positions can be compared as numbers.
+ * append() only copies the frame into the mapped segment. sync() forces the segment to disk,
+ * and concurrent callers of sync() share a single force, so many appends are made durable with one fsync.
+ * The checkpoint is the position of the first frame not yet replayed.
+ * It is kept in a separate file which is replaced atomically, and segments before it are deleted.
+ * On opening, frames after the last valid one of the last segment are discarded
+ * and writing continues at a new segment.
+ * Frames which cannot be replayed can be copied by quarantine() to files of their own
+ * before the checkpoint moves past them, so that they can be inspected and replayed by hand.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class Journal implements AutoCloseable {
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".jnl";
+	private static final String CHECKPOINT_FILE = "checkpoint";
+	private static final String QUARANTINE_PREFIX = "quarantine-";
+	private static final String QUARANTINE_SUFFIX = ".frm";
+
+	private static final int FRAME_HEADER_LENGTH = 8;
+	private static final int END_OF_SEGMENT = -1;
+
+	private final File oDir;
+	private final int iSegmentSize;
+
+	private final Object oSyncLock = new Object();
+	private final HashMap<Long,MappedByteBuffer> oReadSegments;
+
+	private long lWriteSegment;
+	private MappedByteBuffer oWriteBuffer;
+	private FileChannel oWriteChannel;
+	private volatile long lWritten;
+	private volatile long lDurable;
+	private volatile long lCheckpoint;
+	private final AtomicLong lSyncCount;
+	private boolean bClosed;
+
+	/**
+	 * <p>Open or create a journal.</p>
+	 * @param oDir File Directory for segment and checkpoint files. It is created if it does not exist.
+	 * @param iSegmentSize int Size in bytes of each segment file
+	 * @throws IOException
+	 * @throws IllegalArgumentException If iSegmentSize is less than 1024 bytes
+	 */
+	public Journal(File oDir, int iSegmentSize) throws IOException, IllegalArgumentException {
+		if (iSegmentSize < 1024)
+			throw new IllegalArgumentException("Journal segment size must be at least 1024 bytes");
+		this.oDir = oDir;
+		this.iSegmentSize = iSegmentSize;
+		oReadSegments = new HashMap<Long,MappedByteBuffer>();
+		lSyncCount = new AtomicLong(0l);
+		bClosed = false;
+		if (!oDir.exists() && !oDir.mkdirs())
+			throw new IOException("Could not create journal directory " + oDir.getAbsolutePath());
+		recover();
+	}
+
+	private void recover() throws IOException {
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin Journal.recover() at " + oDir.getAbsolutePath());
+			DebugFile.incIdent();
+		}
+
+		lCheckpoint = readCheckpoint();
+		long lLast = -1l;
+		for (File oSeg : listSegments()) {
+			final long lSeg = segmentNumber(oSeg);
+			if (lSeg < segment(lCheckpoint))
+				deleteSegment(lSeg);
+			else if (lSeg > lLast)
+				lLast = lSeg;
+		}
+
+		if (lLast >= 0) {
+			// Find the end of the valid frames of the last segment and close it with an end of segment mark
+			MappedByteBuffer oLast = map(lLast, false, 0);
+			int iEnd = 0;
+			for (;;) {
+				if (iEnd + FRAME_HEADER_LENGTH > oLast.capacity())
+					break;
+				final int iLen = oLast.getInt(iEnd);
+				if (iLen <= 0 || iEnd + FRAME_HEADER_LENGTH + iLen > oLast.capacity())
+					break;
+				if (oLast.getInt(iEnd + 4) != checksum(oLast, iEnd + FRAME_HEADER_LENGTH, iLen))
+					break;
+				iEnd += FRAME_HEADER_LENGTH + iLen;
+			}
+			if (iEnd + 4 <= oLast.capacity()) {
+				oLast.putInt(iEnd, END_OF_SEGMENT);
+				oLast.force();
+			}
+			if (DebugFile.trace)
+				DebugFile.writeln("last segment " + String.valueOf(lLast) + " ends at " + String.valueOf(iEnd));
+		}
+
+		lWriteSegment = Math.max(lLast, segment(lCheckpoint)) + 1l;
+		openWriteSegment(lWriteSegment, iSegmentSize);
+		lWritten = position(lWriteSegment, 0);
+		lDurable = lWritten;
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End Journal.recover() checkpoint " + toString(lCheckpoint) + " writing at " + toString(lWritten));
+		}
+	}
+
+	/**
+	 * @return File Journal directory
+	 */
+	public File getDirectory() {
+		return oDir;
+	}
+
+	/**
+	 * @return int Size in bytes of each segment
+	 */
+	public int getSegmentSize() {
+		return iSegmentSize;
+	}
+
+	/**
+	 * @return long Position after the last appended frame
+	 */
+	public long getWrittenPosition() {
+		return lWritten;
+	}
+
+	/**
+	 * @return long Position up to which all frames have been forced to disk
+	 */
+	public long getDurablePosition() {
+		return lDurable;
+	}
+
+	/**
+	 * @return long Position of the first frame not yet replayed
+	 */
+	public long getCheckpoint() {
+		return lCheckpoint;
+	}
+
+	/**
+	 * @return long Count of times that a segment has been forced to disk by sync()
+	 */
+	public long getSyncCount() {
+		return lSyncCount.get();
+	}
+
+	/**
+	 * <p>Append a frame.</p>
+	 * The frame is not durable until sync() is called with the returned position or a greater one.
+	 * @param aPayload byte[]
+	 * @return long Position after the appended frame
+	 * @throws IOException
+	 * @throws IllegalStateException If the journal is closed
+	 */
+	public long append(byte[] aPayload) throws IOException, IllegalStateException {
+		final int iFrameLen = FRAME_HEADER_LENGTH + aPayload.length;
+		synchronized (this) {
+			if (bClosed)
+				throw new IllegalStateException("Journal is closed");
+			int iOffset = offset(lWritten);
+			if (iOffset + iFrameLen > oWriteBuffer.capacity()) {
+				if (iOffset + 4 <= oWriteBuffer.capacity())
+					oWriteBuffer.putInt(iOffset, END_OF_SEGMENT);
+				// Previous segments must be durable before frames of the next one are reported as durable
+				oWriteBuffer.force();
+				lSyncCount.incrementAndGet();
+				oWriteChannel.close();
+				lWriteSegment++;
+				openWriteSegment(lWriteSegment, Math.max(iSegmentSize, iFrameLen + 4));
+				iOffset = 0;
+			}
+			final CRC32 oCrc = new CRC32();
+			oCrc.update(aPayload, 0, aPayload.length);
+			oWriteBuffer.position(iOffset + 4);
+			oWriteBuffer.putInt((int) oCrc.getValue());
+			oWriteBuffer.put(aPayload);
+			oWriteBuffer.putInt(iOffset, aPayload.length);
+			lWritten = position(lWriteSegment, iOffset + iFrameLen);
+			return lWritten;
+		}
+	}
+
+	/**
+	 * <p>Force frames to disk up to a given position.</p>
+	 * If another thread is already forcing the segment, this call waits for it and returns
+	 * without forcing again when that force already covered lPosition.
+	 * Segments before the current one are forced by append() when it moves to a new segment.
+	 * @param lPosition long Position returned by append()
+	 * @throws IOException
+	 */
+	public void sync(long lPosition) throws IOException {
+		if (lDurable >= lPosition)
+			return;
+		synchronized (oSyncLock) {
+			if (lDurable >= lPosition)
+				return;
+			final MappedByteBuffer oBuff;
+			final long lUpTo;
+			synchronized (this) {
+				oBuff = oWriteBuffer;
+				lUpTo = lWritten;
+			}
+			oBuff.force();
+			lSyncCount.incrementAndGet();
+			if (lUpTo > lDurable)
+				lDurable = lUpTo;
+		}
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * <p>Wait until there are durable frames after a position.</p>
+	 * @param lPosition long
+	 * @param lTimeout long Milliseconds
+	 * @return boolean <b>true</b> if there are durable frames after lPosition
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitFrames(long lPosition, long lTimeout) throws InterruptedException {
+		if (lDurable <= lPosition && !bClosed)
+			wait(lTimeout);
+		return lDurable > lPosition;
+	}
+
+	/**
+	 * <p>Read the frame at a position.</p>
+	 * Only frames already forced to disk are read, so a frame is never replayed
+	 * if it could be lost by a crash before the checkpoint that follows it is written.
+	 * @param lPosition long Position of the frame or position returned by append() for the previous frame
+	 * @param oNext long[] Output parameter. If not <b>null</b>, oNext[0] is set to the position after the frame read
+	 * @return byte[] Payload or <b>null</b> if there are no more frames
+	 * @throws IOException If the frame is corrupted
+	 */
+	public byte[] read(long lPosition, long[] oNext) throws IOException {
+		final long lLimit = lDurable;
+		long lPos = lPosition;
+		while (lPos < lLimit) {
+			final long lSeg = segment(lPos);
+			final int iOffset = offset(lPos);
+			final MappedByteBuffer oBuff = readSegment(lSeg);
+			if (null == oBuff || iOffset + 4 > oBuff.capacity() || oBuff.getInt(iOffset) == END_OF_SEGMENT) {
+				lPos = position(lSeg + 1l, 0);
+				continue;
+			}
+			final int iLen = oBuff.getInt(iOffset);
+			if (iLen <= 0 || iOffset + FRAME_HEADER_LENGTH + iLen > oBuff.capacity())
+				throw new IOException("Journal frame at " + toString(lPos) + " has an invalid length " + String.valueOf(iLen));
+			if (oBuff.getInt(iOffset + 4) != checksum(oBuff, iOffset + FRAME_HEADER_LENGTH, iLen))
+				throw new IOException("Journal frame at " + toString(lPos) + " has an invalid checksum");
+			final byte[] aPayload = new byte[iLen];
+			final ByteBuffer oView = oBuff.duplicate();
+			oView.position(iOffset + FRAME_HEADER_LENGTH);
+			oView.get(aPayload);
+			if (oNext != null)
+				oNext[0] = position(lSeg, iOffset + FRAME_HEADER_LENGTH + iLen);
+			return aPayload;
+		}
+		if (oNext != null)
+			oNext[0] = lPos;
+		return null;
+	}
+
+	/**
+	 * <p>Record that all frames before a position have been replayed.</p>
+	 * The checkpoint file is replaced atomically and the segments before the one of lPosition are deleted.
+	 * @param lPosition long
+	 * @throws IOException
+	 */
+	public void checkpoint(long lPosition) throws IOException {
+		if (lPosition <= lCheckpoint)
+			return;
+		final File oTmp = new File(oDir, CHECKPOINT_FILE + ".tmp");
+		try (RandomAccessFile oRaf = new RandomAccessFile(oTmp, "rw")) {
+			oRaf.setLength(0);
+			oRaf.writeLong(lPosition);
+			oRaf.writeLong(~lPosition);
+			oRaf.getFD().sync();
+		}
+		Files.move(oTmp.toPath(), new File(oDir, CHECKPOINT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		final long lOld = segment(lCheckpoint);
+		lCheckpoint = lPosition;
+		for (long lSeg = lOld; lSeg < segment(lPosition); lSeg++)
+			deleteSegment(lSeg);
+	}
+
+	/**
+	 * <p>Keep the payload of a frame which cannot be replayed.</p>
+	 * The payload is written to a file named after the frame position in the journal directory
+	 * and forced to disk, so the frame is not lost when a later checkpoint deletes its segment.
+	 * @param lPosition long Position of the frame
+	 * @param aPayload byte[] Payload returned by read()
+	 * @return File Quarantine file
+	 * @throws IOException
+	 */
+	public File quarantine(long lPosition, byte[] aPayload) throws IOException {
+		final File oFrm = new File(oDir, QUARANTINE_PREFIX + String.format("%010d-%010d", segment(lPosition), offset(lPosition)) + QUARANTINE_SUFFIX);
+		try (RandomAccessFile oRaf = new RandomAccessFile(oFrm, "rw")) {
+			oRaf.setLength(0);
+			oRaf.write(aPayload);
+			oRaf.getFD().sync();
+		}
+		if (DebugFile.trace)
+			DebugFile.writeln("Journal frame at " + toString(lPosition) + " moved to " + oFrm.getAbsolutePath());
+		return oFrm;
+	}
+
+	/**
+	 * @return File[] Files written by quarantine()
+	 */
+	public File[] listQuarantined() {
+		File[] aFrms = oDir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File oFile) {
+				return oFile.getName().startsWith(QUARANTINE_PREFIX) && oFile.getName().endsWith(QUARANTINE_SUFFIX);
+			}
+		});
+		return null == aFrms ? new File[0] : aFrms;
+	}
+
+	/**
+	 * <p>Force the current segment to disk and close the journal.</p>
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (bClosed)
+				return;
+			bClosed = true;
+			oWriteBuffer.force();
+			lDurable = lWritten;
+			oWriteChannel.close();
+			notifyAll();
+		}
+		synchronized (oReadSegments) {
+			oReadSegments.clear();
+		}
+	}
+
+	private void openWriteSegment(long lSeg, int iSize) throws IOException {
+		oWriteChannel = new RandomAccessFile(segmentFile(lSeg), "rw").getChannel();
+		oWriteBuffer = oWriteChannel.map(FileChannel.MapMode.READ_WRITE, 0, iSize);
+	}
+
+	private MappedByteBuffer readSegment(long lSeg) throws IOException {
+		synchronized (oReadSegments) {
+			MappedByteBuffer oBuff = oReadSegments.get(lSeg);
+			if (null == oBuff) {
+				if (!segmentFile(lSeg).exists())
+					return null;
+				oBuff = map(lSeg, true, 0);
+				// Keep only the mappings of the segments after the checkpoint
+				for (Long oOld : oReadSegments.keySet().toArray(new Long[oReadSegments.size()]))
+					if (oOld.longValue() < segment(lCheckpoint))
+						oReadSegments.remove(oOld);
+				oReadSegments.put(lSeg, oBuff);
+			}
+			return oBuff;
+		}
+	}
+
+	private MappedByteBuffer map(long lSeg, boolean bReadOnly, int iSize) throws IOException {
+		try (RandomAccessFile oRaf = new RandomAccessFile(segmentFile(lSeg), bReadOnly ? "r" : "rw")) {
+			final long lLen = iSize > 0 ? iSize : oRaf.length();
+			return oRaf.getChannel().map(bReadOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, lLen);
+		}
+	}
+
+	private long readCheckpoint() throws IOException {
+		final File oChk = new File(oDir, CHECKPOINT_FILE);
+		if (!oChk.exists())
+			return 0l;
+		try (RandomAccessFile oRaf = new RandomAccessFile(oChk, "r")) {
+			final long lPos = oRaf.readLong();
+			if (oRaf.readLong() != ~lPos)
+				throw new IOException("Journal checkpoint file " + oChk.getAbsolutePath() + " is corrupted");
+			return lPos;
+		}
+	}
+
+	private void deleteSegment(long lSeg) {
+		synchronized (oReadSegments) {
+			oReadSegments.remove(lSeg);
+		}
+		final File oSeg = segmentFile(lSeg);
+		if (oSeg.exists() && !oSeg.delete() && DebugFile.trace)
+			DebugFile.writeln("Journal could not delete " + oSeg.getAbsolutePath());
+	}
+
+	private File[] listSegments() {
+		File[] aSegs = oDir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File oFile) {
+				return oFile.getName().startsWith(SEGMENT_PREFIX) && oFile.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		return null == aSegs ? new File[0] : aSegs;
+	}
+
+	private File segmentFile(long lSeg) {
+		return new File(oDir, SEGMENT_PREFIX + String.format("%010d", lSeg) + SEGMENT_SUFFIX);
+	}
+
+	private static long segmentNumber(File oSeg) {
+		final String sName = oSeg.getName();
+		return Long.parseLong(sName.substring(SEGMENT_PREFIX.length(), sName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private static int checksum(ByteBuffer oBuff, int iOffset, int iLen) {
+		final byte[] aData = new byte[iLen];
+		final ByteBuffer oView = oBuff.duplicate();
+		oView.position(iOffset);
+		oView.get(aData);
+		final CRC32 oCrc = new CRC32();
+		oCrc.update(aData, 0, iLen);
+		return (int) oCrc.getValue();
+	}
+
+	/**
+	 * @param lSegment long Segment number
+	 * @param iOffset int Offset inside the segment
+	 * @return long Journal position
+	 */
+	public static long position(long lSegment, int iOffset) {
+		return (lSegment << 32) | (iOffset & 0xFFFFFFFFl);
+	}
+
+	/**
+	 * @param lPosition long Journal position
+	 * @return long Segment number
+	 */
+	public static long segment(long lPosition) {
+		return lPosition >>> 32;
+	}
+
+	/**
+	 * @param lPosition long Journal position
+	 * @return int Offset inside the segment
+	 */
+	public static int offset(long lPosition) {
+		return (int) (lPosition & 0xFFFFFFFFl);
+	}
+
+	/**
+	 * @param lPosition long Journal position
+	 * @return String Segment number and offset separated by a colon
+	 */
+	public static String toString(long lPosition) {
+		return String.valueOf(segment(lPosition)) + ":" + String.valueOf(offset(lPosition));
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.judal.journalqueue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import javax.jms.JMSException;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.storage.table.TableDataSource;
+
+/**
+ * <p>Payload of a journal frame.</p>
+ * A frame holds the format version, the command, the timestamp, the keys of delete commands
+ * and the serialized Record, Record[], Pair&lt;Record,Param[]&gt; or Triplet&lt;Record,Param[],Param[]&gt;.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+final class JournalFrame {
+
+	private static final byte VERSION = (byte) 1;
+
+	private JournalFrame() { }
+
+	/**
+	 * @param iCommand int One of ObjectMessageImpl.COMMAND_* constants
+	 * @param oObj Serializable
+	 * @param sKeys String Keys of the Records to be deleted separated by ` or <b>null</b>
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	static byte[] encode(int iCommand, Serializable oObj, String sKeys) throws IOException {
+		ByteArrayOutputStream oBytes = new ByteArrayOutputStream(256);
+		DataOutputStream oOut = new DataOutputStream(oBytes);
+		oOut.writeByte(VERSION);
+		oOut.writeInt(iCommand);
+		oOut.writeLong(System.currentTimeMillis());
+		oOut.writeBoolean(sKeys != null);
+		if (sKeys != null)
+			oOut.writeUTF(sKeys);
+		oOut.flush();
+		ObjectOutputStream oObjs = new ObjectOutputStream(oBytes);
+		oObjs.writeObject(oObj);
+		oObjs.close();
+		return oBytes.toByteArray();
+	}
+
+	/**
+	 * @param aPayload byte[]
+	 * @param oDts TableDataSource where the message will be performed
+	 * @return ObjectMessageImpl
+	 * @throws IOException If the payload is not a valid frame or its object cannot be deserialized
+	 */
+	static ObjectMessageImpl decode(byte[] aPayload, TableDataSource oDts) throws IOException {
+		ByteArrayInputStream oBytes = new ByteArrayInputStream(aPayload);
+		DataInputStream oIn = new DataInputStream(oBytes);
+		if (oIn.readByte() != VERSION)
+			throw new IOException("Unsupported journal frame version");
+		final int iCommand = oIn.readInt();
+		final long lTimestamp = oIn.readLong();
+		final String sKeys = oIn.readBoolean() ? oIn.readUTF() : null;
+		ObjectMessageImpl oMsg = new ObjectMessageImpl(oDts);
+		try (ObjectInputStream oObjs = new ObjectInputStream(oBytes)) {
+			oMsg.setObject((Serializable) oObjs.readObject());
+			oMsg.setIntProperty("command", iCommand);
+			oMsg.setJMSTimestamp(lTimestamp);
+			if (sKeys != null)
+				oMsg.setStringProperty("keys", sKeys);
+		} catch (ClassNotFoundException | ClassCastException | JMSException xcpt) {
+			throw new IOException(xcpt.getClass().getName() + " " + xcpt.getMessage(), xcpt);
+		}
+		return oMsg;
+	}
+
+}
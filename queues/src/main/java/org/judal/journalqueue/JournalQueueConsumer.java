@@ -0,0 +1,409 @@
+package org.judal.journalqueue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.jdo.JDOException;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.ramqueue.RAMQueueBatch;
+import org.judal.storage.DataSource;
+import org.judal.storage.Engine;
+import org.judal.storage.queue.RecordQueueConsumer;
+import org.judal.storage.table.TableDataSource;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>RecordQueueConsumer which replays the frames of a Journal into a TableDataSource.</p>
+ * A single thread reads the durable frames after the journal checkpoint, performs them
+ * in groups of up to getBatchSize() messages as a RAMQueueBatch and then moves the checkpoint
+ * after the last frame performed, which deletes the segments already replayed.
+ * If the process stops before a checkpoint is written, the frames after the previous checkpoint
+ * are performed again when the journal is reopened, so each frame is performed at least once.
+ * The checkpoint never moves past a frame which failed: the frames of a batch which could not be performed
+ * are performed again, in order, after waiting RETRY_DELAY milliseconds, a delay which is doubled
+ * after each failed attempt up to MAX_RETRY_DELAY. Meanwhile no further frames are replayed.
+ * If RETRY_LIMIT is greater than zero, the frames which still fail after that many attempts are copied
+ * to quarantine files by Journal.quarantine() and replay goes on. Frames which cannot be decoded
+ * are moved to quarantine at once, because performing them again would not help.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class JournalQueueConsumer implements RecordQueueConsumer, Runnable {
+
+	/**
+	 * Property name for the maximum count of frames performed in one transaction
+	 */
+	public static final String BATCH_SIZE = "journalbatchsize";
+
+	/**
+	 * Property name for the milliseconds to wait before performing again the frames that failed
+	 */
+	public static final String RETRY_DELAY = "journalretrydelay";
+
+	/**
+	 * Property name for the maximum count of attempts to perform again the frames that failed
+	 * before moving them to quarantine. Zero, the default, retries forever.
+	 */
+	public static final String RETRY_LIMIT = "journalretrylimit";
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final long DEFAULT_RETRY_DELAY = 1000l;
+
+	public static final long MAX_RETRY_DELAY = 60000l;
+
+	private final Journal oJnl;
+	private TableDataSource oDts;
+	private int iBatchSize;
+	private long lRetryDelay;
+	private int iRetryLimit;
+	private Thread oThread;
+	private volatile boolean bRunning;
+	private volatile boolean bDrain;
+	private volatile long lReplayed;
+	private volatile long lFramesReplayed;
+	private volatile long lFramesSkipped;
+	private volatile long lRetries;
+	private volatile Exception oError;
+
+	/**
+	 * @param oJnl Journal
+	 * @param oDts TableDataSource where frames are replayed. If <b>null</b> it is taken from the Engine given to start()
+	 */
+	public JournalQueueConsumer(Journal oJnl, TableDataSource oDts) {
+		this.oJnl = oJnl;
+		this.oDts = oDts;
+		iBatchSize = DEFAULT_BATCH_SIZE;
+		lRetryDelay = DEFAULT_RETRY_DELAY;
+		iRetryLimit = 0;
+		lReplayed = oJnl.getCheckpoint();
+		lFramesReplayed = lFramesSkipped = lRetries = 0l;
+		bRunning = false;
+	}
+
+	/**
+	 * <p>Start the replay thread.</p>
+	 * @param engine Engine&lt;? extends DataSource&gt; Used to get the TableDataSource if none was given to the constructor
+	 * @param properties Map&lt;String,String&gt; May contain BATCH_SIZE, RETRY_DELAY and RETRY_LIMIT
+	 * @throws JDOException If BATCH_SIZE or RETRY_DELAY are not positive integers or RETRY_LIMIT is negative
+	 * @throws IllegalStateException If the consumer is already started
+	 */
+	@Override
+	public synchronized void start(Engine<? extends DataSource> engine, Map<String,String> properties) throws JDOException, IllegalStateException {
+		if (bRunning)
+			throw new IllegalStateException("JournalQueueConsumer is already started");
+		if (properties != null) {
+			try {
+				if (properties.containsKey(BATCH_SIZE)) {
+					iBatchSize = Integer.parseInt(properties.get(BATCH_SIZE).trim());
+					if (iBatchSize < 1)
+						throw new NumberFormatException(BATCH_SIZE + " must be at least 1");
+				}
+				if (properties.containsKey(RETRY_DELAY)) {
+					lRetryDelay = Long.parseLong(properties.get(RETRY_DELAY).trim());
+					if (lRetryDelay < 1l)
+						throw new NumberFormatException(RETRY_DELAY + " must be at least 1");
+				}
+				if (properties.containsKey(RETRY_LIMIT)) {
+					iRetryLimit = Integer.parseInt(properties.get(RETRY_LIMIT).trim());
+					if (iRetryLimit < 0)
+						throw new NumberFormatException(RETRY_LIMIT + " may not be negative");
+				}
+			} catch (NumberFormatException xcpt) {
+				throw new JDOException("JournalQueueConsumer.start() " + xcpt.getMessage(), xcpt);
+			}
+		}
+		if (null == oDts)
+			oDts = (TableDataSource) engine.getDataSource(properties);
+		oError = null;
+		bRunning = true;
+		bDrain = true;
+		oThread = new Thread(this, "JournalQueueConsumer " + oJnl.getDirectory().getName());
+		oThread.setDaemon(true);
+		oThread.start();
+	}
+
+	/**
+	 * <p>Stop the replay thread after performing the durable frames already in the journal.</p>
+	 * @throws JDOException
+	 */
+	@Override
+	public void stop() throws JDOException {
+		stop(true);
+	}
+
+	/**
+	 * <p>Stop the replay thread.</p>
+	 * @param bDrainJournal boolean If <b>false</b> the thread stops after its current batch
+	 * and the remaining frames will be replayed when the journal is opened again
+	 * @throws JDOException
+	 */
+	public void stop(boolean bDrainJournal) throws JDOException {
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin JournalQueueConsumer.stop(" + String.valueOf(bDrainJournal) + ")");
+			DebugFile.incIdent();
+		}
+		final Thread oThr;
+		synchronized (this) {
+			oThr = oThread;
+			bDrain = bDrainJournal;
+			bRunning = false;
+			oThread = null;
+		}
+		if (oThr != null) {
+			synchronized (oJnl) {
+				oJnl.notifyAll();
+			}
+			try {
+				oThr.join();
+			} catch (InterruptedException xcpt) {
+				Thread.currentThread().interrupt();
+				throw new JDOException("JournalQueueConsumer.stop() interrupted", xcpt);
+			}
+		}
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End JournalQueueConsumer.stop() replayed up to " + Journal.toString(lReplayed));
+		}
+	}
+
+	/**
+	 * @return boolean <b>true</b> if the replay thread is running
+	 */
+	public boolean isRunning() {
+		return bRunning;
+	}
+
+	/**
+	 * @return int Maximum count of frames performed in one transaction
+	 */
+	public int getBatchSize() {
+		return iBatchSize;
+	}
+
+	/**
+	 * @return long Journal position up to which frames have been performed
+	 */
+	public long getReplayedPosition() {
+		return lReplayed;
+	}
+
+	/**
+	 * @return long Count of frames performed since start
+	 */
+	public long getReplayedCount() {
+		return lFramesReplayed;
+	}
+
+	/**
+	 * @return long Count of frames which could not be decoded or performed and were moved to quarantine
+	 */
+	public long getSkippedCount() {
+		return lFramesSkipped;
+	}
+
+	/**
+	 * @return long Count of attempts to perform again frames that failed
+	 */
+	public long getRetryCount() {
+		return lRetries;
+	}
+
+	/**
+	 * @return Exception that stopped the replay thread or <b>null</b> if it was not stopped by an error
+	 */
+	public Exception getError() {
+		return oError;
+	}
+
+	/**
+	 * <p>Wait until the frames before a position have been performed.</p>
+	 * @param lPosition long Position returned by Journal.append()
+	 * @param lTimeout long Maximum milliseconds to wait. Zero means wait forever.
+	 * @return boolean <b>true</b> if the frames were performed, <b>false</b> if the timeout expired or the consumer stopped
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitReplayed(long lPosition, long lTimeout) throws InterruptedException {
+		final long lDeadline = System.currentTimeMillis() + lTimeout;
+		while (lReplayed < lPosition && (bRunning || oThread != null)) {
+			if (lTimeout > 0) {
+				final long lLeft = lDeadline - System.currentTimeMillis();
+				if (lLeft <= 0)
+					break;
+				wait(lLeft);
+			} else {
+				wait();
+			}
+		}
+		return lReplayed >= lPosition;
+	}
+
+	/**
+	 * <p>Replay loop.</p>
+	 */
+	@Override
+	public void run() {
+		if (DebugFile.trace)
+			DebugFile.writeln("JournalQueueConsumer replaying from " + Journal.toString(lReplayed));
+
+		long lPos = lReplayed;
+		final long[] aNext = new long[1];
+		ArrayList<ObjectMessageImpl> aMsgs = new ArrayList<ObjectMessageImpl>(iBatchSize);
+		ArrayList<byte[]> aPayloads = new ArrayList<byte[]>(iBatchSize);
+		ArrayList<Long> aStarts = new ArrayList<Long>(iBatchSize);
+
+		try {
+			for (;;) {
+				// Look at the stop flag before reading, so that the frames made durable before stop() was called are replayed
+				final boolean bStopping = !bRunning;
+				aMsgs.clear();
+				aPayloads.clear();
+				aStarts.clear();
+				long lEnd = lPos;
+				while (aMsgs.size() < iBatchSize) {
+					final byte[] aPayload = oJnl.read(lEnd, aNext);
+					if (null == aPayload) {
+						// Skip the end of segment marks after the last frame
+						lEnd = aNext[0];
+						break;
+					}
+					try {
+						aMsgs.add(JournalFrame.decode(aPayload, oDts));
+						aPayloads.add(aPayload);
+						aStarts.add(lEnd);
+					} catch (IOException xcpt) {
+						if (DebugFile.trace)
+							DebugFile.writeln("JournalQueueConsumer frame at " + Journal.toString(lEnd) + " cannot be decoded " + xcpt.getMessage());
+						oJnl.quarantine(lEnd, aPayload);
+						lFramesSkipped++;
+					}
+					lEnd = aNext[0];
+				}
+
+				final long lSkipped = lFramesSkipped;
+				final BitSet oFailed;
+				if (aMsgs.size() == 1) {
+					oFailed = new BitSet(1);
+					if (!aMsgs.get(0).execute())
+						oFailed.set(0);
+				} else if (aMsgs.size() > 1) {
+					oFailed = new RAMQueueBatch(aMsgs, null).execute();
+				} else {
+					oFailed = new BitSet(0);
+				}
+
+				final boolean bDone = oFailed.isEmpty() || retry(lPos, aMsgs, aPayloads, aStarts, oFailed);
+				// Frames moved to quarantine after failing were decoded, so they are among aMsgs but were not performed
+				lFramesReplayed += aMsgs.size() - oFailed.cardinality() - (lFramesSkipped - lSkipped);
+				if (!bDone)
+					break;
+
+				if (lEnd > lPos) {
+					oJnl.checkpoint(lEnd);
+					lPos = lEnd;
+					setReplayed(lEnd);
+				} else if (bStopping) {
+					break;
+				} else {
+					oJnl.awaitFrames(lPos, 1000l);
+				}
+
+				if (!bRunning && !bDrain)
+					break;
+			}
+		} catch (IOException | InterruptedException xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln("JournalQueueConsumer stopped by " + xcpt.getClass().getName() + " " + xcpt.getMessage());
+				DebugFile.writeStackTrace(xcpt);
+			}
+			oError = xcpt;
+		} finally {
+			synchronized (this) {
+				bRunning = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * <p>Perform again the messages of a batch that failed until all of them are performed or moved to quarantine.</p>
+	 * The checkpoint is moved up to the first frame that failed before each wait.
+	 * Messages are performed again in their original order and each attempt ends at the first message that fails.
+	 * @param lPos long Checkpoint before the batch
+	 * @param aMsgs List&lt;ObjectMessageImpl&gt; Messages of the batch
+	 * @param aPayloads List&lt;byte[]&gt; Payload of the frame of each message
+	 * @param aStarts List&lt;Long&gt; Position from which the frame of each message was read
+	 * @param oFailed BitSet Index of the messages that failed. Cleared as they are performed or moved to quarantine.
+	 * @return boolean <b>true</b> if no message is left to perform, <b>false</b> if the consumer was stopped before
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private boolean retry(long lPos, List<ObjectMessageImpl> aMsgs, List<byte[]> aPayloads, List<Long> aStarts, BitSet oFailed) throws IOException, InterruptedException {
+		long lDelay = lRetryDelay;
+		int nAttempts = 0;
+		while (!oFailed.isEmpty()) {
+			final int iFirst = oFailed.nextSetBit(0);
+			final long lFirst = aStarts.get(iFirst);
+			if (lFirst > lPos) {
+				oJnl.checkpoint(lFirst);
+				setReplayed(lFirst);
+			}
+
+			if (iRetryLimit > 0 && nAttempts >= iRetryLimit) {
+				for (int m = iFirst; m >= 0; m = oFailed.nextSetBit(m + 1)) {
+					if (DebugFile.trace)
+						DebugFile.writeln("JournalQueueConsumer frame at " + Journal.toString(aStarts.get(m)) + " failed " + String.valueOf(nAttempts + 1) + " times");
+					oJnl.quarantine(aStarts.get(m), aPayloads.get(m));
+					lFramesSkipped++;
+				}
+				oFailed.clear();
+				break;
+			}
+
+			if (DebugFile.trace)
+				DebugFile.writeln("JournalQueueConsumer " + String.valueOf(oFailed.cardinality()) + " frames from " + Journal.toString(lFirst) + " failed, retrying in " + String.valueOf(lDelay) + " ms");
+
+			// stop() notifies the journal after clearing bRunning
+			final long lDeadline = System.currentTimeMillis() + lDelay;
+			synchronized (oJnl) {
+				for (long lLeft = lDelay; lLeft > 0 && bRunning; lLeft = lDeadline - System.currentTimeMillis())
+					oJnl.wait(lLeft);
+			}
+			if (!bRunning)
+				return false;
+
+			nAttempts++;
+			lRetries++;
+			for (int m = iFirst; m >= 0; m = oFailed.nextSetBit(m + 1)) {
+				if (!aMsgs.get(m).execute())
+					break;
+				oFailed.clear(m);
+			}
+			lDelay = Math.min(lDelay * 2l, Math.max(lRetryDelay, MAX_RETRY_DELAY));
+		}
+		return true;
+	}
+
+	private synchronized void setReplayed(long lPosition) {
+		lReplayed = lPosition;
+		notifyAll();
+	}
+
+}
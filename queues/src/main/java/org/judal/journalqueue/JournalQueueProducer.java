@@ -0,0 +1,377 @@
+package org.judal.journalqueue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOUserException;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.storage.DataSource;
+import org.judal.storage.Engine;
+import org.judal.storage.EngineFactory;
+import org.judal.storage.Param;
+import org.judal.storage.queue.RecordQueueConsumer;
+import org.judal.storage.queue.RecordQueueProducer;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.TableDataSource;
+
+import com.knowgate.debug.DebugFile;
+import com.knowgate.tuples.Pair;
+import com.knowgate.tuples.Triplet;
+
+/**
+ * <p>RecordQueueProducer which writes operations to a durable Journal.</p>
+ * Each operation is appended to the memory-mapped journal as one frame
+ * and replayed into the TableDataSource by a JournalQueueConsumer started by this producer.
+ * By default each call returns after its frame has been forced to disk.
+ * Concurrent calls share the same fsync, so throughput grows with the count of producer threads.
+ * If SYNC_INTERVAL is greater than zero, calls return as soon as the frame is in the mapped segment
+ * and the journal is forced to disk every SYNC_INTERVAL milliseconds, so a crash of the operating system
+ * may lose the operations of the last interval but a crash of the JVM does not lose any.
+ * Operations left in the journal when the process stops are replayed the next time that a producer
+ * is created over the same directory. Operations with property "synchronous" set to "true"
+ * return after their frame and all the frames before it have been replayed.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class JournalQueueProducer implements RecordQueueProducer {
+
+	/**
+	 * Property name for the journal directory. Required.
+	 */
+	public static final String DIRECTORY = "journaldir";
+
+	/**
+	 * Property name for the size in bytes of journal segment files
+	 */
+	public static final String SEGMENT_SIZE = "journalsegmentsize";
+
+	/**
+	 * Property name for the milliseconds between forces of the journal to disk.
+	 * Zero, the default, forces the journal before returning from each call.
+	 */
+	public static final String SYNC_INTERVAL = "journalsyncinterval";
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private Journal oJnl;
+	private JournalQueueConsumer oCon;
+	private TableDataSource oDts;
+	private long lSyncInterval;
+	private ScheduledExecutorService oSyncer;
+
+	/**
+	 * <p>Constructor.</p>
+	 * Open the journal, create a DataSource and start a JournalQueueConsumer which replays the journal into it.
+	 * @param engineName String
+	 * @param properties Map&lt;String,String&gt; for DataSource creation and journal settings.
+	 * @throws JDOException If the journal cannot be opened
+	 * @throws JDOUserException If DIRECTORY property is not set
+	 * @throws InstantiationException
+	 */
+	public JournalQueueProducer(String engineName, Map<String,String> properties)
+			throws JDOException, JDOUserException, InstantiationException {
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin new JournalQueueProducer(" + engineName + ")");
+			DebugFile.incIdent();
+		}
+
+		final String sDir = properties.get(DIRECTORY);
+		if (null == sDir || sDir.trim().length() == 0)
+			throw new JDOUserException("JournalQueueProducer property " + DIRECTORY + " is required");
+
+		try {
+			final int iSegmentSize = properties.containsKey(SEGMENT_SIZE) ? Integer.parseInt(properties.get(SEGMENT_SIZE).trim()) : DEFAULT_SEGMENT_SIZE;
+			lSyncInterval = properties.containsKey(SYNC_INTERVAL) ? Long.parseLong(properties.get(SYNC_INTERVAL).trim()) : 0l;
+			oJnl = new Journal(new File(sDir.trim()), iSegmentSize);
+		} catch (IOException | IllegalArgumentException xcpt) {
+			throw new JDOException("JournalQueueProducer " + xcpt.getClass().getName() + " " + xcpt.getMessage(), xcpt);
+		}
+
+		Engine<? extends DataSource> oEng = null;
+		try {
+			oEng = EngineFactory.getEngine(engineName);
+			oDts = (TableDataSource) oEng.getDataSource(properties);
+		} catch (NullPointerException | IllegalAccessException xcpt) {
+			closeJournal();
+			throw new JDOException(xcpt.getClass().getName() + " " + xcpt.getMessage(), xcpt);
+		}
+
+		oCon = new JournalQueueConsumer(oJnl, oDts);
+		oCon.start(oEng, properties);
+
+		if (lSyncInterval > 0) {
+			oSyncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable oRun) {
+					Thread oThr = new Thread(oRun, "JournalQueueProducer sync");
+					oThr.setDaemon(true);
+					return oThr;
+				}
+			});
+			oSyncer.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						oJnl.sync(oJnl.getWrittenPosition());
+					} catch (IOException xcpt) {
+						if (DebugFile.trace)
+							DebugFile.writeln("JournalQueueProducer sync failed " + xcpt.getMessage());
+					}
+				}
+			}, lSyncInterval, lSyncInterval, TimeUnit.MILLISECONDS);
+		} else {
+			oSyncer = null;
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End new JournalQueueProducer() at " + oJnl.getDirectory().getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return RecordQueueConsumer JournalQueueConsumer which replays the journal
+	 */
+	public RecordQueueConsumer consumer() {
+		return oCon;
+	}
+
+	/**
+	 * @return Journal
+	 */
+	public Journal journal() {
+		return oJnl;
+	}
+
+	private void enqueue(int iCommand, Serializable oObj, String sKeys, Properties oProps) throws JDOException, IllegalStateException {
+		if (oCon == null)
+			throw new IllegalStateException("Queue is closed");
+		final boolean bSync = oProps != null && oProps.getProperty("synchronous", "false").equals("true");
+		final long lPos;
+		try {
+			lPos = oJnl.append(JournalFrame.encode(iCommand, oObj, sKeys));
+			if (lSyncInterval <= 0 || bSync)
+				oJnl.sync(lPos);
+		} catch (IOException xcpt) {
+			throw new JDOException("JournalQueueProducer " + xcpt.getMessage(), xcpt);
+		}
+		if (bSync) {
+			try {
+				oCon.awaitReplayed(lPos, 0l);
+			} catch (InterruptedException xcpt) {
+				Thread.currentThread().interrupt();
+				throw new JDOException("JournalQueueProducer interrupted while waiting for replay", xcpt);
+			}
+		}
+	}
+
+	/**
+	 * Stop the JournalQueueConsumer after replaying the journal, close the journal and the DataSource.
+	 */
+	@Override
+	public void close() throws JDOException {
+		close(true);
+	}
+
+	private void close(boolean bDrain) throws JDOException {
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin JournalQueueProducer.close(" + String.valueOf(bDrain) + ")");
+			DebugFile.incIdent();
+		}
+
+		if (oSyncer != null) {
+			oSyncer.shutdown();
+			oSyncer = null;
+		}
+
+		if (oCon != null) {
+			try {
+				oJnl.sync(oJnl.getWrittenPosition());
+			} catch (IOException xcpt) {
+				throw new JDOException("JournalQueueProducer.close() " + xcpt.getMessage(), xcpt);
+			}
+			oCon.stop(bDrain);
+			oCon = null;
+		}
+
+		closeJournal();
+
+		if (oDts != null) {
+			oDts.close();
+			oDts = null;
+		}
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End JournalQueueProducer.close()");
+		}
+	}
+
+	private void closeJournal() {
+		if (oJnl != null) {
+			try {
+				oJnl.close();
+			} catch (IOException xcpt) {
+				if (DebugFile.trace)
+					DebugFile.writeln("JournalQueueProducer could not close journal " + xcpt.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * <p>Append an insert operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @param aParams Param[] Parameters to be binded
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void insert(Record oRec, Param[] aParams) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_INSERT_RECORD, new Pair<Record,Param[]>(oRec, aParams), null, null);
+	}
+
+	/**
+	 * <p>Append an insert operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @param aParams Param[] Parameters to be binded
+	 * @param oProps Properties If property "synchronous" is set to "true" then wait until the insert has been replayed
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void insert(Record oRec, Param[] aParams, Properties oProps) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_INSERT_RECORD, new Pair<Record,Param[]>(oRec, aParams), null, oProps);
+	}
+
+	/**
+	 * <p>Append an update operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @param aParams Param[] Values to be updated
+	 * @param aWhere Param[] Values for the filter clause defining the records to be updated
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void update(Record oRec, Param[] aParams, Param[] aWhere) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_UPDATE_RECORD, new Triplet<Record,Param[],Param[]>(oRec, aParams, aWhere), null, null);
+	}
+
+	/**
+	 * <p>Append an update operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @param aParams Param[] Values to be updated
+	 * @param aWhere Param[] Values for the filter clause defining the records to be updated
+	 * @param oProps Properties If property "synchronous" is set to "true" then wait until the update has been replayed
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void update(Record oRec, Param[] aParams, Param[] aWhere, Properties oProps) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_UPDATE_RECORD, new Triplet<Record,Param[],Param[]>(oRec, aParams, aWhere), null, oProps);
+	}
+
+	/**
+	 * <p>Append a store operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void store(Record oRec) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_STORE_RECORD, oRec, null, null);
+	}
+
+	/**
+	 * <p>Append a store operation for several Records to the journal.</p>
+	 * @param aRecs Record[] Instances of a Record subclass
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void store(Record[] aRecs) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_STORE_RECORD, aRecs, null, null);
+	}
+
+	/**
+	 * <p>Append a store operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @param oProps Properties If property "synchronous" is set to "true" then wait until the store has been replayed
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void store(Record oRec, Properties oProps) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_STORE_RECORD, oRec, null, oProps);
+	}
+
+	/**
+	 * <p>Append a store operation for several Records to the journal.</p>
+	 * @param aRecs Record[] Instances of a Record subclass
+	 * @param oProps Properties If property "synchronous" is set to "true" then wait until the store has been replayed
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void store(Record[] aRecs, Properties oProps) throws JDOException {
+		enqueue(ObjectMessageImpl.COMMAND_STORE_RECORD, aRecs, null, oProps);
+	}
+
+	/**
+	 * <p>Append a delete operation to the journal.</p>
+	 * @param oRec Record Instance of a Record subclass
+	 * @param aKeys String[] Values of the primary keys of the records to be deleted
+	 * @param oProps Properties If property "synchronous" is set to "true" then wait until the delete has been replayed
+	 * @throws IllegalStateException if the queue is closed
+	 * @throws JDOException If the journal cannot be written
+	 */
+	@Override
+	public void delete(Record oRec, String[] aKeys, Properties oProps) throws JDOException {
+		StringBuilder oKeys = new StringBuilder();
+		for (String k : aKeys) {
+			if (k != null && k.trim().length() > 0) {
+				if (oKeys.length() > 0)
+					oKeys.append("`");
+				oKeys.append(k);
+			}
+		}
+		enqueue(ObjectMessageImpl.COMMAND_DELETE_RECORDS, oRec, oKeys.toString(), oProps);
+	}
+
+	/**
+	 * <p>Close the producer.</p>
+	 * @param bInmediate boolean If <b>true</b> then stop replaying after the current batch.
+	 * The frames not replayed remain in the journal and will be replayed when it is opened again.
+	 * @param iTimeout int Time to wait in milliseconds before stopping when bInmediate is <b>false</b>.
+	 */
+	@Override
+	public void stop(boolean bInmediate, int iTimeout) throws JDOException {
+		if (iTimeout > 0 && !bInmediate) {
+			try {
+				Thread.sleep(iTimeout);
+			} catch (InterruptedException e) { }
+		}
+		close(!bInmediate);
+	}
+
+}
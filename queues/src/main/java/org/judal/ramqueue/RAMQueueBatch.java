@@ -0,0 +1,361 @@
+package org.judal.ramqueue;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.jdo.JDOException;
+import javax.jms.JMSException;
+import javax.transaction.TransactionManager;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.storage.Param;
+import org.judal.storage.keyvalue.BatchException;
+import org.judal.storage.table.IndexableTable;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.Table;
+import org.judal.storage.table.TableDataSource;
+import org.judal.storage.table.TableHandleCache;
+
+import com.knowgate.debug.DebugFile;
+import com.knowgate.tuples.Pair;
+import com.knowgate.tuples.Triplet;
+
+/**
+ * <p>Group of messages performed in a single transaction.</p>
+ * Consecutive messages with the same TableDataSource, command and table are performed together:
+ * the Records of store messages are written with one Table.storeAll() call per table,
+ * insert messages with one Table.insertAll() call and update messages with one IndexableTable.updateAll() call,
+ * which JDBC tables send to the database as JDBC batches, and delete messages reuse
+ * the table handles of a TableHandleCache scope.
+ * Messages are never reordered, so a message is always performed after the ones queued before it.
+ * If anything fails, the transaction is rolled back and each message is run again alone
+ * by calling ObjectMessageImpl.execute(), so a bad message does not prevent the others from being written.
+ * When the TableDataSource has no TransactionManager, only the messages of the group that failed
+ * and the ones after it are run again, because the previous groups are already written.
+ * And if the group that failed reported its failed rows by throwing a BatchException,
+ * only the messages of those rows are run again and the next groups are performed together as usual.
+ * execute() returns which messages could not be performed even when run alone.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public class RAMQueueBatch implements Runnable {
+
+	private final List<ObjectMessageImpl> aMsgs;
+	private final RAMQueueConsumer oCon;
+
+	/**
+	 * @param aMsgs List&lt;ObjectMessageImpl&gt; Messages in the order in which they were queued
+	 * @param oCon RAMQueueConsumer which will be notified of the batch outcome. May be <b>null</b>
+	 */
+	public RAMQueueBatch(List<ObjectMessageImpl> aMsgs, RAMQueueConsumer oCon) {
+		this.aMsgs = aMsgs;
+		this.oCon = oCon;
+	}
+
+	/**
+	 * @return int Count of messages in this batch
+	 */
+	public int size() {
+		return aMsgs.size();
+	}
+
+	/**
+	 * <p>Perform all the messages of this batch.</p>
+	 * Messages for different TableDataSources are performed in different transactions.
+	 */
+	@Override
+	public void run() {
+		execute();
+	}
+
+	/**
+	 * <p>Perform all the messages of this batch and tell which ones failed.</p>
+	 * @return BitSet Index in the batch of each message that could not be performed. Empty if all were performed.
+	 */
+	public BitSet execute() {
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin RAMQueueBatch.run(" + String.valueOf(aMsgs.size()) + " messages)");
+			DebugFile.incIdent();
+		}
+
+		final BitSet oFailed = new BitSet(aMsgs.size());
+		int nRetried = 0;
+		int m = 0;
+		while (m < aMsgs.size()) {
+			final TableDataSource oDts = aMsgs.get(m).getDataSource();
+			int n = m + 1;
+			while (n < aMsgs.size() && aMsgs.get(n).getDataSource() == oDts)
+				n++;
+			nRetried += runTransaction(oDts, m, n, oFailed);
+			m = n;
+		}
+
+		if (oCon != null)
+			oCon.batchCompleted(aMsgs.size(), nRetried);
+
+		if (DebugFile.trace) {
+			DebugFile.decIdent();
+			DebugFile.writeln("End RAMQueueBatch.run() " + String.valueOf(nRetried) + " messages retried " + String.valueOf(oFailed.cardinality()) + " failed");
+		}
+
+		return oFailed;
+	}
+
+	/**
+	 * @param iFrom int Index of the first message of the transaction
+	 * @param iTo int Index after the last message of the transaction
+	 * @param oFailed BitSet Output parameter where the index of each message that failed when run alone is set
+	 * @return int Count of messages that had to be run again alone
+	 */
+	private int runTransaction(TableDataSource oDts, int iFrom, int iTo, BitSet oFailed) {
+		final List<ObjectMessageImpl> aTrnMsgs = aMsgs.subList(iFrom, iTo);
+		final TransactionManager oTrnMan = oDts.getTransactionManager();
+		int iWritten = 0;
+		int nRetried = 0;
+		boolean bFailed = false;
+
+		try (TableHandleCache oScope = TableHandleCache.begin()) {
+			if (oTrnMan != null)
+				oTrnMan.begin();
+
+			int g = 0;
+			while (g < aTrnMsgs.size()) {
+				final int iCmd = aTrnMsgs.get(g).getIntProperty("command");
+				final String sTbl = getTableName(aTrnMsgs.get(g));
+				int h = g + 1;
+				while (h < aTrnMsgs.size() && aTrnMsgs.get(h).getIntProperty("command") == iCmd && sTbl.equals(getTableName(aTrnMsgs.get(h))))
+					h++;
+				try {
+					perform(oDts, iCmd, aTrnMsgs.subList(g, h));
+				} catch (GroupWriteException xcpt) {
+					if (oTrnMan != null)
+						throw xcpt;
+					nRetried += runAgain(iFrom + g, xcpt.getPending(), oFailed);
+				}
+				g = h;
+				if (oTrnMan == null)
+					iWritten = g;
+			}
+
+			if (oTrnMan != null)
+				oTrnMan.commit();
+
+		} catch (Exception xcpt) {
+			if (DebugFile.trace) {
+				DebugFile.writeln("RAMQueueBatch.run() " + xcpt.getClass().getName() + " " + xcpt.getMessage());
+				DebugFile.writeStackTrace(xcpt);
+			}
+			ObjectMessageImpl.rollback(oDts);
+			bFailed = true;
+		} finally {
+			ObjectMessageImpl.reset(oTrnMan);
+		}
+
+		if (!bFailed)
+			return nRetried;
+
+		if (DebugFile.trace)
+			DebugFile.writeln("RAMQueueBatch.run() running " + String.valueOf(aTrnMsgs.size() - iWritten) + " messages one by one");
+
+		for (int m = iFrom + iWritten; m < iTo; m++)
+			if (!aMsgs.get(m).execute())
+				oFailed.set(m);
+
+		return nRetried + aTrnMsgs.size() - iWritten;
+	}
+
+	/**
+	 * <p>Run alone the messages of a partially written group which were not written.</p>
+	 * @param iGroup int Index of the first message of the group
+	 * @param oPending BitSet Index in the group of the messages to be run again
+	 * @param oFailed BitSet Output parameter where the index of each message that failed again is set
+	 * @return int Count of messages run again
+	 */
+	private int runAgain(int iGroup, BitSet oPending, BitSet oFailed) {
+		if (DebugFile.trace)
+			DebugFile.writeln("RAMQueueBatch.run() running " + String.valueOf(oPending.cardinality()) + " messages one by one");
+		for (int m = oPending.nextSetBit(0); m >= 0; m = oPending.nextSetBit(m + 1))
+			if (!aMsgs.get(iGroup + m).execute())
+				oFailed.set(iGroup + m);
+		return oPending.cardinality();
+	}
+
+	/**
+	 * @param aRowMsgs List&lt;Integer&gt; Index of the message of each row written
+	 * @return BitSet Index of the messages whose rows are at the failed positions of the BatchException
+	 */
+	private static BitSet failedMessages(List<Integer> aRowMsgs, BatchException xcpt) {
+		BitSet oPending = new BitSet();
+		for (int iPos : xcpt.getFailedPositions())
+			oPending.set(aRowMsgs.get(iPos));
+		return oPending;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void perform(TableDataSource oDts, int iCmd, List<ObjectMessageImpl> aCmdMsgs) throws JMSException, JDOException {
+		Record oRec;
+		switch (iCmd) {
+
+		case ObjectMessageImpl.COMMAND_STORE_RECORD:
+			storeAll(oDts, aCmdMsgs);
+			break;
+
+		case ObjectMessageImpl.COMMAND_INSERT_RECORD:
+			oRec = ((Pair<Record,Param[]>) aCmdMsgs.get(0).getObject()).$1();
+			if (DebugFile.trace)
+				DebugFile.writeln("COMMAND_INSERT_RECORD " + String.valueOf(aCmdMsgs.size()) + " records INTO " + oRec.getTableName());
+			ArrayList<Param[]> aRows = new ArrayList<Param[]>(aCmdMsgs.size());
+			ArrayList<Integer> aRowMsgs = new ArrayList<Integer>(aCmdMsgs.size());
+			for (int m = 0; m < aCmdMsgs.size(); m++) {
+				final Param[] aParms = ((Pair<Record,Param[]>) aCmdMsgs.get(m).getObject()).$2();
+				if (aParms != null && aParms.length > 0) {
+					aRows.add(aParms);
+					aRowMsgs.add(m);
+				}
+			}
+			try (Table oTbl = oDts.openTable(oRec)) {
+				oTbl.insertAll(aRows.toArray(new Param[aRows.size()][]));
+			} catch (BatchException xcpt) {
+				throw new GroupWriteException(xcpt, failedMessages(aRowMsgs, xcpt));
+			}
+			break;
+
+		case ObjectMessageImpl.COMMAND_UPDATE_RECORD:
+			oRec = ((Triplet<Record,Param[],Param[]>) aCmdMsgs.get(0).getObject()).$1();
+			if (DebugFile.trace)
+				DebugFile.writeln("COMMAND_UPDATE_RECORD " + String.valueOf(aCmdMsgs.size()) + " times FROM " + oRec.getTableName());
+			ArrayList<Param[]> aValues = new ArrayList<Param[]>(aCmdMsgs.size());
+			ArrayList<Param[]> aWhere = new ArrayList<Param[]>(aCmdMsgs.size());
+			ArrayList<Integer> aUpdtMsgs = new ArrayList<Integer>(aCmdMsgs.size());
+			for (int m = 0; m < aCmdMsgs.size(); m++) {
+				final Triplet<Record,Param[],Param[]> oUpdt = (Triplet<Record,Param[],Param[]>) aCmdMsgs.get(m).getObject();
+				if (oUpdt.$2() != null && oUpdt.$2().length > 0) {
+					aValues.add(oUpdt.$2());
+					aWhere.add(oUpdt.$3());
+					aUpdtMsgs.add(m);
+				}
+			}
+			try (IndexableTable oITbl = oDts.openIndexedTable(oRec)) {
+				oITbl.updateAll(aValues.toArray(new Param[aValues.size()][]), aWhere.toArray(new Param[aWhere.size()][]));
+			} catch (BatchException xcpt) {
+				throw new GroupWriteException(xcpt, failedMessages(aUpdtMsgs, xcpt));
+			}
+			break;
+
+		default:
+			for (ObjectMessageImpl oMsg : aCmdMsgs)
+				oMsg.process();
+		}
+	}
+
+	/**
+	 * Write the Records of several store messages calling Table.storeAll() once for each run of Records of the same table.
+	 */
+	private void storeAll(TableDataSource oDts, List<ObjectMessageImpl> aCmdMsgs) throws JMSException, JDOException {
+		ArrayList<Record> aRecs = new ArrayList<Record>(aCmdMsgs.size());
+		ArrayList<Integer> aRecMsgs = new ArrayList<Integer>(aCmdMsgs.size());
+		for (int m = 0; m < aCmdMsgs.size(); m++) {
+			final Object oObj = aCmdMsgs.get(m).getObject();
+			if (oObj instanceof Record[]) {
+				for (Record oRec : (Record[]) oObj)
+					if (oRec != null) {
+						aRecs.add(oRec);
+						aRecMsgs.add(m);
+					}
+			} else if (oObj instanceof Record) {
+				aRecs.add((Record) oObj);
+				aRecMsgs.add(m);
+			}
+		}
+
+		for (Record oRec : aRecs)
+			if (oRec.getConstraintsChecker() != null)
+				oRec.getConstraintsChecker().check(oDts, oRec);
+
+		BatchException oFirstFailure = null;
+		BitSet oPending = new BitSet();
+		int r = 0;
+		while (r < aRecs.size()) {
+			final Record oFirst = aRecs.get(r);
+			int s = r + 1;
+			while (s < aRecs.size() && aRecs.get(s).getTableName().equals(oFirst.getTableName()))
+				s++;
+			if (DebugFile.trace)
+				DebugFile.writeln("COMMAND_STORE_RECORD " + String.valueOf(s - r) + " records INTO " + oFirst.getTableName());
+			Table oTbl = TableHandleCache.openTable(oDts, oFirst);
+			try {
+				oTbl.storeAll(aRecs.subList(r, s));
+			} catch (BatchException xcpt) {
+				if (null == oFirstFailure)
+					oFirstFailure = xcpt;
+				oPending.or(failedMessages(aRecMsgs.subList(r, s), xcpt));
+			} finally {
+				TableHandleCache.release(oTbl);
+			}
+			r = s;
+		}
+
+		if (oFirstFailure != null)
+			throw new GroupWriteException(oFirstFailure, oPending);
+	}
+
+	/**
+	 * @return String Name of the table of the first Record of the message or empty String if there is no Record
+	 */
+	@SuppressWarnings("unchecked")
+	private static String getTableName(ObjectMessageImpl oMsg) throws JMSException {
+		final Object oObj = oMsg.getObject();
+		Record oRec = null;
+		if (oObj instanceof Record[]) {
+			for (Record oItm : (Record[]) oObj)
+				if (oItm != null) {
+					oRec = oItm;
+					break;
+				}
+		} else if (oObj instanceof Record) {
+			oRec = (Record) oObj;
+		} else if (oObj instanceof Pair<?, ?>) {
+			oRec = ((Pair<Record,Param[]>) oObj).$1();
+		} else if (oObj instanceof Triplet<?, ?, ?>) {
+			oRec = ((Triplet<Record,Param[],Param[]>) oObj).$1();
+		}
+		return null == oRec || null == oRec.getTableName() ? "" : oRec.getTableName();
+	}
+
+	/**
+	 * <p>Thrown by perform() when the table reported which rows of a group could not be written.</p>
+	 * The other rows of the group have been written even if they are not yet committed.
+	 */
+	private static class GroupWriteException extends JDOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BitSet oPending;
+
+		GroupWriteException(BatchException oCause, BitSet oPending) {
+			super(oCause.getMessage(), oCause);
+			this.oPending = oPending;
+		}
+
+		/**
+		 * @return BitSet Index in the group of the messages which were not written
+		 */
+		BitSet getPending() {
+			return oPending;
+		}
+	}
+
+}
@@ -12,53 +12,359 @@ package org.judal.ramqueue;
  * KIND, either express or implied.
  */
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jdo.JDOException;
 import javax.jms.JMSException;
 
+import org.judal.metadata.ColumnDef;
 import org.judal.storage.DataSource;
 import org.judal.storage.Engine;
+import org.judal.storage.Param;
 import org.judal.storage.queue.RecordQueueConsumer;
+import org.judal.storage.table.Record;
 
 import com.knowgate.debug.DebugFile;
+import com.knowgate.tuples.Pair;
+import com.knowgate.tuples.Triplet;
 
 import org.judal.jms.ObjectMessageImpl;
 
 /**
  * <p>Implement an in-memory RecordQueueConsumer using a ThreadPoolExecutor.</p>
+ * Messages are partitioned into lanes by the hash of their table name and primary key.
+ * Each lane is a queue whose messages are performed one after the other by the threads of the ThreadPoolExecutor,
+ * so messages for the same primary key are always performed in the order in which they were received,
+ * while messages for different lanes are performed in parallel by up to getCorePoolSize() threads.
+ * Messages without a complete primary key, like updates with a filter on non key columns,
+ * are partitioned by table name only. Messages with several Records or keys are partitioned by the first one.
+ * The count of messages queued or being performed is limited by the queue capacity.
+ * When the queue is full onMessage() throws RejectedExecutionException, blocks the producer until there is room
+ * or blocks it for a maximum time before throwing RejectedExecutionException, depending on the FullQueuePolicy.
+ * By default each message is run in its own transaction.
+ * In group commit mode each lane takes up to getGroupCommitSize() messages at once,
+ * waiting at most getGroupCommitWait() milliseconds after the first one,
+ * and performs them as a RAMQueueBatch in one transaction.
+ * The wait time is spent by a thread of the ThreadPoolExecutor, so lanes should not greatly outnumber threads in group commit mode.
+ * Group commit mode is enabled by the constructor which takes the batch size and wait time
+ * or by setting GROUP_COMMIT_SIZE to a value greater than one at the properties given to start().
  * @author Sergio Montoro Ten
  * @version 1.0
  */
 public class RAMQueueConsumer extends ThreadPoolExecutor implements RecordQueueConsumer {
 
+	/**
+	 * Behavior of onMessage() when the queue is full
+	 */
+	public enum FullQueuePolicy {
+		/**
+		 * Throw RejectedExecutionException
+		 */
+		REJECT,
+		/**
+		 * Wait until there is room in the queue
+		 */
+		BLOCK,
+		/**
+		 * Wait for a maximum time and then throw RejectedExecutionException
+		 */
+		TIMEOUT
+	}
+
 	private static final int DEFAULT_CORE_POOL_SIZE = 2;
 	private static final int DEFAULT_MAX_POOL_SIZE = 2;
 	private static final int DEFAULT_MAX_QUEUE_SIZE = 100000;
-	
+	private static final int DEFAULT_LANES = 16;
+	private static final long DEFAULT_GROUP_COMMIT_WAIT = 10l;
+	private static final long DEFAULT_FULL_QUEUE_TIMEOUT = 1000l;
+
+	/**
+	 * Property read by start(). int [1..n] Maximum number of messages performed in a single transaction. Default 1 (no group commit).
+	 */
+	public static final String GROUP_COMMIT_SIZE = "groupcommitsize";
+
+	/**
+	 * Property read by start(). long [0..n] Milliseconds to wait for more messages after the first one of a group. Default 10.
+	 */
+	public static final String GROUP_COMMIT_WAIT = "groupcommitwait";
+
+	/**
+	 * Property read by start(). int [1..n] Number of threads which perform messages. Default 2.
+	 */
+	public static final String WORKERS = "queueworkers";
+
+	/**
+	 * Property read by start(). int [1..n] Number of lanes in which messages are partitioned by primary key. Default 16.
+	 */
+	public static final String LANES = "queuelanes";
+
+	/**
+	 * Property read by start(). int [1..n] Maximum number of messages queued or being performed. Default 100000.
+	 */
+	public static final String CAPACITY = "queuecapacity";
+
+	/**
+	 * Property read by start(). String One of "reject", "block" or "timeout". Default "reject".
+	 */
+	public static final String FULL_QUEUE_POLICY = "queuefullpolicy";
+
+	/**
+	 * Property read by start(). long [0..n] Milliseconds that onMessage() waits for room in the queue with the "timeout" policy. Default 1000.
+	 */
+	public static final String FULL_QUEUE_TIMEOUT = "queuefulltimeout";
+
+	private int iGroupSize;
+	private long lGroupWait;
+	private int iCapacity;
+	private volatile Lane[] aLanes;
+	private volatile Semaphore oSlots;
+	private FullQueuePolicy ePolicy;
+	private long lFullTimeout;
+
+	private final AtomicLong nBatches = new AtomicLong(0l);
+	private final AtomicLong nBatchedMsgs = new AtomicLong(0l);
+	private final AtomicLong nRetriedMsgs = new AtomicLong(0l);
+	private final AtomicLong nRejected = new AtomicLong(0l);
+	private final AtomicLong nWaits = new AtomicLong(0l);
+	private final AtomicLong lWaitNanos = new AtomicLong(0l);
+	private final AtomicLong lMaxWaitNanos = new AtomicLong(0l);
+
 	/**
 	 * <p>Constructor.</p>
-	 * Create RAMQueueConsumer with DEFAULT_CORE_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, 120 seconds keep alive time and a LinkedBlockingQueue
+	 * Create RAMQueueConsumer with DEFAULT_CORE_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, 120 seconds keep alive time,
+	 * 16 lanes, a capacity of 100000 messages and FullQueuePolicy.REJECT
 	 */
 	public RAMQueueConsumer() {
 		super(DEFAULT_CORE_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, 120l, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(DEFAULT_MAX_QUEUE_SIZE));
+		iGroupSize = 1;
+		lGroupWait = DEFAULT_GROUP_COMMIT_WAIT;
+		ePolicy = FullQueuePolicy.REJECT;
+		lFullTimeout = DEFAULT_FULL_QUEUE_TIMEOUT;
+		setLanes(DEFAULT_LANES, DEFAULT_MAX_QUEUE_SIZE);
+	}
+
+	/**
+	 * <p>Constructor.</p>
+	 * Create RAMQueueConsumer in group commit mode.
+	 * @param iGroupCommitSize int Maximum number of messages performed in a single transaction
+	 * @param lGroupCommitWait long Milliseconds to wait for more messages after the first one of a group
+	 * @throws IllegalArgumentException If iGroupCommitSize is less than one or lGroupCommitWait is negative
+	 */
+	public RAMQueueConsumer(int iGroupCommitSize, long lGroupCommitWait) throws IllegalArgumentException {
+		this();
+		setGroupCommit(iGroupCommitSize, lGroupCommitWait);
+	}
+
+	/**
+	 * <p>Constructor.</p>
+	 * @param iWorkers int Number of threads which perform messages
+	 * @param iLanes int Number of lanes in which messages are partitioned by primary key
+	 * @param iCapacity int Maximum number of messages queued or being performed
+	 * @throws IllegalArgumentException If any parameter is less than one
+	 */
+	public RAMQueueConsumer(int iWorkers, int iLanes, int iCapacity) throws IllegalArgumentException {
+		this();
+		configure(iWorkers, iLanes, iCapacity);
 	}
 
 	/**
-	 * <p>This method exists only for compliance with the RecordQueueConsumer interface but it does nothing.</p>
+	 * <p>Set worker count, lanes, queue capacity, full queue policy and group commit mode from properties.</p>
+	 * Properties not present keep their current value.
+	 * If properties contain GROUP_COMMIT_SIZE with a value greater than one then group commit mode is enabled.
 	 * @param engine Engine&lt;? extends DataSource&gt;
-	 * @param properties Map&lt;String,String&gt;
-	 * @throws JDOException Never thrown
+	 * @param properties Map&lt;String,String&gt; May be <b>null</b>
+	 * @throws JDOException If any property has not a valid value
+	 * @throws IllegalStateException If there are messages in the queue
 	 */
 	@Override
-	public void start(Engine<? extends DataSource> engine, Map<String,String> properties) throws JDOException {
+	public void start(Engine<? extends DataSource> engine, Map<String,String> properties) throws JDOException, IllegalStateException {
+		if (properties!=null) {
+			try {
+				if (properties.containsKey(WORKERS) || properties.containsKey(LANES) || properties.containsKey(CAPACITY))
+					configure(properties.containsKey(WORKERS) ? Integer.parseInt(properties.get(WORKERS).trim()) : getCorePoolSize(),
+							  properties.containsKey(LANES) ? Integer.parseInt(properties.get(LANES).trim()) : aLanes.length,
+							  properties.containsKey(CAPACITY) ? Integer.parseInt(properties.get(CAPACITY).trim()) : iCapacity);
+				if (properties.containsKey(FULL_QUEUE_POLICY))
+					setFullQueuePolicy(FullQueuePolicy.valueOf(properties.get(FULL_QUEUE_POLICY).trim().toUpperCase()),
+									   properties.containsKey(FULL_QUEUE_TIMEOUT) ? Long.parseLong(properties.get(FULL_QUEUE_TIMEOUT).trim()) : lFullTimeout);
+				if (properties.containsKey(GROUP_COMMIT_SIZE)) {
+					final int iSize = Integer.parseInt(properties.get(GROUP_COMMIT_SIZE).trim());
+					final long lWait = properties.containsKey(GROUP_COMMIT_WAIT) ? Long.parseLong(properties.get(GROUP_COMMIT_WAIT).trim()) : DEFAULT_GROUP_COMMIT_WAIT;
+					if (iSize>1)
+						setGroupCommit(iSize, lWait);
+				}
+			} catch (IllegalArgumentException xcpt) {
+				throw new JDOException("RAMQueueConsumer.start() " + xcpt.getMessage(), xcpt);
+			}
+		}
+	}
+
+	/**
+	 * <p>Set the number of threads, lanes and queue capacity.</p>
+	 * @param iWorkers int Number of threads which perform messages
+	 * @param iLanes int Number of lanes in which messages are partitioned by primary key
+	 * @param iCapacity int Maximum number of messages queued or being performed
+	 * @throws IllegalArgumentException If any parameter is less than one
+	 * @throws IllegalStateException If there are messages in the queue
+	 */
+	public synchronized void configure(int iWorkers, int iLanes, int iCapacity) throws IllegalArgumentException, IllegalStateException {
+		if (iWorkers<1)
+			throw new IllegalArgumentException("Worker count must be greater than zero");
+		if (iWorkers>getMaximumPoolSize()) {
+			setMaximumPoolSize(iWorkers);
+			setCorePoolSize(iWorkers);
+		} else {
+			setCorePoolSize(iWorkers);
+			setMaximumPoolSize(iWorkers);
+		}
+		setLanes(iLanes, iCapacity);
+	}
+
+	private void setLanes(int iLanes, int iCapacity) throws IllegalArgumentException, IllegalStateException {
+		if (iLanes<1)
+			throw new IllegalArgumentException("Lane count must be greater than zero");
+		if (iCapacity<1)
+			throw new IllegalArgumentException("Queue capacity must be greater than zero");
+		if (getQueueDepth()>0)
+			throw new IllegalStateException("RAMQueueConsumer cannot be reconfigured while there are messages in the queue");
+		final Semaphore oNewSlots = new Semaphore(iCapacity);
+		final Lane[] aNewLanes = new Lane[iLanes];
+		for (int l=0; l<iLanes; l++)
+			aNewLanes[l] = new Lane(oNewSlots);
+		this.iCapacity = iCapacity;
+		oSlots = oNewSlots;
+		aLanes = aNewLanes;
+	}
+
+	/**
+	 * @param ePolicy FullQueuePolicy Behavior of onMessage() when the queue is full
+	 * @param lTimeoutMillis long Milliseconds to wait for room in the queue with FullQueuePolicy.TIMEOUT
+	 * @throws IllegalArgumentException If lTimeoutMillis is negative
+	 */
+	public void setFullQueuePolicy(FullQueuePolicy ePolicy, long lTimeoutMillis) throws IllegalArgumentException {
+		if (lTimeoutMillis<0l)
+			throw new IllegalArgumentException("Full queue timeout may not be negative");
+		this.ePolicy = ePolicy;
+		this.lFullTimeout = lTimeoutMillis;
+	}
+
+	/**
+	 * @return FullQueuePolicy
+	 */
+	public FullQueuePolicy getFullQueuePolicy() {
+		return ePolicy;
+	}
+
+	/**
+	 * @return int Number of lanes in which messages are partitioned by primary key
+	 */
+	public int getLaneCount() {
+		return aLanes.length;
+	}
+
+	/**
+	 * @return int Maximum number of messages queued or being performed
+	 */
+	public int getCapacity() {
+		return iCapacity;
+	}
+
+	/**
+	 * @return int Count of messages queued or being performed
+	 */
+	public int getQueueDepth() {
+		return null==oSlots ? 0 : iCapacity - oSlots.availablePermits();
+	}
+
+	/**
+	 * @return long Count of messages rejected because the queue was full or the producer was interrupted while waiting
+	 */
+	public long getRejectedCount() {
+		return nRejected.get();
+	}
+
+	/**
+	 * @return long Count of calls to onMessage() which had to wait because the queue was full
+	 */
+	public long getWaitCount() {
+		return nWaits.get();
+	}
+
+	/**
+	 * @return long Total milliseconds that calls to onMessage() waited because the queue was full
+	 */
+	public long getWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(lWaitNanos.get());
+	}
+
+	/**
+	 * @return long Maximum milliseconds that a single call to onMessage() waited because the queue was full
+	 */
+	public long getMaxWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(lMaxWaitNanos.get());
+	}
+
+	/**
+	 * @return int Maximum number of messages performed in a single transaction. One if group commit mode is not enabled.
+	 */
+	public int getGroupCommitSize() {
+		return iGroupSize;
+	}
+
+	/**
+	 * @return long Milliseconds to wait for more messages after the first one of a group
+	 */
+	public long getGroupCommitWait() {
+		return lGroupWait;
+	}
+
+	/**
+	 * @return long Count of batches performed in group commit mode
+	 */
+	public long getBatchCount() {
+		return nBatches.get();
+	}
+
+	/**
+	 * @return long Count of messages performed in group commit mode
+	 */
+	public long getBatchedMessageCount() {
+		return nBatchedMsgs.get();
+	}
+
+	/**
+	 * @return long Count of messages that were run again alone because their batch failed
+	 */
+	public long getRetriedMessageCount() {
+		return nRetriedMsgs.get();
+	}
+
+	private synchronized void setGroupCommit(int iGroupCommitSize, long lGroupCommitWait) throws IllegalArgumentException {
+		if (iGroupCommitSize<1)
+			throw new IllegalArgumentException("Group commit size must be greater than zero");
+		if (lGroupCommitWait<0l)
+			throw new IllegalArgumentException("Group commit wait may not be negative");
+		iGroupSize = iGroupCommitSize;
+		lGroupWait = lGroupCommitWait;
+	}
+
+	void batchCompleted(int nMsgs, int nRetried) {
+		nBatches.incrementAndGet();
+		nBatchedMsgs.addAndGet(nMsgs);
+		nRetriedMsgs.addAndGet(nRetried);
 	}
 
 	/**
 	 * <p>Shutdown parent ThreadPoolExecutor.</p>
+	 * Messages already queued are still performed.
 	 */
 	@Override
 	public void stop() throws JDOException {
@@ -76,18 +382,208 @@ public class RAMQueueConsumer extends ThreadPoolExecutor implements RecordQueueC
 	}
 
 	/**
-	 * <p>Forward call to ThreadPoolExecutor.execute(ObjectMessageImpl).</p>
-	 * ThreadPoolExecutor will invoke ObjectMessageImpl.run() which is where
-	 * the implementation of insert, update, store and delete operation is.
+	 * <p>Queue a message at the lane for its table and primary key.</p>
+	 * The threads of the ThreadPoolExecutor will invoke ObjectMessageImpl.run() which is where
+	 * the implementation of insert, update, store and delete operation is,
+	 * or RAMQueueBatch.run() in group commit mode.
 	 * @param oMsg ObjectMessageImpl
+	 * @throws RejectedExecutionException If the consumer is stopped or if the queue is full and
+	 * the FullQueuePolicy is REJECT or TIMEOUT and the timeout expired
 	 */
-	public void onMessage(ObjectMessageImpl oMsg) {
+	public void onMessage(ObjectMessageImpl oMsg) throws RejectedExecutionException {
 	  if (DebugFile.trace) {
 	    try {
 	      DebugFile.writeln("RAMQueueConsumer.onMessage("+oMsg.getJMSMessageID()+","+oMsg+")");
       } catch (JMSException ignore) { }
 	  }
-	  super.execute(oMsg);
+	  if (isShutdown())
+		throw new RejectedExecutionException("RAMQueueConsumer is stopped");
+	  final Lane[] aCurrentLanes = aLanes;
+	  final Lane oLane = aCurrentLanes[(partition(oMsg) & Integer.MAX_VALUE) % aCurrentLanes.length];
+	  acquire(oLane.oLaneSlots);
+	  oLane.add(oMsg);
+	}
+
+	private void acquire(Semaphore oLaneSlots) throws RejectedExecutionException {
+		if (oLaneSlots.tryAcquire())
+			return;
+		final long lStart = System.nanoTime();
+		boolean bAcquired = false;
+		try {
+			switch (ePolicy) {
+			case BLOCK:
+				oLaneSlots.acquire();
+				bAcquired = true;
+				break;
+			case TIMEOUT:
+				bAcquired = oLaneSlots.tryAcquire(lFullTimeout, TimeUnit.MILLISECONDS);
+				break;
+			default:
+				bAcquired = false;
+			}
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+		}
+		if (ePolicy!=FullQueuePolicy.REJECT) {
+			final long lWaited = System.nanoTime() - lStart;
+			nWaits.incrementAndGet();
+			lWaitNanos.addAndGet(lWaited);
+			long lMax = lMaxWaitNanos.get();
+			while (lWaited>lMax && !lMaxWaitNanos.compareAndSet(lMax, lWaited))
+				lMax = lMaxWaitNanos.get();
+		}
+		if (!bAcquired) {
+			nRejected.incrementAndGet();
+			throw new RejectedExecutionException("RAMQueueConsumer queue is full");
+		}
+	}
+
+	/**
+	 * @param oMsg ObjectMessageImpl
+	 * @return int Hash of the table name and primary key of the first Record of the message
+	 */
+	@SuppressWarnings("unchecked")
+	private static int partition(ObjectMessageImpl oMsg) {
+		try {
+			final Object oObj = oMsg.getObject();
+			Record oRec = null;
+			Param[] aKeyParams = null;
+			if (oObj instanceof Record[]) {
+				for (Record oItm : (Record[]) oObj)
+					if (oItm != null) {
+						oRec = oItm;
+						break;
+					}
+			} else if (oObj instanceof Record) {
+				oRec = (Record) oObj;
+			} else if (oObj instanceof Pair<?, ?>) {
+				oRec = ((Pair<Record,Param[]>) oObj).$1();
+				aKeyParams = ((Pair<Record,Param[]>) oObj).$2();
+			} else if (oObj instanceof Triplet<?, ?, ?>) {
+				oRec = ((Triplet<Record,Param[],Param[]>) oObj).$1();
+				aKeyParams = ((Triplet<Record,Param[],Param[]>) oObj).$3();
+			}
+			if (null==oRec)
+				return 0;
+
+			int iHash = null==oRec.getTableName() ? 0 : oRec.getTableName().hashCode();
+
+			if (oMsg.propertyExists("keys") && oMsg.getIntProperty("command")==ObjectMessageImpl.COMMAND_DELETE_RECORDS) {
+				for (String sKey : oMsg.getStringProperty("keys").split("`"))
+					if (sKey.trim().length()>0)
+						return 31 * iHash + sKey.hashCode();
+				return iHash;
+			}
+
+			for (ColumnDef oCol : oRec.columns()) {
+				if (oCol.isPrimaryKey()) {
+					Object oVal = null;
+					if (null==aKeyParams) {
+						oVal = oRec.apply(oCol.getName());
+					} else {
+						boolean bFound = false;
+						for (Param oPrm : aKeyParams)
+							if (oPrm!=null && oCol.getName().equalsIgnoreCase(oPrm.getName())) {
+								oVal = oPrm.getValue();
+								bFound = true;
+								break;
+							}
+						if (!bFound)
+							return iHash;
+					}
+					iHash = 31 * iHash + (null==oVal ? 0 : oVal.toString().hashCode());
+				}
+			}
+			return iHash;
+		} catch (JMSException | RuntimeException xcpt) {
+			if (DebugFile.trace)
+				DebugFile.writeln("RAMQueueConsumer.partition() " + xcpt.getClass().getName() + " " + xcpt.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Queue of messages performed one after the other.
+	 * A lane is submitted to the ThreadPoolExecutor when it receives a message and it is not already submitted.
+	 * After performing a message or batch it is submitted again if it has more messages,
+	 * so lanes take turns at the threads of the ThreadPoolExecutor.
+	 * A message or batch which throws an exception is discarded and the lane goes on with the next ones.
+	 */
+	private class Lane implements Runnable {
+
+		private final LinkedBlockingQueue<ObjectMessageImpl> oQueue = new LinkedBlockingQueue<ObjectMessageImpl>();
+		private final AtomicBoolean bScheduled = new AtomicBoolean(false);
+		private final Semaphore oLaneSlots;
+
+		Lane(Semaphore oLaneSlots) {
+			this.oLaneSlots = oLaneSlots;
+		}
+
+		void add(ObjectMessageImpl oMsg) {
+			oQueue.add(oMsg);
+			if (bScheduled.compareAndSet(false, true))
+				submit();
+		}
+
+		private void submit() {
+			try {
+				RAMQueueConsumer.super.execute(this);
+			} catch (RejectedExecutionException stopped) {
+				run();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				final ArrayList<ObjectMessageImpl> aBatch = take();
+				try {
+					if (aBatch.size()==1 && iGroupSize==1)
+						aBatch.get(0).run();
+					else if (aBatch.size()>0)
+						new RAMQueueBatch(aBatch, RAMQueueConsumer.this).run();
+				} catch (RuntimeException xcpt) {
+					if (DebugFile.trace) {
+						DebugFile.writeln("RAMQueueConsumer lane " + xcpt.getClass().getName() + " " + xcpt.getMessage() + " performing " + String.valueOf(aBatch.size()) + " messages");
+						DebugFile.writeStackTrace(xcpt);
+					}
+				} finally {
+					oLaneSlots.release(aBatch.size());
+					bScheduled.set(false);
+				}
+				if (oQueue.isEmpty() || !bScheduled.compareAndSet(false, true))
+					return;
+				if (!isShutdown()) {
+					try {
+						RAMQueueConsumer.super.execute(this);
+						return;
+					} catch (RejectedExecutionException stopped) { }
+				}
+			}
+		}
+
+		private ArrayList<ObjectMessageImpl> take() {
+			ArrayList<ObjectMessageImpl> aBatch = new ArrayList<ObjectMessageImpl>(iGroupSize);
+			oQueue.drainTo(aBatch, iGroupSize);
+			if (iGroupSize>1 && lGroupWait>0l) {
+				final long lDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lGroupWait);
+				try {
+					while (aBatch.size() < iGroupSize) {
+						final long lLeft = lDeadline - System.nanoTime();
+						if (lLeft<=0l)
+							break;
+						ObjectMessageImpl oNext = oQueue.poll(lLeft, TimeUnit.NANOSECONDS);
+						if (null==oNext)
+							break;
+						aBatch.add(oNext);
+						oQueue.drainTo(aBatch, iGroupSize - aBatch.size());
+					}
+				} catch (InterruptedException xcpt) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return aBatch;
+		}
 	}
 
 }
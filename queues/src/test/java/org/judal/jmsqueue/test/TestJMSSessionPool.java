@@ -0,0 +1,250 @@
+package org.judal.jmsqueue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueSession;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.jmsqueue.JMSSessionPool;
+import org.judal.jmsqueue.JMSSessionPool.PooledSession;
+import org.junit.Test;
+
+import com.sun.messaging.ConnectionFactory;
+
+/**
+ * Test JMSSessionPool with a fake ConnectionFactory whose sessions keep the messages
+ * sent in memory until they are committed and which can be told to fail the next send or commit.
+ */
+public class TestJMSSessionPool {
+
+	/**
+	 * ConnectionFactory of connections to a fake broker
+	 */
+	@SuppressWarnings("serial")
+	private static class FakeConnectionFactory extends ConnectionFactory {
+
+		final List<Serializable> committed = Collections.synchronizedList(new ArrayList<Serializable>());
+		int connections = 0;
+		int openConnections = 0;
+		volatile boolean failNextSend = false;
+		volatile boolean failNextCommit = false;
+
+		private Object proxy(Class<?> iface, InvocationHandler handler) {
+			return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{iface}, handler);
+		}
+
+		@Override
+		public synchronized QueueConnection createQueueConnection(String user, String password) throws JMSException {
+			connections++;
+			openConnections++;
+			return (QueueConnection) proxy(QueueConnection.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("createQueueSession"))
+						return createSession((Boolean) args[0]);
+					else if (method.getName().equals("close"))
+						synchronized (FakeConnectionFactory.this) {
+							openConnections--;
+						}
+					return null;
+				}
+			});
+		}
+
+		private QueueSession createSession(final boolean transacted) {
+			final List<Serializable> pending = new ArrayList<Serializable>();
+			final MessageProducer producer = (MessageProducer) proxy(MessageProducer.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws JMSException {
+					if (method.getName().equals("send")) {
+						if (failNextSend) {
+							failNextSend = false;
+							throw new JMSException("send failed");
+						}
+						if (transacted)
+							pending.add(((ObjectMessage) args[0]).getObject());
+						else
+							committed.add(((ObjectMessage) args[0]).getObject());
+					} else if (method.getName().equals("getTimeToLive")) {
+						return 0l;
+					}
+					return null;
+				}
+			});
+			return (QueueSession) proxy(QueueSession.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws JMSException {
+					if (method.getName().equals("createProducer")) {
+						return producer;
+					} else if (method.getName().equals("createObjectMessage")) {
+						ObjectMessageImpl msg = new ObjectMessageImpl();
+						msg.setObject((Serializable) args[0]);
+						return msg;
+					} else if (method.getName().equals("commit")) {
+						if (failNextCommit) {
+							failNextCommit = false;
+							throw new JMSException("commit failed");
+						}
+						committed.addAll(pending);
+						pending.clear();
+					} else if (method.getName().equals("close")) {
+						pending.clear();
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	private static final Queue queue = (Queue) Proxy.newProxyInstance(TestJMSSessionPool.class.getClassLoader(), new Class<?>[]{Queue.class}, new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			return null;
+		}
+	});
+
+	private static void send(PooledSession pss, String value) throws JMSException {
+		pss.send(pss.getSession().createObjectMessage(value), 4);
+	}
+
+	@Test
+	public void test01Reuse() throws JMSException {
+		FakeConnectionFactory factory = new FakeConnectionFactory();
+		JMSSessionPool pool = new JMSSessionPool(factory, queue, "user", "pass", 2, false, 1, 100l);
+
+		PooledSession first = pool.borrow();
+		send(first, "a");
+		pool.release(first);
+		assertEquals(1, pool.getIdleCount());
+
+		// The idle connection is given again instead of opening a new one
+		PooledSession second = pool.borrow();
+		assertSame(first, second);
+		PooledSession third = pool.borrow();
+		assertEquals(2, pool.getConnectionCount());
+		assertEquals(2, factory.connections);
+
+		// The pool is full so borrow() times out
+		try {
+			pool.borrow();
+			fail("JMSException expected");
+		} catch (JMSException expected) { }
+
+		pool.release(second);
+		pool.release(third);
+		assertEquals(2, pool.getIdleCount());
+		assertEquals(Collections.singletonList((Serializable) "a"), factory.committed);
+
+		pool.close();
+		assertEquals(0, factory.openConnections);
+		try {
+			pool.borrow();
+			fail("JMSException expected");
+		} catch (JMSException expected) { }
+	}
+
+	@Test
+	public void test02CommitBatching() throws JMSException {
+		FakeConnectionFactory factory = new FakeConnectionFactory();
+		JMSSessionPool pool = new JMSSessionPool(factory, queue, "user", "pass", 1, true, 3, 0l, 100l);
+
+		PooledSession pss = pool.borrow();
+		for (int m=1; m<=7; m++)
+			send(pss, String.valueOf(m));
+
+		// Messages are committed in groups of three
+		assertEquals(2, pool.getCommitCount());
+		assertEquals(6, factory.committed.size());
+		assertEquals(1, pss.getUncommittedCount());
+
+		// commit() of the pool does not touch connections in use
+		pool.commit();
+		assertEquals(6, factory.committed.size());
+
+		pool.release(pss);
+		pool.commit();
+		assertEquals(3, pool.getCommitCount());
+		assertEquals(0, pss.getUncommittedCount());
+		assertEquals(Arrays.asList((Serializable) "1", "2", "3", "4", "5", "6", "7"), factory.committed);
+		pool.close();
+	}
+
+	@Test
+	public void test03CommitDelay() throws JMSException, InterruptedException {
+		FakeConnectionFactory factory = new FakeConnectionFactory();
+		JMSSessionPool pool = new JMSSessionPool(factory, queue, "user", "pass", 1, true, 100, 50l, 100l);
+		assertEquals(50l, pool.getCommitDelay());
+
+		// A connection in use is committed by the first send after the delay
+		PooledSession pss = pool.borrow();
+		send(pss, "a");
+		assertTrue(!pss.isCommitDue());
+		Thread.sleep(100l);
+		assertTrue(pss.isCommitDue());
+		send(pss, "b");
+		assertEquals(0, pss.getUncommittedCount());
+		assertEquals(2, factory.committed.size());
+
+		// An idle connection is committed by the background thread
+		send(pss, "c");
+		pool.release(pss);
+		for (int w=0; w<100 && factory.committed.size()<3; w++)
+			Thread.sleep(20l);
+		assertEquals(Arrays.asList((Serializable) "a", "b", "c"), factory.committed);
+		assertEquals(2, pool.getCommitCount());
+		pool.close();
+	}
+
+	@Test
+	public void test04ResendAfterFailure() throws JMSException {
+		FakeConnectionFactory factory = new FakeConnectionFactory();
+		JMSSessionPool pool = new JMSSessionPool(factory, queue, "user", "pass", 1, true, 3, 0l, 100l);
+
+		// The commit of the third message fails, the connection is reopened and the three messages are sent again
+		PooledSession pss = pool.borrow();
+		send(pss, "a");
+		send(pss, "b");
+		factory.failNextCommit = true;
+		send(pss, "c");
+		assertEquals(1, pool.getReconnectionCount());
+		assertEquals(2, factory.connections);
+		assertEquals(1, factory.openConnections);
+		assertEquals(Arrays.asList((Serializable) "a", "b", "c"), factory.committed);
+
+		// A failed send is sent again through a new connection together with the messages not yet committed
+		send(pss, "d");
+		factory.failNextSend = true;
+		send(pss, "e");
+		assertEquals(2, pool.getReconnectionCount());
+		assertEquals(2, pss.getUncommittedCount());
+
+		// A failed commit() is retried after reconnecting and resending
+		factory.failNextCommit = true;
+		pss.commit();
+		assertEquals(3, pool.getReconnectionCount());
+		assertEquals(0, pss.getUncommittedCount());
+		assertEquals(Arrays.asList((Serializable) "a", "b", "c", "d", "e"), factory.committed);
+
+		pool.release(pss);
+		pool.close();
+		assertEquals(0, factory.openConnections);
+	}
+
+}
@@ -0,0 +1,187 @@
+package org.judal.journalqueue.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.judal.journalqueue.Journal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+
+	private File oDir;
+
+	@Before
+	public void createDirectory() throws IOException {
+		oDir = Files.createTempDirectory("journaltest").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] aFiles = oDir.listFiles();
+		if (aFiles != null)
+			for (File oFile : aFiles)
+				oFile.delete();
+		oDir.delete();
+	}
+
+	private static byte[] payload(int n) {
+		byte[] aPayload = new byte[100 + (n % 37)];
+		for (int b = 0; b < aPayload.length; b++)
+			aPayload[b] = (byte) (n + b);
+		return aPayload;
+	}
+
+	private static int countSegments(File oDir) {
+		int nSegs = 0;
+		for (String sName : oDir.list())
+			if (sName.endsWith(".jnl"))
+				nSegs++;
+		return nSegs;
+	}
+
+	@Test
+	public void test01AppendSyncRead() throws Exception {
+		try (Journal oJnl = new Journal(oDir, 4096)) {
+			long lPos = 0l;
+			for (int n = 0; n < 100; n++)
+				lPos = oJnl.append(payload(n));
+
+			// Frames are not read before being durable
+			assertNull(oJnl.read(oJnl.getCheckpoint(), null));
+
+			oJnl.sync(lPos);
+			assertEquals(lPos, oJnl.getDurablePosition());
+			assertTrue(countSegments(oDir) > 1);
+
+			long[] aNext = new long[1];
+			long lRead = oJnl.getCheckpoint();
+			for (int n = 0; n < 100; n++) {
+				assertArrayEquals(payload(n), oJnl.read(lRead, aNext));
+				lRead = aNext[0];
+			}
+			assertNull(oJnl.read(lRead, aNext));
+			assertEquals(lPos, lRead);
+
+			oJnl.checkpoint(lRead);
+			assertEquals(1, countSegments(oDir));
+		}
+	}
+
+	@Test
+	public void test02RecoverAfterReopen() throws Exception {
+		long lHalf;
+		try (Journal oJnl = new Journal(oDir, 4096)) {
+			for (int n = 0; n < 40; n++)
+				oJnl.sync(oJnl.append(payload(n)));
+			long[] aNext = new long[1];
+			long lRead = oJnl.getCheckpoint();
+			for (int n = 0; n < 20; n++) {
+				oJnl.read(lRead, aNext);
+				lRead = aNext[0];
+			}
+			oJnl.checkpoint(lRead);
+			lHalf = lRead;
+		}
+
+		try (Journal oJnl = new Journal(oDir, 4096)) {
+			assertEquals(lHalf, oJnl.getCheckpoint());
+			oJnl.sync(oJnl.append(payload(40)));
+			long[] aNext = new long[1];
+			long lRead = oJnl.getCheckpoint();
+			for (int n = 20; n <= 40; n++) {
+				assertArrayEquals(payload(n), oJnl.read(lRead, aNext));
+				lRead = aNext[0];
+			}
+			assertNull(oJnl.read(lRead, aNext));
+		}
+	}
+
+	@Test
+	public void test03DiscardTornFrame() throws Exception {
+		long lLast;
+		try (Journal oJnl = new Journal(oDir, 65536)) {
+			for (int n = 0; n < 10; n++)
+				oJnl.append(payload(n));
+			lLast = oJnl.append(payload(10));
+			oJnl.sync(lLast);
+		}
+
+		// Corrupt the last byte of the last frame as if the process had crashed while writing it
+		File oSeg = new File(oDir, String.format("segment-%010d.jnl", Journal.segment(lLast)));
+		try (RandomAccessFile oRaf = new RandomAccessFile(oSeg, "rw")) {
+			oRaf.seek(Journal.offset(lLast) - 1);
+			oRaf.write(~payload(10)[payload(10).length - 1]);
+		}
+
+		try (Journal oJnl = new Journal(oDir, 65536)) {
+			oJnl.sync(oJnl.append(payload(11)));
+			long[] aNext = new long[1];
+			long lRead = oJnl.getCheckpoint();
+			for (int n = 0; n < 10; n++) {
+				assertArrayEquals(payload(n), oJnl.read(lRead, aNext));
+				lRead = aNext[0];
+			}
+			assertArrayEquals(payload(11), oJnl.read(lRead, aNext));
+			assertNull(oJnl.read(aNext[0], aNext));
+		}
+	}
+
+	@Test
+	public void test04GroupSync() throws Exception {
+		final int nThreads = 8;
+		final int nFrames = 500;
+		// All the threads append one frame and then sync it, so each round is made durable by a single force
+		final CyclicBarrier oAppended = new CyclicBarrier(nThreads);
+		try (final Journal oJnl = new Journal(oDir, 1024 * 1024)) {
+			final AtomicInteger oErrors = new AtomicInteger(0);
+			Thread[] aThreads = new Thread[nThreads];
+			for (int t = 0; t < nThreads; t++) {
+				aThreads[t] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int n = 0; n < nFrames; n++) {
+								final long lPos = oJnl.append(payload(n));
+								oAppended.await();
+								oJnl.sync(lPos);
+							}
+						} catch (IOException | InterruptedException | BrokenBarrierException xcpt) {
+							oErrors.incrementAndGet();
+						}
+					}
+				};
+				aThreads[t].start();
+			}
+			for (Thread oThr : aThreads)
+				oThr.join();
+
+			assertEquals(0, oErrors.get());
+			assertEquals(oJnl.getWrittenPosition(), oJnl.getDurablePosition());
+			assertEquals(nFrames, oJnl.getSyncCount());
+
+			int nRead = 0;
+			long[] aNext = new long[1];
+			long lRead = oJnl.getCheckpoint();
+			while (oJnl.read(lRead, aNext) != null) {
+				lRead = aNext[0];
+				nRead++;
+			}
+			assertEquals(nThreads * nFrames, nRead);
+			assertFalse(oJnl.awaitFrames(lRead, 1l));
+		}
+	}
+
+}
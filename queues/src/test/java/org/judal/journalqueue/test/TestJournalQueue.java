@@ -0,0 +1,250 @@
+package org.judal.journalqueue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.jdo.JDOException;
+import javax.transaction.TransactionManager;
+
+import org.judal.journalqueue.JournalQueueConsumer;
+import org.judal.journalqueue.JournalQueueProducer;
+import org.judal.storage.Engine;
+import org.judal.storage.EngineFactory;
+import org.judal.storage.Param;
+import org.judal.storage.java.test.ArrayRecord1;
+import org.judal.storage.java.test.Fakes;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.TableDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Produce, consume and replay after a restart using a JournalQueueProducer whose operations
+ * are replayed into a fake TableDataSource which writes down the value of each row inserted.
+ */
+public class TestJournalQueue {
+
+	private static final String ENGINE_NAME = "JOURNALTEST";
+
+	/**
+	 * Values of the rows inserted in the order in which they were inserted
+	 */
+	private static final List<Object> inserted = Collections.synchronizedList(new ArrayList<Object>());
+
+	/**
+	 * When true every insert fails
+	 */
+	private static volatile boolean failAll;
+
+	/**
+	 * Inserts of this value fail
+	 */
+	private static volatile Object failOn;
+
+	private File oDir;
+
+	/**
+	 * Engine of fake TableDataSources which add the value of the first column of each row inserted to the inserted list
+	 * or throw a JDOException, without inserting anything, if failAll is set or a row has the failOn value
+	 */
+	public static class RecordingEngine implements Engine<TableDataSource> {
+
+		private static void checkFailure(Param[] row) throws JDOException {
+			if (failAll || row[0].getValue().equals(failOn))
+				throw new JDOException("insert of " + row[0].getValue() + " failed");
+		}
+
+		private static final Fakes.TableHandler tables = new Fakes.TableHandler() {
+			@Override
+			public Object invoke(String tableName, Method method, Object[] args) {
+				if (method.getName().equals("insert")) {
+					checkFailure((Param[]) args[0]);
+					inserted.add(((Param[]) args[0])[0].getValue());
+				} else if (method.getName().equals("insertAll") && args[0] instanceof Param[][]) {
+					for (Param[] row : (Param[][]) args[0])
+						checkFailure(row);
+					for (Param[] row : (Param[][]) args[0])
+						inserted.add(row[0].getValue());
+				}
+				return null;
+			}
+		};
+
+		@Override
+		public TableDataSource getDataSource(Map<String,String> properties) throws JDOException {
+			return Fakes.dataSource(null, tables);
+		}
+
+		@Override
+		public TableDataSource getDataSource(Map<String,String> properties, TransactionManager transactManager) throws JDOException {
+			return getDataSource(properties);
+		}
+
+		@Override
+		public TransactionManager getTransactionManager() throws JDOException {
+			return null;
+		}
+
+		@Override
+		public String name() {
+			return ENGINE_NAME;
+		}
+	}
+
+	private static final Record record = new ArrayRecord1();
+
+	@BeforeClass
+	public static void registerEngine() throws ClassNotFoundException {
+		EngineFactory.registerEngine(ENGINE_NAME, RecordingEngine.class.getName());
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		oDir = Files.createTempDirectory("journalqueuetest").toFile();
+		inserted.clear();
+		failAll = false;
+		failOn = null;
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] aFiles = oDir.listFiles();
+		if (aFiles != null)
+			for (File oFile : aFiles)
+				oFile.delete();
+		oDir.delete();
+	}
+
+	private Map<String,String> properties() {
+		Map<String,String> props = new HashMap<String,String>();
+		props.put(JournalQueueProducer.DIRECTORY, oDir.getAbsolutePath());
+		props.put(JournalQueueProducer.SEGMENT_SIZE, "4096");
+		props.put(JournalQueueConsumer.BATCH_SIZE, "10");
+		props.put(JournalQueueConsumer.RETRY_DELAY, "10");
+		return props;
+	}
+
+	private static List<Object> range(int from, int to) {
+		List<Object> values = new ArrayList<Object>(to - from);
+		for (int n = from; n < to; n++)
+			values.add(n);
+		return values;
+	}
+
+	@Test
+	public void test01ProduceAndConsume() throws JDOException, InstantiationException, InterruptedException {
+		JournalQueueProducer oPrd = new JournalQueueProducer(ENGINE_NAME, properties());
+		for (int n = 0; n < 50; n++)
+			oPrd.insert(record, new Param[]{new Param("id", 1, n)});
+
+		JournalQueueConsumer oCon = (JournalQueueConsumer) oPrd.consumer();
+		assertTrue(oCon.awaitReplayed(oPrd.journal().getWrittenPosition(), 10000l));
+		assertEquals(range(0, 50), inserted);
+		assertEquals(50l, oCon.getReplayedCount());
+		assertEquals(0l, oCon.getSkippedCount());
+
+		// A synchronous insert returns after being replayed
+		Properties oSync = new Properties();
+		oSync.setProperty("synchronous", "true");
+		oPrd.insert(record, new Param[]{new Param("id", 1, 50)}, oSync);
+		assertEquals(range(0, 51), inserted);
+
+		oPrd.close();
+		assertEquals(range(0, 51), inserted);
+	}
+
+	@Test
+	public void test02ReplayAfterRestart() throws JDOException, InstantiationException, InterruptedException {
+		JournalQueueProducer oPrd = new JournalQueueProducer(ENGINE_NAME, properties());
+		for (int n = 0; n < 20; n++)
+			oPrd.insert(record, new Param[]{new Param("id", 1, n)});
+		JournalQueueConsumer oCon = (JournalQueueConsumer) oPrd.consumer();
+		assertTrue(oCon.awaitReplayed(oPrd.journal().getWrittenPosition(), 10000l));
+
+		// Stop replaying as if the process had stopped and keep writing to the journal
+		oCon.stop(false);
+		for (int n = 20; n < 60; n++)
+			oPrd.insert(record, new Param[]{new Param("id", 1, n)});
+		oPrd.close();
+		assertEquals(range(0, 20), inserted);
+
+		// The frames not replayed are replayed once when the journal is opened again, and the ones already replayed are not
+		oPrd = new JournalQueueProducer(ENGINE_NAME, properties());
+		oCon = (JournalQueueConsumer) oPrd.consumer();
+		assertTrue(oCon.awaitReplayed(oPrd.journal().getWrittenPosition(), 10000l));
+		assertEquals(40l, oCon.getReplayedCount());
+		assertEquals(range(0, 60), inserted);
+		oPrd.insert(record, new Param[]{new Param("id", 1, 60)});
+		oPrd.close();
+		assertEquals(range(0, 61), inserted);
+	}
+
+	@Test
+	public void test03RetryWithoutCheckpoint() throws JDOException, InstantiationException, InterruptedException {
+		failAll = true;
+		JournalQueueProducer oPrd = new JournalQueueProducer(ENGINE_NAME, properties());
+		final long lFirstFrame = oPrd.journal().getWrittenPosition();
+		for (int n = 0; n < 25; n++)
+			oPrd.insert(record, new Param[]{new Param("id", 1, n)});
+		JournalQueueConsumer oCon = (JournalQueueConsumer) oPrd.consumer();
+
+		// While the data source fails the frames are retried and the checkpoint does not move past them
+		final long lDeadline = System.currentTimeMillis() + 10000l;
+		while (oCon.getRetryCount() < 3 && System.currentTimeMillis() < lDeadline)
+			Thread.sleep(10l);
+		assertTrue(oCon.getRetryCount() >= 3);
+		assertFalse(oCon.awaitReplayed(oPrd.journal().getWrittenPosition(), 50l));
+		assertTrue(oPrd.journal().getCheckpoint() <= lFirstFrame);
+		assertTrue(inserted.isEmpty());
+
+		// Once the data source recovers every frame is performed once and in order
+		failAll = false;
+		assertTrue(oCon.awaitReplayed(oPrd.journal().getWrittenPosition(), 10000l));
+		assertEquals(range(0, 25), inserted);
+		assertEquals(25l, oCon.getReplayedCount());
+		assertEquals(0l, oCon.getSkippedCount());
+		assertNull(oCon.getError());
+		oPrd.close();
+	}
+
+	@Test
+	public void test04Quarantine() throws JDOException, InstantiationException, InterruptedException, IOException {
+		failOn = 3;
+		Map<String,String> props = properties();
+		props.put(JournalQueueConsumer.RETRY_LIMIT, "2");
+		JournalQueueProducer oPrd = new JournalQueueProducer(ENGINE_NAME, props);
+		for (int n = 0; n < 5; n++)
+			oPrd.insert(record, new Param[]{new Param("id", 1, n)});
+		// A frame which is not a message
+		oPrd.journal().sync(oPrd.journal().append(new byte[]{1, 2, 3}));
+		for (int n = 5; n < 10; n++)
+			oPrd.insert(record, new Param[]{new Param("id", 1, n)});
+
+		// The frame that cannot be decoded and the one that fails after the retry limit are moved to quarantine
+		JournalQueueConsumer oCon = (JournalQueueConsumer) oPrd.consumer();
+		assertTrue(oCon.awaitReplayed(oPrd.journal().getWrittenPosition(), 10000l));
+		List<Object> expected = range(0, 10);
+		expected.remove(Integer.valueOf(3));
+		assertEquals(expected, inserted);
+		assertEquals(9l, oCon.getReplayedCount());
+		assertEquals(2l, oCon.getSkippedCount());
+		assertEquals(2, oPrd.journal().listQuarantined().length);
+		oPrd.close();
+	}
+
+}
@@ -14,6 +14,7 @@ import java.io.InputStream;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.jdo.JDOException;
@@ -24,6 +25,7 @@ import org.judal.storage.Param;
 import org.judal.storage.Param.Direction;
 import org.judal.storage.table.Table;
 import org.judal.storage.table.TableDataSource;
+import org.judal.ramqueue.RAMQueueConsumer;
 import org.judal.ramqueue.RAMQueueProducer;
 
 public class RAMQueueTest {
@@ -149,5 +151,70 @@ public class RAMQueueTest {
 		
 		producer.close();		
 	}
-	
+
+	@Test
+	@Ignore("Needs the database of datasource.properties")
+	public void test02RamQueueGroupCommit() throws JDOException, IllegalStateException, InstantiationException, IllegalAccessException, InterruptedException {
+		final int count = 5000;
+
+		Map<String,String> groupProperties = new HashMap<String,String>(properties);
+		groupProperties.put(RAMQueueConsumer.GROUP_COMMIT_SIZE, "500");
+		groupProperties.put(RAMQueueConsumer.GROUP_COMMIT_WAIT, "10");
+
+		long[] single = insertAndWait(properties, count);
+		long[] grouped = insertAndWait(groupProperties, count);
+
+		// Writing batches of 500 inserts in one transaction must be faster than one transaction per insert
+		assertTrue("group commit took " + String.valueOf(grouped[0]) + " ms and one transaction per message " + String.valueOf(single[0]) + " ms", grouped[0] < single[0]);
+		// A message alone must not wait for a full group for longer than the group commit wait plus the write
+		assertTrue("group commit latency " + String.valueOf(grouped[1]) + " ms", grouped[1] < 1000l);
+	}
+
+	/**
+	 * @return long[] {milliseconds until count records were written, milliseconds until one more record was written}
+	 */
+	private long[] insertAndWait(Map<String,String> producerProperties, int count) throws JDOException, IllegalStateException, InstantiationException, IllegalAccessException, InterruptedException {
+		TableDataSource dts = (TableDataSource) EngineFactory.getEngine("JDBC").getDataSource(properties);
+		createTable1(dts);
+
+		RAMQueueProducer producer = new RAMQueueProducer("JDBC", producerProperties);
+		Table tbl = dts.openTable(new ArrayRecord1());
+
+		Chronometer c = new Chronometer();
+		c.start();
+		for (int id=1; id<=count; id++)
+			producer.insert(new ArrayRecord1(), new Param[] {
+				new Param("id", 1, id),
+				new Param("created", 2, new Timestamp(System.currentTimeMillis())),
+				new Param("name", 3, "Name " + String.valueOf(id)) });
+		while (!tbl.exists(new Integer(count))) {
+			Thread.sleep(1);
+			assertTrue(c.elapsed()<60000l);
+		}
+		final long throughputElapsed = c.elapsed();
+
+		c = new Chronometer();
+		c.start();
+		producer.insert(new ArrayRecord1(), new Param[] {
+			new Param("id", 1, count+1),
+			new Param("created", 2, new Timestamp(System.currentTimeMillis())),
+			new Param("name", 3, "Last") });
+		while (!tbl.exists(new Integer(count+1))) {
+			Thread.sleep(1);
+			assertTrue(c.elapsed()<3000l);
+		}
+		final long latencyElapsed = c.elapsed();
+
+		// Messages are written in order, so all of them must be there and none must have been lost by a retry
+		for (int id=1; id<=count+1; id++)
+			assertTrue("record " + String.valueOf(id) + " not found", tbl.exists(new Integer(id)));
+
+		tbl.close();
+		producer.close();
+		dts.dropTable(ArrayRecord1.tableName, false);
+		dts.close();
+
+		return new long[]{throughputElapsed, latencyElapsed};
+	}
+
 }
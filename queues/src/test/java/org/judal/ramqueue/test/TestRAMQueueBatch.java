@@ -0,0 +1,222 @@
+package org.judal.ramqueue.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jdo.JDOException;
+import javax.jms.JMSException;
+import javax.transaction.Status;
+import javax.transaction.TransactionManager;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.ramqueue.RAMQueueBatch;
+import org.judal.storage.Param;
+import org.judal.storage.java.test.ArrayRecord1;
+import org.judal.storage.java.test.ArrayRecord2;
+import org.judal.storage.java.test.Fakes;
+import org.judal.storage.keyvalue.BatchException;
+import org.judal.storage.table.Record;
+import org.judal.storage.table.TableDataSource;
+import org.junit.Test;
+
+import com.knowgate.tuples.Pair;
+import com.knowgate.tuples.Triplet;
+
+/**
+ * Run RAMQueueBatch against a fake TableDataSource which writes down each call
+ * made to its TransactionManager and to its tables and fails when a row has the value "bad".
+ */
+public class TestRAMQueueBatch {
+
+	private static final String BAD = "bad";
+
+	private static final String T1 = ArrayRecord1.tableName;
+	private static final String T2 = ArrayRecord2.tableName;
+
+	/**
+	 * Calls made to the fake data source in the order in which they were made
+	 */
+	private final List<String> calls = new ArrayList<String>();
+
+	private boolean inTransaction;
+
+	/**
+	 * When true, the fake tables write the good rows of insertAll() and updateAll() and then throw
+	 * a BatchException with the positions of the bad ones, like JDBC tables do
+	 */
+	private boolean reportFailedRows;
+
+	private static boolean isBad(Param[] row) {
+		for (Param p : row)
+			if (BAD.equals(p.getValue()))
+				return true;
+		return false;
+	}
+
+	private boolean anyBad(String operation, Param[][] rows) {
+		BatchException.Failures failures = new BatchException.Failures();
+		for (int r=0; r<rows.length; r++)
+			if (isBad(rows[r]))
+				failures.add(r, rows[r], new JDOException(operation + " failed"));
+		if (reportFailedRows)
+			failures.throwIfAny(operation, rows.length);
+		return failures.size()>0;
+	}
+
+	private TransactionManager fakeTransactionManager() {
+		return Fakes.proxy(TransactionManager.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				final String name = method.getName();
+				if (name.equals("begin") || name.equals("commit") || name.equals("rollback")) {
+					calls.add(name);
+					inTransaction = name.equals("begin");
+				} else if (name.equals("getStatus")) {
+					return inTransaction ? Status.STATUS_ACTIVE : Status.STATUS_NO_TRANSACTION;
+				}
+				return null;
+			}
+		});
+	}
+
+	private final Fakes.TableHandler tables = new Fakes.TableHandler() {
+		@Override
+		public Object invoke(String tableName, Method method, Object[] args) {
+			final String name = method.getName();
+			if (name.equals("insertAll") && args[0] instanceof Param[][]) {
+				final Param[][] rows = (Param[][]) args[0];
+				calls.add("insertAll " + tableName + " " + rows.length);
+				if (anyBad(name, rows))
+					throw new JDOException("insertAll failed");
+			} else if (name.equals("insert")) {
+				calls.add("insert " + tableName + " " + ((Param[]) args[0])[0].getValue());
+				if (isBad((Param[]) args[0]))
+					throw new JDOException("insert failed");
+			} else if (name.equals("updateAll")) {
+				final Param[][] values = (Param[][]) args[0];
+				calls.add("updateAll " + tableName + " " + values.length);
+				if (anyBad(name, values))
+					throw new JDOException("updateAll failed");
+				final int[] counts = new int[values.length];
+				Arrays.fill(counts, 1);
+				return counts;
+			} else if (name.equals("update")) {
+				calls.add("update " + tableName + " " + ((Param[]) args[0])[0].getValue());
+				if (isBad((Param[]) args[0]))
+					throw new JDOException("update failed");
+				return 1;
+			}
+			return null;
+		}
+	};
+
+	private TableDataSource fakeDataSource(final boolean transactional) {
+		return Fakes.dataSource(transactional ? fakeTransactionManager() : null, tables);
+	}
+
+	private static Record record(String tableName) {
+		return T1.equals(tableName) ? new ArrayRecord1() : new ArrayRecord2();
+	}
+
+	private static ObjectMessageImpl insertMessage(TableDataSource dts, String tableName, String value) throws JMSException {
+		ObjectMessageImpl msg = new ObjectMessageImpl(dts);
+		msg.setIntProperty("command", ObjectMessageImpl.COMMAND_INSERT_RECORD);
+		msg.setObject(new Pair<Record,Param[]>(record(tableName), new Param[]{new Param("name", 1, value)}));
+		return msg;
+	}
+
+	private static ObjectMessageImpl updateMessage(TableDataSource dts, String tableName, String value, int id) throws JMSException {
+		ObjectMessageImpl msg = new ObjectMessageImpl(dts);
+		msg.setIntProperty("command", ObjectMessageImpl.COMMAND_UPDATE_RECORD);
+		msg.setObject(new Triplet<Record,Param[],Param[]>(record(tableName), new Param[]{new Param("name", 1, value)}, new Param[]{new Param("id", 2, id)}));
+		return msg;
+	}
+
+	@Test
+	public void test01BatchPerTable() throws JMSException {
+		TableDataSource dts = fakeDataSource(true);
+		List<ObjectMessageImpl> msgs = Arrays.asList(
+			insertMessage(dts, T1, "a"), insertMessage(dts, T1, "b"), insertMessage(dts, T1, "c"),
+			insertMessage(dts, T2, "d"), insertMessage(dts, T2, "e"),
+			updateMessage(dts, T2, "f", 1), updateMessage(dts, T2, "g", 2),
+			insertMessage(dts, T1, "h"));
+
+		RAMQueueBatch batch = new RAMQueueBatch(msgs, null);
+		assertEquals(8, batch.size());
+		batch.run();
+
+		// Messages are grouped per command and table without changing their order, all in one transaction
+		assertEquals(Arrays.asList("begin", "insertAll " + T1 + " 3", "insertAll " + T2 + " 2", "updateAll " + T2 + " 2", "insertAll " + T1 + " 1", "commit"), calls);
+	}
+
+	@Test
+	public void test02RetryOneByOne() throws JMSException {
+		TableDataSource dts = fakeDataSource(true);
+		List<ObjectMessageImpl> msgs = Arrays.asList(
+			insertMessage(dts, T1, "a"), insertMessage(dts, T1, BAD), insertMessage(dts, T1, "c"),
+			updateMessage(dts, T1, "d", 1));
+
+		new RAMQueueBatch(msgs, null).run();
+
+		// The whole batch is rolled back and then each message is run alone in its own transaction
+		assertEquals(Arrays.asList("begin", "insertAll " + T1 + " 3", "rollback",
+			"begin", "insert " + T1 + " a", "commit",
+			"begin", "insert " + T1 + " " + BAD, "rollback",
+			"begin", "insert " + T1 + " c", "commit",
+			"begin", "update " + T1 + " d", "commit"), calls);
+	}
+
+	@Test
+	public void test03RetryOneByOneWithoutTransactions() throws JMSException {
+		TableDataSource dts = fakeDataSource(false);
+		List<ObjectMessageImpl> msgs = Arrays.asList(
+			insertMessage(dts, T1, "a"), insertMessage(dts, T1, "b"),
+			updateMessage(dts, T2, "c", 1), updateMessage(dts, T2, BAD, 2),
+			insertMessage(dts, T1, "e"));
+
+		new RAMQueueBatch(msgs, null).run();
+
+		// Without transactions the groups already written are not written again
+		assertEquals(Arrays.asList("insertAll " + T1 + " 2", "updateAll " + T2 + " 2",
+			"update " + T2 + " c", "update " + T2 + " " + BAD, "insert " + T1 + " e"), calls);
+	}
+
+	@Test
+	public void test04RetryOnlyFailedRowsWithoutTransactions() throws JMSException {
+		TableDataSource dts = fakeDataSource(false);
+		reportFailedRows = true;
+		List<ObjectMessageImpl> msgs = Arrays.asList(
+			insertMessage(dts, T1, "a"), insertMessage(dts, T1, BAD), insertMessage(dts, T1, "c"),
+			updateMessage(dts, T2, "d", 1), updateMessage(dts, T2, "e", 2), updateMessage(dts, T2, BAD, 3),
+			insertMessage(dts, T1, "f"), insertMessage(dts, T1, "g"));
+
+		new RAMQueueBatch(msgs, null).run();
+
+		// Only the messages of the rows reported as failed are run again and the next groups are still batched
+		assertEquals(Arrays.asList("insertAll " + T1 + " 3", "insert " + T1 + " " + BAD,
+			"updateAll " + T2 + " 3", "update " + T2 + " " + BAD,
+			"insertAll " + T1 + " 2"), calls);
+	}
+
+	@Test
+	public void test05RetryAllFailedRowsInTransaction() throws JMSException {
+		TableDataSource dts = fakeDataSource(true);
+		reportFailedRows = true;
+		List<ObjectMessageImpl> msgs = Arrays.asList(
+			insertMessage(dts, T1, "a"), insertMessage(dts, T1, BAD), updateMessage(dts, T1, "c", 1));
+
+		new RAMQueueBatch(msgs, null).run();
+
+		// In a transaction the rows written before the failure are rolled back, so every message is run again
+		assertEquals(Arrays.asList("begin", "insertAll " + T1 + " 2", "rollback",
+			"begin", "insert " + T1 + " a", "commit",
+			"begin", "insert " + T1 + " " + BAD, "rollback",
+			"begin", "update " + T1 + " c", "commit"), calls);
+	}
+
+}
@@ -0,0 +1,252 @@
+package org.judal.ramqueue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jdo.JDOException;
+import javax.jms.JMSException;
+
+import org.judal.jms.ObjectMessageImpl;
+import org.judal.ramqueue.RAMQueueConsumer;
+import org.judal.ramqueue.RAMQueueConsumer.FullQueuePolicy;
+import org.judal.storage.java.test.ArrayRecord1;
+import org.judal.storage.java.test.Fakes;
+import org.judal.storage.table.TableDataSource;
+import org.junit.Test;
+
+/**
+ * Feed RAMQueueConsumer with messages which, instead of writing to a database,
+ * write down the order in which they were performed or wait for a latch.
+ */
+public class TestRAMQueueConsumer {
+
+	/**
+	 * TableDataSource without TransactionManager nor tables
+	 */
+	private static final TableDataSource dataSource = Fakes.dataSource(null, null);
+
+	/**
+	 * Message partitioned by its key which calls a Runnable instead of writing anything
+	 */
+	private static class TestMessage extends ObjectMessageImpl {
+
+		private final Runnable action;
+
+		TestMessage(TableDataSource dts, String key, Runnable action) throws JMSException {
+			super(dts);
+			this.action = action;
+			setIntProperty("command", ObjectMessageImpl.COMMAND_DELETE_RECORDS);
+			setStringProperty("keys", key);
+			setObject(new ArrayRecord1());
+		}
+
+		@Override
+		public void process() throws JDOException {
+			action.run();
+		}
+	}
+
+	private static Runnable await(final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					assertTrue(latch.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException xcpt) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	private static final Runnable nothing = new Runnable() {
+		@Override
+		public void run() { }
+	};
+
+	private static void stopAndWait(RAMQueueConsumer consumer) throws InterruptedException {
+		consumer.stop();
+		assertTrue(consumer.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(0, consumer.getQueueDepth());
+	}
+
+	@Test
+	public void test01OrderPerKey() throws JMSException, InterruptedException {
+		final int keys = 20;
+		final int messagesPerKey = 200;
+		final Map<String,List<Integer>> performed = new ConcurrentHashMap<String,List<Integer>>();
+		final Map<String,Boolean> threads = new ConcurrentHashMap<String,Boolean>();
+		RAMQueueConsumer consumer = new RAMQueueConsumer(4, 8, keys * messagesPerKey);
+
+		for (int m=0; m<messagesPerKey; m++) {
+			for (int k=0; k<keys; k++) {
+				final String key = "key" + String.valueOf(k);
+				final int seq = m;
+				if (0==m)
+					performed.put(key, Collections.synchronizedList(new ArrayList<Integer>()));
+				consumer.onMessage(new TestMessage(dataSource, key, new Runnable() {
+					@Override
+					public void run() {
+						threads.put(Thread.currentThread().getName(), Boolean.TRUE);
+						performed.get(key).add(seq);
+					}
+				}));
+			}
+		}
+		stopAndWait(consumer);
+
+		// Each key was performed in the order in which its messages were received, whatever the thread that performed them
+		for (int k=0; k<keys; k++) {
+			List<Integer> seqs = performed.get("key" + String.valueOf(k));
+			assertEquals(messagesPerKey, seqs.size());
+			for (int m=0; m<messagesPerKey; m++)
+				assertEquals(m, seqs.get(m).intValue());
+		}
+		assertTrue(threads.size()>1);
+	}
+
+	@Test
+	public void test02RejectWhenFull() throws JMSException, InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		RAMQueueConsumer consumer = new RAMQueueConsumer(1, 1, 2);
+		assertEquals(FullQueuePolicy.REJECT, consumer.getFullQueuePolicy());
+
+		consumer.onMessage(new TestMessage(dataSource, "k1", await(release)));
+		consumer.onMessage(new TestMessage(dataSource, "k2", nothing));
+		assertEquals(2, consumer.getQueueDepth());
+		try {
+			consumer.onMessage(new TestMessage(dataSource, "k3", nothing));
+			fail("RejectedExecutionException expected");
+		} catch (RejectedExecutionException expected) { }
+
+		assertEquals(1, consumer.getRejectedCount());
+		assertEquals(0, consumer.getWaitCount());
+		release.countDown();
+		stopAndWait(consumer);
+	}
+
+	@Test
+	public void test03BlockWhenFull() throws JMSException, InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean sent = new AtomicBoolean(false);
+		final RAMQueueConsumer consumer = new RAMQueueConsumer(1, 1, 2);
+		consumer.setFullQueuePolicy(FullQueuePolicy.BLOCK, 0l);
+
+		consumer.onMessage(new TestMessage(dataSource, "k1", await(release)));
+		consumer.onMessage(new TestMessage(dataSource, "k2", nothing));
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					consumer.onMessage(new TestMessage(dataSource, "k3", nothing));
+					sent.set(true);
+				} catch (JMSException xcpt) { }
+			}
+		});
+		producer.start();
+		Thread.sleep(200l);
+		assertTrue(producer.isAlive());
+		assertTrue(!sent.get());
+
+		// The producer goes on as soon as the first message is done and its slot is released
+		release.countDown();
+		producer.join(10000l);
+		assertTrue(sent.get());
+		assertEquals(0, consumer.getRejectedCount());
+		assertEquals(1, consumer.getWaitCount());
+		assertTrue(consumer.getMaxWaitTime()>=150l);
+		assertEquals(consumer.getMaxWaitTime(), consumer.getWaitTime());
+		stopAndWait(consumer);
+	}
+
+	@Test
+	public void test04TimeoutWhenFull() throws JMSException, InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		RAMQueueConsumer consumer = new RAMQueueConsumer(1, 1, 2);
+		consumer.setFullQueuePolicy(FullQueuePolicy.TIMEOUT, 100l);
+
+		consumer.onMessage(new TestMessage(dataSource, "k1", await(release)));
+		consumer.onMessage(new TestMessage(dataSource, "k2", nothing));
+		final long start = System.nanoTime();
+		try {
+			consumer.onMessage(new TestMessage(dataSource, "k3", nothing));
+			fail("RejectedExecutionException expected");
+		} catch (RejectedExecutionException expected) { }
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)>=100l);
+
+		assertEquals(1, consumer.getRejectedCount());
+		assertEquals(1, consumer.getWaitCount());
+		assertTrue(consumer.getWaitTime()>=100l);
+		release.countDown();
+		stopAndWait(consumer);
+	}
+
+	@Test
+	public void test05GroupCommitCounters() throws JMSException, InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		RAMQueueConsumer consumer = new RAMQueueConsumer(10, 50l);
+		consumer.configure(1, 1, 100);
+		assertEquals(10, consumer.getGroupCommitSize());
+		assertEquals(50l, consumer.getGroupCommitWait());
+
+		// The first batch has only one message which keeps the lane busy until the next 20 messages are queued
+		consumer.onMessage(new TestMessage(dataSource, "k0", new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				await(release).run();
+			}
+		}));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		for (int m=1; m<=20; m++) {
+			final boolean bad = 5==m;
+			consumer.onMessage(new TestMessage(dataSource, "k" + String.valueOf(m), new Runnable() {
+				@Override
+				public void run() {
+					if (bad)
+						throw new JDOException("bad message");
+				}
+			}));
+		}
+		assertEquals(21, consumer.getQueueDepth());
+		release.countDown();
+		stopAndWait(consumer);
+
+		// Batches {0} {1..10} {11..20}, the second one failed and its messages were run again one by one
+		assertEquals(3, consumer.getBatchCount());
+		assertEquals(21, consumer.getBatchedMessageCount());
+		assertEquals(10, consumer.getRetriedMessageCount());
+	}
+
+	@Test
+	public void test06LaneSurvivesThrowingMessage() throws JMSException, InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		RAMQueueConsumer consumer = new RAMQueueConsumer(1, 1, 10);
+
+		// A message without TableDataSource throws NullPointerException from ObjectMessageImpl.run()
+		consumer.onMessage(new TestMessage(null, "k1", nothing));
+		Thread.sleep(100l);
+		consumer.onMessage(new TestMessage(dataSource, "k2", new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		}));
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		stopAndWait(consumer);
+	}
+
+}
@@ -15,17 +15,33 @@ package org.judal.s3;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.knowgate.debug.DebugFile;
 import com.knowgate.io.StreamPipe;
 
@@ -39,7 +55,10 @@ import org.judal.storage.keyvalue.Bucket;
 import org.judal.storage.keyvalue.Stored;
 
 /**
- * Implementation of Bucket interface for Amazon S3
+ * <p>Implementation of Bucket interface for Amazon S3</p>
+ * Objects larger than the multipart threshold of the S3DataSource are uploaded in parts
+ * and objects larger than the part size are downloaded using ranged requests.
+ * Parts are transferred in parallel using the transfer thread pool of the S3DataSource.
  * @author Sergio Montoro Ten
  * @version 1.0
  */
@@ -62,6 +81,13 @@ public class S3Bucket implements Bucket {
 		return s3dts.getClient();
 	}
 
+	/**
+	 * @return S3DataSource
+	 */
+	public S3DataSource getDataSource() {
+		return s3dts;
+	}
+
 	/**
 	 * @return String Bucket Name
 	 */
@@ -75,7 +101,8 @@ public class S3Bucket implements Bucket {
 	}
 
 	/**
-	 * Check whether an object with the given key is at this Bucket
+	 * <p>Check whether an object with the given key is at this Bucket.</p>
+	 * Only the object metadata is requested, its content is not downloaded.
 	 * @param key Param or String value
 	 * @return boolean
 	 * @throws NullPointerException if key is <b>null</b>
@@ -96,28 +123,30 @@ public class S3Bucket implements Bucket {
 			DebugFile.writeln("Begin S3Bucket.exists("+value+")");
 			DebugFile.incIdent();
 		}
-		S3Object s3obj = null;
+		boolean retval;
 		try {
-			s3obj = getClient().getObject(name(), value.toString());
-			s3obj.close();
-		} catch (IOException ioe) {
-			throw new JDOException(ioe.getMessage(), ioe);
+			getClient().getObjectMetadata(name(), value.toString());
+			retval = true;
 		} catch (AmazonS3Exception as3e) {
-		} finally {
-			try { if (s3obj!=null) s3obj.close(); } catch (IOException ignore) {
-				if (DebugFile.trace) DebugFile.writeln("S3Record.load("+value+") IOException "+ignore.getMessage());
-			}			
+			if (as3e.getStatusCode()==404)
+				retval = false;
+			else
+				throw new JDOException(as3e.getMessage(), as3e);
+		} catch (AmazonClientException ace) {
+			throw new JDOException(ace.getMessage(), ace);
 		}
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
-			DebugFile.writeln("End S3Bucket.exists() : "+String.valueOf(s3obj!=null));
+			DebugFile.writeln("End S3Bucket.exists() : "+String.valueOf(retval));
 		}
-		return s3obj!=null;
+		return retval;
 	}
 
 	/**
 	 * <p>Load an object and its metadata (if present) from Bucket.</p>
 	 * Default metadata properties loaded into S3Record are: cacheControl, contentDisposition, contentEncoding, contentLength, contentMD5, contentType, ETag, expirationTime, expirationTimeRuleId, httpExpiresDate, lastModified, restoreExpirationTime, serverSideEncryption, versionId
+	 * The first part of the object is requested with a ranged GET. If the object is larger than the part size
+	 * then the remaining parts are downloaded in parallel and only if the object ETag has not changed.
 	 * @param key String
 	 * @param target S3Record
 	 * @return boolean <b>true</b>if an object with the given key was loaded <b>false</b> otherwise
@@ -141,13 +170,24 @@ public class S3Bucket implements Bucket {
 
 		try {
 			if (DebugFile.trace) DebugFile.writeln("AmazonS3Client.getObject("+name()+","+value+")");
-			s3obj = getClient().getObject(name(), value);
+			GetObjectRequest s3req = new GetObjectRequest(name(), value);
+			s3req.setRange(0l, s3dts.getPartSize()-1l);
+			try {
+				s3obj = getClient().getObject(s3req);
+			} catch (AmazonS3Exception s3e) {
+				// An empty object does not satisfy any range
+				if (s3e.getStatusCode()==416)
+					s3obj = getClient().getObject(name(), value);
+				else
+					throw s3e;
+			}
 			if (DebugFile.trace) DebugFile.writeln("retrived object is "+(s3obj!=null ? "not ": "")+"null");
 			if (s3obj!=null) {
 				s3objmetadata = s3obj.getObjectMetadata();
 				s3rec.setKey(value);
 				if (s3objmetadata==null) {
 					if (DebugFile.trace) DebugFile.writeln("retrived object "+name()+" has no metadata");
+					s3objmetadata = new ObjectMetadata();
 					outstrm = new ByteArrayOutputStream();
 				} else {
 					if (DebugFile.trace) DebugFile.writeln("retrived object "+name()+" metadata content length is "+String.valueOf(s3objmetadata.getContentLength()));
@@ -156,10 +196,16 @@ public class S3Bucket implements Bucket {
 					else
 						outstrm = new ByteArrayOutputStream();
 				}
+				long contentLength;
 				try {
 					s3instrm = s3obj.getObjectContent();
 					new StreamPipe().between(s3instrm, outstrm);
-					s3rec.setContent(outstrm.toByteArray(), s3objmetadata.getContentType());
+					byte[] firstPart = outstrm.toByteArray();
+					contentLength = instanceLength(s3objmetadata, firstPart.length);
+					if (contentLength>firstPart.length)
+						s3rec.setContent(getParts(value, s3objmetadata.getETag(), firstPart, contentLength), s3objmetadata.getContentType());
+					else
+						s3rec.setContent(firstPart, s3objmetadata.getContentType());
 					outstrm.close();
 					outstrm = null;
 					s3instrm.close();
@@ -171,7 +217,7 @@ public class S3Bucket implements Bucket {
 					s3rec.put("cacheControl", s3objmetadata.getCacheControl());
 					s3rec.put("contentDisposition", s3objmetadata.getContentDisposition());
 					s3rec.put("contentEncoding", s3objmetadata.getContentEncoding());
-					s3rec.put("contentLength", new Long(s3objmetadata.getContentLength()));
+					s3rec.put("contentLength", new Long(contentLength));
 					s3rec.put("contentMD5", s3objmetadata.getContentMD5());				
 					s3rec.put("contentType", s3objmetadata.getContentType());
 					s3rec.put("ETag", s3objmetadata.getETag());
@@ -214,16 +260,161 @@ public class S3Bucket implements Bucket {
 	}
 
 	/**
+	 * <p>Store an object and its metadata.</p>
+	 * If the object content is larger than the multipart threshold of the S3DataSource
+	 * then it is uploaded in parts of the configured size, several of them in parallel.
 	 * @param record S3Record
 	 */
 	@Override
 	public void store(Stored record) throws JDOException {
 		S3Record s3rec = (S3Record) record;
-		ByteArrayInputStream oIn = new ByteArrayInputStream(s3rec.getValue());
+		byte[] content = s3rec.getValue();
 		try {
-			getClient().putObject(name(), s3rec.getKey(), oIn, s3rec.getMetadata());
+			if (content!=null && content.length>s3dts.getMultipartThreshold())
+				putParts(s3rec.getKey(), content, s3rec.getMetadata());
+			else
+				getClient().putObject(name(), s3rec.getKey(), new ByteArrayInputStream(content), s3rec.getMetadata());
 		} catch (AmazonS3Exception s3e) {
 			throw new JDOException("AmazonS3Exception at S3Bucket.store(Stored) "+s3e.getMessage(), s3e);
+		} catch (AmazonClientException ace) {
+			throw new JDOException("AmazonClientException at S3Bucket.store(Stored) "+ace.getMessage(), ace);
+		}
+	}
+
+	private void putParts(final String key, final byte[] content, ObjectMetadata metadata) throws AmazonClientException, JDOException {
+		// Content length and MD5 of the whole object do not apply to the multipart upload request
+		ObjectMetadata uploadMetadata = new ObjectMetadata();
+		for (Map.Entry<String,Object> header : metadata.getRawMetadata().entrySet())
+			if (!header.getKey().equalsIgnoreCase("Content-Length") && !header.getKey().equalsIgnoreCase("Content-MD5"))
+				uploadMetadata.setHeader(header.getKey(), header.getValue());
+		uploadMetadata.setUserMetadata(metadata.getUserMetadata());
+
+		final String uploadId = getClient().initiateMultipartUpload(new InitiateMultipartUploadRequest(name(), key, uploadMetadata)).getUploadId();
+		final long partSize = s3dts.getPartSize();
+		final int partCount = (int) ((content.length + partSize - 1l) / partSize);
+
+		if (DebugFile.trace) DebugFile.writeln("S3Bucket.store("+key+") multipart upload "+uploadId+" of "+String.valueOf(partCount)+" parts");
+
+		boolean completed = false;
+		try {
+			List<Callable<PartETag>> uploads = new ArrayList<Callable<PartETag>>(partCount);
+			for (int p=0; p<partCount; p++) {
+				final int partNumber = p + 1;
+				final int offset = (int) (p * partSize);
+				final int length = (int) Math.min(partSize, content.length - offset);
+				uploads.add(new Callable<PartETag>() {
+					@Override
+					public PartETag call() throws AmazonClientException {
+						UploadPartRequest partRequest = new UploadPartRequest().withBucketName(name()).withKey(key)
+							.withUploadId(uploadId).withPartNumber(partNumber).withPartSize(length)
+							.withInputStream(new ByteArrayInputStream(content, offset, length))
+							.withMD5Digest(md5(content, offset, length));
+						return getClient().uploadPart(partRequest).getPartETag();
+					}
+				});
+			}
+			List<PartETag> partETags = transfer(uploads);
+			getClient().completeMultipartUpload(new CompleteMultipartUploadRequest(name(), key, uploadId, partETags));
+			completed = true;
+		} finally {
+			if (!completed) {
+				try {
+					getClient().abortMultipartUpload(new AbortMultipartUploadRequest(name(), key, uploadId));
+				} catch (AmazonClientException ace) {
+					if (DebugFile.trace) DebugFile.writeln("S3Bucket.store("+key+") could not abort multipart upload "+uploadId+" "+ace.getMessage());
+				}
+			}
+		}
+	}
+
+	private byte[] getParts(final String key, final String eTag, byte[] firstPart, long contentLength) throws JDOException {
+		if (contentLength>Integer.MAX_VALUE)
+			throw new JDOException("S3 object "+key+" of "+String.valueOf(contentLength)+" bytes is too large to be loaded into memory");
+		final byte[] content = new byte[(int) contentLength];
+		System.arraycopy(firstPart, 0, content, 0, firstPart.length);
+		final long partSize = s3dts.getPartSize();
+
+		if (DebugFile.trace) DebugFile.writeln("S3Bucket.load("+key+") ranged download of "+String.valueOf(contentLength)+" bytes");
+
+		List<Callable<Object>> downloads = new ArrayList<Callable<Object>>();
+		for (long start=firstPart.length; start<contentLength; start+=partSize) {
+			final int offset = (int) start;
+			final int end = (int) Math.min(contentLength, start + partSize) - 1;
+			downloads.add(new Callable<Object>() {
+				@Override
+				public Object call() throws AmazonClientException, JDOException, IOException {
+					GetObjectRequest partRequest = new GetObjectRequest(name(), key);
+					partRequest.setRange(offset, end);
+					if (eTag!=null)
+						partRequest.setMatchingETagConstraints(Collections.singletonList(eTag));
+					S3Object partObject = getClient().getObject(partRequest);
+					if (null==partObject)
+						throw new JDOException("S3 object "+key+" was modified while it was being loaded");
+					try (InputStream partStream = partObject.getObjectContent()) {
+						int position = offset;
+						int count = 0;
+						while (position<=end && (count=partStream.read(content, position, end - position + 1))>0)
+							position += count;
+						if (position<=end)
+							throw new JDOException("S3 object "+key+" part at "+String.valueOf(offset)+" ended after "+String.valueOf(position-offset)+" bytes");
+					}
+					return null;
+				}
+			});
+		}
+		transfer(downloads);
+		return content;
+	}
+
+	private <T> List<T> transfer(List<Callable<T>> tasks) throws AmazonClientException, JDOException {
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		List<T> results = new ArrayList<T>(tasks.size());
+		boolean done = false;
+		try {
+			for (Callable<T> task : tasks)
+				futures.add(s3dts.getTransferExecutor().submit(task));
+			for (Future<T> future : futures)
+				results.add(future.get());
+			done = true;
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+			throw new JDOException("S3Bucket transfer interrupted", xcpt);
+		} catch (ExecutionException xcpt) {
+			Throwable cause = xcpt.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new JDOException(cause.getMessage(), cause);
+		} finally {
+			if (!done)
+				for (Future<T> future : futures)
+					future.cancel(true);
+		}
+		return results;
+	}
+
+	private static long instanceLength(ObjectMetadata metadata, long received) {
+		// Content-Range: bytes first-last/total
+		for (Map.Entry<String,Object> header : metadata.getRawMetadata().entrySet()) {
+			if (header.getKey().equalsIgnoreCase("Content-Range") && header.getValue()!=null) {
+				final String range = header.getValue().toString();
+				final int slash = range.lastIndexOf('/');
+				if (slash>0 && !range.endsWith("*"))
+					return Long.parseLong(range.substring(slash+1).trim());
+			}
+		}
+		return received;
+	}
+
+	private static String md5(byte[] content, int offset, int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(content, offset, length);
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException neverthrown) {
+			return null;
 		}
 	}
 
@@ -255,10 +446,16 @@ public class S3Bucket implements Bucket {
 	}
 
 	@Override
-	public void close(Iterator<Stored> notused) { }
+	public void close(Iterator<Stored> iterator) {
+		if (iterators!=null)
+			iterators.remove(iterator);
+	}
 
 	@Override
-	public void closeAll() { }
+	public void closeAll() {
+		if (iterators!=null)
+			iterators.clear();
+	}
 
 	@Override
 	public Class<Stored> getCandidateClass() {
@@ -294,14 +491,26 @@ public class S3Bucket implements Bucket {
 	 */
 	@Override
 	public Iterator<Stored> iterator() {
-		Iterator<Stored> retval;
+		return iterator(null);
+	}
+
+	/**
+	 * <p>Iterate over the values whose key starts with a given prefix.</p>
+	 * Keys are listed one page at a time as the iterator advances.
+	 * Values are instances of the class set with setClass() or S3Record if no class has been set.
+	 * @param prefix String If <b>null</b> then iterate over all the values stored at this Bucket
+	 * @return S3Iterator
+	 */
+	public Iterator<Stored> iterator(String prefix) {
+		S3Iterator retval;
 		if (null==iterators)
 			iterators = new LinkedList<S3Iterator>();
 		try {
-			retval = new S3Iterator(S3Bucket.class, this, null);
+			retval = new S3Iterator(null==candidateClass ? S3Record.class : candidateClass, this, new S3TableDef(name()), prefix);
 		} catch (NoSuchMethodException | SecurityException xcpt) {
 			throw new JDOException(xcpt.getMessage(), xcpt);
 		}
+		iterators.add(retval);
 		return retval;
 	}
 
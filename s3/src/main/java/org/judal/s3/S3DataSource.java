@@ -15,6 +15,9 @@ package org.judal.s3;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.transaction.TransactionManager;
 
@@ -22,6 +25,7 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.model.Region;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.s3.model.ListVersionsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -50,21 +54,74 @@ import org.judal.storage.keyvalue.BucketDataSource;
  */
 public class S3DataSource implements BucketDataSource {
 
+	/**
+	 * Configuration property. URL of an S3 compatible service to be used instead of Amazon S3.
+	 * Buckets at a custom endpoint are accessed using path style URLs.
+	 */
+	public static final String ENDPOINT = "endpoint";
+
+	/**
+	 * Configuration property. Size in bytes of each part of multipart uploads and ranged downloads.
+	 * Amazon S3 requires parts other than the last one to be of at least 5MB.
+	 */
+	public static final String PART_SIZE = "partsize";
+
+	/**
+	 * Configuration property. Objects larger than this count of bytes are stored using a multipart upload.
+	 */
+	public static final String MULTIPART_THRESHOLD = "multipartthreshold";
+
+	/**
+	 * Configuration property. Maximum count of parts uploaded or downloaded in parallel.
+	 */
+	public static final String TRANSFER_THREADS = "transferthreads";
+
+	/**
+	 * Configuration property. Maximum count of keys fetched by each listing request.
+	 */
+	public static final String LIST_PAGE_SIZE = "listpagesize";
+
+	public static final String DEFAULT_PART_SIZE = String.valueOf(8l*1024l*1024l);
+	public static final String DEFAULT_MULTIPART_THRESHOLD = String.valueOf(16l*1024l*1024l);
+	public static final String DEFAULT_TRANSFER_THREADS = "4";
+	public static final String DEFAULT_LIST_PAGE_SIZE = "1000";
+
 	private AmazonS3Client as3cli;
 	private SchemaMetaData smd;
 	private Map<String,String> props;
+	private final long partSize;
+	private final long multipartThreshold;
+	private final int transferThreads;
+	private final int listPageSize;
+	private ExecutorService transferExecutor;
 
 	/**
 	 * 
-	 * @param properties Must contain: region, accessKey, secretKey
+	 * @param properties Must contain: region, accessKey, secretKey. May contain: endpoint, partsize, multipartthreshold, transferthreads, listpagesize
+	 * @throws NumberFormatException If a numeric property is not a valid number
+	 * @throws IllegalArgumentException If a numeric property is not greater than zero
 	 */
-	public S3DataSource(Map<String,String> properties) {
+	public S3DataSource(Map<String,String> properties) throws NumberFormatException, IllegalArgumentException {
 		props = new HashMap<String,String>(17);
 		props.putAll(properties);
 		final String accessKey = props.getOrDefault(DataSource.ACCESSKEY, props.get(DataSource.USER));
 		final String secretKey = props.getOrDefault(DataSource.SECRETKEY, props.get(DataSource.PASSWORD));
+		partSize = positive(PART_SIZE, Long.parseLong(props.getOrDefault(PART_SIZE, DEFAULT_PART_SIZE)));
+		multipartThreshold = positive(MULTIPART_THRESHOLD, Long.parseLong(props.getOrDefault(MULTIPART_THRESHOLD, DEFAULT_MULTIPART_THRESHOLD)));
+		transferThreads = (int) positive(TRANSFER_THREADS, Integer.parseInt(props.getOrDefault(TRANSFER_THREADS, DEFAULT_TRANSFER_THREADS)));
+		listPageSize = (int) positive(LIST_PAGE_SIZE, Integer.parseInt(props.getOrDefault(LIST_PAGE_SIZE, DEFAULT_LIST_PAGE_SIZE)));
 		as3cli = new AmazonS3Client(new BasicAWSCredentials(accessKey,secretKey));
 		as3cli.setRegion(com.amazonaws.regions.Region.getRegion(Regions.fromName(props.get(DataSource.REGION))));
+		if (props.get(ENDPOINT)!=null) {
+			as3cli.setEndpoint(props.get(ENDPOINT));
+			as3cli.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+		}
+	}
+
+	private static long positive(String propertyName, long value) throws IllegalArgumentException {
+		if (value<1l)
+			throw new IllegalArgumentException("S3DataSource property "+propertyName+" must be greater than zero");
+		return value;
 	}
 
 	/**
@@ -118,6 +175,53 @@ public class S3DataSource implements BucketDataSource {
 		return as3cli;
 	}
 
+	/**
+	 * @return long Size in bytes of each part of multipart uploads and ranged downloads
+	 */
+	public long getPartSize() {
+		return partSize;
+	}
+
+	/**
+	 * @return long Objects larger than this count of bytes are stored using a multipart upload
+	 */
+	public long getMultipartThreshold() {
+		return multipartThreshold;
+	}
+
+	/**
+	 * @return int Maximum count of parts transferred in parallel
+	 */
+	public int getTransferThreads() {
+		return transferThreads;
+	}
+
+	/**
+	 * @return int Maximum count of keys fetched by each listing request
+	 */
+	public int getListPageSize() {
+		return listPageSize;
+	}
+
+	/**
+	 * <p>Get the thread pool used for transferring parts in parallel.</p>
+	 * The pool is created on first use and shut down when this data source is closed.
+	 * @return ExecutorService
+	 */
+	public synchronized ExecutorService getTransferExecutor() {
+		if (null==transferExecutor) {
+			transferExecutor = Executors.newFixedThreadPool(transferThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "S3Transfer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return transferExecutor;
+	}
+
 	/**
 	 * return Map&lt;String,String&gt;
 	 */
@@ -145,7 +249,11 @@ public class S3DataSource implements BucketDataSource {
 	}
 
 	@Override
-	public void close() throws JDOException {
+	public synchronized void close() throws JDOException {
+		if (transferExecutor!=null) {
+			transferExecutor.shutdown();
+			transferExecutor = null;
+		}
 	}
 
 	public SchemaMetaData getMetaData() throws JDOException, UnsupportedOperationException {
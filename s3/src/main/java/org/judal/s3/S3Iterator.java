@@ -13,52 +13,116 @@ package org.judal.s3;
  */
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 
-import org.judal.storage.StorageObjectFactory;
+import javax.jdo.JDOException;
+
+import org.judal.metadata.TableDef;
 import org.judal.storage.keyvalue.Stored;
-import org.judal.storage.table.Record;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 /**
- * 
+ * <p>Iterator over the objects of an S3Bucket.</p>
+ * Keys are listed lazily one page at a time. The next page is requested using the marker
+ * returned by the previous one only when all the keys of the current page have been consumed,
+ * so at most one page of keys is kept in memory.
+ * Each call to next() loads the object content and metadata.
  * @author Sergio Montoro Ten
  * @version 1.0
  */
 public class S3Iterator implements Iterator<Stored> {
 
 	private Iterator<S3ObjectSummary> iterator;
+	private ObjectListing listing;
 	private S3Bucket bucket;
-	private S3TableDef tableDef;
-	private Class<? extends Record> resultClass;
-	protected Constructor<? extends Record> recordConstructor;
-	
-	public S3Iterator(Class resultClass, S3Bucket bucket, S3TableDef tableDef)
+	private Class<? extends Stored> resultClass;
+	protected Constructor<? extends Stored> recordConstructor;
+	private Object constructorParameter;
+
+	/**
+	 * @param resultClass Class&lt;? extends S3Record&gt; Must have a public constructor taking a TableDef or a String with the Bucket name
+	 * @param bucket S3Bucket
+	 * @param tableDef S3TableDef
+	 * @throws NoSuchMethodException If resultClass has no suitable constructor
+	 * @throws SecurityException
+	 */
+	public S3Iterator(Class<? extends Stored> resultClass, S3Bucket bucket, S3TableDef tableDef)
+		throws NoSuchMethodException, SecurityException {
+		this(resultClass, bucket, tableDef, null);
+	}
+
+	/**
+	 * @param resultClass Class&lt;? extends S3Record&gt; Must have a public constructor taking a TableDef or a String with the Bucket name
+	 * @param bucket S3Bucket
+	 * @param tableDef S3TableDef
+	 * @param prefix String Iterate only over keys starting with this prefix. If <b>null</b> then iterate over all keys.
+	 * @throws NoSuchMethodException If resultClass has no suitable constructor
+	 * @throws SecurityException
+	 */
+	public S3Iterator(Class<? extends Stored> resultClass, S3Bucket bucket, S3TableDef tableDef, String prefix)
 		throws NoSuchMethodException, SecurityException {
 		this.bucket = bucket;
-		this.tableDef = tableDef;
 		this.resultClass = resultClass;
-		this.recordConstructor = this.resultClass.getConstructor(tableDef.getClass());
-		this.iterator = bucket.getClient().listObjects(bucket.name()).getObjectSummaries().iterator();
+		try {
+			this.recordConstructor = this.resultClass.getConstructor(TableDef.class);
+			this.constructorParameter = tableDef;
+		} catch (NoSuchMethodException nosuchtabledef) {
+			this.recordConstructor = this.resultClass.getConstructor(String.class);
+			this.constructorParameter = bucket.name();
+		}
+		ListObjectsRequest request = new ListObjectsRequest().withBucketName(bucket.name()).withMaxKeys(bucket.getDataSource().getListPageSize());
+		if (prefix!=null)
+			request.setPrefix(prefix);
+		try {
+			this.listing = bucket.getClient().listObjects(request);
+		} catch (AmazonClientException ace) {
+			throw new JDOException(ace.getMessage(), ace);
+		}
+		this.iterator = listing.getObjectSummaries().iterator();
 	}
 
 	@Override
-	public boolean hasNext() {
+	public boolean hasNext() throws JDOException {
+		while (!iterator.hasNext() && listing.isTruncated()) {
+			try {
+				listing = bucket.getClient().listNextBatchOfObjects(listing);
+			} catch (AmazonClientException ace) {
+				throw new JDOException(ace.getMessage(), ace);
+			}
+			iterator = listing.getObjectSummaries().iterator();
+		}
 		return iterator.hasNext();
 	}
 
 	@Override
-	public Stored next() {
+	public Stored next() throws NoSuchElementException, JDOException {
+		if (!hasNext())
+			throw new NoSuchElementException("S3Iterator has no more objects");
 		S3ObjectSummary s3obj = iterator.next();
 		String key = s3obj.getKey();
 		Stored obj;
 		try {
-			obj = StorageObjectFactory.newRecord(resultClass, tableDef);
-		} catch (NoSuchMethodException neverthrown) { obj = null; }
+			obj = recordConstructor.newInstance(constructorParameter);
+		} catch (InvocationTargetException | InstantiationException | IllegalAccessException xcpt) {
+			throw new JDOException(xcpt.getMessage(), xcpt);
+		}
 		bucket.load(key, obj);
 		return obj;
 	}
-	
+
+	/**
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void remove() throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("S3Iterator does not support remove()");
+	}
+
 }
@@ -0,0 +1,371 @@
+package org.judal.s3.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an S3 compatible service.
+ * Supports path style requests for HEAD, GET with ranges and If-Match, PUT, DELETE,
+ * paginated listing and multipart uploads. Counts requests by operation.
+ */
+public class LocalS3Server implements AutoCloseable {
+
+	private static class StoredObject {
+		final byte[] content;
+		final String eTag;
+		final Map<String,String> headers;
+		final Date lastModified;
+
+		StoredObject(byte[] content, String eTag, Map<String,String> headers) {
+			this.content = content;
+			this.eTag = eTag;
+			this.headers = headers;
+			this.lastModified = new Date();
+		}
+	}
+
+	private static class Upload {
+		final Map<String,String> headers;
+		final ConcurrentSkipListMap<Integer,byte[]> parts = new ConcurrentSkipListMap<Integer,byte[]>();
+
+		Upload(Map<String,String> headers) {
+			this.headers = headers;
+		}
+	}
+
+	private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConcurrentHashMap<String,ConcurrentSkipListMap<String,StoredObject>> buckets = new ConcurrentHashMap<String,ConcurrentSkipListMap<String,StoredObject>>();
+	private final ConcurrentHashMap<String,Upload> uploads = new ConcurrentHashMap<String,Upload>();
+	private final ConcurrentHashMap<String,AtomicInteger> requests = new ConcurrentHashMap<String,AtomicInteger>();
+
+	public LocalS3Server() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		executor = Executors.newFixedThreadPool(8);
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					dispatch(exchange);
+				} catch (RuntimeException xcpt) {
+					reply(exchange, 500, error("InternalError", xcpt.toString()), null);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	public String getEndpoint() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @param operation One of HEAD, GET, RANGE, PUT, DELETE, LIST, INITIATE, PART, COMPLETE, ABORT
+	 */
+	public int getRequestCount(String operation) {
+		AtomicInteger count = requests.get(operation);
+		return null == count ? 0 : count.get();
+	}
+
+	public void resetRequestCounts() {
+		requests.clear();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void count(String operation) {
+		requests.putIfAbsent(operation, new AtomicInteger());
+		requests.get(operation).incrementAndGet();
+	}
+
+	private ConcurrentSkipListMap<String,StoredObject> bucket(String name) {
+		buckets.putIfAbsent(name, new ConcurrentSkipListMap<String,StoredObject>());
+		return buckets.get(name);
+	}
+
+	private void dispatch(HttpExchange exchange) throws IOException {
+		final String method = exchange.getRequestMethod();
+		final String path = exchange.getRequestURI().getPath();
+		final Map<String,String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		final int slash = path.indexOf('/', 1);
+		final String bucketName = slash < 0 ? path.substring(1) : path.substring(1, slash);
+		final String key = slash < 0 || slash == path.length() - 1 ? null : path.substring(slash + 1);
+		final ConcurrentSkipListMap<String,StoredObject> objects = bucket(bucketName);
+
+		if (null == key) {
+			if (method.equals("GET")) {
+				count("LIST");
+				list(exchange, bucketName, objects, query);
+			} else {
+				reply(exchange, 200, null, null);
+			}
+		} else if (method.equals("HEAD")) {
+			count("HEAD");
+			StoredObject obj = objects.get(key);
+			if (null == obj) {
+				reply(exchange, 404, null, null);
+			} else {
+				objectHeaders(exchange.getResponseHeaders(), obj);
+				exchange.getResponseHeaders().set("Content-Length", String.valueOf(obj.content.length));
+				exchange.sendResponseHeaders(200, -1);
+			}
+		} else if (method.equals("GET")) {
+			get(exchange, objects.get(key));
+		} else if (method.equals("PUT") && query.containsKey("uploadId")) {
+			count("PART");
+			Upload upload = uploads.get(query.get("uploadId"));
+			if (null == upload) {
+				reply(exchange, 404, error("NoSuchUpload", query.get("uploadId")), null);
+			} else {
+				byte[] part = readBody(exchange);
+				upload.parts.put(Integer.valueOf(query.get("partNumber")), part);
+				exchange.getResponseHeaders().set("ETag", "\"" + md5Hex(part) + "\"");
+				reply(exchange, 200, null, null);
+			}
+		} else if (method.equals("PUT")) {
+			count("PUT");
+			byte[] content = readBody(exchange);
+			StoredObject obj = new StoredObject(content, md5Hex(content), objectHeaders(exchange.getRequestHeaders()));
+			objects.put(key, obj);
+			exchange.getResponseHeaders().set("ETag", "\"" + obj.eTag + "\"");
+			reply(exchange, 200, null, null);
+		} else if (method.equals("POST") && query.containsKey("uploads")) {
+			count("INITIATE");
+			readBody(exchange);
+			String uploadId = UUID.randomUUID().toString();
+			uploads.put(uploadId, new Upload(objectHeaders(exchange.getRequestHeaders())));
+			reply(exchange, 200, "<InitiateMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><Bucket>" + bucketName + "</Bucket><Key>" + key + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>", null);
+		} else if (method.equals("POST") && query.containsKey("uploadId")) {
+			count("COMPLETE");
+			complete(exchange, bucketName, key, objects, uploads.remove(query.get("uploadId")));
+		} else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+			count("ABORT");
+			uploads.remove(query.get("uploadId"));
+			reply(exchange, 204, null, null);
+		} else if (method.equals("DELETE")) {
+			count("DELETE");
+			objects.remove(key);
+			reply(exchange, 204, null, null);
+		} else {
+			reply(exchange, 405, error("MethodNotAllowed", method), null);
+		}
+	}
+
+	private void get(HttpExchange exchange, StoredObject obj) throws IOException {
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		count(null == range ? "GET" : "RANGE");
+		if (null == obj) {
+			reply(exchange, 404, error("NoSuchKey", "The specified key does not exist."), null);
+			return;
+		}
+		final String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+		if (ifMatch != null && !ifMatch.replace("\"", "").equals(obj.eTag)) {
+			reply(exchange, 412, error("PreconditionFailed", "If-Match"), null);
+			return;
+		}
+		objectHeaders(exchange.getResponseHeaders(), obj);
+		if (null == range) {
+			reply(exchange, 200, null, obj.content);
+		} else {
+			String[] bounds = range.substring(range.indexOf('=') + 1).split("-");
+			long first = Long.parseLong(bounds[0]);
+			long last = Math.min(Long.parseLong(bounds[1]), obj.content.length - 1);
+			if (first >= obj.content.length) {
+				reply(exchange, 416, error("InvalidRange", "The requested range is not satisfiable"), null);
+			} else {
+				byte[] slice = new byte[(int) (last - first + 1)];
+				System.arraycopy(obj.content, (int) first, slice, 0, slice.length);
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + obj.content.length);
+				reply(exchange, 206, null, slice);
+			}
+		}
+	}
+
+	private void list(HttpExchange exchange, String bucketName, ConcurrentSkipListMap<String,StoredObject> objects, Map<String,String> query) throws IOException {
+		final String prefix = query.containsKey("prefix") ? query.get("prefix") : "";
+		final String marker = query.get("marker");
+		final int maxKeys = query.containsKey("max-keys") ? Integer.parseInt(query.get("max-keys")) : 1000;
+		NavigableMap<String,StoredObject> candidates = null == marker || marker.length() == 0 ? objects : objects.tailMap(marker, false);
+		StringBuilder contents = new StringBuilder();
+		int count = 0;
+		boolean truncated = false;
+		SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+		for (Map.Entry<String,StoredObject> entry : candidates.entrySet()) {
+			if (!entry.getKey().startsWith(prefix))
+				continue;
+			if (count == maxKeys) {
+				truncated = true;
+				break;
+			}
+			contents.append("<Contents><Key>").append(entry.getKey()).append("</Key><LastModified>").append(iso.format(entry.getValue().lastModified))
+				.append("</LastModified><ETag>\"").append(entry.getValue().eTag).append("\"</ETag><Size>").append(entry.getValue().content.length)
+				.append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+			count++;
+		}
+		reply(exchange, 200, "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><Name>" + bucketName + "</Name><Prefix>" + prefix
+			+ "</Prefix><Marker>" + (null == marker ? "" : marker) + "</Marker><MaxKeys>" + maxKeys + "</MaxKeys><IsTruncated>" + truncated
+			+ "</IsTruncated>" + contents + "</ListBucketResult>", null);
+	}
+
+	private void complete(HttpExchange exchange, String bucketName, String key, ConcurrentSkipListMap<String,StoredObject> objects, Upload upload) throws IOException {
+		final String request = new String(readBody(exchange), "UTF-8");
+		if (null == upload) {
+			reply(exchange, 404, error("NoSuchUpload", key), null);
+			return;
+		}
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		ByteArrayOutputStream digests = new ByteArrayOutputStream();
+		int partCount = 0;
+		Matcher partNumbers = PART_NUMBER.matcher(request);
+		while (partNumbers.find()) {
+			byte[] part = upload.parts.get(Integer.valueOf(partNumbers.group(1)));
+			if (null == part) {
+				reply(exchange, 400, error("InvalidPart", partNumbers.group(1)), null);
+				return;
+			}
+			content.write(part);
+			digests.write(md5(part));
+			partCount++;
+		}
+		StoredObject obj = new StoredObject(content.toByteArray(), md5Hex(digests.toByteArray()) + "-" + partCount, upload.headers);
+		objects.put(key, obj);
+		reply(exchange, 200, "<CompleteMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><Location>" + getEndpoint() + "/" + bucketName + "/" + key
+			+ "</Location><Bucket>" + bucketName + "</Bucket><Key>" + key + "</Key><ETag>\"" + obj.eTag + "\"</ETag></CompleteMultipartUploadResult>", null);
+	}
+
+	private static Map<String,String> objectHeaders(Headers requestHeaders) {
+		HashMap<String,String> headers = new HashMap<String,String>();
+		for (Map.Entry<String,List<String>> header : requestHeaders.entrySet()) {
+			String name = header.getKey().toLowerCase();
+			if (name.startsWith("x-amz-meta-") || name.equals("content-type") || name.equals("cache-control") || name.equals("content-disposition"))
+				headers.put(name, header.getValue().get(0));
+		}
+		return headers;
+	}
+
+	private static void objectHeaders(Headers responseHeaders, StoredObject obj) {
+		for (Map.Entry<String,String> header : obj.headers.entrySet())
+			responseHeaders.set(header.getKey(), header.getValue());
+		responseHeaders.set("ETag", "\"" + obj.eTag + "\"");
+		SimpleDateFormat rfc822 = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", java.util.Locale.US);
+		rfc822.setTimeZone(TimeZone.getTimeZone("GMT"));
+		responseHeaders.set("Last-Modified", rfc822.format(obj.lastModified));
+	}
+
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0)
+				body.write(buffer, 0, count);
+		}
+		final String sha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+		return sha != null && sha.startsWith("STREAMING-") ? decodeChunks(body.toByteArray()) : body.toByteArray();
+	}
+
+	// Decode aws-chunked payloads: hex-size;chunk-signature=...\r\n data \r\n ... 0;chunk-signature=...\r\n\r\n
+	private static byte[] decodeChunks(byte[] chunked) throws UnsupportedEncodingException {
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		int pos = 0;
+		while (pos < chunked.length) {
+			int eol = pos;
+			while (chunked[eol] != '\r')
+				eol++;
+			String header = new String(chunked, pos, eol - pos, "US-ASCII");
+			int size = Integer.parseInt(header.substring(0, header.indexOf(';') < 0 ? header.length() : header.indexOf(';')), 16);
+			if (size == 0)
+				break;
+			decoded.write(chunked, eol + 2, size);
+			pos = eol + 2 + size + 2;
+		}
+		return decoded.toByteArray();
+	}
+
+	private static void reply(HttpExchange exchange, int status, String xml, byte[] content) throws IOException {
+		byte[] body = content;
+		if (xml != null) {
+			body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "application/xml");
+		}
+		if (null == body || body.length == 0 || exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	private static String error(String code, String message) {
+		return "<Error><Code>" + code + "</Code><Message>" + message + "</Message><RequestId>0</RequestId></Error>";
+	}
+
+	private static Map<String,String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		HashMap<String,String> query = new HashMap<String,String>();
+		if (rawQuery != null) {
+			for (String param : rawQuery.split("&")) {
+				int eq = param.indexOf('=');
+				if (eq < 0)
+					query.put(URLDecoder.decode(param, "UTF-8"), "");
+				else
+					query.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return query;
+	}
+
+	private static byte[] md5(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("MD5").digest(bytes);
+		} catch (NoSuchAlgorithmException neverthrown) {
+			return null;
+		}
+	}
+
+	private static String md5Hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(32);
+		for (byte b : md5(bytes))
+			hex.append(String.format("%02x", b & 0xff));
+		return hex.toString();
+	}
+
+}
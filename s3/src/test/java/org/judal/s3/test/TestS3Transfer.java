@@ -0,0 +1,155 @@
+package org.judal.s3.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import javax.jdo.JDOException;
+
+import org.judal.s3.S3Bucket;
+import org.judal.s3.S3DataSource;
+import org.judal.storage.DataSource;
+import org.judal.storage.keyvalue.Stored;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test S3Bucket transfers against an in-process S3 compatible service
+ */
+public class TestS3Transfer {
+
+	private static final String bucketName = "judaltransfer";
+	private static final int partSize = 1024;
+
+	private static LocalS3Server server;
+	private static S3DataSource dts;
+
+	@BeforeClass
+	public static void init() throws IOException {
+		server = new LocalS3Server();
+		Map<String,String> properties = new HashMap<String,String>();
+		properties.put(DataSource.REGION, "us-east-1");
+		properties.put(DataSource.ACCESSKEY, "judal");
+		properties.put(DataSource.SECRETKEY, "judal");
+		properties.put(S3DataSource.ENDPOINT, server.getEndpoint());
+		properties.put(S3DataSource.PART_SIZE, String.valueOf(partSize));
+		properties.put(S3DataSource.MULTIPART_THRESHOLD, String.valueOf(4 * partSize));
+		properties.put(S3DataSource.TRANSFER_THREADS, "4");
+		properties.put(S3DataSource.LIST_PAGE_SIZE, "10");
+		dts = new S3DataSource(properties);
+	}
+
+	@AfterClass
+	public static void cleanup() throws JDOException {
+		if (dts!=null) dts.close();
+		if (server!=null) server.close();
+	}
+
+	@Before
+	public void resetCounts() {
+		server.resetRequestCounts();
+	}
+
+	private static byte[] content(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static TestStored stored(String key, byte[] content) {
+		TestStored obj = new TestStored(bucketName);
+		obj.setKey(key);
+		obj.setValue(content);
+		obj.put("column1", "value1");
+		return obj;
+	}
+
+	@Test
+	public void test01ExistsDoesNotDownload() throws JDOException {
+		try (S3Bucket bucket = (S3Bucket) dts.openBucket(bucketName)) {
+			bucket.store(stored("exists", content(3 * partSize)));
+			assertTrue(bucket.exists("exists"));
+			assertFalse(bucket.exists("missing"));
+		}
+		assertEquals(2, server.getRequestCount("HEAD"));
+		assertEquals(0, server.getRequestCount("GET"));
+		assertEquals(0, server.getRequestCount("RANGE"));
+	}
+
+	@Test
+	public void test02SinglePartRoundTrip() throws JDOException {
+		final byte[] content = content(100);
+		TestStored retrieved = new TestStored(bucketName);
+		try (S3Bucket bucket = (S3Bucket) dts.openBucket(bucketName)) {
+			bucket.store(stored("small", content));
+			assertTrue(bucket.load("small", retrieved));
+		}
+		assertArrayEquals(content, retrieved.getValue());
+		assertEquals("value1", retrieved.getString("column1"));
+		assertEquals(1, server.getRequestCount("PUT"));
+		assertEquals(0, server.getRequestCount("INITIATE"));
+		assertEquals(1, server.getRequestCount("RANGE"));
+	}
+
+	@Test
+	public void test03MultipartRoundTrip() throws JDOException {
+		final byte[] content = content(10 * partSize + 7);
+		TestStored retrieved = new TestStored(bucketName);
+		try (S3Bucket bucket = (S3Bucket) dts.openBucket(bucketName)) {
+			bucket.store(stored("large", content));
+			assertTrue(bucket.load("large", retrieved));
+		}
+		assertEquals(0, server.getRequestCount("PUT"));
+		assertEquals(1, server.getRequestCount("INITIATE"));
+		assertEquals(11, server.getRequestCount("PART"));
+		assertEquals(1, server.getRequestCount("COMPLETE"));
+		assertEquals(11, server.getRequestCount("RANGE"));
+		assertArrayEquals(content, retrieved.getValue());
+		assertEquals(content.length, retrieved.getLong("contentLength"));
+		assertEquals("value1", retrieved.getString("column1"));
+	}
+
+	@Test
+	public void test04EmptyObject() throws JDOException {
+		TestStored retrieved = new TestStored(bucketName);
+		try (S3Bucket bucket = (S3Bucket) dts.openBucket(bucketName)) {
+			bucket.store(stored("empty", new byte[0]));
+			assertTrue(bucket.load("empty", retrieved));
+			assertFalse(bucket.load("missing", new TestStored(bucketName)));
+		}
+		assertEquals(0, retrieved.getValue().length);
+	}
+
+	@Test
+	public void test05PaginatedListing() throws JDOException {
+		try (S3Bucket bucket = (S3Bucket) dts.openBucket(bucketName)) {
+			for (int n=0; n<25; n++)
+				bucket.store(stored(String.format("page/%02d", n), content(n + 1)));
+			for (int n=0; n<3; n++)
+				bucket.store(stored("other/" + n, content(n + 1)));
+			server.resetRequestCounts();
+			bucket.setClass(TestStored.class);
+			int count = 0;
+			Iterator<Stored> iter = bucket.iterator("page/");
+			while (iter.hasNext()) {
+				Stored obj = iter.next();
+				assertEquals(String.format("page/%02d", count), obj.getKey());
+				assertEquals(++count, ((TestStored) obj).getValue().length);
+			}
+			bucket.close(iter);
+			assertEquals(25, count);
+			assertEquals(3, server.getRequestCount("LIST"));
+		}
+	}
+
+}
@@ -24,30 +24,26 @@ class TableOperation[R >: Null <: Record](dataSource: TableDataSource , record:
 	}
 	
 	def fetchAsc(fetchGroup: FetchGroup, columnName: String , valueSearched: AnyRef, sortByColumn: String) : Iterable[R]  = {
-		val retval : RecordSet[R] = getTable.fetch(fetchGroup, columnName, valueSearched)
-		retval.sort(sortByColumn)
+		val retval : RecordSet[R] = getTable.fetchOrdered(fetchGroup, columnName, valueSearched, sortByColumn, ASC, -1)
 		retval.asScala
 	}
 	
 	def fetchDesc(fetchGroup: FetchGroup, columnName: String , valueSearched: AnyRef, sortByColumn: String) : Iterable[R]  = {
-		val retval : RecordSet[R] = getTable.fetch(fetchGroup, columnName, valueSearched)
-		retval.sortDesc(sortByColumn)
+		val retval : RecordSet[R] = getTable.fetchOrdered(fetchGroup, columnName, valueSearched, sortByColumn, DESC, -1)
 		retval.asScala
 	}
 
 	override def fetchFirst(fetchGroup: FetchGroup , columnName: String , valueSearched: Any, sortBy: String*) : R = {
-		var rst: RecordSet[R] = getTable.fetch(fetchGroup, columnName, valueSearched)
+		val rst: RecordSet[R] =
+		  if (sortBy==null || sortBy.length==0)
+		    getTable.fetch(fetchGroup, columnName, valueSearched, 1, 0)
+		  else if (sortBy.length==1 || same(ASC,sortBy(1)))
+		    getTable.fetchOrdered(fetchGroup, columnName, valueSearched, sortBy(0), ASC, 1)
+		  else if (same(DESC,sortBy(1)))
+		    getTable.fetchOrdered(fetchGroup, columnName, valueSearched, sortBy(0), DESC, 1)
+		  else
+		    throw new JDOUserException("Unrecognized sort direction " + sortBy(1))
 		if (rst.size()>0) {
-		  if (sortBy!=null && sortBy.length==1)
-		    rst.sort(sortBy(0))
-		  else if (sortBy!=null && sortBy.length>1) {
-			  if (same(ASC,sortBy(1)))
-		      rst.sort(sortBy(0))
-			  else if (same(DESC,sortBy(1)))
-			    rst.sortDesc(sortBy(0))
-			  else
-				  throw new JDOUserException("Unrecognized sort direction " + sortBy(1))
-		  }
 		  val retval : R = rst.get(0)
 		  setRecord(retval)
 		} else {
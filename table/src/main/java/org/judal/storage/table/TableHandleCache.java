@@ -0,0 +1,294 @@
+package org.judal.storage.table;
+
+/*
+ * © Copyright 2016 the original author.
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jdo.JDOException;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Per thread scope of reusable table handles.</p>
+ * Record.load(), Record.store() and Record.delete() open a table, and thus may lease a connection,
+ * for each call. While a scope is active at the current thread, the tables opened thru
+ * TableHandleCache.openTable() are kept open and reused by the following calls
+ * for the same data source, table name and record class until the scope is closed.
+ * A cached table is also discarded and reopened if the transaction of its data source
+ * has changed since the table was opened, so a handle never outlives its transaction.
+ * Scopes can be nested; only closing the outermost one closes the cached tables.
+ * <pre>
+ * try (TableHandleCache scope = TableHandleCache.begin()) {
+ *   for (Record rec : records)
+ *     rec.store(dataSource);
+ * }
+ * </pre>
+ * A scope must be closed by the same thread that began it.
+ * @author Sergio Montoro Ten
+ * @version 1.0
+ */
+public final class TableHandleCache implements AutoCloseable {
+
+	private static final ThreadLocal<TableHandleCache> currentScope = new ThreadLocal<TableHandleCache>();
+
+	private static final AtomicLong totalHits = new AtomicLong(0l);
+	private static final AtomicLong totalMisses = new AtomicLong(0l);
+	private static final AtomicLong totalEvictions = new AtomicLong(0l);
+
+	private final Map<HandleKey,Handle> handles;
+	private final Set<Table> openTables;
+	private int depth;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private TableHandleCache() {
+		handles = new HashMap<HandleKey,Handle>();
+		openTables = Collections.newSetFromMap(new IdentityHashMap<Table,Boolean>());
+		depth = 1;
+		hits = misses = evictions = 0l;
+	}
+
+	/**
+	 * <p>Begin a table handle scope at the current thread or join the scope already active.</p>
+	 * @return TableHandleCache
+	 */
+	public static TableHandleCache begin() {
+		TableHandleCache scope = currentScope.get();
+		if (null==scope) {
+			scope = new TableHandleCache();
+			currentScope.set(scope);
+		} else {
+			scope.depth++;
+		}
+		return scope;
+	}
+
+	/**
+	 * @return TableHandleCache Scope active at the current thread or <b>null</b> if there is no active scope
+	 */
+	public static TableHandleCache current() {
+		return currentScope.get();
+	}
+
+	/**
+	 * <p>Open a table for a Record.</p>
+	 * If there is no active scope at the current thread this method just calls dataSource.openTable(recordInstance).
+	 * Tables returned by this method must be given back by calling release() instead of Table.close().
+	 * @param dataSource TableDataSource
+	 * @param recordInstance Record
+	 * @return Table
+	 * @throws JDOException
+	 */
+	public static Table openTable(TableDataSource dataSource, Record recordInstance) throws JDOException {
+		final TableHandleCache scope = currentScope.get();
+		return null==scope ? dataSource.openTable(recordInstance) : scope.acquire(dataSource, recordInstance);
+	}
+
+	/**
+	 * <p>Give back a table got from openTable().</p>
+	 * The table is closed unless it is cached by the scope active at the current thread.
+	 * @param table Table May be <b>null</b>
+	 * @throws JDOException
+	 */
+	public static void release(Table table) throws JDOException {
+		if (table!=null) {
+			final TableHandleCache scope = currentScope.get();
+			if (null==scope || !scope.openTables.contains(table))
+				table.close();
+		}
+	}
+
+	private Table acquire(TableDataSource dataSource, Record recordInstance) throws JDOException {
+		final HandleKey key = new HandleKey(dataSource, recordInstance.getTableName(), recordInstance.getClass());
+		final Transaction transaction = currentTransaction(dataSource);
+		Handle handle = handles.get(key);
+		if (handle!=null) {
+			if (handle.transaction==transaction) {
+				hits++;
+				totalHits.incrementAndGet();
+				return handle.table;
+			}
+			if (DebugFile.trace)
+				DebugFile.writeln("TableHandleCache evicting " + key.tableName + " because its transaction has ended");
+			evict(key, handle);
+		}
+		misses++;
+		totalMisses.incrementAndGet();
+		handle = new Handle(dataSource.openTable(recordInstance), transaction);
+		handles.put(key, handle);
+		openTables.add(handle.table);
+		return handle.table;
+	}
+
+	private void evict(HandleKey key, Handle handle) {
+		handles.remove(key);
+		openTables.remove(handle.table);
+		evictions++;
+		totalEvictions.incrementAndGet();
+		closeQuietly(handle.table);
+	}
+
+	private static Transaction currentTransaction(TableDataSource dataSource) throws JDOException {
+		try {
+			return dataSource.inTransaction() ? dataSource.getTransactionManager().getTransaction() : null;
+		} catch (SystemException syse) {
+			throw new JDOException(syse.getMessage(), syse);
+		}
+	}
+
+	private static void closeQuietly(Table table) {
+		try {
+			table.close();
+		} catch (Exception xcpt) {
+			if (DebugFile.trace)
+				DebugFile.writeln(xcpt.getClass().getName() + " closing cached table " + xcpt.getMessage());
+		}
+	}
+
+	/**
+	 * @return int Number of table handles currently kept open by this scope
+	 */
+	public int size() {
+		return handles.size();
+	}
+
+	/**
+	 * @return long Number of times that a cached table was reused at this scope
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return long Number of times that a table had to be opened at this scope
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return long Number of cached tables discarded at this scope because their transaction had ended
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return float Ratio of hits versus hits plus misses at this scope or zero if no table has been requested yet
+	 */
+	public float getHitRate() {
+		return hitRate(hits, misses);
+	}
+
+	/**
+	 * @return long Number of times that a cached table was reused by any thread since the JVM started
+	 */
+	public static long getTotalHits() {
+		return totalHits.get();
+	}
+
+	/**
+	 * @return long Number of times that a table had to be opened by any scope since the JVM started
+	 */
+	public static long getTotalMisses() {
+		return totalMisses.get();
+	}
+
+	/**
+	 * @return long Number of cached tables discarded by any scope because their transaction had ended
+	 */
+	public static long getTotalEvictions() {
+		return totalEvictions.get();
+	}
+
+	/**
+	 * @return float Ratio of total hits versus total hits plus total misses
+	 */
+	public static float getTotalHitRate() {
+		return hitRate(totalHits.get(), totalMisses.get());
+	}
+
+	private static float hitRate(long hitCount, long missCount) {
+		return hitCount+missCount==0l ? 0f : ((float) hitCount) / ((float) (hitCount+missCount));
+	}
+
+	/**
+	 * <p>Leave this scope.</p>
+	 * When the outermost scope is closed all the cached tables are closed
+	 * and the scope is removed from the current thread.
+	 * @throws IllegalStateException If this scope is not the one active at the current thread
+	 */
+	@Override
+	public void close() throws IllegalStateException {
+		if (currentScope.get()!=this)
+			throw new IllegalStateException("TableHandleCache scope is not active at the current thread");
+		if (--depth==0) {
+			currentScope.remove();
+			if (DebugFile.trace)
+				DebugFile.writeln("TableHandleCache closing " + String.valueOf(handles.size()) + " tables hits=" + String.valueOf(hits) + " misses=" + String.valueOf(misses));
+			for (Handle handle : handles.values())
+				closeQuietly(handle.table);
+			handles.clear();
+			openTables.clear();
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	private static final class Handle {
+		final Table table;
+		final Transaction transaction;
+
+		Handle(Table table, Transaction transaction) {
+			this.table = table;
+			this.transaction = transaction;
+		}
+	}
+
+	// ---------------------------------------------------------
+
+	private static final class HandleKey {
+		final TableDataSource dataSource;
+		final String tableName;
+		final Class<?> recordClass;
+
+		HandleKey(TableDataSource dataSource, String tableName, Class<?> recordClass) {
+			this.dataSource = dataSource;
+			this.tableName = tableName;
+			this.recordClass = recordClass;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(dataSource) ^ (tableName==null ? 0 : tableName.hashCode()) ^ recordClass.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof HandleKey))
+				return false;
+			final HandleKey key = (HandleKey) other;
+			return dataSource==key.dataSource && recordClass.equals(key.recordClass) &&
+				(tableName==null ? key.tableName==null : tableName.equals(key.tableName));
+		}
+	}
+
+}
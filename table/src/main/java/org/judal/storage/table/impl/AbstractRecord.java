@@ -31,6 +31,7 @@ import org.judal.storage.EngineFactory;
 import org.judal.storage.FieldHelper;
 import org.judal.storage.table.ColumnGroup;
 import org.judal.storage.table.Table;
+import org.judal.storage.table.TableHandleCache;
 import org.judal.storage.table.TableDataSource;
 
 import java.io.ByteArrayOutputStream;
@@ -259,8 +260,11 @@ public abstract class AbstractRecord extends AbstractRecordBase {
 	@Override
 	public boolean load(DataSource oDts, Object oKey) throws JDOException, ClassCastException {
 		boolean bLoaded = false;
-		try (Table oTbl = ((TableDataSource) oDts).openTable(this)) {
+		Table oTbl = TableHandleCache.openTable((TableDataSource) oDts, this);
+		try {
 			bLoaded = oTbl.load(oKey, this);
+		} finally {
+			TableHandleCache.release(oTbl);
 		}
 		return bLoaded;
 	}
@@ -290,8 +294,11 @@ public abstract class AbstractRecord extends AbstractRecordBase {
 	public void store(DataSource oDts) throws JDOException,ClassCastException {
 		if (getConstraintsChecker()!=null)
 			getConstraintsChecker().check(oDts, this);
-		try (Table oTbl = ((TableDataSource) oDts).openTable(this)) {
+		Table oTbl = TableHandleCache.openTable((TableDataSource) oDts, this);
+		try {
 			oTbl.store(this);
+		} finally {
+			TableHandleCache.release(oTbl);
 		}
 	}
 
@@ -315,11 +322,11 @@ public abstract class AbstractRecord extends AbstractRecordBase {
 	 */
 	@Override
 	public void delete(DataSource oDts) throws JDOException,ClassCastException {
-		Table oTbl = ((TableDataSource) oDts).openTable(this);
+		Table oTbl = TableHandleCache.openTable((TableDataSource) oDts, this);
 		try {
 			oTbl.delete(getKey());
 		} finally {
-			if (oTbl!=null) oTbl.close();
+			TableHandleCache.release(oTbl);
 		}
 	}
 
@@ -35,6 +35,7 @@ import org.judal.storage.FieldHelper;
 import org.judal.storage.table.ColumnGroup;
 import org.judal.storage.table.SingleColumnRecord;
 import org.judal.storage.table.Table;
+import org.judal.storage.table.TableHandleCache;
 import org.judal.storage.table.TableDataSource;
 
 import com.knowgate.currency.Money;
@@ -416,10 +417,10 @@ public abstract class AbstractSingleColumnRecord implements SingleColumnRecord {
 		Table oTbl = null;
 		boolean bLoaded = false;
 		try {
-			oTbl = ((TableDataSource) dataSource).openTable(this);
+			oTbl = TableHandleCache.openTable((TableDataSource) dataSource, this);
 			bLoaded = oTbl.load(key, this);
 		} finally {
-			if (oTbl!=null) oTbl.close();
+			TableHandleCache.release(oTbl);
 		}
 		return bLoaded;
 	}
@@ -435,20 +436,20 @@ public abstract class AbstractSingleColumnRecord implements SingleColumnRecord {
 			getConstraintsChecker().check(dataSource, this);
 		Table oTbl = null;
 		try {
-			oTbl = ((TableDataSource) dataSource).openTable(this);
+			oTbl = TableHandleCache.openTable((TableDataSource) dataSource, this);
 			oTbl.store(this);
 		} finally {
-			if (oTbl!=null) oTbl.close();
+			TableHandleCache.release(oTbl);
 		}
 	}
 
 	@Override
 	public void delete(DataSource dataSource) throws JDOException {
-		Table oTbl = ((TableDataSource) dataSource).openTable(this);
+		Table oTbl = TableHandleCache.openTable((TableDataSource) dataSource, this);
 		try {
 			oTbl.delete(this);
 		} finally {
-			if (oTbl!=null) oTbl.close();
+			TableHandleCache.release(oTbl);
 		}
 	}
 